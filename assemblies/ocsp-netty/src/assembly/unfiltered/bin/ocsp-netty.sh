@@ -0,0 +1,11 @@
+#!/bin/sh
+
+DIRNAME=$(dirname "$0")
+
+if [ "x$JAVA_HOME" = "x" ]; then
+     JAVA_EXEC=java
+else
+     JAVA_EXEC=$JAVA_HOME/bin/java
+fi
+
+$JAVA_EXEC -cp "$DIRNAME/..:$DIRNAME/../lib/*" org.xipki.ocsp.netty.OcspNettyServer "$@"
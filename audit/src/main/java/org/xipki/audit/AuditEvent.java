@@ -17,9 +17,10 @@
 
 package org.xipki.audit;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 
@@ -31,6 +32,8 @@ import java.util.Objects;
 
 public class AuditEvent {
 
+  private static final int DFLT_EVENT_DATA_CAPACITY = 8;
+
   /**
    * The name of the application the event belongs to.
    */
@@ -47,9 +50,9 @@ public class AuditEvent {
   private AuditLevel level;
 
   /**
-   * Time-stamp when the event was saved.
+   * Time-stamp in milliseconds when the event was saved.
    */
-  private final Date timestamp;
+  private final long timestamp;
 
   private AuditStatus status;
 
@@ -58,13 +61,30 @@ public class AuditEvent {
    */
   private long duration;
 
-  /**
-   * The data array belonging to the event.
+  /*
+   * The event data are stored in flat slots. If the value of a slot is null, the slot
+   * contains the number in longValues.
    */
-  private final List<AuditEventData> eventDatas = new LinkedList<>();
+  private String[] dataNames = new String[DFLT_EVENT_DATA_CAPACITY];
+
+  private String[] dataValues = new String[DFLT_EVENT_DATA_CAPACITY];
+
+  private long[] dataLongValues = new long[DFLT_EVENT_DATA_CAPACITY];
+
+  private int dataSize;
 
   public AuditEvent(Date timestamp) {
-    this.timestamp = (timestamp == null) ? new Date() : timestamp;
+    this((timestamp == null) ? System.currentTimeMillis() : timestamp.getTime());
+  }
+
+  /**
+   * Constructor.
+   * @param timestamp
+   *          Time-stamp in milliseconds since 1970-01-01T00:00:00Z.
+   * @since 5.0.1
+   */
+  public AuditEvent(long timestamp) {
+    this.timestamp = timestamp;
     this.level = AuditLevel.INFO;
     this.duration = -1;
   }
@@ -95,56 +115,188 @@ public class AuditEvent {
   }
 
   public Date getTimestamp() {
+    return new Date(timestamp);
+  }
+
+  /**
+   * Returns the time-stamp without creating a {@link Date}.
+   * @return time-stamp in milliseconds since 1970-01-01T00:00:00Z.
+   * @since 5.0.1
+   */
+  public long getTimestampMillis() {
     return timestamp;
   }
 
+  /**
+   * Returns a copy of the event data. Use {@link #getEventDataCount()},
+   * {@link #getEventDataName(int)} and {@link #getEventDataValue(int)} to access them
+   * without creating objects.
+   * @return a copy of the event data.
+   */
   public List<AuditEventData> getEventDatas() {
-    return Collections.unmodifiableList(eventDatas);
+    if (dataSize == 0) {
+      return Collections.emptyList();
+    }
+
+    List<AuditEventData> list = new ArrayList<>(dataSize);
+    for (int i = 0; i < dataSize; i++) {
+      list.add(new AuditEventData(dataNames[i], getEventDataValue(i)));
+    }
+    return Collections.unmodifiableList(list);
+  }
+
+  public int getEventDataCount() {
+    return dataSize;
+  }
+
+  public String getEventDataName(int index) {
+    checkIndex(index);
+    return dataNames[index];
+  }
+
+  public String getEventDataValue(int index) {
+    checkIndex(index);
+    String value = dataValues[index];
+    return (value == null) ? Long.toString(dataLongValues[index]) : value;
+  }
+
+  /**
+   * Whether the value of the given event data is a number, which can be retrieved via
+   * {@link #getEventDataLongValue(int)}.
+   * @param index
+   *          Index of the event data.
+   * @return whether the value is a number.
+   */
+  public boolean isLongEventData(int index) {
+    checkIndex(index);
+    return dataValues[index] == null;
+  }
+
+  public long getEventDataLongValue(int index) {
+    checkIndex(index);
+    if (dataValues[index] != null) {
+      throw new IllegalStateException("event data " + dataNames[index] + " is not a number");
+    }
+    return dataLongValues[index];
   }
 
   public AuditEventData addEventType(String type) {
     return addEventData("event_type", type);
   }
 
+  /**
+   * Adds an event data. If an event data with the same name exists, the value is appended
+   * to it.
+   * @param name
+   *          Name of the event data.
+   * @param value
+   *          Value of the event data.
+   * @return the event data, a snapshot of the stored value.
+   */
   public AuditEventData addEventData(String name, Object value) {
-    return addEventData(new AuditEventData(name, value));
+    Objects.requireNonNull(value, "value may not be null");
+    int idx;
+    if (value instanceof Long || value instanceof Integer
+        || value instanceof Short || value instanceof Byte) {
+      idx = addEventData0(name, null, ((Number) value).longValue());
+    } else {
+      idx = addEventData0(name,
+          (value instanceof String) ? (String) value : value.toString(), 0);
+    }
+    return new AuditEventData(name, getEventDataValue(idx));
+  }
+
+  /**
+   * Adds a numeric event data without boxing it.
+   * @param name
+   *          Name of the event data.
+   * @param value
+   *          Value of the event data.
+   * @since 5.0.1
+   */
+  public void addEventData(String name, long value) {
+    addEventData0(name, null, value);
   }
 
+  /**
+   * Adds an event data. If an event data with the same name exists, the value is appended
+   * to it.
+   * @param eventData
+   *          Event data.
+   * @return the event data, a snapshot of the stored value.
+   */
   public AuditEventData addEventData(AuditEventData eventData) {
     Objects.requireNonNull(eventData, "eventData may not be null");
+    int idx = addEventData0(eventData.getName(), eventData.getValue(), 0);
+    return new AuditEventData(eventData.getName(), getEventDataValue(idx));
+  }
 
-    int idx = -1;
-    for (int i = 0; i < eventDatas.size(); i++) {
-      final AuditEventData ed = eventDatas.get(i);
-      if (ed.getName().equals(eventData.getName())) {
-        idx = i;
-        break;
-      }
+  /**
+   * Adds or appends the event data.
+   * @return the index of the event data.
+   */
+  private int addEventData0(String name, String value, long longValue) {
+    Objects.requireNonNull(name, "name may not be null");
+    if (name.isEmpty()) {
+      throw new IllegalArgumentException("name may not be empty");
     }
 
-    if (idx == -1) {
-      eventDatas.add(eventData);
-      return eventData;
-    } else {
-      final AuditEventData existing = eventDatas.get(idx);
-      existing.addValue(eventData.getValue());
-      return existing;
+    int idx = indexOf(name);
+    if (idx != -1) {
+      // append the value to the existing one
+      String addValue = (value == null) ? Long.toString(longValue) : value;
+      dataValues[idx] = getEventDataValue(idx) + ", " + addValue;
+      return idx;
     }
+
+    if (dataSize == dataNames.length) {
+      int newCapacity = dataSize << 1;
+      dataNames = Arrays.copyOf(dataNames, newCapacity);
+      dataValues = Arrays.copyOf(dataValues, newCapacity);
+      dataLongValues = Arrays.copyOf(dataLongValues, newCapacity);
+    }
+
+    dataNames[dataSize] = name;
+    dataValues[dataSize] = value;
+    dataLongValues[dataSize] = longValue;
+    return dataSize++;
   }
 
   public boolean removeEventData(String eventDataName) {
     Objects.requireNonNull(eventDataName, "eventDataName may not be null");
 
-    boolean removed = false;
-    for (final AuditEventData ed : eventDatas) {
-      if (ed.getName().equals(eventDataName)) {
-        eventDatas.remove(ed);
-        removed = true;
-        break;
+    int idx = indexOf(eventDataName);
+    if (idx == -1) {
+      return false;
+    }
+
+    int numMoved = dataSize - idx - 1;
+    if (numMoved > 0) {
+      System.arraycopy(dataNames, idx + 1, dataNames, idx, numMoved);
+      System.arraycopy(dataValues, idx + 1, dataValues, idx, numMoved);
+      System.arraycopy(dataLongValues, idx + 1, dataLongValues, idx, numMoved);
+    }
+
+    dataSize--;
+    dataNames[dataSize] = null;
+    dataValues[dataSize] = null;
+    return true;
+  }
+
+  private int indexOf(String eventDataName) {
+    // events have only few data, a linear search over the flat array is the fastest
+    for (int i = 0; i < dataSize; i++) {
+      if (dataNames[i].equals(eventDataName)) {
+        return i;
       }
     }
+    return -1;
+  }
 
-    return removed;
+  private void checkIndex(int index) {
+    if (index < 0 || index >= dataSize) {
+      throw new IndexOutOfBoundsException("index " + index + " not in [0, " + dataSize + ")");
+    }
   }
 
   public AuditStatus getStatus() {
@@ -156,11 +308,20 @@ public class AuditEvent {
   }
 
   public void finish() {
-    this.duration = System.currentTimeMillis() - timestamp.getTime();
+    this.duration = System.currentTimeMillis() - timestamp;
   }
 
   public long getDuration() {
     return duration;
   }
 
+  /**
+   * Sets the duration, e.g. of an event restored from a file.
+   * @param duration
+   *          Duration in milliseconds, negative if not measured.
+   */
+  public void setDuration(long duration) {
+    this.duration = duration;
+  }
+
 }
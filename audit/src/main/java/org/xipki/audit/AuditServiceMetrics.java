@@ -0,0 +1,38 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit;
+
+import java.util.Map;
+
+/**
+ * Implemented by {@link AuditService}s which collect metrics. A service wrapping another
+ * one includes the metrics of the wrapped service.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public interface AuditServiceMetrics {
+
+  /**
+   * Returns the collected metrics.
+   * @return the metrics, which can be serialized as JSON.
+   */
+  Map<String, Object> getMetrics();
+
+}
@@ -17,6 +17,7 @@
 
 package org.xipki.audit;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -24,7 +25,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Properties;
 
+import org.xipki.audit.services.AsyncAuditService;
+import org.xipki.audit.services.AsyncAuditService.OverflowPolicy;
 import org.xipki.audit.services.EmbedAuditService;
+import org.xipki.audit.services.JournalAuditService;
 import org.xipki.audit.services.SyslogAuditService;
 
 /**
@@ -68,6 +72,8 @@ public class Audits {
         service = new EmbedAuditService();
       } else if ("syslog".equalsIgnoreCase(auditType)) {
         service = new SyslogAuditService();
+      } else if ("journal".equalsIgnoreCase(auditType)) {
+        service = new JournalAuditService();
       } else  if (auditType.startsWith("java:")) {
         String className = auditType.substring("java:".length());
         try {
@@ -81,8 +87,22 @@ public class Audits {
         }
       } else {
         throw new AuditServiceRuntimeException("invalid Audit.Type '" + auditType
-            + "'. Valid values are 'embed', 'syslog' or java:<name of class that implements "
-            + AuditService.class.getName() + ">");
+            + "'. Valid values are 'embed', 'syslog', 'journal' or java:<name of class that "
+            + "implements " + AuditService.class.getName() + ">");
+      }
+
+      if (Boolean.parseBoolean(getString(auditProps, "audit.async", "false"))) {
+        AsyncAuditService asyncService = new AsyncAuditService(service);
+        asyncService.setQueueSize(getInt(auditProps, "audit.async.queueSize",
+            AsyncAuditService.DFLT_QUEUE_SIZE));
+        asyncService.setSenderThreads(getInt(auditProps, "audit.async.senderThreads", 1));
+        asyncService.setBatchSize(getInt(auditProps, "audit.async.batchSize",
+            AsyncAuditService.DFLT_BATCH_SIZE));
+        asyncService.setOverflowPolicy(OverflowPolicy.forName(
+            getString(auditProps, "audit.async.overflow", "spill")));
+        asyncService.setSpillDir(getString(auditProps, "audit.async.spillDir",
+            AsyncAuditService.DFLT_SPILL_DIR));
+        service = asyncService;
       }
 
       service.init(auditConf);
@@ -94,6 +114,16 @@ public class Audits {
     }
   }
 
+  public static void close() {
+    if (auditService instanceof Closeable) {
+      try {
+        ((Closeable) auditService).close();
+      } catch (IOException ex) {
+        throw new AuditServiceRuntimeException("could not close the AuditService", ex);
+      }
+    }
+  }
+
   private static Properties loadProperties(String path) throws AuditServiceRuntimeException {
     Path realPath = Paths.get(path);
     if (Files.exists(realPath)) {
@@ -119,4 +149,17 @@ public class Audits {
       return value == null ? dfltValue : value;
     }
   }
+
+  private static int getInt(Properties props, String key, int dfltValue) {
+    String value = getString(props, key, null);
+    if (value == null) {
+      return dfltValue;
+    }
+
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException ex) {
+      throw new AuditServiceRuntimeException("invalid " + key + ": " + value, ex);
+    }
+  }
 }
@@ -163,7 +163,19 @@ public class PciAuditEvent {
 
   public CharArrayWriter toCharArrayWriter(String prefix) {
     CharArrayWriter buffer = new CharArrayWriter(100);
+    appendTo(buffer, prefix);
+    return buffer;
+  }
 
+  /**
+   * Appends the formatted event to the given buffer.
+   * @param buffer
+   *          Buffer to which the event is appended.
+   * @param prefix
+   *          Prefix. May be {@code null}.
+   * @since 5.0.1
+   */
+  public void appendTo(CharArrayWriter buffer, String prefix) {
     final char de = DEFAULT_DELIMITER;
 
     if (prefix != null && !prefix.isEmpty()) {
@@ -177,8 +189,6 @@ public class PciAuditEvent {
     buffer.append(replaceDelimiter(getStatus())).append(de);
     buffer.append(replaceDelimiter(getOrigination())).append(de);
     buffer.append(replaceDelimiter(getAffectedResource()));
-
-    return buffer;
   }
 
   private static boolean isBlank(CharSequence cs) {
@@ -0,0 +1,425 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditService;
+import org.xipki.audit.AuditServiceMetrics;
+import org.xipki.audit.AuditServiceRuntimeException;
+import org.xipki.audit.PciAuditEvent;
+
+/**
+ * {@link AuditService} which hands the events over to a bounded lock-free queue and lets
+ * sender threads pass them in batches to the wrapped {@link AuditService}, so that slow
+ * audit I/O does not delay the requests. If the wrapped service is {@link Flushable}, it is
+ * flushed after each batch.
+ *
+ * <p>If the queue is full, the event is handled according to the {@link OverflowPolicy},
+ * default to {@link OverflowPolicy#SPILL}.
+ * Spilled events are written to files and passed to the wrapped service once the queue
+ * is empty again, hence they may be logged after younger events.
+ *
+ * <p>The events must not be modified after they have been logged.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class AsyncAuditService implements AuditService, AuditServiceMetrics, Closeable {
+
+  public enum OverflowPolicy {
+
+    /**
+     * The logging thread waits until the queue has free space. Not recommended, since the
+     * requests are stalled while the audit service is slow.
+     */
+    BLOCK,
+
+    /**
+     * The event is dropped and counted.
+     */
+    DROP,
+
+    /**
+     * The event is written to a spill file.
+     */
+    SPILL;
+
+    public static OverflowPolicy forName(String name) {
+      Objects.requireNonNull(name, "name may not be null");
+      for (OverflowPolicy m : values()) {
+        if (m.name().equalsIgnoreCase(name)) {
+          return m;
+        }
+      }
+      throw new IllegalArgumentException("invalid OverflowPolicy " + name);
+    }
+
+  }
+
+  private class Sender implements Runnable {
+
+    private final boolean replaySpill;
+
+    private volatile Thread thread;
+
+    private volatile boolean idle;
+
+    private Sender(boolean replaySpill) {
+      this.replaySpill = replaySpill;
+    }
+
+    @Override
+    public void run() {
+      List<Object> batch = new ArrayList<>(batchSize);
+      while (running || queue.size() > 0) {
+        int depth = queue.size();
+        int max = maxQueueDepth.get();
+        if (depth > max) {
+          maxQueueDepth.compareAndSet(max, depth);
+        }
+
+        if (queue.drainTo(batch, batchSize) > 0) {
+          deliver(batch);
+          batch.clear();
+        } else if (replaySpill && spillStore.hasPending()) {
+          replaySpill(batch);
+        } else {
+          idle = true;
+          // re-check, an event may have been added before idle was visible to producers
+          if (running && queue.size() == 0) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+          }
+          idle = false;
+        }
+      }
+    }
+
+  }
+
+  public static final int DFLT_QUEUE_SIZE = 8192;
+
+  public static final int DFLT_BATCH_SIZE = 256;
+
+  public static final String DFLT_SPILL_DIR = "xipki/audit-spill";
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncAuditService.class);
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private final AuditService delegate;
+
+  private int queueSize = DFLT_QUEUE_SIZE;
+
+  private int senderThreads = 1;
+
+  private int batchSize = DFLT_BATCH_SIZE;
+
+  // blocking would stall the request threads while the audit service is slow
+  private OverflowPolicy overflowPolicy = OverflowPolicy.SPILL;
+
+  private String spillDir = DFLT_SPILL_DIR;
+
+  private AuditEventQueue queue;
+
+  private AuditSpillStore spillStore;
+
+  private Sender[] senders;
+
+  private volatile boolean running;
+
+  private final LongAdder submitted = new LongAdder();
+
+  private final LongAdder sent = new LongAdder();
+
+  private final LongAdder failed = new LongAdder();
+
+  private final LongAdder dropped = new LongAdder();
+
+  private final LongAdder spilled = new LongAdder();
+
+  private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+  public AsyncAuditService(AuditService delegate) {
+    this.delegate = Objects.requireNonNull(delegate, "delegate may not be null");
+    if (delegate instanceof SyslogAuditService) {
+      // the batches are flushed by this service
+      ((SyslogAuditService) delegate).setAutoFlush(false);
+    }
+  }
+
+  @Override
+  public void init(String conf) {
+    LOG.info("initializing: {} for {}", AsyncAuditService.class, delegate.getClass());
+    delegate.init(conf);
+
+    queue = new AuditEventQueue(queueSize);
+    if (overflowPolicy == OverflowPolicy.SPILL) {
+      try {
+        spillStore = new AuditSpillStore(new File(spillDir));
+      } catch (IOException ex) {
+        throw new AuditServiceRuntimeException("could not initialize spill directory "
+            + spillDir, ex);
+      }
+    }
+
+    running = true;
+    senders = new Sender[senderThreads];
+    for (int i = 0; i < senderThreads; i++) {
+      // only one sender replays the spill files to keep their order
+      Sender sender = new Sender(i == 0 && spillStore != null);
+      Thread thread = new Thread(sender, "audit-sender-" + (i + 1));
+      thread.setDaemon(true);
+      sender.thread = thread;
+      senders[i] = sender;
+      thread.start();
+    }
+    LOG.info("initialized: {}, queue capacity {}, {} sender threads, overflow policy {}",
+        AsyncAuditService.class, queue.capacity(), senderThreads, overflowPolicy);
+  }
+
+  @Override
+  public void logEvent(AuditEvent event) {
+    submit(Objects.requireNonNull(event, "event may not be null"));
+  }
+
+  @Override
+  public void logEvent(PciAuditEvent event) {
+    submit(Objects.requireNonNull(event, "event may not be null"));
+  }
+
+  private void submit(Object event) {
+    if (!running) {
+      // not started or already closed
+      deliver(event);
+      return;
+    }
+
+    submitted.increment();
+    if (queue.offer(event)) {
+      wakeUpSenders();
+      return;
+    }
+
+    switch (overflowPolicy) {
+      case DROP:
+        dropped.increment();
+        LOG.debug("audit queue is full, dropped event");
+        break;
+      case SPILL:
+        try {
+          spillStore.write(event);
+          spilled.increment();
+        } catch (IOException ex) {
+          dropped.increment();
+          LOG.error("audit queue is full and could not spill event: {}", ex.getMessage());
+        }
+        break;
+      default:
+        while (!queue.offer(event)) {
+          if (!running) {
+            deliver(event);
+            return;
+          }
+          wakeUpSenders();
+          LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+        wakeUpSenders();
+        break;
+    }
+  }
+
+  private void wakeUpSenders() {
+    for (Sender sender : senders) {
+      if (sender.idle) {
+        LockSupport.unpark(sender.thread);
+      }
+    }
+  }
+
+  private void replaySpill(List<Object> batch) {
+    for (File file : spillStore.rollFiles()) {
+      if (!running) {
+        // the remaining files are replayed after the next start
+        break;
+      }
+
+      List<Object> events;
+      try {
+        events = AuditSpillStore.read(file);
+      } catch (IOException ex) {
+        LOG.error("could not read spill file {}: {}", file.getPath(), ex.getMessage());
+        continue;
+      }
+
+      for (Object event : events) {
+        batch.add(event);
+        if (batch.size() == batchSize) {
+          deliver(batch);
+          batch.clear();
+        }
+      }
+
+      if (!batch.isEmpty()) {
+        deliver(batch);
+        batch.clear();
+      }
+
+      if (!file.delete()) {
+        LOG.error("could not delete spill file {}", file.getPath());
+      }
+    }
+  }
+
+  private void deliver(List<Object> batch) {
+    for (Object event : batch) {
+      deliver(event);
+    }
+
+    if (delegate instanceof Flushable) {
+      try {
+        ((Flushable) delegate).flush();
+      } catch (IOException ex) {
+        LOG.error("could not flush audit events: {}", ex.getMessage());
+      }
+    }
+  }
+
+  private void deliver(Object event) {
+    try {
+      if (event instanceof AuditEvent) {
+        delegate.logEvent((AuditEvent) event);
+      } else {
+        delegate.logEvent((PciAuditEvent) event);
+      }
+      sent.increment();
+    } catch (RuntimeException ex) {
+      failed.increment();
+      LOG.error("could not log audit event: {}", ex.getMessage());
+    }
+  }
+
+  /**
+   * Stops the sender threads after the queued events have been passed to the wrapped
+   * service. Events logged afterwards are passed synchronously.
+   */
+  @Override
+  public void close() {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+    for (Sender sender : senders) {
+      LockSupport.unpark(sender.thread);
+    }
+
+    for (Sender sender : senders) {
+      try {
+        sender.thread.join(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    if (spillStore != null) {
+      spillStore.close();
+    }
+
+    if (delegate instanceof Closeable) {
+      try {
+        ((Closeable) delegate).close();
+      } catch (IOException ex) {
+        LOG.warn("could not close {}: {}", delegate.getClass().getName(), ex.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the metrics of the queue, and those of the wrapped service under the key
+   * {@code delegate} if it collects metrics.
+   * @return the metrics.
+   */
+  @Override
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("capacity", queue == null ? 0 : queue.capacity());
+    map.put("queueDepth", queue == null ? 0 : queue.size());
+    map.put("maxQueueDepth", maxQueueDepth.get());
+    map.put("submitted", submitted.sum());
+    map.put("sent", sent.sum());
+    map.put("failed", failed.sum());
+    map.put("dropped", dropped.sum());
+    map.put("spilled", spilled.sum());
+    map.put("overflowPolicy", overflowPolicy.name().toLowerCase(Locale.ROOT));
+    if (delegate instanceof AuditServiceMetrics) {
+      map.put("delegate", ((AuditServiceMetrics) delegate).getMetrics());
+    }
+    return map;
+  }
+
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  public int getQueueDepth() {
+    return queue == null ? 0 : queue.size();
+  }
+
+  public void setQueueSize(int queueSize) {
+    this.queueSize = (queueSize <= 0) ? DFLT_QUEUE_SIZE : queueSize;
+  }
+
+  public void setSenderThreads(int senderThreads) {
+    this.senderThreads = (senderThreads <= 0) ? 1 : senderThreads;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = (batchSize <= 0) ? DFLT_BATCH_SIZE : batchSize;
+  }
+
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = Objects.requireNonNull(overflowPolicy,
+        "overflowPolicy may not be null");
+  }
+
+  public void setSpillDir(String spillDir) {
+    this.spillDir = Objects.requireNonNull(spillDir, "spillDir may not be null");
+  }
+
+}
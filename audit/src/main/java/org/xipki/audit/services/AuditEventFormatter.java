@@ -0,0 +1,224 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditStatus;
+import org.xipki.audit.PciAuditEvent;
+
+/**
+ * Formats the audit events into a per-thread buffer which is reused for all events of the
+ * thread. The returned buffer is only valid until the next call of the same thread.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+final class AuditEventFormatter {
+
+  /**
+   * {@link CharArrayWriter} without synchronization, only used by the owning thread.
+   */
+  private static final class MessageBuffer extends CharArrayWriter {
+
+    private MessageBuffer(int initialSize) {
+      super(initialSize);
+    }
+
+    @Override
+    public void write(int ch) {
+      ensureCapacity(count + 1);
+      buf[count++] = (char) ch;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      ensureCapacity(count + len);
+      System.arraycopy(cbuf, off, buf, count, len);
+      count += len;
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      ensureCapacity(count + len);
+      str.getChars(off, off + len, buf, count);
+      count += len;
+    }
+
+    @Override
+    public MessageBuffer append(CharSequence csq) {
+      String str = (csq == null) ? "null" : csq.toString();
+      write(str, 0, str.length());
+      return this;
+    }
+
+    @Override
+    public MessageBuffer append(char ch) {
+      write(ch);
+      return this;
+    }
+
+    @Override
+    public void writeTo(Writer out) throws IOException {
+      out.write(buf, 0, count);
+    }
+
+    @Override
+    public void reset() {
+      count = 0;
+    }
+
+    @Override
+    public int size() {
+      return count;
+    }
+
+    @Override
+    public String toString() {
+      return new String(buf, 0, count);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+      if (minCapacity > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length << 1, minCapacity));
+      }
+    }
+
+  }
+
+  private static final int INITIAL_BUFFER_SIZE = 256;
+
+  // larger buffers are not kept to limit the memory held by idle threads
+  private static final int MAX_RETAINED_BUFFER_SIZE = 16 * 1024;
+
+  private static final ThreadLocal<AuditEventFormatter> INSTANCES =
+      ThreadLocal.withInitial(AuditEventFormatter::new);
+
+  private MessageBuffer buffer = new MessageBuffer(INITIAL_BUFFER_SIZE);
+
+  private final char[] digits = new char[20];
+
+  private AuditEventFormatter() {
+  }
+
+  static AuditEventFormatter getInstance() {
+    return INSTANCES.get();
+  }
+
+  /**
+   * Formats the event as {@code <level> | <application> - <name>:<data>}.
+   * @param event
+   *          Event to be formatted.
+   * @return the buffer containing the formatted event.
+   */
+  CharArrayWriter formatEmbed(AuditEvent event) {
+    CharArrayWriter buf = resetBuffer();
+    buf.append(event.getLevel().getAlignedText()).append(" | ");
+    String str = event.getApplicationName();
+    buf.append(str == null ? "undefined" : str).append(" - ");
+    str = event.getName();
+    buf.append(str == null ? "undefined" : str).append(':');
+    appendData(event);
+    return buf;
+  }
+
+  /**
+   * Formats the event as {@code <prefix><data>}.
+   * @param event
+   *          Event to be formatted.
+   * @param prefix
+   *          Prefix. May be {@code null}.
+   * @return the buffer containing the formatted event.
+   */
+  CharArrayWriter formatSyslog(AuditEvent event, String prefix) {
+    CharArrayWriter buf = resetBuffer();
+    if (prefix != null) {
+      buf.append(prefix);
+    }
+    appendData(event);
+    return buf;
+  }
+
+  CharArrayWriter format(PciAuditEvent event, String prefix) {
+    CharArrayWriter buf = resetBuffer();
+    event.appendTo(buf, prefix);
+    return buf;
+  }
+
+  private CharArrayWriter resetBuffer() {
+    if (buffer.size() > MAX_RETAINED_BUFFER_SIZE) {
+      buffer = new MessageBuffer(INITIAL_BUFFER_SIZE);
+    } else {
+      buffer.reset();
+    }
+    return buffer;
+  }
+
+  private void appendData(AuditEvent event) {
+    CharArrayWriter buf = buffer;
+    AuditStatus status = event.getStatus();
+    buf.append("\tstatus: ").append((status == null ? AuditStatus.UNDEFINED : status).name());
+
+    long duration = event.getDuration();
+    if (duration >= 0) {
+      buf.append("\tduration: ");
+      appendLong(duration);
+    }
+
+    final int n = event.getEventDataCount();
+    for (int i = 0; i < n; i++) {
+      String name = event.getEventDataName(i);
+      if (duration >= 0 && "duration".equalsIgnoreCase(name)) {
+        continue;
+      }
+
+      buf.append('\t').append(name).append(": ");
+      if (event.isLongEventData(i)) {
+        appendLong(event.getEventDataLongValue(i));
+      } else {
+        buf.append(event.getEventDataValue(i));
+      }
+    }
+  }
+
+  private void appendLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      buffer.append(Long.toString(value));
+      return;
+    }
+
+    boolean negative = value < 0;
+    long v = negative ? -value : value;
+    int pos = digits.length;
+    do {
+      digits[--pos] = (char) ('0' + (v % 10));
+      v /= 10;
+    } while (v != 0);
+
+    if (negative) {
+      digits[--pos] = '-';
+    }
+    buffer.write(digits, pos, digits.length - pos);
+  }
+
+}
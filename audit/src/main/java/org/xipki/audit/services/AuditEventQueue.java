@@ -0,0 +1,150 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer ring buffer (after D. Vyukov). Each slot
+ * has a sequence number which tells producers and consumers whether the slot is free or
+ * occupied in the current round, so that a successful CAS on the position is the only
+ * contended operation.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class AuditEventQueue {
+
+  private final int mask;
+
+  private final AtomicReferenceArray<Object> slots;
+
+  private final AtomicLongArray sequences;
+
+  private final AtomicLong enqueuePos = new AtomicLong();
+
+  private final AtomicLong dequeuePos = new AtomicLong();
+
+  /**
+   * Constructor.
+   * @param capacity the capacity, will be rounded up to the next power of 2.
+   */
+  public AuditEventQueue(int capacity) {
+    if (capacity < 2) {
+      capacity = 2;
+    }
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = size - 1;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+
+  public int size() {
+    long size = enqueuePos.get() - dequeuePos.get();
+    return (size < 0) ? 0 : (int) Math.min(size, mask + 1);
+  }
+
+  /**
+   * Adds the event if the queue is not full.
+   * @param event the event, may not be {@code null}.
+   * @return whether the event has been added.
+   */
+  public boolean offer(Object event) {
+    long pos = enqueuePos.get();
+    int idx;
+    while (true) {
+      idx = (int) pos & mask;
+      long diff = sequences.get(idx) - pos;
+      if (diff == 0) {
+        if (enqueuePos.compareAndSet(pos, pos + 1)) {
+          break;
+        }
+        pos = enqueuePos.get();
+      } else if (diff < 0) {
+        // the slot has not been consumed in the previous round: full
+        return false;
+      } else {
+        pos = enqueuePos.get();
+      }
+    }
+
+    slots.lazySet(idx, event);
+    sequences.set(idx, pos + 1);
+    return true;
+  }
+
+  /**
+   * Removes the head of the queue.
+   * @return the head of the queue, or {@code null} if the queue is empty.
+   */
+  public Object poll() {
+    long pos = dequeuePos.get();
+    int idx;
+    while (true) {
+      idx = (int) pos & mask;
+      long diff = sequences.get(idx) - (pos + 1);
+      if (diff == 0) {
+        if (dequeuePos.compareAndSet(pos, pos + 1)) {
+          break;
+        }
+        pos = dequeuePos.get();
+      } else if (diff < 0) {
+        // the slot has not been filled in this round: empty
+        return null;
+      } else {
+        pos = dequeuePos.get();
+      }
+    }
+
+    Object event = slots.get(idx);
+    slots.lazySet(idx, null);
+    sequences.set(idx, pos + mask + 1);
+    return event;
+  }
+
+  /**
+   * Removes at most {@code maxEvents} events from the queue.
+   * @param events list to add the events to.
+   * @param maxEvents maximal number of events.
+   * @return the number of removed events.
+   */
+  public int drainTo(List<Object> events, int maxEvents) {
+    int n = 0;
+    while (n < maxEvents) {
+      Object event = poll();
+      if (event == null) {
+        break;
+      }
+      events.add(event);
+      n++;
+    }
+    return n;
+  }
+
+}
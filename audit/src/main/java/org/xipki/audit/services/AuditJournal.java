@@ -0,0 +1,625 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of audit records in memory-mapped segment files.
+ *
+ * <p>A segment starts with the header {@code magic(4) | first sequence number(8) |
+ * hash of the previous record(32)}, followed by the records
+ * {@code length(4) | sequence number(8) | hash(32) | payload(length)}. The hash of a record
+ * is SHA-256(hash of the previous record | sequence number | payload), so that modified,
+ * removed or inserted records break the chain. A record length of zero marks the end of
+ * the segment.
+ *
+ * <p>The records are written into the mapped memory and forced to the disk by
+ * {@link #sync(long)}, so that concurrent writers share one fsync.
+ *
+ * <p>Before segments are deleted by {@link #release(long)}, the sequence number and hash of
+ * their last record are saved in the file {@value #ANCHOR_FILE}. The remaining records must
+ * continue this anchor, so that the deletion of further segments is detected as well.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class AuditJournal implements Closeable {
+
+  static final class Record {
+
+    private final long seq;
+
+    private final byte[] hash;
+
+    private final byte[] payload;
+
+    private Record(long seq, byte[] hash, byte[] payload) {
+      this.seq = seq;
+      this.hash = hash;
+      this.payload = payload;
+    }
+
+    long getSeq() {
+      return seq;
+    }
+
+    byte[] getHash() {
+      return hash;
+    }
+
+    byte[] getPayload() {
+      return payload;
+    }
+
+  }
+
+  /**
+   * Read position of a consumer of the journal.
+   */
+  static final class Cursor {
+
+    private long nextSeq;
+
+    private Segment segment;
+
+    private ByteBuffer buffer;
+
+    private int offset;
+
+    Cursor(long nextSeq) {
+      seek(nextSeq);
+    }
+
+    long getNextSeq() {
+      return nextSeq;
+    }
+
+    void seek(long nextSeq) {
+      this.nextSeq = nextSeq;
+      this.segment = null;
+      this.buffer = null;
+    }
+
+  }
+
+  private static final class Segment {
+
+    private final File file;
+
+    private final long firstSeq;
+
+    private final MappedByteBuffer buffer;
+
+    private Segment(File file, long firstSeq, MappedByteBuffer buffer) {
+      this.file = file;
+      this.firstSeq = firstSeq;
+      this.buffer = buffer;
+    }
+
+  }
+
+  /**
+   * Sequence number and hash of the last record of the deleted segments.
+   */
+  private static final class Anchor {
+
+    private final long seq;
+
+    private final byte[] hash;
+
+    private Anchor(long seq, byte[] hash) {
+      this.seq = seq;
+      this.hash = hash;
+    }
+
+  }
+
+  private static final Logger LOG = LoggerFactory.getLogger(AuditJournal.class);
+
+  private static final int MAGIC = 0x58414a31; // XAJ1
+
+  private static final int HASH_LEN = 32;
+
+  private static final int SEGMENT_HEADER_LEN = 4 + 8 + HASH_LEN;
+
+  private static final int RECORD_HEADER_LEN = 4 + 8 + HASH_LEN;
+
+  private static final String PREFIX = "journal-";
+
+  private static final String SUFFIX = ".seg";
+
+  private static final String ANCHOR_FILE = "anchor";
+
+  private final File dir;
+
+  private final int segmentSize;
+
+  private final MessageDigest md;
+
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+  private final Object syncLock = new Object();
+
+  private Segment current;
+
+  private byte[] lastHash = new byte[HASH_LEN];
+
+  private final byte[] seqBytes = new byte[8];
+
+  private volatile long lastSeq;
+
+  private volatile long syncedSeq;
+
+  AuditJournal(File dir, int segmentSize) throws IOException {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    try {
+      this.md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IOException("SHA-256 is not supported", ex);
+    }
+
+    if (!dir.exists() && !dir.mkdirs()) {
+      throw new IOException("could not create directory " + dir.getPath());
+    }
+
+    recover();
+    syncedSeq = lastSeq;
+  }
+
+  long getLastSeq() {
+    return lastSeq;
+  }
+
+  long getSyncedSeq() {
+    return syncedSeq;
+  }
+
+  synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Appends a record.
+   * @param payload
+   *          Payload of the record.
+   * @return the sequence number of the record.
+   * @throws IOException
+   *           if the record could not be written.
+   */
+  synchronized long append(byte[] payload) throws IOException {
+    int len = payload.length;
+    if (len == 0) {
+      throw new IllegalArgumentException("payload may not be empty");
+    } else if (RECORD_HEADER_LEN + len + 4 > segmentSize - SEGMENT_HEADER_LEN) {
+      throw new IOException("audit record too large: " + len + " bytes");
+    }
+
+    long seq = lastSeq + 1;
+    // keep 4 bytes for the terminating zero length
+    if (current == null || current.buffer.remaining() < RECORD_HEADER_LEN + len + 4) {
+      rotate(seq);
+    }
+
+    byte[] hash = hash(lastHash, seq, payload, 0, len);
+
+    MappedByteBuffer buf = current.buffer;
+    int pos = buf.position();
+    buf.position(pos + 4);
+    buf.putLong(seq).put(hash).put(payload);
+    buf.putInt(buf.position(), 0);
+    // write the length at last, a record with non-zero length is complete
+    buf.putInt(pos, len);
+
+    lastHash = hash;
+    lastSeq = seq;
+    return seq;
+  }
+
+  /**
+   * Forces the records up to the given sequence number to the disk. If another thread is
+   * forcing the journal, this method waits and returns without fsync if the record has been
+   * forced meanwhile.
+   * @param seq
+   *          Sequence number of the record.
+   */
+  void sync(long seq) {
+    if (syncedSeq >= seq) {
+      return;
+    }
+
+    synchronized (syncLock) {
+      if (syncedSeq >= seq) {
+        return;
+      }
+
+      Segment segment;
+      long target;
+      synchronized (this) {
+        segment = current;
+        target = lastSeq;
+      }
+
+      if (segment != null) {
+        segment.buffer.force();
+      }
+      syncedSeq = target;
+    }
+  }
+
+  /**
+   * Reads the next records.
+   * @param cursor
+   *          Read position, will be moved behind the returned records.
+   * @param max
+   *          Maximal number of records to be read.
+   * @return the records, may be empty.
+   */
+  List<Record> read(Cursor cursor, int max) {
+    List<Record> records = new ArrayList<>(Math.min(max, 64));
+    while (records.size() < max && cursor.nextSeq <= lastSeq) {
+      if (cursor.buffer == null) {
+        if (!locate(cursor)) {
+          break;
+        }
+      }
+
+      ByteBuffer buf = cursor.buffer;
+      int len = (cursor.offset + 4 <= buf.limit()) ? buf.getInt(cursor.offset) : 0;
+      if (len == 0) {
+        // end of segment
+        Segment next;
+        synchronized (this) {
+          Map.Entry<Long, Segment> entry = segments.higherEntry(cursor.segment.firstSeq);
+          next = (entry == null) ? null : entry.getValue();
+        }
+
+        if (next == null) {
+          break;
+        }
+        setSegment(cursor, next);
+        continue;
+      }
+
+      long seq = buf.getLong(cursor.offset + 4);
+      int payloadOffset = cursor.offset + RECORD_HEADER_LEN;
+      cursor.offset = payloadOffset + len;
+      if (seq < cursor.nextSeq) {
+        continue;
+      }
+
+      byte[] hash = new byte[HASH_LEN];
+      byte[] payload = new byte[len];
+      ByteBuffer dup = buf.duplicate();
+      dup.position(payloadOffset - HASH_LEN);
+      dup.get(hash).get(payload);
+      records.add(new Record(seq, hash, payload));
+      cursor.nextSeq = seq + 1;
+    }
+    return records;
+  }
+
+  /**
+   * Deletes the segments whose records are all not greater than the given sequence number.
+   * The current segment is never deleted.
+   * @param seq
+   *          Sequence number.
+   */
+  synchronized void release(long seq) {
+    List<Segment> obsoleteSegments = new ArrayList<>();
+    Segment anchorSegment = null;
+    for (Segment segment : segments.values()) {
+      Map.Entry<Long, Segment> next = segments.higherEntry(segment.firstSeq);
+      if (next == null || next.getKey() - 1 > seq) {
+        break;
+      }
+
+      obsoleteSegments.add(segment);
+      anchorSegment = next.getValue();
+    }
+
+    if (anchorSegment == null) {
+      return;
+    }
+
+    // the header of the first remaining segment continues the deleted records
+    byte[] anchorHash = new byte[HASH_LEN];
+    ByteBuffer dup = anchorSegment.buffer.duplicate();
+    dup.position(4 + 8);
+    dup.get(anchorHash);
+    try {
+      saveAnchor(anchorSegment.firstSeq - 1, anchorHash);
+    } catch (IOException ex) {
+      LOG.warn("could not save the audit journal anchor, keep the segments: {}",
+          ex.getMessage());
+      return;
+    }
+
+    for (Segment segment : obsoleteSegments) {
+      segments.remove(segment.firstSeq);
+      if (!segment.file.delete()) {
+        LOG.warn("could not delete audit journal segment {}", segment.file.getPath());
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    sync(Long.MAX_VALUE);
+  }
+
+  private boolean locate(Cursor cursor) {
+    Segment segment;
+    synchronized (this) {
+      Map.Entry<Long, Segment> entry = segments.floorEntry(cursor.nextSeq);
+      if (entry == null) {
+        entry = segments.firstEntry();
+      }
+      segment = (entry == null) ? null : entry.getValue();
+    }
+
+    if (segment == null) {
+      return false;
+    }
+
+    if (cursor.nextSeq < segment.firstSeq) {
+      LOG.warn("audit records {} - {} are not available anymore", cursor.nextSeq,
+          segment.firstSeq - 1);
+      cursor.nextSeq = segment.firstSeq;
+    }
+    setSegment(cursor, segment);
+    return true;
+  }
+
+  private static void setSegment(Cursor cursor, Segment segment) {
+    cursor.segment = segment;
+    cursor.buffer = segment.buffer.duplicate();
+    cursor.offset = SEGMENT_HEADER_LEN;
+  }
+
+  private void rotate(long firstSeq) throws IOException {
+    if (current != null) {
+      current.buffer.force();
+    }
+
+    File file = new File(dir, String.format("%s%020d%s", PREFIX, firstSeq, SUFFIX));
+    MappedByteBuffer buf = map(file, segmentSize);
+    buf.putInt(MAGIC).putLong(firstSeq).put(lastHash);
+    buf.putInt(buf.position(), 0);
+
+    current = new Segment(file, firstSeq, buf);
+    segments.put(firstSeq, current);
+    LOG.info("created audit journal segment {}", file.getPath());
+  }
+
+  private void recover() throws IOException {
+    Anchor anchor = loadAnchor();
+    File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+    if (files == null || files.length == 0) {
+      if (anchor != null) {
+        throw new IOException("audit journal segments after record " + anchor.seq
+            + " have been deleted");
+      }
+      return;
+    }
+
+    Arrays.sort(files);
+    for (int i = 0; i < files.length; i++) {
+      File file = files[i];
+      boolean lastFile = i == files.length - 1;
+      MappedByteBuffer buf = map(file, 0);
+      if (buf.limit() < SEGMENT_HEADER_LEN || buf.getInt() != MAGIC) {
+        if (!lastFile) {
+          throw new IOException("invalid audit journal segment " + file.getPath());
+        }
+
+        // crash in rotate() before the header has been written, the segment is empty
+        reinitSegment(file, anchor);
+        break;
+      }
+
+      long firstSeq = buf.getLong();
+      byte[] prevHash = new byte[HASH_LEN];
+      buf.get(prevHash);
+      if (current == null) {
+        // the previous segments have already been deleted
+        if (anchor != null && firstSeq - 1 > anchor.seq) {
+          throw new IOException("audit journal records " + (anchor.seq + 1) + " to "
+              + (firstSeq - 1) + " have been deleted");
+        }
+        lastHash = prevHash;
+      } else if (firstSeq != lastSeq + 1 || !Arrays.equals(prevHash, lastHash)) {
+        throw new IOException("audit journal chain broken at segment " + file.getPath());
+      }
+
+      lastSeq = firstSeq - 1;
+      checkAnchor(anchor, file);
+      int count = 0;
+      while (buf.remaining() >= 4) {
+        int pos = buf.position();
+        int len = buf.getInt();
+        if (len == 0) {
+          buf.position(pos);
+          break;
+        }
+
+        String error = null;
+        if (len < 0 || len > buf.remaining() - RECORD_HEADER_LEN + 4) {
+          error = "invalid length";
+        } else {
+          long seq = buf.getLong();
+          byte[] hash = new byte[HASH_LEN];
+          buf.get(hash);
+          byte[] payload = new byte[len];
+          buf.get(payload);
+          if (seq != lastSeq + 1) {
+            error = "unexpected sequence number " + seq;
+          } else if (!Arrays.equals(hash, hash(lastHash, seq, payload, 0, len))) {
+            error = "hash mismatch";
+          } else {
+            lastSeq = seq;
+            lastHash = hash;
+            checkAnchor(anchor, file);
+            count++;
+          }
+        }
+
+        if (error != null) {
+          if (!lastFile) {
+            throw new IOException("audit journal corrupted or tampered at position " + pos
+                + " of " + file.getPath() + ": " + error);
+          }
+
+          // torn write of the last record before a crash, continue from here
+          LOG.warn("ignore the audit journal {} from position {}: {}", file.getPath(), pos,
+              error);
+          buf.position(pos);
+          break;
+        }
+      }
+
+      current = new Segment(file, firstSeq, buf);
+      segments.put(firstSeq, current);
+      LOG.info("recovered audit journal segment {} with {} records", file.getPath(), count);
+    }
+
+    if (anchor != null && lastSeq < anchor.seq) {
+      throw new IOException("audit journal records after " + lastSeq
+          + " have been deleted, expected at least the record " + anchor.seq);
+    }
+
+    if (current.buffer.remaining() >= 4) {
+      current.buffer.putInt(current.buffer.position(), 0);
+    }
+  }
+
+  private void checkAnchor(Anchor anchor, File file) throws IOException {
+    if (anchor != null && lastSeq == anchor.seq && !Arrays.equals(lastHash, anchor.hash)) {
+      throw new IOException("audit journal segment " + file.getPath()
+          + " does not match the anchor, tampered");
+    }
+  }
+
+  private void reinitSegment(File file, Anchor anchor) throws IOException {
+    String name = file.getName();
+    long firstSeq;
+    try {
+      firstSeq = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    } catch (NumberFormatException ex) {
+      throw new IOException("invalid audit journal segment " + file.getPath());
+    }
+
+    if (current == null) {
+      lastSeq = firstSeq - 1;
+      if (anchor != null) {
+        if (lastSeq != anchor.seq) {
+          throw new IOException("audit journal chain broken at segment " + file.getPath());
+        }
+        lastHash = anchor.hash;
+      }
+    } else if (firstSeq != lastSeq + 1) {
+      throw new IOException("audit journal chain broken at segment " + file.getPath());
+    }
+
+    LOG.warn("audit journal segment {} has no header, reinitialize it", file.getPath());
+    rotate(firstSeq);
+  }
+
+  private Anchor loadAnchor() throws IOException {
+    File file = new File(dir, ANCHOR_FILE);
+    if (!file.exists()) {
+      return null;
+    }
+
+    String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).trim();
+    int idx = text.indexOf(' ');
+    byte[] hash = null;
+    long seq = 0;
+    if (idx != -1) {
+      try {
+        seq = Long.parseLong(text.substring(0, idx));
+        hash = Base64.getDecoder().decode(text.substring(idx + 1));
+      } catch (IllegalArgumentException ex) {
+        hash = null;
+      }
+    }
+
+    if (hash == null || hash.length != HASH_LEN) {
+      throw new IOException("invalid audit journal anchor " + file.getPath());
+    }
+    return new Anchor(seq, hash);
+  }
+
+  private void saveAnchor(long seq, byte[] hash) throws IOException {
+    Path path = new File(dir, ANCHOR_FILE).toPath();
+    Path tmpPath = new File(dir, ANCHOR_FILE + ".tmp").toPath();
+    String text = seq + " " + Base64.getEncoder().encodeToString(hash);
+    Files.write(tmpPath, text.getBytes(StandardCharsets.US_ASCII));
+    Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private byte[] hash(byte[] prevHash, long seq, byte[] payload, int off, int len) {
+    for (int i = 7; i >= 0; i--) {
+      seqBytes[i] = (byte) seq;
+      seq >>>= 8;
+    }
+
+    md.reset();
+    md.update(prevHash);
+    md.update(seqBytes);
+    md.update(payload, off, len);
+    return md.digest();
+  }
+
+  private static MappedByteBuffer map(File file, int size) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel()) {
+      long length = (size > 0) ? size : raf.length();
+      if (size > 0) {
+        raf.setLength(size);
+      }
+      // the mapping remains valid after the channel has been closed
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+  }
+
+}
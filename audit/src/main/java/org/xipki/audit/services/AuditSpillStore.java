@@ -0,0 +1,270 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditLevel;
+import org.xipki.audit.AuditStatus;
+import org.xipki.audit.PciAuditEvent;
+
+/**
+ * Files to keep the audit events which do not fit into the queue of the
+ * {@link AsyncAuditService}. Each event is written as one line of tab-separated fields.
+ * Files left by a previous run are replayed as well. The same line format is used for the
+ * records of the {@link AuditJournal}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class AuditSpillStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AuditSpillStore.class);
+
+  private static final String SUFFIX = ".spill";
+
+  private static final DateTimeFormatter PCI_DATE_TIME =
+      DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+  private final File dir;
+
+  private final long startTime = System.currentTimeMillis();
+
+  private int fileIndex;
+
+  private File currentFile;
+
+  private Writer writer;
+
+  private volatile boolean pending;
+
+  AuditSpillStore(File dir) throws IOException {
+    this.dir = dir;
+    Files.createDirectories(dir.toPath());
+    pending = listFiles().length > 0;
+  }
+
+  boolean hasPending() {
+    return pending;
+  }
+
+  synchronized void write(Object event) throws IOException {
+    if (writer == null) {
+      currentFile = new File(dir, String.format("audit-%d-%08d%s", startTime, fileIndex++, SUFFIX));
+      writer = Files.newBufferedWriter(currentFile.toPath(), StandardCharsets.UTF_8);
+    }
+
+    StringBuilder sb = new StringBuilder(200);
+    encode(event, sb);
+    sb.append('\n');
+    writer.write(sb.toString());
+    // the event is only kept if written to the file
+    writer.flush();
+    pending = true;
+  }
+
+  /**
+   * Closes the current file and returns all spill files in the order of their creation.
+   * New events will be written to a new file.
+   * @return the spill files
+   */
+  synchronized List<File> rollFiles() {
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException ex) {
+        LOG.warn("could not close spill file {}: {}", currentFile.getPath(), ex.getMessage());
+      }
+      writer = null;
+      currentFile = null;
+    }
+
+    pending = false;
+    File[] files = listFiles();
+    Arrays.sort(files);
+    return Arrays.asList(files);
+  }
+
+  synchronized void close() {
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException ex) {
+        LOG.warn("could not close spill file {}: {}", currentFile.getPath(), ex.getMessage());
+      }
+      writer = null;
+    }
+  }
+
+  private File[] listFiles() {
+    File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+    return (files == null) ? new File[0] : files;
+  }
+
+  static List<Object> read(File file) throws IOException {
+    List<Object> events = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+
+        try {
+          events.add(decode(line));
+        } catch (RuntimeException ex) {
+          LOG.error("could not decode spilled audit event '{}': {}", line, ex.getMessage());
+        }
+      }
+    }
+    return events.isEmpty() ? Collections.emptyList() : events;
+  }
+
+  static void encode(Object event, StringBuilder sb) {
+    if (event instanceof AuditEvent) {
+      AuditEvent ev = (AuditEvent) event;
+      sb.append('A');
+      append(sb, Long.toString(ev.getTimestampMillis()));
+      append(sb, ev.getApplicationName());
+      append(sb, ev.getName());
+      append(sb, ev.getLevel() == null ? null : ev.getLevel().name());
+      append(sb, ev.getStatus() == null ? null : ev.getStatus().name());
+      append(sb, Long.toString(ev.getDuration()));
+      final int n = ev.getEventDataCount();
+      for (int i = 0; i < n; i++) {
+        append(sb, ev.getEventDataName(i));
+        append(sb, ev.getEventDataValue(i));
+      }
+    } else {
+      PciAuditEvent ev = (PciAuditEvent) event;
+      sb.append('P');
+      append(sb, ev.getDate() + " " + ev.getTime());
+      append(sb, ev.getLevel().name());
+      append(sb, ev.getUserId());
+      append(sb, ev.getEventType());
+      append(sb, ev.getStatus());
+      append(sb, ev.getOrigination());
+      append(sb, ev.getAffectedResource());
+    }
+  }
+
+  static Object decode(String line) {
+    String[] tokens = line.split("\t", -1);
+    for (int i = 1; i < tokens.length; i++) {
+      tokens[i] = unescape(tokens[i]);
+    }
+
+    if ("A".equals(tokens[0])) {
+      AuditEvent event = new AuditEvent(Long.parseLong(tokens[1]));
+      if (tokens[2] != null) {
+        event.setApplicationName(tokens[2]);
+      }
+      event.setName(tokens[3]);
+      if (tokens[4] != null) {
+        event.setLevel(AuditLevel.forName(tokens[4]));
+      }
+      if (tokens[5] != null) {
+        event.setStatus(AuditStatus.valueOf(tokens[5]));
+      }
+      event.setDuration(Long.parseLong(tokens[6]));
+      for (int i = 7; i + 1 < tokens.length; i += 2) {
+        event.addEventData(tokens[i], tokens[i + 1]);
+      }
+      return event;
+    } else if ("P".equals(tokens[0])) {
+      LocalDateTime time = LocalDateTime.parse(tokens[1], PCI_DATE_TIME);
+      PciAuditEvent event = new PciAuditEvent(Date.from(time.toInstant(ZoneOffset.UTC)));
+      event.setLevel(AuditLevel.forName(tokens[2]));
+      event.setUserId(tokens[3]);
+      event.setEventType(tokens[4]);
+      event.setStatus(tokens[5]);
+      event.setOrigination(tokens[6]);
+      event.setAffectedResource(tokens[7]);
+      return event;
+    } else {
+      throw new IllegalArgumentException("unknown event type " + tokens[0]);
+    }
+  }
+
+  private static void append(StringBuilder sb, String value) {
+    sb.append('\t');
+    if (value == null) {
+      // distinguish null from the empty string
+      sb.append("\\0");
+      return;
+    }
+
+    for (int i = 0; i < value.length(); i++) {
+      char ch = value.charAt(i);
+      switch (ch) {
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        default:
+          sb.append(ch);
+      }
+    }
+  }
+
+  private static String unescape(String str) {
+    if ("\\0".equals(str)) {
+      return null;
+    } else if (str.indexOf('\\') == -1) {
+      return str;
+    }
+
+    StringBuilder sb = new StringBuilder(str.length());
+    for (int i = 0; i < str.length(); i++) {
+      char ch = str.charAt(i);
+      if (ch == '\\' && i + 1 < str.length()) {
+        char next = str.charAt(++i);
+        sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb.toString();
+  }
+
+}
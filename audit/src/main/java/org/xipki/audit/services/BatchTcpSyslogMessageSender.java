@@ -0,0 +1,175 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.io.BufferedOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudbees.syslog.SyslogMessage;
+import com.cloudbees.syslog.sender.AbstractSyslogMessageSender;
+
+/**
+ * TCP syslog sender which buffers the messages until {@link #flush()} is called, so that
+ * a batch of messages is sent with few TCP writes. If auto-flush is activated, each
+ * message is sent immediately, as by the {@code TcpSyslogMessageSender}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class BatchTcpSyslogMessageSender extends AbstractSyslogMessageSender implements Flushable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BatchTcpSyslogMessageSender.class);
+
+  private static final int SOCKET_CONNECT_TIMEOUT = 500;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private String syslogServerHostname;
+
+  private int syslogServerPort;
+
+  private boolean ssl;
+
+  private int maxRetryCount = 3;
+
+  private boolean autoFlush = true;
+
+  private Socket socket;
+
+  private Writer writer;
+
+  void setSyslogServerHostname(String syslogServerHostname) {
+    this.syslogServerHostname = syslogServerHostname;
+  }
+
+  void setSyslogServerPort(int syslogServerPort) {
+    this.syslogServerPort = syslogServerPort;
+  }
+
+  void setSsl(boolean ssl) {
+    this.ssl = ssl;
+  }
+
+  void setMaxRetryCount(int maxRetryCount) {
+    this.maxRetryCount = maxRetryCount;
+  }
+
+  void setAutoFlush(boolean autoFlush) {
+    this.autoFlush = autoFlush;
+  }
+
+  @Override
+  public synchronized void sendMessage(SyslogMessage message) throws IOException {
+    sendCounter.incrementAndGet();
+    long start = System.nanoTime();
+    try {
+      IOException lastException = null;
+      for (int i = 0; i <= maxRetryCount; i++) {
+        try {
+          ensureConnection();
+          message.toSyslogMessage(messageFormat, writer);
+          writer.write("\r\n");
+          if (autoFlush) {
+            writer.flush();
+          }
+          return;
+        } catch (IOException ex) {
+          // the buffered but not flushed messages of this connection are lost
+          lastException = ex;
+          closeConnection();
+        }
+      }
+
+      sendErrorCounter.incrementAndGet();
+      throw lastException;
+    } finally {
+      sendDurationInNanosCounter.addAndGet(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public synchronized void flush() throws IOException {
+    if (writer == null) {
+      return;
+    }
+
+    try {
+      writer.flush();
+    } catch (IOException ex) {
+      sendErrorCounter.incrementAndGet();
+      closeConnection();
+      throw ex;
+    }
+  }
+
+  synchronized void close() {
+    if (writer != null) {
+      try {
+        writer.flush();
+      } catch (IOException ex) {
+        LOG.warn("could not flush syslog messages: {}", ex.getMessage());
+      }
+    }
+    closeConnection();
+  }
+
+  private void ensureConnection() throws IOException {
+    if (socket != null && (socket.isClosed() || !socket.isConnected())) {
+      closeConnection();
+    }
+
+    if (socket == null) {
+      Socket newSocket = ssl ? SSLSocketFactory.getDefault().createSocket() : new Socket();
+      try {
+        newSocket.setKeepAlive(true);
+        newSocket.connect(new InetSocketAddress(syslogServerHostname, syslogServerPort),
+            SOCKET_CONNECT_TIMEOUT);
+        writer = new OutputStreamWriter(
+            new BufferedOutputStream(newSocket.getOutputStream(), BUFFER_SIZE), UTF_8);
+        socket = newSocket;
+      } catch (IOException ex) {
+        newSocket.close();
+        throw ex;
+      }
+    }
+  }
+
+  private void closeConnection() {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException ex) {
+        LOG.debug("could not close socket: {}", ex.getMessage());
+      }
+    }
+    socket = null;
+    writer = null;
+  }
+
+}
@@ -17,17 +17,13 @@
 
 package org.xipki.audit.services;
 
-import java.io.CharArrayWriter;
-import java.util.List;
 import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.audit.AuditEvent;
-import org.xipki.audit.AuditEventData;
 import org.xipki.audit.AuditLevel;
 import org.xipki.audit.AuditService;
-import org.xipki.audit.AuditStatus;
 import org.xipki.audit.PciAuditEvent;
 
 /**
@@ -52,12 +48,12 @@ public class EmbedAuditService implements AuditService {
     switch (event.getLevel()) {
       case DEBUG:
         if (LOG.isDebugEnabled()) {
-          LOG.debug("{}", createMessage(event));
+          LOG.debug("{}", AuditEventFormatter.getInstance().formatEmbed(event).toString());
         }
         break;
       default:
         if (LOG.isInfoEnabled()) {
-          LOG.info("{}", createMessage(event));
+          LOG.info("{}", AuditEventFormatter.getInstance().formatEmbed(event).toString());
         }
         break;
     } // end switch
@@ -65,7 +61,9 @@ public class EmbedAuditService implements AuditService {
 
   @Override
   public void logEvent(PciAuditEvent event) {
-    CharArrayWriter msg = event.toCharArrayWriter("");
+    // the buffer is reused by the next event of this thread, the appenders of the logger may
+    // format the message asynchronously.
+    String msg = AuditEventFormatter.getInstance().format(event, null).toString();
     AuditLevel al = event.getLevel();
     switch (al) {
       case DEBUG:
@@ -83,44 +81,7 @@ public class EmbedAuditService implements AuditService {
 
   protected static String createMessage(AuditEvent event) {
     Objects.requireNonNull(event, "event may not be null");
-    String applicationName = event.getApplicationName();
-    if (applicationName == null) {
-      applicationName = "undefined";
-    }
-
-    String name = event.getName();
-    if (name == null) {
-      name = "undefined";
-    }
-
-    StringBuilder sb = new StringBuilder(150);
-
-    sb.append(event.getLevel().getAlignedText()).append(" | ");
-    sb.append(applicationName).append(" - ").append(name);
-
-    AuditStatus status = event.getStatus();
-    if (status == null) {
-      status = AuditStatus.UNDEFINED;
-    }
-    sb.append(":\tstatus: ").append(status.name());
-    List<AuditEventData> eventDataArray = event.getEventDatas();
-
-    long duration = event.getDuration();
-    if (duration >= 0) {
-      sb.append("\tduration: ").append(duration);
-    }
-
-    if ((eventDataArray != null) && (eventDataArray.size() > 0)) {
-      for (AuditEventData m : eventDataArray) {
-        if (duration >= 0 && "duration".equalsIgnoreCase(m.getName())) {
-          continue;
-        }
-
-        sb.append("\t").append(m.getName()).append(": ").append(m.getValue());
-      }
-    }
-
-    return sb.toString();
+    return AuditEventFormatter.getInstance().formatEmbed(event).toString();
   }
 
 }
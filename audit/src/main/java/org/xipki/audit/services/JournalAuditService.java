@@ -0,0 +1,418 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditService;
+import org.xipki.audit.AuditServiceMetrics;
+import org.xipki.audit.AuditServiceRuntimeException;
+import org.xipki.audit.PciAuditEvent;
+
+/**
+ * {@link AuditService} which appends the events to a local hash-chained journal
+ * (see {@link AuditJournal}). A background shipper forwards the journaled events to the
+ * sink (syslog by default) at its own pace, and retries from the last forwarded event if
+ * the sink fails. Segments are deleted once all their events have been forwarded.
+ *
+ * <p>Each forwarded event carries the sequence number and the Base64 encoded hash of its
+ * journal record, so that the collector can detect missing events and match them against the
+ * journal: {@link AuditEvent} as the event data {@code journalSeq} and
+ * {@code journalHash}, {@link PciAuditEvent} only with the syslog sink as the message
+ * prefix {@code <seq>:<hash>}.
+ *
+ * <p>Configuration properties:
+ * <ul>
+ *   <li>dir: journal directory, default {@value #DFLT_DIR}.</li>
+ *   <li>segmentSize: size of a segment file in bytes, default 64 MiB.</li>
+ *   <li>syncMode: {@code interval} (default) to force the journal to the disk every
+ *     syncInterval milliseconds (default 50), or {@code always} to force it before
+ *     {@code logEvent()} returns. Concurrent events share one fsync.</li>
+ *   <li>sink.type: {@code syslog} (default), {@code embed}, {@code none} or
+ *     {@code java:<class name>} of an {@link AuditService}. If none, the segments are
+ *     kept.</li>
+ *   <li>sink.conf: configuration of the sink, default {@value #DFLT_SINK_CONF}.</li>
+ *   <li>batchSize: maximal number of events forwarded at once, default 256.</li>
+ * </ul>
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class JournalAuditService
+    implements AuditService, AuditServiceMetrics, Flushable, Closeable {
+
+  public static final String DFLT_DIR = "xipki/audit-journal";
+
+  public static final String DFLT_SINK_CONF = "xipki/etc/org.xipki.audit.syslog.cfg";
+
+  private static final Logger LOG = LoggerFactory.getLogger(JournalAuditService.class);
+
+  private static final String EVENT_DATA_SEQ = "journalSeq";
+
+  private static final String EVENT_DATA_HASH = "journalHash";
+
+  private static final String SHIPPED_FILE = "shipped";
+
+  private static final int DFLT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final long MAX_RETRY_DELAY_MS = 30000;
+
+  private AuditJournal journal;
+
+  private boolean syncAlways;
+
+  private long syncIntervalMs = 50;
+
+  private int batchSize = 256;
+
+  private AuditService sink;
+
+  private File shippedFile;
+
+  private volatile long shippedSeq;
+
+  private volatile boolean running;
+
+  private Thread syncer;
+
+  private Thread shipper;
+
+  private final LongAdder failed = new LongAdder();
+
+  private final LongAdder shipFailures = new LongAdder();
+
+  public JournalAuditService() {
+  }
+
+  @Override
+  public void init(String conf) {
+    LOG.info("initializing: {}", JournalAuditService.class);
+    Properties props = loadProperties(conf.trim());
+
+    File dir = new File(props.getProperty("dir", DFLT_DIR));
+    int segmentSize = getInt(props, "segmentSize", DFLT_SEGMENT_SIZE);
+
+    String syncMode = props.getProperty("syncMode", "interval").trim();
+    if ("always".equalsIgnoreCase(syncMode)) {
+      syncAlways = true;
+    } else if (!"interval".equalsIgnoreCase(syncMode)) {
+      throw new AuditServiceRuntimeException("invalid syncMode '" + syncMode + "'");
+    }
+
+    syncIntervalMs = getInt(props, "syncInterval", 50);
+    batchSize = getInt(props, "batchSize", 256);
+
+    String sinkType = props.getProperty("sink.type", "syslog").trim();
+    if ("syslog".equalsIgnoreCase(sinkType)) {
+      SyslogAuditService syslog = new SyslogAuditService();
+      // the events are flushed after each batch
+      syslog.setAutoFlush(false);
+      sink = syslog;
+    } else if ("embed".equalsIgnoreCase(sinkType)) {
+      sink = new EmbedAuditService();
+    } else if (sinkType.startsWith("java:")) {
+      String className = sinkType.substring("java:".length());
+      try {
+        Class<?> clazz = Class.forName(className);
+        sink = (AuditService) clazz.newInstance();
+      } catch (ClassCastException | ClassNotFoundException | IllegalAccessException
+          | InstantiationException ex) {
+        throw new AuditServiceRuntimeException(
+            "error caught while initializing sink " + sinkType
+            + ": " + ex.getClass().getName() + ": " + ex.getMessage(), ex);
+      }
+    } else if (!"none".equalsIgnoreCase(sinkType)) {
+      throw new AuditServiceRuntimeException("invalid sink.type '" + sinkType
+          + "'. Valid values are 'syslog', 'embed', 'none' or java:<name of class that "
+          + "implements " + AuditService.class.getName() + ">");
+    }
+
+    try {
+      journal = new AuditJournal(dir, segmentSize);
+      shippedFile = new File(dir, SHIPPED_FILE);
+      shippedSeq = shippedFile.exists()
+          ? Long.parseLong(new String(Files.readAllBytes(shippedFile.toPath()),
+              StandardCharsets.US_ASCII).trim())
+          : 0;
+    } catch (IOException | NumberFormatException ex) {
+      throw new AuditServiceRuntimeException("could not open audit journal " + dir.getPath()
+          + ": " + ex.getMessage(), ex);
+    }
+
+    if (sink != null) {
+      sink.init(props.getProperty("sink.conf", DFLT_SINK_CONF));
+    }
+
+    running = true;
+    if (!syncAlways) {
+      syncer = new Thread(this::syncLoop, "audit-journal-sync");
+      syncer.setDaemon(true);
+      syncer.start();
+    }
+
+    if (sink != null) {
+      shipper = new Thread(this::shipLoop, "audit-journal-shipper");
+      shipper.setDaemon(true);
+      shipper.start();
+    }
+
+    LOG.info("initialized: {}, last record {}, last forwarded record {}",
+        JournalAuditService.class, journal.getLastSeq(), shippedSeq);
+  }
+
+  @Override
+  public void logEvent(AuditEvent event) {
+    append(event);
+  }
+
+  @Override
+  public void logEvent(PciAuditEvent event) {
+    append(event);
+  }
+
+  private void append(Object event) {
+    StringBuilder sb = new StringBuilder(200);
+    AuditSpillStore.encode(event, sb);
+    byte[] payload = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+    try {
+      long seq = journal.append(payload);
+      if (syncAlways) {
+        journal.sync(seq);
+      }
+    } catch (IOException | RuntimeException ex) {
+      failed.increment();
+      LOG.error("could not write audit event to the journal: {}", ex.getMessage());
+      if (sink != null) {
+        // better than losing it
+        try {
+          deliver(event);
+        } catch (IOException | RuntimeException ex2) {
+          LOG.error("could not send audit event: {}", ex2.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Forces the journal to the disk.
+   */
+  @Override
+  public void flush() {
+    journal.sync(journal.getLastSeq());
+  }
+
+  @Override
+  public void close() {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+    for (Thread thread : new Thread[]{syncer, shipper}) {
+      if (thread != null) {
+        LockSupport.unpark(thread);
+        try {
+          thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    journal.close();
+    if (sink instanceof Closeable) {
+      try {
+        ((Closeable) sink).close();
+      } catch (IOException ex) {
+        LOG.warn("could not close {}: {}", sink.getClass().getName(), ex.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the metrics of the journal, and those of the sink under the key {@code sink} if
+   * it collects metrics.
+   * @return the metrics.
+   */
+  @Override
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    long lastSeq = journal.getLastSeq();
+    map.put("lastRecord", lastSeq);
+    map.put("syncedRecord", journal.getSyncedSeq());
+    map.put("forwardedRecord", shippedSeq);
+    map.put("backlog", lastSeq - shippedSeq);
+    map.put("segments", journal.getSegmentCount());
+    map.put("failed", failed.sum());
+    map.put("forwardFailures", shipFailures.sum());
+    if (sink instanceof AuditServiceMetrics) {
+      map.put("sink", ((AuditServiceMetrics) sink).getMetrics());
+    }
+    return map;
+  }
+
+  private void syncLoop() {
+    while (running) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(syncIntervalMs));
+      journal.sync(journal.getLastSeq());
+    }
+  }
+
+  private void shipLoop() {
+    AuditJournal.Cursor cursor = new AuditJournal.Cursor(shippedSeq + 1);
+    long retryDelay = 0;
+    // forward the remaining events before stopping
+    while (running || cursor.getNextSeq() <= journal.getLastSeq()) {
+      List<AuditJournal.Record> records = journal.read(cursor, batchSize);
+      if (records.isEmpty()) {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+        continue;
+      }
+
+      try {
+        for (AuditJournal.Record record : records) {
+          Object event;
+          try {
+            event = AuditSpillStore.decode(new String(record.getPayload(), StandardCharsets.UTF_8));
+          } catch (RuntimeException ex) {
+            LOG.error("could not decode audit record {}: {}", record.getSeq(), ex.getMessage());
+            continue;
+          }
+          deliver(event, record);
+        }
+
+        if (sink instanceof Flushable) {
+          ((Flushable) sink).flush();
+        }
+      } catch (IOException | RuntimeException ex) {
+        shipFailures.increment();
+        // retry from the last forwarded event, some events may be sent twice
+        cursor.seek(shippedSeq + 1);
+        retryDelay = Math.min(MAX_RETRY_DELAY_MS, Math.max(100, retryDelay * 2));
+        LOG.warn("could not forward audit events, retry in {} ms: {}", retryDelay,
+            ex.getMessage());
+        if (!running) {
+          break;
+        }
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(retryDelay));
+        continue;
+      }
+
+      retryDelay = 0;
+      shippedSeq = records.get(records.size() - 1).getSeq();
+      saveShippedSeq();
+      journal.release(shippedSeq);
+    }
+  }
+
+  private void deliver(Object event, AuditJournal.Record record) throws IOException {
+    String hash = Base64.getEncoder().encodeToString(record.getHash());
+    if (event instanceof AuditEvent) {
+      AuditEvent auditEvent = (AuditEvent) event;
+      auditEvent.addEventData(EVENT_DATA_SEQ, record.getSeq());
+      auditEvent.addEventData(EVENT_DATA_HASH, hash);
+    } else if (sink instanceof SyslogAuditService) {
+      // PciAuditEvent has no field for additional data
+      ((SyslogAuditService) sink).send((PciAuditEvent) event, record.getSeq() + ":" + hash + " ");
+      return;
+    }
+
+    deliver(event);
+  }
+
+  private void deliver(Object event) throws IOException {
+    if (sink instanceof SyslogAuditService) {
+      // SyslogAuditService.logEvent() ignores errors
+      SyslogAuditService syslog = (SyslogAuditService) sink;
+      if (event instanceof AuditEvent) {
+        syslog.send((AuditEvent) event);
+      } else {
+        syslog.send((PciAuditEvent) event);
+      }
+    } else if (event instanceof AuditEvent) {
+      sink.logEvent((AuditEvent) event);
+    } else {
+      sink.logEvent((PciAuditEvent) event);
+    }
+  }
+
+  private void saveShippedSeq() {
+    File tmpFile = new File(shippedFile.getPath() + ".tmp");
+    try {
+      Files.write(tmpFile.toPath(), Long.toString(shippedSeq).getBytes(StandardCharsets.US_ASCII));
+      Files.move(tmpFile.toPath(), shippedFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      // the events will be forwarded again after restart
+      LOG.warn("could not save the forward position: {}", ex.getMessage());
+    }
+  }
+
+  private static int getInt(Properties props, String key, int dfltValue) {
+    String value = props.getProperty(key);
+    if (value == null) {
+      return dfltValue;
+    }
+
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException ex) {
+      throw new AuditServiceRuntimeException("invalid " + key + ": " + value, ex);
+    }
+  }
+
+  private static Properties loadProperties(String path) throws AuditServiceRuntimeException {
+    Path realPath = Paths.get(path);
+    if (!Files.exists(realPath)) {
+      throw new AuditServiceRuntimeException("the file " + path + " does not exist");
+    }
+
+    Properties props = new Properties();
+    try (InputStream is = Files.newInputStream(realPath)) {
+      props.load(is);
+    } catch (IOException ex) {
+      throw new AuditServiceRuntimeException("could not load properties from file " + path, ex);
+    }
+    return props;
+  }
+
+}
@@ -18,13 +18,13 @@
 package org.xipki.audit.services;
 
 import java.io.CharArrayWriter;
+import java.io.Closeable;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Date;
-import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Properties;
@@ -32,11 +32,9 @@ import java.util.Properties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.audit.AuditEvent;
-import org.xipki.audit.AuditEventData;
 import org.xipki.audit.AuditLevel;
 import org.xipki.audit.AuditService;
 import org.xipki.audit.AuditServiceRuntimeException;
-import org.xipki.audit.AuditStatus;
 import org.xipki.audit.PciAuditEvent;
 
 import com.cloudbees.syslog.Facility;
@@ -44,7 +42,6 @@ import com.cloudbees.syslog.MessageFormat;
 import com.cloudbees.syslog.Severity;
 import com.cloudbees.syslog.SyslogMessage;
 import com.cloudbees.syslog.sender.AbstractSyslogMessageSender;
-import com.cloudbees.syslog.sender.TcpSyslogMessageSender;
 import com.cloudbees.syslog.sender.UdpSyslogMessageSender;
 
 /**
@@ -53,7 +50,7 @@ import com.cloudbees.syslog.sender.UdpSyslogMessageSender;
  * @since 2.0.0
  */
 
-public class SyslogAuditService implements AuditService {
+public class SyslogAuditService implements AuditService, Flushable, Closeable {
 
   /**
    * The default port is 514.
@@ -134,6 +131,12 @@ public class SyslogAuditService implements AuditService {
    */
   private boolean ssl;
 
+  /**
+   * Whether each TCP message is sent immediately. If not, the messages are sent on
+   * {@link #flush()}.
+   */
+  private boolean autoFlush = true;
+
   private boolean initialized;
 
   public SyslogAuditService() {
@@ -172,11 +175,12 @@ public class SyslogAuditService implements AuditService {
     }
 
     if ("tcp".equalsIgnoreCase(protocol)) {
-      TcpSyslogMessageSender lcSyslog = new TcpSyslogMessageSender();
+      BatchTcpSyslogMessageSender lcSyslog = new BatchTcpSyslogMessageSender();
       syslog = lcSyslog;
       lcSyslog.setSyslogServerHostname(host);
       lcSyslog.setSyslogServerPort(port);
       lcSyslog.setSsl(ssl);
+      lcSyslog.setAutoFlush(autoFlush);
       if (writeRetries > 0) {
         lcSyslog.setMaxRetryCount(writeRetries);
       }
@@ -215,34 +219,28 @@ public class SyslogAuditService implements AuditService {
 
   @Override
   public void logEvent(AuditEvent event) {
-    if (!initialized) {
-      LOG.error("syslog audit not initialized");
-      return;
-    }
-
-    final CharArrayWriter sb = new CharArrayWriter(150);
-    if (notEmpty(prefix)) {
-      sb.append(prefix);
-    }
-
-    AuditStatus status = event.getStatus();
-    if (status == null) {
-      status = AuditStatus.UNDEFINED;
+    try {
+      send(event);
+    } catch (Throwable th) {
+      LOG.error("could not send syslog message: {}", th.getMessage());
+      LOG.debug("could not send syslog message", th);
     }
+  } // method logEvent(AuditEvent)
 
-    sb.append("\tstatus: ").append(status.name());
-
-    long duration = event.getDuration();
-    if (duration >= 0) {
-      sb.append("\tduration: ").append(Long.toString(duration));
+  /**
+   * Sends the event.
+   * @param event
+   *          Event to be sent.
+   * @throws IOException
+   *           if the message could not be sent.
+   */
+  void send(AuditEvent event) throws IOException {
+    if (!initialized) {
+      throw new IllegalStateException("syslog audit not initialized");
     }
 
-    final List<AuditEventData> eventDataArray = event.getEventDatas();
-    for (final AuditEventData m : eventDataArray) {
-      if (!(duration >= 0 && "duration".equalsIgnoreCase(m.getName()))) {
-        sb.append("\t").append(m.getName()).append(": ").append(m.getValue());
-      }
-    }
+    // the buffer is reused by the next event of this thread
+    final CharArrayWriter sb = AuditEventFormatter.getInstance().formatSyslog(event, prefix);
 
     final int n = sb.size();
     if (n > maxMessageLength) {
@@ -259,30 +257,51 @@ public class SyslogAuditService implements AuditService {
     sm.setAppName(event.getApplicationName());
     sm.setSeverity(getSeverity(event.getLevel()));
 
-    Date timestamp = event.getTimestamp();
-    if (timestamp != null) {
-      sm.setTimestamp(timestamp);
-    }
+    sm.withTimestamp(event.getTimestampMillis());
 
     sm.setMsgId(event.getName());
     sm.setMsg(sb);
 
+    syslog.sendMessage(sm);
+  } // method send(AuditEvent)
+
+  @Override
+  public void logEvent(PciAuditEvent event) {
     try {
-      syslog.sendMessage(sm);
+      send(event);
     } catch (Throwable th) {
       LOG.error("could not send syslog message: {}", th.getMessage());
       LOG.debug("could not send syslog message", th);
     }
-  } // method logEvent(AuditEvent)
+  } // method logEvent(PCIAuditEvent)
 
-  @Override
-  public void logEvent(PciAuditEvent event) {
+  /**
+   * Sends the event.
+   * @param event
+   *          Event to be sent.
+   * @throws IOException
+   *           if the message could not be sent.
+   */
+  void send(PciAuditEvent event) throws IOException {
+    send(event, null);
+  }
+
+  /**
+   * Sends the event.
+   * @param event
+   *          Event to be sent.
+   * @param tag
+   *          Text written between the prefix and the event, may be {@code null}.
+   * @throws IOException
+   *           if the message could not be sent.
+   */
+  void send(PciAuditEvent event, String tag) throws IOException {
     if (!initialized) {
-      LOG.error("syslog audit not initialiazed");
-      return;
+      throw new IllegalStateException("syslog audit not initialized");
     }
 
-    CharArrayWriter msg = event.toCharArrayWriter(prefix);
+    String msgPrefix = (tag == null) ? prefix : (prefix == null) ? tag : prefix + tag;
+    CharArrayWriter msg = AuditEventFormatter.getInstance().format(event, msgPrefix);
     final int n = msg.size();
     if (n > maxMessageLength) {
       LOG.warn("syslog message exceeds the maximal allowed length: {} > {}, ignore it", n,
@@ -299,13 +318,32 @@ public class SyslogAuditService implements AuditService {
     sm.setSeverity(getSeverity(event.getLevel()));
     sm.setMsg(msg);
 
-    try {
-      syslog.sendMessage(sm);
-    } catch (Throwable th) {
-      LOG.error("could not send syslog message: {}", th.getMessage());
-      LOG.debug("could not send syslog message", th);
+    syslog.sendMessage(sm);
+  } // method send(PciAuditEvent)
+
+  @Override
+  public void flush() throws IOException {
+    if (syslog instanceof Flushable) {
+      ((Flushable) syslog).flush();
     }
-  } // method logEvent(PCIAuditEvent)
+  }
+
+  @Override
+  public void close() {
+    if (syslog instanceof BatchTcpSyslogMessageSender) {
+      ((BatchTcpSyslogMessageSender) syslog).close();
+    }
+  }
+
+  /**
+   * Sets whether each TCP message is sent immediately. Must be called before
+   * {@link #init(String)}.
+   * @param autoFlush
+   *          If {@code false}, the messages are buffered until {@link #flush()} is called.
+   */
+  public void setAutoFlush(boolean autoFlush) {
+    this.autoFlush = autoFlush;
+  }
 
   public void setFacility(String facility) {
     this.facility = facility;
@@ -0,0 +1,282 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.audit.services.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditService;
+import org.xipki.audit.AuditServiceMetrics;
+import org.xipki.audit.PciAuditEvent;
+import org.xipki.audit.services.AsyncAuditService;
+import org.xipki.audit.services.AsyncAuditService.OverflowPolicy;
+
+/**
+ * Test of the queue and the overflow policies of {@link AsyncAuditService}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class AsyncAuditServiceTest {
+
+  /**
+   * Audit service which blocks the sender thread at the first event until it is opened.
+   */
+  private static class BlockingAuditService implements AuditService {
+
+    private final CountDownLatch entered = new CountDownLatch(1);
+
+    private final CountDownLatch opened = new CountDownLatch(1);
+
+    private final List<String> ids = new ArrayList<>();
+
+    @Override
+    public void init(String conf) {
+    }
+
+    @Override
+    public void logEvent(AuditEvent event) {
+      entered.countDown();
+      try {
+        opened.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+
+      synchronized (ids) {
+        ids.add(event.getEventDataValue(0));
+      }
+    }
+
+    @Override
+    public void logEvent(PciAuditEvent event) {
+    }
+
+    List<String> getIds() {
+      synchronized (ids) {
+        return new ArrayList<>(ids);
+      }
+    }
+
+  }
+
+  /**
+   * Audit service which collects metrics.
+   */
+  private static class MeteredAuditService implements AuditService, AuditServiceMetrics {
+
+    private final Map<String, Object> metrics;
+
+    MeteredAuditService(Map<String, Object> metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void init(String conf) {
+    }
+
+    @Override
+    public void logEvent(AuditEvent event) {
+    }
+
+    @Override
+    public void logEvent(PciAuditEvent event) {
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+      return metrics;
+    }
+
+  }
+
+  private static final int QUEUE_SIZE = 4;
+
+  @Test
+  public void testDefaultPolicyNotBlocking() {
+    AsyncAuditService service = new AsyncAuditService(new BlockingAuditService());
+    Assert.assertEquals("spill", service.getMetrics().get("overflowPolicy"));
+  }
+
+  @Test
+  public void testDelegateMetrics() {
+    AsyncAuditService service = new AsyncAuditService(new BlockingAuditService());
+    Assert.assertFalse(service.getMetrics().containsKey("delegate"));
+
+    Map<String, Object> delegateMetrics = Collections.singletonMap("backlog", 5L);
+    service = new AsyncAuditService(new MeteredAuditService(delegateMetrics));
+    Assert.assertEquals(delegateMetrics, service.getMetrics().get("delegate"));
+  }
+
+  @Test
+  public void testOrderAndClose() throws Exception {
+    BlockingAuditService delegate = new BlockingAuditService();
+    delegate.opened.countDown();
+    AsyncAuditService service = createService(delegate, OverflowPolicy.DROP, null);
+
+    for (int i = 0; i < 100; i++) {
+      service.logEvent(createEvent(i));
+      if (i % 3 == 0) {
+        // let the sender catch up so that nothing is dropped
+        awaitSent(service, i + 1);
+      }
+    }
+    service.close();
+
+    Assert.assertEquals(0, service.getDroppedCount());
+    assertIds(delegate.getIds(), 0, 100);
+
+    // after close the events are passed synchronously
+    service.logEvent(createEvent(100));
+    assertIds(delegate.getIds(), 0, 101);
+  }
+
+  @Test
+  public void testDrop() throws Exception {
+    BlockingAuditService delegate = new BlockingAuditService();
+    AsyncAuditService service = createService(delegate, OverflowPolicy.DROP, null);
+    try {
+      fillQueue(service, delegate);
+
+      for (int i = 1 + QUEUE_SIZE; i < 4 + QUEUE_SIZE; i++) {
+        service.logEvent(createEvent(i));
+      }
+      Assert.assertEquals(3, service.getDroppedCount());
+
+      delegate.opened.countDown();
+      awaitSent(service, 1 + QUEUE_SIZE);
+    } finally {
+      service.close();
+    }
+
+    assertIds(delegate.getIds(), 0, 1 + QUEUE_SIZE);
+  }
+
+  @Test
+  public void testSpill() throws Exception {
+    File spillDir = Files.createTempDirectory("audit-spill").toFile();
+    BlockingAuditService delegate = new BlockingAuditService();
+    AsyncAuditService service = createService(delegate, OverflowPolicy.SPILL, spillDir);
+    try {
+      fillQueue(service, delegate);
+
+      for (int i = 1 + QUEUE_SIZE; i < 4 + QUEUE_SIZE; i++) {
+        service.logEvent(createEvent(i));
+      }
+      Assert.assertEquals(0, service.getDroppedCount());
+      Assert.assertEquals(3L, service.getMetrics().get("spilled"));
+      Assert.assertTrue("no spill file", spillDir.list().length > 0);
+
+      // the spilled events are passed after the queued ones
+      delegate.opened.countDown();
+      awaitSent(service, 4 + QUEUE_SIZE);
+    } finally {
+      service.close();
+    }
+
+    assertIds(delegate.getIds(), 0, 4 + QUEUE_SIZE);
+    Assert.assertEquals("spill files not deleted", 0, spillDir.list().length);
+    Assert.assertTrue(spillDir.delete());
+  }
+
+  @Test
+  public void testBlock() throws Exception {
+    BlockingAuditService delegate = new BlockingAuditService();
+    AsyncAuditService service = createService(delegate, OverflowPolicy.BLOCK, null);
+    try {
+      fillQueue(service, delegate);
+
+      Thread producer = new Thread(() -> service.logEvent(createEvent(1 + QUEUE_SIZE)));
+      producer.start();
+      producer.join(200);
+      Assert.assertTrue("producer not blocked", producer.isAlive());
+
+      delegate.opened.countDown();
+      producer.join(10000);
+      Assert.assertFalse("producer still blocked", producer.isAlive());
+      awaitSent(service, 2 + QUEUE_SIZE);
+    } finally {
+      service.close();
+    }
+
+    Assert.assertEquals(0, service.getDroppedCount());
+    assertIds(delegate.getIds(), 0, 2 + QUEUE_SIZE);
+  }
+
+  private static AsyncAuditService createService(AuditService delegate,
+      OverflowPolicy policy, File spillDir) {
+    AsyncAuditService service = new AsyncAuditService(delegate);
+    service.setQueueSize(QUEUE_SIZE);
+    service.setOverflowPolicy(policy);
+    if (spillDir != null) {
+      service.setSpillDir(spillDir.getPath());
+    }
+    service.init(null);
+    return service;
+  }
+
+  /**
+   * Logs the event 0, which blocks the sender, and the events 1 to {@code QUEUE_SIZE}, which
+   * fill the queue.
+   */
+  private static void fillQueue(AsyncAuditService service, BlockingAuditService delegate)
+      throws Exception {
+    service.logEvent(createEvent(0));
+    Assert.assertTrue("sender not started", delegate.entered.await(10, TimeUnit.SECONDS));
+
+    for (int i = 1; i <= QUEUE_SIZE; i++) {
+      service.logEvent(createEvent(i));
+    }
+    Assert.assertEquals(QUEUE_SIZE, service.getQueueDepth());
+  }
+
+  private static void awaitSent(AsyncAuditService service, long count) throws Exception {
+    long deadline = System.currentTimeMillis() + 10000;
+    while ((Long) service.getMetrics().get("sent") < count) {
+      Assert.assertTrue("events not sent within 10 s", System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  private static void assertIds(List<String> ids, int from, int to) {
+    Assert.assertEquals(to - from, ids.size());
+    for (int i = from; i < to; i++) {
+      Assert.assertEquals(Integer.toString(i), ids.get(i - from));
+    }
+  }
+
+  private static AuditEvent createEvent(int id) {
+    AuditEvent event = new AuditEvent(new Date());
+    event.setName("test");
+    event.addEventData("id", Integer.toString(id));
+    return event;
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.audit.services.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.audit.services.AuditEventQueue;
+
+/**
+ * Test of {@link AuditEventQueue}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class AuditEventQueueTest {
+
+  @Test
+  public void testCapacity() {
+    Assert.assertEquals(2, new AuditEventQueue(0).capacity());
+    Assert.assertEquals(8, new AuditEventQueue(8).capacity());
+    Assert.assertEquals(16, new AuditEventQueue(9).capacity());
+  }
+
+  @Test
+  public void testOfferAndPoll() {
+    AuditEventQueue queue = new AuditEventQueue(4);
+    Assert.assertNull(queue.poll());
+
+    // several rounds to wrap around the slots
+    int next = 0;
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 4; i++) {
+        Assert.assertTrue(queue.offer(next + i));
+      }
+      Assert.assertFalse("queue is full", queue.offer(-1));
+      Assert.assertEquals(4, queue.size());
+
+      for (int i = 0; i < 4; i++) {
+        Assert.assertEquals(next++, queue.poll());
+      }
+      Assert.assertNull(queue.poll());
+      Assert.assertEquals(0, queue.size());
+    }
+  }
+
+  @Test
+  public void testDrainTo() {
+    AuditEventQueue queue = new AuditEventQueue(8);
+    for (int i = 0; i < 5; i++) {
+      queue.offer(i);
+    }
+
+    List<Object> events = new ArrayList<>();
+    Assert.assertEquals(3, queue.drainTo(events, 3));
+    Assert.assertEquals(2, queue.drainTo(events, 3));
+    Assert.assertEquals(0, queue.drainTo(events, 3));
+
+    for (int i = 0; i < 5; i++) {
+      Assert.assertEquals(i, events.get(i));
+    }
+  }
+
+  @Test
+  public void testConcurrentProducersAndConsumers() throws Exception {
+    final int producers = 4;
+    final int consumers = 2;
+    final int eventsPerProducer = 50000;
+    final AuditEventQueue queue = new AuditEventQueue(64);
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicInteger remaining = new AtomicInteger(producers * eventsPerProducer);
+    final ConcurrentLinkedQueue<Object> received = new ConcurrentLinkedQueue<>();
+    List<Thread> threads = new ArrayList<>();
+
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      threads.add(new Thread(() -> {
+        await(start);
+        for (int i = 0; i < eventsPerProducer; i++) {
+          long event = ((long) producer << 32) | i;
+          while (!queue.offer(event)) {
+            Thread.yield();
+          }
+        }
+      }));
+    }
+
+    for (int c = 0; c < consumers; c++) {
+      threads.add(new Thread(() -> {
+        await(start);
+        List<Object> batch = new ArrayList<>();
+        while (remaining.get() > 0) {
+          int n = queue.drainTo(batch, 16);
+          if (n == 0) {
+            Thread.yield();
+            continue;
+          }
+          received.addAll(batch);
+          batch.clear();
+          remaining.addAndGet(-n);
+        }
+      }));
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join(60000);
+      Assert.assertFalse("thread not terminated", thread.isAlive());
+    }
+
+    // each event is received exactly once
+    Assert.assertEquals(producers * eventsPerProducer, received.size());
+    boolean[][] seen = new boolean[producers][eventsPerProducer];
+    for (Object obj : received) {
+      long event = (Long) obj;
+      int producer = (int) (event >>> 32);
+      int index = (int) event;
+      Assert.assertFalse("duplicated event", seen[producer][index]);
+      seen[producer][index] = true;
+    }
+    Assert.assertEquals(0, queue.size());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
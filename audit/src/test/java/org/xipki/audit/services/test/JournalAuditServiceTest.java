@@ -0,0 +1,372 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditService;
+import org.xipki.audit.AuditServiceRuntimeException;
+import org.xipki.audit.AuditStatus;
+import org.xipki.audit.PciAuditEvent;
+import org.xipki.audit.services.JournalAuditService;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class JournalAuditServiceTest {
+
+  /**
+   * Sink which records the ids of the forwarded events.
+   */
+  public static class RecordingSink implements AuditService {
+
+    private static final List<Long> IDS = new ArrayList<>();
+
+    private static final List<Long> SEQS = new ArrayList<>();
+
+    private static final AtomicInteger FAILURES = new AtomicInteger();
+
+    @Override
+    public void init(String conf) {
+    }
+
+    @Override
+    public void logEvent(AuditEvent event) {
+      if (FAILURES.getAndDecrement() > 0) {
+        throw new AuditServiceRuntimeException("sink not available");
+      }
+
+      synchronized (IDS) {
+        boolean hashPresent = false;
+        for (int i = 0; i < event.getEventDataCount(); i++) {
+          String name = event.getEventDataName(i);
+          if ("id".equals(name)) {
+            IDS.add(Long.parseLong(event.getEventDataValue(i)));
+          } else if ("journalSeq".equals(name)) {
+            SEQS.add(Long.parseLong(event.getEventDataValue(i)));
+          } else if ("journalHash".equals(name)) {
+            hashPresent = Base64.getDecoder().decode(event.getEventDataValue(i)).length == 32;
+          }
+        }
+
+        if (!hashPresent) {
+          throw new AuditServiceRuntimeException("no journalHash");
+        }
+      }
+    }
+
+    @Override
+    public void logEvent(PciAuditEvent event) {
+    }
+
+    static void reset(int failures) {
+      synchronized (IDS) {
+        IDS.clear();
+        SEQS.clear();
+      }
+      FAILURES.set(failures);
+    }
+
+    static List<Long> getIds() {
+      synchronized (IDS) {
+        return new ArrayList<>(IDS);
+      }
+    }
+
+    static List<Long> getSeqs() {
+      synchronized (IDS) {
+        return new ArrayList<>(SEQS);
+      }
+    }
+
+  }
+
+  @Test
+  public void testRecoverAndDetectTampering() throws Exception {
+    File dir = Files.createTempDirectory("audit-journal").toFile();
+    try {
+      File confFile = new File(dir, "journal.cfg");
+      String conf = "dir=" + new File(dir, "journal").getAbsolutePath().replace('\\', '/')
+          + "\nsegmentSize=4096\nsyncMode=always\nsink.type=none\n";
+      Files.write(confFile.toPath(), conf.getBytes(StandardCharsets.UTF_8));
+
+      JournalAuditService service = new JournalAuditService();
+      service.init(confFile.getPath());
+      for (int i = 0; i < 100; i++) {
+        AuditEvent event = new AuditEvent(new Date());
+        event.setApplicationName("test");
+        event.setName("perf");
+        event.setStatus(AuditStatus.SUCCESSFUL);
+        event.addEventData("id", i);
+        service.logEvent(event);
+      }
+      service.close();
+
+      // reopen
+      service = new JournalAuditService();
+      service.init(confFile.getPath());
+      Assert.assertEquals(100L, service.getMetrics().get("lastRecord"));
+      int segments = (Integer) service.getMetrics().get("segments");
+      Assert.assertTrue("expected more than one segment", segments > 1);
+      service.close();
+
+      // modify one byte of an event in the first segment
+      File[] segmentFiles = new File(dir, "journal").listFiles((d, n) -> n.endsWith(".seg"));
+      Arrays.sort(segmentFiles);
+      try (RandomAccessFile raf = new RandomAccessFile(segmentFiles[0], "rw")) {
+        long pos = 44 + 44 + 10;
+        raf.seek(pos);
+        int b = raf.read();
+        raf.seek(pos);
+        raf.write(b ^ 0x01);
+      }
+
+      try {
+        new JournalAuditService().init(confFile.getPath());
+        Assert.fail("tampered journal not detected");
+      } catch (AuditServiceRuntimeException ex) {
+        Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("tampered"));
+      }
+    } finally {
+      deleteDir(dir);
+    }
+  }
+
+  @Test
+  public void testShipAndReleaseSegments() throws Exception {
+    File dir = Files.createTempDirectory("audit-journal").toFile();
+    try {
+      RecordingSink.reset(0);
+      File confFile = writeConf(dir, "java:" + RecordingSink.class.getName());
+      JournalAuditService service = new JournalAuditService();
+      service.init(confFile.getPath());
+      try {
+        logEvents(service, 0, 100);
+        waitForwarded(service, 100);
+        Assert.assertEquals(expectedIds(0, 100), RecordingSink.getIds());
+        // sequence numbers start with 1
+        Assert.assertEquals(expectedIds(1, 100), RecordingSink.getSeqs());
+
+        // all segments except the current one have been forwarded and deleted
+        Assert.assertEquals(1, service.getMetrics().get("segments"));
+        Assert.assertEquals(1, segmentFiles(dir).length);
+      } finally {
+        service.close();
+      }
+
+      // events are not forwarded again after restart
+      RecordingSink.reset(0);
+      service = new JournalAuditService();
+      service.init(confFile.getPath());
+      try {
+        logEvents(service, 100, 10);
+        waitForwarded(service, 110);
+        Assert.assertEquals(expectedIds(100, 10), RecordingSink.getIds());
+      } finally {
+        service.close();
+      }
+    } finally {
+      deleteDir(dir);
+    }
+  }
+
+  @Test
+  public void testRetry() throws Exception {
+    File dir = Files.createTempDirectory("audit-journal").toFile();
+    try {
+      RecordingSink.reset(2);
+      File confFile = writeConf(dir, "java:" + RecordingSink.class.getName());
+      JournalAuditService service = new JournalAuditService();
+      service.init(confFile.getPath());
+      try {
+        logEvents(service, 0, 20);
+        waitForwarded(service, 20);
+        Assert.assertEquals(2L, service.getMetrics().get("forwardFailures"));
+
+        // retried from the last forwarded event, some events may be sent twice
+        List<Long> ids = RecordingSink.getIds();
+        Assert.assertEquals(expectedIds(0, 20),
+            new ArrayList<>(new TreeSet<>(ids)));
+        Assert.assertEquals(Long.valueOf(19), ids.get(ids.size() - 1));
+      } finally {
+        service.close();
+      }
+    } finally {
+      deleteDir(dir);
+    }
+  }
+
+  @Test
+  public void testDetectDeletedSegments() throws Exception {
+    File dir = Files.createTempDirectory("audit-journal").toFile();
+    try {
+      // forwarded segments are deleted, the anchor is saved
+      RecordingSink.reset(0);
+      File confFile = writeConf(dir, "java:" + RecordingSink.class.getName());
+      JournalAuditService service = new JournalAuditService();
+      service.init(confFile.getPath());
+      logEvents(service, 0, 100);
+      waitForwarded(service, 100);
+      service.close();
+      Assert.assertTrue(new File(dir, "journal/anchor").exists());
+
+      // not forwarded segments are kept
+      confFile = writeConf(dir, "none");
+      service = new JournalAuditService();
+      service.init(confFile.getPath());
+      logEvents(service, 100, 100);
+      service.close();
+
+      File[] files = segmentFiles(dir);
+      Assert.assertTrue("expected more than one segment", files.length > 1);
+      Arrays.sort(files);
+
+      // the remaining segments are still continuous, but do not match the anchor
+      Assert.assertTrue(files[0].delete());
+      try {
+        new JournalAuditService().init(confFile.getPath());
+        Assert.fail("deleted segment not detected");
+      } catch (AuditServiceRuntimeException ex) {
+        Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("have been deleted"));
+      }
+    } finally {
+      deleteDir(dir);
+    }
+  }
+
+  @Test
+  public void testInvalidNumber() throws Exception {
+    File dir = Files.createTempDirectory("audit-journal").toFile();
+    try {
+      File confFile = new File(dir, "journal.cfg");
+      Files.write(confFile.toPath(),
+          "sink.type=none\nbatchSize=abc\n".getBytes(StandardCharsets.UTF_8));
+      try {
+        new JournalAuditService().init(confFile.getPath());
+        Assert.fail("invalid batchSize not detected");
+      } catch (AuditServiceRuntimeException ex) {
+        Assert.assertEquals("invalid batchSize: abc", ex.getMessage());
+      }
+    } finally {
+      deleteDir(dir);
+    }
+  }
+
+  @Test
+  public void testRecoverHeaderlessSegment() throws Exception {
+    File dir = Files.createTempDirectory("audit-journal").toFile();
+    try {
+      File confFile = writeConf(dir, "none");
+      JournalAuditService service = new JournalAuditService();
+      service.init(confFile.getPath());
+      logEvents(service, 0, 10);
+      service.close();
+
+      // crash in rotate(): the new segment has been created, but not the header
+      File journalDir = new File(dir, "journal");
+      new RandomAccessFile(new File(journalDir, String.format("journal-%020d.seg", 11)), "rw")
+          .close();
+
+      service = new JournalAuditService();
+      service.init(confFile.getPath());
+      Assert.assertEquals(10L, service.getMetrics().get("lastRecord"));
+      Assert.assertEquals(2, service.getMetrics().get("segments"));
+      logEvents(service, 10, 5);
+      service.close();
+
+      service = new JournalAuditService();
+      service.init(confFile.getPath());
+      Assert.assertEquals(15L, service.getMetrics().get("lastRecord"));
+      service.close();
+    } finally {
+      deleteDir(dir);
+    }
+  }
+
+  private static File writeConf(File dir, String sinkType) throws Exception {
+    File confFile = new File(dir, "journal.cfg");
+    String conf = "dir=" + new File(dir, "journal").getAbsolutePath().replace('\\', '/')
+        + "\nsegmentSize=4096\nsyncMode=always\nbatchSize=16\nsink.type=" + sinkType + "\n";
+    Files.write(confFile.toPath(), conf.getBytes(StandardCharsets.UTF_8));
+    return confFile;
+  }
+
+  private static void logEvents(JournalAuditService service, int firstId, int num) {
+    for (int i = firstId; i < firstId + num; i++) {
+      AuditEvent event = new AuditEvent(new Date());
+      event.setApplicationName("test");
+      event.setName("perf");
+      event.setStatus(AuditStatus.SUCCESSFUL);
+      event.addEventData("id", i);
+      service.logEvent(event);
+    }
+  }
+
+  private static void waitForwarded(JournalAuditService service, long seq) throws Exception {
+    long deadline = System.currentTimeMillis() + 10000;
+    while ((Long) service.getMetrics().get("forwardedRecord") < seq) {
+      if (System.currentTimeMillis() > deadline) {
+        Assert.fail("events not forwarded: " + service.getMetrics());
+      }
+      Thread.sleep(20);
+    }
+  }
+
+  private static List<Long> expectedIds(int firstId, int num) {
+    List<Long> ids = new ArrayList<>(num);
+    for (long i = firstId; i < firstId + num; i++) {
+      ids.add(i);
+    }
+    return ids;
+  }
+
+  private static File[] segmentFiles(File dir) {
+    return new File(dir, "journal").listFiles((d, n) -> n.endsWith(".seg"));
+  }
+
+  private static void deleteDir(File dir) {
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          deleteDir(child);
+        } else {
+          child.delete();
+        }
+      }
+    }
+    dir.delete();
+  }
+
+}
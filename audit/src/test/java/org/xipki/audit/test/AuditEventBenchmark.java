@@ -0,0 +1,118 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.test;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditEventData;
+import org.xipki.audit.AuditLevel;
+import org.xipki.audit.AuditStatus;
+import org.xipki.audit.services.EmbedAuditService;
+
+/**
+ * Measures how many audit events per second a single thread, hence one core, can create
+ * and format, compared with the formatting via {@link AuditEvent#getEventDatas()}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class AuditEventBenchmark extends EmbedAuditService {
+
+  private static final int ROUNDS = 5;
+
+  private static final int ITERATIONS = 500000;
+
+  @Test
+  public void testFormat() {
+    AuditEvent event = newEvent(1);
+    event.addEventData("reqId", 10L);
+    event.addEventData("reqId", "11");
+    event.addEventData("duration", 5);
+    event.addEventData("removed", "x");
+    Assert.assertTrue(event.removeEventData("removed"));
+    Assert.assertFalse(event.removeEventData("removed"));
+    event.finish();
+
+    Assert.assertEquals(legacyMessage(event), createMessage(event));
+    Assert.assertEquals("10, 11", event.getEventDataValue(4));
+    Assert.assertEquals(Long.MIN_VALUE, newEvent(Long.MIN_VALUE).getEventDataLongValue(2));
+  }
+
+  @Test
+  public void benchmark() {
+    long sink = 0;
+    long flatNanos = Long.MAX_VALUE;
+    long legacyNanos = Long.MAX_VALUE;
+    // alternate the variants and use the best round to reduce the effect of JIT and GC
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        sink += createMessage(newEvent(i)).length();
+      }
+      flatNanos = Math.min(flatNanos, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        sink += legacyMessage(newEvent(i)).length();
+      }
+      legacyNanos = Math.min(legacyNanos, System.nanoTime() - start);
+    }
+
+    Assert.assertTrue(sink > 0);
+    System.out.println(String.format("audit events/s/core: formatter %,d, legacy %,d",
+        ITERATIONS * 1000000000L / flatNanos, ITERATIONS * 1000000000L / legacyNanos));
+  }
+
+  private static AuditEvent newEvent(long id) {
+    AuditEvent event = new AuditEvent(new Date());
+    event.setApplicationName("OCSP");
+    event.setName("perf");
+    event.setLevel(AuditLevel.INFO);
+    event.addEventType("OCSP");
+    event.addEventData("mid", "b2f7d41c6a53a9e1");
+    event.addEventData("id", id);
+    event.addEventData("serial", "0x3f4a5b6c7d8e9f");
+    event.setStatus(AuditStatus.SUCCESSFUL);
+    event.setDuration(id & 0xFF);
+    return event;
+  }
+
+  private static String legacyMessage(AuditEvent event) {
+    StringBuilder sb = new StringBuilder(150);
+    sb.append(event.getLevel().getAlignedText()).append(" | ");
+    sb.append(event.getApplicationName()).append(" - ").append(event.getName());
+    sb.append(":\tstatus: ").append(event.getStatus().name());
+    long duration = event.getDuration();
+    if (duration >= 0) {
+      sb.append("\tduration: ").append(duration);
+    }
+
+    for (AuditEventData m : event.getEventDatas()) {
+      if (duration >= 0 && "duration".equalsIgnoreCase(m.getName())) {
+        continue;
+      }
+      sb.append("\t").append(m.getName()).append(": ").append(m.getValue());
+    }
+    return sb.toString();
+  }
+
+}
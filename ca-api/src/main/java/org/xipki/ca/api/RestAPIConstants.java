@@ -44,6 +44,8 @@ public class RestAPIConstants {
 
   public static final String HEADER_failInfo = "X-xipki-fail-info";
 
+  public static final String HEADER_RETRY_AFTER = "Retry-After";
+
   public static final String FAILINFO_badAlg = "badAlg";
 
   public static final String FAILINFO_badMessageCheck = "badMessageCheck";
@@ -43,6 +43,24 @@ public interface CaManager {
 
   CaSystemStatus getCaSystemStatus() throws CaMgmtException;
 
+  /**
+   * Returns the metrics of the database connection pool and of the executed statements.
+   *
+   * @return the metrics, or {@code null} if not collected.
+   * @throws CaMgmtException
+   *           if error occurs.
+   */
+  Map<String, Object> getDatasourceMetrics() throws CaMgmtException;
+
+  /**
+   * Returns the metrics of the audit service, including those of the wrapped services.
+   *
+   * @return the metrics, or {@code null} if not collected.
+   * @throws CaMgmtException
+   *           if error occurs.
+   */
+  Map<String, Object> getAuditMetrics() throws CaMgmtException;
+
   void unlockCa() throws CaMgmtException;
 
   void notifyCaChange() throws CaMgmtException;
@@ -72,6 +72,12 @@ public class CmpControl {
 
   public static final String KEY_RR_AKI_REQUIRED = "rr.aki.required";
 
+  /**
+   * Number of recently verified signature protected requests remembered to reject replays,
+   * 0 (default) to disable the replay check.
+   */
+  public static final String KEY_REPLAY_CACHESIZE = "replay.cachesize";
+
   private static final int DFLT_MESSAGE_TIME_BIAS = 300; // 300 seconds
 
   private static final int DFLT_CONFIRM_WAIT_TIME = 300; // 300 seconds
@@ -98,6 +104,8 @@ public class CmpControl {
 
   private final boolean rrAkiRequired;
 
+  private final int replayCacheSize;
+
   private AlgorithmIdentifier responsePbmOwf;
 
   private List<ASN1ObjectIdentifier> requestPbmOwfs;
@@ -127,6 +135,11 @@ public class CmpControl {
     }
     this.confirmWaitTimeMs = this.confirmWaitTime * 1000L;
 
+    this.replayCacheSize = getInt(pairs, KEY_REPLAY_CACHESIZE, 0);
+    if (this.replayCacheSize < 0) {
+      throw new InvalidConfException("invalid " + KEY_REPLAY_CACHESIZE);
+    }
+
     // protection algorithms
     String key = KEY_PROTECTION_SIGALGO;
     String str = pairs.value(key);
@@ -214,6 +227,7 @@ public class CmpControl {
     this.confirmWaitTimeMs = this.confirmWaitTime * 1000L;
 
     this.groupEnroll = (groupEnroll == null) ? false : groupEnroll;
+    this.replayCacheSize = 0;
     try {
       this.sigAlgoValidator = new CollectionAlgorithmValidator(sigAlgos);
     } catch (NoSuchAlgorithmException ex) {
@@ -347,6 +361,10 @@ public class CmpControl {
     return groupEnroll;
   }
 
+  public int getReplayCacheSize() {
+    return replayCacheSize;
+  }
+
   public AlgorithmValidator getSigAlgoValidator() {
     return sigAlgoValidator;
   }
@@ -411,6 +429,7 @@ public class CmpControl {
         "\n  confirm waiting time: ", confirmWaitTime, "s",
         "\n  group enroll: ", groupEnroll,
         "\n  AKI in revocation request required: ", rrAkiRequired,
+        "\n  replay cache size: ", replayCacheSize,
         "\n  signature algorithms: ", sigAlgoValidator.getAlgoNames(),
         "\n  POPO algorithms: ", popoAlgoValidator.getAlgoNames(),
         (verbose ? "\n  encoded: " : ""), (verbose ? conf : ""));
@@ -61,6 +61,7 @@ public abstract class MgmtMessage {
     generateCrlOnDemand,
     generateRootCa,
     getAliasesForCa,
+    getAuditMetrics,
     getCa,
     getCaAliasNames,
     getCaHasUsersForUser,
@@ -74,6 +75,7 @@ public abstract class MgmtMessage {
     getCertRequest,
     getCrl,
     getCurrentCrl,
+    getDatasourceMetrics,
     getFailedCaNames,
     getInactiveCaNames,
     getPublisher,
@@ -249,6 +249,48 @@ public abstract class MgmtResponse extends MgmtMessage {
 
   }
 
+  public static class GetAuditMetrics extends MgmtResponse {
+
+    private Map<String, Object> result;
+
+    public GetAuditMetrics() {
+    }
+
+    public GetAuditMetrics(Map<String, Object> result) {
+      this.result = result;
+    }
+
+    public Map<String, Object> getResult() {
+      return result;
+    }
+
+    public void setResult(Map<String, Object> result) {
+      this.result = result;
+    }
+
+  }
+
+  public static class GetDatasourceMetrics extends MgmtResponse {
+
+    private Map<String, Object> result;
+
+    public GetDatasourceMetrics() {
+    }
+
+    public GetDatasourceMetrics(Map<String, Object> result) {
+      this.result = result;
+    }
+
+    public Map<String, Object> getResult() {
+      return result;
+    }
+
+    public void setResult(Map<String, Object> result) {
+      this.result = result;
+    }
+
+  }
+
   public static class GetCaSystemStatus extends MgmtResponse {
 
     private CaSystemStatus result;
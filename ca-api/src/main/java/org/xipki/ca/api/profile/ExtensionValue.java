@@ -17,7 +17,10 @@
 
 package org.xipki.ca.api.profile;
 
+import java.io.IOException;
+
 import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
 import org.xipki.util.Args;
 
 /**
@@ -32,6 +35,8 @@ public class ExtensionValue {
 
   private final ASN1Encodable value;
 
+  private volatile byte[] encoded;
+
   public ExtensionValue(boolean critical, ASN1Encodable value) {
     this.critical = critical;
     this.value = Args.notNull(value, "value");
@@ -45,4 +50,21 @@ public class ExtensionValue {
     return value;
   }
 
+  /**
+   * Returns the DER encoding of the value. The encoding is computed only once, so that
+   * the values shared by all certificates of a profile are not encoded again.
+   * @return the DER encoding, must not be modified.
+   * @throws IOException
+   *           if the value could not be encoded.
+   * @since 5.0.1
+   */
+  public byte[] getEncoded() throws IOException {
+    byte[] ret = encoded;
+    if (ret == null) {
+      ret = value.toASN1Primitive().getEncoded(ASN1Encoding.DER);
+      encoded = ret;
+    }
+    return ret;
+  }
+
 }
@@ -136,6 +136,21 @@ public class CaMgmtClient implements CaManager {
     return resp.getResult();
   }
 
+  @Override
+  public Map<String, Object> getDatasourceMetrics() throws CaMgmtException {
+    byte[] respBytes = transmit(MgmtAction.getDatasourceMetrics, null);
+    MgmtResponse.GetDatasourceMetrics resp =
+        parse(respBytes, MgmtResponse.GetDatasourceMetrics.class);
+    return resp.getResult();
+  }
+
+  @Override
+  public Map<String, Object> getAuditMetrics() throws CaMgmtException {
+    byte[] respBytes = transmit(MgmtAction.getAuditMetrics, null);
+    MgmtResponse.GetAuditMetrics resp = parse(respBytes, MgmtResponse.GetAuditMetrics.class);
+    return resp.getResult();
+  }
+
   @Override
   public void unlockCa() throws CaMgmtException {
     voidTransmit(MgmtAction.unlockCa, null);
@@ -35,6 +35,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.HashAlgo;
@@ -245,13 +246,18 @@ class DigestDiff {
       throw new IllegalArgumentException("unknown dbControl " + dbControl);
     }
 
+    // the table CA of the CA database always contains the Base64 encoded certificate
+    BinaryColumn certColumn = (dbControl == DbControl.XIPKI_OCSP_v4)
+        ? BinaryColumn.detect(datasource, null, "ISSUER", "CERT") : null;
+
     Statement stmt = datasource.createStatement();
     Map<Integer, byte[]> caIdCertMap = new HashMap<>(5);
     ResultSet rs = null;
     try {
       rs = stmt.executeQuery(sql);
       while (rs.next()) {
-        caIdCertMap.put(rs.getInt("ID"), Base64.decodeFast(rs.getString("CERT")));
+        caIdCertMap.put(rs.getInt("ID"), (certColumn == null)
+            ? Base64.decodeFast(rs.getString("CERT")) : certColumn.get(rs));
       }
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
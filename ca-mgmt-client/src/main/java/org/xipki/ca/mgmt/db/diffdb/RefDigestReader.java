@@ -39,12 +39,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ca.mgmt.db.diffdb.QueueEntry.DigestEntrySet;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
-import org.xipki.util.Base64;
 import org.xipki.util.StringUtil;
 
 /**
@@ -87,6 +87,9 @@ class RefDigestReader implements Closeable {
 
   private HashAlgo certhashAlgo;
 
+  // column CERT.CERT of the CA database, binary or Base64 encoded
+  private BinaryColumn certColumn;
+
   private class Retriever implements Runnable {
 
     private PreparedStatement selectCertStmt;
@@ -140,7 +143,7 @@ class RefDigestReader implements Closeable {
             if (certhashAlgo == HashAlgo.SHA1) {
               hash = rs.getString("SHA1");
             } else {
-              hash = certhashAlgo.base64Hash(Base64.decodeFast(rs.getString("CERT")));
+              hash = certhashAlgo.base64Hash(certColumn.get(rs));
             }
           }
 
@@ -212,6 +215,9 @@ class RefDigestReader implements Closeable {
       coreSql = StringUtil.concat("ID,SN,REV,RR,RT,RIT,HASH FROM CERT WHERE IID=",
           Integer.toString(caId), " AND ID>=?");
     } else if (dbControl == DbControl.XIPKI_CA_v4) {
+      if (certhashAlgo != HashAlgo.SHA1) {
+        certColumn = BinaryColumn.detect(datasource, conn, "CERT", "CERT");
+      }
       coreSql = StringUtil.concat("ID,SN,REV,RR,RT,RIT,",
           (certhashAlgo == HashAlgo.SHA1 ? "SHA1" : "CERT"),
           " FROM CERT WHERE CA_ID=", Integer.toString(caId), " AND ID>=?");
@@ -255,9 +261,12 @@ class RefDigestReader implements Closeable {
 
       String tblCa;
       String colCaId;
+      // the table CA of the CA database always contains the Base64 encoded certificate
+      BinaryColumn caCertColumn = null;
       if (dbControl == DbControl.XIPKI_OCSP_v4) {
         tblCa = "ISSUER";
         colCaId = "IID";
+        caCertColumn = BinaryColumn.detect(datasource, null, "ISSUER", "CERT");
       } else if (dbControl == DbControl.XIPKI_CA_v4) {
         tblCa = "CA";
         colCaId = "CA_ID";
@@ -271,7 +280,8 @@ class RefDigestReader implements Closeable {
         throw new IllegalArgumentException("no CA with id '" + caId + "' is available");
       }
 
-      caCert = X509Util.parseCert(rs.getString("CERT").getBytes());
+      caCert = X509Util.parseCert((caCertColumn == null)
+          ? rs.getString("CERT").getBytes() : caCertColumn.get(rs));
       rs.close();
 
       sql = "SELECT COUNT(*) FROM CERT WHERE " + colCaId + "=" + caId;
@@ -34,12 +34,13 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.datasource.DatabaseType;
+import org.xipki.security.FpIdCalculator;
 import org.xipki.security.HashAlgo;
 import org.xipki.util.Args;
-import org.xipki.util.Base64;
 import org.xipki.util.ProcessLog;
 import org.xipki.util.StringUtil;
 
@@ -156,6 +157,12 @@ class TargetDigestRetriever implements Closeable {
 
   private final String inArrayCertsSql;
 
+  // whether the table CERT is keyed by the hash value of the serial number (column SNH)
+  private final boolean serialKeyHashed;
+
+  // column CERT.CERT of the CA database, binary or Base64 encoded
+  private final BinaryColumn certColumn;
+
   private final AtomicBoolean stopMe;
 
   private Exception exception;
@@ -192,15 +199,25 @@ class TargetDigestRetriever implements Closeable {
       }
     }
 
+    // SNH can only be used once the migration has filled it for all rows
+    this.serialKeyHashed = datasource.tableHasColumn(null, "CERT", "SNH")
+        && "hash".equals(datasource.getFirstValue(
+            null, "DBSCHEMA", "VALUE2", "NAME='SERIAL_KEY'", String.class));
+    this.certColumn = (dbControl == DbControl.XIPKI_CA_v4 && certHashAlgo != HashAlgo.SHA1)
+        ? BinaryColumn.detect(datasource, null, "CERT", "CERT") : null;
+    // the rows found via SNH are filtered by SN in buildResult
+    String snCriteria = serialKeyHashed ? " AND SNH=? AND SN=?" : " AND SN=?";
+    String snInArray = serialKeyHashed ? " AND SNH IN (?" : " AND SN IN (?";
+
     String singleSql;
     StringBuilder arrayBuffer = new StringBuilder(200);
 
     if (dbControl == DbControl.XIPKI_OCSP_v4) {
       singleSql = StringUtil.concat("REV,RR,RT,RIT,HASH FROM CERT WHERE IID=",
-          Integer.toString(caId), " AND SN=?");
+          Integer.toString(caId), snCriteria);
 
       arrayBuffer.append("SN,REV,RR,RT,RIT,HASH FROM CERT WHERE IID=").append(caId)
-        .append(" AND SN IN (?");
+        .append(snInArray);
       for (int i = 1; i < numPerSelect; i++) {
         arrayBuffer.append(",?");
       }
@@ -214,10 +231,10 @@ class TargetDigestRetriever implements Closeable {
       }
 
       singleSql = StringUtil.concat("REV,RR,RT,RIT,", hashOrCertColumn,
-        " FROM CERT WHERE CA_ID=", Integer.toString(caId), " AND SN=?");
+        " FROM CERT WHERE CA_ID=", Integer.toString(caId), snCriteria);
 
       arrayBuffer.append("SN,REV,RR,RT,RIT,").append(hashOrCertColumn)
-        .append(" FROM CERT WHERE CA_ID=").append(caId).append(" AND SN IN (?");
+        .append(" FROM CERT WHERE CA_ID=").append(caId).append(snInArray);
 
       for (int i = 1; i < numPerSelect; i++) {
         arrayBuffer.append(",?");
@@ -282,7 +299,12 @@ class TargetDigestRetriever implements Closeable {
 
     try {
       for (int i = 0; i < n; i++) {
-        batchSelectStmt.setString(i + 1, serialNumbers.get(i).toString(16));
+        BigInteger serialNumber = serialNumbers.get(i);
+        if (serialKeyHashed) {
+          batchSelectStmt.setLong(i + 1, FpIdCalculator.hash(serialNumber));
+        } else {
+          batchSelectStmt.setString(i + 1, serialNumber.toString(16));
+        }
       }
 
       rs = batchSelectStmt.executeQuery();
@@ -330,7 +352,11 @@ class TargetDigestRetriever implements Closeable {
       throws DataAccessException {
     ResultSet rs = null;
     try {
-      singleSelectStmt.setString(1, serialNumber.toString(16));
+      int idx = 1;
+      if (serialKeyHashed) {
+        singleSelectStmt.setLong(idx++, FpIdCalculator.hash(serialNumber));
+      }
+      singleSelectStmt.setString(idx++, serialNumber.toString(16));
       rs = singleSelectStmt.executeQuery();
       if (!rs.next()) {
         return null;
@@ -381,9 +407,7 @@ class TargetDigestRetriever implements Closeable {
       if (certhashAlgo == HashAlgo.SHA1) {
         return rs.getString("SHA1");
       } else {
-        String b64Cert = rs.getString("CERT");
-        byte[] encodedCert = Base64.decodeFast(b64Cert);
-        return certhashAlgo.base64Hash(encodedCert);
+        return certhashAlgo.base64Hash(certColumn.get(rs));
       }
     }
   }
@@ -20,6 +20,7 @@ package org.xipki.ca.mgmt.db.port;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.HashAlgo;
@@ -38,15 +39,22 @@ abstract class AbstractOcspCertstoreDbImporter extends DbPorter {
   protected static final String SQL_ADD_ISSUER =
       "INSERT INTO ISSUER (ID,SUBJECT,NBEFORE,NAFTER,S1C,REV_INFO,CERT) VALUES (?,?,?,?,?,?,?)";
 
-  protected static final String SQL_ADD_CERT =
-      "INSERT INTO CERT (ID,IID,SN,LUPDATE,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH,SUBJECT)"
-      + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?)";
-
   protected static final String SQL_DEL_CERT = "DELETE FROM CERT WHERE ID>?";
 
+  protected final String sqlAddCert;
+
+  // column ISSUER.CERT, binary or Base64 encoded
+  protected final BinaryColumn issuerCertColumn;
+
   AbstractOcspCertstoreDbImporter(DataSourceWrapper datasource, String srcDir, AtomicBoolean stopMe)
       throws Exception {
     super(datasource, srcDir, stopMe);
+    this.issuerCertColumn = BinaryColumn.detect(datasource, null, "ISSUER", "CERT");
+    this.sqlAddCert = serialKeyHashed
+        ? "INSERT INTO CERT (ID,IID,SN,LUPDATE,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH,SUBJECT,SNH)"
+          + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?)"
+        : "INSERT INTO CERT (ID,IID,SN,LUPDATE,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH,SUBJECT)"
+          + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?)";
   }
 
   protected String sha1(byte[] data) {
@@ -71,6 +79,9 @@ abstract class AbstractOcspCertstoreDbImporter extends DbPorter {
 
     datasource.dropForeignKeyConstraint(null, "FK_CERT_ISSUER1", "CERT");
     datasource.dropUniqueConstrain(null, "CONST_ISSUER_SN", "CERT");
+    if (serialKeyHashed) {
+      datasource.dropIndex(null, "CERT", "IDX_ISSUER_SNH");
+    }
 
     datasource.dropPrimaryKey(null, "PK_CERT", "CERT");
 
@@ -87,6 +98,9 @@ abstract class AbstractOcspCertstoreDbImporter extends DbPorter {
     datasource.addForeignKeyConstraint(null, "FK_CERT_ISSUER1", "CERT", "IID", "ISSUER", "ID",
         "CASCADE", "NO ACTION");
     datasource.addUniqueConstrain(null, "CONST_ISSUER_SN", "CERT", "IID", "SN");
+    if (serialKeyHashed) {
+      datasource.createIndex(null, "IDX_ISSUER_SNH", "CERT", "IID", "SNH");
+    }
 
     long duration = (System.currentTimeMillis() - start) / 1000;
     System.out.println(" recovered indexes in " + StringUtil.formatTime(duration, false));
@@ -42,6 +42,7 @@ import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.x509.Extension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.HashAlgo;
@@ -72,6 +73,9 @@ class CaCertstoreDbExporter extends DbPorter {
 
   private final boolean resume;
 
+  // column CERT.CERT, binary or Base64 encoded
+  private final BinaryColumn certColumn;
+
   CaCertstoreDbExporter(DataSourceWrapper datasource, String baseDir, int numCertsInBundle,
       int numCertsPerSelect, boolean resume, AtomicBoolean stopMe)
           throws DataAccessException {
@@ -80,6 +84,7 @@ class CaCertstoreDbExporter extends DbPorter {
     this.numCertsInBundle = Args.positive(numCertsInBundle, "numCertsInBundle");
     this.numCertsPerSelect = Args.positive(numCertsPerSelect, "numCertsPerSelect");
     this.resume = resume;
+    this.certColumn = BinaryColumn.detect(datasource, null, "CERT", "CERT");
   }
 
   public void export() throws Exception {
@@ -284,7 +289,7 @@ class CaCertstoreDbExporter extends DbPorter {
           }
 
           if (CaDbEntryType.CERT == type) {
-            byte[] certBytes = Base64.decodeFast(rs.getString("CERT"));
+            byte[] certBytes = certColumn.get(rs);
 
             String sha1 = HashAlgo.SHA1.hexHash(certBytes);
             String certFileName = sha1 + ".der";
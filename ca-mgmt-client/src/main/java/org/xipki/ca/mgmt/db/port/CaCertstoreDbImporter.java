@@ -43,6 +43,7 @@ import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.TBSCertificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.FpIdCalculator;
@@ -66,11 +67,6 @@ class CaCertstoreDbImporter extends DbPorter {
 
   private static final Logger LOG = LoggerFactory.getLogger(CaCertstoreDbImporter.class);
 
-  private static final String SQL_ADD_CERT =
-      "INSERT INTO CERT (ID,LUPDATE,SN,SUBJECT,FP_S,FP_RS,NBEFORE,NAFTER,REV,RR,RT,RIT,"
-      + "PID,CA_ID,RID,UID,FP_K,EE,RTYPE,TID,SHA1,REQ_SUBJECT,CERT)"
-      + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
-
   private static final String SQL_ADD_CRL =
       "INSERT INTO CRL (ID,CA_ID,CRL_NO,THISUPDATE,NEXTUPDATE,DELTACRL,BASECRL_NO,CRL)"
       + " VALUES (?,?,?,?,?,?,?,?)";
@@ -80,16 +76,29 @@ class CaCertstoreDbImporter extends DbPorter {
 
   private static final String SQL_ADD_REQCERT = "INSERT INTO REQCERT (ID,RID,CID) VALUES (?,?,?)";
 
+  private final String sqlAddCert;
+
   private final boolean resume;
 
   private final int numCertsPerCommit;
 
+  // column CERT.CERT, binary or Base64 encoded
+  private final BinaryColumn certColumn;
+
   CaCertstoreDbImporter(DataSourceWrapper datasource, String srcDir, int numCertsPerCommit,
       boolean resume, AtomicBoolean stopMe) throws Exception {
     super(datasource, srcDir, stopMe);
 
     this.numCertsPerCommit = Args.positive(numCertsPerCommit, "numCertsPerCommit");
     this.resume = resume;
+    this.certColumn = BinaryColumn.detect(datasource, null, "CERT", "CERT");
+    this.sqlAddCert = serialKeyHashed
+        ? "INSERT INTO CERT (ID,LUPDATE,SN,SUBJECT,FP_S,FP_RS,NBEFORE,NAFTER,REV,RR,RT,RIT,"
+          + "PID,CA_ID,RID,UID,FP_K,EE,RTYPE,TID,SHA1,REQ_SUBJECT,CERT,SNH)"
+          + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)"
+        : "INSERT INTO CERT (ID,LUPDATE,SN,SUBJECT,FP_S,FP_RS,NBEFORE,NAFTER,REV,RR,RT,RIT,"
+          + "PID,CA_ID,RID,UID,FP_K,EE,RTYPE,TID,SHA1,REQ_SUBJECT,CERT)"
+          + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     File processLogFile = new File(baseDir, DbPorter.IMPORT_PROCESS_LOG_FILENAME);
     if (resume) {
@@ -275,7 +284,7 @@ class CaCertstoreDbImporter extends DbPorter {
       switch (type) {
         case CERT:
           total = certstore.getCountCerts();
-          sql = SQL_ADD_CERT;
+          sql = sqlAddCert;
           break;
         case CRL:
           total = certstore.getCountCrls();
@@ -496,7 +505,11 @@ class CaCertstoreDbImporter extends DbPorter {
           stmt.setString(idx++, tidS);
           stmt.setString(idx++, b64Sha1FpCert);
           stmt.setString(idx++, cert.getRs());
-          stmt.setString(idx++, Base64.encodeToString(encodedCert));
+          certColumn.set(stmt, idx++, encodedCert);
+          if (serialKeyHashed) {
+            stmt.setLong(idx++,
+                FpIdCalculator.hash(tbsCert.getSerialNumber().getPositiveValue()));
+          }
           stmt.addBatch();
         } catch (SQLException ex) {
           throw translate(sql, ex);
@@ -885,6 +898,9 @@ class CaCertstoreDbImporter extends DbPorter {
     datasource.dropForeignKeyConstraint(null, "FK_CERT_USER1", "CERT");
 
     datasource.dropUniqueConstrain(null, "CONST_CA_SN", "CERT");
+    if (serialKeyHashed) {
+      datasource.dropIndex(null, "CERT", "IDX_CA_SNH");
+    }
 
     datasource.dropForeignKeyConstraint(null, "FK_PUBLISHQUEUE_CERT1", "PUBLISHQUEUE");
 
@@ -921,6 +937,9 @@ class CaCertstoreDbImporter extends DbPorter {
         "CID", "CERT", "ID", "CASCADE", "NO ACTION");
 
     datasource.addUniqueConstrain(null, "CONST_CA_SN", "CERT", "CA_ID", "SN");
+    if (serialKeyHashed) {
+      datasource.createIndex(null, "IDX_CA_SNH", "CERT", "CA_ID", "SNH");
+    }
 
     datasource.createIndex(null, "IDX_CA_FPK", "CERT", "CA_ID", "FP_K");
     datasource.createIndex(null, "IDX_CA_FPS", "CERT", "CA_ID", "FP_S");
@@ -315,6 +315,35 @@ public abstract class DbPortWorker implements Runnable {
 
   } // ImportOcspDb
 
+  public static class MigrateSerialKey extends DbPortWorker {
+
+    private final int batchEntriesPerCommit;
+
+    public MigrateSerialKey(DataSourceFactory datasourceFactory,
+        PasswordResolver passwordResolver, String dbConfFile, int batchEntriesPerCommit)
+        throws PasswordResolverException, IOException {
+      super(datasourceFactory, passwordResolver, dbConfFile);
+      this.batchEntriesPerCommit = batchEntriesPerCommit;
+    }
+
+    @Override
+    protected void run0() throws Exception {
+      long start = System.currentTimeMillis();
+      try {
+        new SerialKeyMigrator(datasource, batchEntriesPerCommit, stopMe).migrate();
+      } finally {
+        try {
+          datasource.close();
+        } catch (Throwable th) {
+          LOG.error("datasource.close()", th);
+        }
+        long end = System.currentTimeMillis();
+        System.out.println("finished in " + StringUtil.formatTime((end - start) / 1000, false));
+      }
+    }
+
+  } // MigrateSerialKey
+
   public static class ImportOcspFromCaDb extends DbPortWorker {
 
     private final String publisherName;
@@ -196,6 +196,9 @@ public class DbPorter extends DbToolBase {
 
   protected final DbSchemaInfo dbSchemaInfo;
 
+  // whether the table CERT has the column SNH, which is then written by the importers
+  protected final boolean serialKeyHashed;
+
   public DbPorter(DataSourceWrapper datasource, String baseDir, AtomicBoolean stopMe)
       throws DataAccessException {
     super(datasource, baseDir, stopMe);
@@ -203,6 +206,7 @@ public class DbPorter extends DbToolBase {
     this.dbSchemaInfo = new DbSchemaInfo(datasource);
     this.dbSchemaVersion = Integer.parseInt(dbSchemaInfo.getVariableValue("VERSION"));
     this.maxX500nameLen = Integer.parseInt(dbSchemaInfo.getVariableValue("X500NAME_MAXLEN"));
+    this.serialKeyHashed = datasource.tableHasColumn(null, "CERT", "SNH");
   }
 
   protected FileOrValue buildFileOrValue(String content, String fileName) throws IOException {
@@ -42,10 +42,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.FpIdCalculator;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
-import org.xipki.util.Base64;
 import org.xipki.util.ConfPairs;
 import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
@@ -241,7 +241,7 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
       ps.setLong(idx++, cert.getTBSCertificate().getEndDate().getDate().getTime() / 1000);
       ps.setString(idx++, HashAlgo.SHA1.base64Hash(encodedCert));
       ps.setString(idx++, issuer.getRevInfo());
-      ps.setString(idx++, Base64.encodeToString(encodedCert));
+      issuerCertColumn.set(ps, idx++, encodedCert);
 
       ps.execute();
     } catch (SQLException ex) {
@@ -284,7 +284,7 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
     System.out.println("importing certificates from ID " + minId);
     processLog.printHeader();
 
-    PreparedStatement psCert = prepareStatement(SQL_ADD_CERT);
+    PreparedStatement psCert = prepareStatement(sqlAddCert);
 
     DbPortFileNameIterator certsFileIterator = new DbPortFileNameIterator(
         baseDir + File.separator + CaDbEntryType.CERT.getDirName() + ".mf");
@@ -418,10 +418,14 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
 
               psCert.setString(idx++, certhash);
               psCert.setString(idx++, subject);
+              if (serialKeyHashed) {
+                psCert.setLong(idx++,
+                    FpIdCalculator.hash(tbsCert.getSerialNumber().getPositiveValue()));
+              }
 
               psCert.addBatch();
             } catch (SQLException ex) {
-              throw translate(SQL_ADD_CERT, ex);
+              throw translate(sqlAddCert, ex);
             }
 
           } // end if (caIds.contains(caId))
@@ -438,7 +442,7 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
             rollback();
             deleteCertGreatherThan(lastSuccessfulCertId, LOG);
             if (th instanceof SQLException) {
-              throw translate(SQL_ADD_CERT, (SQLException) th);
+              throw translate(sqlAddCert, (SQLException) th);
             } else if (th instanceof Exception) {
               throw (Exception) th;
             } else {
@@ -37,6 +37,7 @@ import java.util.zip.ZipOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.util.Args;
@@ -63,6 +64,9 @@ class OcspCertstoreDbExporter extends DbPorter {
 
   private final boolean resume;
 
+  // column ISSUER.CERT, binary or Base64 encoded
+  private final BinaryColumn issuerCertColumn;
+
   OcspCertstoreDbExporter(DataSourceWrapper datasource, String baseDir, int numCertsInBundle,
       int numCertsPerSelect, boolean resume, AtomicBoolean stopMe) throws Exception {
     super(datasource, baseDir, stopMe);
@@ -77,6 +81,7 @@ class OcspCertstoreDbExporter extends DbPorter {
       }
     }
     this.resume = resume;
+    this.issuerCertColumn = BinaryColumn.detect(datasource, null, "ISSUER", "CERT");
   } // constructor
 
   public void export() throws Exception {
@@ -145,7 +150,8 @@ class OcspCertstoreDbExporter extends DbPorter {
         issuer.setId(id);
 
         String certFileName = "issuer-conf/cert-issuer-" + id;
-        IoUtil.save(new File(baseDir, certFileName), rs.getString("CERT").getBytes("UTF-8"));
+        IoUtil.save(new File(baseDir, certFileName),
+            issuerCertColumn.getBase64(rs).getBytes("UTF-8"));
         issuer.setCertFile(certFileName);
         issuer.setRevInfo(rs.getString("REV_INFO"));
 
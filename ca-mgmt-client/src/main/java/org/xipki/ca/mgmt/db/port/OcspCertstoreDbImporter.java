@@ -20,6 +20,7 @@ package org.xipki.ca.mgmt.db.port;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -37,6 +38,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.FpIdCalculator;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
@@ -151,7 +153,7 @@ class OcspCertstoreDbImporter extends AbstractOcspCertstoreDbImporter {
           ps.setLong(idx++, cert.getTBSCertificate().getEndDate().getDate().getTime() / 1000);
           ps.setString(idx++, sha1(encodedCert));
           ps.setString(idx++, issuer.getRevInfo());
-          ps.setString(idx++, b64Cert);
+          issuerCertColumn.set(ps, idx++, encodedCert);
 
           ps.execute();
         } catch (SQLException ex) {
@@ -194,7 +196,7 @@ class OcspCertstoreDbImporter extends AbstractOcspCertstoreDbImporter {
     System.out.println("importing certificates from ID " + minId);
     processLog.printHeader();
 
-    PreparedStatement psCert = prepareStatement(SQL_ADD_CERT);
+    PreparedStatement psCert = prepareStatement(sqlAddCert);
 
     OcspDbEntryType type = OcspDbEntryType.CERT;
 
@@ -301,9 +303,12 @@ class OcspCertstoreDbImporter extends AbstractOcspCertstoreDbImporter {
           setLong(psCert, idx++, cert.getRit());
           psCert.setString(idx++, cert.getHash());
           psCert.setString(idx++, cert.getSubject());
+          if (serialKeyHashed) {
+            psCert.setLong(idx++, FpIdCalculator.hash(new BigInteger(cert.getSn(), 16)));
+          }
           psCert.addBatch();
         } catch (SQLException ex) {
-          throw translate(SQL_ADD_CERT, ex);
+          throw translate(sqlAddCert, ex);
         }
 
         boolean isLastBlock = i == n - 1;
@@ -317,7 +322,7 @@ class OcspCertstoreDbImporter extends AbstractOcspCertstoreDbImporter {
             rollback();
             deleteCertGreatherThan(lastSuccessfulCertId, LOG);
             if (th instanceof SQLException) {
-              throw translate(SQL_ADD_CERT, (SQLException) th);
+              throw translate(sqlAddCert, (SQLException) th);
             } else if (th instanceof Exception) {
               throw (Exception) th;
             } else {
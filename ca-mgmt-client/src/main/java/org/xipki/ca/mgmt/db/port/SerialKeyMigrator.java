@@ -0,0 +1,221 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.mgmt.db.port;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.datasource.DatabaseType;
+import org.xipki.security.FpIdCalculator;
+import org.xipki.util.Args;
+import org.xipki.util.ProcessLog;
+
+/**
+ * Migrates the table CERT of a CA or OCSP database to the hashed serial number key.
+ *
+ * <p>The column SNH is added and filled for all rows without SNH, then the index over the
+ * issuer and SNH is created. The unique constraint over the issuer and SN is kept, so that the
+ * database still rejects duplicated serial numbers. The migration can be resumed.
+ *
+ * <p>The CA and OCSP servers look up by SNH only if the entry SERIAL_KEY=hash exists in the
+ * table DBSCHEMA, which is written as the last step, after the index has been created and the
+ * rows added in the meantime have been filled. Servers write SNH as soon as the column exists,
+ * hence servers started before the migration must be restarted once it is complete.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class SerialKeyMigrator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SerialKeyMigrator.class);
+
+  private static final String SQL_UPDATE_SNH = "UPDATE CERT SET SNH=? WHERE ID=?";
+
+  private final DataSourceWrapper datasource;
+
+  private final int numCertsPerCommit;
+
+  private final AtomicBoolean stopMe;
+
+  SerialKeyMigrator(DataSourceWrapper datasource, int numCertsPerCommit, AtomicBoolean stopMe) {
+    this.datasource = Args.notNull(datasource, "datasource");
+    this.numCertsPerCommit = Args.positive(numCertsPerCommit, "numCertsPerCommit");
+    this.stopMe = Args.notNull(stopMe, "stopMe");
+  }
+
+  void migrate() throws Exception {
+    boolean ocspDb = datasource.tableHasColumn(null, "CERT", "IID");
+    String issuerColumn = ocspDb ? "IID" : "CA_ID";
+    String indexName = ocspDb ? "IDX_ISSUER_SNH" : "IDX_CA_SNH";
+
+    if (!datasource.tableHasColumn(null, "CERT", "SNH")) {
+      String type = datasource.getDatabaseType() == DatabaseType.ORACLE ? "NUMBER(19)" : "BIGINT";
+      LOG.info("adding column SNH to table CERT");
+      executeUpdate("ALTER TABLE CERT ADD SNH " + type);
+    }
+
+    if ("hash".equals(getSerialKey())) {
+      LOG.info("table CERT has been migrated already");
+      return;
+    }
+
+    fillSnh();
+    if (stopMe.get()) {
+      LOG.info("migration stopped, resume it by running the command again");
+      return;
+    }
+
+    if (indexExists(indexName)) {
+      // created in a previous run
+      LOG.info("index {} exists already", indexName);
+    } else {
+      // failure aborts the migration, the column SNH is useless without the index
+      LOG.info("creating index {}", indexName);
+      datasource.createIndex(null, indexName, "CERT", issuerColumn, "SNH");
+    }
+
+    // rows added by servers started before the column SNH existed
+    fillSnh();
+    if (stopMe.get()) {
+      LOG.info("migration stopped, resume it by running the command again");
+      return;
+    }
+
+    // from now on the servers look up by SNH
+    LOG.info("marking table CERT as keyed by SNH");
+    executeUpdate("INSERT INTO DBSCHEMA (NAME,VALUE2) VALUES ('SERIAL_KEY','hash')");
+  } // method migrate
+
+  private String getSerialKey() throws DataAccessException {
+    return datasource.getFirstValue(null, "DBSCHEMA", "VALUE2", "NAME='SERIAL_KEY'",
+        String.class);
+  }
+
+  private boolean indexExists(String indexName) throws DataAccessException {
+    Connection conn = datasource.getConnection();
+    try {
+      DatabaseMetaData metaData = conn.getMetaData();
+      // identifiers may be stored in upper or lower case, depending on the database
+      for (String table : new String[]{"CERT", "cert"}) {
+        try (ResultSet rs = metaData.getIndexInfo(null, null, table, false, true)) {
+          while (rs.next()) {
+            if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+              return true;
+            }
+          }
+        }
+      }
+      return false;
+    } catch (SQLException ex) {
+      throw datasource.translate(null, ex);
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  } // method indexExists
+
+  private void fillSnh() throws DataAccessException {
+    final String coreSql = "ID,SN FROM CERT WHERE ID>? AND SNH IS NULL";
+    final String selectSql = datasource.buildSelectFirstSql(numCertsPerCommit, "ID ASC", coreSql);
+
+    ProcessLog processLog = new ProcessLog(datasource.getCount(null, "CERT"));
+    LOG.info("filling column SNH");
+    processLog.printHeader();
+
+    Connection conn = datasource.getConnection();
+    PreparedStatement selectStmt = null;
+    PreparedStatement updateStmt = null;
+    String sql = null;
+    boolean autoCommit = true;
+    try {
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+
+      selectStmt = datasource.prepareStatement(conn, selectSql);
+      updateStmt = datasource.prepareStatement(conn, SQL_UPDATE_SNH);
+
+      long id = 0;
+      while (!stopMe.get()) {
+        sql = selectSql;
+        selectStmt.setLong(1, id);
+        int num = 0;
+        try (ResultSet rs = selectStmt.executeQuery()) {
+          while (rs.next()) {
+            id = rs.getLong("ID");
+            updateStmt.setLong(1, FpIdCalculator.hash(new BigInteger(rs.getString("SN"), 16)));
+            updateStmt.setLong(2, id);
+            updateStmt.addBatch();
+            num++;
+          }
+        }
+
+        if (num == 0) {
+          break;
+        }
+
+        sql = SQL_UPDATE_SNH;
+        updateStmt.executeBatch();
+        conn.commit();
+        processLog.addNumProcessed(num);
+        processLog.printStatus();
+      }
+    } catch (SQLException ex) {
+      try {
+        conn.rollback();
+      } catch (SQLException ex2) {
+        LOG.warn("could not rollback: {}", ex2.getMessage());
+      }
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(selectStmt, null, false);
+      datasource.releaseResources(updateStmt, null, false);
+      try {
+        conn.setAutoCommit(autoCommit);
+      } catch (SQLException ex) {
+        LOG.warn("could not recover AutoCommit: {}", ex.getMessage());
+      }
+      datasource.returnConnection(conn);
+    }
+
+    processLog.printTrailer();
+    LOG.info("filled SNH of {} certificates", processLog.numProcessed());
+  } // method fillSnh
+
+  private void executeUpdate(String sql) throws DataAccessException {
+    Statement stmt = datasource.createStatement();
+    try {
+      stmt.executeUpdate(sql);
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(stmt, null);
+    }
+  }
+
+}
@@ -0,0 +1,207 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.mgmt.db.port.test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ca.mgmt.db.port.DbPortWorker;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.dbtool.InitDbMain;
+import org.xipki.dbtool.LiquibaseMain;
+import org.xipki.security.FpIdCalculator;
+
+/**
+ * Test of the migration of the table CERT to the hashed serial number key, including a stopped
+ * and resumed migration.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class MigrateSerialKeyTest {
+
+  // the database schemas are maintained in the module ca-server
+  private static final String SCHEMA_DIR = "../ca-server/src/main/resources/sql/";
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  private File dbConfFile;
+
+  private DataSourceWrapper datasource;
+
+  @After
+  public void tearDown() {
+    if (datasource != null) {
+      datasource.close();
+    }
+
+    if (dbConfFile != null) {
+      dbConfFile.delete();
+    }
+  }
+
+  @Test
+  public void testResumedMigrationOfOcspDb() throws Exception {
+    createDatabase("ocsp-init.xml");
+    for (int i = 1; i <= 5; i++) {
+      addOcspCert(i);
+    }
+
+    // stopped before any row is filled
+    migrate(true);
+    Assert.assertTrue(datasource.tableHasColumn(null, "CERT", "SNH"));
+    Assert.assertEquals(5, countRowsWithoutSnh());
+    Assert.assertFalse(indexExists("IDX_ISSUER_SNH"));
+    Assert.assertNull(getSerialKey());
+
+    // rows added by servers started before the migration
+    addOcspCert(6);
+    addOcspCert(7);
+
+    migrate(false);
+    assertMigrated(7, "IDX_ISSUER_SNH");
+
+    // once marked, the migration does nothing
+    migrate(false);
+    assertMigrated(7, "IDX_ISSUER_SNH");
+  }
+
+  @Test
+  public void testMigrationOfCaDb() throws Exception {
+    createDatabase("ca-init.xml");
+    for (int i = 1; i <= 5; i++) {
+      addCaCert(i);
+    }
+
+    migrate(false);
+    assertMigrated(5, "IDX_CA_SNH");
+  }
+
+  private void assertMigrated(int numRows, String indexName) throws Exception {
+    Assert.assertEquals(0, countRowsWithoutSnh());
+    for (long id = 1; id <= numRows; id++) {
+      Assert.assertEquals(FpIdCalculator.hash(serial(id)),
+          datasource.getFirstValue(null, "CERT", "SNH", "ID=" + id, Long.class).longValue());
+    }
+    Assert.assertTrue(indexExists(indexName));
+    Assert.assertEquals("hash", getSerialKey());
+  }
+
+  private void migrate(boolean stopped) throws Exception {
+    DbPortWorker.MigrateSerialKey worker = new DbPortWorker.MigrateSerialKey(
+        new DataSourceFactory(), null, dbConfFile.getPath(), 2);
+    worker.setStopMe(stopped);
+    worker.run();
+    if (worker.exception() != null) {
+      throw worker.exception();
+    }
+  }
+
+  private static BigInteger serial(long id) {
+    return BigInteger.valueOf(id).shiftLeft(100).add(BigInteger.valueOf(id));
+  }
+
+  private void addOcspCert(long id) throws Exception {
+    long nowInSec = System.currentTimeMillis() / 1000;
+    executeUpdate("INSERT INTO CERT (ID,IID,SN,LUPDATE,REV) VALUES (?,1,?,?,0)",
+        id, serial(id).toString(16), nowInSec);
+  }
+
+  private void addCaCert(long id) throws Exception {
+    long nowInSec = System.currentTimeMillis() / 1000;
+    executeUpdate("INSERT INTO CERT (ID,CA_ID,SN,PID,FP_S,FP_K,LUPDATE,NBEFORE,NAFTER,REV,EE,"
+        + "RTYPE,SUBJECT,SHA1,CERT) VALUES (?,1,?,1,?,?,?,?,?,0,1,1,?,'dummy','dummy')",
+        id, serial(id).toString(16), id, id, nowInSec, nowInSec - 100, nowInSec + 100,
+        "CN=cert-" + id);
+  }
+
+  private long countRowsWithoutSnh() throws Exception {
+    return datasource.getFirstValue(null, "CERT", "COUNT(*)", "SNH IS NULL", Long.class);
+  }
+
+  private String getSerialKey() throws Exception {
+    return datasource.getFirstValue(null, "DBSCHEMA", "VALUE2", "NAME='SERIAL_KEY'",
+        String.class);
+  }
+
+  private boolean indexExists(String indexName) throws Exception {
+    Connection conn = datasource.getConnection();
+    try (ResultSet rs = conn.getMetaData().getIndexInfo(null, null, "CERT", false, true)) {
+      while (rs.next()) {
+        if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+  private void executeUpdate(String sql, Object... params) throws Exception {
+    Connection conn = datasource.getConnection();
+    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.length; i++) {
+        ps.setObject(i + 1, params[i]);
+      }
+      ps.executeUpdate();
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+  private void createDatabase(String schemaFile) throws Exception {
+    String url = "jdbc:h2:mem:migrate-serialkey-" + DB_INDEX.incrementAndGet()
+        + ";DB_CLOSE_DELAY=-1";
+    InitDbMain.initDb(new LiquibaseMain.DatabaseConf("org.h2.Driver", "sa", "", url, null),
+        SCHEMA_DIR + schemaFile);
+
+    String conf = "driverClassName = org.h2.Driver\n"
+        + "jdbcUrl = " + url + "\n"
+        + "username = sa\n"
+        + "password = \n"
+        + "maximumPoolSize = 2\n";
+    dbConfFile = File.createTempFile("migrate-serialkey-", ".properties");
+    Files.write(dbConfFile.toPath(), conf.getBytes(StandardCharsets.UTF_8));
+
+    Properties props = new Properties();
+    props.setProperty("driverClassName", "org.h2.Driver");
+    props.setProperty("jdbcUrl", url);
+    props.setProperty("username", "sa");
+    props.setProperty("password", "");
+    props.setProperty("maximumPoolSize", "2");
+    datasource = new DataSourceFactory().createDataSource("test", props, null);
+
+    // no entries of ISSUER, CA, PROFILE and REQUESTOR are required
+    executeUpdate("SET REFERENTIAL_INTEGRITY FALSE");
+  }
+
+}
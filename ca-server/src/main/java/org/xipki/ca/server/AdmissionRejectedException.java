@@ -0,0 +1,49 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.server;
+
+import org.xipki.ca.api.OperationException;
+
+/**
+ * Thrown if a request is rejected by the admission control of a CA because the CA is busy.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class AdmissionRejectedException extends OperationException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int retryAfter;
+
+  public AdmissionRejectedException(String reason, int retryAfter) {
+    super(ErrorCode.SYSTEM_UNAVAILABLE, reason + ", retry after " + retryAfter + " seconds");
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * Returns the hint when the request may be retried.
+   * @return number of seconds after which the request may be retried.
+   */
+  public int getRetryAfter() {
+    return retryAfter;
+  }
+
+}
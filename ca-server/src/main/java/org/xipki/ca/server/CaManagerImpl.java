@@ -64,6 +64,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.audit.AuditEvent;
 import org.xipki.audit.AuditLevel;
+import org.xipki.audit.AuditService;
+import org.xipki.audit.AuditServiceMetrics;
 import org.xipki.audit.AuditStatus;
 import org.xipki.audit.Audits;
 import org.xipki.audit.PciAuditEvent;
@@ -100,6 +102,7 @@ import org.xipki.ca.server.cmp.CmpResponder;
 import org.xipki.ca.server.store.CertStore;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceMetrics;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.password.PasswordResolver;
 import org.xipki.password.PasswordResolverException;
@@ -498,6 +501,23 @@ public class CaManagerImpl implements CaManager, Closeable {
     }
   }
 
+  @Override
+  public Map<String, Object> getDatasourceMetrics() {
+    if (datasource == null) {
+      return null;
+    }
+
+    DataSourceMetrics metrics = datasource.getMetrics();
+    return (metrics == null) ? null : metrics.getStatuses();
+  }
+
+  @Override
+  public Map<String, Object> getAuditMetrics() {
+    AuditService auditService = Audits.getAuditService();
+    return (auditService instanceof AuditServiceMetrics)
+        ? ((AuditServiceMetrics) auditService).getMetrics() : null;
+  }
+
   @Override
   public CaSystemStatus getCaSystemStatus() {
     if (caSystemSetuped) {
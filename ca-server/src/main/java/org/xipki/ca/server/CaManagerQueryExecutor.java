@@ -165,7 +165,7 @@ class CaManagerQueryExecutor {
     try {
       ps = prepareStatement(sql);
       ps.setString(1, eventName);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
 
       if (!rs.next()) {
         return null;
@@ -186,7 +186,7 @@ class CaManagerQueryExecutor {
     try {
       ps = prepareStatement(sql);
       ps.setString(1, eventName);
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
@@ -206,7 +206,7 @@ class CaManagerQueryExecutor {
       ps.setTimestamp(3, new Timestamp(systemEvent.getEventTime() * 1000L));
       ps.setString(4, systemEvent.getOwner());
 
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add system event " + systemEvent.getName());
       }
 
@@ -253,7 +253,7 @@ class CaManagerQueryExecutor {
     try {
       stmt = prepareStatement(sql);
       stmt.setString(1, name);
-      rs = stmt.executeQuery();
+      rs = datasource.executeQuery(stmt, sql);
 
       if (!rs.next()) {
         throw new CaMgmtException("unknown CA " + name);
@@ -303,7 +303,7 @@ class CaManagerQueryExecutor {
     try {
       stmt = prepareStatement(sql);
       stmt.setString(1, name);
-      rs = stmt.executeQuery();
+      rs = datasource.executeQuery(stmt, sql);
 
       if (!rs.next()) {
         throw new CaMgmtException("unkown Publisher " + name);
@@ -326,7 +326,7 @@ class CaManagerQueryExecutor {
     try {
       stmt = prepareStatement(sql);
       stmt.setString(1, requestorName);
-      rs = stmt.executeQuery();
+      rs = datasource.executeQuery(stmt, sql);
 
       if (!rs.next()) {
         return null;
@@ -348,7 +348,7 @@ class CaManagerQueryExecutor {
     try {
       stmt = prepareStatement(sql);
       stmt.setString(1, name);
-      rs = stmt.executeQuery();
+      rs = datasource.executeQuery(stmt, sql);
 
       if (!rs.next()) {
         throw new CaMgmtException("unknown Requestor " + name);
@@ -371,7 +371,7 @@ class CaManagerQueryExecutor {
     try {
       stmt = prepareStatement(sql);
       stmt.setString(1, name);
-      rs = stmt.executeQuery();
+      rs = datasource.executeQuery(stmt, sql);
 
       if (!rs.next()) {
         throw new CaMgmtException("unknown signer " + name);
@@ -393,7 +393,7 @@ class CaManagerQueryExecutor {
     try {
       stmt = prepareStatement(sql);
       stmt.setString(1, name);
-      rs = stmt.executeQuery();
+      rs = datasource.executeQuery(stmt, sql);
 
       if (!rs.next()) {
         throw new CaMgmtException("uknown CA " + name);
@@ -492,7 +492,7 @@ class CaManagerQueryExecutor {
     try {
       stmt = prepareStatement(sql);
       stmt.setInt(1, ca.getId());
-      rs = stmt.executeQuery();
+      rs = datasource.executeQuery(stmt, sql);
 
       Set<MgmtEntry.CaHasRequestor> ret = new HashSet<>();
       while (rs.next()) {
@@ -524,7 +524,7 @@ class CaManagerQueryExecutor {
     try {
       stmt = prepareStatement(sql);
       stmt.setInt(1, ca.getId());
-      rs = stmt.executeQuery();
+      rs = datasource.executeQuery(stmt, sql);
 
       Set<Integer> ret = new HashSet<>();
       while (rs.next()) {
@@ -546,7 +546,7 @@ class CaManagerQueryExecutor {
     try {
       stmt = prepareStatement(sql);
       stmt.setInt(1, ca.getId());
-      rs = stmt.executeQuery();
+      rs = datasource.executeQuery(stmt, sql);
 
       Set<Integer> ret = new HashSet<>();
       while (rs.next()) {
@@ -572,7 +572,7 @@ class CaManagerQueryExecutor {
     try {
       ps = prepareStatement(sql);
       ps.setString(1, name);
-      return ps.executeUpdate() > 0;
+      return datasource.executeUpdate(ps, sql) > 0;
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
     } finally {
@@ -644,7 +644,7 @@ class CaManagerQueryExecutor {
       String encodedExtraCtrl = (extraControl == null) ? null : extraControl.getEncoded();
       ps.setString(idx++, StringUtil.isBlank(encodedExtraCtrl) ? null : encodedExtraCtrl);
       ps.setString(idx++, caEntry.getSignerConf());
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add CA " + caEntry.getIdent());
       }
       if (LOG.isInfoEnabled()) {
@@ -669,7 +669,7 @@ class CaManagerQueryExecutor {
       ps = prepareStatement(sql);
       ps.setString(1, aliasName);
       ps.setInt(2, ca.getId());
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add CA alias " + aliasName);
       }
       LOG.info("added CA alias '{}' for CA '{}'", aliasName, ca);
@@ -700,7 +700,7 @@ class CaManagerQueryExecutor {
       ps.setString(idx++, dbEntry.getType());
       String conf = dbEntry.getConf();
       ps.setString(idx++, conf);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add certprofile " + dbEntry.getIdent());
       }
 
@@ -722,7 +722,7 @@ class CaManagerQueryExecutor {
       ps = prepareStatement(sql);
       ps.setInt(1, ca.getId());
       ps.setInt(2, profile.getId());
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add profile " + profile + " to CA " + ca);
       }
 
@@ -752,7 +752,7 @@ class CaManagerQueryExecutor {
       ps.setString(2, dbEntry.getIdent().getName());
       ps.setString(3, dbEntry.getType());
       ps.setString(4, dbEntry.getConf());
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add requestor " + dbEntry.getIdent());
       }
 
@@ -773,7 +773,7 @@ class CaManagerQueryExecutor {
     try {
       stmt = prepareStatement(sql);
       stmt.setString(1, requestorName);
-      rs = stmt.executeQuery();
+      rs = datasource.executeQuery(stmt, sql);
       if (rs.next()) {
         return;
       }
@@ -791,7 +791,7 @@ class CaManagerQueryExecutor {
       stmt.setString(3, "EMBEDDED");
       // ANY VALUE
       stmt.setString(4, "DEFAULT");
-      stmt.executeUpdate();
+      datasource.executeUpdate(stmt, sql);
       LOG.info("added requestor '{}'", requestorName);
     } catch (SQLException ex) {
       throw new CaMgmtException(datasource.translate(sql, ex));
@@ -822,7 +822,7 @@ class CaManagerQueryExecutor {
       String profilesText = StringUtil.collectionAsString(requestor.getProfiles(), ",");
       ps.setString(idx++, profilesText);
 
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add requestor " + requestorIdent + " to CA " + ca);
       }
 
@@ -856,7 +856,7 @@ class CaManagerQueryExecutor {
       ps.setString(idx++, dbEntry.getType());
       String conf = dbEntry.getConf();
       ps.setString(idx++, conf);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add publisher " + dbEntry.getIdent());
       }
 
@@ -875,7 +875,7 @@ class CaManagerQueryExecutor {
       ps = prepareStatement(sql);
       ps.setInt(1, ca.getId());
       ps.setInt(2, publisher.getId());
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add publisher " + publisher + " to CA " + ca);
       }
 
@@ -919,7 +919,7 @@ class CaManagerQueryExecutor {
       try {
         stmt = prepareStatement(sql);
         stmt.setInt(1, changeCaEntry.getIdent().getId());
-        rs = stmt.executeQuery();
+        rs = datasource.executeQuery(stmt, sql);
         if (!rs.next()) {
           throw new CaMgmtException("unknown CA '" + changeCaEntry.getIdent());
         }
@@ -1069,7 +1069,7 @@ class CaManagerQueryExecutor {
       try {
         ps = prepareStatement(sql);
         ps.setInt(1, ca.getId());
-        rs = ps.executeQuery();
+        rs = datasource.executeQuery(ps, sql);
         rs.next();
         nextCrlNoInDb = rs.getLong("NEXT_CRLNO");
       } catch (SQLException ex) {
@@ -1084,9 +1084,9 @@ class CaManagerQueryExecutor {
           ps = prepareStatement(updateSql);
           ps.setLong(1, nextCrlNo);
           ps.setInt(2, ca.getId());
-          ps.executeUpdate();
+          datasource.executeUpdate(ps, updateSql);
         } catch (SQLException ex) {
-          throw new CaMgmtException(datasource.translate(sql, ex));
+          throw new CaMgmtException(datasource.translate(updateSql, ex));
         }
       }
     } finally {
@@ -1167,7 +1167,7 @@ class CaManagerQueryExecutor {
       }
       setColumn(null, ps, index, whereColumn);
 
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not update table " + tableName);
       }
 
@@ -1299,7 +1299,7 @@ class CaManagerQueryExecutor {
     try {
       ps = prepareStatement(sql);
       ps.setString(1, caName);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not delelted CA " + caName);
       }
     } catch (SQLException ex) {
@@ -1317,7 +1317,7 @@ class CaManagerQueryExecutor {
     try {
       ps = prepareStatement(sql);
       ps.setString(1, aliasName);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not remove CA Alias " + aliasName);
       }
     } catch (SQLException ex) {
@@ -1339,7 +1339,7 @@ class CaManagerQueryExecutor {
       ps = prepareStatement(sql);
       ps.setInt(1, caId);
       ps.setInt(2, profileId);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not remove profile " + profileName + " from CA " + caName);
       }
     } catch (SQLException ex) {
@@ -1361,7 +1361,7 @@ class CaManagerQueryExecutor {
       ps = prepareStatement(sql);
       ps.setInt(1, caId);
       ps.setInt(2, requestorId);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException(
             "could not remove requestor " + requestorName + " from CA " + caName);
       }
@@ -1384,7 +1384,7 @@ class CaManagerQueryExecutor {
       ps = prepareStatement(sql);
       ps.setInt(1, caId);
       ps.setInt(2, publisherId);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException(
             "could not remove publisher " + publisherName + " from CA " + caName);
       }
@@ -1404,7 +1404,7 @@ class CaManagerQueryExecutor {
       ps = prepareStatement(sql);
       ps.setString(1, revocationInfo.getEncoded());
       ps.setString(2, caName);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not revoke CA " + caName);
       }
     } catch (SQLException ex) {
@@ -1426,7 +1426,7 @@ class CaManagerQueryExecutor {
       ps.setString(idx++, dbEntry.getType());
       ps.setString(idx++, dbEntry.getBase64Cert());
       ps.setString(idx++, dbEntry.getConf());
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add signer " + dbEntry.getName());
       }
 
@@ -1464,7 +1464,7 @@ class CaManagerQueryExecutor {
       ps = prepareStatement(sql);
       ps.setNull(1, Types.VARCHAR);
       ps.setString(2, caName);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not unrevoke CA " + caName);
       }
     } catch (SQLException ex) {
@@ -1510,7 +1510,7 @@ class CaManagerQueryExecutor {
       ps.setString(idx++, name);
       setBoolean(ps, idx++, active);
       ps.setString(idx++, hashedPassword);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add user " + name);
       }
     } catch (SQLException ex) {
@@ -1555,7 +1555,7 @@ class CaManagerQueryExecutor {
       ps = prepareStatement(sql);
       ps.setInt(1, caId);
       ps.setInt(2, id);
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not remove user " + username + " from CA " + caName);
       }
     } catch (SQLException ex) {
@@ -1599,7 +1599,7 @@ class CaManagerQueryExecutor {
       String profilesText = StringUtil.collectionAsString(user.getProfiles(), ",");
       ps.setString(idx++, profilesText);
 
-      if (ps.executeUpdate() == 0) {
+      if (datasource.executeUpdate(ps, sql) == 0) {
         throw new CaMgmtException("could not add user " + userIdent + " to CA " + ca);
       }
 
@@ -1625,7 +1625,7 @@ class CaManagerQueryExecutor {
     try {
       ps = prepareStatement(sql);
       ps.setInt(1, existingId);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
 
       Map<String, MgmtEntry.CaHasUser> ret = new HashMap<>();
       while (rs.next()) {
@@ -1662,7 +1662,7 @@ class CaManagerQueryExecutor {
     try {
       ps = prepareStatement(sql);
       ps.setInt(1, caIdent.getId().intValue());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
 
       List<MgmtEntry.CaHasUser> ret = new LinkedList<>();
       while (rs.next()) {
@@ -1699,7 +1699,7 @@ class CaManagerQueryExecutor {
 
       int idx = 1;
       ps.setString(idx++, ident.getName());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         if (nullable) {
           return null;
@@ -1740,7 +1740,7 @@ class CaManagerQueryExecutor {
     try {
       ps = prepareStatement(sql);
       ps.setString(1, name);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return null;
       }
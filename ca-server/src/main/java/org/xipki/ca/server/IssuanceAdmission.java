@@ -0,0 +1,312 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.api.OperationException.ErrorCode;
+import org.xipki.util.ConfPairs;
+import org.xipki.util.LruCache;
+import org.xipki.util.TokenBucket;
+
+/**
+ * Admission control in front of the certificate generation of a CA.
+ *
+ * <p>It is configured in the extraControl of the CA:
+ * <ul>
+ *   <li>{@code admission.rate}: certificates per second of the CA.</li>
+ *   <li>{@code admission.burst}: maximal burst of the CA, defaults to the rate.</li>
+ *   <li>{@code admission.requestor.rate}: certificates per second of each requestor.</li>
+ *   <li>{@code admission.requestor.burst}: maximal burst of each requestor, defaults to the
+ *     requestor rate.</li>
+ *   <li>{@code admission.concurrency}: maximal number of requests processed at the same
+ *     time.</li>
+ *   <li>{@code admission.queue}: maximal number of requests waiting for processing, defaults
+ *     to twice the concurrency.</li>
+ *   <li>{@code admission.maxWait}: maximal waiting time of a request in milliseconds, default
+ *     2000.</li>
+ * </ul>
+ * A request which cannot be processed within the maximal waiting time is rejected immediately
+ * with a retry-after hint instead of occupying a thread, a signer and a database connection.
+ * A request with more certificates than the burst can never be admitted and is rejected as
+ * bad request.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class IssuanceAdmission {
+
+  public static final String KEY_RATE = "admission.rate";
+
+  public static final String KEY_BURST = "admission.burst";
+
+  public static final String KEY_REQUESTOR_RATE = "admission.requestor.rate";
+
+  public static final String KEY_REQUESTOR_BURST = "admission.requestor.burst";
+
+  public static final String KEY_CONCURRENCY = "admission.concurrency";
+
+  public static final String KEY_QUEUE = "admission.queue";
+
+  public static final String KEY_MAX_WAIT = "admission.maxWait";
+
+  private static final int MAX_REQUESTORS = 10000;
+
+  private final TokenBucket caBucket;
+
+  private final double requestorRate;
+
+  private final int requestorBurst;
+
+  private final LruCache<String, TokenBucket> requestorBuckets;
+
+  private final Semaphore permits;
+
+  private final int concurrency;
+
+  private final int maxQueue;
+
+  private final long maxWait;
+
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  // exponentially weighted moving average of the processing time in nanoseconds
+  private volatile long avgProcessingTime;
+
+  private final LongAdder admitted = new LongAdder();
+
+  private final LongAdder rejectedByCaRate = new LongAdder();
+
+  private final LongAdder rejectedByRequestorRate = new LongAdder();
+
+  private final LongAdder rejectedByQueue = new LongAdder();
+
+  private final LongAdder rejectedByTimeout = new LongAdder();
+
+  private IssuanceAdmission(double rate, int burst, double requestorRate, int requestorBurst,
+      int concurrency, int maxQueue, long maxWaitMs) {
+    this.caBucket = (rate > 0) ? new TokenBucket(rate, burst) : null;
+    this.requestorRate = requestorRate;
+    this.requestorBurst = requestorBurst;
+    this.requestorBuckets = (requestorRate > 0) ? new LruCache<>(MAX_REQUESTORS) : null;
+    this.concurrency = concurrency;
+    this.permits = (concurrency > 0) ? new Semaphore(concurrency, true) : null;
+    this.maxQueue = maxQueue;
+    this.maxWait = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+  }
+
+  /**
+   * Creates the admission control configured in the extraControl of a CA.
+   * @param extraControl extraControl of the CA. Could be {@code null}.
+   * @return the admission control, or {@code null} if not configured.
+   * @throws IllegalArgumentException if the configuration is invalid.
+   */
+  public static IssuanceAdmission getInstance(ConfPairs extraControl) {
+    if (extraControl == null) {
+      return null;
+    }
+
+    double rate = getDouble(extraControl, KEY_RATE, 0);
+    double requestorRate = getDouble(extraControl, KEY_REQUESTOR_RATE, 0);
+    int concurrency = getInt(extraControl, KEY_CONCURRENCY, 0);
+    if (rate <= 0 && requestorRate <= 0 && concurrency <= 0) {
+      return null;
+    }
+
+    int burst = getInt(extraControl, KEY_BURST, (int) Math.max(1, Math.ceil(rate)));
+    int requestorBurst = getInt(extraControl, KEY_REQUESTOR_BURST,
+        (int) Math.max(1, Math.ceil(requestorRate)));
+    int maxQueue = getInt(extraControl, KEY_QUEUE, 2 * concurrency);
+    int maxWait = getInt(extraControl, KEY_MAX_WAIT, 2000);
+    if (burst < 1 || requestorBurst < 1 || maxQueue < 0 || maxWait < 0) {
+      throw new IllegalArgumentException("invalid admission control " + extraControl);
+    }
+
+    return new IssuanceAdmission(rate, burst, requestorRate, requestorBurst,
+        concurrency, maxQueue, maxWait);
+  }
+
+  /**
+   * Admits a request, waits if required.
+   * @param requestor name of the requestor.
+   * @param numCerts number of certificates to be generated.
+   * @return the time when the request has been admitted, must be passed to
+   *     {@link #release(long)} after the request has been processed.
+   * @throws AdmissionRejectedException if the request is rejected because the CA is busy.
+   * @throws OperationException if the request contains more certificates than the burst.
+   */
+  public long admit(String requestor, int numCerts) throws OperationException {
+    final long start = System.nanoTime();
+
+    // such a request would never be admitted
+    int maxNumCerts = Math.min(caBucket == null ? Integer.MAX_VALUE : caBucket.getBurst(),
+        requestorBuckets == null ? Integer.MAX_VALUE : requestorBurst);
+    if (numCerts > maxNumCerts) {
+      throw new OperationException(ErrorCode.BAD_REQUEST, "too many certificates in one request: "
+          + numCerts + " > " + maxNumCerts);
+    }
+
+    long requestorDelay = 0;
+    TokenBucket requestorBucket = null;
+    if (requestorBuckets != null) {
+      // LruCache synchronizes on itself
+      synchronized (requestorBuckets) {
+        requestorBucket = requestorBuckets.get(requestor);
+        if (requestorBucket == null) {
+          // the least recently seen requestor is evicted if the cache is full
+          requestorBucket = new TokenBucket(requestorRate, requestorBurst);
+          requestorBuckets.put(requestor, requestorBucket);
+        }
+      }
+
+      requestorDelay = requestorBucket.take(numCerts, maxWait);
+      if (requestorDelay < 0) {
+        rejectedByRequestorRate.increment();
+        throw new AdmissionRejectedException("rate limit of requestor " + requestor
+            + " exceeded", toRetryAfter(-requestorDelay));
+      }
+    }
+
+    long caDelay = 0;
+    if (caBucket != null) {
+      caDelay = caBucket.take(numCerts, maxWait);
+      if (caDelay < 0) {
+        if (requestorBucket != null) {
+          requestorBucket.giveBack(numCerts);
+        }
+        rejectedByCaRate.increment();
+        throw new AdmissionRejectedException("rate limit of CA exceeded", toRetryAfter(-caDelay));
+      }
+    }
+
+    long delay = Math.max(requestorDelay, caDelay);
+    if (delay > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(delay);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        rejectedByTimeout.increment();
+        throw new AdmissionRejectedException("interrupted", 1);
+      }
+    }
+
+    if (permits != null) {
+      try {
+        acquirePermit(start);
+      } catch (AdmissionRejectedException ex) {
+        if (requestorBucket != null) {
+          requestorBucket.giveBack(numCerts);
+        }
+        if (caBucket != null) {
+          caBucket.giveBack(numCerts);
+        }
+        throw ex;
+      }
+    }
+
+    admitted.increment();
+    return System.nanoTime();
+  }
+
+  private void acquirePermit(long start) throws AdmissionRejectedException {
+    long remaining = maxWait - (System.nanoTime() - start);
+    if (permits.tryAcquire()) {
+      return;
+    }
+
+    int numWaiting = waiting.incrementAndGet();
+    try {
+      // expected waiting time if all requests ahead are processed in average time
+      long expectedWait = numWaiting * avgProcessingTime / concurrency;
+      if (numWaiting > maxQueue || expectedWait > remaining) {
+        rejectedByQueue.increment();
+        throw new AdmissionRejectedException("too many requests in process",
+            toRetryAfter(expectedWait));
+      }
+
+      boolean acquired;
+      try {
+        acquired = permits.tryAcquire(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        acquired = false;
+      }
+
+      if (!acquired) {
+        rejectedByTimeout.increment();
+        throw new AdmissionRejectedException("no capacity within " + maxWait / 1000000 + " ms",
+            toRetryAfter(expectedWait));
+      }
+    } finally {
+      waiting.decrementAndGet();
+    }
+  }
+
+  /**
+   * Releases the capacity occupied by an admitted request.
+   * @param admittedTime the value returned by {@link #admit(String, int)}.
+   */
+  public void release(long admittedTime) {
+    if (permits == null) {
+      return;
+    }
+
+    long duration = System.nanoTime() - admittedTime;
+    long avg = avgProcessingTime;
+    avgProcessingTime = (avg == 0) ? duration : avg + (duration - avg) / 8;
+    permits.release();
+  }
+
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("admitted", admitted.sum());
+    metrics.put("rejectedByCaRate", rejectedByCaRate.sum());
+    metrics.put("rejectedByRequestorRate", rejectedByRequestorRate.sum());
+    metrics.put("rejectedByQueue", rejectedByQueue.sum());
+    metrics.put("rejectedByTimeout", rejectedByTimeout.sum());
+    if (permits != null) {
+      metrics.put("inProcess", concurrency - permits.availablePermits());
+      metrics.put("waiting", waiting.get());
+      metrics.put("avgProcessingTime", TimeUnit.NANOSECONDS.toMillis(avgProcessingTime));
+    }
+    return metrics;
+  }
+
+  private static int toRetryAfter(long nanos) {
+    return (int) Math.max(1, (nanos + 999999999L) / 1000000000L);
+  }
+
+  private static int getInt(ConfPairs conf, String name, int dfltValue) {
+    String str = conf.value(name);
+    return (str == null) ? dfltValue : Integer.parseInt(str.trim());
+  }
+
+  private static double getDouble(ConfPairs conf, String name, double dfltValue) {
+    String str = conf.value(name);
+    return (str == null) ? dfltValue : Double.parseDouble(str.trim());
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xipki.util.LatencyHistogram;
+
+/**
+ * Per-stage latencies of the certificate issuance pipeline.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class IssuanceStageMetrics {
+
+  public enum Stage {
+
+    /**
+     * Checks of the request and creation of the granted template.
+     */
+    TEMPLATE("template"),
+
+    /**
+     * Check whether a certificate for the subject has been issued.
+     */
+    SUBJECT_CHECK("subjectCheck"),
+
+    /**
+     * Computation of the extensions by the certificate profile.
+     */
+    PROFILE("profile"),
+
+    /**
+     * Building and signing of the TBSCertificate.
+     */
+    SIGN("sign"),
+
+    /**
+     * Parsing and verification of the generated certificate.
+     */
+    VERIFY("verify"),
+
+    /**
+     * Storing the certificate in the database.
+     */
+    PERSIST("persist"),
+
+    /**
+     * Synchronous publishing of the certificate.
+     */
+    PUBLISH("publish");
+
+    private final String text;
+
+    Stage(String text) {
+      this.text = text;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+  } // class Stage
+
+  private final LatencyHistogram[] histograms;
+
+  public IssuanceStageMetrics() {
+    Stage[] stages = Stage.values();
+    histograms = new LatencyHistogram[stages.length];
+    for (int i = 0; i < stages.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  /**
+   * Records the time elapsed since {@code startNanos} for the given stage.
+   * @param stage the stage. Must not be {@code null}.
+   * @param startNanos start time returned by {@link System#nanoTime()}.
+   * @return the current time, which can be used as start time of the next stage.
+   */
+  public long record(Stage stage, long startNanos) {
+    long now = System.nanoTime();
+    histograms[stage.ordinal()].record(now - startNanos);
+    return now;
+  }
+
+  public LatencyHistogram getHistogram(Stage stage) {
+    return histograms[stage.ordinal()];
+  }
+
+  public void reset() {
+    for (LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Returns the summary of all stages.
+   * @return map from the stage to the summary of its histogram. Durations are in milliseconds.
+   */
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    for (Stage stage : Stage.values()) {
+      metrics.put(stage.getText(), histograms[stage.ordinal()].toStatusMap());
+    }
+    return metrics;
+  }
+
+}
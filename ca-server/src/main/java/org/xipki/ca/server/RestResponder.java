@@ -503,6 +503,11 @@ public class RestResponder {
       if (StringUtil.isNotBlank(failureInfo)) {
         headers.put(RestAPIConstants.HEADER_failInfo, failureInfo);
       }
+
+      if (ex instanceof AdmissionRejectedException) {
+        headers.put(RestAPIConstants.HEADER_RETRY_AFTER,
+            Integer.toString(((AdmissionRejectedException) ex).getRetryAfter()));
+      }
       return new RestResponse(sc, null, headers, null);
     } catch (HttpRespAuditException ex) {
       auditStatus = ex.getAuditStatus();
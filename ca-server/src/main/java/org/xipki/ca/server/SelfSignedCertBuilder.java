@@ -299,7 +299,7 @@ class SelfSignedCertBuilder {
 
     for (ASN1ObjectIdentifier extType : extensionTuples.getExtensionTypes()) {
       ExtensionValue extValue = extensionTuples.getExtensionValue(extType);
-      certBuilder.addExtension(extType, extValue.isCritical(), extValue.getValue());
+      certBuilder.addExtension(extType, extValue.isCritical(), extValue.getEncoded());
     }
   } // method addExtensions
 
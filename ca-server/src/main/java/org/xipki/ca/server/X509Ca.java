@@ -58,6 +58,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
@@ -136,11 +137,13 @@ import org.xipki.ca.api.profile.CertprofileException;
 import org.xipki.ca.api.profile.ExtensionValue;
 import org.xipki.ca.api.profile.ExtensionValues;
 import org.xipki.ca.api.profile.KeypairGenControl;
+import org.xipki.ca.server.IssuanceStageMetrics.Stage;
 import org.xipki.ca.server.cmp.CmpRequestorInfo;
 import org.xipki.ca.server.store.CertStore;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.ConcurrentBagEntrySigner;
 import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.DfltConcurrentContentSigner;
 import org.xipki.security.CrlReason;
 import org.xipki.security.FpIdCalculator;
 import org.xipki.security.KeyUsage;
@@ -461,6 +464,10 @@ public class X509Ca implements Closeable {
 
   private final ConcurrentSkipListSet<Long> subjectCertsInProcess = new ConcurrentSkipListSet<>();
 
+  private final IssuanceStageMetrics issuanceMetrics = new IssuanceStageMetrics();
+
+  private final IssuanceAdmission admission;
+
   public X509Ca(CaManagerImpl caManager, CaInfo caInfo, CertStore certstore)
       throws OperationException {
     this.caManager = Args.notNull(caManager, "caManager");
@@ -471,6 +478,13 @@ public class X509Ca implements Closeable {
     this.caCert = caInfo.getCert();
     this.certstore = Args.notNull(certstore, "certstore");
 
+    try {
+      this.admission = IssuanceAdmission.getInstance(caInfo.getCaEntry().getExtraControl());
+    } catch (IllegalArgumentException ex) {
+      throw new OperationException(SYSTEM_FAILURE,
+          "invalid admission control of CA " + caIdent.getName() + ": " + ex.getMessage());
+    }
+
     SubjectPublicKeyInfo caSpki = this.caCert.getCertHolder().getSubjectPublicKeyInfo();
     ASN1ObjectIdentifier caSpkiAlgId = caSpki.getAlgorithm().getAlgorithm();
     if (caSpkiAlgId.equals(PKCSObjectIdentifiers.rsaEncryption)) {
@@ -957,10 +971,13 @@ public class X509Ca implements Closeable {
       }
 
       X509CRLHolder crlHolder;
+      boolean signed = false;
       try {
         crlHolder = crlBuilder.build(signer0.value());
+        signed = true;
       } finally {
-        concurrentSigner.requiteSigner(signer0);
+        // failures count toward the ejection of the signer
+        concurrentSigner.requiteSigner(signer0, signed);
       }
 
       try {
@@ -1080,10 +1097,20 @@ public class X509Ca implements Closeable {
       return 0;
     }
 
+    long start = System.nanoTime();
     if (!certstore.addCert(certInfo)) {
       return 1;
     }
+    start = issuanceMetrics.record(Stage.PERSIST, start);
 
+    try {
+      return publishCertToPublishers(certInfo);
+    } finally {
+      issuanceMetrics.record(Stage.PUBLISH, start);
+    }
+  } // method publishCertificate0
+
+  private int publishCertToPublishers(CertificateInfo certInfo) {
     for (IdentifiedCertPublisher publisher : publishers()) {
       if (!publisher.isAsyn()) {
         boolean successful;
@@ -1110,7 +1137,7 @@ public class X509Ca implements Closeable {
     } // end for
 
     return 0;
-  } // method publishCertificate0
+  } // method publishCertToPublishers
 
   public boolean republishCerts(List<String> publisherNames, int numThreads) {
     List<IdentifiedCertPublisher> publishers;
@@ -1372,7 +1399,8 @@ public class X509Ca implements Closeable {
       throws OperationException {
     event.addEventData(CaAuditConstants.NAME_serial, LogUtil.formatCsn(serialNumber));
     CertWithRevocationInfo certWithRevInfo =
-        certstore.getCertWithRevocationInfo(caIdent.getId(), serialNumber, caIdNameMap);
+        certstore.getCertWithRevocationInfo(caIdent.getId(), serialNumber, caIdNameMap,
+            false);
     if (certWithRevInfo == null) {
       return null;
     }
@@ -1680,15 +1708,32 @@ public class X509Ca implements Closeable {
 
   private List<CertificateInfo> generateCerts(List<CertTemplateData> certTemplates,
       RequestorInfo requestor, boolean update, RequestType reqType, byte[] transactionId,
-      String msgId) throws OperationExceptionWithIndex {
+      String msgId) throws OperationException {
     Args.notEmpty(certTemplates, "certTemplates");
+    if (admission == null) {
+      return generateCerts0(certTemplates, requestor, update, reqType, transactionId, msgId);
+    }
+
+    long admittedTime = admission.admit(requestor.getIdent().getName(), certTemplates.size());
+    try {
+      return generateCerts0(certTemplates, requestor, update, reqType, transactionId, msgId);
+    } finally {
+      admission.release(admittedTime);
+    }
+  }
+
+  private List<CertificateInfo> generateCerts0(List<CertTemplateData> certTemplates,
+      RequestorInfo requestor, boolean update, RequestType reqType, byte[] transactionId,
+      String msgId) throws OperationExceptionWithIndex {
     final int n = certTemplates.size();
     List<GrantedCertTemplate> gcts = new ArrayList<>(n);
 
     for (int i = 0; i < n; i++) {
       CertTemplateData certTemplate = certTemplates.get(i);
       try {
+        long start = System.nanoTime();
         GrantedCertTemplate gct = createGrantedCertTemplate(certTemplate, requestor, update);
+        issuanceMetrics.record(Stage.TEMPLATE, start);
         gcts.add(gct);
       } catch (OperationException ex) {
         throw new OperationExceptionWithIndex(i, ex);
@@ -1786,7 +1831,9 @@ public class X509Ca implements Closeable {
     event.addEventData(CaAuditConstants.NAME_not_after,
         DateUtil.toUtcTimeyyyyMMddhhmmss(gct.grantedNotAfter));
 
+    long start = System.nanoTime();
     adaptGrantedSubejct(gct);
+    issuanceMetrics.record(Stage.SUBJECT_CHECK, start);
 
     IdentifiedCertprofile certprofile = gct.certprofile;
 
@@ -1819,6 +1866,7 @@ public class X509Ca implements Closeable {
       CertificateInfo ret;
 
       try {
+        start = System.nanoTime();
         SignerEntryWrapper crlSigner = getCrlSigner();
         X509Certificate crlSignerCert = (crlSigner == null)
             ? null : crlSigner.getSigner().getCertificate();
@@ -1829,9 +1877,10 @@ public class X509Ca implements Closeable {
         if (extensionTuples != null) {
           for (ASN1ObjectIdentifier extensionType : extensionTuples.getExtensionTypes()) {
             ExtensionValue extValue = extensionTuples.getExtensionValue(extensionType);
-            certBuilder.addExtension(extensionType, extValue.isCritical(), extValue.getValue());
+            certBuilder.addExtension(extensionType, extValue.isCritical(), extValue.getEncoded());
           }
         }
+        start = issuanceMetrics.record(Stage.PROFILE, start);
 
         ConcurrentBagEntrySigner signer0;
         try {
@@ -1841,11 +1890,15 @@ public class X509Ca implements Closeable {
         }
 
         X509CertificateHolder certHolder;
+        boolean signed = false;
         try {
           certHolder = certBuilder.build(signer0.value());
+          signed = true;
         } finally {
-          gct.signer.requiteSigner(signer0);
+          // failures count toward the ejection of the signer
+          gct.signer.requiteSigner(signer0, signed);
         }
+        start = issuanceMetrics.record(Stage.SIGN, start);
 
         Certificate bcCert = certHolder.toASN1Structure();
         byte[] encodedCert = bcCert.getEncoded();
@@ -1872,6 +1925,7 @@ public class X509Ca implements Closeable {
           throw new OperationException(SYSTEM_FAILURE,
               "could not verify the signature of generated certificate");
         }
+        issuanceMetrics.record(Stage.VERIFY, start);
 
         CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
         ret = new CertificateInfo(certWithMeta, gct.privateKey, caIdent, caCert,
@@ -2545,6 +2599,9 @@ public class X509Ca implements Closeable {
       HealthCheckResult signerHealth = new HealthCheckResult();
       signerHealth.setName("Signer");
       signerHealth.setHealthy(caSignerHealthy);
+      if (signer instanceof DfltConcurrentContentSigner) {
+        signerHealth.setStatuses(((DfltConcurrentContentSigner) signer).getMetrics());
+      }
       result.addChildCheck(signerHealth);
     }
 
@@ -2554,6 +2611,10 @@ public class X509Ca implements Closeable {
     HealthCheckResult databaseHealth = new HealthCheckResult();
     databaseHealth.setName("Database");
     databaseHealth.setHealthy(databaseHealthy);
+    Map<String, Object> databaseMetrics = certstore.getDatasourceMetrics();
+    if (databaseMetrics != null) {
+      databaseHealth.setStatuses(databaseMetrics);
+    }
     result.addChildCheck(databaseHealth);
 
     SignerEntryWrapper crlSigner = getCrlSigner();
@@ -2577,11 +2638,29 @@ public class X509Ca implements Closeable {
       result.addChildCheck(publisherHealth);
     }
 
+    if (admission != null) {
+      HealthCheckResult admissionHealth = new HealthCheckResult();
+      admissionHealth.setName("Admission");
+      admissionHealth.setHealthy(true);
+      admissionHealth.setStatuses(admission.getMetrics());
+      result.addChildCheck(admissionHealth);
+    }
+
+    HealthCheckResult issuanceHealth = new HealthCheckResult();
+    issuanceHealth.setName("Issuance");
+    issuanceHealth.setHealthy(true);
+    issuanceHealth.setStatuses(issuanceMetrics.getMetrics());
+    result.addChildCheck(issuanceHealth);
+
     result.setHealthy(healthy);
 
     return result;
   } // method healthCheck
 
+  public IssuanceStageMetrics getIssuanceMetrics() {
+    return issuanceMetrics;
+  }
+
   private AuditService auditService() {
     return Audits.getAuditService();
   }
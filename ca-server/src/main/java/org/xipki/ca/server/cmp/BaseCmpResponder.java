@@ -79,12 +79,17 @@ abstract class BaseCmpResponder {
 
   private static final int PVNO_CMP2000 = 2;
 
+  private static final int VERIFIER_CACHE_SIZE = 100;
+
   protected final SecurityFactory securityFactory;
 
   private final SecureRandom random = new SecureRandom();
 
+  protected final CmpVerifierCache verifierCache;
+
   protected BaseCmpResponder(SecurityFactory securityFactory) {
     this.securityFactory = Args.notNull(securityFactory, "securityFactory");
+    this.verifierCache = new CmpVerifierCache(securityFactory, VERIFIER_CACHE_SIZE);
   }
 
   protected abstract ConcurrentContentSigner getSigner();
@@ -259,6 +264,9 @@ abstract class BaseCmpResponder {
           case SIGNATURE_ALGO_FORBIDDEN:
             errorStatus = "request is protected by signature but the algorithm is forbidden";
             break;
+          case SIGNATURE_REPLAYED:
+            errorStatus = "request has been received before";
+            break;
           case MAC_ALGO_FORBIDDEN:
             errorStatus = "request is protected by MAC but the algorithm is forbidden";
             break;
@@ -395,15 +403,27 @@ abstract class BaseCmpResponder {
         return new ProtectionVerificationResult(null, ProtectionResult.SENDER_NOT_AUTHORIZED);
       }
 
-      ContentVerifierProvider verifierProvider = securityFactory.getContentVerifierProvider(
-          requestor.getCert().getCert());
+      ContentVerifierProvider verifierProvider = verifierCache.getProvider(requestor.getCert());
       if (verifierProvider == null) {
         LOG.warn("tid={}: not authorized requestor '{}'", tid, sender);
         return new ProtectionVerificationResult(requestor,
             ProtectionResult.SENDER_NOT_AUTHORIZED);
       }
 
+      verifierCache.setReplayCacheSize(cmpControl.getReplayCacheSize());
+      byte[] signature = pkiMessage.toASN1Structure().getProtection().getBytes();
+      if (verifierCache.isReplayed(requestor.getCert(), signature)) {
+        LOG.warn("tid={}: replayed request from requestor '{}'", tid, sender);
+        return new ProtectionVerificationResult(requestor, ProtectionResult.SIGNATURE_REPLAYED);
+      }
+
       boolean signatureValid = protectedMsg.verify(verifierProvider);
+      // concurrent requests with the same signature are accepted only once
+      if (signatureValid && !verifierCache.addVerified(requestor.getCert(), signature)) {
+        LOG.warn("tid={}: replayed request from requestor '{}'", tid, sender);
+        return new ProtectionVerificationResult(requestor, ProtectionResult.SIGNATURE_REPLAYED);
+      }
+
       return new ProtectionVerificationResult(requestor,
           signatureValid ? ProtectionResult.SIGNATURE_VALID : ProtectionResult.SIGNATURE_INVALID);
     }
@@ -1566,10 +1566,9 @@ public class CmpResponder extends BaseCmpResponder {
     }
 
     try {
-      PublicKey publicKey = securityFactory.generatePublicKey(spki);
-      ContentVerifierProvider cvp = securityFactory.getContentVerifierProvider(publicKey);
+      ContentVerifierProvider cvp = verifierCache.getPopoProvider(spki);
       return certRequest.isValidSigningKeyPOP(cvp);
-    } catch (InvalidKeyException | IllegalStateException | CRMFException ex) {
+    } catch (IOException | InvalidKeyException | IllegalStateException | CRMFException ex) {
       LogUtil.error(LOG, ex);
     }
     return false;
@@ -0,0 +1,167 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.server.cmp;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.SecurityFactory;
+import org.xipki.security.X509Cert;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * Caches the {@link ContentVerifierProvider}s of the requestor certificates and of the keys
+ * in the POPO, and remembers the recently verified signatures to reject replayed requests.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CmpVerifierCache {
+
+  private final SecurityFactory securityFactory;
+
+  // requestor certificate fingerprint to ContentVerifierProvider
+  private final LruCache<String, ContentVerifierProvider> providers;
+
+  // fingerprint of SubjectPublicKeyInfo to ContentVerifierProvider
+  private final LruCache<String, ContentVerifierProvider> popoProviders;
+
+  // digest of recently verified (certificate, signature) pairs, null if disabled
+  private volatile LruCache<String, Boolean> verifiedSignatures;
+
+  public CmpVerifierCache(SecurityFactory securityFactory, int providerCacheSize) {
+    this.securityFactory = Args.notNull(securityFactory, "securityFactory");
+    Args.positive(providerCacheSize, "providerCacheSize");
+    this.providers = new LruCache<>(providerCacheSize);
+    this.popoProviders = new LruCache<>(providerCacheSize);
+  }
+
+  /**
+   * Gets the verifier provider of the requestor certificate.
+   * @param cert
+   *          Requestor certificate.
+   * @return the verifier provider, may be {@code null}.
+   * @throws InvalidKeyException
+   *           if the public key of the certificate is invalid.
+   */
+  public ContentVerifierProvider getProvider(X509Cert cert) throws InvalidKeyException {
+    String certFp = fingerprint(cert);
+    ContentVerifierProvider provider = providers.get(certFp);
+    if (provider == null) {
+      provider = securityFactory.getContentVerifierProvider(cert.getCert());
+      if (provider != null) {
+        providers.put(certFp, provider);
+      }
+    }
+    return provider;
+  }
+
+  /**
+   * Gets the verifier provider of the key in the POPO.
+   * @param spki
+   *          Public key in the certificate request.
+   * @return the verifier provider, may be {@code null}.
+   * @throws InvalidKeyException
+   *           if the public key is invalid.
+   * @throws IOException
+   *           if the public key could not be encoded.
+   */
+  public ContentVerifierProvider getPopoProvider(SubjectPublicKeyInfo spki)
+      throws InvalidKeyException, IOException {
+    String keyFp = HashAlgo.SHA1.base64Hash(spki.getEncoded());
+    ContentVerifierProvider provider = popoProviders.get(keyFp);
+    if (provider == null) {
+      PublicKey publicKey = securityFactory.generatePublicKey(spki);
+      provider = securityFactory.getContentVerifierProvider(publicKey);
+      if (provider != null) {
+        popoProviders.put(keyFp, provider);
+      }
+    }
+    return provider;
+  }
+
+  public int getReplayCacheSize() {
+    LruCache<String, Boolean> cache = verifiedSignatures;
+    return (cache == null) ? 0 : cache.maxSize();
+  }
+
+  /**
+   * Sets the number of remembered signatures.
+   * @param size
+   *          Number of remembered signatures, 0 to disable the replay check.
+   */
+  public void setReplayCacheSize(int size) {
+    Args.notNegative(size, "size");
+    LruCache<String, Boolean> cache = verifiedSignatures;
+    if (size == 0) {
+      verifiedSignatures = null;
+    } else if (cache == null) {
+      synchronized (this) {
+        if (verifiedSignatures == null) {
+          verifiedSignatures = new LruCache<>(size);
+        }
+      }
+    } else if (cache.maxSize() != size) {
+      cache.resize(size);
+    }
+  }
+
+  /**
+   * Checks whether the signature has been verified before.
+   * @param cert
+   *          Requestor certificate.
+   * @param signature
+   *          Signature value of the request.
+   * @return whether the signature has been verified before, always {@code false} if the
+   *         replay check is disabled.
+   */
+  public boolean isReplayed(X509Cert cert, byte[] signature) {
+    LruCache<String, Boolean> cache = verifiedSignatures;
+    return cache != null && cache.get(signatureKey(cert, signature)) != null;
+  }
+
+  /**
+   * Remembers the verified signature.
+   * @param cert
+   *          Requestor certificate.
+   * @param signature
+   *          Signature value of the request.
+   * @return {@code false} if the signature has been remembered before, e.g. by a concurrent
+   *         request, {@code true} otherwise.
+   */
+  public boolean addVerified(X509Cert cert, byte[] signature) {
+    LruCache<String, Boolean> cache = verifiedSignatures;
+    return cache == null || cache.put(signatureKey(cert, signature), Boolean.TRUE) == null;
+  }
+
+  private static String signatureKey(X509Cert cert, byte[] signature) {
+    return fingerprint(cert) + ":" + HashAlgo.SHA256.base64Hash(signature);
+  }
+
+  private static String fingerprint(X509Cert cert) {
+    return HashAlgo.SHA1.base64Hash(cert.getEncodedCert());
+  }
+
+}
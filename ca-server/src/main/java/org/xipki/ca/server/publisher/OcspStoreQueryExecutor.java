@@ -37,15 +37,17 @@ import org.slf4j.LoggerFactory;
 import org.xipki.ca.api.CertWithDbId;
 import org.xipki.ca.api.OperationException;
 import org.xipki.ca.api.OperationException.ErrorCode;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.FpIdCalculator;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.X509Cert;
 import org.xipki.security.util.X509Util;
-import org.xipki.util.Base64;
 import org.xipki.util.LogUtil;
 import org.xipki.util.Args;
+import org.xipki.util.StringUtil;
 
 /**
  * TODO.
@@ -61,9 +63,9 @@ class OcspStoreQueryExecutor {
 
     private final byte[] cert;
 
-    IssuerEntry(int id, String b64Cert) {
+    IssuerEntry(int id, byte[] cert) {
       this.id = id;
-      this.cert = Base64.decode(b64Cert);
+      this.cert = cert;
     }
 
     int getId() {
@@ -113,18 +115,26 @@ class OcspStoreQueryExecutor {
 
   }
 
-  private static final String SQL_ADD_REVOKED_CERT =
-      "INSERT INTO CERT (ID,LUPDATE,SN,NBEFORE,NAFTER,REV,IID,HASH,SUBJECT,RT,RIT,RR)"
-      + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?)";
-
-  private static final String SQL_ADD_CERT =
-      "INSERT INTO CERT (ID,LUPDATE,SN,NBEFORE,NAFTER,REV,IID,HASH,SUBJECT) "
-      + "VALUES (?,?,?,?,?,?,?,?,?)";
-
   private static final Logger LOG = LoggerFactory.getLogger(OcspStoreQueryExecutor.class);
 
   private final DataSourceWrapper datasource;
 
+  // whether the table CERT is keyed by the hash value of the serial number (column SNH),
+  // set by the migration only after all rows have SNH
+  private final boolean serialKeyHashed;
+
+  // whether the table CERT has the column SNH, also during the migration
+  private final boolean snhColumn;
+
+  // column ISSUER.CERT, binary or Base64 encoded
+  private final BinaryColumn issuerCertColumn;
+
+  private final String sqlAddRevokedCert;
+
+  private final String sqlAddCert;
+
+  private final String sqlDeleteCert;
+
   private final String sqlCertRegistered;
 
   private final IssuerStore issuerStore;
@@ -141,10 +151,24 @@ class OcspStoreQueryExecutor {
   OcspStoreQueryExecutor(DataSourceWrapper datasource, boolean publishGoodCerts)
       throws DataAccessException, NoSuchAlgorithmException {
     this.datasource = Args.notNull(datasource, "datasource");
+    this.issuerCertColumn = BinaryColumn.detect(datasource, null, "ISSUER", "CERT");
     this.issuerStore = initIssuerStore();
     this.publishGoodCerts = publishGoodCerts;
 
-    this.sqlCertRegistered = datasource.buildSelectFirstSql(1, "ID FROM CERT WHERE SN=? AND IID=?");
+    this.snhColumn = datasource.tableHasColumn(null, "CERT", "SNH");
+    this.serialKeyHashed = snhColumn && "hash".equals(datasource.getFirstValue(
+        null, "DBSCHEMA", "VALUE2", "NAME='SERIAL_KEY'", String.class));
+    String snColumns = snhColumn ? "SN,SNH" : "SN";
+    String snParams = snhColumn ? "?,?" : "?";
+    String snCriteria = serialKeyHashed ? "IID=? AND SNH=? AND SN=?" : "IID=? AND SN=?";
+
+    this.sqlAddRevokedCert = StringUtil.concat("INSERT INTO CERT (ID,LUPDATE,", snColumns,
+        ",NBEFORE,NAFTER,REV,IID,HASH,SUBJECT,RT,RIT,RR) VALUES (?,?,", snParams,
+        ",?,?,?,?,?,?,?,?,?)");
+    this.sqlAddCert = StringUtil.concat("INSERT INTO CERT (ID,LUPDATE,", snColumns,
+        ",NBEFORE,NAFTER,REV,IID,HASH,SUBJECT) VALUES (?,?,", snParams, ",?,?,?,?,?,?)");
+    this.sqlDeleteCert = "DELETE FROM CERT WHERE " + snCriteria;
+    this.sqlCertRegistered = datasource.buildSelectFirstSql(1, "ID FROM CERT WHERE " + snCriteria);
     final String sql = "SELECT NAME,VALUE2 FROM DBSCHEMA";
 
     Map<String, String> variables = new HashMap<>();
@@ -184,10 +208,10 @@ class OcspStoreQueryExecutor {
     ResultSet rs = null;
 
     try {
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       List<IssuerEntry> caInfos = new LinkedList<>();
       while (rs.next()) {
-        caInfos.add(new IssuerEntry(rs.getInt("ID"), rs.getString("CERT")));
+        caInfos.add(new IssuerEntry(rs.getInt("ID"), issuerCertColumn.get(rs)));
       }
 
       return new IssuerStore(caInfos);
@@ -227,7 +251,7 @@ class OcspStoreQueryExecutor {
       return;
     }
 
-    final String sql = revoked ? SQL_ADD_REVOKED_CERT : SQL_ADD_CERT;
+    final String sql = revoked ? sqlAddRevokedCert : sqlAddCert;
 
     long certId = certificate.getCertId();
     byte[] encodedCert = certificate.getEncodedCert();
@@ -246,6 +270,9 @@ class OcspStoreQueryExecutor {
       ps.setLong(idx++, certId);
       ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
       ps.setString(idx++, serialNumber.toString(16));
+      if (snhColumn) {
+        ps.setLong(idx++, FpIdCalculator.hash(serialNumber));
+      }
       ps.setLong(idx++, notBeforeSeconds);
       ps.setLong(idx++, notAfterSeconds);
       setBoolean(ps, idx++, revoked);
@@ -266,7 +293,7 @@ class OcspStoreQueryExecutor {
       }
 
       try {
-        ps.executeUpdate();
+        datasource.executeUpdate(ps, sql);
       } catch (Throwable th) {
         // more secure
         datasource.deleteFromTable(null, "CERT", "ID", certId);
@@ -314,7 +341,7 @@ class OcspStoreQueryExecutor {
         ps.setNull(idx++, Types.INTEGER); // rev_reason
       }
       ps.setLong(idx++, registeredCertId);
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -355,20 +382,19 @@ class OcspStoreQueryExecutor {
         ps.setNull(idx++, Types.INTEGER);
         ps.setNull(idx++, Types.INTEGER);
         ps.setLong(idx++, certRegisteredId);
-        ps.executeUpdate();
+        datasource.executeUpdate(ps, sql);
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         datasource.releaseResources(ps, null);
       }
     } else {
-      final String sql = "DELETE FROM CERT WHERE IID=? AND SN=?";
+      final String sql = sqlDeleteCert;
       PreparedStatement ps = datasource.prepareStatement(sql);
 
       try {
-        ps.setInt(1, issuerId);
-        ps.setString(2, serialNumber.toString(16));
-        ps.executeUpdate();
+        setSerial(ps, issuerId, serialNumber);
+        datasource.executeUpdate(ps, sql);
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
@@ -387,13 +413,12 @@ class OcspStoreQueryExecutor {
       return;
     }
 
-    final String sql = "DELETE FROM CERT WHERE IID=? AND SN=?";
+    final String sql = sqlDeleteCert;
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      ps.setInt(1, issuerId);
-      ps.setString(2, cert.getCert().getSerialNumber().toString(16));
-      ps.executeUpdate();
+      setSerial(ps, issuerId, cert.getCert().getSerialNumber());
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -412,7 +437,7 @@ class OcspStoreQueryExecutor {
     try {
       ps.setString(1, revInfo.getEncoded());
       ps.setInt(2, issuerId);
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -428,7 +453,7 @@ class OcspStoreQueryExecutor {
     try {
       ps.setNull(1, Types.VARCHAR);
       ps.setInt(2, issuerId);
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -465,7 +490,6 @@ class OcspStoreQueryExecutor {
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      String b64Cert = Base64.encodeToString(encodedCert);
       String subject = issuerCert.getSubject();
       int idx = 1;
       ps.setInt(idx++, id);
@@ -473,10 +497,10 @@ class OcspStoreQueryExecutor {
       ps.setLong(idx++, notBeforeSeconds);
       ps.setLong(idx++, notAfterSeconds);
       ps.setString(idx++, sha1FpCert);
-      ps.setString(idx++, b64Cert);
+      issuerCertColumn.set(ps, idx++, encodedCert);
 
       ps.execute();
-      issuerStore.addIdentityEntry(new IssuerEntry(id, b64Cert));
+      issuerStore.addIdentityEntry(new IssuerEntry(id, encodedCert));
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -494,10 +518,8 @@ class OcspStoreQueryExecutor {
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      ps.setString(1, serialNumber.toString(16));
-      ps.setInt(2, issuerId);
-
-      rs = ps.executeQuery();
+      setSerial(ps, issuerId, serialNumber);
+      rs = datasource.executeQuery(ps, sql);
       return rs.next() ? rs.getLong("ID") : null;
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
@@ -506,6 +528,19 @@ class OcspStoreQueryExecutor {
     }
   } // method getCertId
 
+  /**
+   * Sets the parameters of the criteria built for the current layout of the table CERT.
+   */
+  private void setSerial(PreparedStatement ps, int issuerId, BigInteger serialNumber)
+      throws SQLException {
+    int idx = 1;
+    ps.setInt(idx++, issuerId);
+    if (serialKeyHashed) {
+      ps.setLong(idx++, FpIdCalculator.hash(serialNumber));
+    }
+    ps.setString(idx++, serialNumber.toString(16));
+  }
+
   boolean isHealthy() {
     final String sql = "SELECT ID FROM ISSUER";
 
@@ -514,7 +549,7 @@ class OcspStoreQueryExecutor {
       PreparedStatement ps = datasource.prepareStatement(sql);
 
       try {
-        rs = ps.executeQuery();
+        rs = datasource.executeQuery(ps, sql);
       } finally {
         datasource.releaseResources(ps, rs);
       }
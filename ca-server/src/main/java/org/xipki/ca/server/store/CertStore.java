@@ -40,6 +40,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.bouncycastle.asn1.ASN1Integer;
@@ -69,7 +70,9 @@ import org.xipki.ca.server.KnowCertResult;
 import org.xipki.ca.server.PasswordHash;
 import org.xipki.ca.server.SerialWithId;
 import org.xipki.ca.server.UniqueIdGenerator;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceMetrics;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
@@ -94,11 +97,6 @@ public class CertStore {
 
   private static final Logger LOG = LoggerFactory.getLogger(CertStore.class);
 
-  private static final String SQL_ADD_CERT =
-      "INSERT INTO CERT (ID,LUPDATE,SN,SUBJECT,FP_S,FP_RS,NBEFORE,NAFTER,REV,PID,"
-      + "CA_ID,RID,UID,FP_K,EE,RTYPE,TID,SHA1,REQ_SUBJECT,CERT)"
-      + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
-
   private static final String SQL_REVOKE_CERT =
       "UPDATE CERT SET LUPDATE=?,REV=?,RT=?,RIT=?,RR=? WHERE ID=?";
 
@@ -129,8 +127,6 @@ public class CertStore {
   private static final String SQL_ADD_DELTACRL_CACHE =
       "INSERT INTO DELTACRL_CACHE (ID,CA_ID,SN) VALUES (?,?,?)";
 
-  private static final String SQL_REMOVE_CERT = "DELETE FROM CERT WHERE CA_ID=? AND SN=?";
-
   private static final String SQL_DELETE_UNREFERENCED_REQUEST =
       "DELETE FROM REQUEST WHERE ID NOT IN (SELECT req.RID FROM REQCERT req)";
 
@@ -139,6 +135,10 @@ public class CertStore {
 
   private static final String SQL_ADD_REQCERT = "INSERT INTO REQCERT (ID,RID,CID) VALUES(?,?,?)";
 
+  private final String sqlAddCert;
+
+  private final String sqlRemoveCert;
+
   private final String sqlCaHasCrl;
 
   private final String sqlCertForId;
@@ -200,6 +200,16 @@ public class CertStore {
 
   private final UniqueIdGenerator idGenerator;
 
+  // whether the table CERT is keyed by the hash value of the serial number (column SNH),
+  // set by the migration only after all rows have SNH
+  private final boolean serialKeyHashed;
+
+  // whether the table CERT has the column SNH, also during the migration
+  private final boolean snhColumn;
+
+  // column CERT.CERT, binary or Base64 encoded
+  private final BinaryColumn certColumn;
+
   public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator)
       throws DataAccessException {
     this.datasource = Args.notNull(datasource, "datasource");
@@ -209,25 +219,38 @@ public class CertStore {
     this.dbSchemaVersion = Integer.parseInt(dbSchemaInfo.variableValue("VERSION"));
     this.maxX500nameLen = Integer.parseInt(dbSchemaInfo.variableValue("X500NAME_MAXLEN"));
 
+    this.snhColumn = datasource.tableHasColumn(null, "CERT", "SNH");
+    this.serialKeyHashed = snhColumn && "hash".equals(dbSchemaInfo.variableValue("SERIAL_KEY"));
+    this.certColumn = BinaryColumn.detect(datasource, null, "CERT", "CERT");
+    // the index (CA_ID, SNH) narrows the candidates, SN resolves hash collisions
+    String snCriteria = serialKeyHashed ? "CA_ID=? AND SNH=? AND SN=?" : "CA_ID=? AND SN=?";
+
+    this.sqlAddCert = StringUtil.concat("INSERT INTO CERT (ID,LUPDATE,",
+        (snhColumn ? "SN,SNH" : "SN"), ",SUBJECT,FP_S,FP_RS,NBEFORE,NAFTER,REV,PID,",
+        "CA_ID,RID,UID,FP_K,EE,RTYPE,TID,SHA1,REQ_SUBJECT,CERT) VALUES (?,?,",
+        (snhColumn ? "?,?" : "?"), ",?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+    this.sqlRemoveCert = "DELETE FROM CERT WHERE " + snCriteria;
+
     this.sqlCaHasCrl = buildSelectFirstSql("ID FROM CRL WHERE CA_ID=?");
     this.sqlCertForId = buildSelectFirstSql("PID,RID,REV,RR,RT,RIT,CERT FROM CERT WHERE ID=?");
     this.sqlCertWithRevInfo = buildSelectFirstSql(
-        "ID,REV,RR,RT,RIT,PID,CERT FROM CERT WHERE CA_ID=? AND SN=?");
+        "ID,REV,RR,RT,RIT,PID,CERT FROM CERT WHERE " + snCriteria);
     this.sqlCertInfo = buildSelectFirstSql(
-        "PID,RID,REV,RR,RT,RIT,CERT FROM CERT WHERE CA_ID=? AND SN=?");
+        "PID,RID,REV,RR,RT,RIT,CERT FROM CERT WHERE " + snCriteria);
     this.sqlCertprofileForCertId = buildSelectFirstSql("PID FROM CERT WHERE ID=? AND CA_ID=?");
     this.sqlActiveUserInfoForName = buildSelectFirstSql(
         "ID,PASSWORD FROM TUSER WHERE NAME=? AND ACTIVE=1");
     this.sqlActiveUserNameForId = buildSelectFirstSql("NAME FROM TUSER WHERE ID=? AND ACTIVE=1");
     this.sqlCaHasUser = buildSelectFirstSql(
         "PERMISSION,PROFILES FROM CA_HAS_USER WHERE CA_ID=? AND USER_ID=?");
-    this.sqlKnowsCertForSerial = buildSelectFirstSql("UID FROM CERT WHERE SN=? AND CA_ID=?");
+    this.sqlKnowsCertForSerial = buildSelectFirstSql("UID FROM CERT WHERE " + snCriteria);
     this.sqlRevForId = buildSelectFirstSql("SN,EE,REV,RR,RT,RIT FROM CERT WHERE ID=?");
     this.sqlCertStatusForSubjectFp = buildSelectFirstSql("REV FROM CERT WHERE FP_S=? AND CA_ID=?");
     this.sqlCertforSubjectIssued = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND FP_S=?");
     this.sqlCertForKeyIssued = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND FP_K=?");
     this.sqlReqIdForSerial = buildSelectFirstSql("REQCERT.RID as REQ_ID FROM REQCERT INNER JOIN "
-        + "CERT ON CERT.CA_ID=? AND CERT.SN=? AND REQCERT.CID=CERT.ID");
+        + "CERT ON CERT." + snCriteria.replace(" AND ", " AND CERT.")
+        + " AND REQCERT.CID=CERT.ID");
     this.sqlReqForId = buildSelectFirstSql("DATA FROM REQUEST WHERE ID=?");
     this.sqlLatestSerialForSubjectLike = datasource.buildSelectFirstSql(1, "NBEFORE DESC",
         "SUBJECT FROM CERT WHERE SUBJECT LIKE ?");
@@ -241,6 +264,21 @@ public class CertStore {
     return datasource.buildSelectFirstSql(1, coreSql);
   }
 
+  /**
+   * Sets the CA id and the serial number key (SN, or SNH and SN).
+   * @return the index of the next parameter.
+   */
+  private int setSerial(PreparedStatement ps, int index, int caId, BigInteger serial)
+      throws SQLException {
+    int idx = index;
+    ps.setInt(idx++, caId);
+    if (serialKeyHashed) {
+      ps.setLong(idx++, FpIdCalculator.hash(serial));
+    }
+    ps.setString(idx++, serial.toString(16));
+    return idx;
+  }
+
   public boolean addCert(CertificateInfo certInfo) {
     Args.notNull(certInfo, "certInfo");
     try {
@@ -270,7 +308,8 @@ public class CertStore {
 
     long fpPk = FpIdCalculator.hash(encodedSubjectPublicKey);
     String subjectText = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
-    long fpSubject = X509Util.fpCanonicalizedName(certificate.getSubjectAsX500Name());
+    long fpSubject = X509Util.fpCanonicalizedName(
+        certificate.getCert().getSubjectX500Principal());
 
     String reqSubjectText = null;
     Long fpReqSubject = null;
@@ -284,10 +323,9 @@ public class CertStore {
     }
 
     String b64FpCert = base64Fp(certificate.getEncodedCert());
-    String b64Cert = Base64.encodeToString(certificate.getEncodedCert());
     String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
 
-    final String sql = SQL_ADD_CERT;
+    final String sql = sqlAddCert;
     PreparedStatement ps = borrowPreparedStatement(sql);
 
     try {
@@ -297,6 +335,9 @@ public class CertStore {
       ps.setLong(idx++, certId);
       ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
       ps.setString(idx++, cert.getSerialNumber().toString(16));
+      if (snhColumn) {
+        ps.setLong(idx++, FpIdCalculator.hash(cert.getSerialNumber()));
+      }
       ps.setString(idx++, subjectText);
       ps.setLong(idx++, fpSubject);
       setLong(ps, idx++, fpReqSubject);
@@ -315,9 +356,9 @@ public class CertStore {
 
       ps.setString(idx++, b64FpCert);
       ps.setString(idx++, reqSubjectText);
-      ps.setString(idx++, b64Cert);
+      certColumn.set(ps, idx++, certificate.getEncodedCert());
 
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
 
       certificate.setCertId(certId);
     } catch (SQLException ex) {
@@ -337,7 +378,7 @@ public class CertStore {
       ps.setInt(1, publisher.getId());
       ps.setInt(2, ca.getId());
       ps.setLong(3, certId);
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -351,7 +392,7 @@ public class CertStore {
     try {
       ps.setInt(1, publisher.getId());
       ps.setLong(2, certId);
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -366,7 +407,7 @@ public class CertStore {
     PreparedStatement ps = borrowPreparedStatement(sql);
     try {
       ps.setInt(1, ca.getId());
-      ResultSet rs = ps.executeQuery();
+      ResultSet rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return 0;
       }
@@ -384,7 +425,7 @@ public class CertStore {
     try {
       ps.setLong(1, maxId + 1);
       ps.setInt(2, ca.getId());
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -419,7 +460,7 @@ public class CertStore {
       if (publisher != null) {
         ps.setInt(idx++, publisher.getId());
       }
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -435,7 +476,7 @@ public class CertStore {
     PreparedStatement ps = borrowPreparedStatement(sql);
     try {
       ps.setInt(1, ca.getId());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return 0;
       }
@@ -456,7 +497,7 @@ public class CertStore {
     PreparedStatement ps = borrowPreparedStatement(sql);
     try {
       ps.setInt(1, ca.getId());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return 0L;
       }
@@ -477,7 +518,7 @@ public class CertStore {
     try {
       ps = borrowPreparedStatement(sql);
       ps.setInt(1, ca.getId());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       return rs.next();
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
@@ -531,7 +572,7 @@ public class CertStore {
       setLong(ps, idx++, baseCrlNumber);
       ps.setString(idx++, b64Crl);
 
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -547,7 +588,7 @@ public class CertStore {
     Args.notNull(revInfo, "revInfo");
 
     CertWithRevocationInfo certWithRevInfo =
-        getCertWithRevocationInfo(ca.getId(), serialNumber, idNameMap);
+        getCertWithRevocationInfo(ca.getId(), serialNumber, idNameMap, false);
     if (certWithRevInfo == null) {
       LOG.warn("certificate with CA={} and serialNumber={} does not exist",
           ca.getName(), LogUtil.formatCsn(serialNumber));
@@ -587,7 +628,7 @@ public class CertStore {
       ps.setInt(idx++, revInfo.getReason().getCode());
       ps.setLong(idx++, certWithRevInfo.getCert().getCertId().longValue()); // certId
 
-      int count = ps.executeUpdate();
+      int count = datasource.executeUpdate(ps, SQL_REVOKE_CERT);
       if (count != 1) {
         String message = (count > 1)
             ? count + " rows modified, but exactly one is expected"
@@ -617,7 +658,7 @@ public class CertStore {
     Args.notNull(reason, "reason");
 
     CertWithRevocationInfo certWithRevInfo =
-        getCertWithRevocationInfo(ca.getId(), serialNumber, idNameMap);
+        getCertWithRevocationInfo(ca.getId(), serialNumber, idNameMap, false);
     if (certWithRevInfo == null) {
       LOG.warn("certificate with CA={} and serialNumber={} does not exist",
           ca.getName(), LogUtil.formatCsn(serialNumber));
@@ -642,7 +683,7 @@ public class CertStore {
       ps.setInt(idx++, reason.getCode());
       ps.setLong(idx++, certWithRevInfo.getCert().getCertId().longValue()); // certId
 
-      int count = ps.executeUpdate();
+      int count = datasource.executeUpdate(ps, SQL_REVOKE_SUSPENDED_CERT);
       if (count != 1) {
         String message = (count > 1)
             ? count + " rows modified, but exactly one is expected"
@@ -670,7 +711,7 @@ public class CertStore {
     Args.notNull(serialNumber, "serialNumber");
 
     CertWithRevocationInfo certWithRevInfo =
-        getCertWithRevocationInfo(ca.getId(), serialNumber, idNamMap);
+        getCertWithRevocationInfo(ca.getId(), serialNumber, idNamMap, false);
     if (certWithRevInfo == null) {
       if (LOG.isWarnEnabled()) {
         LOG.warn("certificate with CA={} and serialNumber={} does not exist",
@@ -705,7 +746,7 @@ public class CertStore {
       ps.setNull(idx++, Types.INTEGER);
       ps.setLong(idx++, certWithRevInfo.getCert().getCertId().longValue()); // certId
 
-      int count = ps.executeUpdate();
+      int count = datasource.executeUpdate(ps, sql);
       if (count != 1) {
         String message = (count > 1)
             ? count + " rows modified, but exactly one is expected"
@@ -737,7 +778,7 @@ public class CertStore {
       ps.setLong(1, id);
       ps.setInt(2, ca.getId());
       ps.setString(3, serialNumber.toString(16));
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -749,14 +790,13 @@ public class CertStore {
     Args.notNull(ca, "ca");
     Args.notNull(serialNumber, "serialNumber");
 
-    final String sql = SQL_REMOVE_CERT;
+    final String sql = sqlRemoveCert;
     PreparedStatement ps = borrowPreparedStatement(sql);
 
     try {
-      ps.setInt(1, ca.getId());
-      ps.setString(2, serialNumber.toString(16));
+      setSerial(ps, 1, ca.getId(), serialNumber);
 
-      int count = ps.executeUpdate();
+      int count = datasource.executeUpdate(ps, sql);
       if (count != 1) {
         String message = (count > 1)
             ? count + " rows modified, but exactly one is expected"
@@ -779,7 +819,7 @@ public class CertStore {
     try {
       ps.setInt(1, publisher.getId());
       ps.setInt(2, ca.getId());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       List<Long> ret = new ArrayList<>();
       while (rs.next() && ret.size() < numEntries) {
         long certId = rs.getLong("CID");
@@ -804,7 +844,7 @@ public class CertStore {
 
     try {
       ps.setInt(1, ca.getId());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       rs.next();
       return rs.getLong(1);
     } catch (SQLException ex) {
@@ -827,7 +867,7 @@ public class CertStore {
     try {
       ps.setLong(1, startId - 1);
       ps.setInt(2, ca.getId());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       List<SerialWithId> ret = new ArrayList<>();
       while (rs.next() && ret.size() < numEntries) {
         long id = rs.getLong("ID");
@@ -867,7 +907,7 @@ public class CertStore {
       if (withEe) {
         setBoolean(ps, idx++, onlyUserCerts);
       }
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       List<SerialWithId> ret = new ArrayList<>();
       while (rs.next() && ret.size() < numEntries) {
         long id = rs.getLong("ID");
@@ -895,7 +935,7 @@ public class CertStore {
     try {
       ps.setInt(1, ca.getId());
       ps.setLong(2, expiredAt);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       List<BigInteger> ret = new ArrayList<>();
       while (rs.next() && ret.size() < numEntries) {
         String serial = rs.getString("SN");
@@ -922,7 +962,7 @@ public class CertStore {
       ps.setInt(1, ca.getId());
       ps.setLong(2, latestLastUpdate + 1);
       ps.setInt(3, CrlReason.CERTIFICATE_HOLD.getCode());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       List<BigInteger> ret = new ArrayList<>();
       while (rs.next() && ret.size() < numEntries) {
         String str = rs.getString("SN");
@@ -941,7 +981,7 @@ public class CertStore {
 
     String sql = (crlNumber == null) ? sqlCrl : sqlCrlWithNo;
     ResultSet rs = null;
-    PreparedStatement ps = borrowPreparedStatement(sql);
+    PreparedStatement ps = borrowReadOnlyPreparedStatement(sql);
 
     String b64Crl = null;
     try {
@@ -950,7 +990,7 @@ public class CertStore {
       if (crlNumber != null) {
         ps.setLong(idx++, crlNumber.longValue());
       }
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       long currentThisUpdate = 0;
       // iterate all entries to make sure that the latest CRL will be returned
       while (rs.next()) {
@@ -980,7 +1020,7 @@ public class CertStore {
     try {
       ps.setInt(1, ca.getId());
       setBoolean(ps, 2, false);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
 
       while (rs.next()) {
         int crlNumber = rs.getInt("CRL_NO");
@@ -1008,7 +1048,7 @@ public class CertStore {
       int idx = 1;
       ps.setInt(idx++, ca.getId());
       ps.setInt(idx++, crlNumber + 1);
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -1026,7 +1066,7 @@ public class CertStore {
 
     final String sql = sqlCertForId;
 
-    String b64Cert;
+    byte[] encodedCert;
     int certprofileId;
     int requestorId;
     boolean revoked;
@@ -1038,11 +1078,11 @@ public class CertStore {
     PreparedStatement ps = borrowPreparedStatement(sql);
     try {
       ps.setLong(1, certId);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return null;
       }
-      b64Cert = rs.getString("CERT");
+      encodedCert = certColumn.get(rs);
       certprofileId = rs.getInt("PID");
       requestorId = rs.getInt("RID");
       revoked = rs.getBoolean("REV");
@@ -1057,7 +1097,6 @@ public class CertStore {
       datasource.releaseResources(ps, rs);
     }
 
-    byte[] encodedCert = Base64.decodeFast(b64Cert);
     X509Certificate cert = X509Util.parseCert(encodedCert);
     CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
     certWithMeta.setCertId(certId);
@@ -1077,13 +1116,34 @@ public class CertStore {
 
   public CertWithRevocationInfo getCertWithRevocationInfo(int caId, BigInteger serial,
       CaIdNameMap idNameMap) throws OperationException {
+    return getCertWithRevocationInfo(caId, serial, idNameMap, true);
+  }
+
+  /**
+   * Gets the certificate with revocation information.
+   * @param caId
+   *          Database id of the CA.
+   * @param serial
+   *          Serial number of the certificate.
+   * @param idNameMap
+   *          Map of the database ids to names.
+   * @param readOnly
+   *          Whether the result is only read. If {@code true}, the certificate may be read
+   *          from a replica, otherwise from the primary database, e.g. before the revocation
+   *          status is changed.
+   * @return the certificate with revocation information, or {@code null} if not found.
+   * @throws OperationException
+   *           if database error occurs.
+   */
+  public CertWithRevocationInfo getCertWithRevocationInfo(int caId, BigInteger serial,
+      CaIdNameMap idNameMap, boolean readOnly) throws OperationException {
     Args.notNull(serial, "serial");
     Args.notNull(idNameMap, "idNameMap");
 
     final String sql = sqlCertWithRevInfo;
 
     long certId;
-    String b64Cert;
+    byte[] certBytes;
     boolean revoked;
     int revReason = 0;
     long revTime = 0;
@@ -1091,18 +1151,17 @@ public class CertStore {
     int certprofileId = 0;
 
     ResultSet rs = null;
-    PreparedStatement ps = borrowPreparedStatement(sql);
+    PreparedStatement ps = readOnly
+        ? borrowReadOnlyPreparedStatement(sql) : borrowPreparedStatement(sql);
 
     try {
-      int idx = 1;
-      ps.setInt(idx++, caId);
-      ps.setString(idx++, serial.toString(16));
-      rs = ps.executeQuery();
+      setSerial(ps, 1, caId, serial);
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return null;
       }
       certId = rs.getLong("ID");
-      b64Cert = rs.getString("CERT");
+      certBytes = certColumn.get(rs);
       certprofileId = rs.getInt("PID");
 
       revoked = rs.getBoolean("REV");
@@ -1114,10 +1173,9 @@ public class CertStore {
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
-      datasource.releaseResources(ps, null);
+      datasource.releaseResources(ps, rs);
     }
 
-    byte[] certBytes = Base64.decodeFast(b64Cert);
     X509Certificate cert;
     try {
       cert = X509Util.parseCert(certBytes);
@@ -1151,7 +1209,7 @@ public class CertStore {
 
     final String sql = sqlCertInfo;
 
-    String b64Cert;
+    byte[] encodedCert;
     boolean revoked;
     int revReason = 0;
     long revTime = 0;
@@ -1163,14 +1221,12 @@ public class CertStore {
     PreparedStatement ps = borrowPreparedStatement(sql);
 
     try {
-      int idx = 1;
-      ps.setInt(idx++, ca.getId());
-      ps.setString(idx++, serial.toString(16));
-      rs = ps.executeQuery();
+      setSerial(ps, 1, ca.getId(), serial);
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return null;
       }
-      b64Cert = rs.getString("CERT");
+      encodedCert = certColumn.get(rs);
       certprofileId = rs.getInt("PID");
       requestorId = rs.getInt("RID");
       revoked = rs.getBoolean("REV");
@@ -1186,7 +1242,6 @@ public class CertStore {
     }
 
     try {
-      byte[] encodedCert = Base64.decodeFast(b64Cert);
       X509Certificate cert = X509Util.parseCert(encodedCert);
 
       CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
@@ -1222,7 +1277,7 @@ public class CertStore {
     try {
       ps.setLong(1, cid);
       ps.setInt(2, ca.getId());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return null;
       }
@@ -1260,11 +1315,10 @@ public class CertStore {
       }
       ps.setLong(idx++, fpSubject);
       ps.setLong(idx++, fpSubject);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
 
       while (rs.next()) {
-        String b64Cert = rs.getString("CERT");
-        byte[] encodedCert = Base64.decodeFast(b64Cert);
+        byte[] encodedCert = certColumn.get(rs);
 
         X509Certificate cert;
         try {
@@ -1293,9 +1347,8 @@ public class CertStore {
 
     Long reqId = null;
     try {
-      ps.setInt(1, ca.getId());
-      ps.setString(2, serialNumber.toString(16));
-      rs = ps.executeQuery();
+      setSerial(ps, 1, ca.getId(), serialNumber);
+      rs = datasource.executeQuery(ps, sql);
 
       if (rs.next()) {
         reqId = rs.getLong("REQ_ID");
@@ -1315,7 +1368,7 @@ public class CertStore {
     ps = borrowPreparedStatement(sql);
     try {
       ps.setLong(1, reqId);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (rs.next()) {
         b64Req = rs.getString("DATA");
       }
@@ -1402,7 +1455,7 @@ public class CertStore {
 
     final String sql = datasource.buildSelectFirstSql(numEntries, sortByStr, sb.toString());
     ResultSet rs = null;
-    PreparedStatement ps = borrowPreparedStatement(sql);
+    PreparedStatement ps = borrowReadOnlyPreparedStatement(sql);
 
     try {
       ps.setInt(1, ca.getId());
@@ -1421,7 +1474,7 @@ public class CertStore {
         ps.setString(idxSubject, subjectLike);
       }
 
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       List<CertListInfo> ret = new LinkedList<>();
       while (rs.next()) {
         CertListInfo info = new CertListInfo(new BigInteger(rs.getString("SN"), 16),
@@ -1448,7 +1501,7 @@ public class CertStore {
 
     try {
       ps.setString(1, user);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
 
       if (!rs.next()) {
         return null;
@@ -1478,7 +1531,7 @@ public class CertStore {
 
     try {
       ps.setInt(1, id);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
 
       if (!rs.next()) {
         return null;
@@ -1500,7 +1553,7 @@ public class CertStore {
     try {
       ps.setInt(1, ca.getId());
       ps.setInt(2, user.getId());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
 
       if (!rs.next()) {
         return null;
@@ -1528,9 +1581,8 @@ public class CertStore {
     PreparedStatement ps = borrowPreparedStatement(sql);
 
     try {
-      ps.setString(1, serial.toString(16));
-      ps.setInt(2, ca.getId());
-      rs = ps.executeQuery();
+      setSerial(ps, 1, ca.getId(), serial);
+      rs = datasource.executeQuery(ps, sql);
 
       if (!rs.next()) {
         return KnowCertResult.UNKNOWN;
@@ -1568,7 +1620,7 @@ public class CertStore {
       if (withEe) {
         setBoolean(ps, idx++, onlyUserCerts);
       }
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
 
       List<CertRevInfoWithSerial> ret = new LinkedList<>();
       while (rs.next()) {
@@ -1601,7 +1653,7 @@ public class CertStore {
     try {
       ps.setLong(1, startId - 1);
       ps.setInt(2, ca.getId());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       while (rs.next()) {
         long id = rs.getLong("ID");
         ids.add(id);
@@ -1619,7 +1671,7 @@ public class CertStore {
     for (Long id : ids) {
       try {
         ps.setLong(1, id);
-        rs = ps.executeQuery();
+        rs = datasource.executeQuery(ps, sql);
 
         if (!rs.next()) {
           continue;
@@ -1676,7 +1728,7 @@ public class CertStore {
     try {
       ps.setLong(1, subjectFp);
       ps.setInt(2, ca.getId());
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return CertStatus.UNKNOWN;
       }
@@ -1697,7 +1749,7 @@ public class CertStore {
     try {
       ps.setInt(1, ca.getId());
       ps.setLong(2, subjectFp);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       return rs.next();
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
@@ -1715,7 +1767,7 @@ public class CertStore {
     try {
       ps.setInt(1, ca.getId());
       ps.setLong(2, keyFp);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       return rs.next();
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
@@ -1737,6 +1789,16 @@ public class CertStore {
     }
   } // method borrowPreparedStatement
 
+  private PreparedStatement borrowReadOnlyPreparedStatement(String sqlQuery)
+      throws OperationException {
+    try {
+      return datasource.prepareReadOnlyStatement(sqlQuery);
+    } catch (DataAccessException ex) {
+      LOG.debug("DataAccessException", ex);
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
+  } // method borrowReadOnlyPreparedStatement
+
   public boolean isHealthy() {
     final String sql = "SELECT ID FROM CA";
 
@@ -1745,7 +1807,7 @@ public class CertStore {
 
       ResultSet rs = null;
       try {
-        rs = ps.executeQuery();
+        rs = datasource.executeQuery(ps, sql);
       } finally {
         datasource.releaseResources(ps, rs);
       }
@@ -1757,6 +1819,15 @@ public class CertStore {
     }
   } // method isHealthy
 
+  /**
+   * Returns the metrics of the database connection pool and statements.
+   * @return the metrics, or {@code null} if disabled.
+   */
+  public Map<String, Object> getDatasourceMetrics() {
+    DataSourceMetrics metrics = datasource.getMetrics();
+    return (metrics == null) ? null : metrics.getStatuses();
+  }
+
   public String getLatestSerialNumber(X500Name nameWithSn) throws OperationException {
     RDN[] rdns1 = nameWithSn.getRDNs();
     RDN[] rdns2 = new RDN[rdns1.length];
@@ -1776,7 +1847,7 @@ public class CertStore {
 
     try {
       ps.setString(1, namePattern);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return null;
       }
@@ -1802,7 +1873,7 @@ public class CertStore {
     PreparedStatement ps = borrowPreparedStatement(sql);
     ResultSet rs = null;
     try {
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -1822,7 +1893,7 @@ public class CertStore {
       ps.setLong(1, id);
       ps.setLong(2, currentTimeSeconds);
       ps.setString(3, b64Request);
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -1840,7 +1911,7 @@ public class CertStore {
       ps.setLong(1, id);
       ps.setLong(2, requestId);
       ps.setLong(3, certId);
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -0,0 +1,476 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.audit.Audits;
+import org.xipki.ca.api.CaUris;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.api.OperationException.ErrorCode;
+import org.xipki.ca.api.RequestType;
+import org.xipki.ca.api.mgmt.CaStatus;
+import org.xipki.ca.api.mgmt.CaSystemStatus;
+import org.xipki.ca.api.mgmt.CmpControl;
+import org.xipki.ca.api.mgmt.MgmtEntry;
+import org.xipki.ca.api.mgmt.PermissionConstants;
+import org.xipki.ca.api.mgmt.ProtocolSupport;
+import org.xipki.ca.api.mgmt.RequestorInfo;
+import org.xipki.ca.api.mgmt.ValidityMode;
+import org.xipki.ca.api.profile.Certprofile.CertValidity;
+import org.xipki.ca.api.profile.CertprofileFactoryRegister;
+import org.xipki.ca.api.publisher.CertPublisherFactoryRegister;
+import org.xipki.ca.certprofile.xijson.CertprofileFactoryImpl;
+import org.xipki.ca.server.IssuanceStageMetrics.Stage;
+import org.xipki.ca.server.publisher.OcspCertPublisherFactory;
+import org.xipki.dbtool.InitDbMain;
+import org.xipki.dbtool.LiquibaseMain;
+import org.xipki.security.ConcurrentBagEntrySigner;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.Securities;
+import org.xipki.security.SignerConf;
+import org.xipki.security.pkcs11.P11Module;
+import org.xipki.security.pkcs11.P11Slot;
+import org.xipki.security.pkcs11.P11Slot.P11NewKeyControl;
+import org.xipki.security.pkcs12.P12ContentSignerBuilder;
+import org.xipki.security.util.AlgorithmUtil;
+import org.xipki.security.util.KeyUtil;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Base64;
+import org.xipki.util.RandomUtil;
+
+/**
+ * In-process benchmark of the issuance pipeline of {@link X509Ca}. The certificates are
+ * issued via {@link X509Ca#generateCerts(List, RequestorInfo, RequestType, byte[], String)}
+ * by a CA whose certificate store is an embedded H2 database, and are published to an OCSP
+ * database, also embedded H2. The timing of each stage, from the checks of the template to
+ * the publishing, is taken from the {@link IssuanceStageMetrics} of the CA.
+ *
+ * <p>Parameters (system properties):
+ * <ul>
+ *   <li>{@code issuance.profiles}: comma-separated sample profiles, default
+ *     {@code certprofile-tls.json,certprofile-subca.json}</li>
+ *   <li>{@code issuance.keyTypes}: comma-separated CA key types, default
+ *     {@code rsa2048,ec256}</li>
+ *   <li>{@code issuance.signers}: comma-separated signer types, default {@code p12,p11}</li>
+ *   <li>{@code issuance.threads}: comma-separated thread counts, default {@code 1,4}</li>
+ *   <li>{@code issuance.duration}: duration of each run in seconds, default {@code 3}</li>
+ * </ul>
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class IssuanceBenchmark {
+
+  private static final String PROFILES_DIR =
+      "../assemblies/xipki-qa/src/main/unfiltered/xipki/qa/certprofile";
+
+  private static final String P11_MODULE = "default";
+
+  private static final String PUBLISHER = "ocsp-publisher";
+
+  private static final char[] PASSWORD = "1234".toCharArray();
+
+  private static final int NUM_KEYS_PER_THREAD = 16;
+
+  private static final CaUris CA_URIS = new CaUris(
+      Arrays.asList("http://ca.example.org/cacert"), Arrays.asList("http://ca.example.org/ocsp"),
+      Arrays.asList("http://ca.example.org/crl"), Arrays.asList("http://ca.example.org/deltacrl"));
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private static final AtomicLong SUBJECT_INDEX = new AtomicLong(1);
+
+  private static File tmpDir;
+
+  private static boolean calockExists;
+
+  private static Securities securities;
+
+  private static CaManagerImpl caManager;
+
+  private long sink;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    tmpDir = Files.createTempDirectory("issuance-benchmark").toFile();
+    // CaManagerImpl saves its lock identifier in the file calock of the working directory
+    calockExists = new File("calock").exists();
+
+    String p11Dir = new File(tmpDir, "p11").getAbsolutePath().replace('\\', '/');
+    String pkcs11Conf = save("pkcs11.json", "{\"modules\":[{\"name\":\"" + P11_MODULE + "\","
+        + "\"type\":\"emulator\",\"user\":\"CKU_USER\",\"maxMessageSize\":16384,"
+        + "\"nativeLibraries\":[{\"path\":\"" + p11Dir + "\"}],"
+        + "\"mechanismFilters\":[{\"mechanismSet\":\"all\"}],"
+        + "\"passwordSets\":[{\"passwords\":[\"" + new String(PASSWORD) + "\"]}]}],"
+        + "\"mechanismSets\":[{\"name\":\"all\",\"mechanisms\":[\"ALL\"]}]}");
+
+    Audits.init(save("audit.cfg", "audit.type = embed\n"));
+
+    securities = new Securities();
+    securities.setPasswordCfg(save("password.cfg", ""));
+    securities.setSecuirtyCfg(save("security.cfg", "pkcs11.confFile = " + pkcs11Conf + "\n"));
+    securities.init();
+
+    Properties confProps = new Properties();
+    confProps.setProperty("ca.shardId", "0");
+    confProps.setProperty("datasource.ca", createDatabase("ca", "sql/ca-init.xml"));
+    confProps.setProperty("datasource.ocsp", createDatabase("ocsp", "sql/ocsp-init.xml"));
+
+    CertprofileFactoryRegister profileFactoryRegister = new CertprofileFactoryRegister();
+    profileFactoryRegister.registFactory(new CertprofileFactoryImpl());
+    CertPublisherFactoryRegister publisherFactoryRegister = new CertPublisherFactoryRegister();
+    publisherFactoryRegister.registFactory(new OcspCertPublisherFactory());
+
+    caManager = new CaManagerImpl();
+    caManager.setSecurityFactory(securities.getSecurityFactory());
+    caManager.setCertprofileFactoryRegister(profileFactoryRegister);
+    caManager.setCertPublisherFactoryRegister(publisherFactoryRegister);
+    caManager.setConfProperties(confProps);
+    caManager.startCaSystem();
+    if (caManager.getCaSystemStatus() != CaSystemStatus.STARTED_AS_MASTER) {
+      throw new IllegalStateException("could not start CA system");
+    }
+
+    caManager.addPublisher(new MgmtEntry.Publisher(new NameId(null, PUBLISHER), "ocsp",
+        "datasource=ocsp"));
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    if (caManager != null) {
+      caManager.close();
+    }
+
+    if (securities != null) {
+      securities.close();
+    }
+
+    Audits.close();
+
+    if (tmpDir != null) {
+      deleteDir(tmpDir);
+    }
+
+    if (!calockExists) {
+      new File("calock").delete();
+    }
+  }
+
+  @Test
+  public void benchmark() throws Exception {
+    File profilesDir = new File(PROFILES_DIR);
+    Assume.assumeTrue(profilesDir.isDirectory());
+
+    String[] profileFiles = getList("issuance.profiles",
+        "certprofile-tls.json,certprofile-subca.json");
+    String[] keyTypes = getList("issuance.keyTypes", "rsa2048,ec256");
+    String[] signerTypes = getList("issuance.signers", "p12,p11");
+    String[] threadCounts = getList("issuance.threads", "1,4");
+    int duration = Integer.getInteger("issuance.duration", 3);
+
+    List<String> profileNames = new ArrayList<>(profileFiles.length);
+    for (String profileFile : profileFiles) {
+      String conf = new String(Files.readAllBytes(new File(profilesDir, profileFile).toPath()),
+          StandardCharsets.UTF_8);
+      String profileName = profileFile.replace(".json", "");
+      caManager.addCertprofile(
+          new MgmtEntry.Certprofile(new NameId(null, profileName), "xijson", conf));
+      profileNames.add(profileName);
+    }
+
+    for (String signerType : signerTypes) {
+      for (String keyType : keyTypes) {
+        for (String threads : threadCounts) {
+          int numThreads = Integer.parseInt(threads);
+          String caName = "bench-" + signerType + "-" + keyType + "-" + numThreads;
+          X509Ca ca = addCa(caName, signerType, keyType, numThreads, profileNames);
+
+          for (String profileName : profileNames) {
+            run(ca, profileName, signerType, keyType, numThreads, duration);
+          }
+        }
+      }
+    }
+  }
+
+  private void run(X509Ca ca, String profileName, String signerType, String keyType,
+      int numThreads, int duration) throws Exception {
+    RequestorInfo requestor = new ByCaRequestorInfo(
+        caManager.idNameMap().getRequestor(RequestorInfo.NAME_BY_CA));
+
+    // each thread has its own keys, since a CA does not process two requests for the same
+    // public key concurrently
+    SubjectPublicKeyInfo[][] keys = new SubjectPublicKeyInfo[numThreads][NUM_KEYS_PER_THREAD];
+    for (int i = 0; i < numThreads; i++) {
+      for (int j = 0; j < NUM_KEYS_PER_THREAD; j++) {
+        KeyPair kp = KeyUtil.generateECKeypairForCurveNameOrOid("secp256r1", RANDOM);
+        keys[i][j] = KeyUtil.createSubjectPublicKeyInfo(kp.getPublic());
+      }
+    }
+
+    try {
+      // check whether the profile can be processed without further content of the request
+      issue(ca, profileName, requestor, keys[0][0]);
+    } catch (OperationException ex) {
+      if (ex.getErrorCode() == ErrorCode.BAD_CERT_TEMPLATE) {
+        System.out.println(profileName + ": skipped, " + ex.getMessage());
+        return;
+      }
+      throw ex;
+    }
+
+    IssuanceStageMetrics metrics = ca.getIssuanceMetrics();
+    metrics.reset();
+
+    AtomicLong count = new AtomicLong();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<Long>> futures = new ArrayList<>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      final SubjectPublicKeyInfo[] threadKeys = keys[i];
+      futures.add(executor.submit(() -> {
+        long sum = 0;
+        int idx = 0;
+        while (System.nanoTime() < deadline) {
+          SubjectPublicKeyInfo key = threadKeys[idx++ % NUM_KEYS_PER_THREAD];
+          sum += issue(ca, profileName, requestor, key);
+          count.incrementAndGet();
+        }
+        return sum;
+      }));
+    }
+
+    for (Future<Long> future : futures) {
+      sink += future.get();
+    }
+    executor.shutdown();
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(profileName).append(", signer=").append(signerType).append(", key=")
+      .append(keyType).append(", threads=").append(numThreads).append(": ")
+      .append(count.get() / duration).append(" certs/s");
+    for (Stage stage : Stage.values()) {
+      Map<String, Object> stats = metrics.getHistogram(stage).toStatusMap();
+      if (((Long) stats.get("count")) > 0) {
+        sb.append("\n  ").append(stage.getText()).append(": ").append(stats);
+      }
+    }
+    System.out.println(sb);
+  }
+
+  private static int issue(X509Ca ca, String profileName, RequestorInfo requestor,
+      SubjectPublicKeyInfo publicKey) throws OperationException {
+    X500Name subject = new X500Name(
+        "C=DE,O=example,CN=host-" + SUBJECT_INDEX.getAndIncrement() + ".example.org");
+    CertTemplateData template = new CertTemplateData(subject, publicKey, null, null, null,
+        profileName);
+    List<CertificateInfo> certInfos = ca.generateCerts(Collections.singletonList(template),
+        requestor, RequestType.CA, null, RandomUtil.nextHexLong());
+    return certInfos.get(0).getCert().getEncodedCert().length;
+  }
+
+  private static X509Ca addCa(String caName, String signerType, String keyType,
+      int parallelism, List<String> profileNames) throws Exception {
+    boolean rsa = keyType.startsWith("rsa");
+    String sigAlgo = rsa ? "SHA256withRSA" : "SHA256withECDSA";
+
+    String caSignerType;
+    String signerConf;
+    X509Certificate caCert;
+
+    if ("p12".equalsIgnoreCase(signerType)) {
+      KeyPair kp = rsa
+          ? KeyUtil.generateRSAKeypair(Integer.parseInt(keyType.substring(3)), null, RANDOM)
+          : KeyUtil.generateECKeypairForCurveNameOrOid(getCurve(keyType), RANDOM);
+      ConcurrentContentSigner signer = new P12ContentSignerBuilder(kp.getPrivate(),
+          kp.getPublic()).createSigner(AlgorithmUtil.getSigAlgId(sigAlgo), 1, RANDOM);
+      try {
+        caCert = createCaCert(caName, signer);
+      } finally {
+        signer.close();
+      }
+
+      KeyStore ks = KeyUtil.getKeyStore("PKCS12");
+      ks.load(null, null);
+      ks.setKeyEntry("main", kp.getPrivate(), PASSWORD, new X509Certificate[]{caCert});
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ks.store(out, PASSWORD);
+
+      caSignerType = "pkcs12";
+      signerConf = "password=" + new String(PASSWORD) + ",keystore=base64:"
+          + Base64.encodeToString(out.toByteArray()) + ",algo=" + sigAlgo
+          + ",parallelism=" + parallelism;
+    } else if ("p11".equalsIgnoreCase(signerType)) {
+      P11Module module = securities.getP11CryptServiceFactory()
+          .getP11CryptService(P11_MODULE).getModule();
+      P11Slot slot = module.getSlot(module.getSlotIdForIndex(0));
+      P11NewKeyControl control = new P11NewKeyControl(null, caName);
+      if (rsa) {
+        slot.generateRSAKeypair(Integer.parseInt(keyType.substring(3)), null, control);
+      } else {
+        slot.generateECKeypair(getCurve(keyType), control);
+      }
+
+      caSignerType = "pkcs11";
+      signerConf = "module=" + P11_MODULE + ",slot=0,key-label=" + caName + ",algo=" + sigAlgo
+          + ",parallelism=" + parallelism;
+      ConcurrentContentSigner signer = securities.getSecurityFactory().createSigner(
+          caSignerType, new SignerConf(signerConf), (X509Certificate) null);
+      try {
+        caCert = createCaCert(caName, signer);
+      } finally {
+        signer.close();
+      }
+    } else {
+      throw new IllegalArgumentException("unknown signer type " + signerType);
+    }
+
+    MgmtEntry.Ca entry = new MgmtEntry.Ca(new NameId(null, caName), 127, 1, caSignerType,
+        signerConf, CA_URIS, 1, 365);
+    entry.setCert(caCert);
+    entry.setStatus(CaStatus.ACTIVE);
+    entry.setMaxValidity(CertValidity.getInstance("5y"));
+    entry.setValidityMode(ValidityMode.CUTOFF);
+    entry.setPermission(PermissionConstants.ALL);
+    entry.setProtocolSupport(new ProtocolSupport(true, true, false));
+    entry.setCmpControl(new CmpControl("send.ca=true,protection.sigalgo=" + sigAlgo
+        + ",popo.sigalgo=SHA256withRSA:SHA256withECDSA"));
+    // the keys of the subjects are reused, the subjects not
+    entry.setDuplicateKeyPermitted(true);
+    entry.setDuplicateSubjectPermitted(false);
+
+    caManager.addCa(entry);
+    caManager.addPublisherToCa(PUBLISHER, caName);
+    for (String profileName : profileNames) {
+      caManager.addCertprofileToCa(profileName, caName);
+    }
+    return caManager.getX509Ca(caName);
+  }
+
+  private static String getCurve(String keyType) {
+    if ("ec256".equalsIgnoreCase(keyType)) {
+      return "secp256r1";
+    } else if ("ec384".equalsIgnoreCase(keyType)) {
+      return "secp384r1";
+    } else {
+      throw new IllegalArgumentException("unknown key type " + keyType);
+    }
+  }
+
+  private static X509Certificate createCaCert(String caName, ConcurrentContentSigner signer)
+      throws Exception {
+    X500Name subject = new X500Name("C=DE,O=example,CN=" + caName);
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 10 * 365L * 24 * 3600 * 1000);
+    SubjectPublicKeyInfo publicKey = KeyUtil.createSubjectPublicKeyInfo(signer.getPublicKey());
+    X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(subject,
+        BigInteger.ONE, notBefore, notAfter, subject, publicKey);
+    certBuilder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+    certBuilder.addExtension(Extension.keyUsage, true,
+        new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
+    certBuilder.addExtension(Extension.subjectKeyIdentifier, false, new SubjectKeyIdentifier(
+        HashAlgo.SHA1.hash(publicKey.getPublicKeyData().getBytes())));
+
+    ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
+    try {
+      return X509Util.toX509Cert(certBuilder.build(signer0.value()).toASN1Structure());
+    } finally {
+      signer.requiteSigner(signer0);
+    }
+  }
+
+  private static String createDatabase(String name, String schemaFile) throws Exception {
+    String url = "jdbc:h2:mem:issuance-benchmark-" + name + ";DB_CLOSE_DELAY=-1";
+    InitDbMain.initDb(new LiquibaseMain.DatabaseConf("org.h2.Driver", "sa", "", url, null),
+        schemaFile);
+
+    return save(name + "-db.properties", "driverClassName = org.h2.Driver\n"
+        + "jdbcUrl = " + url + "\n"
+        + "username = sa\n"
+        + "password = \n");
+  }
+
+  private static String save(String fileName, String content) throws IOException {
+    File file = new File(tmpDir, fileName);
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file.getAbsolutePath();
+  }
+
+  private static String[] getList(String propName, String defaultValue) {
+    return System.getProperty(propName, defaultValue).split(",");
+  }
+
+  private static void deleteDir(File dir) {
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          deleteDir(child);
+        } else {
+          child.delete();
+        }
+      }
+    }
+    dir.delete();
+  }
+
+}
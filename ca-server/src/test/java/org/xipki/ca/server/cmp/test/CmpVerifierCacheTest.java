@@ -0,0 +1,176 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.server.cmp.test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.server.cmp.CmpVerifierCache;
+import org.xipki.security.SecurityFactoryImpl;
+import org.xipki.security.X509Cert;
+
+/**
+ * Test of {@link CmpVerifierCache}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CmpVerifierCacheTest {
+
+  private static KeyPair keyPair;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    keyPair = kpGen.generateKeyPair();
+  }
+
+  @Test
+  public void testProviderCacheHit() throws Exception {
+    CmpVerifierCache cache = newCache(10);
+    X509Cert cert = createCert(1);
+    ContentVerifierProvider provider = cache.getProvider(cert);
+    Assert.assertNotNull(provider);
+    Assert.assertSame(provider, cache.getProvider(cert));
+    // equal certificate, other instance
+    Assert.assertSame(provider, cache.getProvider(new X509Cert(cert.getCert())));
+    Assert.assertNotSame(provider, cache.getProvider(createCert(2)));
+
+    SubjectPublicKeyInfo spki = SubjectPublicKeyInfo.getInstance(
+        keyPair.getPublic().getEncoded());
+    provider = cache.getPopoProvider(spki);
+    Assert.assertNotNull(provider);
+    Assert.assertSame(provider, cache.getPopoProvider(spki));
+  }
+
+  @Test
+  public void testProviderEviction() throws Exception {
+    CmpVerifierCache cache = newCache(2);
+    X509Cert cert1 = createCert(1);
+    ContentVerifierProvider provider1 = cache.getProvider(cert1);
+    cache.getProvider(createCert(2));
+    Assert.assertSame(provider1, cache.getProvider(cert1));
+
+    // cert1 is the most recently used one, cert2 is evicted
+    X509Cert cert3 = createCert(3);
+    ContentVerifierProvider provider3 = cache.getProvider(cert3);
+    Assert.assertSame(provider1, cache.getProvider(cert1));
+    Assert.assertSame(provider3, cache.getProvider(cert3));
+
+    // cert1 is evicted
+    cache.getProvider(createCert(4));
+    cache.getProvider(cert3);
+    cache.getProvider(createCert(5));
+    Assert.assertNotSame(provider1, cache.getProvider(cert1));
+  }
+
+  @Test
+  public void testReplayRejected() throws Exception {
+    CmpVerifierCache cache = newCache(10);
+    cache.setReplayCacheSize(10);
+    X509Cert cert = createCert(1);
+    byte[] signature = {1, 2, 3};
+
+    Assert.assertFalse(cache.isReplayed(cert, signature));
+    Assert.assertTrue(cache.addVerified(cert, signature));
+    Assert.assertTrue(cache.isReplayed(cert, signature));
+    // concurrent request with the same signature
+    Assert.assertFalse(cache.addVerified(cert, signature));
+
+    // other signature or other requestor
+    Assert.assertFalse(cache.isReplayed(cert, new byte[]{1, 2, 4}));
+    Assert.assertFalse(cache.isReplayed(createCert(2), signature));
+  }
+
+  @Test
+  public void testReplayEviction() throws Exception {
+    CmpVerifierCache cache = newCache(10);
+    cache.setReplayCacheSize(2);
+    X509Cert cert = createCert(1);
+    for (byte i = 1; i <= 3; i++) {
+      Assert.assertTrue(cache.addVerified(cert, new byte[]{i}));
+    }
+
+    Assert.assertFalse(cache.isReplayed(cert, new byte[]{1}));
+    Assert.assertTrue(cache.isReplayed(cert, new byte[]{2}));
+    Assert.assertTrue(cache.isReplayed(cert, new byte[]{3}));
+
+    // shrink
+    cache.setReplayCacheSize(1);
+    Assert.assertEquals(1, cache.getReplayCacheSize());
+    Assert.assertFalse(cache.isReplayed(cert, new byte[]{2}));
+    Assert.assertTrue(cache.isReplayed(cert, new byte[]{3}));
+  }
+
+  @Test
+  public void testReplayCacheOff() throws Exception {
+    CmpVerifierCache cache = newCache(10);
+    X509Cert cert = createCert(1);
+    byte[] signature = {1, 2, 3};
+
+    // disabled by default
+    Assert.assertEquals(0, cache.getReplayCacheSize());
+    Assert.assertTrue(cache.addVerified(cert, signature));
+    Assert.assertTrue(cache.addVerified(cert, signature));
+    Assert.assertFalse(cache.isReplayed(cert, signature));
+
+    // disabled again
+    cache.setReplayCacheSize(10);
+    Assert.assertTrue(cache.addVerified(cert, signature));
+    cache.setReplayCacheSize(0);
+    Assert.assertEquals(0, cache.getReplayCacheSize());
+    Assert.assertFalse(cache.isReplayed(cert, signature));
+    Assert.assertTrue(cache.addVerified(cert, signature));
+  }
+
+  private static CmpVerifierCache newCache(int providerCacheSize) {
+    return new CmpVerifierCache(new SecurityFactoryImpl(), providerCacheSize);
+  }
+
+  private static X509Cert createCert(long serial) throws Exception {
+    X500Name subject = new X500Name("CN=requestor-" + serial);
+    Date notBefore = new Date(System.currentTimeMillis() - 3600_000L);
+    Date notAfter = new Date(System.currentTimeMillis() + 365 * 86400_000L);
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(subject,
+        BigInteger.valueOf(serial), notBefore, notAfter, subject, keyPair.getPublic());
+    return new X509Cert(new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA")
+            .build(keyPair.getPrivate()))));
+  }
+
+}
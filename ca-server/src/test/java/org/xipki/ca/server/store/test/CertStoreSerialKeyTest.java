@@ -0,0 +1,229 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.server.store.test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.RequestType;
+import org.xipki.ca.api.mgmt.CertWithRevocationInfo;
+import org.xipki.ca.server.CaIdNameMap;
+import org.xipki.ca.server.UniqueIdGenerator;
+import org.xipki.ca.server.store.CertStore;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.dbtool.InitDbMain;
+import org.xipki.dbtool.LiquibaseMain;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.CrlReason;
+import org.xipki.security.FpIdCalculator;
+import org.xipki.security.X509Cert;
+
+/**
+ * Test of {@link CertStore} with the table CERT keyed by the serial number and by its hash
+ * value, and during the migration between both.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CertStoreSerialKeyTest {
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  private static final NameId CA = new NameId(1, "ca1");
+
+  private static final NameId PROFILE = new NameId(1, "profile1");
+
+  private static final NameId REQUESTOR = new NameId(1, "requestor1");
+
+  private static KeyPair keyPair;
+
+  private static ContentSigner caSigner;
+
+  private static X509Cert caCert;
+
+  private final CaIdNameMap idNameMap = new CaIdNameMap();
+
+  private DataSourceWrapper datasource;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    keyPair = kpGen.generateKeyPair();
+    caSigner = new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate());
+    caCert = new X509Cert(createCert(BigInteger.ONE, new X500Name("CN=ca1")));
+  }
+
+  public CertStoreSerialKeyTest() {
+    idNameMap.addCa(CA);
+    idNameMap.addCertprofile(PROFILE);
+    idNameMap.addRequestor(REQUESTOR);
+  }
+
+  @After
+  public void tearDown() {
+    if (datasource != null) {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testHashedSerialKey() throws Exception {
+    createDatabase("hash");
+    Assert.assertEquals("hash", getSerialKey());
+
+    CertStore certStore = new CertStore(datasource, new UniqueIdGenerator(0, 0));
+    BigInteger serial = new BigInteger("0123456789abcdef0123456789abcdef", 16);
+    long certId = addCert(certStore, serial);
+    Assert.assertEquals(FpIdCalculator.hash(serial), getSnh(certId).longValue());
+
+    // another serial number is not found
+    Assert.assertNull(certStore.getCertWithRevocationInfo(CA.getId(),
+        serial.add(BigInteger.ONE), idNameMap));
+
+    assertRevoke(certStore, serial, certId);
+  }
+
+  @Test
+  public void testMigrationInProgress() throws Exception {
+    createDatabase("hex");
+    CertStore certStore = new CertStore(datasource, new UniqueIdGenerator(0, 0));
+    BigInteger oldSerial = BigInteger.valueOf(0x1234);
+    long oldCertId = addCert(certStore, oldSerial);
+
+    // the migration has added the column SNH, but not yet filled it
+    execute("ALTER TABLE CERT ADD SNH BIGINT");
+    certStore = new CertStore(datasource, new UniqueIdGenerator(0, 1));
+    Assert.assertNull(getSnh(oldCertId));
+
+    // new rows get SNH, and all rows are looked up by SN
+    BigInteger newSerial = BigInteger.valueOf(0x5678);
+    long newCertId = addCert(certStore, newSerial);
+    Assert.assertEquals(FpIdCalculator.hash(newSerial), getSnh(newCertId).longValue());
+    assertRevoke(certStore, oldSerial, oldCertId);
+
+    // the migration is complete
+    execute("UPDATE CERT SET SNH=" + FpIdCalculator.hash(oldSerial) + " WHERE ID=" + oldCertId);
+    execute("INSERT INTO DBSCHEMA (NAME,VALUE2) VALUES ('SERIAL_KEY','hash')");
+    certStore = new CertStore(datasource, new UniqueIdGenerator(0, 2));
+    Assert.assertTrue(certStore.getCertWithRevocationInfo(CA.getId(), oldSerial, idNameMap)
+        .isRevoked());
+    assertRevoke(certStore, newSerial, newCertId);
+  }
+
+  private void assertRevoke(CertStore certStore, BigInteger serial, long certId)
+      throws Exception {
+    CertWithRevocationInfo certInfo =
+        certStore.getCertWithRevocationInfo(CA.getId(), serial, idNameMap);
+    Assert.assertNotNull("certificate not found", certInfo);
+    Assert.assertEquals(certId, certInfo.getCert().getCertId().longValue());
+    Assert.assertEquals(serial, certInfo.getCert().getCert().getSerialNumber());
+    Assert.assertEquals(PROFILE.getName(), certInfo.getCertprofile());
+    Assert.assertFalse(certInfo.isRevoked());
+
+    Assert.assertNotNull(certStore.revokeCert(CA, serial,
+        new CertRevocationInfo(CrlReason.KEY_COMPROMISE), false, false, idNameMap));
+
+    certInfo = certStore.getCertWithRevocationInfo(CA.getId(), serial, idNameMap);
+    Assert.assertTrue(certInfo.isRevoked());
+    Assert.assertEquals(CrlReason.KEY_COMPROMISE, certInfo.getRevInfo().getReason());
+  }
+
+  private static X509Certificate createCert(BigInteger serial, X500Name subject)
+      throws Exception {
+    Date notBefore = new Date(System.currentTimeMillis() - 3600_000L);
+    Date notAfter = new Date(System.currentTimeMillis() + 365 * 86400_000L);
+    return new JcaX509CertificateConverter().getCertificate(
+        new JcaX509v3CertificateBuilder(new X500Name("CN=ca1"), serial, notBefore, notAfter,
+            subject, keyPair.getPublic()).build(caSigner));
+  }
+
+  private long addCert(CertStore certStore, BigInteger serial) throws Exception {
+    X509Certificate cert = createCert(serial, new X500Name("CN=cert-" + serial.toString(16)));
+    CertWithDbId certWithDbId = new CertWithDbId(cert);
+    CertificateInfo certInfo = new CertificateInfo(certWithDbId, null, CA, caCert,
+        keyPair.getPublic().getEncoded(), PROFILE, REQUESTOR);
+    certInfo.setReqType(RequestType.CA);
+    Assert.assertTrue("could not add certificate", certStore.addCert(certInfo));
+    return certWithDbId.getCertId();
+  }
+
+  private void createDatabase(String serialKey) throws Exception {
+    String url = "jdbc:h2:mem:certstore-" + DB_INDEX.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+    InitDbMain.initDb(new LiquibaseMain.DatabaseConf("org.h2.Driver", "sa", "", url, null),
+        "sql/ca-init.xml", serialKey);
+
+    Properties props = new Properties();
+    props.setProperty("driverClassName", "org.h2.Driver");
+    props.setProperty("jdbcUrl", url);
+    props.setProperty("username", "sa");
+    props.setProperty("password", "");
+    props.setProperty("maximumPoolSize", "2");
+    datasource = new DataSourceFactory().createDataSource("test", props, null);
+
+    // no entries of CA, PROFILE and REQUESTOR are required
+    execute("SET REFERENTIAL_INTEGRITY FALSE");
+  }
+
+  private String getSerialKey() throws Exception {
+    return datasource.getFirstValue(null, "DBSCHEMA", "VALUE2", "NAME='SERIAL_KEY'",
+        String.class);
+  }
+
+  private Long getSnh(long certId) throws Exception {
+    return datasource.getFirstValue(null, "CERT", "SNH", "ID=" + certId, Long.class);
+  }
+
+  private void execute(String sql) throws Exception {
+    Connection conn = datasource.getConnection();
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute(sql);
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.server.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.api.OperationException.ErrorCode;
+import org.xipki.ca.server.AdmissionRejectedException;
+import org.xipki.ca.server.IssuanceAdmission;
+import org.xipki.util.ConfPairs;
+
+/**
+ * Test of {@link IssuanceAdmission}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class IssuanceAdmissionTest {
+
+  @Test
+  public void testNotConfigured() {
+    Assert.assertNull(IssuanceAdmission.getInstance(null));
+    Assert.assertNull(IssuanceAdmission.getInstance(new ConfPairs("other", "1")));
+  }
+
+  @Test
+  public void testRequestorRate() throws Exception {
+    ConfPairs conf = new ConfPairs();
+    conf.putPair(IssuanceAdmission.KEY_REQUESTOR_RATE, "0.1");
+    conf.putPair(IssuanceAdmission.KEY_REQUESTOR_BURST, "2");
+    conf.putPair(IssuanceAdmission.KEY_MAX_WAIT, "0");
+    IssuanceAdmission admission = IssuanceAdmission.getInstance(conf);
+
+    admission.release(admission.admit("requestor1", 1));
+    admission.release(admission.admit("requestor1", 1));
+    try {
+      admission.admit("requestor1", 1);
+      Assert.fail("AdmissionRejectedException expected");
+    } catch (AdmissionRejectedException ex) {
+      Assert.assertTrue("retryAfter", ex.getRetryAfter() >= 1);
+    }
+
+    // other requestors are not affected
+    admission.release(admission.admit("requestor2", 2));
+  }
+
+  @Test
+  public void testCaRate() throws Exception {
+    ConfPairs conf = new ConfPairs();
+    conf.putPair(IssuanceAdmission.KEY_RATE, "0.1");
+    conf.putPair(IssuanceAdmission.KEY_BURST, "3");
+    conf.putPair(IssuanceAdmission.KEY_MAX_WAIT, "0");
+    IssuanceAdmission admission = IssuanceAdmission.getInstance(conf);
+
+    admission.release(admission.admit("requestor1", 2));
+    try {
+      admission.admit("requestor2", 2);
+      Assert.fail("AdmissionRejectedException expected");
+    } catch (AdmissionRejectedException ex) {
+      // expected
+    }
+    // the tokens of the rejected request are still available
+    admission.release(admission.admit("requestor2", 1));
+  }
+
+  @Test
+  public void testConcurrency() throws Exception {
+    ConfPairs conf = new ConfPairs();
+    conf.putPair(IssuanceAdmission.KEY_CONCURRENCY, "1");
+    conf.putPair(IssuanceAdmission.KEY_QUEUE, "0");
+    IssuanceAdmission admission = IssuanceAdmission.getInstance(conf);
+
+    long admitted = admission.admit("requestor1", 1);
+    try {
+      admission.admit("requestor2", 1);
+      Assert.fail("AdmissionRejectedException expected");
+    } catch (AdmissionRejectedException ex) {
+      // expected
+    }
+
+    admission.release(admitted);
+    admission.release(admission.admit("requestor2", 1));
+    Assert.assertEquals(1L, admission.getMetrics().get("rejectedByQueue"));
+  }
+
+  @Test
+  public void testMoreCertsThanBurst() throws Exception {
+    ConfPairs conf = new ConfPairs();
+    conf.putPair(IssuanceAdmission.KEY_RATE, "100");
+    conf.putPair(IssuanceAdmission.KEY_BURST, "10");
+    conf.putPair(IssuanceAdmission.KEY_REQUESTOR_RATE, "10");
+    conf.putPair(IssuanceAdmission.KEY_REQUESTOR_BURST, "5");
+    IssuanceAdmission admission = IssuanceAdmission.getInstance(conf);
+
+    try {
+      admission.admit("requestor1", 6);
+      Assert.fail("OperationException expected");
+    } catch (AdmissionRejectedException ex) {
+      Assert.fail("request with more certificates than the burst must not be retried");
+    } catch (OperationException ex) {
+      Assert.assertEquals(ErrorCode.BAD_REQUEST, ex.getErrorCode());
+    }
+
+    admission.release(admission.admit("requestor1", 5));
+  }
+
+  @Test
+  public void testManyRequestors() throws Exception {
+    ConfPairs conf = new ConfPairs();
+    conf.putPair(IssuanceAdmission.KEY_REQUESTOR_RATE, "0.1");
+    conf.putPair(IssuanceAdmission.KEY_REQUESTOR_BURST, "1");
+    conf.putPair(IssuanceAdmission.KEY_MAX_WAIT, "0");
+    IssuanceAdmission admission = IssuanceAdmission.getInstance(conf);
+
+    admission.release(admission.admit("requestor", 1));
+    // many other requestors do not refill the bucket of an active requestor
+    for (int i = 0; i < 20000; i++) {
+      admission.release(admission.admit("other" + i, 1));
+      if (i % 1000 == 0) {
+        try {
+          admission.admit("requestor", 1);
+          Assert.fail("AdmissionRejectedException expected at " + i);
+        } catch (AdmissionRejectedException ex) {
+          // expected
+        }
+      }
+    }
+  }
+
+}
@@ -179,6 +179,8 @@ public class CaServletFilter implements Filter {
     if (caManager != null) {
       caManager.close();
     }
+
+    Audits.close();
   }
 
   @Override
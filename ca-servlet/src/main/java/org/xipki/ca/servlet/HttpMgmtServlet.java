@@ -320,6 +320,16 @@ public class HttpMgmtServlet extends HttpServlet {
           resp = new MgmtResponse.GetCaSystemStatus(result);
           break;
         }
+        case getAuditMetrics: {
+          Map<String, Object> result = caManager.getAuditMetrics();
+          resp = new MgmtResponse.GetAuditMetrics(result);
+          break;
+        }
+        case getDatasourceMetrics: {
+          Map<String, Object> result = caManager.getDatasourceMetrics();
+          resp = new MgmtResponse.GetDatasourceMetrics(result);
+          break;
+        }
         case getCert: {
           MgmtRequest.GetCert req = parse(in, MgmtRequest.GetCert.class);
           CertWithRevocationInfo cert;
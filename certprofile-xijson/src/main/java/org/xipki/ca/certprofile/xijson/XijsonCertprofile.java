@@ -137,6 +137,33 @@ import org.xipki.util.StringUtil;
 
 public class XijsonCertprofile extends BaseCertprofile {
 
+  private interface ExtensionBuilder {
+
+    ExtensionValue build(X500Name requestedSubject, X500Name grantedSubject,
+        Extensions requestedExtensions, Date notBefore, Date notAfter)
+        throws CertprofileException, BadCertTemplateException;
+
+  }
+
+  private static final class ExtensionStep {
+
+    private final ASN1ObjectIdentifier type;
+
+    // pre-encoded constant value
+    private final ExtensionValue value;
+
+    // builder of the request-dependent value, used if value is null
+    private final ExtensionBuilder builder;
+
+    private ExtensionStep(ASN1ObjectIdentifier type, ExtensionValue value,
+        ExtensionBuilder builder) {
+      this.type = type;
+      this.value = value;
+      this.builder = builder;
+    }
+
+  }
+
   private static final Logger LOG = LoggerFactory.getLogger(XijsonCertprofile.class);
 
   private ExtensionValue additionalInformation;
@@ -217,6 +244,8 @@ public class XijsonCertprofile extends BaseCertprofile {
 
   private SubjectDirectoryAttributesControl subjectDirAttrsControl;
 
+  private List<ExtensionStep> extensionPlan = Collections.emptyList();
+
   private void reset() {
     additionalInformation = null;
     admission = null;
@@ -257,6 +286,7 @@ public class XijsonCertprofile extends BaseCertprofile {
     validityModel = null;
     version = null;
     subjectDirAttrsControl = null;
+    extensionPlan = Collections.emptyList();
     extraReset();
   } // method reset
 
@@ -590,6 +620,8 @@ public class XijsonCertprofile extends BaseCertprofile {
     if (!extnIds.isEmpty()) {
       throw new CertprofileException("Cannot process the extensions: " + extnIds);
     }
+
+    compileExtensionPlan();
   } // method initialize0
 
   /**
@@ -1104,488 +1136,441 @@ public class XijsonCertprofile extends BaseCertprofile {
     Args.notNull(notBefore, "notBefore");
     Args.notNull(notAfter, "notAfter");
 
-    Set<ASN1ObjectIdentifier> occurences = new HashSet<>(extensionOccurences.keySet());
-
-    // AuthorityKeyIdentifier
-    // processed by the CA
-
-    // SubjectKeyIdentifier
-    // processed by the CA
-
-    // KeyUsage
+    // AuthorityKeyIdentifier, SubjectKeyIdentifier, KeyUsage, IssuerAltName,
+    // BasicConstraints, ExtendedKeyUsage, CRL Distribution Points, Freshest CRL,
+    // Authority Information Access, Subject Information Access and OCSP Nocheck are
     // processed by the CA
+    for (ExtensionStep step : extensionPlan) {
+      ASN1ObjectIdentifier type = step.type;
+      if (!extensionOccurences.containsKey(type) || values.containsExtension(type)) {
+        continue;
+      }
 
-    // CertificatePolicies
-    ASN1ObjectIdentifier type = Extension.certificatePolicies;
-    if (certificatePolicies != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, certificatePolicies);
+      ExtensionValue value = (step.value != null) ? step.value
+          : step.builder.build(requestedSubject, grantedSubject, requestedExtensions,
+              notBefore, notAfter);
+      if (value != null) {
+        values.addExtension(type, value);
       }
     }
 
-    // Policy Mappings
-    type = Extension.policyMappings;
-    if (policyMappings != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, policyMappings);
+    ExtensionValues extraExtensions = getExtraExtensions(extensionOccurences, requestedSubject,
+        grantedSubject, requestedExtensions, notBefore, notAfter, caInfo);
+    if (extraExtensions != null) {
+      for (ASN1ObjectIdentifier m : extraExtensions.getExtensionTypes()) {
+        values.addExtension(m, extraExtensions.getExtensionValue(m));
       }
     }
+    return values;
+  } // method getExtensions
 
-    // SubjectAltName
-    type = Extension.subjectAlternativeName;
-    if (occurences.contains(type)) {
-      GeneralNames genNames = createRequestedSubjectAltNames(requestedSubject, grantedSubject,
-          requestedExtensions);
-      if (genNames != null) {
-        ExtensionValue value = new ExtensionValue(extensionControls.get(type).isCritical(),
-            genNames);
-        values.addExtension(type, value);
-        occurences.remove(type);
+  /**
+   * Compiles the extensions of this profile into the execution plan of
+   * {@link #getExtensions(Map, X500Name, X500Name, Extensions, Date, Date, PublicCaInfo)}.
+   * The constant extensions are encoded here once.
+   */
+  private void compileExtensionPlan() throws CertprofileException {
+    List<ExtensionStep> plan = new ArrayList<>();
+    addStep(plan, Extension.certificatePolicies, certificatePolicies);
+    addStep(plan, Extension.policyMappings, policyMappings);
+    addStep(plan, Extension.subjectAlternativeName,
+        (reqSubject, grantedSubject, reqExtensions, notBefore, notAfter) ->
+          createSubjectAltName(reqSubject, grantedSubject, reqExtensions));
+
+    if (subjectDirAttrsControl != null) {
+      addStep(plan, Extension.subjectDirectoryAttributes,
+          (reqSubject, grantedSubject, reqExtensions, notBefore, notAfter) ->
+            createSubjectDirectoryAttributes(reqExtensions));
+    }
+
+    addStep(plan, Extension.nameConstraints, nameConstraints);
+    addStep(plan, Extension.policyConstraints, policyConstraints);
+    addStep(plan, Extension.inhibitAnyPolicy, inhibitAnyPolicy);
+
+    if (admission != null) {
+      ASN1ObjectIdentifier type = ObjectIdentifiers.id_extension_admission;
+      if (admission.isInputFromRequestRequired()) {
+        addStep(plan, type, (reqSubject, grantedSubject, reqExtensions, notBefore, notAfter) ->
+            createAdmission(reqExtensions));
+      } else {
+        try {
+          addStep(plan, type, admission.getExtensionValue(null));
+        } catch (BadCertTemplateException ex) {
+          throw new CertprofileException("could not create extension Admission", ex);
+        }
       }
     }
 
-    // IssuerAltName
-    // processed by the CA
+    addStep(plan, ObjectIdentifiers.id_extension_restriction, restriction);
+    addStep(plan, ObjectIdentifiers.id_extension_additionalInformation, additionalInformation);
+    addStep(plan, ObjectIdentifiers.id_extension_validityModel, validityModel);
+    addStep(plan, Extension.privateKeyUsagePeriod,
+        (reqSubject, grantedSubject, reqExtensions, notBefore, notAfter) ->
+          createPrivateKeyUsagePeriod(notBefore, notAfter));
 
-    // Subject Directory Attributes
-    type = Extension.subjectDirectoryAttributes;
-    if (occurences.contains(type) && subjectDirAttrsControl != null) {
-      Extension extension = (requestedExtensions == null) ? null
-          : requestedExtensions.getExtension(type);
-      if (extension == null) {
-        throw new BadCertTemplateException(
-            "no SubjectDirecotryAttributes extension is contained in the request");
+    if (qcStatments != null) {
+      addStep(plan, Extension.qCStatements, qcStatments);
+    } else if (qcStatementsOption != null) {
+      addStep(plan, Extension.qCStatements,
+          (reqSubject, grantedSubject, reqExtensions, notBefore, notAfter) ->
+            createQcStatements(reqExtensions));
+    }
+
+    if (biometricInfo != null) {
+      addStep(plan, Extension.biometricInfo,
+          (reqSubject, grantedSubject, reqExtensions, notBefore, notAfter) ->
+            createBiometricInfo(reqExtensions));
+    }
+
+    addStep(plan, ObjectIdentifiers.id_pe_tlsfeature, tlsFeature);
+    addStep(plan, ObjectIdentifiers.id_xipki_ext_authorizationTemplate, authorizationTemplate);
+    addStep(plan, ObjectIdentifiers.id_smimeCapabilities, smimeCapabilities);
+
+    if (constantExtensions != null) {
+      for (Map.Entry<ASN1ObjectIdentifier, ExtensionValue> m : constantExtensions.entrySet()) {
+        addStep(plan, m.getKey(), m.getValue());
       }
+    }
 
-      ASN1GeneralizedTime dateOfBirth = null;
-      String placeOfBirth = null;
-      String gender = null;
-      List<String> countryOfCitizenshipList = new LinkedList<>();
-      List<String> countryOfResidenceList = new LinkedList<>();
-      Map<ASN1ObjectIdentifier, List<ASN1Encodable>> otherAttrs = new HashMap<>();
-
-      Vector<?> reqSubDirAttrs = SubjectDirectoryAttributes.getInstance(
-          extension.getParsedValue()).getAttributes();
-      final int n = reqSubDirAttrs.size();
-      for (int i = 0; i < n; i++) {
-        Attribute attr = (Attribute) reqSubDirAttrs.get(i);
-        ASN1ObjectIdentifier attrType = attr.getAttrType();
-        ASN1Encodable attrVal = attr.getAttributeValues()[0];
-
-        if (ObjectIdentifiers.DN_DATE_OF_BIRTH.equals(attrType)) {
-          dateOfBirth = ASN1GeneralizedTime.getInstance(attrVal);
-        } else if (ObjectIdentifiers.DN_PLACE_OF_BIRTH.equals(attrType)) {
-          placeOfBirth = DirectoryString.getInstance(attrVal).getString();
-        } else if (ObjectIdentifiers.DN_GENDER.equals(attrType)) {
-          gender = DERPrintableString.getInstance(attrVal).getString();
-        } else if (ObjectIdentifiers.DN_COUNTRY_OF_CITIZENSHIP.equals(attrType)) {
-          String country = DERPrintableString.getInstance(attrVal).getString();
-          countryOfCitizenshipList.add(country);
-        } else if (ObjectIdentifiers.DN_COUNTRY_OF_RESIDENCE.equals(attrType)) {
-          String country = DERPrintableString.getInstance(attrVal).getString();
-          countryOfResidenceList.add(country);
-        } else {
-          List<ASN1Encodable> otherAttrVals = otherAttrs.get(attrType);
-          if (otherAttrVals == null) {
-            otherAttrVals = new LinkedList<>();
-            otherAttrs.put(attrType, otherAttrVals);
-          }
-          otherAttrVals.add(attrVal);
+    this.extensionPlan = plan;
+  } // method compileExtensionPlan
+
+  private void addStep(List<ExtensionStep> plan, ASN1ObjectIdentifier type,
+      ExtensionValue value) throws CertprofileException {
+    if (value == null || !extensionControls.containsKey(type)) {
+      return;
+    }
+
+    try {
+      // encode the constant extension once
+      value.getEncoded();
+    } catch (IOException ex) {
+      throw new CertprofileException("could not encode extension " + type.getId(), ex);
+    }
+    plan.add(new ExtensionStep(type, value, null));
+  }
+
+  private void addStep(List<ExtensionStep> plan, ASN1ObjectIdentifier type,
+      ExtensionBuilder builder) {
+    if (extensionControls.containsKey(type)) {
+      plan.add(new ExtensionStep(type, null, builder));
+    }
+  }
+
+  private ExtensionValue createSubjectAltName(X500Name requestedSubject,
+      X500Name grantedSubject, Extensions requestedExtensions)
+      throws BadCertTemplateException {
+    GeneralNames genNames = createRequestedSubjectAltNames(requestedSubject, grantedSubject,
+        requestedExtensions);
+    return (genNames == null) ? null : new ExtensionValue(
+        extensionControls.get(Extension.subjectAlternativeName).isCritical(), genNames);
+  }
+
+  private ExtensionValue createSubjectDirectoryAttributes(Extensions requestedExtensions)
+      throws BadCertTemplateException {
+    ASN1ObjectIdentifier type = Extension.subjectDirectoryAttributes;
+    Extension extension = (requestedExtensions == null) ? null
+        : requestedExtensions.getExtension(type);
+    if (extension == null) {
+      throw new BadCertTemplateException(
+          "no SubjectDirecotryAttributes extension is contained in the request");
+    }
+
+    ASN1GeneralizedTime dateOfBirth = null;
+    String placeOfBirth = null;
+    String gender = null;
+    List<String> countryOfCitizenshipList = new LinkedList<>();
+    List<String> countryOfResidenceList = new LinkedList<>();
+    Map<ASN1ObjectIdentifier, List<ASN1Encodable>> otherAttrs = new HashMap<>();
+
+    Vector<?> reqSubDirAttrs = SubjectDirectoryAttributes.getInstance(
+        extension.getParsedValue()).getAttributes();
+    final int n = reqSubDirAttrs.size();
+    for (int i = 0; i < n; i++) {
+      Attribute attr = (Attribute) reqSubDirAttrs.get(i);
+      ASN1ObjectIdentifier attrType = attr.getAttrType();
+      ASN1Encodable attrVal = attr.getAttributeValues()[0];
+
+      if (ObjectIdentifiers.DN_DATE_OF_BIRTH.equals(attrType)) {
+        dateOfBirth = ASN1GeneralizedTime.getInstance(attrVal);
+      } else if (ObjectIdentifiers.DN_PLACE_OF_BIRTH.equals(attrType)) {
+        placeOfBirth = DirectoryString.getInstance(attrVal).getString();
+      } else if (ObjectIdentifiers.DN_GENDER.equals(attrType)) {
+        gender = DERPrintableString.getInstance(attrVal).getString();
+      } else if (ObjectIdentifiers.DN_COUNTRY_OF_CITIZENSHIP.equals(attrType)) {
+        String country = DERPrintableString.getInstance(attrVal).getString();
+        countryOfCitizenshipList.add(country);
+      } else if (ObjectIdentifiers.DN_COUNTRY_OF_RESIDENCE.equals(attrType)) {
+        String country = DERPrintableString.getInstance(attrVal).getString();
+        countryOfResidenceList.add(country);
+      } else {
+        List<ASN1Encodable> otherAttrVals = otherAttrs.get(attrType);
+        if (otherAttrVals == null) {
+          otherAttrVals = new LinkedList<>();
+          otherAttrs.put(attrType, otherAttrVals);
         }
+        otherAttrVals.add(attrVal);
       }
+    }
 
-      Vector<Attribute> attrs = new Vector<>();
-      for (ASN1ObjectIdentifier attrType : subjectDirAttrsControl.getTypes()) {
-        if (ObjectIdentifiers.DN_DATE_OF_BIRTH.equals(attrType)) {
-          if (dateOfBirth != null) {
-            String timeStirng = dateOfBirth.getTimeString();
-            if (!SubjectDnSpec.PATTERN_DATE_OF_BIRTH.matcher(timeStirng).matches()) {
-              throw new BadCertTemplateException("invalid dateOfBirth " + timeStirng);
-            }
-            attrs.add(new Attribute(attrType, new DERSet(dateOfBirth)));
-            continue;
+    Vector<Attribute> attrs = new Vector<>();
+    for (ASN1ObjectIdentifier attrType : subjectDirAttrsControl.getTypes()) {
+      if (ObjectIdentifiers.DN_DATE_OF_BIRTH.equals(attrType)) {
+        if (dateOfBirth != null) {
+          String timeStirng = dateOfBirth.getTimeString();
+          if (!SubjectDnSpec.PATTERN_DATE_OF_BIRTH.matcher(timeStirng).matches()) {
+            throw new BadCertTemplateException("invalid dateOfBirth " + timeStirng);
           }
-        } else if (ObjectIdentifiers.DN_PLACE_OF_BIRTH.equals(attrType)) {
-          if (placeOfBirth != null) {
-            ASN1Encodable attrVal = new DERUTF8String(placeOfBirth);
-            attrs.add(new Attribute(attrType, new DERSet(attrVal)));
-            continue;
+          attrs.add(new Attribute(attrType, new DERSet(dateOfBirth)));
+          continue;
+        }
+      } else if (ObjectIdentifiers.DN_PLACE_OF_BIRTH.equals(attrType)) {
+        if (placeOfBirth != null) {
+          ASN1Encodable attrVal = new DERUTF8String(placeOfBirth);
+          attrs.add(new Attribute(attrType, new DERSet(attrVal)));
+          continue;
+        }
+      } else if (ObjectIdentifiers.DN_GENDER.equals(attrType)) {
+        if (gender != null && !gender.isEmpty()) {
+          char ch = gender.charAt(0);
+          if (!(gender.length() == 1
+              && (ch == 'f' || ch == 'F' || ch == 'm' || ch == 'M'))) {
+            throw new BadCertTemplateException("invalid gender " + gender);
           }
-        } else if (ObjectIdentifiers.DN_GENDER.equals(attrType)) {
-          if (gender != null && !gender.isEmpty()) {
-            char ch = gender.charAt(0);
-            if (!(gender.length() == 1
-                && (ch == 'f' || ch == 'F' || ch == 'm' || ch == 'M'))) {
-              throw new BadCertTemplateException("invalid gender " + gender);
+          ASN1Encodable attrVal = new DERPrintableString(gender);
+          attrs.add(new Attribute(attrType, new DERSet(attrVal)));
+          continue;
+        }
+      } else if (ObjectIdentifiers.DN_COUNTRY_OF_CITIZENSHIP.equals(attrType)) {
+        if (!countryOfCitizenshipList.isEmpty()) {
+          for (String country : countryOfCitizenshipList) {
+            if (!SubjectDnSpec.isValidCountryAreaCode(country)) {
+              throw new BadCertTemplateException("invalid countryOfCitizenship code " + country);
             }
-            ASN1Encodable attrVal = new DERPrintableString(gender);
+            ASN1Encodable attrVal = new DERPrintableString(country);
             attrs.add(new Attribute(attrType, new DERSet(attrVal)));
-            continue;
           }
-        } else if (ObjectIdentifiers.DN_COUNTRY_OF_CITIZENSHIP.equals(attrType)) {
-          if (!countryOfCitizenshipList.isEmpty()) {
-            for (String country : countryOfCitizenshipList) {
-              if (!SubjectDnSpec.isValidCountryAreaCode(country)) {
-                throw new BadCertTemplateException("invalid countryOfCitizenship code " + country);
-              }
-              ASN1Encodable attrVal = new DERPrintableString(country);
-              attrs.add(new Attribute(attrType, new DERSet(attrVal)));
-            }
-            continue;
-          }
-        } else if (ObjectIdentifiers.DN_COUNTRY_OF_RESIDENCE.equals(attrType)) {
-          if (!countryOfResidenceList.isEmpty()) {
-            for (String country : countryOfResidenceList) {
-              if (!SubjectDnSpec.isValidCountryAreaCode(country)) {
-                throw new BadCertTemplateException("invalid countryOfResidence code " + country);
-              }
-              ASN1Encodable attrVal = new DERPrintableString(country);
-              attrs.add(new Attribute(attrType, new DERSet(attrVal)));
+          continue;
+        }
+      } else if (ObjectIdentifiers.DN_COUNTRY_OF_RESIDENCE.equals(attrType)) {
+        if (!countryOfResidenceList.isEmpty()) {
+          for (String country : countryOfResidenceList) {
+            if (!SubjectDnSpec.isValidCountryAreaCode(country)) {
+              throw new BadCertTemplateException("invalid countryOfResidence code " + country);
             }
-            continue;
-          }
-        } else if (otherAttrs.containsKey(attrType)) {
-          for (ASN1Encodable attrVal : otherAttrs.get(attrType)) {
+            ASN1Encodable attrVal = new DERPrintableString(country);
             attrs.add(new Attribute(attrType, new DERSet(attrVal)));
           }
-
           continue;
         }
+      } else if (otherAttrs.containsKey(attrType)) {
+        for (ASN1Encodable attrVal : otherAttrs.get(attrType)) {
+          attrs.add(new Attribute(attrType, new DERSet(attrVal)));
+        }
 
-        throw new BadCertTemplateException("could not process type " + attrType.getId()
-            + " in extension SubjectDirectoryAttributes");
+        continue;
       }
 
-      SubjectDirectoryAttributes subjDirAttrs = new SubjectDirectoryAttributes(attrs);
-      ExtensionValue extValue = new ExtensionValue(extensionControls.get(type).isCritical(),
-          subjDirAttrs);
-      values.addExtension(type, extValue);
-      occurences.remove(type);
+      throw new BadCertTemplateException("could not process type " + attrType.getId()
+          + " in extension SubjectDirectoryAttributes");
     }
 
-    // Basic Constraints
-    // processed by the CA
 
-    // Name Constraints
-    type = Extension.nameConstraints;
-    if (nameConstraints != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, nameConstraints);
-      }
-    }
+    SubjectDirectoryAttributes subjDirAttrs = new SubjectDirectoryAttributes(attrs);
+    return new ExtensionValue(extensionControls.get(type).isCritical(), subjDirAttrs);
+  } // method createSubjectDirectoryAttributes
 
-    // PolicyConstrains
-    type = Extension.policyConstraints;
-    if (policyConstraints != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, policyConstraints);
+  private ExtensionValue createAdmission(Extensions requestedExtensions)
+      throws BadCertTemplateException {
+    ASN1ObjectIdentifier type = ObjectIdentifiers.id_extension_admission;
+    Extension extension = (requestedExtensions == null) ? null
+        : requestedExtensions.getExtension(type);
+    if (extension == null) {
+      throw new BadCertTemplateException("No Admission extension is contained in the request");
+    }
+
+    Admissions[] reqAdmissions =
+        org.bouncycastle.asn1.isismtt.x509.AdmissionSyntax.getInstance(
+            extension.getParsedValue()).getContentsOfAdmissions();
+
+    final int n = reqAdmissions.length;
+    List<List<String>> reqRegNumsList = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      Admissions reqAdmission = reqAdmissions[i];
+      ProfessionInfo[] reqPis = reqAdmission.getProfessionInfos();
+      List<String> reqNums = new ArrayList<>(reqPis.length);
+      reqRegNumsList.add(reqNums);
+      for (ProfessionInfo reqPi : reqPis) {
+        String reqNum = reqPi.getRegistrationNumber();
+        reqNums.add(reqNum);
       }
     }
+    return admission.getExtensionValue(reqRegNumsList);
+  } // method createAdmission
 
-    // ExtendedKeyUsage
-    // processed by CA
-
-    // CRL Distribution Points
-    // processed by the CA
-
-    // Inhibit anyPolicy
-    type = Extension.inhibitAnyPolicy;
-    if (inhibitAnyPolicy != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, inhibitAnyPolicy);
+  private ExtensionValue createPrivateKeyUsagePeriod(Date notBefore, Date notAfter) {
+    Date tmpNotAfter;
+    if (privateKeyUsagePeriod == null) {
+      tmpNotAfter = notAfter;
+    } else {
+      tmpNotAfter = privateKeyUsagePeriod.add(notBefore);
+      if (tmpNotAfter.after(notAfter)) {
+        tmpNotAfter = notAfter;
       }
     }
 
-    // Freshest CRL
-    // processed by the CA
-
-    // Authority Information Access
-    // processed by the CA
-
-    // Subject Information Access
-    // processed by the CA
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    vec.add(new DERTaggedObject(false, 0, new DERGeneralizedTime(notBefore)));
+    vec.add(new DERTaggedObject(false, 1, new DERGeneralizedTime(tmpNotAfter)));
+    return new ExtensionValue(
+        extensionControls.get(Extension.privateKeyUsagePeriod).isCritical(),
+        new DERSequence(vec));
+  } // method createPrivateKeyUsagePeriod
+
+  private ExtensionValue createQcStatements(Extensions requestedExtensions)
+      throws BadCertTemplateException {
+    if (requestedExtensions == null) {
+      // without extensions in the request, the QCStatements are not added
+      return null;
+    }
 
-    // Admission
-    type = ObjectIdentifiers.id_extension_admission;
-    if (occurences.contains(type) && admission != null) {
-      if (admission.isInputFromRequestRequired()) {
-        Extension extension = (requestedExtensions == null) ? null
-            : requestedExtensions.getExtension(type);
-        if (extension == null) {
-          throw new BadCertTemplateException("No Admission extension is contained in the request");
-        }
+    ASN1ObjectIdentifier type = Extension.qCStatements;
+    // extract the euLimit data from request
+    Extension extension = requestedExtensions.getExtension(type);
+    if (extension == null) {
+      throw new BadCertTemplateException(
+          "No QCStatement extension is contained in the request");
+    }
+    ASN1Sequence seq = ASN1Sequence.getInstance(extension.getParsedValue());
 
-        Admissions[] reqAdmissions =
-            org.bouncycastle.asn1.isismtt.x509.AdmissionSyntax.getInstance(
-                extension.getParsedValue()).getContentsOfAdmissions();
-
-        final int n = reqAdmissions.length;
-        List<List<String>> reqRegNumsList = new ArrayList<>(n);
-        for (int i = 0; i < n; i++) {
-          Admissions reqAdmission = reqAdmissions[i];
-          ProfessionInfo[] reqPis = reqAdmission.getProfessionInfos();
-          List<String> reqNums = new ArrayList<>(reqPis.length);
-          reqRegNumsList.add(reqNums);
-          for (ProfessionInfo reqPi : reqPis) {
-            String reqNum = reqPi.getRegistrationNumber();
-            reqNums.add(reqNum);
-          }
-        }
-        values.addExtension(type, admission.getExtensionValue(reqRegNumsList));
-        occurences.remove(type);
-      } else {
-        values.addExtension(type, admission.getExtensionValue(null));
-        occurences.remove(type);
+    Map<String, int[]> qcEuLimits = new HashMap<>();
+    final int n = seq.size();
+    for (int i = 0; i < n; i++) {
+      QCStatement stmt = QCStatement.getInstance(seq.getObjectAt(i));
+      if (!ObjectIdentifiers.id_etsi_qcs_QcLimitValue.equals(stmt.getStatementId())) {
+        continue;
       }
-    }
 
-    // OCSP Nocheck
-    // processed by the CA
+      MonetaryValue monetaryValue = MonetaryValue.getInstance(
+          stmt.getStatementInfo());
+      int amount = monetaryValue.getAmount().intValue();
+      int exponent = monetaryValue.getExponent().intValue();
+      Iso4217CurrencyCode currency = monetaryValue.getCurrency();
+      String currencyS = currency.isAlphabetic()
+          ? currency.getAlphabetic().toUpperCase() : Integer.toString(currency.getNumeric());
+      qcEuLimits.put(currencyS, new int[]{amount, exponent});
+    }
 
-    // restriction
-    type = ObjectIdentifiers.id_extension_restriction;
-    if (restriction != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, restriction);
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    for (QcStatementOption m : qcStatementsOption) {
+      if (m.getStatement() != null) {
+        vec.add(m.getStatement());
+        continue;
       }
-    }
 
-    // AdditionalInformation
-    type = ObjectIdentifiers.id_extension_additionalInformation;
-    if (additionalInformation != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, additionalInformation);
+      MonetaryValueOption monetaryOption = m.getMonetaryValueOption();
+      String currencyS = monetaryOption.getCurrencyString();
+      int[] limit = qcEuLimits.get(currencyS);
+      if (limit == null) {
+        throw new BadCertTemplateException(
+            "no EuLimitValue is specified for currency '" + currencyS + "'");
       }
-    }
 
-    // ValidityModel
-    type = ObjectIdentifiers.id_extension_validityModel;
-    if (validityModel != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, validityModel);
+      int amount = limit[0];
+      Range2Type range = monetaryOption.getAmountRange();
+      if (amount < range.getMin() || amount > range.getMax()) {
+        throw new BadCertTemplateException("amount for currency '" + currencyS
+            + "' is not within [" + range.getMin() + ", " + range.getMax() + "]");
       }
-    }
 
-    // PrivateKeyUsagePeriod
-    type = Extension.privateKeyUsagePeriod;
-    if (occurences.contains(type)) {
-      Date tmpNotAfter;
-      if (privateKeyUsagePeriod == null) {
-        tmpNotAfter = notAfter;
-      } else {
-        tmpNotAfter = privateKeyUsagePeriod.add(notBefore);
-        if (tmpNotAfter.after(notAfter)) {
-          tmpNotAfter = notAfter;
-        }
+      int exponent = limit[1];
+      range = monetaryOption.getExponentRange();
+      if (exponent < range.getMin() || exponent > range.getMax()) {
+        throw new BadCertTemplateException("exponent for currency '" + currencyS
+            + "' is not within [" + range.getMin() + ", " + range.getMax() + "]");
       }
 
-      ASN1EncodableVector vec = new ASN1EncodableVector();
-      vec.add(new DERTaggedObject(false, 0, new DERGeneralizedTime(notBefore)));
-      vec.add(new DERTaggedObject(false, 1, new DERGeneralizedTime(tmpNotAfter)));
-      ExtensionValue extValue = new ExtensionValue(extensionControls.get(type).isCritical(),
-          new DERSequence(vec));
-      values.addExtension(type, extValue);
-      occurences.remove(type);
+      MonetaryValue monetaryVale = new MonetaryValue(monetaryOption.getCurrency(), amount,
+          exponent);
+      QCStatement qcStatment = new QCStatement(m.getStatementId(), monetaryVale);
+      vec.add(qcStatment);
     }
 
-    // QCStatements
-    type = Extension.qCStatements;
-    if (occurences.contains(type) && (qcStatments != null || qcStatementsOption != null)) {
-      if (qcStatments != null) {
-        values.addExtension(type, qcStatments);
-        occurences.remove(type);
-      } else if (requestedExtensions != null && qcStatementsOption != null) {
-        // extract the euLimit data from request
-        Extension extension = requestedExtensions.getExtension(type);
-        if (extension == null) {
-          throw new BadCertTemplateException(
-              "No QCStatement extension is contained in the request");
-        }
-        ASN1Sequence seq = ASN1Sequence.getInstance(extension.getParsedValue());
-
-        Map<String, int[]> qcEuLimits = new HashMap<>();
-        final int n = seq.size();
-        for (int i = 0; i < n; i++) {
-          QCStatement stmt = QCStatement.getInstance(seq.getObjectAt(i));
-          if (!ObjectIdentifiers.id_etsi_qcs_QcLimitValue.equals(stmt.getStatementId())) {
-            continue;
-          }
-
-          MonetaryValue monetaryValue = MonetaryValue.getInstance(
-              stmt.getStatementInfo());
-          int amount = monetaryValue.getAmount().intValue();
-          int exponent = monetaryValue.getExponent().intValue();
-          Iso4217CurrencyCode currency = monetaryValue.getCurrency();
-          String currencyS = currency.isAlphabetic()
-              ? currency.getAlphabetic().toUpperCase() : Integer.toString(currency.getNumeric());
-          qcEuLimits.put(currencyS, new int[]{amount, exponent});
-        }
 
-        ASN1EncodableVector vec = new ASN1EncodableVector();
-        for (QcStatementOption m : qcStatementsOption) {
-          if (m.getStatement() != null) {
-            vec.add(m.getStatement());
-            continue;
-          }
+    return new ExtensionValue(extensionControls.get(type).isCritical(), new DERSequence(vec));
+  } // method createQcStatements
 
-          MonetaryValueOption monetaryOption = m.getMonetaryValueOption();
-          String currencyS = monetaryOption.getCurrencyString();
-          int[] limit = qcEuLimits.get(currencyS);
-          if (limit == null) {
-            throw new BadCertTemplateException(
-                "no EuLimitValue is specified for currency '" + currencyS + "'");
-          }
-
-          int amount = limit[0];
-          Range2Type range = monetaryOption.getAmountRange();
-          if (amount < range.getMin() || amount > range.getMax()) {
-            throw new BadCertTemplateException("amount for currency '" + currencyS
-                + "' is not within [" + range.getMin() + ", " + range.getMax() + "]");
-          }
-
-          int exponent = limit[1];
-          range = monetaryOption.getExponentRange();
-          if (exponent < range.getMin() || exponent > range.getMax()) {
-            throw new BadCertTemplateException("exponent for currency '" + currencyS
-                + "' is not within [" + range.getMin() + ", " + range.getMax() + "]");
-          }
-
-          MonetaryValue monetaryVale = new MonetaryValue(monetaryOption.getCurrency(), amount,
-              exponent);
-          QCStatement qcStatment = new QCStatement(m.getStatementId(), monetaryVale);
-          vec.add(qcStatment);
-        }
-
-        ExtensionValue extValue = new ExtensionValue(extensionControls.get(type).isCritical(),
-            new DERSequence(vec));
-        values.addExtension(type, extValue);
-        occurences.remove(type);
-      } else {
-        throw new IllegalStateException("should not reach here");
-      }
+  private ExtensionValue createBiometricInfo(Extensions requestedExtensions)
+      throws CertprofileException, BadCertTemplateException {
+    ASN1ObjectIdentifier type = Extension.biometricInfo;
+    Extension extension = (requestedExtensions == null) ? null
+        : requestedExtensions.getExtension(type);
+    if (extension == null) {
+      throw new BadCertTemplateException(
+          "no biometricInfo extension is contained in the request");
+    }
+    ASN1Sequence seq = ASN1Sequence.getInstance(extension.getParsedValue());
+    final int n = seq.size();
+    if (n < 1) {
+      throw new BadCertTemplateException(
+          "biometricInfo extension in request contains empty sequence");
     }
 
-    // BiometricData
-    type = Extension.biometricInfo;
-    if (occurences.contains(type) && biometricInfo != null) {
-      Extension extension = (requestedExtensions == null) ? null
-          : requestedExtensions.getExtension(type);
-      if (extension == null) {
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+
+    for (int i = 0; i < n; i++) {
+      BiometricData bd = BiometricData.getInstance(seq.getObjectAt(i));
+      TypeOfBiometricData bdType = bd.getTypeOfBiometricData();
+      if (!biometricInfo.isTypePermitted(bdType)) {
         throw new BadCertTemplateException(
-            "no biometricInfo extension is contained in the request");
+            "biometricInfo[" + i + "].typeOfBiometricData is not permitted");
       }
-      ASN1Sequence seq = ASN1Sequence.getInstance(extension.getParsedValue());
-      final int n = seq.size();
-      if (n < 1) {
+
+      ASN1ObjectIdentifier hashAlgo = bd.getHashAlgorithm().getAlgorithm();
+      if (!biometricInfo.isHashAlgorithmPermitted(hashAlgo)) {
         throw new BadCertTemplateException(
-            "biometricInfo extension in request contains empty sequence");
+            "biometricInfo[" + i + "].hashAlgorithm is not permitted");
       }
 
-      ASN1EncodableVector vec = new ASN1EncodableVector();
-
-      for (int i = 0; i < n; i++) {
-        BiometricData bd = BiometricData.getInstance(seq.getObjectAt(i));
-        TypeOfBiometricData bdType = bd.getTypeOfBiometricData();
-        if (!biometricInfo.isTypePermitted(bdType)) {
-          throw new BadCertTemplateException(
-              "biometricInfo[" + i + "].typeOfBiometricData is not permitted");
-        }
-
-        ASN1ObjectIdentifier hashAlgo = bd.getHashAlgorithm().getAlgorithm();
-        if (!biometricInfo.isHashAlgorithmPermitted(hashAlgo)) {
-          throw new BadCertTemplateException(
-              "biometricInfo[" + i + "].hashAlgorithm is not permitted");
-        }
-
-        int expHashValueSize;
-        try {
-          expHashValueSize = AlgorithmUtil.getHashOutputSizeInOctets(hashAlgo);
-        } catch (NoSuchAlgorithmException ex) {
-          throw new CertprofileException("should not happen, unknown hash algorithm " + hashAlgo);
-        }
-
-        byte[] hashValue = bd.getBiometricDataHash().getOctets();
-        if (hashValue.length != expHashValueSize) {
-          throw new BadCertTemplateException(
-              "biometricInfo[" + i + "].biometricDataHash has incorrect length");
-        }
-
-        DERIA5String sourceDataUri = bd.getSourceDataUri();
-        switch (biometricInfo.getSourceDataUriOccurrence()) {
-          case forbidden:
-            sourceDataUri = null;
-            break;
-          case required:
-            if (sourceDataUri == null) {
-              throw new BadCertTemplateException("biometricInfo[" + i
-                + "].sourceDataUri is not specified in request but is required");
-            }
-            break;
-          case optional:
-            break;
-          default:
-            throw new BadCertTemplateException("could not reach here, unknown tripleState");
-        }
-
-        AlgorithmIdentifier newHashAlg = new AlgorithmIdentifier(hashAlgo, DERNull.INSTANCE);
-        BiometricData newBiometricData = new BiometricData(bdType, newHashAlg,
-            new DEROctetString(hashValue), sourceDataUri);
-        vec.add(newBiometricData);
+      int expHashValueSize;
+      try {
+        expHashValueSize = AlgorithmUtil.getHashOutputSizeInOctets(hashAlgo);
+      } catch (NoSuchAlgorithmException ex) {
+        throw new CertprofileException("should not happen, unknown hash algorithm " + hashAlgo);
       }
 
-      ExtensionValue extValue = new ExtensionValue(extensionControls.get(type).isCritical(),
-          new DERSequence(vec));
-      values.addExtension(type, extValue);
-      occurences.remove(type);
-    }
-
-    // TlsFeature
-    type = ObjectIdentifiers.id_pe_tlsfeature;
-    if (tlsFeature != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, tlsFeature);
+      byte[] hashValue = bd.getBiometricDataHash().getOctets();
+      if (hashValue.length != expHashValueSize) {
+        throw new BadCertTemplateException(
+            "biometricInfo[" + i + "].biometricDataHash has incorrect length");
       }
-    }
 
-    // AuthorizationTemplate
-    type = ObjectIdentifiers.id_xipki_ext_authorizationTemplate;
-    if (authorizationTemplate != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, authorizationTemplate);
+      DERIA5String sourceDataUri = bd.getSourceDataUri();
+      switch (biometricInfo.getSourceDataUriOccurrence()) {
+        case forbidden:
+          sourceDataUri = null;
+          break;
+        case required:
+          if (sourceDataUri == null) {
+            throw new BadCertTemplateException("biometricInfo[" + i
+              + "].sourceDataUri is not specified in request but is required");
+          }
+          break;
+        case optional:
+          break;
+        default:
+          throw new BadCertTemplateException("could not reach here, unknown tripleState");
       }
-    }
 
-    // SMIME
-    type = ObjectIdentifiers.id_smimeCapabilities;
-    if (smimeCapabilities != null) {
-      if (occurences.remove(type)) {
-        values.addExtension(type, smimeCapabilities);
-      }
+      AlgorithmIdentifier newHashAlg = new AlgorithmIdentifier(hashAlgo, DERNull.INSTANCE);
+      BiometricData newBiometricData = new BiometricData(bdType, newHashAlg,
+          new DEROctetString(hashValue), sourceDataUri);
+      vec.add(newBiometricData);
     }
 
-    // constant extensions
-    if (constantExtensions != null) {
-      for (ASN1ObjectIdentifier m : constantExtensions.keySet()) {
-        if (!occurences.remove(m)) {
-          continue;
-        }
 
-        ExtensionValue extensionValue = constantExtensions.get(m);
-        if (extensionValue != null) {
-          values.addExtension(m, extensionValue);
-        }
-      }
-    }
-
-    ExtensionValues extraExtensions = getExtraExtensions(extensionOccurences, requestedSubject,
-        grantedSubject, requestedExtensions, notBefore, notAfter, caInfo);
-    if (extraExtensions != null) {
-      for (ASN1ObjectIdentifier m : extraExtensions.getExtensionTypes()) {
-        values.addExtension(m, extraExtensions.getExtensionValue(m));
-      }
-    }
-    return values;
-  } // method getExtensions
+    return new ExtensionValue(extensionControls.get(type).isCritical(), new DERSequence(vec));
+  } // method createBiometricInfo
 
   protected ExtensionValues getExtraExtensions(
       Map<ASN1ObjectIdentifier, ExtensionControl> extensionOccurences,
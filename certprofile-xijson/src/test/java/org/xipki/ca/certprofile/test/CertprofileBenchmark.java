@@ -0,0 +1,145 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.certprofile.test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.BadCertTemplateException;
+import org.xipki.ca.api.profile.Certprofile.ExtensionControl;
+import org.xipki.ca.api.profile.ExtensionValue;
+import org.xipki.ca.api.profile.ExtensionValues;
+import org.xipki.ca.certprofile.xijson.XijsonCertprofile;
+
+/**
+ * Microbenchmark of {@link XijsonCertprofile#getExtensions} over the sample profiles.
+ * Compares the pre-encoded extensions of the execution plan with encoding every
+ * extension value again for each certificate.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CertprofileBenchmark {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertprofileBenchmark.class);
+
+  private static final String PROFILES_DIR =
+      "../assemblies/xipki-qa/src/main/unfiltered/xipki/qa/certprofile";
+
+  private static final int ROUNDS = 5;
+
+  private static final int ITERATIONS = 20000;
+
+  private final X500Name subject = new X500Name("CN=benchmark.example.org,O=example,C=DE");
+
+  private final Date notBefore = new Date();
+
+  private final Date notAfter = new Date(notBefore.getTime() + 365L * 24 * 3600 * 1000);
+
+  private long sink;
+
+  @Test
+  public void benchmark() throws Exception {
+    File[] files = new File(PROFILES_DIR).listFiles((dir, name) -> name.endsWith(".json"));
+    Assume.assumeTrue(files != null && files.length > 0);
+    Arrays.sort(files);
+
+    Map<String, XijsonCertprofile> profiles = new LinkedHashMap<>();
+    for (File file : files) {
+      XijsonCertprofile profile = new XijsonCertprofile();
+      profile.initialize(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+      try {
+        checkEncoding(getExtensions(profile));
+      } catch (BadCertTemplateException ex) {
+        // profile requires content from the request
+        profile.close();
+        continue;
+      }
+      profiles.put(file.getName(), profile);
+    }
+
+    Assume.assumeTrue(!profiles.isEmpty());
+
+    for (int round = 0; round < ROUNDS; round++) {
+      long planNanos = 0;
+      long reencodeNanos = 0;
+      for (XijsonCertprofile profile : profiles.values()) {
+        // alternate both variants to reduce the JIT bias
+        planNanos += run(profile, false);
+        reencodeNanos += run(profile, true);
+      }
+
+      long ops = (long) ITERATIONS * profiles.size();
+      LOG.info("round {}: {} profiles, pre-encoded {} ops/s, re-encoded {} ops/s",
+          round + 1, profiles.size(), ops * 1000000000L / Math.max(1, planNanos),
+          ops * 1000000000L / Math.max(1, reencodeNanos));
+    }
+
+    for (XijsonCertprofile profile : profiles.values()) {
+      profile.close();
+    }
+  }
+
+  private long run(XijsonCertprofile profile, boolean reencode) throws Exception {
+    long sum = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      ExtensionValues values = getExtensions(profile);
+      for (ASN1ObjectIdentifier type : values.getExtensionTypes()) {
+        ExtensionValue value = values.getExtensionValue(type);
+        byte[] encoded = reencode
+            ? value.getValue().toASN1Primitive().getEncoded(ASN1Encoding.DER)
+            : value.getEncoded();
+        sum += encoded.length;
+      }
+    }
+    long duration = System.nanoTime() - start;
+    // prevent the JIT from eliminating the encoding
+    sink += sum;
+    return duration;
+  }
+
+  private ExtensionValues getExtensions(XijsonCertprofile profile) throws Exception {
+    Map<ASN1ObjectIdentifier, ExtensionControl> controls = profile.getExtensionControls();
+    return profile.getExtensions(controls, subject, subject, null, notBefore, notAfter, null);
+  }
+
+  private static void checkEncoding(ExtensionValues values) throws Exception {
+    for (ASN1ObjectIdentifier type : values.getExtensionTypes()) {
+      ExtensionValue value = values.getExtensionValue(type);
+      Assert.assertArrayEquals("encoding of " + type.getId(),
+          value.getValue().toASN1Primitive().getEncoded(ASN1Encoding.DER), value.getEncoded());
+    }
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ca.certprofile.test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.qualified.Iso4217CurrencyCode;
+import org.bouncycastle.asn1.x509.qualified.MonetaryValue;
+import org.bouncycastle.asn1.x509.qualified.QCStatement;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.xipki.ca.api.BadCertTemplateException;
+import org.xipki.ca.api.profile.ExtensionValue;
+import org.xipki.ca.api.profile.ExtensionValues;
+import org.xipki.ca.certprofile.xijson.XijsonCertprofile;
+import org.xipki.security.ObjectIdentifiers;
+import org.xipki.util.Base64;
+
+/**
+ * Checks that the execution plan of {@link XijsonCertprofile} generates the same extensions
+ * as the 5.0.0 implementation. The expected extensions of each sample profile have been
+ * generated once by the 5.0.0 implementation and are stored in the directory
+ * {@code src/test/resources/extensions}, one line {@code <OID> <criticality> <DER in base64>}
+ * per extension, or the line {@code rejected <message>}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class ExtensionPlanTest {
+
+  private static final String PROFILES_DIR =
+      "../assemblies/xipki-qa/src/main/unfiltered/xipki/qa/certprofile";
+
+  private static final String EXPECTED_DIR = "src/test/resources/extensions";
+
+  private static final String REJECTED = "rejected ";
+
+  private final X500Name subject = new X500Name("CN=test.example.org,O=example,C=DE");
+
+  // fixed validity, the expected PrivateKeyUsagePeriod depends on it
+  private final Date notBefore = new Date(1546300800000L); // 2019-01-01T00:00:00Z
+
+  private final Date notAfter = new Date(notBefore.getTime() + 365L * 24 * 3600 * 1000);
+
+  @Test
+  public void testSampleProfiles() throws Exception {
+    File[] files = new File(PROFILES_DIR).listFiles((dir, name) -> name.endsWith(".json"));
+    Assume.assumeTrue(files != null && files.length > 0);
+
+    for (File file : files) {
+      String name = file.getName().substring(0, file.getName().length() - ".json".length());
+      assertExtensions(name, readFile(file), null);
+    }
+  }
+
+  @Test
+  public void testQcStatementsFromRequest() throws Exception {
+    File file = new File(PROFILES_DIR, "certprofile-qc.json");
+    Assume.assumeTrue(file.exists());
+
+    // the amount of the EuLimitValue is taken from the request
+    String conf = readFile(file).replaceFirst("\"max\":100\\b", "\"max\":1000");
+
+    QCStatement limit = new QCStatement(ObjectIdentifiers.id_etsi_qcs_QcLimitValue,
+        new MonetaryValue(new Iso4217CurrencyCode("EUR"), 500, 10));
+    Extensions qcRequest = new Extensions(new Extension(Extension.qCStatements, false,
+        new DERSequence(limit).getEncoded()));
+
+    // no extensions in the request: QCStatements are not added. The 5.0.0 implementation
+    // fails with IllegalStateException in this case, hence no expected extensions.
+    XijsonCertprofile profile = new XijsonCertprofile();
+    try {
+      profile.initialize(conf);
+      Assert.assertFalse(getExtensions(profile, null).containsExtension(Extension.qCStatements));
+    } finally {
+      profile.close();
+    }
+
+    assertExtensions("certprofile-qc-limit-requested", conf, qcRequest);
+
+    // extensions in the request, but without QCStatements
+    Extensions otherRequest = new Extensions(new Extension(
+        Extension.subjectKeyIdentifier, false, new byte[]{4, 1, 0}));
+    assertExtensions("certprofile-qc-limit-missing", conf, otherRequest);
+  }
+
+  private void assertExtensions(String name, String conf, Extensions requestedExtensions)
+      throws Exception {
+    Map<String, String> expected = new LinkedHashMap<>();
+    String expectedRejection = null;
+    for (String line : Files.readAllLines(new File(EXPECTED_DIR, name + ".txt").toPath(),
+        StandardCharsets.UTF_8)) {
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      } else if (line.startsWith(REJECTED)) {
+        expectedRejection = line.substring(REJECTED.length());
+      } else {
+        int idx = line.indexOf(' ');
+        expected.put(line.substring(0, idx), line.substring(idx + 1));
+      }
+    }
+
+    XijsonCertprofile profile = new XijsonCertprofile();
+    try {
+      profile.initialize(conf);
+
+      ExtensionValues values;
+      try {
+        values = getExtensions(profile, requestedExtensions);
+      } catch (BadCertTemplateException ex) {
+        Assert.assertEquals(name + ": rejected only by the execution plan",
+            expectedRejection, ex.getMessage());
+        return;
+      }
+
+      Assert.assertNull(name + ": not rejected by the execution plan", expectedRejection);
+
+      Map<String, String> actual = new LinkedHashMap<>();
+      for (ASN1ObjectIdentifier type : values.getExtensionTypes()) {
+        ExtensionValue value = values.getExtensionValue(type);
+        actual.put(type.getId(), (value.isCritical() ? "critical " : "noncritical ")
+            + Base64.encodeToString(value.getEncoded()));
+      }
+      Assert.assertEquals(name, expected, actual);
+    } finally {
+      profile.close();
+    }
+  }
+
+  private ExtensionValues getExtensions(XijsonCertprofile profile,
+      Extensions requestedExtensions) throws Exception {
+    return profile.getExtensions(profile.getExtensionControls(), subject, subject,
+        requestedExtensions, notBefore, notAfter, null);
+  }
+
+  private static String readFile(File file) throws Exception {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.xipki.util.Args;
+import org.xipki.util.Base64;
+import org.xipki.util.StringUtil;
+
+/**
+ * Column containing binary data such as certificates and OCSP responses. The data is stored
+ * either in a binary column (BLOB, BYTEA, VARBINARY) or, in the default layout, as Base64 text.
+ * The layout is detected per database from the JDBC type of the column.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public final class BinaryColumn {
+
+  private final String name;
+
+  private final boolean binary;
+
+  private BinaryColumn(String name, boolean binary) {
+    this.name = name;
+    this.binary = binary;
+  }
+
+  /**
+   * Detects the layout of the given column.
+   * @param datasource datasource containing the table.
+   * @param conn connection to use. {@code null} to borrow one from the datasource.
+   * @param table name of the table.
+   * @param column name of the column.
+   * @return the column.
+   * @throws DataAccessException if the column could not be read.
+   */
+  public static BinaryColumn detect(DataSourceWrapper datasource, Connection conn, String table,
+      String column) throws DataAccessException {
+    Args.notNull(datasource, "datasource");
+    Args.notBlank(table, "table");
+    Args.notBlank(column, "column");
+
+    final String sql = datasource.buildSelectFirstSql(1,
+        StringUtil.concat(column, " FROM ", table));
+    Statement stmt = (conn == null) ? datasource.createStatement()
+        : datasource.createStatement(conn);
+    ResultSet rs = null;
+    try {
+      rs = stmt.executeQuery(sql);
+      int type = rs.getMetaData().getColumnType(1);
+      boolean binary = type == Types.BINARY || type == Types.VARBINARY
+          || type == Types.LONGVARBINARY || type == Types.BLOB;
+      return new BinaryColumn(column, binary);
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(stmt, rs, conn == null);
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isBinary() {
+    return binary;
+  }
+
+  /**
+   * Reads the binary data of this column from the current row.
+   * @param rs the result set.
+   * @return the binary data, or {@code null} if the value is SQL NULL.
+   * @throws SQLException if database access error occurs.
+   */
+  public byte[] get(ResultSet rs) throws SQLException {
+    if (binary) {
+      return rs.getBytes(name);
+    } else {
+      String str = rs.getString(name);
+      return (str == null) ? null : Base64.decodeFast(str);
+    }
+  }
+
+  /**
+   * Reads the Base64 encoded data of this column from the current row.
+   * @param rs the result set.
+   * @return the Base64 encoded data, or {@code null} if the value is SQL NULL.
+   * @throws SQLException if database access error occurs.
+   */
+  public String getBase64(ResultSet rs) throws SQLException {
+    if (binary) {
+      byte[] bytes = rs.getBytes(name);
+      return (bytes == null) ? null : Base64.encodeToString(bytes);
+    } else {
+      return rs.getString(name);
+    }
+  }
+
+  /**
+   * Sets the parameter for this column.
+   * @param ps the prepared statement.
+   * @param index index of the parameter.
+   * @param value binary data. May be {@code null}.
+   * @throws SQLException if database access error occurs.
+   */
+  public void set(PreparedStatement ps, int index, byte[] value) throws SQLException {
+    if (value == null) {
+      ps.setNull(index, binary ? Types.VARBINARY : Types.VARCHAR);
+    } else if (binary) {
+      ps.setBytes(index, value);
+    } else {
+      ps.setString(index, Base64.encodeToString(value));
+    }
+  }
+
+}
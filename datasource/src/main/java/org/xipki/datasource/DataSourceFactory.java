@@ -88,39 +88,34 @@ public class DataSourceFactory {
       }
     }
 
-    String password = conf.getProperty("password");
-    if (password != null) {
-      if (passwordResolver != null) {
-        password = new String(passwordResolver.resolvePassword(password));
-      }
-      conf.setProperty("password", password);
-    }
-
-    password = conf.getProperty("dataSource.password");
-    if (password != null) {
-      if (passwordResolver != null) {
-        password = new String(passwordResolver.resolvePassword(password));
-      }
-      conf.setProperty("dataSource.password", password);
-    }
-
-    /*
-     * Expand the file path like
-     *   dataSource.url = jdbc:h2:~/xipki/db/h2/ocspcrl
-     *   dataSource.url = jdbc:hsqldb:file:~/xipki/db/hsqldb/ocspcache;sql.syntax_pgs=true
-     */
-    String dataSourceUrl = conf.getProperty("dataSource.url");
-    if (dataSourceUrl != null) {
-      String newUrl = null;
-      if (dataSourceUrl.startsWith("jdbc:h2:~")) {
-        newUrl = "jdbc:h2:" + IoUtil.expandFilepath(
-                    dataSourceUrl.substring("jdbc:h2:".length()));
-      } else if (dataSourceUrl.startsWith("jdbc:hsqldb:file:~")) {
-        newUrl = "jdbc:h2:" + IoUtil.expandFilepath(
-                    dataSourceUrl.substring("jdbc:hsqldb:file:".length()));
-      }
-      if (newUrl != null) {
-        conf.setProperty("dataSource.url", newUrl);
+    for (String key : conf.stringPropertyNames()) {
+      // replica.<n>.password and replica.<n>.dataSource.password for the replicas
+      String propName = key.startsWith("replica.")
+          ? key.substring(key.indexOf('.', "replica.".length()) + 1) : key;
+
+      if ("password".equals(propName) || "dataSource.password".equals(propName)) {
+        if (passwordResolver != null) {
+          String password = conf.getProperty(key);
+          conf.setProperty(key, new String(passwordResolver.resolvePassword(password)));
+        }
+      } else if ("dataSource.url".equals(propName)) {
+        /*
+         * Expand the file path like
+         *   dataSource.url = jdbc:h2:~/xipki/db/h2/ocspcrl
+         *   dataSource.url = jdbc:hsqldb:file:~/xipki/db/hsqldb/ocspcache;sql.syntax_pgs=true
+         */
+        String dataSourceUrl = conf.getProperty(key);
+        String newUrl = null;
+        if (dataSourceUrl.startsWith("jdbc:h2:~")) {
+          newUrl = "jdbc:h2:" + IoUtil.expandFilepath(
+                      dataSourceUrl.substring("jdbc:h2:".length()));
+        } else if (dataSourceUrl.startsWith("jdbc:hsqldb:file:~")) {
+          newUrl = "jdbc:h2:" + IoUtil.expandFilepath(
+                      dataSourceUrl.substring("jdbc:hsqldb:file:".length()));
+        }
+        if (newUrl != null) {
+          conf.setProperty(key, newUrl);
+        }
       }
     }
 
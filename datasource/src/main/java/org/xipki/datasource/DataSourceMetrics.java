@@ -0,0 +1,85 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import java.util.Map;
+
+/**
+ * SPI to collect the metrics of a {@link DataSourceWrapper}. The methods are called for
+ * every borrowed connection and for every statement executed via
+ * {@link DataSourceWrapper#executeQuery(java.sql.PreparedStatement, String)} and its
+ * siblings, and must therefore be cheap and thread-safe.
+ *
+ * <p>Statements executed directly on the JDBC objects are not recorded. The online paths
+ * execute their statements via the wrapper: the CA certificate store, the CA management
+ * queries, the OCSP database store, the OCSP response cacher and the CRL import. Not
+ * covered are the few plain {@link java.sql.Statement}s (e.g. locking the CA system,
+ * reading the alias and ID tables at startup) and the offline tools, e.g. the database
+ * export, import and diff tools and the certificate status snapshot generator.
+ *
+ * <p>An implementation is selected by the datasource property {@code metrics}, with the
+ * value {@code false} (default, no metrics), {@code true} ({@link DfltDataSourceMetrics})
+ * or the name of a class with a public no-argument constructor.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public interface DataSourceMetrics {
+
+  /**
+   * Records the time a thread has waited for a connection from the pool.
+   * @param nanos wait time in nanoseconds.
+   */
+  void recordConnectionAcquired(long nanos);
+
+  /**
+   * Records that no connection could be borrowed within the connection timeout.
+   */
+  void recordConnectionTimeout();
+
+  /**
+   * Records the time a connection has been borrowed from the pool.
+   * @param millis usage time in milliseconds.
+   */
+  void recordConnectionUsage(long millis);
+
+  /**
+   * Records the execution of a statement.
+   * @param sql the normalized SQL.
+   * @param nanos execution time in nanoseconds.
+   * @param failed whether the execution failed.
+   */
+  void recordExecution(String sql, long nanos, boolean failed);
+
+  /**
+   * Records the number of rows updated by a statement.
+   * @param sql the normalized SQL.
+   * @param rows number of rows.
+   */
+  void recordRows(String sql, long rows);
+
+  /**
+   * Returns the collected metrics.
+   * @return the metrics, which can be serialized as JSON.
+   */
+  Map<String, Object> getStatuses();
+
+  void reset();
+
+}
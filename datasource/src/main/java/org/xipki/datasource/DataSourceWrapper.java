@@ -25,8 +25,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -208,6 +215,13 @@ public abstract class DataSourceWrapper implements Closeable {
       return true;
     }
 
+    @Override
+    protected String getReplicaLagQuery() {
+      return "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+          + " ELSE CAST(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) AS BIGINT)"
+          + " END";
+    }
+
     @Override
     protected String getSqlToDropPrimaryKey(String primaryKeyName, String table) {
       return StringUtil.concat("DO $$ DECLARE constraint_name varchar;\n",
@@ -366,6 +380,20 @@ public abstract class DataSourceWrapper implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(DataSourceWrapper.class);
 
+  /**
+   * Default number of cached prepared statements per connection, the cache is disabled
+   * by default.
+   */
+  private static final int DFLT_STATEMENT_CACHE_SIZE = 0;
+
+  private static final String REPLICA_PREFIX = "replica.";
+
+  private static final String REPLICA_CHECK_INTERVAL = "replica.checkInterval";
+
+  private static final String REPLICA_MAX_LAG = "replica.maxLag";
+
+  private static final String REPLICA_LAG_QUERY = "replica.lagQuery";
+
   /**
    * References the real data source implementation this class acts as pure
    * proxy for. Derived classes must set this field at construction time.
@@ -386,6 +414,16 @@ public abstract class DataSourceWrapper implements Closeable {
 
   private final LruCache<String, String> cacheSeqNameSqls;
 
+  private List<ReplicaDataSource> replicas = Collections.emptyList();
+
+  private final AtomicInteger replicaOffset = new AtomicInteger();
+
+  private ScheduledThreadPoolExecutor replicaChecker;
+
+  private DataSourceMetrics metrics;
+
+  private StatementCache statementCache;
+
   private DataSourceWrapper(String name, HikariDataSource service, DatabaseType dbType) {
     this.service = Args.notNull(service, "service");
     this.databaseType = Args.notNull(dbType, "dbType");
@@ -425,6 +463,59 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   }
 
+  /**
+   * Gets a connection for read-only access. The connection is taken from the healthy
+   * replica with the least active connections, and from the primary database if no
+   * replica is configured or available. Since the replicas may lag behind the primary
+   * database, this method shall not be used to read data just written.
+   *
+   * @return a connection for read-only access.
+   * @throws DataAccessException
+   *         if no connection could be created.
+   */
+  public final Connection getReadOnlyConnection() throws DataAccessException {
+    ReplicaDataSource replica = selectReplica();
+    if (replica != null) {
+      try {
+        return replica.getConnection();
+      } catch (SQLException ex) {
+        LOG.warn("datasource {} could not get connection from replica {}, use the primary: {}",
+            name, replica.getName(), ex.getMessage());
+      }
+    }
+
+    return getConnection();
+  }
+
+  public final boolean hasReplicas() {
+    return !replicas.isEmpty();
+  }
+
+  private ReplicaDataSource selectReplica() {
+    final int size = replicas.size();
+    if (size == 0) {
+      return null;
+    }
+
+    // rotate the start position to distribute the load among replicas with equal load
+    int offset = (replicaOffset.getAndIncrement() & 0x7FFFFFFF) % size;
+    ReplicaDataSource ret = null;
+    int minActive = Integer.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      ReplicaDataSource m = replicas.get((offset + i) % size);
+      if (!m.isHealthy()) {
+        continue;
+      }
+
+      int active = m.getActiveConnections();
+      if (active < minActive) {
+        minActive = active;
+        ret = m;
+      }
+    }
+    return ret;
+  }
+
   public void returnConnection(Connection conn) {
     if (conn == null) {
       return;
@@ -443,6 +534,18 @@ public abstract class DataSourceWrapper implements Closeable {
 
   @Override
   public void close() {
+    if (replicaChecker != null) {
+      replicaChecker.shutdownNow();
+    }
+
+    if (statementCache != null) {
+      statementCache.close();
+    }
+
+    for (ReplicaDataSource replica : replicas) {
+      replica.close();
+    }
+
     try {
       service.close();
     } catch (RuntimeException ex) {
@@ -495,7 +598,7 @@ public abstract class DataSourceWrapper implements Closeable {
 
     boolean succ = false;
     try {
-      PreparedStatement ps = conn.prepareStatement(sqlQuery);
+      PreparedStatement ps = prepareCachedStatement(conn, sqlQuery);
       succ = true;
       return ps;
     } catch (SQLException ex) {
@@ -507,6 +610,137 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   }
 
+  /**
+   * Prepares a statement for read-only access.
+   * @see #getReadOnlyConnection()
+   * @param sqlQuery the SQL query.
+   * @return the prepared statement
+   * @throws DataAccessException
+   *         if database error occurs.
+   */
+  public PreparedStatement prepareReadOnlyStatement(String sqlQuery) throws DataAccessException {
+    Connection conn = getReadOnlyConnection();
+
+    boolean succ = false;
+    try {
+      PreparedStatement ps = prepareCachedStatement(conn, sqlQuery);
+      succ = true;
+      return ps;
+    } catch (SQLException ex) {
+      throw translate(sqlQuery, ex);
+    } finally {
+      if (!succ) {
+        returnConnection(conn);
+      }
+    }
+  }
+
+  private PreparedStatement prepareCachedStatement(Connection conn, String sqlQuery)
+      throws SQLException {
+    // Statements prepared on the physical connection are invisible to the pool, which
+    // would not roll back their uncommitted changes.
+    if (statementCache != null && conn.getAutoCommit()) {
+      return statementCache.prepareStatement(conn, sqlQuery);
+    } else {
+      return conn.prepareStatement(sqlQuery);
+    }
+  }
+
+  /**
+   * Executes the query of the prepared statement, and records the execution in the metrics
+   * if enabled.
+   * @param ps the prepared statement.
+   * @param sql the SQL of the prepared statement.
+   * @return the result of {@link PreparedStatement#executeQuery()}.
+   * @throws SQLException
+   *         if database error occurs.
+   */
+  public ResultSet executeQuery(PreparedStatement ps, String sql) throws SQLException {
+    if (metrics == null) {
+      return ps.executeQuery();
+    }
+
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      ResultSet rs = ps.executeQuery();
+      failed = false;
+      return rs;
+    } finally {
+      metrics.recordExecution(StatementMetrics.normalize(sql), System.nanoTime() - start,
+          failed);
+    }
+  }
+
+  /**
+   * Executes the update of the prepared statement, and records the execution and the
+   * number of updated rows in the metrics if enabled.
+   * @param ps the prepared statement.
+   * @param sql the SQL of the prepared statement.
+   * @return the result of {@link PreparedStatement#executeUpdate()}.
+   * @throws SQLException
+   *         if database error occurs.
+   */
+  public int executeUpdate(PreparedStatement ps, String sql) throws SQLException {
+    if (metrics == null) {
+      return ps.executeUpdate();
+    }
+
+    String normalizedSql = StatementMetrics.normalize(sql);
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      int rows = ps.executeUpdate();
+      failed = false;
+      metrics.recordRows(normalizedSql, rows);
+      return rows;
+    } finally {
+      metrics.recordExecution(normalizedSql, System.nanoTime() - start, failed);
+    }
+  }
+
+  /**
+   * Executes the batch of the prepared statement, and records the execution and the
+   * number of updated rows in the metrics if enabled.
+   * @param ps the prepared statement.
+   * @param sql the SQL of the prepared statement.
+   * @return the result of {@link PreparedStatement#executeBatch()}.
+   * @throws SQLException
+   *         if database error occurs.
+   */
+  public int[] executeBatch(PreparedStatement ps, String sql) throws SQLException {
+    if (metrics == null) {
+      return ps.executeBatch();
+    }
+
+    String normalizedSql = StatementMetrics.normalize(sql);
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      int[] counts = ps.executeBatch();
+      failed = false;
+      long rows = 0;
+      for (int m : counts) {
+        // SUCCESS_NO_INFO and EXECUTE_FAILED are negative
+        if (m > 0) {
+          rows += m;
+        }
+      }
+      metrics.recordRows(normalizedSql, rows);
+      return counts;
+    } finally {
+      metrics.recordExecution(normalizedSql, System.nanoTime() - start, failed);
+    }
+  }
+
+  /**
+   * Returns the metrics of the connection pool and statements.
+   * @return the metrics, or {@code null} if disabled.
+   */
+  public DataSourceMetrics getMetrics() {
+    return metrics;
+  }
+
   public void releaseResources(Statement ps, ResultSet rs) {
     releaseResources(ps, rs, true);
   }
@@ -548,6 +782,14 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   }
 
+  /**
+   * Returns the SQL query to determine the replication lag of a replica in seconds.
+   * @return the SQL query, or {@code null} if not known for this database.
+   */
+  protected String getReplicaLagQuery() {
+    return null;
+  }
+
   public String buildSelectFirstSql(int rows, String coreSql) {
     return buildSelectFirstSql(rows, null, coreSql);
   }
@@ -1162,27 +1404,149 @@ public abstract class DataSourceWrapper implements Closeable {
         || databaseType == DatabaseType.HSQL || databaseType == DatabaseType.MYSQL
         || databaseType == DatabaseType.MARIADB || databaseType == DatabaseType.ORACLE
         || databaseType == DatabaseType.POSTGRES) {
+      // replica.<n>.<property> overwrites the property of the primary database for replica n
+      Properties replicaConf = new Properties();
+      for (String key : props.stringPropertyNames()) {
+        if (key.startsWith(REPLICA_PREFIX)) {
+          replicaConf.setProperty(key, props.getProperty(key));
+          props.remove(key);
+        }
+      }
+
+      DataSourceMetrics metrics = createMetrics((String) props.remove("metrics"));
+      String str = (String) props.remove("statementCacheSize");
+      int statementCacheSize = (str == null) ? DFLT_STATEMENT_CACHE_SIZE : Integer.parseInt(str);
       HikariConfig conf = new HikariConfig(props);
+      if (metrics != null) {
+        conf.setMetricsTrackerFactory(new StatementMetrics.PoolMetricsTrackerFactory(metrics));
+      }
       HikariDataSource service = new HikariDataSource(conf);
+      DataSourceWrapper ds;
       switch (databaseType) {
         case DB2:
-          return new DB2(name, service);
+          ds = new DB2(name, service);
+          break;
         case H2:
-          return new H2(name, service);
+          ds = new H2(name, service);
+          break;
         case HSQL:
-          return new HSQL(name, service);
+          ds = new HSQL(name, service);
+          break;
         case MYSQL:
-          return new MySQL(name, service);
+          ds = new MySQL(name, service);
+          break;
         case MARIADB:
-          return new MariaDB(name, service);
+          ds = new MariaDB(name, service);
+          break;
         case ORACLE:
-          return new Oracle(name, service);
+          ds = new Oracle(name, service);
+          break;
         default: // POSTGRESQL:
-          return new PostgreSQL(name, service);
+          ds = new PostgreSQL(name, service);
+          break;
       }
+
+      ds.metrics = metrics;
+      if (statementCacheSize > 0) {
+        ds.statementCache = new StatementCache(statementCacheSize);
+      }
+      if (!replicaConf.isEmpty()) {
+        try {
+          ds.initReplicas(props, replicaConf);
+        } catch (RuntimeException ex) {
+          ds.close();
+          throw ex;
+        }
+      }
+      return ds;
     } else {
       throw new IllegalArgumentException("unknown datasource type " + databaseType);
     }
   } // method createDataSource
 
+  private static DataSourceMetrics createMetrics(String conf) {
+    if (conf == null || "false".equalsIgnoreCase(conf)) {
+      return null;
+    } else if ("true".equalsIgnoreCase(conf)) {
+      return new DfltDataSourceMetrics();
+    }
+
+    try {
+      Class<?> clazz = Class.forName(conf.trim());
+      return (DataSourceMetrics) clazz.getConstructor().newInstance();
+    } catch (ReflectiveOperationException | ClassCastException ex) {
+      throw new IllegalArgumentException("invalid metrics " + conf + ": " + ex.getMessage(), ex);
+    }
+  }
+
+  private void initReplicas(Properties primaryConf, Properties replicaConf) {
+    int checkInterval = Integer.parseInt(replicaConf.getProperty(REPLICA_CHECK_INTERVAL, "10"));
+    int maxLag = Integer.parseInt(replicaConf.getProperty(REPLICA_MAX_LAG, "30"));
+    String lagQuery = replicaConf.getProperty(REPLICA_LAG_QUERY);
+    if (lagQuery == null) {
+      lagQuery = getReplicaLagQuery();
+    } else if (lagQuery.trim().isEmpty()) {
+      lagQuery = null;
+    }
+    final String replicaLagQuery = lagQuery;
+
+    // group the replica properties by the replica index
+    TreeMap<Integer, Properties> replicaProps = new TreeMap<>();
+    for (String key : replicaConf.stringPropertyNames()) {
+      if (key.equals(REPLICA_CHECK_INTERVAL) || key.equals(REPLICA_MAX_LAG)
+          || key.equals(REPLICA_LAG_QUERY)) {
+        continue;
+      }
+
+      String str = key.substring(REPLICA_PREFIX.length());
+      int idx = str.indexOf('.');
+      if (idx == -1) {
+        throw new IllegalArgumentException("invalid property " + key);
+      }
+
+      Integer index = Integer.valueOf(str.substring(0, idx));
+      Properties props = replicaProps.get(index);
+      if (props == null) {
+        props = new Properties();
+        props.putAll(primaryConf);
+        props.remove("poolName");
+        replicaProps.put(index, props);
+      }
+      props.setProperty(str.substring(idx + 1), replicaConf.getProperty(key));
+    }
+
+    List<ReplicaDataSource> list = new ArrayList<>(replicaProps.size());
+    this.replicas = list;
+    for (Integer index : replicaProps.keySet()) {
+      String replicaName = (name == null ? "" : name + "-") + "replica-" + index;
+      Properties props = replicaProps.get(index);
+      if (!props.containsKey("poolName")) {
+        props.setProperty("poolName", replicaName);
+      }
+
+      HikariConfig replicaHikariConf = new HikariConfig(props);
+      if (metrics != null) {
+        replicaHikariConf.setMetricsTrackerFactory(
+            new StatementMetrics.PoolMetricsTrackerFactory(metrics));
+      }
+      HikariDataSource replicaService = new HikariDataSource(replicaHikariConf);
+      ReplicaDataSource replica = new ReplicaDataSource(replicaName, replicaService);
+      list.add(replica);
+      replica.checkHealth(replicaLagQuery, maxLag);
+      LOG.info("datasource {}: added replica {}, healthy: {}", name, replicaName,
+          replica.isHealthy());
+    }
+
+    replicaChecker = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "datasource-" + name + "-replica-checker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    replicaChecker.scheduleWithFixedDelay(() -> {
+      for (ReplicaDataSource replica : replicas) {
+        replica.checkHealth(replicaLagQuery, maxLag);
+      }
+    }, checkInterval, checkInterval, TimeUnit.SECONDS);
+  } // method initReplicas
+
 }
@@ -0,0 +1,146 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xipki.util.LatencyHistogram;
+
+/**
+ * Default {@link DataSourceMetrics} based on the lock-free {@link LatencyHistogram}.
+ * At most {@link #MAX_STATEMENTS} different statements are tracked individually, all
+ * further statements are aggregated under {@link #OTHER_STATEMENTS}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class DfltDataSourceMetrics implements DataSourceMetrics {
+
+  public static final int MAX_STATEMENTS = 500;
+
+  public static final String OTHER_STATEMENTS = "<other>";
+
+  private static class StatementStats {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder rows = new LongAdder();
+
+    private Map<String, Object> toStatusMap() {
+      Map<String, Object> map = latency.toStatusMap();
+      map.put("failures", failures.sum());
+      map.put("rows", rows.sum());
+      return map;
+    }
+
+  }
+
+  private final LatencyHistogram connectionWait = new LatencyHistogram();
+
+  private final LatencyHistogram connectionUsage = new LatencyHistogram();
+
+  private final LongAdder connectionTimeouts = new LongAdder();
+
+  private final ConcurrentHashMap<String, StatementStats> statements =
+      new ConcurrentHashMap<>();
+
+  @Override
+  public void recordConnectionAcquired(long nanos) {
+    connectionWait.record(nanos);
+  }
+
+  @Override
+  public void recordConnectionTimeout() {
+    connectionTimeouts.increment();
+  }
+
+  @Override
+  public void recordConnectionUsage(long millis) {
+    connectionUsage.record(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+
+  @Override
+  public void recordExecution(String sql, long nanos, boolean failed) {
+    StatementStats stats = getStats(sql);
+    stats.latency.record(nanos);
+    if (failed) {
+      stats.failures.increment();
+    }
+  }
+
+  @Override
+  public void recordRows(String sql, long rows) {
+    getStats(sql).rows.add(rows);
+  }
+
+  private StatementStats getStats(String sql) {
+    StatementStats stats = statements.get(sql);
+    if (stats == null) {
+      if (statements.size() >= MAX_STATEMENTS) {
+        sql = OTHER_STATEMENTS;
+      }
+      stats = statements.computeIfAbsent(sql, k -> new StatementStats());
+    }
+    return stats;
+  }
+
+  /**
+   * Returns the metrics. The statements are sorted by the total execution time, in
+   * descending order.
+   * @return the metrics.
+   */
+  @Override
+  public Map<String, Object> getStatuses() {
+    Map<String, Object> pool = new LinkedHashMap<>();
+    pool.put("wait", connectionWait.toStatusMap());
+    pool.put("usage", connectionUsage.toStatusMap());
+    pool.put("timeouts", connectionTimeouts.sum());
+
+    List<Map.Entry<String, StatementStats>> entries = new ArrayList<>(statements.entrySet());
+    entries.sort((a, b) -> Long.compare(b.getValue().latency.getSum(),
+        a.getValue().latency.getSum()));
+
+    Map<String, Object> stmts = new LinkedHashMap<>();
+    for (Map.Entry<String, StatementStats> entry : entries) {
+      stmts.put(entry.getKey(), entry.getValue().toStatusMap());
+    }
+
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("pool", pool);
+    map.put("statements", stmts);
+    return map;
+  }
+
+  @Override
+  public void reset() {
+    connectionWait.reset();
+    connectionUsage.reset();
+    connectionTimeouts.reset();
+    statements.clear();
+  }
+
+}
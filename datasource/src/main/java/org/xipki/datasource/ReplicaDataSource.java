@@ -0,0 +1,133 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * Read-only replica of the primary database.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class ReplicaDataSource implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReplicaDataSource.class);
+
+  private final String name;
+
+  private final HikariDataSource service;
+
+  private volatile boolean healthy;
+
+  // replication lag in seconds, -1 if unknown
+  private volatile long lag = -1;
+
+  ReplicaDataSource(String name, HikariDataSource service) {
+    this.name = Args.notBlank(name, "name");
+    this.service = Args.notNull(service, "service");
+  }
+
+  String getName() {
+    return name;
+  }
+
+  boolean isHealthy() {
+    return healthy;
+  }
+
+  long getLag() {
+    return lag;
+  }
+
+  int getActiveConnections() {
+    HikariPoolMXBean pool = service.getHikariPoolMXBean();
+    return (pool == null) ? 0 : pool.getActiveConnections();
+  }
+
+  Connection getConnection() throws SQLException {
+    try {
+      return service.getConnection();
+    } catch (SQLException ex) {
+      markUnhealthy(ex.getMessage());
+      throw ex;
+    }
+  }
+
+  void markUnhealthy(String reason) {
+    if (healthy) {
+      LOG.warn("replica {} is not healthy: {}", name, reason);
+    }
+    healthy = false;
+  }
+
+  /**
+   * Checks whether this replica is reachable and, if lagQuery is set, whether it is not
+   * more than maxLag seconds behind the primary.
+   * @param lagQuery SQL query returning the replication lag in seconds. May be {@code null}.
+   * @param maxLag maximal permitted lag in seconds.
+   */
+  void checkHealth(String lagQuery, int maxLag) {
+    boolean newHealthy;
+    try (Connection conn = service.getConnection()) {
+      if (lagQuery == null) {
+        newHealthy = conn.isValid(5);
+      } else {
+        try (Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery(lagQuery)) {
+          lag = rs.next() ? rs.getLong(1) : -1;
+        }
+
+        newHealthy = lag >= 0 && lag <= maxLag;
+        if (!newHealthy) {
+          markUnhealthy("replication lag " + lag + "s (max " + maxLag + "s)");
+        }
+      }
+    } catch (SQLException | RuntimeException ex) {
+      markUnhealthy(ex.getMessage());
+      newHealthy = false;
+    }
+
+    if (newHealthy && !healthy) {
+      LOG.info("replica {} is healthy", name);
+    }
+    healthy = newHealthy;
+  }
+
+  @Override
+  public void close() {
+    try {
+      service.close();
+    } catch (RuntimeException ex) {
+      LOG.warn("could not close replica {}: {}", name, ex.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,220 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.LruCache;
+
+/**
+ * Per-connection LRU cache of prepared statements, keyed by the SQL text.
+ *
+ * <p>The statements are prepared on the physical connection, so that they survive the
+ * return of the pooled connection, and are handed out wrapped: closing the wrapper returns
+ * the statement to the cache of its connection instead of closing it. A statement is
+ * removed from the cache while it is in use. Statements whose properties (e.g. fetch
+ * size) have been changed or whose execution has failed are closed and not cached.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class StatementCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StatementCache.class);
+
+  private static class ConnectionCache extends LruCache<String, PreparedStatement> {
+
+    ConnectionCache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, String key, PreparedStatement oldValue,
+        PreparedStatement newValue) {
+      // a removed statement without replacement is in use
+      if (evicted || newValue != null) {
+        closeQuietly(oldValue);
+      }
+    }
+
+  }
+
+  private class CachedStatement implements InvocationHandler {
+
+    private final PreparedStatement target;
+
+    private final Connection conn;
+
+    private final String sql;
+
+    private final ConnectionCache cache;
+
+    private boolean closed;
+
+    private boolean reusable = true;
+
+    private boolean batched;
+
+    private CachedStatement(PreparedStatement target, Connection conn, String sql,
+        ConnectionCache cache) {
+      this.target = target;
+      this.conn = conn;
+      this.sql = sql;
+      this.cache = cache;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      switch (name) {
+        case "close":
+          close();
+          return null;
+        case "isClosed":
+          return closed;
+        case "getConnection":
+          return conn;
+        default:
+          break;
+      }
+
+      if (closed) {
+        throw new SQLException("statement is closed");
+      }
+
+      if (name.startsWith("set") && args != null && args.length == 1) {
+        // statement property such as fetch size, in contrast to the parameter setters
+        reusable = false;
+      } else if ("addBatch".equals(name)) {
+        batched = true;
+      }
+
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException ex) {
+        reusable = false;
+        throw ex.getCause();
+      }
+    }
+
+    private void close() throws SQLException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+
+      if (reusable) {
+        try {
+          target.clearParameters();
+          if (batched) {
+            target.clearBatch();
+          }
+          cache.put(sql, target);
+          return;
+        } catch (SQLException ex) {
+          LOG.debug("could not reset statement, close it: {}", ex.getMessage());
+        }
+      }
+
+      target.close();
+    }
+
+  }
+
+  private final int maxSize;
+
+  private final Map<Connection, ConnectionCache> caches = new ConcurrentHashMap<>();
+
+  StatementCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns a prepared statement from the cache of the physical connection of {@code conn},
+   * or prepares a new one.
+   * @param conn the pooled connection.
+   * @param sql the SQL.
+   * @return the prepared statement, {@link PreparedStatement#getConnection()} returns
+   *         {@code conn}.
+   * @throws SQLException if the statement could not be prepared.
+   */
+  PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+    Connection physicalConn = conn.unwrap(Connection.class);
+    ConnectionCache cache = caches.get(physicalConn);
+    if (cache == null) {
+      // a new physical connection has been opened, the closed ones can be dropped
+      purgeClosedConnections();
+      cache = new ConnectionCache(maxSize);
+      caches.put(physicalConn, cache);
+    }
+
+    PreparedStatement ps = cache.remove(sql);
+    if (ps == null || ps.isClosed()) {
+      ps = physicalConn.prepareStatement(sql);
+    }
+
+    return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+        new Class<?>[]{PreparedStatement.class}, new CachedStatement(ps, conn, sql, cache));
+  }
+
+  private void purgeClosedConnections() {
+    Iterator<Map.Entry<Connection, ConnectionCache>> it = caches.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Connection, ConnectionCache> entry = it.next();
+      boolean closed;
+      try {
+        closed = entry.getKey().isClosed();
+      } catch (SQLException ex) {
+        closed = true;
+      }
+
+      if (closed) {
+        it.remove();
+        entry.getValue().evictAll();
+      }
+    }
+  }
+
+  void close() {
+    for (ConnectionCache cache : caches.values()) {
+      cache.evictAll();
+    }
+    caches.clear();
+  }
+
+  private static void closeQuietly(PreparedStatement ps) {
+    try {
+      ps.close();
+    } catch (SQLException ex) {
+      LOG.debug("could not close statement: {}", ex.getMessage());
+    }
+  }
+
+}
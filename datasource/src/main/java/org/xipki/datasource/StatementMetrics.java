@@ -0,0 +1,145 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Helpers to record the pool events and the statement executions of a
+ * {@link DataSourceWrapper} in a {@link DataSourceMetrics}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+final class StatementMetrics {
+
+  /**
+   * Forwards the pool events of HikariCP to the {@link DataSourceMetrics}.
+   */
+  static class PoolMetricsTrackerFactory implements MetricsTrackerFactory {
+
+    private final DataSourceMetrics metrics;
+
+    PoolMetricsTrackerFactory(DataSourceMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+      return new IMetricsTracker() {
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+          metrics.recordConnectionAcquired(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+          metrics.recordConnectionUsage(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+          metrics.recordConnectionTimeout();
+        }
+
+      };
+    }
+
+  }
+
+  private static final int MAX_CACHED_SQLS = 1000;
+
+  private static final ConcurrentHashMap<String, String> NORMALIZED_SQLS =
+      new ConcurrentHashMap<>();
+
+  private StatementMetrics() {
+  }
+
+  /**
+   * Normalizes the SQL by collapsing the whitespaces and replacing the literals by '?', so
+   * that statements differing only in the literals are aggregated.
+   * @param sql the SQL
+   * @return the normalized SQL.
+   */
+  static String normalize(String sql) {
+    String normalized = NORMALIZED_SQLS.get(sql);
+    if (normalized != null) {
+      return normalized;
+    }
+
+    final int len = sql.length();
+    StringBuilder sb = new StringBuilder(len);
+    boolean space = false;
+    for (int i = 0; i < len; i++) {
+      char ch = sql.charAt(i);
+      if (Character.isWhitespace(ch)) {
+        space = true;
+        continue;
+      }
+
+      if (space && sb.length() > 0) {
+        sb.append(' ');
+      }
+      space = false;
+
+      if (ch == '\'') {
+        // string literal, '' is an escaped quote
+        i++;
+        while (i < len) {
+          if (sql.charAt(i) == '\'') {
+            if (i + 1 < len && sql.charAt(i + 1) == '\'') {
+              i++;
+            } else {
+              break;
+            }
+          }
+          i++;
+        }
+        sb.append('?');
+      } else if (ch >= '0' && ch <= '9' && !isIdentifierPart(sb)) {
+        while (i + 1 < len && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+          i++;
+        }
+        sb.append('?');
+      } else {
+        sb.append(ch);
+      }
+    }
+
+    normalized = sb.toString();
+    if (NORMALIZED_SQLS.size() < MAX_CACHED_SQLS) {
+      NORMALIZED_SQLS.put(sql, normalized);
+    }
+    return normalized;
+  }
+
+  private static boolean isIdentifierPart(StringBuilder sb) {
+    if (sb.length() == 0) {
+      return false;
+    }
+    char ch = sb.charAt(sb.length() - 1);
+    return Character.isLetterOrDigit(ch) || ch == '_' || ch == '?';
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.datasource.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.datasource.BinaryColumn;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.util.Base64;
+
+/**
+ * Test of {@link BinaryColumn} against an in-memory H2 database, with the data stored as
+ * Base64 text and as binary.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class BinaryColumnTest {
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  // contains '+' and '/' in base64
+  private static final byte[] DATA = new byte[100];
+
+  static {
+    for (int i = 0; i < DATA.length; i++) {
+      DATA[i] = (byte) (0xF0 + i);
+    }
+  }
+
+  private DataSourceWrapper datasource;
+
+  @Before
+  public void setUp() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("driverClassName", "org.h2.Driver");
+    props.setProperty("jdbcUrl",
+        "jdbc:h2:mem:binarycolumn-" + DB_INDEX.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+    props.setProperty("username", "sa");
+    props.setProperty("password", "");
+    props.setProperty("maximumPoolSize", "2");
+
+    datasource = new DataSourceFactory().createDataSource("test", props, null);
+    Connection conn = datasource.getConnection();
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE CERT_TEXT (ID INT NOT NULL, CERT VARCHAR(4000))");
+      stmt.execute("CREATE TABLE CERT_BLOB (ID INT NOT NULL, CERT BLOB)");
+      stmt.execute("CREATE TABLE CERT_VARBINARY (ID INT NOT NULL, CERT VARBINARY(4000))");
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    datasource.close();
+  }
+
+  @Test
+  public void testDetect() throws Exception {
+    // empty tables
+    Assert.assertFalse(BinaryColumn.detect(datasource, null, "CERT_TEXT", "CERT").isBinary());
+    Assert.assertTrue(BinaryColumn.detect(datasource, null, "CERT_BLOB", "CERT").isBinary());
+
+    // with given connection, which is not returned
+    Connection conn = datasource.getConnection();
+    try {
+      BinaryColumn column = BinaryColumn.detect(datasource, conn, "CERT_VARBINARY", "CERT");
+      Assert.assertTrue(column.isBinary());
+      Assert.assertEquals("CERT", column.getName());
+      Assert.assertFalse("connection closed", conn.isClosed());
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+  @Test
+  public void testBase64Column() throws Exception {
+    assertRoundTrip("CERT_TEXT", false);
+
+    // the data is stored as Base64 text
+    Assert.assertEquals(Base64.encodeToString(DATA), queryString("CERT_TEXT", 1));
+  }
+
+  @Test
+  public void testBlobColumn() throws Exception {
+    assertRoundTrip("CERT_BLOB", true);
+  }
+
+  @Test
+  public void testVarbinaryColumn() throws Exception {
+    assertRoundTrip("CERT_VARBINARY", true);
+  }
+
+  private void assertRoundTrip(String table, boolean binary) throws Exception {
+    BinaryColumn column = BinaryColumn.detect(datasource, null, table, "CERT");
+    Assert.assertEquals(binary, column.isBinary());
+
+    insert(column, table, 1, DATA);
+    insert(column, table, 2, null);
+
+    String sql = "SELECT ID, CERT FROM " + table + " ORDER BY ID";
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    ResultSet rs = null;
+    try {
+      rs = datasource.executeQuery(ps, sql);
+      Assert.assertTrue(rs.next());
+      Assert.assertArrayEquals(DATA, column.get(rs));
+      Assert.assertEquals(Base64.encodeToString(DATA), column.getBase64(rs));
+
+      // SQL NULL
+      Assert.assertTrue(rs.next());
+      Assert.assertNull(column.get(rs));
+      Assert.assertNull(column.getBase64(rs));
+
+      Assert.assertFalse(rs.next());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  }
+
+  private void insert(BinaryColumn column, String table, int id, byte[] value)
+      throws Exception {
+    String sql = "INSERT INTO " + table + " (ID, CERT) VALUES (?, ?)";
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    try {
+      ps.setInt(1, id);
+      column.set(ps, 2, value);
+      Assert.assertEquals(1, ps.executeUpdate());
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  }
+
+  private String queryString(String table, int id) throws Exception {
+    Connection conn = datasource.getConnection();
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT CERT FROM " + table + " WHERE ID=" + id)) {
+      Assert.assertTrue(rs.next());
+      return rs.getString(1);
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+}
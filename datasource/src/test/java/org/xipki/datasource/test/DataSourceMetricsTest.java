@@ -0,0 +1,192 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.datasource.test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+
+/**
+ * Test of the statement metrics of {@link DataSourceWrapper} against an in-memory H2
+ * database.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class DataSourceMetricsTest {
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    DataSourceWrapper datasource = createDataSource(null);
+    try {
+      Assert.assertNull("metrics enabled", datasource.getMetrics());
+
+      // executions without metrics
+      final String sql = "SELECT NAME FROM T1 WHERE ID=?";
+      PreparedStatement ps = datasource.prepareStatement(sql);
+      ResultSet rs = null;
+      try {
+        ps.setInt(1, 1);
+        rs = datasource.executeQuery(ps, sql);
+        Assert.assertTrue(rs.next());
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testStatementsNotWrapped() throws Exception {
+    DataSourceWrapper datasource = createDataSource("true");
+    try {
+      PreparedStatement ps = datasource.prepareStatement("SELECT NAME FROM T1");
+      try {
+        Assert.assertFalse("statement is wrapped", Proxy.isProxyClass(ps.getClass()));
+      } finally {
+        datasource.releaseResources(ps, null);
+      }
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testQueryAndUpdate() throws Exception {
+    DataSourceWrapper datasource = createDataSource("true");
+    try {
+      // the literals are normalized
+      for (int i = 1; i <= 3; i++) {
+        final String sql = "SELECT NAME FROM T1 WHERE ID=" + i;
+        PreparedStatement ps = datasource.prepareStatement(sql);
+        ResultSet rs = null;
+        try {
+          rs = datasource.executeQuery(ps, sql);
+          Assert.assertTrue(rs.next());
+        } finally {
+          datasource.releaseResources(ps, rs);
+        }
+      }
+
+      final String updateSql = "UPDATE T1 SET NAME='x' WHERE ID<3";
+      PreparedStatement ps = datasource.prepareStatement(updateSql);
+      try {
+        Assert.assertEquals(2, datasource.executeUpdate(ps, updateSql));
+      } finally {
+        datasource.releaseResources(ps, null);
+      }
+
+      Map<?, ?> stats = getStatementStats(datasource, "SELECT NAME FROM T1 WHERE ID=?");
+      Assert.assertEquals(3L, stats.get("count"));
+      Assert.assertEquals(0L, stats.get("failures"));
+
+      stats = getStatementStats(datasource, "UPDATE T1 SET NAME=? WHERE ID<?");
+      Assert.assertEquals(1L, stats.get("count"));
+      Assert.assertEquals(2L, stats.get("rows"));
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testBatchAndFailure() throws Exception {
+    DataSourceWrapper datasource = createDataSource("true");
+    try {
+      final String sql = "INSERT INTO T1 (ID,NAME) VALUES (?,?)";
+      PreparedStatement ps = datasource.prepareStatement(sql);
+      try {
+        for (int i = 10; i < 15; i++) {
+          ps.setInt(1, i);
+          ps.setString(2, "name-" + i);
+          ps.addBatch();
+        }
+        datasource.executeBatch(ps, sql);
+
+        // duplicated primary key
+        ps.setInt(1, 1);
+        ps.setString(2, "name-1");
+        try {
+          datasource.executeUpdate(ps, sql);
+          Assert.fail("SQLException expected");
+        } catch (SQLException ex) {
+          // expected
+        }
+      } finally {
+        datasource.releaseResources(ps, null);
+      }
+
+      Map<?, ?> stats = getStatementStats(datasource, sql);
+      Assert.assertEquals(2L, stats.get("count"));
+      Assert.assertEquals(1L, stats.get("failures"));
+      Assert.assertEquals(5L, stats.get("rows"));
+    } finally {
+      datasource.close();
+    }
+  }
+
+  private static Map<?, ?> getStatementStats(DataSourceWrapper datasource, String sql) {
+    Map<?, ?> statements = (Map<?, ?>) datasource.getMetrics().getStatuses().get("statements");
+    Map<?, ?> stats = (Map<?, ?>) statements.get(sql);
+    Assert.assertNotNull("no metrics of " + sql + " in " + statements.keySet(), stats);
+    return stats;
+  }
+
+  private static DataSourceWrapper createDataSource(String metrics) throws Exception {
+    Properties props = new Properties();
+    props.setProperty("driverClassName", "org.h2.Driver");
+    props.setProperty("jdbcUrl",
+        "jdbc:h2:mem:metrics-" + DB_INDEX.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+    props.setProperty("username", "sa");
+    props.setProperty("password", "");
+    props.setProperty("maximumPoolSize", "2");
+    if (metrics != null) {
+      props.setProperty("metrics", metrics);
+    }
+
+    DataSourceWrapper datasource = new DataSourceFactory().createDataSource("test", props, null);
+    Connection conn = datasource.getConnection();
+    try {
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("CREATE TABLE T1 (ID INT NOT NULL, NAME VARCHAR(50), PRIMARY KEY (ID))");
+        for (int i = 1; i <= 3; i++) {
+          stmt.execute("INSERT INTO T1 VALUES (" + i + ",'name-" + i + "')");
+        }
+      }
+    } finally {
+      datasource.returnConnection(conn);
+    }
+    return datasource;
+  }
+
+}
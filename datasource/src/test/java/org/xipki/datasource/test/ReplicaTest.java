@@ -0,0 +1,211 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+
+/**
+ * Test of the routing of read-only statements to the replicas of {@link DataSourceWrapper}
+ * against in-memory H2 databases. Each database contains its own name in the table DBNAME.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class ReplicaTest {
+
+  private static final String SQL_SELECT = "SELECT NAME FROM DBNAME";
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  @Test
+  public void testReadOnlyFromReplicas() throws Exception {
+    Properties props = createConf();
+    String replica1 = addReplica(props, 1, 0);
+    String replica2 = addReplica(props, 2, 0);
+
+    DataSourceWrapper datasource = new DataSourceFactory().createDataSource("test", props, null);
+    try {
+      Assert.assertTrue(datasource.hasReplicas());
+      Set<String> names = new HashSet<>();
+      for (int i = 0; i < 10; i++) {
+        names.add(queryReadOnly(datasource));
+      }
+
+      // equally loaded replicas are used in turn
+      Assert.assertEquals(2, names.size());
+      Assert.assertTrue(names.contains(replica1));
+      Assert.assertTrue(names.contains(replica2));
+
+      // read-write statements go to the primary
+      Assert.assertEquals(primaryName(props), query(datasource));
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testReplicaWithLeastActiveConnections() throws Exception {
+    Properties props = createConf();
+    String replica1 = addReplica(props, 1, 0);
+    String replica2 = addReplica(props, 2, 0);
+
+    DataSourceWrapper datasource = new DataSourceFactory().createDataSource("test", props, null);
+    try {
+      // keep one connection of a replica busy
+      Connection conn = datasource.getReadOnlyConnection();
+      try {
+        String busyReplica = queryName(conn);
+        String otherReplica = replica1.equals(busyReplica) ? replica2 : replica1;
+        for (int i = 0; i < 5; i++) {
+          Assert.assertEquals(otherReplica, queryReadOnly(datasource));
+        }
+      } finally {
+        datasource.returnConnection(conn);
+      }
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testLaggingReplicaNotUsed() throws Exception {
+    Properties props = createConf();
+    String replica1 = addReplica(props, 1, 0);
+    addReplica(props, 2, 100);
+    props.setProperty("replica.lagQuery", "SELECT LAG FROM DBNAME");
+    props.setProperty("replica.maxLag", "30");
+
+    DataSourceWrapper datasource = new DataSourceFactory().createDataSource("test", props, null);
+    try {
+      for (int i = 0; i < 5; i++) {
+        Assert.assertEquals(replica1, queryReadOnly(datasource));
+      }
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testFallbackToPrimary() throws Exception {
+    Properties props = createConf();
+    addReplica(props, 1, 100);
+    // replica 2 is not reachable
+    props.setProperty("replica.2.jdbcUrl", "jdbc:h2:mem:replica-absent-"
+        + DB_INDEX.incrementAndGet() + ";IFEXISTS=TRUE");
+    props.setProperty("replica.2.initializationFailTimeout", "-1");
+    props.setProperty("replica.2.connectionTimeout", "250");
+    props.setProperty("replica.lagQuery", "SELECT LAG FROM DBNAME");
+    props.setProperty("replica.maxLag", "30");
+
+    DataSourceWrapper datasource = new DataSourceFactory().createDataSource("test", props, null);
+    try {
+      Assert.assertTrue(datasource.hasReplicas());
+      Assert.assertEquals(primaryName(props), queryReadOnly(datasource));
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testWithoutReplicas() throws Exception {
+    Properties props = createConf();
+    DataSourceWrapper datasource = new DataSourceFactory().createDataSource("test", props, null);
+    try {
+      Assert.assertFalse(datasource.hasReplicas());
+      Assert.assertEquals(primaryName(props), queryReadOnly(datasource));
+    } finally {
+      datasource.close();
+    }
+  }
+
+  private static String queryReadOnly(DataSourceWrapper datasource) throws Exception {
+    PreparedStatement ps = datasource.prepareReadOnlyStatement(SQL_SELECT);
+    ResultSet rs = null;
+    try {
+      rs = datasource.executeQuery(ps, SQL_SELECT);
+      Assert.assertTrue(rs.next());
+      return rs.getString(1);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  }
+
+  private static String query(DataSourceWrapper datasource) throws Exception {
+    Connection conn = datasource.getConnection();
+    try {
+      return queryName(conn);
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+  private static String queryName(Connection conn) throws Exception {
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(SQL_SELECT)) {
+      Assert.assertTrue(rs.next());
+      return rs.getString(1);
+    }
+  }
+
+  private static Properties createConf() throws Exception {
+    String dbName = "primary-" + DB_INDEX.incrementAndGet();
+    Properties props = new Properties();
+    props.setProperty("driverClassName", "org.h2.Driver");
+    props.setProperty("jdbcUrl", createDatabase(dbName, 0));
+    props.setProperty("username", "sa");
+    props.setProperty("password", "");
+    props.setProperty("maximumPoolSize", "2");
+    return props;
+  }
+
+  private static String primaryName(Properties props) {
+    String url = props.getProperty("jdbcUrl");
+    return url.substring("jdbc:h2:mem:".length(), url.indexOf(';'));
+  }
+
+  private static String addReplica(Properties props, int index, int lag) throws Exception {
+    String dbName = "replica-" + DB_INDEX.incrementAndGet();
+    props.setProperty("replica." + index + ".jdbcUrl", createDatabase(dbName, lag));
+    return dbName;
+  }
+
+  private static String createDatabase(String dbName, int lag) throws Exception {
+    String url = "jdbc:h2:mem:" + dbName + ";DB_CLOSE_DELAY=-1";
+    try (Connection conn = DriverManager.getConnection(url, "sa", "");
+        Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE DBNAME (NAME VARCHAR(50), LAG INT)");
+      stmt.execute("INSERT INTO DBNAME VALUES ('" + dbName + "'," + lag + ")");
+    }
+    return url;
+  }
+
+}
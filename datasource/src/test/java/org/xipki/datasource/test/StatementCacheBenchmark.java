@@ -0,0 +1,124 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+
+/**
+ * Compares the throughput of a hot query with and without the statement cache.
+ *
+ * <p>Run it with {@code mvn test -Dtest=StatementCacheBenchmark}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class StatementCacheBenchmark {
+
+  private static final int ROWS = 1000;
+
+  private static final int WARMUP = 20000;
+
+  private static final int ITERATIONS = 200000;
+
+  private static final String SQL_SELECT = "SELECT NAME FROM BENCH WHERE ID=?";
+
+  @Test
+  public void benchmarkH2() throws Exception {
+    benchmark("org.h2.Driver", "jdbc:h2:mem:bench-%s;DB_CLOSE_DELAY=-1");
+  }
+
+  @Test
+  public void benchmarkHsql() throws Exception {
+    benchmark("org.hsqldb.jdbc.JDBCDriver", "jdbc:hsqldb:mem:bench-%s");
+  }
+
+  private static void benchmark(String driverClassName, String jdbcUrl) throws Exception {
+    for (int cacheSize : new int[]{0, 50}) {
+      Properties props = new Properties();
+      props.setProperty("driverClassName", driverClassName);
+      props.setProperty("jdbcUrl", String.format(jdbcUrl, cacheSize));
+      props.setProperty("username", "sa");
+      props.setProperty("password", "");
+      props.setProperty("maximumPoolSize", "2");
+      props.setProperty("metrics", "false");
+      props.setProperty("statementCacheSize", Integer.toString(cacheSize));
+
+      DataSourceWrapper datasource =
+          new DataSourceFactory().createDataSource("bench", props, null);
+      try {
+        createTable(datasource);
+        query(datasource, WARMUP);
+
+        long start = System.nanoTime();
+        query(datasource, ITERATIONS);
+        long duration = System.nanoTime() - start;
+
+        System.out.println(String.format("%s, statementCacheSize=%d: %,d queries/s",
+            datasource.getDatabaseType(), cacheSize, ITERATIONS * 1000_000_000L / duration));
+      } finally {
+        datasource.close();
+      }
+    }
+  }
+
+  private static void createTable(DataSourceWrapper datasource) throws Exception {
+    Connection conn = datasource.getConnection();
+    try {
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("CREATE TABLE BENCH (ID INT NOT NULL, NAME VARCHAR(50), PRIMARY KEY (ID))");
+      }
+
+      try (PreparedStatement ps = conn.prepareStatement("INSERT INTO BENCH VALUES (?,?)")) {
+        for (int i = 0; i < ROWS; i++) {
+          ps.setInt(1, i);
+          ps.setString(2, "name-" + i);
+          ps.executeUpdate();
+        }
+      }
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+  private static void query(DataSourceWrapper datasource, int iterations) throws Exception {
+    for (int i = 0; i < iterations; i++) {
+      int id = i % ROWS;
+      PreparedStatement ps = datasource.prepareStatement(SQL_SELECT);
+      ResultSet rs = null;
+      try {
+        ps.setInt(1, id);
+        rs = ps.executeQuery();
+        Assert.assertTrue("no row for " + id, rs.next());
+        Assert.assertEquals("name-" + id, rs.getString(1));
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+    }
+  }
+
+}
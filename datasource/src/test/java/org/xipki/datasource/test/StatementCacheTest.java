@@ -0,0 +1,176 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.datasource.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+
+/**
+ * Test of the statement cache of {@link DataSourceWrapper} against an in-memory H2 database.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class StatementCacheTest {
+
+  private static final String SQL_SELECT = "SELECT NAME FROM T1 WHERE ID=?";
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    DataSourceWrapper datasource = createDataSource(null, "false");
+    try {
+      Assert.assertNotSame("statement reused without cache",
+          query(datasource, 1), query(datasource, 2));
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testReuseAfterClose() throws Exception {
+    DataSourceWrapper datasource = createDataSource("10", "false");
+    try {
+      PreparedStatement ps1 = query(datasource, 1);
+      Assert.assertSame("statement not reused", ps1, query(datasource, 2));
+      Assert.assertFalse("cached statement closed", ps1.isClosed());
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testModifiedStatementNotCached() throws Exception {
+    DataSourceWrapper datasource = createDataSource("10", "false");
+    try {
+      PreparedStatement ps = datasource.prepareStatement(SQL_SELECT);
+      PreparedStatement physicalPs = ps.unwrap(PreparedStatement.class);
+      ps.setFetchSize(10);
+      datasource.releaseResources(ps, null);
+
+      Assert.assertTrue("modified statement not closed", physicalPs.isClosed());
+      Assert.assertNotSame("modified statement reused", physicalPs, query(datasource, 1));
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testInvalidationPerConnection() throws Exception {
+    DataSourceWrapper datasource = createDataSource("10", "false");
+    try {
+      PreparedStatement ps1 = query(datasource, 1);
+
+      // close the physical connection, the pool replaces it
+      Connection conn = datasource.getConnection();
+      try {
+        conn.unwrap(Connection.class).close();
+      } finally {
+        datasource.returnConnection(conn);
+      }
+
+      // HikariCP validates connections idle for longer than 500 ms
+      Thread.sleep(600);
+      PreparedStatement ps2 = query(datasource, 2);
+      Assert.assertNotSame("statement of closed connection reused", ps1, ps2);
+      Assert.assertTrue("statement of closed connection not closed", ps1.isClosed());
+      Assert.assertSame("statement not reused", ps2, query(datasource, 3));
+    } finally {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testWithMetrics() throws Exception {
+    DataSourceWrapper datasource = createDataSource("10", "true");
+    try {
+      PreparedStatement ps1 = query(datasource, 1);
+      Assert.assertSame("statement not reused", ps1, query(datasource, 2));
+
+      Map<?, ?> statements = (Map<?, ?>) datasource.getMetrics().getStatuses().get("statements");
+      Map<?, ?> stats = (Map<?, ?>) statements.get(SQL_SELECT);
+      Assert.assertNotNull("no metrics of the statement", stats);
+      Assert.assertEquals(2L, stats.get("count"));
+    } finally {
+      datasource.close();
+    }
+  }
+
+  /**
+   * Queries the row with given id.
+   * @return the physical statement.
+   */
+  private static PreparedStatement query(DataSourceWrapper datasource, int id)
+      throws Exception {
+    PreparedStatement ps = datasource.prepareStatement(SQL_SELECT);
+    ResultSet rs = null;
+    try {
+      ps.setInt(1, id);
+      rs = datasource.executeQuery(ps, SQL_SELECT);
+      Assert.assertTrue("no row for " + id, rs.next());
+      Assert.assertEquals("name-" + id, rs.getString(1));
+      return ps.unwrap(PreparedStatement.class);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  }
+
+  private static DataSourceWrapper createDataSource(String statementCacheSize, String metrics)
+      throws Exception {
+    Properties props = new Properties();
+    props.setProperty("driverClassName", "org.h2.Driver");
+    props.setProperty("jdbcUrl",
+        "jdbc:h2:mem:stmtcache-" + DB_INDEX.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+    props.setProperty("username", "sa");
+    props.setProperty("password", "");
+    // a single connection, so that the statements are prepared on the same connection
+    props.setProperty("maximumPoolSize", "1");
+    props.setProperty("metrics", metrics);
+    if (statementCacheSize != null) {
+      props.setProperty("statementCacheSize", statementCacheSize);
+    }
+
+    DataSourceWrapper datasource = new DataSourceFactory().createDataSource("test", props, null);
+    Connection conn = datasource.getConnection();
+    try {
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("CREATE TABLE T1 (ID INT NOT NULL, NAME VARCHAR(50), PRIMARY KEY (ID))");
+        for (int i = 1; i <= 3; i++) {
+          stmt.execute("INSERT INTO T1 VALUES (" + i + ",'name-" + i + "')");
+        }
+      }
+    } finally {
+      datasource.returnConnection(conn);
+    }
+    return datasource;
+  }
+
+}
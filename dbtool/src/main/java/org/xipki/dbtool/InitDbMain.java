@@ -56,6 +56,8 @@ public class InitDbMain {
     boolean force = false;
     String dbConfFile = null;
     String dbSchemaFile = null;
+    String serialKey = null;
+    String binaryEncoding = null;
 
     final int argSize = args.length;
 
@@ -72,6 +74,16 @@ public class InitDbMain {
             dbSchemaFile = args[++i];
           }
           break;
+        case "--serial-key":
+          if (i < argSize - 1) {
+            serialKey = args[++i];
+          }
+          break;
+        case "--binary-encoding":
+          if (i < argSize - 1) {
+            binaryEncoding = args[++i];
+          }
+          break;
         case "--force":
         case "-f":
           force = true;
@@ -91,15 +103,27 @@ public class InitDbMain {
       return;
     }
 
+    if (serialKey != null && !("hex".equals(serialKey) || "hash".equals(serialKey))) {
+      printUsage("invalid serialKey " + serialKey);
+      return;
+    }
+
+    if (binaryEncoding != null
+        && !("base64".equals(binaryEncoding) || "binary".equals(binaryEncoding))) {
+      printUsage("invalid binaryEncoding " + binaryEncoding);
+      return;
+    }
+
     try {
-      exec(dbConfFile, dbSchemaFile, force);
+      exec(dbConfFile, dbSchemaFile, serialKey, binaryEncoding, force);
     } catch (Exception ex) {
       System.err.println("Error while initializing database: " + ex.getMessage());
       LOG.error("Error while initializing database", ex);
     }
   }
 
-  private static void exec(String dbConfFile, String dbSchemaFile, boolean force) throws Exception {
+  private static void exec(String dbConfFile, String dbSchemaFile, String serialKey,
+      String binaryEncoding, boolean force) throws Exception {
     Properties props = new Properties();
     props.load(Files.newInputStream(Paths.get(IoUtil.expandFilepath(dbConfFile))));
     LiquibaseMain.DatabaseConf dbConf = LiquibaseMain.DatabaseConf.getInstance(props, null);
@@ -128,14 +152,48 @@ public class InitDbMain {
       }
     }
 
-    initDb(dbConf, dbSchemaFile);
+    initDb(dbConf, dbSchemaFile, serialKey, binaryEncoding);
   }
 
   public static void initDb(LiquibaseMain.DatabaseConf dbConf, String dbSchemaFile)
       throws Exception {
+    initDb(dbConf, dbSchemaFile, null);
+  }
+
+  /**
+   * Resets and initializes the database.
+   * @param dbConf database configuration.
+   * @param dbSchemaFile liquibase changelog file.
+   * @param serialKey key of the serial number in the table CERT, hex or hash. {@code null}
+   *        to use the default of the changelog.
+   * @throws Exception if error occurs.
+   */
+  public static void initDb(LiquibaseMain.DatabaseConf dbConf, String dbSchemaFile,
+      String serialKey) throws Exception {
+    initDb(dbConf, dbSchemaFile, serialKey, null);
+  }
+
+  /**
+   * Resets and initializes the database.
+   * @param dbConf database configuration.
+   * @param dbSchemaFile liquibase changelog file.
+   * @param serialKey key of the serial number in the table CERT, hex or hash. {@code null}
+   *        to use the default of the changelog.
+   * @param binaryEncoding encoding of the certificates and OCSP responses, base64 or binary.
+   *        {@code null} to use the default of the changelog.
+   * @throws Exception if error occurs.
+   */
+  public static void initDb(LiquibaseMain.DatabaseConf dbConf, String dbSchemaFile,
+      String serialKey, String binaryEncoding) throws Exception {
     LiquibaseMain liquibase = new LiquibaseMain(dbConf, dbSchemaFile);
     try {
       liquibase.init();
+      if (serialKey != null) {
+        liquibase.setChangeLogParameter("serial.key", serialKey);
+      }
+      if (binaryEncoding != null) {
+        liquibase.setChangeLogParameter("binary.encoding", binaryEncoding);
+      }
       liquibase.releaseLocks();
       liquibase.dropAll();
       liquibase.update();
@@ -215,6 +273,12 @@ public class InitDbMain {
     sb.append("\t--db-conf\n");
     sb.append("\t\tDB configuration file\n");
     sb.append("\t\t(required)\n");
+    sb.append("\t--serial-key\n");
+    sb.append("\t\tKey of the serial number in the table CERT, hex or hash\n");
+    sb.append("\t\t(defaults to hex)\n");
+    sb.append("\t--binary-encoding\n");
+    sb.append("\t\tEncoding of the certificates and OCSP responses, base64 or binary\n");
+    sb.append("\t\t(defaults to base64)\n");
     sb.append("\t--help\n");
     sb.append("\t\tDisplay this help message\n");
     sb.append("\t--force, -f\n");
@@ -319,6 +319,10 @@ public class LiquibaseMain implements Closeable {
     System.out.println("successfully  dropped the database");
   }
 
+  public void setChangeLogParameter(String key, String value) {
+    liquibase.setChangeLogParameter(key, value);
+  }
+
   public void update() throws Exception {
     liquibase.update((String) null);
     System.out.println("successfully  updated the database");
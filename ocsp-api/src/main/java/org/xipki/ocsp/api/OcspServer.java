@@ -34,5 +34,19 @@ public interface OcspServer extends Closeable {
 
   OcspRespWithCacheInfo answer(Responder responder, byte[] request, boolean viaGet);
 
+  /**
+   * Answers the OCSP request. The default implementation ignores the client address.
+   * @param responder the responder.
+   * @param request the encoded OCSP request.
+   * @param viaGet whether the request is sent via HTTP GET.
+   * @param clientAddress address of the client, used to limit the rate of each client.
+   *        Could be {@code null}.
+   * @return the response.
+   */
+  default OcspRespWithCacheInfo answer(Responder responder, byte[] request, boolean viaGet,
+      String clientAddress) {
+    return answer(responder, request, viaGet);
+  }
+
   HealthCheckResult healthCheck(Responder responder);
 }
@@ -26,6 +26,7 @@ public abstract class MgmtMessage {
 
   public enum MgmtAction {
 
+    getDatasourceMetrics,
     refreshTokenForSignerType,
     restartServer;
 
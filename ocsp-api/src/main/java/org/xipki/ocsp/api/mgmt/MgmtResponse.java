@@ -17,6 +17,8 @@
 
 package org.xipki.ocsp.api.mgmt;
 
+import java.util.Map;
+
 /**
  * TODO.
  * @author Lijun Liao
@@ -24,4 +26,25 @@ package org.xipki.ocsp.api.mgmt;
 
 public abstract class MgmtResponse extends MgmtMessage {
 
+  public static class GetDatasourceMetrics extends MgmtResponse {
+
+    private Map<String, Object> result;
+
+    public GetDatasourceMetrics() {
+    }
+
+    public GetDatasourceMetrics(Map<String, Object> result) {
+      this.result = result;
+    }
+
+    public Map<String, Object> getResult() {
+      return result;
+    }
+
+    public void setResult(Map<String, Object> result) {
+      this.result = result;
+    }
+
+  }
+
 }
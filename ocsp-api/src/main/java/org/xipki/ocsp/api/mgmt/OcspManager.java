@@ -17,6 +17,8 @@
 
 package org.xipki.ocsp.api.mgmt;
 
+import java.util.Map;
+
 /**
  * TODO.
  * @author Lijun Liao
@@ -28,4 +30,13 @@ public interface OcspManager {
   void restartOcspServer() throws OcspMgmtException;
 
   void refreshTokenForSignerType(String signerType) throws OcspMgmtException;
+
+  /**
+   * Returns the metrics of the database connection pools and of the executed statements.
+   * @return the metrics, keyed by the datasource name.
+   * @throws OcspMgmtException
+   *           if error occurs.
+   */
+  Map<String, Object> getDatasourceMetrics() throws OcspMgmtException;
+
 }
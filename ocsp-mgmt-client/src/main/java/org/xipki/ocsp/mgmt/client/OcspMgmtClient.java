@@ -119,11 +119,18 @@ public class OcspMgmtClient implements OcspManager {
     voidTransmit(MgmtAction.refreshTokenForSignerType, req);
   }
 
+  @Override
+  public Map<String, Object> getDatasourceMetrics() throws OcspMgmtException {
+    byte[] respBytes = transmit(MgmtAction.getDatasourceMetrics, null);
+    MgmtResponse.GetDatasourceMetrics resp =
+        parse(respBytes, MgmtResponse.GetDatasourceMetrics.class);
+    return resp.getResult();
+  }
+
   private void voidTransmit(MgmtAction action, MgmtRequest req) throws OcspMgmtException {
     transmit(action, req, true);
   }
 
-  @SuppressWarnings("unused")
   private byte[] transmit(MgmtAction action, MgmtRequest req) throws OcspMgmtException {
     return transmit(action, req, false);
   }
@@ -202,7 +209,6 @@ public class OcspMgmtClient implements OcspManager {
     }
   }
 
-  @SuppressWarnings("unused")
   private static <T extends MgmtResponse> T parse(byte[] bytes, Class<?> clazz)
       throws OcspMgmtException {
     try {
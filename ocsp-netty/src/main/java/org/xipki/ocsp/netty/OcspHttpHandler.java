@@ -0,0 +1,283 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.netty;
+
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URLDecoder;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspServer;
+import org.xipki.ocsp.api.Responder;
+import org.xipki.ocsp.api.ResponderAndPath;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Args;
+import org.xipki.util.Base64;
+import org.xipki.util.LogUtil;
+import org.xipki.util.StringUtil;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * Netty handler which answers the OCSP requests sent via HTTP GET and POST. It is the
+ * counterpart of the OcspServlet.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+@Sharable
+public class OcspHttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OcspHttpHandler.class);
+
+  private static final long DFLT_CACHE_MAX_AGE = 60; // 1 minute
+
+  private static final String CT_REQUEST = "application/ocsp-request";
+
+  private static final String CT_RESPONSE = "application/ocsp-response";
+
+  private final OcspServer server;
+
+  public OcspHttpHandler(OcspServer server) {
+    this.server = Args.notNull(server, "server");
+  }
+
+  @Override
+  protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest req) {
+    FullHttpResponse resp;
+    try {
+      if (req.decoderResult().isFailure()) {
+        resp = createResponse(HttpResponseStatus.BAD_REQUEST);
+      } else if (HttpMethod.POST.equals(req.method())) {
+        resp = processPost(ctx, req);
+      } else if (HttpMethod.GET.equals(req.method())) {
+        resp = processGet(ctx, req);
+      } else {
+        resp = createResponse(HttpResponseStatus.METHOD_NOT_ALLOWED);
+      }
+    } catch (Throwable th) {
+      LOG.error("Throwable thrown, this should not happen!", th);
+      resp = createResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    HttpUtil.setContentLength(resp, resp.content().readableBytes());
+    // HTTP pipelining: the requests of a channel are handled one by one in the same thread,
+    // so the responses are written in the order of the requests. The connection is closed
+    // by the HttpServerKeepAliveHandler if keep-alive is not requested.
+    ctx.writeAndFlush(resp);
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    LogUtil.warn(LOG, cause, "error while processing the HTTP request, close the connection");
+    ctx.close();
+  }
+
+  private FullHttpResponse processPost(ChannelHandlerContext ctx, FullHttpRequest req)
+      throws Exception {
+    String path = getPath(req);
+    if (path == null) {
+      return createResponse(HttpResponseStatus.BAD_REQUEST);
+    }
+
+    ResponderAndPath responderAndPath = server.getResponderForPath(path);
+    if (responderAndPath == null) {
+      return createResponse(HttpResponseStatus.NOT_FOUND);
+    }
+
+    // accept only "application/ocsp-request" as content type
+    String reqContentType = req.headers().get(HttpHeaderNames.CONTENT_TYPE);
+    if (!CT_REQUEST.equalsIgnoreCase(reqContentType)) {
+      return createResponse(HttpResponseStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    Responder responder = responderAndPath.getResponder();
+    // request too long
+    if (req.content().readableBytes() > responder.getMaxRequestSize()) {
+      return createResponse(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    byte[] reqContent = ByteBufUtil.getBytes(req.content());
+    OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, reqContent,
+        false, getRemoteAddress(ctx));
+    if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
+      LOG.error("processRequest returned null, this should not happen");
+      return createResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    return createOcspResponse(ctx, ocspRespWithCacheInfo.getResponse());
+  } // method processPost
+
+  private FullHttpResponse processGet(ChannelHandlerContext ctx, FullHttpRequest req)
+      throws Exception {
+    String path = getPath(req);
+    if (path == null) {
+      return createResponse(HttpResponseStatus.BAD_REQUEST);
+    }
+
+    ResponderAndPath responderAndPath = server.getResponderForPath(path);
+    if (responderAndPath == null) {
+      return createResponse(HttpResponseStatus.NOT_FOUND);
+    }
+
+    String servletPath = responderAndPath.getServletPath();
+    Responder responder = responderAndPath.getResponder();
+
+    if (!responder.supportsHttpGet()) {
+      return createResponse(HttpResponseStatus.METHOD_NOT_ALLOWED);
+    }
+
+    String b64OcspReq;
+
+    int offset = servletPath.length();
+    // GET URI contains the request and must be much longer than 10.
+    if (path.length() - offset > 10) {
+      if (path.charAt(offset) == '/') {
+        offset++;
+      }
+      b64OcspReq = path.substring(offset);
+    } else {
+      return createResponse(HttpResponseStatus.BAD_REQUEST);
+    }
+
+    // RFC2560 A.1.1 specifies that request longer than 255 bytes SHOULD be sent by
+    // POST, we support GET for longer requests anyway.
+    if (b64OcspReq.length() > responder.getMaxRequestSize()) {
+      return createResponse(HttpResponseStatus.REQUEST_URI_TOO_LONG);
+    }
+
+    byte[] ocspReq = Base64.decode(b64OcspReq);
+    if (ocspReq == null) {
+      return createResponse(HttpResponseStatus.BAD_REQUEST);
+    }
+
+    OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, ocspReq, true,
+        getRemoteAddress(ctx));
+    if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
+      return createResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
+    FullHttpResponse resp = createOcspResponse(ctx, encodedOcspResp);
+
+    OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo = ocspRespWithCacheInfo.getCacheInfo();
+    if (cacheInfo != null) {
+      HttpHeaders headers = resp.headers();
+      // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
+      // the HTTP response.
+      headers.set(HttpHeaderNames.DATE, new Date());
+      // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
+      // last modified the response.
+      headers.set(HttpHeaderNames.LAST_MODIFIED, new Date(cacheInfo.getThisUpdate()));
+      // RFC 5019 6.2: Expires: This date and time will be the same as the
+      // nextUpdate time-stamp in the OCSP response itself.
+      if (cacheInfo.getNextUpdate() != null) {
+        headers.set(HttpHeaderNames.EXPIRES, new Date(cacheInfo.getNextUpdate()));
+      }
+      // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
+      // HEX representation of the SHA1 hash of the OCSPResponse structure.
+      headers.set(HttpHeaderNames.ETAG,
+          StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encodedOcspResp), "\""));
+
+      // Max age must be in seconds in the cache-control header
+      long maxAge;
+      if (responder.getCacheMaxAge() != null) {
+        maxAge = responder.getCacheMaxAge().longValue();
+      } else {
+        maxAge = DFLT_CACHE_MAX_AGE;
+      }
+
+      if (cacheInfo.getNextUpdate() != null) {
+        maxAge = Math.min(maxAge,
+            (cacheInfo.getNextUpdate() - cacheInfo.getThisUpdate()) / 1000);
+      }
+
+      headers.set(HttpHeaderNames.CACHE_CONTROL,
+          StringUtil.concat("max-age=", Long.toString(maxAge),
+            ",public,no-transform,must-revalidate"));
+    }
+
+    return resp;
+  } // method processGet
+
+  /**
+   * Returns the URL decoded path of the request.
+   * @return the path, or {@code null} if the path is not correctly encoded.
+   */
+  private static String getPath(FullHttpRequest req) throws UnsupportedEncodingException {
+    String uri = req.uri();
+    int idx = uri.indexOf('?');
+    String path = (idx == -1) ? uri : uri.substring(0, idx);
+    if (path.indexOf('%') == -1) {
+      return path;
+    }
+
+    // URL decode the path as the servlet container, '+' is not a space in the path.
+    // The encoded slashes (%2F) of the OCSP request in GET are decoded as well.
+    try {
+      return URLDecoder.decode(path.replace("+", "%2B"), "UTF-8");
+    } catch (IllegalArgumentException ex) {
+      LOG.debug("invalid URL encoded path {}", path);
+      return null;
+    }
+  }
+
+  private static String getRemoteAddress(ChannelHandlerContext ctx) {
+    SocketAddress address = ctx.channel().remoteAddress();
+    if (address instanceof InetSocketAddress) {
+      return ((InetSocketAddress) address).getAddress().getHostAddress();
+    }
+    return (address == null) ? null : address.toString();
+  }
+
+  private static FullHttpResponse createOcspResponse(ChannelHandlerContext ctx,
+      byte[] encodedOcspResp) {
+    // direct buffer from the pooled allocator of the channel
+    ByteBuf content = ctx.alloc().directBuffer(encodedOcspResp.length);
+    content.writeBytes(encodedOcspResp);
+    FullHttpResponse resp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+        HttpResponseStatus.OK, content);
+    resp.headers().set(HttpHeaderNames.CONTENT_TYPE, CT_RESPONSE);
+    return resp;
+  }
+
+  private static FullHttpResponse createResponse(HttpResponseStatus status) {
+    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, Unpooled.EMPTY_BUFFER);
+  }
+
+}
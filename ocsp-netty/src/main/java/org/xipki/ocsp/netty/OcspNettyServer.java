@@ -0,0 +1,381 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.netty;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.ocsp.api.OcspStoreFactoryRegister;
+import org.xipki.ocsp.server.OcspServerImpl;
+import org.xipki.ocsp.server.store.OcspStoreFactoryImpl;
+import org.xipki.password.PasswordResolverException;
+import org.xipki.security.Securities;
+import org.xipki.util.Args;
+import org.xipki.util.InvalidConfException;
+import org.xipki.util.LogUtil;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+/**
+ * Standalone HTTP front-end of the OCSP responder based on Netty, an alternative to the
+ * deployment of the ocsp-servlet in a servlet container.
+ *
+ * <p>The connections are accepted and decoded in the event loop (epoll if available), the
+ * OCSP responses are computed in a separate executor group whose size defaults to the number
+ * of signers, so that waiting for a signer does not block the I/O. The requests of one
+ * connection are processed in order, which supports HTTP keep-alive and pipelining.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class OcspNettyServer implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OcspNettyServer.class);
+
+  private static final String DFLT_CONF_FILE = "xipki/etc/ocsp/ocsp-responder.json";
+
+  private static final int DFLT_PORT = 8080;
+
+  // maximal size of the HTTP request body
+  private static final int MAX_CONTENT_LENGTH = 64 * 1024;
+
+  private static Boolean epollAvailable;
+
+  private final OcspServerImpl server;
+
+  private final String host;
+
+  private final int port;
+
+  private int numIoThreads;
+
+  private int numHandlerThreads;
+
+  private EventLoopGroup bossGroup;
+
+  private EventLoopGroup workerGroup;
+
+  private EventExecutorGroup handlerGroup;
+
+  private Channel channel;
+
+  static {
+    String os = System.getProperty("os.name").toLowerCase();
+    if (os.contains("linux")) {
+      ClassLoader loader = OcspNettyServer.class.getClassLoader();
+      try {
+        Class<?> checkClazz = Class.forName("io.netty.channel.epoll.Epoll", false, loader);
+        Method mt = checkClazz.getMethod("isAvailable");
+        Object obj = mt.invoke(null);
+
+        if (obj instanceof Boolean) {
+          epollAvailable = (Boolean) obj;
+        }
+      } catch (Throwable th) {
+        if (th instanceof ClassNotFoundException) {
+          LOG.info("epoll linux is not in classpath");
+        } else {
+          LogUtil.warn(LOG, th, "could not use Epoll transport");
+        }
+      }
+    }
+  }
+
+  /**
+   * Constructor.
+   * @param server the initialized OCSP server. Must not be {@code null}.
+   * @param host host name or IP address to bind. {@code null} to bind all addresses.
+   * @param port port to bind.
+   */
+  public OcspNettyServer(OcspServerImpl server, String host, int port) {
+    this.server = Args.notNull(server, "server");
+    this.host = host;
+    this.port = Args.range(port, "port", 1, 65535);
+  }
+
+  public void setNumIoThreads(int numIoThreads) {
+    this.numIoThreads = numIoThreads;
+  }
+
+  /**
+   * Sets the number of threads computing the OCSP responses.
+   * @param numHandlerThreads number of threads. Non-positive value to use the number of
+   *        signers of all responders.
+   */
+  public void setNumHandlerThreads(int numHandlerThreads) {
+    this.numHandlerThreads = numHandlerThreads;
+  }
+
+  @SuppressWarnings("unchecked")
+  public void start() throws InterruptedException {
+    Class<? extends ServerChannel> channelClass = null;
+
+    // 0: the default of netty, twice the number of processors
+    final int ioThreads = Math.max(0, numIoThreads);
+
+    ClassLoader loader = getClass().getClassLoader();
+    if (epollAvailable != null && epollAvailable.booleanValue()) {
+      try {
+        channelClass = (Class<? extends ServerChannel>)
+            Class.forName("io.netty.channel.epoll.EpollServerSocketChannel", false, loader);
+
+        Class<?> clazz = Class.forName("io.netty.channel.epoll.EpollEventLoopGroup", true, loader);
+        Constructor<?> constructor = clazz.getConstructor(int.class);
+        this.bossGroup = (EventLoopGroup) constructor.newInstance(1);
+        this.workerGroup = (EventLoopGroup) constructor.newInstance(ioThreads);
+        LOG.info("use Epoll Transport");
+      } catch (Throwable th) {
+        LogUtil.warn(LOG, th, "could not use Epoll transport");
+        channelClass = null;
+        if (this.bossGroup != null) {
+          this.bossGroup.shutdownGracefully();
+          this.bossGroup = null;
+        }
+        this.workerGroup = null;
+      }
+    }
+
+    if (this.workerGroup == null) {
+      channelClass = NioServerSocketChannel.class;
+      this.bossGroup = new NioEventLoopGroup(1);
+      this.workerGroup = new NioEventLoopGroup(ioThreads);
+    }
+
+    int handlerThreads = (numHandlerThreads > 0) ? numHandlerThreads : server.getSignerPoolSize();
+    this.handlerGroup = new DefaultEventExecutorGroup(handlerThreads);
+    final OcspHttpHandler handler = new OcspHttpHandler(server);
+
+    ServerBootstrap bootstrap = new ServerBootstrap();
+    bootstrap.group(bossGroup, workerGroup)
+      .channel(channelClass)
+      .option(ChannelOption.SO_BACKLOG, 1024)
+      .childOption(ChannelOption.SO_KEEPALIVE, true)
+      .childOption(ChannelOption.TCP_NODELAY, true)
+      .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+      .childHandler(new ChannelInitializer<SocketChannel>() {
+        @Override
+        protected void initChannel(SocketChannel ch) {
+          initPipeline(ch.pipeline(), handlerGroup, handler);
+        }
+      });
+
+    this.channel = (host == null) ? bootstrap.bind(port).sync().channel()
+        : bootstrap.bind(host, port).sync().channel();
+    LOG.info("OCSP server listens on {}:{} with {} handler threads",
+        (host == null) ? "*" : host, port, handlerThreads);
+  } // method start
+
+  /**
+   * Adds the HTTP codec and the OCSP handler to the pipeline of a channel.
+   * @param pipeline pipeline of the channel.
+   * @param handlerGroup executor group of the OCSP handler. {@code null} to use the event
+   *        loop of the channel.
+   * @param handler the OCSP handler.
+   */
+  public static void initPipeline(ChannelPipeline pipeline, EventExecutorGroup handlerGroup,
+      OcspHttpHandler handler) {
+    pipeline.addLast(new HttpServerCodec())
+      .addLast(new HttpServerKeepAliveHandler())
+      .addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH))
+      // one executor of the group per channel, the requests are processed in order
+      .addLast(handlerGroup, handler);
+  }
+
+  public void awaitClose() throws InterruptedException {
+    if (channel != null) {
+      channel.closeFuture().sync();
+    }
+  }
+
+  @Override
+  public void close() {
+    if (channel != null) {
+      channel.close().syncUninterruptibly();
+      channel = null;
+    }
+
+    if (bossGroup != null) {
+      bossGroup.shutdownGracefully();
+      bossGroup = null;
+    }
+
+    if (workerGroup != null) {
+      workerGroup.shutdownGracefully();
+      workerGroup = null;
+    }
+
+    if (handlerGroup != null) {
+      handlerGroup.shutdownGracefully();
+      handlerGroup = null;
+    }
+  }
+
+  public static void main(String[] args) {
+    String confFile = DFLT_CONF_FILE;
+    String host = null;
+    int port = DFLT_PORT;
+    int ioThreads = 0;
+    int handlerThreads = 0;
+
+    final int argSize = args.length;
+    try {
+      for (int i = 0; i < argSize; i++) {
+        String name = args[i];
+        switch (name) {
+          case "--conf":
+            if (i < argSize - 1) {
+              confFile = args[++i];
+            }
+            break;
+          case "--host":
+            if (i < argSize - 1) {
+              host = args[++i];
+            }
+            break;
+          case "--port":
+            if (i < argSize - 1) {
+              port = Integer.parseInt(args[++i]);
+            }
+            break;
+          case "--io-threads":
+            if (i < argSize - 1) {
+              ioThreads = Integer.parseInt(args[++i]);
+            }
+            break;
+          case "--threads":
+            if (i < argSize - 1) {
+              handlerThreads = Integer.parseInt(args[++i]);
+            }
+            break;
+          case "--help":
+            printUsage(null);
+            return;
+          default:
+            printUsage("unknown option " + name);
+            return;
+        }
+      }
+    } catch (NumberFormatException ex) {
+      printUsage("invalid number: " + ex.getMessage());
+      return;
+    }
+
+    final Securities securities = new Securities();
+    final OcspServerImpl ocspServer = new OcspServerImpl();
+    final CountDownLatch closed = new CountDownLatch(1);
+    OcspNettyServer nettyServer = null;
+    try {
+      securities.init();
+      ocspServer.setSecurityFactory(securities.getSecurityFactory());
+
+      OcspStoreFactoryRegister ocspStoreFactoryRegister = new OcspStoreFactoryRegister();
+      ocspStoreFactoryRegister.registFactory(new OcspStoreFactoryImpl());
+      ocspServer.setOcspStoreFactoryRegister(ocspStoreFactoryRegister);
+      ocspServer.setConfFile(confFile);
+      ocspServer.init();
+
+      nettyServer = new OcspNettyServer(ocspServer, host, port);
+      nettyServer.setNumIoThreads(ioThreads);
+      nettyServer.setNumHandlerThreads(handlerThreads);
+      nettyServer.start();
+
+      final OcspNettyServer server0 = nettyServer;
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        server0.close();
+        ocspServer.close();
+        securities.close();
+        closed.countDown();
+      }));
+
+      nettyServer.awaitClose();
+      closed.await();
+    } catch (IOException | InvalidConfException | DataAccessException
+        | PasswordResolverException ex) {
+      System.err.println("could not start OCSP server: " + ex.getMessage());
+      LOG.error("could not start OCSP server", ex);
+    } catch (InterruptedException ex) {
+      LOG.info("interrupted");
+    } catch (RuntimeException ex) {
+      System.err.println("could not start OCSP server: " + ex.getMessage());
+      LOG.error("could not start OCSP server", ex);
+    } finally {
+      if (closed.getCount() > 0) {
+        if (nettyServer != null) {
+          nettyServer.close();
+        }
+        ocspServer.close();
+        securities.close();
+      }
+    }
+  }
+
+  private static void printUsage(String message) {
+    StringBuilder sb = new StringBuilder();
+    if (message != null) {
+      sb.append(message).append("\n");
+    }
+
+    sb.append("DESCRIPTION\n");
+    sb.append("\tocsp-netty [options]\n");
+    sb.append("\tStart the standalone OCSP responder\n");
+    sb.append("OPTIONS\n");
+    sb.append("\t--conf\n");
+    sb.append("\t\tOCSP responder configuration file\n");
+    sb.append("\t\t(defaults to ").append(DFLT_CONF_FILE).append(")\n");
+    sb.append("\t--host\n");
+    sb.append("\t\tHost name or IP address to bind\n");
+    sb.append("\t\t(defaults to all addresses)\n");
+    sb.append("\t--port\n");
+    sb.append("\t\tPort to bind\n");
+    sb.append("\t\t(defaults to ").append(DFLT_PORT).append(")\n");
+    sb.append("\t--io-threads\n");
+    sb.append("\t\tNumber of I/O threads\n");
+    sb.append("\t\t(defaults to twice the number of processors)\n");
+    sb.append("\t--threads\n");
+    sb.append("\t\tNumber of threads computing the OCSP responses\n");
+    sb.append("\t\t(defaults to the number of signers)\n");
+    sb.append("\t--help\n");
+    sb.append("\t\tDisplay this help message");
+
+    System.out.println(sb.toString());
+  }
+
+}
@@ -0,0 +1,281 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.netty.test;
+
+import java.net.URLEncoder;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspServer;
+import org.xipki.ocsp.api.Responder;
+import org.xipki.ocsp.api.ResponderAndPath;
+import org.xipki.ocsp.netty.OcspHttpHandler;
+import org.xipki.ocsp.netty.OcspNettyServer;
+import org.xipki.util.Base64;
+import org.xipki.util.HealthCheckResult;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * Test of the pipeline of {@link OcspNettyServer} in an {@link EmbeddedChannel}, with a
+ * stub OCSP server which answers each request with its reversed bytes.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class OcspHttpHandlerTest {
+
+  private static final class StubResponder implements Responder {
+
+    @Override
+    public int getMaxRequestSize() {
+      return 100;
+    }
+
+    @Override
+    public boolean supportsHttpGet() {
+      return true;
+    }
+
+    @Override
+    public Long getCacheMaxAge() {
+      return 300L;
+    }
+
+  }
+
+  private static final class StubOcspServer implements OcspServer {
+
+    private final Responder responder = new StubResponder();
+
+    private byte[] lastRequest;
+
+    private boolean lastViaGet;
+
+    @Override
+    public ResponderAndPath getResponderForPath(String path) {
+      return path.startsWith("/ocsp") ? new ResponderAndPath("/ocsp", responder) : null;
+    }
+
+    @Override
+    public OcspRespWithCacheInfo answer(Responder responder, byte[] request, boolean viaGet) {
+      lastRequest = request;
+      lastViaGet = viaGet;
+      OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo =
+          new OcspRespWithCacheInfo.ResponseCacheInfo(System.currentTimeMillis());
+      cacheInfo.setNextUpdate(cacheInfo.getThisUpdate() + 3600 * 1000L);
+      return new OcspRespWithCacheInfo(reverse(request), cacheInfo);
+    }
+
+    @Override
+    public HealthCheckResult healthCheck(Responder responder) {
+      return null;
+    }
+
+    @Override
+    public void close() {
+    }
+
+  }
+
+  // contains '+' and '/' in base64
+  private static final byte[] OCSP_REQUEST = new byte[32];
+
+  static {
+    for (int i = 0; i < OCSP_REQUEST.length; i++) {
+      OCSP_REQUEST[i] = (byte) (0xF0 + (i % 16));
+    }
+  }
+
+  private StubOcspServer server;
+
+  private EmbeddedChannel channel;
+
+  private EmbeddedChannel client;
+
+  @Before
+  public void setUp() {
+    server = new StubOcspServer();
+    channel = new EmbeddedChannel();
+    OcspNettyServer.initPipeline(channel.pipeline(), null, new OcspHttpHandler(server));
+    client = new EmbeddedChannel(new HttpClientCodec(), new HttpObjectAggregator(1024 * 1024));
+  }
+
+  @After
+  public void tearDown() {
+    channel.finishAndReleaseAll();
+    client.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    String b64Request = Base64.encodeToString(OCSP_REQUEST);
+    Assert.assertTrue(b64Request.contains("+") && b64Request.contains("/"));
+
+    // the path is URL decoded, including the name of the responder
+    String uri = "/oc%73p/" + URLEncoder.encode(b64Request, "US-ASCII");
+    FullHttpResponse resp = send(request(HttpMethod.GET, uri, null));
+    try {
+      Assert.assertEquals(HttpResponseStatus.OK, resp.status());
+      Assert.assertEquals("application/ocsp-response",
+          resp.headers().get(HttpHeaderNames.CONTENT_TYPE));
+      Assert.assertArrayEquals(reverse(OCSP_REQUEST), ByteBufUtil.getBytes(resp.content()));
+      Assert.assertArrayEquals(OCSP_REQUEST, server.lastRequest);
+      Assert.assertTrue(server.lastViaGet);
+      Assert.assertEquals("max-age=300,public,no-transform,must-revalidate",
+          resp.headers().get(HttpHeaderNames.CACHE_CONTROL));
+      Assert.assertNotNull(resp.headers().get(HttpHeaderNames.ETAG));
+    } finally {
+      resp.release();
+    }
+
+    // base64 with '+' and '/' not URL encoded
+    resp = send(request(HttpMethod.GET, "/ocsp/" + b64Request, null));
+    try {
+      Assert.assertEquals(HttpResponseStatus.OK, resp.status());
+      Assert.assertArrayEquals(OCSP_REQUEST, server.lastRequest);
+    } finally {
+      resp.release();
+    }
+  }
+
+  @Test
+  public void testInvalidGet() throws Exception {
+    assertStatus(HttpResponseStatus.NOT_FOUND, request(HttpMethod.GET, "/unknown/"
+        + Base64.encodeToString(OCSP_REQUEST), null));
+    assertStatus(HttpResponseStatus.BAD_REQUEST, request(HttpMethod.GET, "/ocsp/%zz"
+        + Base64.encodeToString(OCSP_REQUEST), null));
+    assertStatus(HttpResponseStatus.REQUEST_URI_TOO_LONG, request(HttpMethod.GET, "/ocsp/"
+        + Base64.encodeToString(new byte[200]), null));
+  }
+
+  @Test
+  public void testPost() throws Exception {
+    FullHttpResponse resp = send(request(HttpMethod.POST, "/ocsp", OCSP_REQUEST));
+    try {
+      Assert.assertEquals(HttpResponseStatus.OK, resp.status());
+      Assert.assertArrayEquals(reverse(OCSP_REQUEST), ByteBufUtil.getBytes(resp.content()));
+      Assert.assertArrayEquals(OCSP_REQUEST, server.lastRequest);
+      Assert.assertFalse(server.lastViaGet);
+    } finally {
+      resp.release();
+    }
+
+    FullHttpRequest req = request(HttpMethod.POST, "/ocsp", OCSP_REQUEST);
+    req.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+    assertStatus(HttpResponseStatus.UNSUPPORTED_MEDIA_TYPE, req);
+  }
+
+  @Test
+  public void testRequestTooLarge() throws Exception {
+    server.lastRequest = null;
+    assertStatus(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE,
+        request(HttpMethod.POST, "/ocsp", new byte[101]));
+    Assert.assertNull("request too large answered", server.lastRequest);
+  }
+
+  @Test
+  public void testKeepAlive() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      assertStatus(HttpResponseStatus.OK, request(HttpMethod.POST, "/ocsp", OCSP_REQUEST));
+      Assert.assertTrue("connection closed after request " + i, channel.isOpen());
+    }
+
+    FullHttpRequest req = request(HttpMethod.POST, "/ocsp", OCSP_REQUEST);
+    req.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+    FullHttpResponse resp = send(req);
+    try {
+      Assert.assertEquals(HttpResponseStatus.OK, resp.status());
+      Assert.assertEquals(HttpHeaderValues.CLOSE.toString(),
+          resp.headers().get(HttpHeaderNames.CONNECTION));
+    } finally {
+      resp.release();
+    }
+    channel.runPendingTasks();
+    Assert.assertFalse("connection not closed", channel.isOpen());
+  }
+
+  private static FullHttpRequest request(HttpMethod method, String uri, byte[] content) {
+    ByteBuf buf = (content == null) ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(content);
+    FullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, uri, buf);
+    req.headers().set(HttpHeaderNames.HOST, "localhost");
+    if (content != null) {
+      req.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/ocsp-request");
+      req.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, content.length);
+    }
+    return req;
+  }
+
+  private void assertStatus(HttpResponseStatus expected, FullHttpRequest req) {
+    FullHttpResponse resp = send(req);
+    try {
+      Assert.assertEquals(expected, resp.status());
+    } finally {
+      resp.release();
+    }
+  }
+
+  /**
+   * Sends the request through the codecs of the server and the client.
+   */
+  private FullHttpResponse send(FullHttpRequest req) {
+    client.writeOutbound(req);
+    ByteBuf encoded;
+    while ((encoded = client.readOutbound()) != null) {
+      channel.writeInbound(encoded);
+    }
+
+    ByteBuf respBytes;
+    while ((respBytes = channel.readOutbound()) != null) {
+      client.writeInbound(respBytes);
+    }
+
+    FullHttpResponse resp = client.readInbound();
+    Assert.assertNotNull("no response", resp);
+    return resp;
+  }
+
+  private static byte[] reverse(byte[] bytes) {
+    byte[] ret = Arrays.copyOf(bytes, bytes.length);
+    for (int i = 0; i < ret.length / 2; i++) {
+      byte b = ret[i];
+      ret[i] = ret[ret.length - 1 - i];
+      ret[ret.length - 1 - i] = b;
+    }
+    return ret;
+  }
+
+}
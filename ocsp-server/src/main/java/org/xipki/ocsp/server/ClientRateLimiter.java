@@ -0,0 +1,88 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+import org.xipki.util.TokenBucket;
+
+/**
+ * Per-client limit of the responses which need to be signed.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class ClientRateLimiter {
+
+  private final double rate;
+
+  private final int burst;
+
+  private final LruCache<String, TokenBucket> buckets;
+
+  private final LongAdder rejected = new LongAdder();
+
+  /**
+   * Constructor.
+   * @param rate Signed responses per second of each client.
+   * @param burst Maximal burst of each client.
+   * @param maxClients Maximal number of clients tracked at the same time.
+   */
+  public ClientRateLimiter(double rate, int burst, int maxClients) {
+    if (!(rate > 0)) {
+      throw new IllegalArgumentException("rate must be positive: " + rate);
+    }
+    this.rate = rate;
+    this.burst = Args.positive(burst, "burst");
+    this.buckets = new LruCache<>(Args.positive(maxClients, "maxClients"));
+  }
+
+  /**
+   * Takes one token of the given client.
+   * @param client address of the client.
+   * @return whether the client has not exceeded its limit.
+   */
+  public boolean tryAcquire(String client) {
+    TokenBucket bucket;
+    // LruCache synchronizes on itself
+    synchronized (buckets) {
+      bucket = buckets.get(client);
+      if (bucket == null) {
+        // the least recently seen client is evicted if the cache is full
+        bucket = new TokenBucket(rate, burst);
+        buckets.put(client, bucket);
+      }
+    }
+
+    if (bucket.tryTake()) {
+      return true;
+    } else {
+      rejected.increment();
+      return false;
+    }
+  }
+
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+}
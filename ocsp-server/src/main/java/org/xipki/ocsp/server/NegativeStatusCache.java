@@ -0,0 +1,258 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.util.Args;
+
+/**
+ * Short-lived cache of requests answered with "issuer unknown" or "serial number unknown".
+ *
+ * <p>Only 64-bit fingerprints, keyed with a random secret, the expiration times and, for
+ * unknown serial numbers, the status returned by the store (with thisUpdate, nextUpdate, CrlID
+ * and archive cutoff) are stored, in open-addressing tables of fixed size. A segment which is
+ * full is purged from expired entries, and cleared if this does not help.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class NegativeStatusCache {
+
+  private static class Segment {
+
+    // 0: empty slot
+    private final long[] fingerprints;
+
+    // expiration time, seconds since the creation of the cache
+    private final int[] expirations;
+
+    // status info of unknown serial numbers, null for unknown issuers
+    private final CertStatusInfo[] values;
+
+    private final int mask;
+
+    private final int maxCount;
+
+    private int count;
+
+    Segment(int maxCount) {
+      int capacity = Integer.highestOneBit(Math.max(4, maxCount * 2 - 1)) << 1;
+      this.fingerprints = new long[capacity];
+      this.expirations = new int[capacity];
+      this.values = new CertStatusInfo[capacity];
+      this.mask = capacity - 1;
+      this.maxCount = maxCount;
+    }
+
+    /**
+     * Returns the index of the live entry with given fingerprint, or -1 if not found.
+     */
+    private int find(long fingerprint, int now) {
+      for (int i = index(fingerprint); ; i = (i + 1) & mask) {
+        long fp = fingerprints[i];
+        if (fp == 0) {
+          return -1;
+        } else if (fp == fingerprint) {
+          return (expirations[i] > now) ? i : -1;
+        }
+      }
+    }
+
+    synchronized boolean contains(long fingerprint, int now) {
+      return find(fingerprint, now) != -1;
+    }
+
+    synchronized CertStatusInfo get(long fingerprint, int now) {
+      int i = find(fingerprint, now);
+      return (i == -1) ? null : values[i];
+    }
+
+    synchronized void add(long fingerprint, CertStatusInfo value, int expiration, int now) {
+      if (count >= maxCount) {
+        purge(now);
+      }
+
+      int i = index(fingerprint);
+      for (; fingerprints[i] != 0; i = (i + 1) & mask) {
+        if (fingerprints[i] == fingerprint) {
+          expirations[i] = expiration;
+          values[i] = value;
+          return;
+        }
+      }
+
+      fingerprints[i] = fingerprint;
+      expirations[i] = expiration;
+      values[i] = value;
+      count++;
+    }
+
+    private void purge(int now) {
+      long[] oldFingerprints = fingerprints.clone();
+      int[] oldExpirations = expirations.clone();
+      CertStatusInfo[] oldValues = values.clone();
+      clear();
+
+      for (int j = 0; j < oldFingerprints.length; j++) {
+        if (oldFingerprints[j] != 0 && oldExpirations[j] > now) {
+          int i = index(oldFingerprints[j]);
+          while (fingerprints[i] != 0) {
+            i = (i + 1) & mask;
+          }
+          fingerprints[i] = oldFingerprints[j];
+          expirations[i] = oldExpirations[j];
+          values[i] = oldValues[j];
+          count++;
+        }
+      }
+
+      if (count >= maxCount) {
+        // all entries are alive, drop them.
+        clear();
+      }
+    }
+
+    private void clear() {
+      Arrays.fill(fingerprints, 0);
+      Arrays.fill(expirations, 0);
+      Arrays.fill(values, null);
+      count = 0;
+    }
+
+    synchronized int size() {
+      return count;
+    }
+
+    private int index(long fingerprint) {
+      // the high bits select the segment
+      return (int) fingerprint & mask;
+    }
+
+  }
+
+  private static final int SEGMENTS = 16;
+
+  private static final byte TYPE_ISSUER = 1;
+
+  private static final byte TYPE_SERIAL = 2;
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+
+  private final long seed;
+
+  private final int ttl;
+
+  private final long startMs;
+
+  /**
+   * Constructor.
+   * @param ttl Time to live in seconds.
+   * @param maxSize Maximal number of entries.
+   */
+  public NegativeStatusCache(int ttl, int maxSize) {
+    this.ttl = Args.positive(ttl, "ttl");
+    Args.positive(maxSize, "maxSize");
+    int segmentSize = Math.max(1, maxSize / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(segmentSize);
+    }
+    this.seed = new SecureRandom().nextLong();
+    this.startMs = System.currentTimeMillis();
+  }
+
+  public boolean isIssuerUnknown(RequestIssuer issuer) {
+    return contains(fingerprint(TYPE_ISSUER, issuer, null));
+  }
+
+  public void addUnknownIssuer(RequestIssuer issuer) {
+    add(fingerprint(TYPE_ISSUER, issuer, null), null);
+  }
+
+  /**
+   * Returns the cached status of an unknown serial number.
+   * @param issuer issuer of the certificate.
+   * @param serialNumber serial number of the certificate.
+   * @return the status returned by the store, or {@code null} if not cached.
+   */
+  public CertStatusInfo getUnknownSerial(RequestIssuer issuer, BigInteger serialNumber) {
+    long fingerprint = fingerprint(TYPE_SERIAL, issuer, serialNumber);
+    return segment(fingerprint).get(fingerprint, now());
+  }
+
+  public void addUnknownSerial(RequestIssuer issuer, BigInteger serialNumber,
+      CertStatusInfo certStatusInfo) {
+    Args.notNull(certStatusInfo, "certStatusInfo");
+    add(fingerprint(TYPE_SERIAL, issuer, serialNumber), certStatusInfo);
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  private boolean contains(long fingerprint) {
+    return segment(fingerprint).contains(fingerprint, now());
+  }
+
+  private void add(long fingerprint, CertStatusInfo value) {
+    int now = now();
+    segment(fingerprint).add(fingerprint, value, now + ttl, now);
+  }
+
+  private Segment segment(long fingerprint) {
+    return segments[(int) (fingerprint >>> 60)];
+  }
+
+  private int now() {
+    return (int) ((System.currentTimeMillis() - startMs) / 1000);
+  }
+
+  private long fingerprint(byte type, RequestIssuer issuer, BigInteger serialNumber) {
+    // FNV-1a with secret offset, finalized with the mixer of MurmurHash3
+    long hash = seed ^ type;
+    byte[] data = issuer.getData();
+    for (int i = issuer.getFrom(), end = i + issuer.getLength(); i < end; i++) {
+      hash = (hash ^ (data[i] & 0xFF)) * 0x100000001B3L;
+    }
+
+    if (serialNumber != null) {
+      byte[] bytes = serialNumber.toByteArray();
+      for (byte b : bytes) {
+        hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+      }
+    }
+
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    hash ^= hash >>> 33;
+    return (hash == 0) ? 1 : hash;
+  }
+
+}
@@ -101,6 +101,7 @@ public class OCSPRespBuilder {
     byte[] signature;
     byte[] sigAlgId;
 
+    boolean signed = false;
     try {
       XiContentSigner csigner0 = signer0.value();
       OutputStream sigOut = csigner0.getOutputStream();
@@ -113,8 +114,9 @@ public class OCSPRespBuilder {
 
       signature = csigner0.getSignature();
       sigAlgId = csigner0.getEncodedAlgorithmIdentifier();
+      signed = true;
     } finally {
-      signer.requiteSigner(signer0);
+      signer.requiteSigner(signer0, signed);
     }
 
     // ----- Get the length -----
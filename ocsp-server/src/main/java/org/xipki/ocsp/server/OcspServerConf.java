@@ -216,6 +216,12 @@ public class OcspServerConf extends ValidatableConf {
 
     private CertpathValidation certpathValidation;
 
+    /**
+     * Maximal number of request signer certificates whose certification path has been
+     * validated, 0 to disable the cache. The default is 100.
+     */
+    private Integer verifiedSignerCacheSize;
+
     private String name;
 
     public boolean isSupportsHttpGet() {
@@ -293,6 +299,14 @@ public class OcspServerConf extends ValidatableConf {
       this.certpathValidation = certpathValidation;
     }
 
+    public Integer getVerifiedSignerCacheSize() {
+      return verifiedSignerCacheSize;
+    }
+
+    public void setVerifiedSignerCacheSize(Integer verifiedSignerCacheSize) {
+      this.verifiedSignerCacheSize = verifiedSignerCacheSize;
+    }
+
     public String getName() {
       return name;
     }
@@ -493,6 +507,151 @@ public class OcspServerConf extends ValidatableConf {
 
   }
 
+  /**
+   * Coalescing of concurrent identical requests. Applies to requests without nonce and
+   * with only one CertID.
+   */
+  public static class RequestCoalescing extends ValidatableConf {
+
+    private boolean enabled = true;
+
+    /**
+     * Maximal time in milliseconds a request waits for the response of an identical request
+     * in progress. If exceeded, tryLater is returned.
+     */
+    private int maxWait = 2000;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxWait() {
+      return maxWait;
+    }
+
+    public void setMaxWait(int maxWait) {
+      this.maxWait = maxWait;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (maxWait < 1) {
+        throw new InvalidConfException("maxWait must be positive");
+      }
+    }
+
+  }
+
+  /**
+   * Short-lived cache of requests for unknown issuers and unknown serial numbers. Requests
+   * for unknown issuers are answered with the unsigned response with status unauthorized
+   * (RFC 5019, section 2.2.3), and requests for cached unknown serial numbers without
+   * querying the stores.
+   */
+  public static class NegativeCache extends ValidatableConf {
+
+    /**
+     * Time to live of an entry in seconds.
+     */
+    private int ttl = 60;
+
+    /**
+     * Maximal number of entries of each responder.
+     */
+    private int maxSize = 100000;
+
+    public int getTtl() {
+      return ttl;
+    }
+
+    public void setTtl(int ttl) {
+      this.ttl = ttl;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (ttl < 1) {
+        throw new InvalidConfException("ttl must be positive");
+      }
+      if (maxSize < 1) {
+        throw new InvalidConfException("maxSize must be positive");
+      }
+    }
+
+  }
+
+  /**
+   * Per-client limit of the responses which need to be signed. A client exceeding its limit
+   * gets the unsigned response with status tryLater.
+   */
+  public static class ClientRateLimit extends ValidatableConf {
+
+    /**
+     * Signed responses per second of each client IP address.
+     */
+    private double rate;
+
+    /**
+     * Maximal burst of each client, defaults to the rate.
+     */
+    private Integer burst;
+
+    /**
+     * Maximal number of clients tracked at the same time.
+     */
+    private int maxClients = 100000;
+
+    public double getRate() {
+      return rate;
+    }
+
+    public void setRate(double rate) {
+      this.rate = rate;
+    }
+
+    public Integer getBurst() {
+      return burst;
+    }
+
+    public void setBurst(Integer burst) {
+      this.burst = burst;
+    }
+
+    public int getMaxClients() {
+      return maxClients;
+    }
+
+    public void setMaxClients(int maxClients) {
+      this.maxClients = maxClients;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (!(rate > 0)) {
+        throw new InvalidConfException("rate must be positive");
+      }
+      if (burst != null && burst < 1) {
+        throw new InvalidConfException("burst must be positive");
+      }
+      if (maxClients < 1) {
+        throw new InvalidConfException("maxClients must be positive");
+      }
+    }
+
+  }
+
   public static class ResponseOption extends ValidatableConf {
 
     private boolean responderIdByName = true;
@@ -785,6 +944,8 @@ public class OcspServerConf extends ValidatableConf {
 
     private CrlSourceConf crlSource;
 
+    private SnapshotSourceConf snapshotSource;
+
     private Object custom;
 
     public DbSourceConf getDbSource() {
@@ -803,6 +964,14 @@ public class OcspServerConf extends ValidatableConf {
       this.crlSource = crlSource;
     }
 
+    public SnapshotSourceConf getSnapshotSource() {
+      return snapshotSource;
+    }
+
+    public void setSnapshotSource(SnapshotSourceConf snapshotSource) {
+      this.snapshotSource = snapshotSource;
+    }
+
     public Object getCustom() {
       return custom;
     }
@@ -818,7 +987,11 @@ public class OcspServerConf extends ValidatableConf {
         occurrences++;
       }
 
-      if (crlSource == null) {
+      if (crlSource != null) {
+        occurrences++;
+      }
+
+      if (snapshotSource != null) {
         occurrences++;
       }
 
@@ -828,7 +1001,7 @@ public class OcspServerConf extends ValidatableConf {
 
       if (occurrences > 1) {
         throw new InvalidConfException(
-            "maximal one of dbSource, crlSource and custom may be set");
+            "maximal one of dbSource, crlSource, snapshotSource and custom may be set");
       }
     }
 
@@ -899,6 +1072,12 @@ public class OcspServerConf extends ValidatableConf {
      */
     private String crlFile;
 
+    /**
+     * Delta CRL file for the CRL in crlFile, only used by the store type crl-memory.<br/>
+     * optional, default is none.
+     */
+    private String deltaCrlFile;
+
     /**
      * CRL url<br/>
      * optional, default is none.
@@ -937,6 +1116,14 @@ public class OcspServerConf extends ValidatableConf {
       this.crlFile = crlFile;
     }
 
+    public String getDeltaCrlFile() {
+      return deltaCrlFile;
+    }
+
+    public void setDeltaCrlFile(String deltaCrlFile) {
+      this.deltaCrlFile = deltaCrlFile;
+    }
+
     public String getCrlUrl() {
       return crlUrl;
     }
@@ -985,8 +1172,56 @@ public class OcspServerConf extends ValidatableConf {
 
   }
 
+  public static class SnapshotSourceConf extends ValidatableConf {
+
+    /**
+     * Status snapshot file generated by CertStatusSnapshotGenerator.<br/>
+     * A new snapshot must replace the file atomically (e.g. by renaming), it will
+     * be taken over without restart.<br/>
+     * required
+     */
+    private String snapshotFile;
+
+    /**
+     * Interval in seconds to check whether the snapshot file has been replaced.<br/>
+     * optional, default is 10.
+     */
+    private int checkInterval = 10;
+
+    public String getSnapshotFile() {
+      return snapshotFile;
+    }
+
+    public void setSnapshotFile(String snapshotFile) {
+      this.snapshotFile = snapshotFile;
+    }
+
+    public int getCheckInterval() {
+      return checkInterval;
+    }
+
+    public void setCheckInterval(int checkInterval) {
+      this.checkInterval = checkInterval;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      notEmpty(snapshotFile, "snapshotFile");
+      if (checkInterval < 1) {
+        throw new InvalidConfException("checkInterval must be positive");
+      }
+    }
+
+  }
+
   private ResponseCache responseCache;
 
+  private RequestCoalescing requestCoalescing;
+
+  private NegativeCache negativeCache;
+
+  private ClientRateLimit clientRateLimit;
+
   private List<Responder> responders;
 
   private List<Signer> signers;
@@ -1009,6 +1244,30 @@ public class OcspServerConf extends ValidatableConf {
     this.responseCache = responseCache;
   }
 
+  public RequestCoalescing getRequestCoalescing() {
+    return requestCoalescing;
+  }
+
+  public void setRequestCoalescing(RequestCoalescing requestCoalescing) {
+    this.requestCoalescing = requestCoalescing;
+  }
+
+  public NegativeCache getNegativeCache() {
+    return negativeCache;
+  }
+
+  public void setNegativeCache(NegativeCache negativeCache) {
+    this.negativeCache = negativeCache;
+  }
+
+  public ClientRateLimit getClientRateLimit() {
+    return clientRateLimit;
+  }
+
+  public void setClientRateLimit(ClientRateLimit clientRateLimit) {
+    this.clientRateLimit = clientRateLimit;
+  }
+
   public List<Responder> getResponders() {
     if (responders == null) {
       responders = new LinkedList<>();
@@ -1101,6 +1360,10 @@ public class OcspServerConf extends ValidatableConf {
 
     notEmpty(responseOptions, "responseOptions");
     validate(responseOptions);
+
+    validate(requestCoalescing);
+    validate(negativeCache);
+    validate(clientRateLimit);
   }
 
 }
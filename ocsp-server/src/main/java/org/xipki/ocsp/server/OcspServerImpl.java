@@ -55,7 +55,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceMetrics;
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.CertStatus;
 import org.xipki.ocsp.api.CertStatusInfo;
 import org.xipki.ocsp.api.OcspRespWithCacheInfo;
 import org.xipki.ocsp.api.OcspRespWithCacheInfo.ResponseCacheInfo;
@@ -67,6 +69,7 @@ import org.xipki.ocsp.api.OcspStoreFactoryRegister;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.api.ResponderAndPath;
 import org.xipki.ocsp.server.OcspServerConf.EmbedCertsMode;
+import org.xipki.ocsp.server.ResponderMetrics.Stage;
 import org.xipki.ocsp.server.ResponderOption.OcspMode;
 import org.xipki.ocsp.server.type.CertID;
 import org.xipki.ocsp.server.type.EncodingException;
@@ -171,6 +174,10 @@ public class OcspServerImpl implements OcspServer {
 
   private ResponseCacher responseCacher;
 
+  private RequestCoalescer requestCoalescer;
+
+  private ClientRateLimiter clientRateLimiter;
+
   private OcspStoreFactoryRegister ocspStoreFactoryRegister;
 
   private Map<String, ResponderImpl> responders = new HashMap<>();
@@ -183,6 +190,11 @@ public class OcspServerImpl implements OcspServer {
 
   private Map<String, OcspStore> stores = new HashMap<>();
 
+  private Map<String, DataSourceWrapper> datasources = new HashMap<>();
+
+  // store name to datasource name
+  private Map<String, String> storeDatasourceNames = new HashMap<>();
+
   private List<String> servletPaths = new ArrayList<>();
 
   private Map<String, ResponderImpl> path2responderMap = new HashMap<>();
@@ -292,6 +304,8 @@ public class OcspServerImpl implements OcspServer {
 
     // reset
     responseCacher = null;
+    requestCoalescer = null;
+    clientRateLimiter = null;
     responders.clear();
     signers.clear();
 
@@ -306,6 +320,8 @@ public class OcspServerImpl implements OcspServer {
       }
     }
     stores.clear();
+    datasources.clear();
+    storeDatasourceNames.clear();
 
     servletPaths.clear();
     path2responderMap.clear();
@@ -413,8 +429,29 @@ public class OcspServerImpl implements OcspServer {
       } finally {
         closeStream(dsStream);
       }
+      datasources.put(cacheSourceConf.getName(), datasource);
       responseCacher = new ResponseCacher(datasource, master, cacheType.getValidity());
-      responseCacher.init();
+      try {
+        responseCacher.init();
+      } catch (DataAccessException ex) {
+        throw new OcspStoreException("could not initialize the response cache", ex);
+      }
+    }
+
+    OcspServerConf.RequestCoalescing coalescingConf = conf.getRequestCoalescing();
+    if (coalescingConf == null) {
+      coalescingConf = new OcspServerConf.RequestCoalescing();
+    }
+    if (coalescingConf.isEnabled()) {
+      requestCoalescer = new RequestCoalescer(coalescingConf.getMaxWait());
+    }
+
+    OcspServerConf.ClientRateLimit rateLimitConf = conf.getClientRateLimit();
+    if (rateLimitConf != null) {
+      Integer burst = rateLimitConf.getBurst();
+      clientRateLimiter = new ClientRateLimiter(rateLimitConf.getRate(),
+          (burst != null) ? burst : (int) Math.max(1, Math.ceil(rateLimitConf.getRate())),
+          rateLimitConf.getMaxClients());
     }
 
     //-- initializes the responders
@@ -436,7 +473,6 @@ public class OcspServerImpl implements OcspServer {
     }
 
     // datasources
-    Map<String, DataSourceWrapper> datasources = new HashMap<>();
     if (conf.getDatasources() != null) {
       for (OcspServerConf.Datasource m : conf.getDatasources()) {
         String name = m.getName();
@@ -490,6 +526,9 @@ public class OcspServerImpl implements OcspServer {
     for (OcspServerConf.Store m : conf.getStores()) {
       OcspStore store = newStore(m, datasources);
       stores.put(m.getName(), store);
+      if (m.getSource().getDatasource() != null) {
+        storeDatasourceNames.put(m.getName(), m.getSource().getDatasource());
+      }
     }
 
     // responders
@@ -516,9 +555,13 @@ public class OcspServerImpl implements OcspServer {
         }
       }
 
+      OcspServerConf.NegativeCache negativeCacheConf = conf.getNegativeCache();
+      NegativeStatusCache negativeCache = (negativeCacheConf == null) ? null
+          : new NegativeStatusCache(negativeCacheConf.getTtl(), negativeCacheConf.getMaxSize());
+
       ResponderImpl responder = new ResponderImpl(option,
           requestOptions.get(option.getRequestOptionName()),
-          responseOption, signer, statusStores);
+          responseOption, signer, statusStores, negativeCache);
       responders.put(name, responder);
     } // end for
 
@@ -562,7 +605,32 @@ public class OcspServerImpl implements OcspServer {
 
   @Override
   public OcspRespWithCacheInfo answer(Responder responder2, byte[] request, boolean viaGet) {
+    return answer(responder2, request, viaGet, null);
+  }
+
+  @Override
+  public OcspRespWithCacheInfo answer(Responder responder2, byte[] request, boolean viaGet,
+      String clientAddress) {
     ResponderImpl responder = (ResponderImpl) responder2;
+    final long start = System.nanoTime();
+    OcspRespWithCacheInfo resp = answer0(responder, request, viaGet, clientAddress, start);
+
+    ResponderMetrics metrics = responder.getMetrics();
+    metrics.record(Stage.TOTAL, start);
+    OcspResponseStatus status = OcspResponseStatus.successful;
+    for (Map.Entry<OcspResponseStatus, OcspRespWithCacheInfo> entry
+        : unsuccesfulOCSPRespMap.entrySet()) {
+      if (entry.getValue() == resp) {
+        status = entry.getKey();
+        break;
+      }
+    }
+    metrics.countResponseStatus(status);
+    return resp;
+  }
+
+  private OcspRespWithCacheInfo answer0(ResponderImpl responder, byte[] request, boolean viaGet,
+      String clientAddress, long start) {
     RequestOption reqOpt = responder.getRequestOption();
 
     int version;
@@ -680,118 +748,188 @@ public class OcspServerImpl implements OcspServer {
         concurrentSigner = signer.getFirstSigner();
       }
 
-      AlgorithmCode cacheDbSigAlgCode = null;
-      BigInteger cacheDbSerialNumber = null;
-      Integer cacheDbIssuerId = null;
-
-      boolean canCacheDb = (requestsSize == 1) && (responseCacher != null)
-          && (nonceExtn == null) && responseCacher.isOnService();
-      if (canCacheDb) {
-        // try to find the cached response
-        CertID certId = requestList.get(0);
-        HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
-        if (!reqOpt.allows(reqHashAlgo)) {
-          LOG.warn("CertID.hashAlgorithm {} not allowed",
-              reqHashAlgo != null ? reqHashAlgo : certId.getIssuer().hashAlgorithmOID());
-          return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+      responder.getMetrics().record(Stage.PARSE, start);
+
+      if (requestCoalescer != null && requestsSize == 1 && nonceExtn == null) {
+        // each caller is charged before joining, since the response is computed only once
+        if (!tryAcquireRate(responder, clientAddress)) {
+          return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
         }
 
-        cacheDbSigAlgCode = concurrentSigner.getAlgorithmCode();
+        // identical concurrent requests share one response, its cache info is only used
+        // for requests via HTTP GET.
+        final ConcurrentContentSigner signer0 = concurrentSigner;
+        final boolean[] computed = new boolean[1];
+        RequestCoalescer.Key key = new RequestCoalescer.Key(responder, requestList.get(0),
+            signer0.getAlgorithmCode());
+        OcspRespWithCacheInfo resp = requestCoalescer.execute(key, () -> {
+          computed[0] = true;
+          return processRequest(responder, requestList, false, respExtensions, repControl,
+              signer0, true, null);
+        });
+
+        if (!computed[0]) {
+          responder.getMetrics().countCoalesced();
+        }
+        return (resp == null) ? unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater) : resp;
+      }
+
+      return processRequest(responder, requestList, nonceExtn != null, respExtensions,
+          repControl, concurrentSigner, viaGet, clientAddress);
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th);
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
+    }
+  } // method ask
+
+  private OcspRespWithCacheInfo processRequest(ResponderImpl responder,
+      List<CertID> requestList, boolean withNonce, List<Extension> respExtensions,
+      OcspRespControl repControl, ConcurrentContentSigner concurrentSigner, boolean viaGet,
+      String clientAddress)
+      throws IOException, DataAccessException, CertificateException, InvalidConfException {
+    RequestOption reqOpt = responder.getRequestOption();
+    ResponderSigner signer = responder.getSigner();
+    OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
+    ResponderMetrics metrics = responder.getMetrics();
+    int requestsSize = requestList.size();
+
+    AlgorithmCode cacheDbSigAlgCode = null;
+    BigInteger cacheDbSerialNumber = null;
+    Integer cacheDbIssuerId = null;
+
+    boolean canCacheDb = (requestsSize == 1) && (responseCacher != null)
+        && !withNonce && responseCacher.isOnService();
+    if (canCacheDb) {
+      // try to find the cached response
+      long start = System.nanoTime();
+      CertID certId = requestList.get(0);
+      HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
+      if (!reqOpt.allows(reqHashAlgo)) {
+        LOG.warn("CertID.hashAlgorithm {} not allowed",
+            reqHashAlgo != null ? reqHashAlgo : certId.getIssuer().hashAlgorithmOID());
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+      }
 
-        cacheDbIssuerId = responseCacher.getIssuerId(certId.getIssuer());
-        cacheDbSerialNumber = certId.getSerialNumber();
+      cacheDbSigAlgCode = concurrentSigner.getAlgorithmCode();
 
-        if (cacheDbIssuerId != null) {
-          OcspRespWithCacheInfo cachedResp = responseCacher.getOcspResponse(
-              cacheDbIssuerId.intValue(), cacheDbSerialNumber, cacheDbSigAlgCode);
-          if (cachedResp != null) {
-            return cachedResp;
-          }
-        } else if (master) {
-          // store the issuer certificate in cache database.
-          X509Certificate issuerCert = null;
-          for (OcspStore store : responder.getStores()) {
-            issuerCert = store.getIssuerCert(certId.getIssuer());
-            if (issuerCert != null) {
-              break;
-            }
-          }
+      cacheDbIssuerId = responseCacher.getIssuerId(certId.getIssuer());
+      cacheDbSerialNumber = certId.getSerialNumber();
 
+      if (cacheDbIssuerId != null) {
+        OcspRespWithCacheInfo cachedResp = responseCacher.getOcspResponse(
+            cacheDbIssuerId.intValue(), cacheDbSerialNumber, cacheDbSigAlgCode);
+        if (cachedResp != null) {
+          metrics.record(Stage.CACHE_LOOKUP, start);
+          metrics.countCacheHit();
+          return cachedResp;
+        }
+      } else if (master) {
+        // store the issuer certificate in cache database.
+        X509Certificate issuerCert = null;
+        for (OcspStore store : responder.getStores()) {
+          issuerCert = store.getIssuerCert(certId.getIssuer());
           if (issuerCert != null) {
-            cacheDbIssuerId = responseCacher.storeIssuer(issuerCert);
+            break;
           }
         }
 
-        if (cacheDbIssuerId == null) {
-          canCacheDb = false;
+        if (issuerCert != null) {
+          cacheDbIssuerId = responseCacher.storeIssuer(issuerCert);
         }
       }
 
-      ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
-      OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+      if (cacheDbIssuerId == null) {
+        canCacheDb = false;
+      }
 
-      for (int i = 0; i < requestsSize; i++) {
-        OcspRespWithCacheInfo failureOcspResp = processCertReq(requestList.get(i),
-            builder, responder, reqOpt, repOpt, repControl);
+      metrics.record(Stage.CACHE_LOOKUP, start);
+      metrics.countCacheMiss();
+    }
 
-        if (failureOcspResp != null) {
-          return failureOcspResp;
-        }
-      }
+    ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
+    OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
 
-      if (repControl.includeExtendedRevokeExtension) {
-        respExtensions.add(extension_pkix_ocsp_extendedRevoke);
-      }
+    for (int i = 0; i < requestsSize; i++) {
+      OcspRespWithCacheInfo failureOcspResp = processCertReq(requestList.get(i),
+          builder, responder, reqOpt, repOpt, repControl);
 
-      if (!respExtensions.isEmpty()) {
-        Extensions extns = new Extensions(respExtensions);
-        builder.setResponseExtensions(extns);
+      if (failureOcspResp != null) {
+        return failureOcspResp;
       }
+    }
 
-      TaggedCertSequence certsInResp;
-      EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
-      if (certsMode == EmbedCertsMode.SIGNER) {
-        certsInResp = signer.getSequenceOfCert();
-      } else if (certsMode == EmbedCertsMode.NONE) {
-        certsInResp = null;
-      } else {
-        // certsMode == EmbedCertsMode.SIGNER_AND_CA
-        certsInResp = signer.getSequenceOfCertChain();
-      }
+    if (repControl.includeExtendedRevokeExtension) {
+      respExtensions.add(extension_pkix_ocsp_extendedRevoke);
+    }
 
-      byte[] encodeOcspResponse;
-      try {
-        encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner, certsInResp, new Date());
-      } catch (NoIdleSignerException ex) {
-        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
-      } catch (OCSPException ex) {
-        LogUtil.error(LOG, ex, "answer() basicOcspBuilder.build");
-        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
-      }
+    if (!respExtensions.isEmpty()) {
+      Extensions extns = new Extensions(respExtensions);
+      builder.setResponseExtensions(extns);
+    }
 
-      // cache response in database
-      if (canCacheDb && repControl.canCacheInfo) {
-        // Don't cache the response with status UNKNOWN, since this may result in DDoS
-        // of storage
-        responseCacher.storeOcspResponse(cacheDbIssuerId.intValue(), cacheDbSerialNumber,
-            repControl.cacheThisUpdate, repControl.cacheNextUpdate, cacheDbSigAlgCode,
-            encodeOcspResponse);
-      }
+    TaggedCertSequence certsInResp;
+    EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
+    if (certsMode == EmbedCertsMode.SIGNER) {
+      certsInResp = signer.getSequenceOfCert();
+    } else if (certsMode == EmbedCertsMode.NONE) {
+      certsInResp = null;
+    } else {
+      // certsMode == EmbedCertsMode.SIGNER_AND_CA
+      certsInResp = signer.getSequenceOfCertChain();
+    }
 
-      if (viaGet && repControl.canCacheInfo) {
-        ResponseCacheInfo cacheInfo = new ResponseCacheInfo(repControl.cacheThisUpdate);
-        if (repControl.cacheNextUpdate != Long.MAX_VALUE) {
-          cacheInfo.setNextUpdate(repControl.cacheNextUpdate);
-        }
-        return new OcspRespWithCacheInfo(encodeOcspResponse, cacheInfo);
-      } else {
-        return new OcspRespWithCacheInfo(encodeOcspResponse, null);
-      }
-    } catch (Throwable th) {
-      LogUtil.error(LOG, th);
+    if (!tryAcquireRate(responder, clientAddress)) {
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
+    }
+
+    byte[] encodeOcspResponse;
+    long signStart = System.nanoTime();
+    try {
+      encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner, certsInResp, new Date());
+      metrics.record(Stage.SIGN, signStart);
+    } catch (NoIdleSignerException ex) {
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
+    } catch (OCSPException ex) {
+      LogUtil.error(LOG, ex, "answer() basicOcspBuilder.build");
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
     }
-  } // method ask
+
+    // cache response in database
+    if (canCacheDb && repControl.canCacheInfo) {
+      // Don't cache the response with status UNKNOWN, since this may result in DDoS
+      // of storage
+      responseCacher.storeOcspResponse(cacheDbIssuerId.intValue(), cacheDbSerialNumber,
+          repControl.cacheThisUpdate, repControl.cacheNextUpdate, cacheDbSigAlgCode,
+          encodeOcspResponse);
+    }
+
+    if (viaGet && repControl.canCacheInfo) {
+      ResponseCacheInfo cacheInfo = new ResponseCacheInfo(repControl.cacheThisUpdate);
+      if (repControl.cacheNextUpdate != Long.MAX_VALUE) {
+        cacheInfo.setNextUpdate(repControl.cacheNextUpdate);
+      }
+      return new OcspRespWithCacheInfo(encodeOcspResponse, cacheInfo);
+    } else {
+      return new OcspRespWithCacheInfo(encodeOcspResponse, null);
+    }
+  } // method processRequest
+
+  /**
+   * Takes one token of the client for a response which needs to be signed.
+   * @param responder the responder.
+   * @param clientAddress address of the client. {@code null} if not limited.
+   * @return whether the client has not exceeded its limit.
+   */
+  private boolean tryAcquireRate(ResponderImpl responder, String clientAddress) {
+    if (clientRateLimiter == null || clientAddress == null
+        || clientRateLimiter.tryAcquire(clientAddress)) {
+      return true;
+    }
+
+    LOG.debug("rate limit of client {} exceeded", clientAddress);
+    responder.getMetrics().countRateLimited();
+    return false;
+  }
 
   private OcspRespWithCacheInfo processCertReq(CertID certId, OCSPRespBuilder builder,
       ResponderImpl responder, RequestOption reqOpt, OcspServerConf.ResponseOption repOpt,
@@ -807,30 +945,56 @@ public class OcspServerImpl implements OcspServer {
 
     BigInteger serial = certId.getSerialNumber();
 
+    ResponderMetrics metrics = responder.getMetrics();
+    NegativeStatusCache negativeCache = responder.getNegativeCache();
+    boolean cachedUnknownSerial = false;
+    if (negativeCache != null) {
+      if (negativeCache.isIssuerUnknown(certId.getIssuer())) {
+        metrics.countNegativeCacheHit();
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+      }
+      // status of the store, including thisUpdate, nextUpdate, CrlID and archive cutoff
+      certStatusInfo = negativeCache.getUnknownSerial(certId.getIssuer(), serial);
+      cachedUnknownSerial = certStatusInfo != null;
+    }
+
     Date now = new Date();
-    for (OcspStore store : responder.getStores()) {
-      try {
-        certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
-            repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
-            responder.getResponderOption().isInheritCaRevocation());
-        if (certStatusInfo != null) {
-          break;
+    if (cachedUnknownSerial) {
+      metrics.countNegativeCacheHit();
+    } else {
+      long start = System.nanoTime();
+      for (OcspStore store : responder.getStores()) {
+        try {
+          certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
+              repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+              responder.getResponderOption().isInheritCaRevocation());
+          if (certStatusInfo != null) {
+            break;
+          }
+        } catch (OcspStoreException ex) {
+          exceptionOccurs = true;
+          LogUtil.error(LOG, ex, "getCertStatus() of CertStatusStore " + store.getName());
         }
-      } catch (OcspStoreException ex) {
-        exceptionOccurs = true;
-        LogUtil.error(LOG, ex, "getCertStatus() of CertStatusStore " + store.getName());
       }
+      metrics.record(Stage.STORE_QUERY, start);
     }
 
     if (certStatusInfo == null) {
       if (exceptionOccurs) {
         return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
+      } else if (negativeCache != null) {
+        negativeCache.addUnknownIssuer(certId.getIssuer());
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
       } else {
         certStatusInfo = CertStatusInfo.getIssuerUnknownCertStatusInfo(new Date(), null);
       }
+    } else if (negativeCache != null && !cachedUnknownSerial
+        && certStatusInfo.getCertStatus() == CertStatus.UNKNOWN) {
+      negativeCache.addUnknownSerial(certId.getIssuer(), serial, certStatusInfo);
     } // end if
 
     // certStatusInfo may not be null in any case, since at least one store is configured
+    metrics.countCertStatus(certStatusInfo.getCertStatus());
     Date thisUpdate = certStatusInfo.getThisUpdate();
     if (thisUpdate == null) {
       thisUpdate = new Date();
@@ -940,6 +1104,12 @@ public class OcspServerImpl implements OcspServer {
       HealthCheckResult storeHealth = new HealthCheckResult();
       storeHealth.setName("CertStatusStore." + store.getName());
       storeHealth.setHealthy(storeHealthy);
+      String datasourceName = storeDatasourceNames.get(store.getName());
+      DataSourceMetrics metrics = (datasourceName == null)
+          ? null : datasources.get(datasourceName).getMetrics();
+      if (metrics != null) {
+        storeHealth.setStatuses(metrics.getStatuses());
+      }
       result.addChildCheck(storeHealth);
     }
 
@@ -949,12 +1119,47 @@ public class OcspServerImpl implements OcspServer {
     HealthCheckResult signerHealth = new HealthCheckResult();
     signerHealth.setName("Signer");
     signerHealth.setHealthy(signerHealthy);
+    signerHealth.setStatuses(responder.getSigner().getMetrics());
     result.addChildCheck(signerHealth);
 
+    HealthCheckResult requestsHealth = new HealthCheckResult();
+    requestsHealth.setName("Requests");
+    requestsHealth.setHealthy(true);
+    requestsHealth.setStatuses(responder.getMetrics().getMetrics());
+    result.addChildCheck(requestsHealth);
+
     result.setHealthy(healthy);
     return result;
   } // method healthCheck
 
+  /**
+   * Returns the metrics of the datasources.
+   * @return the metrics keyed by the datasource name.
+   */
+  public Map<String, Object> getDatasourceMetrics() {
+    Map<String, Object> ret = new HashMap<>();
+    for (Map.Entry<String, DataSourceWrapper> entry : datasources.entrySet()) {
+      DataSourceMetrics metrics = entry.getValue().getMetrics();
+      if (metrics != null) {
+        ret.put(entry.getKey(), metrics.getStatuses());
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the number of signers of all responders, namely the maximal number of OCSP
+   * responses which can be signed at the same time.
+   * @return the number of signers, at least 1.
+   */
+  public int getSignerPoolSize() {
+    int size = 0;
+    for (ResponderSigner signer : signers.values()) {
+      size += signer.getPoolSize();
+    }
+    return Math.max(1, size);
+  }
+
   public void setOcspStoreFactoryRegister(OcspStoreFactoryRegister ocspStoreFactoryRegister) {
     this.ocspStoreFactoryRegister = ocspStoreFactoryRegister;
   }
@@ -1074,50 +1279,81 @@ public class OcspServerImpl implements OcspServer {
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
     }
 
-    OCSPReq ocspReq = new OCSPReq(req);
-    X509CertificateHolder[] certs = ocspReq.getCerts();
+    final OCSPReq ocspReq = new OCSPReq(req);
+    final X509CertificateHolder[] certs = ocspReq.getCerts();
     if (certs == null || certs.length < 1) {
       LOG.warn("no certificate found in request to verify the signature");
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
     }
 
-    ContentVerifierProvider cvp;
+    String certFp;
     try {
-      cvp = securityFactory.getContentVerifierProvider(certs[0]);
-    } catch (InvalidKeyException ex) {
-      String message = ex.getMessage();
-      LOG.warn("securityFactory.getContentVerifierProvider, InvalidKeyException: {}",
-          message);
-      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+      certFp = HashAlgo.SHA256.base64Hash(certs[0].getEncoded());
+    } catch (IOException ex) {
+      LOG.warn("could not encode the certificate in request: {}", ex.getMessage());
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
     }
 
-    boolean sigValid = ocspReq.isSignatureValid(cvp);
-    if (!sigValid) {
-      LOG.warn("request signature is invalid");
-      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
-    }
+    // the certification path of a recently seen signer certificate has been validated
+    VerifiedSignerCache.SignerValidator validator = new VerifiedSignerCache.SignerValidator() {
 
-    // validate the certPath
-    Date referenceTime = new Date();
-    if (canBuildCertpath(certs, requestOption, referenceTime)) {
-      try {
-        return OcspRequest.getInstance(req);
-      } catch (EncodingException ex) {
-        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+      @Override
+      public ContentVerifierProvider getVerifierProvider() {
+        try {
+          return securityFactory.getContentVerifierProvider(certs[0]);
+        } catch (InvalidKeyException ex) {
+          LOG.warn("securityFactory.getContentVerifierProvider, InvalidKeyException: {}",
+              ex.getMessage());
+          return null;
+        }
       }
+
+      @Override
+      public boolean isSignatureValid(ContentVerifierProvider verifierProvider)
+          throws OCSPException {
+        boolean sigValid = ocspReq.isSignatureValid(verifierProvider);
+        if (!sigValid) {
+          LOG.warn("request signature is invalid");
+        }
+        return sigValid;
+      }
+
+      @Override
+      public X509Certificate[] buildCertpath(Date referenceTime) {
+        X509Certificate[] certpath =
+            OcspServerImpl.buildCertpath(certs, requestOption, referenceTime);
+        if (certpath == null) {
+          LOG.warn("could not build certpath for the request's signer certificate");
+        }
+        return certpath;
+      }
+
+    };
+
+    if (!requestOption.getVerifiedSignerCache().verify(
+        certFp, System.currentTimeMillis(), validator)) {
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
     }
 
-    LOG.warn("could not build certpath for the request's signer certificate");
-    return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+    try {
+      return OcspRequest.getInstance(req);
+    } catch (EncodingException ex) {
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+    }
   } // method checkSignature
 
-  private static boolean canBuildCertpath(X509CertificateHolder[] certsInReq,
+  /**
+   * Builds and validates the certification path of the request's signer certificate.
+   * @return the validated certification path, or {@code null} if it could not be built or
+   *         is not valid.
+   */
+  private static X509Certificate[] buildCertpath(X509CertificateHolder[] certsInReq,
       RequestOption requestOption, Date referenceTime) {
     X509Certificate target;
     try {
       target = X509Util.toX509Cert(certsInReq[0].toASN1Structure());
     } catch (CertificateException ex) {
-      return false;
+      return null;
     }
     Set<Certificate> certstore = new HashSet<>();
 
@@ -1151,7 +1387,7 @@ public class OcspServerImpl implements OcspServer {
     if (model == null || model == CertpathValidationModel.PKIX) {
       for (X509Certificate m : certpath) {
         if (m.getNotBefore().after(now) || m.getNotAfter().before(now)) {
-          return false;
+          return null;
         }
       }
     } else if (model == CertpathValidationModel.CHAIN) {
@@ -1164,13 +1400,13 @@ public class OcspServerImpl implements OcspServer {
       X509Certificate targetCert = certpath[i];
       for (CertWithEncoded m : trustAnchors) {
         if (m.equalsCert(targetCert)) {
-          return true;
+          return certpath;
         }
       }
     }
 
-    return false;
-  } // method canBuildCertpath
+    return null;
+  } // method buildCertpath
 
   private static boolean getBoolean(Boolean bo, boolean defaultValue) {
     return (bo == null) ? defaultValue : bo.booleanValue();
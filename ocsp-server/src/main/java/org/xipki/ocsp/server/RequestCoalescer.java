@@ -0,0 +1,180 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server;
+
+import java.math.BigInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.api.Responder;
+import org.xipki.ocsp.server.type.CertID;
+import org.xipki.security.AlgorithmCode;
+import org.xipki.util.Args;
+import org.xipki.util.CompareUtil;
+
+/**
+ * Single-flight execution of identical OCSP requests: while the response for a
+ * (responder, CertID, signature algorithm) is being computed, concurrent requests for the
+ * same key wait for and share this response instead of computing and signing their own.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class RequestCoalescer {
+
+  public static final class Key {
+
+    private final Responder responder;
+
+    private final RequestIssuer issuer;
+
+    private final BigInteger serialNumber;
+
+    private final AlgorithmCode sigAlgCode;
+
+    private final int hashCode;
+
+    public Key(Responder responder, CertID certId, AlgorithmCode sigAlgCode) {
+      this.responder = Args.notNull(responder, "responder");
+      this.issuer = certId.getIssuer();
+      this.serialNumber = certId.getSerialNumber();
+      this.sigAlgCode = Args.notNull(sigAlgCode, "sigAlgCode");
+
+      // RequestIssuer.hashCode() encodes the issuer as hex, avoid it
+      byte[] data = issuer.getData();
+      int hash = 1;
+      for (int i = issuer.getFrom(), end = i + issuer.getLength(); i < end; i++) {
+        hash = 31 * hash + data[i];
+      }
+      hash = 31 * hash + serialNumber.hashCode();
+      this.hashCode = 31 * hash + sigAlgCode.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) obj;
+      return hashCode == other.hashCode && responder == other.responder
+          && sigAlgCode == other.sigAlgCode && serialNumber.equals(other.serialNumber)
+          && issuer.getLength() == other.issuer.getLength()
+          && CompareUtil.areEqual(issuer.getData(), issuer.getFrom(),
+              other.issuer.getData(), other.issuer.getFrom(), issuer.getLength());
+    }
+
+  }
+
+  private final ConcurrentHashMap<Key, CompletableFuture<OcspRespWithCacheInfo>> inflight =
+      new ConcurrentHashMap<>();
+
+  private final long maxWaitMs;
+
+  private final AtomicLong coalescedCount = new AtomicLong();
+
+  private final AtomicLong timeoutCount = new AtomicLong();
+
+  public RequestCoalescer(long maxWaitMs) {
+    this.maxWaitMs = Args.positive(maxWaitMs, "maxWaitMs");
+  }
+
+  /**
+   * Returns the response computed by the given computation, or by a concurrent one for
+   * the same key.
+   *
+   * @param key the key of the request.
+   * @param computation computes the response if no computation for the same key is in
+   *        progress.
+   * @return the response, or {@code null} if the computation in progress did not finish
+   *         within the maximal wait time.
+   * @throws Exception if the computation throws an exception.
+   */
+  public OcspRespWithCacheInfo execute(Key key, Callable<OcspRespWithCacheInfo> computation)
+      throws Exception {
+    CompletableFuture<OcspRespWithCacheInfo> future = new CompletableFuture<>();
+    CompletableFuture<OcspRespWithCacheInfo> existing = inflight.putIfAbsent(key, future);
+    if (existing == null) {
+      try {
+        OcspRespWithCacheInfo resp = computation.call();
+        future.complete(resp);
+        return resp;
+      } catch (Throwable th) {
+        future.completeExceptionally(th);
+        throw th;
+      } finally {
+        inflight.remove(key, future);
+      }
+    }
+
+    coalescedCount.incrementAndGet();
+    try {
+      return existing.get(maxWaitMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException ex) {
+      timeoutCount.incrementAndGet();
+      return null;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw ex;
+      }
+    }
+  }
+
+  public int getInflightCount() {
+    return inflight.size();
+  }
+
+  /**
+   * Returns the number of requests which have waited for a concurrent computation.
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * Returns the number of requests which have waited longer than the maximal wait time.
+   */
+  public long getTimeoutCount() {
+    return timeoutCount.get();
+  }
+
+}
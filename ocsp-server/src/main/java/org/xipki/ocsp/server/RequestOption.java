@@ -52,6 +52,8 @@ public class RequestOption {
 
   static final Set<HashAlgo> SUPPORTED_HASH_ALGORITHMS = new HashSet<>();
 
+  private static final int DFLT_VERIFIED_SIGNER_CACHE_SIZE = 100;
+
   static {
     SUPPORTED_HASH_ALGORITHMS.add(HashAlgo.SHA1);
     SUPPORTED_HASH_ALGORITHMS.add(HashAlgo.SHA224);
@@ -90,7 +92,11 @@ public class RequestOption {
 
   private final CertpathValidationModel certpathValidationModel;
 
-  RequestOption(OcspServerConf.RequestOption conf) throws InvalidConfException {
+  // built with the trust anchors, hence discarded together with them when the configuration
+  // is reloaded.
+  private final VerifiedSignerCache verifiedSignerCache;
+
+  public RequestOption(OcspServerConf.RequestOption conf) throws InvalidConfException {
     Args.notNull(conf, "conf");
 
     supportsHttpGet = conf.isSupportsHttpGet();
@@ -149,11 +155,20 @@ public class RequestOption {
       trustAnchors = null;
       certs = null;
       certpathValidationModel = CertpathValidationModel.PKIX;
+      verifiedSignerCache = null;
       return;
     }
 
     certpathValidationModel = certpathConf.getValidationModel();
 
+    Integer cacheSize = conf.getVerifiedSignerCacheSize();
+    if (cacheSize == null) {
+      cacheSize = DFLT_VERIFIED_SIGNER_CACHE_SIZE;
+    } else if (cacheSize < 0) {
+      throw new InvalidConfException("invalid verifiedSignerCacheSize " + cacheSize);
+    }
+    verifiedSignerCache = new VerifiedSignerCache(cacheSize, certpathValidationModel);
+
     try {
       Set<X509Certificate> tmpCerts = getCerts(certpathConf.getTrustAnchors());
       trustAnchors = new HashSet<>(tmpCerts.size());
@@ -221,6 +236,14 @@ public class RequestOption {
     return trustAnchors;
   }
 
+  /**
+   * Gets the cache of the request signers whose certification path has been validated.
+   * @return the cache, {@code null} if no certification path validation is configured.
+   */
+  public VerifiedSignerCache getVerifiedSignerCache() {
+    return verifiedSignerCache;
+  }
+
   public boolean isVersionAllowed(Integer version) {
     return versions == null || versions.contains(version);
   }
@@ -42,13 +42,19 @@ public class ResponderImpl implements Responder {
 
   private final List<OcspStore> stores;
 
+  private final NegativeStatusCache negativeCache;
+
+  private final ResponderMetrics metrics = new ResponderMetrics();
+
   ResponderImpl(ResponderOption responderOption, RequestOption requestOption,
-      ResponseOption responseOption, ResponderSigner signer, List<OcspStore> stores) {
+      ResponseOption responseOption, ResponderSigner signer, List<OcspStore> stores,
+      NegativeStatusCache negativeCache) {
     this.responderOption = Args.notNull(responderOption, "responderOption");
     this.requestOption = Args.notNull(requestOption, "requestOption");
     this.responseOption = Args.notNull(responseOption, "responseOption");
     this.signer = Args.notNull(signer, "signer");
     this.stores = Args.notEmpty(stores, "stores");
+    this.negativeCache = negativeCache;
   }
 
   public ResponderOption getResponderOption() {
@@ -71,6 +77,14 @@ public class ResponderImpl implements Responder {
     return stores;
   }
 
+  NegativeStatusCache getNegativeCache() {
+    return negativeCache;
+  }
+
+  public ResponderMetrics getMetrics() {
+    return metrics;
+  }
+
   @Override
   public int getMaxRequestSize() {
     return requestOption.getMaxRequestSize();
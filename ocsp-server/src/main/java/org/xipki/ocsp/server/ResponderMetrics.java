@@ -0,0 +1,213 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xipki.ocsp.api.CertStatus;
+import org.xipki.util.LatencyHistogram;
+
+/**
+ * Per-responder counters and per-stage latencies of the OCSP request processing. All
+ * collectors are lock-free.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class ResponderMetrics {
+
+  public enum Stage {
+
+    /**
+     * Parsing of the request, including the verification of its signature.
+     */
+    PARSE("parse"),
+
+    /**
+     * Lookup of the response in the response cache.
+     */
+    CACHE_LOOKUP("cacheLookup"),
+
+    /**
+     * Query of the certificate status in the stores, for each CertID.
+     */
+    STORE_QUERY("storeQuery"),
+
+    /**
+     * Building, signing (including the waiting for an idle signer) and encoding of the
+     * response.
+     */
+    SIGN("sign"),
+
+    /**
+     * Complete processing of a request.
+     */
+    TOTAL("total");
+
+    private final String text;
+
+    Stage(String text) {
+      this.text = text;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+  } // class Stage
+
+  private final LatencyHistogram[] histograms;
+
+  private final LongAdder[] responseStatuses;
+
+  private final LongAdder[] certStatuses;
+
+  private final LongAdder cacheHits = new LongAdder();
+
+  private final LongAdder cacheMisses = new LongAdder();
+
+  private final LongAdder negativeCacheHits = new LongAdder();
+
+  private final LongAdder coalesced = new LongAdder();
+
+  private final LongAdder rateLimited = new LongAdder();
+
+  public ResponderMetrics() {
+    histograms = new LatencyHistogram[Stage.values().length];
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+
+    responseStatuses = newAdders(OcspResponseStatus.values().length);
+    certStatuses = newAdders(CertStatus.values().length);
+  }
+
+  /**
+   * Records the time elapsed since {@code startNanos} for the given stage.
+   * @param stage the stage. Must not be {@code null}.
+   * @param startNanos start time returned by {@link System#nanoTime()}.
+   * @return the current time, which can be used as start time of the next stage.
+   */
+  public long record(Stage stage, long startNanos) {
+    long now = System.nanoTime();
+    histograms[stage.ordinal()].record(now - startNanos);
+    return now;
+  }
+
+  public LatencyHistogram getHistogram(Stage stage) {
+    return histograms[stage.ordinal()];
+  }
+
+  public void countResponseStatus(OcspResponseStatus status) {
+    responseStatuses[status.ordinal()].increment();
+  }
+
+  public void countCertStatus(CertStatus status) {
+    certStatuses[status.ordinal()].increment();
+  }
+
+  public void countCacheHit() {
+    cacheHits.increment();
+  }
+
+  public void countCacheMiss() {
+    cacheMisses.increment();
+  }
+
+  public void countNegativeCacheHit() {
+    negativeCacheHits.increment();
+  }
+
+  public void countCoalesced() {
+    coalesced.increment();
+  }
+
+  public void countRateLimited() {
+    rateLimited.increment();
+  }
+
+  public void reset() {
+    for (LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+    resetAdders(responseStatuses);
+    resetAdders(certStatuses);
+    cacheHits.reset();
+    cacheMisses.reset();
+    negativeCacheHits.reset();
+    coalesced.reset();
+    rateLimited.reset();
+  }
+
+  /**
+   * Returns the counters and the summary of all stages.
+   * @return the metrics. Durations are in milliseconds.
+   */
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> stages = new LinkedHashMap<>();
+    for (Stage stage : Stage.values()) {
+      stages.put(stage.getText(), histograms[stage.ordinal()].toStatusMap());
+    }
+
+    Map<String, Object> respStatuses = new LinkedHashMap<>();
+    for (OcspResponseStatus status : OcspResponseStatus.values()) {
+      respStatuses.put(status.name(), responseStatuses[status.ordinal()].sum());
+    }
+
+    Map<String, Object> certStatusCounts = new LinkedHashMap<>();
+    for (CertStatus status : CertStatus.values()) {
+      certStatusCounts.put(status.name().toLowerCase(), certStatuses[status.ordinal()].sum());
+    }
+
+    long hits = cacheHits.sum();
+    long misses = cacheMisses.sum();
+    Map<String, Object> cache = new LinkedHashMap<>();
+    cache.put("hits", hits);
+    cache.put("misses", misses);
+    cache.put("hitRatio", (hits + misses == 0) ? 0 : (double) hits / (hits + misses));
+
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("stages", stages);
+    metrics.put("responseStatus", respStatuses);
+    metrics.put("certStatus", certStatusCounts);
+    metrics.put("responseCache", cache);
+    metrics.put("negativeCacheHits", negativeCacheHits.sum());
+    metrics.put("coalesced", coalesced.sum());
+    metrics.put("rateLimited", rateLimited.sum());
+    return metrics;
+  }
+
+  private static LongAdder[] newAdders(int count) {
+    LongAdder[] adders = new LongAdder[count];
+    for (int i = 0; i < count; i++) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+
+  private static void resetAdders(LongAdder[] adders) {
+    for (LongAdder adder : adders) {
+      adder.reset();
+    }
+  }
+
+}
@@ -33,6 +33,7 @@ import org.bouncycastle.asn1.x509.Certificate;
 import org.xipki.ocsp.server.type.ResponderID;
 import org.xipki.ocsp.server.type.TaggedCertSequence;
 import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.DfltConcurrentContentSigner;
 import org.xipki.security.HashAlgo;
 import org.xipki.util.Args;
 
@@ -160,6 +161,34 @@ class ResponderSigner {
     return sequenceOfCertChain;
   }
 
+  /**
+   * Returns the metrics of the signers, keyed by the signature algorithm name.
+   * @return the metrics, never {@code null}.
+   */
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new HashMap<>();
+    for (ConcurrentContentSigner signer : signers) {
+      if (signer instanceof DfltConcurrentContentSigner) {
+        metrics.put(signer.getAlgorithmName(),
+            ((DfltConcurrentContentSigner) signer).getMetrics());
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * Returns the number of signers in the pools of all signature algorithms.
+   * @return the number of signers, 1 if not known.
+   */
+  public int getPoolSize() {
+    int size = 0;
+    for (ConcurrentContentSigner signer : signers) {
+      size += (signer instanceof DfltConcurrentContentSigner)
+          ? ((DfltConcurrentContentSigner) signer).getPoolSize() : 1;
+    }
+    return Math.max(1, size);
+  }
+
   public boolean isHealthy() {
     for (ConcurrentContentSigner signer : signers) {
       if (!signer.isHealthy()) {
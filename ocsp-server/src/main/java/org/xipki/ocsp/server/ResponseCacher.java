@@ -37,6 +37,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.bouncycastle.crypto.Digest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataAccessException.Reason;
 import org.xipki.datasource.DataSourceWrapper;
@@ -131,6 +132,12 @@ class ResponseCacher implements Closeable {
 
   private DataSourceWrapper datasource;
 
+  // column ISSUER.CERT, binary or Base64 encoded
+  private BinaryColumn issuerCertColumn;
+
+  // column OCSP.RESP, binary or Base64 encoded
+  private BinaryColumn respColumn;
+
   private IssuerStore issuerStore;
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
@@ -159,7 +166,9 @@ class ResponseCacher implements Closeable {
     return onService.get() && issuerStore != null;
   }
 
-  void init() {
+  void init() throws DataAccessException {
+    issuerCertColumn = BinaryColumn.detect(datasource, null, "ISSUER", "CERT");
+    respColumn = BinaryColumn.detect(datasource, null, "OCSP", "RESP");
     updateCacheStore();
 
     scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
@@ -234,7 +243,7 @@ class ResponseCacher implements Closeable {
         int idx = 1;
         ps.setInt(idx++, id);
         ps.setString(idx++, sha1FpCert);
-        ps.setString(idx++, Base64.encodeToString(encodedCert));
+        issuerCertColumn.set(ps, idx++, encodedCert);
 
         ps.execute();
 
@@ -264,7 +273,7 @@ class ResponseCacher implements Closeable {
 
     try {
       ps.setLong(1, id);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (!rs.next()) {
         return null;
       }
@@ -291,8 +300,7 @@ class ResponseCacher implements Closeable {
       }
 
       long thisUpdate = rs.getLong("THIS_UPDATE");
-      String b64Resp = rs.getString("RESP");
-      byte[] encoded = Base64.decodeFast(b64Resp);
+      byte[] encoded = respColumn.get(rs);
       ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
       if (nextUpdate != 0) {
         cacheInfo.setNextUpdate(nextUpdate);
@@ -317,7 +325,6 @@ class ResponseCacher implements Closeable {
         String sql = SQL_ADD_RESP;
         PreparedStatement ps = datasource.prepareStatement(conn, sql);
 
-        String b64Response = Base64.encodeToString(response);
         Boolean dataIntegrityViolationException = null;
         try {
           int idx = 1;
@@ -330,7 +337,7 @@ class ResponseCacher implements Closeable {
           } else {
             ps.setNull(idx++, java.sql.Types.BIGINT);
           }
-          ps.setString(idx++, b64Response);
+          respColumn.set(ps, idx++, response);
           ps.execute();
         } catch (SQLException ex) {
           DataAccessException dex = datasource.translate(sql, ex);
@@ -358,9 +365,9 @@ class ResponseCacher implements Closeable {
           } else {
             ps.setNull(idx++, java.sql.Types.BIGINT);
           }
-          ps.setString(idx++, b64Response);
+          respColumn.set(ps, idx++, response);
           ps.setLong(idx++, id);
-          ps.executeUpdate();
+          datasource.executeUpdate(ps, sql);
         } catch (SQLException ex) {
           throw datasource.translate(sql, ex);
         } finally {
@@ -383,7 +390,7 @@ class ResponseCacher implements Closeable {
     try {
       ps = datasource.prepareStatement(sql);
       ps.setLong(1, maxThisUpdate);
-      return ps.executeUpdate();
+      return datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -418,7 +425,7 @@ class ResponseCacher implements Closeable {
       Set<Integer> ids = new HashSet<>();
       try {
         ps = datasource.prepareStatement(SQL_SELECT_ISSUER_ID);
-        rs = ps.executeQuery();
+        rs = datasource.executeQuery(ps, SQL_SELECT_ISSUER_ID);
 
         if (master) {
           // If in master mode, the issuers are always up-to-date. Here just to check
@@ -457,9 +464,9 @@ class ResponseCacher implements Closeable {
           }
 
           ps.setInt(1, id);
-          rs = ps.executeQuery();
+          rs = datasource.executeQuery(ps, sqlSelectIssuerCert);
           rs.next();
-          X509Certificate cert = X509Util.parseCert(rs.getString("CERT").getBytes());
+          X509Certificate cert = X509Util.parseCert(issuerCertColumn.get(rs));
           IssuerEntry caInfoEntry = new IssuerEntry(id, cert);
           issuerStore.addIssuer(caInfoEntry);
           LOG.info("added issuer {}", id);
@@ -495,14 +502,14 @@ class ResponseCacher implements Closeable {
 
     try {
       ps = datasource.prepareStatement(SQL_SELECT_ISSUER);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, SQL_SELECT_ISSUER);
       List<IssuerEntry> caInfos = new LinkedList<>();
 
       PreparedStatement deleteIssuerStmt = null;
 
       while (rs.next()) {
         int id = rs.getInt("ID");
-        X509Certificate cert = X509Util.parseCert(rs.getString("CERT").getBytes());
+        X509Certificate cert = X509Util.parseCert(issuerCertColumn.get(rs));
         IssuerEntry caInfoEntry = new IssuerEntry(id, cert);
         RequestIssuer reqIssuer = new RequestIssuer(HashAlgo.SHA1,
             caInfoEntry.getEncodedHash(HashAlgo.SHA1));
@@ -522,7 +529,7 @@ class ResponseCacher implements Closeable {
           }
 
           deleteIssuerStmt.setInt(1, id);
-          deleteIssuerStmt.executeUpdate();
+          datasource.executeUpdate(deleteIssuerStmt, SQL_DELETE_ISSUER);
 
           LOG.warn("Delete duplicated issuer {}: {}", id, subject);
         } else {
@@ -0,0 +1,176 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.xipki.security.CertpathValidationModel;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * Caches the signer certificates of requests whose certification path has been validated, so
+ * that only the signature needs to be verified for the following requests of the same signer.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class VerifiedSignerCache {
+
+  /**
+   * Validates the signer of a request if it is not cached.
+   */
+  public interface SignerValidator {
+
+    /**
+     * Gets the verifier provider of the signer certificate.
+     * @return the verifier provider, or {@code null} if the public key is invalid.
+     */
+    ContentVerifierProvider getVerifierProvider();
+
+    /**
+     * Verifies the signature of the request.
+     * @param verifierProvider
+     *          Verifier provider of the signer certificate.
+     * @return whether the signature is valid.
+     * @throws OCSPException
+     *           if the signature could not be verified.
+     */
+    boolean isSignatureValid(ContentVerifierProvider verifierProvider) throws OCSPException;
+
+    /**
+     * Builds and validates the certification path of the signer certificate.
+     * @param referenceTime
+     *          Time at which the certification path is validated.
+     * @return the validated certification path, or {@code null} if it could not be built or
+     *         is not valid.
+     */
+    X509Certificate[] buildCertpath(Date referenceTime);
+
+  }
+
+  private static class VerifiedSigner {
+
+    private final ContentVerifierProvider verifierProvider;
+
+    // the certification path is valid within [notBefore, notAfter]
+    private final long notBefore;
+
+    private final long notAfter;
+
+    VerifiedSigner(ContentVerifierProvider verifierProvider, long notBefore, long notAfter) {
+      this.verifierProvider = verifierProvider;
+      this.notBefore = notBefore;
+      this.notAfter = notAfter;
+    }
+
+    boolean isValid(long time) {
+      return time >= notBefore && time <= notAfter;
+    }
+
+  }
+
+  private final CertpathValidationModel certpathValidationModel;
+
+  // signer certificate fingerprint to VerifiedSigner, null if disabled
+  private final LruCache<String, VerifiedSigner> verifiedSigners;
+
+  /**
+   * Constructor.
+   * @param maxSize
+   *          Maximal number of cached signer certificates, 0 to disable the cache.
+   * @param certpathValidationModel
+   *          Certification path validation model.
+   */
+  public VerifiedSignerCache(int maxSize, CertpathValidationModel certpathValidationModel) {
+    Args.notNegative(maxSize, "maxSize");
+    this.certpathValidationModel = Args.notNull(certpathValidationModel,
+        "certpathValidationModel");
+    this.verifiedSigners = (maxSize == 0) ? null : new LruCache<>(maxSize);
+  }
+
+  /**
+   * Verifies the signature of a request. The certification path of the signer certificate is
+   * only validated if the signer is not cached, or if the cached validation is not valid at
+   * the given time any more.
+   *
+   * @param certFp
+   *          Fingerprint of the signer certificate.
+   * @param time
+   *          Current time in milliseconds.
+   * @param validator
+   *          Validator of the request's signer.
+   * @return whether the signature is valid and the signer is trusted.
+   * @throws OCSPException
+   *           if the signature could not be verified.
+   */
+  public boolean verify(String certFp, long time, SignerValidator validator)
+      throws OCSPException {
+    Args.notNull(certFp, "certFp");
+    Args.notNull(validator, "validator");
+
+    if (verifiedSigners != null) {
+      VerifiedSigner verifiedSigner = verifiedSigners.get(certFp);
+      if (verifiedSigner != null) {
+        if (verifiedSigner.isValid(time)) {
+          return validator.isSignatureValid(verifiedSigner.verifierProvider);
+        }
+
+        // validate again, e.g. the certificate may have been expired
+        verifiedSigners.remove(certFp);
+      }
+    }
+
+    ContentVerifierProvider cvp = validator.getVerifierProvider();
+    if (cvp == null || !validator.isSignatureValid(cvp)) {
+      return false;
+    }
+
+    X509Certificate[] certpath = validator.buildCertpath(new Date(time));
+    if (certpath == null) {
+      return false;
+    }
+
+    if (verifiedSigners != null) {
+      long notBefore = Long.MIN_VALUE;
+      long notAfter = Long.MAX_VALUE;
+      if (certpathValidationModel != CertpathValidationModel.CHAIN) {
+        for (X509Certificate m : certpath) {
+          notBefore = Math.max(notBefore, m.getNotBefore().getTime());
+          notAfter = Math.min(notAfter, m.getNotAfter().getTime());
+        }
+      }
+      verifiedSigners.put(certFp, new VerifiedSigner(cvp, notBefore, notAfter));
+    }
+
+    return true;
+  } // method verify
+
+  public int getMaxSize() {
+    return (verifiedSigners == null) ? 0 : verifiedSigners.maxSize();
+  }
+
+  public int size() {
+    return (verifiedSigners == null) ? 0 : verifiedSigners.size();
+  }
+
+}
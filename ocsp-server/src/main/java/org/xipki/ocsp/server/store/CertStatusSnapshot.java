@@ -0,0 +1,360 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.util.X509Util;
+
+/**
+ * Immutable certificate status snapshot, memory-mapped from a file written by
+ * {@link CertStatusSnapshotWriter}.
+ *
+ * <p>File layout, all numbers are big-endian:
+ * <pre>
+ * header:  MAGIC, version (int), creation time in ms (long), certhash algorithm
+ *          (UTF, empty if no hash is contained), number of issuers (int)
+ * issuer:  certificate (int length + DER), revocation time in ms (long, 0 if not revoked),
+ *          CRL info (UTF, empty if not present), serial number length (byte), number of
+ *          entries (long), followed by the entries sorted by serial number
+ * entry:   serial number (unsigned, left-padded with zeros), flags (byte), revocation
+ *          reason (byte), notBefore, notAfter, revocation time, invalidity time
+ *          (long, in seconds, 0 if not present), certhash
+ * trailer: END_MAGIC
+ * </pre>
+ *
+ * <p>Only the header and the issuers are read into the heap, the entries are accessed
+ * by binary search directly in the mapped file.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+final class CertStatusSnapshot {
+
+  static final class Entries {
+
+    private final int serialLen;
+
+    private final int entryLen;
+
+    private final long size;
+
+    private final int entriesPerSegment;
+
+    private final MappedByteBuffer[] segments;
+
+    private Entries(FileChannel channel, long offset, int serialLen, int entryLen, long size)
+        throws IOException {
+      this.serialLen = serialLen;
+      this.entryLen = entryLen;
+      this.size = size;
+      // a mapping may not exceed 2 GB
+      this.entriesPerSegment = Integer.MAX_VALUE / entryLen;
+
+      int numSegments = (int) ((size + entriesPerSegment - 1) / entriesPerSegment);
+      this.segments = new MappedByteBuffer[numSegments];
+      for (int i = 0; i < numSegments; i++) {
+        long first = (long) i * entriesPerSegment;
+        long len = Math.min(entriesPerSegment, size - first) * entryLen;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * entryLen, len);
+      }
+    }
+
+    long size() {
+      return size;
+    }
+
+    /**
+     * Binary search of the serial number.
+     * @param serial positive serial number.
+     * @return the index of the entry, or -1 if not found.
+     */
+    long find(BigInteger serial) {
+      byte[] bytes = serial.toByteArray();
+      // skip the sign byte
+      int from = (bytes[0] == 0 && bytes.length > 1) ? 1 : 0;
+      if (bytes.length - from > serialLen) {
+        return -1;
+      }
+
+      long low = 0;
+      long high = size - 1;
+      while (low <= high) {
+        long mid = (low + high) >>> 1;
+        int cmp = compare(mid, bytes, from);
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    private int compare(long index, byte[] serial, int from) {
+      ByteBuffer segment = segment(index);
+      int off = offset(index);
+      int padding = serialLen - (serial.length - from);
+      for (int i = 0; i < serialLen; i++) {
+        int a = segment.get(off + i) & 0xFF;
+        int b = (i < padding) ? 0 : serial[from + i - padding] & 0xFF;
+        if (a != b) {
+          return a - b;
+        }
+      }
+      return 0;
+    }
+
+    int getFlags(long index) {
+      return segment(index).get(offset(index) + serialLen) & 0xFF;
+    }
+
+    int getReason(long index) {
+      return segment(index).get(offset(index) + serialLen + 1) & 0xFF;
+    }
+
+    long getNotBefore(long index) {
+      return getLong(index, 0);
+    }
+
+    long getNotAfter(long index) {
+      return getLong(index, 1);
+    }
+
+    long getRevocationTime(long index) {
+      return getLong(index, 2);
+    }
+
+    long getInvalidityTime(long index) {
+      return getLong(index, 3);
+    }
+
+    byte[] getCertHash(long index, int hashLen) {
+      ByteBuffer segment = segment(index);
+      int off = offset(index) + serialLen + FIXED_ENTRY_LEN;
+      byte[] hash = new byte[hashLen];
+      for (int i = 0; i < hashLen; i++) {
+        hash[i] = segment.get(off + i);
+      }
+      return hash;
+    }
+
+    private long getLong(long index, int fieldIndex) {
+      return segment(index).getLong(offset(index) + serialLen + 2 + 8 * fieldIndex);
+    }
+
+    private ByteBuffer segment(long index) {
+      return segments[(int) (index / entriesPerSegment)];
+    }
+
+    private int offset(long index) {
+      return (int) (index % entriesPerSegment) * entryLen;
+    }
+
+  } // class Entries
+
+  static final byte[] MAGIC = {'X', 'I', 'P', 'K', 'I', 'S', 'S', 0x01};
+
+  static final byte[] END_MAGIC = {'X', 'I', 'P', 'K', 'I', 'S', 'S', 0x00};
+
+  static final int VERSION = 1;
+
+  static final int FLAG_REVOKED = 0x01;
+
+  static final int FLAG_CERTHASH = 0x02;
+
+  // flags, reason, notBefore, notAfter, revocation time and invalidity time
+  static final int FIXED_ENTRY_LEN = 2 + 4 * 8;
+
+  static final int MAX_SERIAL_LEN = 32;
+
+  private final File file;
+
+  private final long lastModified;
+
+  private final long length;
+
+  private final Date creationTime;
+
+  private final HashAlgo certHashAlgo;
+
+  private final IssuerStore issuerStore;
+
+  private final Entries[] entries;
+
+  private CertStatusSnapshot(File file, long lastModified, long length, Date creationTime,
+      HashAlgo certHashAlgo, IssuerStore issuerStore, Entries[] entries) {
+    this.file = file;
+    this.lastModified = lastModified;
+    this.length = length;
+    this.creationTime = creationTime;
+    this.certHashAlgo = certHashAlgo;
+    this.issuerStore = issuerStore;
+    this.entries = entries;
+  }
+
+  static CertStatusSnapshot load(File file) throws IOException {
+    // lastModified before opening the file, a concurrent replacement will be detected later
+    long lastModified = file.lastModified();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      long length = raf.length();
+
+      byte[] magic = new byte[MAGIC.length];
+      raf.readFully(magic);
+      if (!Arrays.equals(MAGIC, magic)) {
+        throw new IOException("not a certificate status snapshot: " + file.getPath());
+      }
+
+      int version = raf.readInt();
+      if (version != VERSION) {
+        throw new IOException("unsupported snapshot version " + version);
+      }
+
+      Date creationTime = new Date(raf.readLong());
+      String str = raf.readUTF();
+      HashAlgo certHashAlgo = str.isEmpty() ? null : HashAlgo.getNonNullInstance(str);
+      int hashLen = (certHashAlgo == null) ? 0 : certHashAlgo.getLength();
+
+      int numIssuers = raf.readInt();
+      if (numIssuers < 0) {
+        throw new IOException("invalid number of issuers " + numIssuers);
+      }
+
+      List<IssuerEntry> issuers = new ArrayList<>(numIssuers);
+      Entries[] entries = new Entries[numIssuers];
+      FileChannel channel = raf.getChannel();
+
+      for (int id = 0; id < numIssuers; id++) {
+        int certLen = raf.readInt();
+        if (certLen <= 0 || certLen > 65535) {
+          throw new IOException("invalid length of issuer certificate " + certLen);
+        }
+        byte[] encodedCert = new byte[certLen];
+        raf.readFully(encodedCert);
+
+        IssuerEntry issuer;
+        try {
+          X509Certificate cert = X509Util.parseCert(encodedCert);
+          issuer = new IssuerEntry(id, cert);
+        } catch (CertificateException ex) {
+          throw new IOException("invalid issuer certificate: " + ex.getMessage(), ex);
+        }
+
+        long revTime = raf.readLong();
+        if (revTime != 0) {
+          issuer.setRevocationInfo(new Date(revTime));
+        }
+
+        str = raf.readUTF();
+        if (!str.isEmpty()) {
+          try {
+            issuer.setCrlInfo(new CrlInfo(str));
+          } catch (RuntimeException ex) {
+            throw new IOException("invalid CRL info: " + ex.getMessage(), ex);
+          }
+        }
+
+        for (IssuerEntry existingIssuer : issuers) {
+          if (existingIssuer.matchHash(new RequestIssuer(HashAlgo.SHA1,
+              issuer.getEncodedHash(HashAlgo.SHA1)))) {
+            throw new IOException("found at least two issuers with the same subject and key");
+          }
+        }
+        issuers.add(issuer);
+
+        int serialLen = raf.readByte();
+        long size = raf.readLong();
+        if (serialLen < 1 || serialLen > MAX_SERIAL_LEN || size < 0) {
+          throw new IOException("invalid entries header of issuer " + id);
+        }
+
+        int entryLen = serialLen + FIXED_ENTRY_LEN + hashLen;
+        long offset = raf.getFilePointer();
+        long end = offset + size * entryLen;
+        if (end > length - END_MAGIC.length) {
+          throw new IOException("truncated snapshot file " + file.getPath());
+        }
+
+        entries[id] = new Entries(channel, offset, serialLen, entryLen, size);
+        raf.seek(end);
+      }
+
+      raf.readFully(magic);
+      if (!Arrays.equals(END_MAGIC, magic) || raf.getFilePointer() != length) {
+        throw new IOException("corrupted snapshot file " + file.getPath());
+      }
+
+      return new CertStatusSnapshot(file, lastModified, length, creationTime, certHashAlgo,
+          new IssuerStore(issuers), entries);
+    }
+  }
+
+  /**
+   * Whether the snapshot file has been replaced since this snapshot has been loaded.
+   */
+  boolean isOutdated() {
+    return file.lastModified() != lastModified || file.length() != length;
+  }
+
+  Date getCreationTime() {
+    return creationTime;
+  }
+
+  HashAlgo getCertHashAlgo() {
+    return certHashAlgo;
+  }
+
+  IssuerEntry getIssuer(RequestIssuer reqIssuer) {
+    return issuerStore.getIssuerForFp(reqIssuer);
+  }
+
+  Entries getEntries(IssuerEntry issuer) {
+    return entries[issuer.getId()];
+  }
+
+  long size() {
+    long size = 0;
+    for (Entries m : entries) {
+      size += m.size();
+    }
+    return size;
+  }
+
+  int getNumIssuers() {
+    return entries.length;
+  }
+
+}
@@ -0,0 +1,337 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.DERGeneralizedTime;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.ocsp.CrlID;
+import org.bouncycastle.asn1.x509.Extension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.BinaryColumn;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.CrlReason;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+import org.xipki.util.Base64;
+import org.xipki.util.StringUtil;
+
+/**
+ * Generates the certificate status snapshot used by {@link SnapshotCertStatusStore}
+ * from the OCSP database, the CA database or a CRL.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CertStatusSnapshotGenerator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertStatusSnapshotGenerator.class);
+
+  private static final int PAGE_SIZE = 1000;
+
+  private CertStatusSnapshotGenerator() {
+  }
+
+  /**
+   * Reads the certificate status from the OCSP database.
+   * @param datasource datasource of the OCSP database. Must not be {@code null}.
+   * @return the writer containing all issuers and certificates.
+   * @throws DataAccessException if database error occurs.
+   * @throws IOException if the content of the database is invalid.
+   */
+  public static CertStatusSnapshotWriter fromOcspDb(DataSourceWrapper datasource)
+      throws DataAccessException, IOException {
+    Args.notNull(datasource, "datasource");
+    HashAlgo certHashAlgo = DbCertStatusStore.getCertHashAlgo(datasource);
+    CertStatusSnapshotWriter writer = new CertStatusSnapshotWriter(certHashAlgo);
+
+    BinaryColumn issuerCertColumn = BinaryColumn.detect(datasource, null, "ISSUER", "CERT");
+    Map<Integer, Integer> issuerIndexes = new HashMap<>();
+    String sql = "SELECT ID,REV_INFO,CERT,CRL_INFO FROM ISSUER";
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    ResultSet rs = null;
+    try {
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        X509Certificate cert = parseCert(issuerCertColumn.get(rs));
+        String str = rs.getString("REV_INFO");
+        Date revTime = (str == null) ? null
+            : CertRevocationInfo.fromEncoded(str).getRevocationTime();
+        str = rs.getString("CRL_INFO");
+        CrlInfo crlInfo = StringUtil.isBlank(str) ? null : new CrlInfo(str);
+        issuerIndexes.put(rs.getInt("ID"), writer.addIssuer(cert, revTime, crlInfo));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    sql = datasource.buildSelectFirstSql(PAGE_SIZE, "ID ASC",
+        "ID,IID,SN,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH FROM CERT WHERE ID>?");
+    long num = 0;
+    long lastId = 0;
+    ps = datasource.prepareStatement(sql);
+    try {
+      while (true) {
+        ps.setLong(1, lastId);
+        rs = ps.executeQuery();
+        int rows = 0;
+        while (rs.next()) {
+          rows++;
+          lastId = rs.getLong("ID");
+          Integer issuerIndex = issuerIndexes.get(rs.getInt("IID"));
+          if (issuerIndex == null) {
+            continue;
+          }
+
+          CrlReason reason = rs.getBoolean("REV") ? CrlReason.forReasonCode(rs.getInt("RR")) : null;
+          String b64CertHash = rs.getString("HASH");
+          writer.addEntry(issuerIndex, new BigInteger(rs.getString("SN"), 16),
+              rs.getLong("NBEFORE"), rs.getLong("NAFTER"), reason, rs.getLong("RT"),
+              rs.getLong("RIT"), (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash));
+          num++;
+        }
+        rs.close();
+        rs = null;
+
+        if (rows < PAGE_SIZE) {
+          break;
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    LOG.info("read {} certificates from the OCSP database", num);
+    return writer;
+  }
+
+  /**
+   * Reads the certificate status from the CA database.
+   * @param datasource datasource of the CA database. Must not be {@code null}.
+   * @param certHashAlgo algorithm to compute the certhash from the certificates. {@code null}
+   *     if no certhash shall be included.
+   * @return the writer containing all CAs and certificates.
+   * @throws DataAccessException if database error occurs.
+   * @throws IOException if the content of the database is invalid.
+   */
+  public static CertStatusSnapshotWriter fromCaDb(DataSourceWrapper datasource,
+      HashAlgo certHashAlgo) throws DataAccessException, IOException {
+    Args.notNull(datasource, "datasource");
+    CertStatusSnapshotWriter writer = new CertStatusSnapshotWriter(certHashAlgo);
+
+    Map<Integer, Integer> issuerIndexes = new HashMap<>();
+    String sql = "SELECT ID,REV_INFO,CERT FROM CA";
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    ResultSet rs = null;
+    try {
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        X509Certificate cert = parseCert(rs.getString("CERT").getBytes());
+        String str = rs.getString("REV_INFO");
+        Date revTime = (str == null) ? null
+            : CertRevocationInfo.fromEncoded(str).getRevocationTime();
+        issuerIndexes.put(rs.getInt("ID"), writer.addIssuer(cert, revTime, null));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    String columns = "ID,CA_ID,SN,NBEFORE,NAFTER,REV,RR,RT,RIT";
+    BinaryColumn certColumn = null;
+    if (certHashAlgo != null) {
+      columns += ",CERT";
+      certColumn = BinaryColumn.detect(datasource, null, "CERT", "CERT");
+    }
+
+    sql = datasource.buildSelectFirstSql(PAGE_SIZE, "ID ASC",
+        columns + " FROM CERT WHERE ID>?");
+    long num = 0;
+    long lastId = 0;
+    ps = datasource.prepareStatement(sql);
+    try {
+      while (true) {
+        ps.setLong(1, lastId);
+        rs = ps.executeQuery();
+        int rows = 0;
+        while (rs.next()) {
+          rows++;
+          lastId = rs.getLong("ID");
+          Integer issuerIndex = issuerIndexes.get(rs.getInt("CA_ID"));
+          if (issuerIndex == null) {
+            continue;
+          }
+
+          CrlReason reason = rs.getBoolean("REV") ? CrlReason.forReasonCode(rs.getInt("RR")) : null;
+          byte[] certHash = (certHashAlgo == null) ? null
+              : certHashAlgo.hash(certColumn.get(rs));
+          writer.addEntry(issuerIndex, new BigInteger(rs.getString("SN"), 16),
+              rs.getLong("NBEFORE"), rs.getLong("NAFTER"), reason, rs.getLong("RT"),
+              rs.getLong("RIT"), certHash);
+          num++;
+        }
+        rs.close();
+        rs = null;
+
+        if (rows < PAGE_SIZE) {
+          break;
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    LOG.info("read {} certificates from the CA database", num);
+    return writer;
+  }
+
+  /**
+   * Reads the revoked certificates from a full CRL issued directly by the CA.
+   * @param crl the CRL. Must not be {@code null}.
+   * @param caCert certificate of the CA. Must not be {@code null}.
+   * @param crlUrl URL of the CRL, used in the CrlID. May be {@code null}.
+   * @param useCrlUpdates whether to use the thisUpdate and nextUpdate of the CRL in the
+   *     OCSP response.
+   * @param caRevocationTime revocation time of the CA, {@code null} if not revoked.
+   * @return the writer containing the revoked certificates.
+   * @throws IOException if the CRL is invalid or not supported.
+   */
+  public static CertStatusSnapshotWriter fromCrl(X509CRL crl, X509Certificate caCert,
+      String crlUrl, boolean useCrlUpdates, Date caRevocationTime) throws IOException {
+    Args.notNull(crl, "crl");
+    Args.notNull(caCert, "caCert");
+
+    if (!caCert.getSubjectX500Principal().equals(crl.getIssuerX500Principal())) {
+      throw new IOException("CRL is not issued by the CA, indirect CRL is not supported");
+    }
+
+    try {
+      crl.verify(caCert.getPublicKey());
+    } catch (GeneralSecurityException ex) {
+      throw new IOException("could not verify signature of CRL", ex);
+    }
+
+    if (crl.getExtensionValue(Extension.deltaCRLIndicator.getId()) != null) {
+      throw new IOException("DeltaCRL is not supported, please use the full CRL");
+    }
+
+    byte[] extnValue = crl.getExtensionValue(Extension.cRLNumber.getId());
+    if (extnValue == null) {
+      throw new IOException("CRL without CRLNumber is not supported");
+    }
+
+    if (crl.getNextUpdate() == null) {
+      throw new IOException("CRL without nextUpdate is not supported");
+    }
+
+    ASN1Integer asn1CrlNumber = ASN1Integer.getInstance(extractCoreValue(extnValue));
+
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    if (StringUtil.isNotBlank(crlUrl)) {
+      vec.add(new DERTaggedObject(true, 0, new DERIA5String(crlUrl, true)));
+    }
+    vec.add(new DERTaggedObject(true, 1, asn1CrlNumber));
+    vec.add(new DERTaggedObject(true, 2, new DERGeneralizedTime(crl.getThisUpdate())));
+    CrlID crlId = CrlID.getInstance(new DERSequence(vec));
+
+    CrlInfo crlInfo = new CrlInfo(asn1CrlNumber.getPositiveValue(), null, useCrlUpdates,
+        crl.getThisUpdate(), crl.getNextUpdate(), crlId);
+
+    CertStatusSnapshotWriter writer = new CertStatusSnapshotWriter(null);
+    int issuerIndex = writer.addIssuer(caCert, caRevocationTime, crlInfo);
+
+    long num = 0;
+    Set<? extends X509CRLEntry> revokedCerts = crl.getRevokedCertificates();
+    if (revokedCerts != null) {
+      for (X509CRLEntry entry : revokedCerts) {
+        CrlReason reason = (entry.getRevocationReason() == null) ? CrlReason.UNSPECIFIED
+            : CrlReason.fromReason(entry.getRevocationReason());
+        if (reason == CrlReason.REMOVE_FROM_CRL) {
+          LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
+          continue;
+        }
+
+        long revTime = entry.getRevocationDate().getTime() / 1000;
+        long invTime = 0;
+        extnValue = entry.getExtensionValue(Extension.invalidityDate.getId());
+        if (extnValue != null) {
+          try {
+            invTime = DERGeneralizedTime.getInstance(extractCoreValue(extnValue))
+                .getDate().getTime() / 1000;
+          } catch (ParseException | IllegalArgumentException ex) {
+            throw new IOException("invalid invalidityDate of CRL entry "
+                + entry.getSerialNumber().toString(16), ex);
+          }
+        }
+
+        writer.addEntry(issuerIndex, entry.getSerialNumber(), 0, 0, reason, revTime, invTime,
+            null);
+        num++;
+      }
+    }
+
+    LOG.info("read {} revoked certificates from the CRL", num);
+    return writer;
+  }
+
+  private static byte[] extractCoreValue(byte[] encodedExtensionValue) {
+    return ASN1OctetString.getInstance(encodedExtensionValue).getOctets();
+  }
+
+  private static X509Certificate parseCert(byte[] encodedCert) throws IOException {
+    try {
+      return X509Util.parseCert(encodedCert);
+    } catch (CertificateException ex) {
+      throw new IOException("could not parse certificate: " + ex.getMessage(), ex);
+    }
+  }
+
+}
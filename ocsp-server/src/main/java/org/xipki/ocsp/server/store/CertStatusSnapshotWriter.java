@@ -0,0 +1,334 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.xipki.security.CrlReason;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Args;
+
+/**
+ * Writer of the certificate status snapshot read by {@link SnapshotCertStatusStore}.
+ *
+ * <p>The entries are collected in packed byte arrays, sorted by the serial number and
+ * written to a temporary file, which replaces the target file atomically.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CertStatusSnapshotWriter {
+
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  private class IssuerData {
+
+    private final byte[] encodedCert;
+
+    private final long revocationTime;
+
+    private final String crlInfo;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+
+    private int size;
+
+    private int maxSerialLen = 1;
+
+    IssuerData(byte[] encodedCert, long revocationTime, String crlInfo) {
+      this.encodedCert = encodedCert;
+      this.revocationTime = revocationTime;
+      this.crlInfo = crlInfo;
+    }
+
+    byte[] chunk(int index) {
+      return chunks.get(index / CHUNK_SIZE);
+    }
+
+    int offset(int index) {
+      return (index % CHUNK_SIZE) * slotLen;
+    }
+
+    int compare(int i, int j) {
+      byte[] ci = chunk(i);
+      byte[] cj = chunk(j);
+      int oi = offset(i);
+      int oj = offset(j);
+      for (int k = 0; k < CertStatusSnapshot.MAX_SERIAL_LEN; k++) {
+        int a = ci[oi + k] & 0xFF;
+        int b = cj[oj + k] & 0xFF;
+        if (a != b) {
+          return a - b;
+        }
+      }
+      return 0;
+    }
+
+    void swap(int i, int j) {
+      byte[] ci = chunk(i);
+      byte[] cj = chunk(j);
+      int oi = offset(i);
+      int oj = offset(j);
+      System.arraycopy(ci, oi, swapBuffer, 0, slotLen);
+      System.arraycopy(cj, oj, ci, oi, slotLen);
+      System.arraycopy(swapBuffer, 0, cj, oj, slotLen);
+    }
+
+    void sort(int from, int to) {
+      // quicksort, recursion only for the smaller partition
+      while (to - from > 16) {
+        int mid = (from + to) >>> 1;
+        // median of three as pivot, moved to from
+        if (compare(mid, from) < 0) {
+          swap(mid, from);
+        }
+        if (compare(to, from) < 0) {
+          swap(to, from);
+        }
+        if (compare(to, mid) < 0) {
+          swap(to, mid);
+        }
+        swap(from, mid);
+
+        int i = from;
+        int j = to + 1;
+        while (true) {
+          while (compare(++i, from) < 0 && i < to) {
+            // skip
+          }
+          while (compare(--j, from) > 0) {
+            // skip
+          }
+          if (i >= j) {
+            break;
+          }
+          swap(i, j);
+        }
+        swap(from, j);
+
+        if (j - from < to - j) {
+          sort(from, j - 1);
+          from = j + 1;
+        } else {
+          sort(j + 1, to);
+          to = j - 1;
+        }
+      }
+
+      // insertion sort for the small ranges
+      for (int i = from + 1; i <= to; i++) {
+        for (int j = i; j > from && compare(j, j - 1) < 0; j--) {
+          swap(j, j - 1);
+        }
+      }
+    }
+
+  } // class IssuerData
+
+  private final HashAlgo certHashAlgo;
+
+  private final int hashLen;
+
+  // serial number padded to MAX_SERIAL_LEN, fixed fields and certhash
+  private final int slotLen;
+
+  private final byte[] swapBuffer;
+
+  private final List<IssuerData> issuers = new ArrayList<>();
+
+  /**
+   * Constructor.
+   * @param certHashAlgo Hash algorithm of the certhash. {@code null} if the snapshot
+   *     contains no certhash.
+   */
+  public CertStatusSnapshotWriter(HashAlgo certHashAlgo) {
+    this.certHashAlgo = certHashAlgo;
+    this.hashLen = (certHashAlgo == null) ? 0 : certHashAlgo.getLength();
+    this.slotLen = CertStatusSnapshot.MAX_SERIAL_LEN + CertStatusSnapshot.FIXED_ENTRY_LEN
+        + hashLen;
+    this.swapBuffer = new byte[slotLen];
+  }
+
+  public HashAlgo getCertHashAlgo() {
+    return certHashAlgo;
+  }
+
+  /**
+   * Adds an issuer.
+   * @param cert certificate of the issuer. Must not be {@code null}.
+   * @param revocationTime revocation time of the issuer. {@code null} if not revoked.
+   * @param crlInfo CRL information if the status is derived from a CRL, may be {@code null}.
+   * @return the index of the issuer to be used in {@link #addEntry}.
+   * @throws IOException if the issuer cannot be added.
+   */
+  public int addIssuer(X509Certificate cert, Date revocationTime, CrlInfo crlInfo)
+      throws IOException {
+    Args.notNull(cert, "cert");
+    byte[] encodedCert;
+    try {
+      encodedCert = cert.getEncoded();
+    } catch (CertificateEncodingException ex) {
+      throw new IOException("could not encode issuer certificate", ex);
+    }
+
+    issuers.add(new IssuerData(encodedCert,
+        (revocationTime == null) ? 0 : revocationTime.getTime(),
+        (crlInfo == null) ? "" : crlInfo.getEncoded()));
+    return issuers.size() - 1;
+  }
+
+  /**
+   * Adds the status of a certificate. All times are in seconds since the epoch, 0 for
+   * not present.
+   * @param issuerIndex index returned by {@link #addIssuer}.
+   * @param serial serial number of the certificate. Must be positive.
+   * @param notBefore notBefore of the certificate.
+   * @param notAfter notAfter of the certificate.
+   * @param revocationReason revocation reason, {@code null} if the certificate is not revoked.
+   * @param revocationTime revocation time.
+   * @param invalidityTime invalidity time.
+   * @param certHash certhash, may be {@code null}.
+   */
+  public void addEntry(int issuerIndex, BigInteger serial, long notBefore, long notAfter,
+      CrlReason revocationReason, long revocationTime, long invalidityTime, byte[] certHash) {
+    Args.notNull(serial, "serial");
+    if (serial.signum() != 1) {
+      throw new IllegalArgumentException("serial is not positive");
+    }
+
+    if (certHash != null && certHash.length != hashLen) {
+      throw new IllegalArgumentException("certHash has invalid length " + certHash.length);
+    }
+
+    byte[] serialBytes = serial.toByteArray();
+    // skip the sign byte
+    int from = (serialBytes[0] == 0) ? 1 : 0;
+    int serialLen = serialBytes.length - from;
+    if (serialLen > CertStatusSnapshot.MAX_SERIAL_LEN) {
+      throw new IllegalArgumentException("serial is too long");
+    }
+
+    IssuerData issuer = issuers.get(issuerIndex);
+    int index = issuer.size;
+    if (index == Integer.MAX_VALUE) {
+      throw new IllegalStateException("too many entries for the issuer");
+    }
+
+    if (index % CHUNK_SIZE == 0) {
+      issuer.chunks.add(new byte[CHUNK_SIZE * slotLen]);
+    }
+    issuer.size++;
+    issuer.maxSerialLen = Math.max(issuer.maxSerialLen, serialLen);
+
+    byte[] chunk = issuer.chunk(index);
+    int off = issuer.offset(index);
+    System.arraycopy(serialBytes, from, chunk,
+        off + CertStatusSnapshot.MAX_SERIAL_LEN - serialLen, serialLen);
+    off += CertStatusSnapshot.MAX_SERIAL_LEN;
+
+    int flags = 0;
+    if (revocationReason != null) {
+      flags |= CertStatusSnapshot.FLAG_REVOKED;
+    }
+    if (certHash != null) {
+      flags |= CertStatusSnapshot.FLAG_CERTHASH;
+    }
+    chunk[off++] = (byte) flags;
+    chunk[off++] = (byte) ((revocationReason == null) ? 0 : revocationReason.getCode());
+    off = putLong(chunk, off, notBefore);
+    off = putLong(chunk, off, notAfter);
+    off = putLong(chunk, off, (revocationReason == null) ? 0 : revocationTime);
+    off = putLong(chunk, off, (revocationReason == null) ? 0 : invalidityTime);
+    if (certHash != null) {
+      System.arraycopy(certHash, 0, chunk, off, hashLen);
+    }
+  }
+
+  /**
+   * Sorts the entries and writes the snapshot. The file is first written to
+   * {@code file}.tmp and then renamed to {@code file}.
+   * @param file the target file
+   * @throws IOException if the snapshot cannot be written, or if an issuer contains
+   *     duplicated serial numbers.
+   */
+  public void write(File file) throws IOException {
+    Args.notNull(file, "file");
+    File tmpFile = new File(file.getPath() + ".tmp");
+    try (OutputStream fileOut = Files.newOutputStream(tmpFile.toPath());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 65536))) {
+      out.write(CertStatusSnapshot.MAGIC);
+      out.writeInt(CertStatusSnapshot.VERSION);
+      out.writeLong(System.currentTimeMillis());
+      out.writeUTF((certHashAlgo == null) ? "" : certHashAlgo.name());
+      out.writeInt(issuers.size());
+
+      for (IssuerData issuer : issuers) {
+        out.writeInt(issuer.encodedCert.length);
+        out.write(issuer.encodedCert);
+        out.writeLong(issuer.revocationTime);
+        out.writeUTF(issuer.crlInfo);
+        out.writeByte(issuer.maxSerialLen);
+        out.writeLong(issuer.size);
+
+        issuer.sort(0, issuer.size - 1);
+        int skip = CertStatusSnapshot.MAX_SERIAL_LEN - issuer.maxSerialLen;
+        int entryLen = slotLen - skip;
+        for (int i = 0; i < issuer.size; i++) {
+          if (i > 0 && issuer.compare(i - 1, i) == 0) {
+            throw new IOException("duplicated serial number "
+                + new BigInteger(1, Arrays.copyOfRange(issuer.chunk(i), issuer.offset(i),
+                    issuer.offset(i) + CertStatusSnapshot.MAX_SERIAL_LEN)).toString(16));
+          }
+          out.write(issuer.chunk(i), issuer.offset(i) + skip, entryLen);
+        }
+      }
+
+      out.write(CertStatusSnapshot.END_MAGIC);
+    } catch (IOException ex) {
+      tmpFile.delete();
+      throw ex;
+    }
+
+    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static int putLong(byte[] buf, int off, long value) {
+    for (int i = 7; i >= 0; i--) {
+      buf[off + i] = (byte) value;
+      value >>>= 8;
+    }
+    return off + 8;
+  }
+
+}
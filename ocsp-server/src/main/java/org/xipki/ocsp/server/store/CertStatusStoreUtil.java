@@ -0,0 +1,134 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store;
+
+import java.util.Date;
+
+import org.xipki.ocsp.api.CertStatus;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.CrlReason;
+
+/**
+ * Processing of the {@link CertStatusInfo} shared by the OcspStore implementations.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+final class CertStatusStoreUtil {
+
+  private static final long DAY = 24L * 60 * 60 * 1000;
+
+  private CertStatusStoreUtil() {
+  }
+
+  /**
+   * Returns the thisUpdate and nextUpdate to be used in the response.
+   * @param crlInfo CRL info of the issuer, may be {@code null}.
+   * @return array of thisUpdate and nextUpdate, the nextUpdate may be {@code null}.
+   */
+  static Date[] getUpdateTimes(CrlInfo crlInfo) {
+    Date thisUpdate;
+    Date nextUpdate = null;
+
+    if (crlInfo != null && crlInfo.isUseCrlUpdates()) {
+      thisUpdate = crlInfo.getThisUpdate();
+
+      // this.nextUpdate is still in the future (10 seconds buffer)
+      if (crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
+        nextUpdate = crlInfo.getNextUpdate();
+      }
+    } else {
+      thisUpdate = new Date();
+    }
+
+    return new Date[]{thisUpdate, nextUpdate};
+  }
+
+  /**
+   * Sets the CrlID and archive cutoff and applies the revocation of the issuer.
+   * @param certStatusInfo the status of the certificate.
+   * @param issuer the issuer.
+   * @param retentionInterval see {@link OcspStore#getRetentionInterval()}.
+   * @param includeArchiveCutoff whether to include the archive cutoff.
+   * @param includeCrlId whether to include the CrlID.
+   * @param inheritCaRevocation whether the revocation of the issuer applies to the
+   *     certificate.
+   * @return the completed status.
+   */
+  static CertStatusInfo complete(CertStatusInfo certStatusInfo, IssuerEntry issuer,
+      int retentionInterval, boolean includeArchiveCutoff, boolean includeCrlId,
+      boolean inheritCaRevocation) {
+    CrlInfo crlInfo = issuer.getCrlInfo();
+    if (includeCrlId && crlInfo != null) {
+      certStatusInfo.setCrlId(crlInfo.getCrlId());
+    }
+
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
+        } else {
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
+        }
+
+        certStatusInfo.setArchiveCutOff(date);
+      }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
+      return certStatusInfo;
+    }
+
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD || certStatus == CertStatus.UNKNOWN) {
+      replaced = true;
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  }
+
+}
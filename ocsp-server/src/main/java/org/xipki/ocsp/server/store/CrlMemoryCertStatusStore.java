@@ -0,0 +1,391 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERGeneralizedTime;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.ocsp.CrlID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.OcspStoreException;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.OcspServerConf;
+import org.xipki.ocsp.server.store.CrlStatusParser.ParsedCrl;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+import org.xipki.util.DateUtil;
+import org.xipki.util.IoUtil;
+import org.xipki.util.LogUtil;
+import org.xipki.util.StringUtil;
+
+/**
+ * OcspStore serving the status directly from a CRL and an optional delta CRL held in
+ * memory, without the OCSP database. The CRL files are checked periodically, a CRL with
+ * a new CRL number is parsed into a new table which replaces the current one atomically.
+ *
+ * <p>Only CRLs issued directly by the CA are supported. Since a CRL lists only the revoked
+ * certificates, all other serial numbers are unknown, unless unknownSerialAsGood is set.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CrlMemoryCertStatusStore extends OcspStore {
+
+  private static final class CrlState {
+
+    private final IssuerEntry issuer;
+
+    private final ParsedCrl fullCrl;
+
+    private final ParsedCrl deltaCrl;
+
+    private final CrlStatusTable table;
+
+    private CrlState(IssuerEntry issuer, ParsedCrl fullCrl, ParsedCrl deltaCrl,
+        CrlStatusTable table) {
+      this.issuer = issuer;
+      this.fullCrl = fullCrl;
+      this.deltaCrl = deltaCrl;
+      this.table = table;
+    }
+
+  } // class CrlState
+
+  private class CrlUpdateService implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        updateCrl();
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error while updating the CRL of store " + name);
+      }
+    }
+
+  } // class CrlUpdateService
+
+  private static final Logger LOG = LoggerFactory.getLogger(CrlMemoryCertStatusStore.class);
+
+  private X509Certificate caCert;
+
+  private File crlFile;
+
+  private File deltaCrlFile;
+
+  private File revocationFile;
+
+  private String crlUrl;
+
+  private boolean useUpdateDatesFromCrl;
+
+  private volatile CrlState state;
+
+  // lastModified of the files at the last check, 0 if not present
+  private long crlModified = -1;
+
+  private long deltaCrlModified = -1;
+
+  private long revocationModified = -1;
+
+  private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+
+  @Override
+  public void init(SourceConf conf, DataSourceWrapper datasource) throws OcspStoreException {
+    Args.notNull(conf, "conf");
+    if (!(conf instanceof OcspServerConf.SourceConfImpl)) {
+      throw new OcspStoreException("unknown conf " + conf.getClass().getName());
+    }
+
+    OcspServerConf.CrlSourceConf conf0 = ((OcspServerConf.SourceConfImpl) conf).getCrlSource();
+    if (conf0 == null) {
+      throw new OcspStoreException("conf.getCrlSource() may not be null");
+    }
+
+    if (conf0.getIssuerCertFile() != null) {
+      throw new OcspStoreException("indirect CRL (issuerCertFile) is not supported");
+    }
+
+    if (conf0.getCertsDir() != null) {
+      throw new OcspStoreException("certsDir is not supported");
+    }
+
+    String file = IoUtil.expandFilepath(conf0.getCaCertFile());
+    try {
+      this.caCert = X509Util.parseCert(new File(file));
+    } catch (CertificateException | IOException ex) {
+      throw new OcspStoreException("could not parse X.509 certificate from file "
+          + file + ": " + ex.getMessage(), ex);
+    }
+
+    this.crlFile = new File(IoUtil.expandFilepath(conf0.getCrlFile()));
+    this.deltaCrlFile = (conf0.getDeltaCrlFile() == null) ? null
+        : new File(IoUtil.expandFilepath(conf0.getDeltaCrlFile()));
+    this.revocationFile = new File(crlFile.getPath() + ".revocation");
+    this.crlUrl = conf0.getCrlUrl();
+    this.useUpdateDatesFromCrl = conf0.isUseUpdateDatesFromCrl();
+
+    try {
+      loadCrl();
+    } catch (IOException ex) {
+      throw new OcspStoreException("could not load CRL " + crlFile.getPath() + ": "
+          + ex.getMessage(), ex);
+    }
+
+    if (this.scheduledThreadPoolExecutor != null) {
+      this.scheduledThreadPoolExecutor.shutdownNow();
+    }
+    this.scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
+    this.scheduledThreadPoolExecutor.scheduleAtFixedRate(new CrlUpdateService(),
+        60 + new Random().nextInt(60), 60, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Loads the CRL files if they have been modified.
+   * @return whether a new table has been swapped in.
+   */
+  public synchronized boolean updateCrl() {
+    try {
+      return loadCrl();
+    } catch (IOException ex) {
+      LogUtil.error(LOG, ex, "could not update CRL of store " + name + ", keep the current one");
+      return false;
+    }
+  }
+
+  private synchronized boolean loadCrl() throws IOException {
+    long newCrlModified = crlFile.lastModified();
+    long newDeltaCrlModified = (deltaCrlFile == null) ? 0 : deltaCrlFile.lastModified();
+    long newRevocationModified = revocationFile.lastModified();
+    if (newCrlModified == crlModified && newDeltaCrlModified == deltaCrlModified
+        && newRevocationModified == revocationModified) {
+      return false;
+    }
+
+    CrlState current = state;
+    ParsedCrl fullCrl = (current == null) ? null : current.fullCrl;
+    boolean crlChanged = newCrlModified != crlModified;
+
+    // do not retry the same files if they are invalid
+    crlModified = newCrlModified;
+    deltaCrlModified = newDeltaCrlModified;
+    revocationModified = newRevocationModified;
+
+    if (fullCrl == null || crlChanged) {
+      if (!crlFile.exists()) {
+        throw new IOException("CRL file " + crlFile.getPath() + " does not exist");
+      }
+
+      ParsedCrl parsed = parse(crlFile);
+      if (parsed.getBaseCrlNumber() != null) {
+        throw new IOException("CRL file " + crlFile.getPath() + " contains a delta CRL");
+      }
+
+      if (fullCrl == null || parsed.getCrlNumber().compareTo(fullCrl.getCrlNumber()) > 0) {
+        fullCrl = parsed;
+      } else if (parsed.getCrlNumber().compareTo(fullCrl.getCrlNumber()) < 0) {
+        LOG.warn("ignore CRL {} with number {}, older than the current CRL number {}",
+            crlFile.getPath(), parsed.getCrlNumber(), fullCrl.getCrlNumber());
+      }
+    }
+
+    ParsedCrl deltaCrl = null;
+    if (deltaCrlFile != null && deltaCrlFile.exists()) {
+      ParsedCrl parsed = parse(deltaCrlFile);
+      if (parsed.getBaseCrlNumber() == null) {
+        throw new IOException("delta CRL file " + deltaCrlFile.getPath()
+            + " contains a full CRL");
+      }
+
+      // RFC 5280, 5.2.4: the delta CRL applies to a complete CRL with number not less than
+      // the base CRL number and less than the delta CRL number.
+      if (parsed.getBaseCrlNumber().compareTo(fullCrl.getCrlNumber()) <= 0
+          && parsed.getCrlNumber().compareTo(fullCrl.getCrlNumber()) > 0) {
+        deltaCrl = parsed;
+      } else {
+        LOG.info("ignore delta CRL {} with number {}, not applicable to the CRL number {}",
+            deltaCrlFile.getPath(), parsed.getCrlNumber(), fullCrl.getCrlNumber());
+      }
+    }
+
+    Date caRevocationTime = readCaRevocationTime();
+
+    if (current != null && current.fullCrl.getCrlNumber().equals(fullCrl.getCrlNumber())
+        && sameCrlNumber(current.deltaCrl, deltaCrl)
+        && equals(caRevocationTime, current.issuer.getRevocationInfo())) {
+      LOG.info("CRL of store {} not changed", name);
+      return false;
+    }
+
+    CrlStatusTable table = (deltaCrl == null) ? fullCrl.getTable()
+        : fullCrl.getTable().applyDelta(deltaCrl.getTable());
+
+    ParsedCrl latestCrl = (deltaCrl == null) ? fullCrl : deltaCrl;
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    if (StringUtil.isNotBlank(crlUrl)) {
+      vec.add(new DERTaggedObject(true, 0, new DERIA5String(crlUrl, true)));
+    }
+    vec.add(new DERTaggedObject(true, 1, new ASN1Integer(latestCrl.getCrlNumber())));
+    vec.add(new DERTaggedObject(true, 2, new DERGeneralizedTime(latestCrl.getThisUpdate())));
+    CrlID crlId = CrlID.getInstance(new DERSequence(vec));
+
+    IssuerEntry issuer;
+    try {
+      issuer = new IssuerEntry(0, caCert);
+    } catch (CertificateException ex) {
+      throw new IOException("could not encode CA certificate", ex);
+    }
+    issuer.setCrlInfo(new CrlInfo(latestCrl.getCrlNumber(), latestCrl.getBaseCrlNumber(),
+        useUpdateDatesFromCrl, latestCrl.getThisUpdate(), latestCrl.getNextUpdate(), crlId));
+    if (caRevocationTime != null) {
+      issuer.setRevocationInfo(caRevocationTime);
+    }
+
+    this.state = new CrlState(issuer, fullCrl, deltaCrl, table);
+    LOG.info("loaded CRL number {}{} of store {} with {} revoked certificates",
+        fullCrl.getCrlNumber(),
+        (deltaCrl == null) ? "" : " and delta CRL number " + deltaCrl.getCrlNumber(),
+        name, table.size());
+    return true;
+  }
+
+  private ParsedCrl parse(File file) throws IOException {
+    long start = System.currentTimeMillis();
+    ParsedCrl crl = CrlStatusParser.parse(Files.readAllBytes(file.toPath()), caCert);
+    LOG.info("parsed CRL {} with {} entries in {} ms", file.getPath(), crl.getTable().size(),
+        System.currentTimeMillis() - start);
+    return crl;
+  }
+
+  private Date readCaRevocationTime() throws IOException {
+    if (!revocationFile.exists()) {
+      return null;
+    }
+
+    Properties props = new Properties();
+    try (InputStream is = Files.newInputStream(revocationFile.toPath())) {
+      props.load(is);
+    }
+
+    String str = props.getProperty(CrlDbCertStatusStore.KEY_CA_REVOCATION_TIME);
+    return StringUtil.isBlank(str) ? null : DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
+  }
+
+  private static boolean sameCrlNumber(ParsedCrl crl1, ParsedCrl crl2) {
+    if (crl1 == null || crl2 == null) {
+      return crl1 == crl2;
+    }
+    return crl1.getCrlNumber().equals(crl2.getCrlNumber());
+  }
+
+  private static boolean equals(Date revocationTime, CertRevocationInfo revInfo) {
+    if (revocationTime == null || revInfo == null) {
+      return revocationTime == null && revInfo == null;
+    }
+    return revocationTime.equals(revInfo.getRevocationTime());
+  }
+
+  @Override
+  public CertStatusInfo getCertStatus(Date time, RequestIssuer reqIssuer, BigInteger serialNumber,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
+      throws OcspStoreException {
+    if (serialNumber.signum() != 1) { // non-positive serial number
+      return CertStatusInfo.getUnknownCertStatusInfo(new Date(), null);
+    }
+
+    // use the same state for the whole lookup
+    CrlState state = this.state;
+    IssuerEntry issuer = state.issuer;
+    if (!issuer.matchHash(reqIssuer)) {
+      return null;
+    }
+
+    Date[] updateTimes = CertStatusStoreUtil.getUpdateTimes(issuer.getCrlInfo());
+    Date thisUpdate = updateTimes[0];
+    Date nextUpdate = updateTimes[1];
+
+    CertStatusInfo certStatusInfo;
+    int index = state.table.find(serialNumber);
+    if (index == -1) {
+      if (unknownSerialAsGood) {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(null, null,
+            thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+      }
+    } else {
+      long revTime = state.table.getRevocationTime(index);
+      long invalTime = includeRit ? state.table.getInvalidityTime(index) : 0;
+      Date invTime = (invalTime == 0) ? null : new Date(invalTime * 1000);
+      CertRevocationInfo revInfo = new CertRevocationInfo(state.table.getReason(index),
+          new Date(revTime * 1000), invTime);
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo, null, null,
+          thisUpdate, nextUpdate, null);
+    }
+
+    return CertStatusStoreUtil.complete(certStatusInfo, issuer, retentionInterval,
+        includeArchiveCutoff, includeCrlId, inheritCaRevocation);
+  }
+
+  @Override
+  public boolean knowsIssuer(RequestIssuer reqIssuer) {
+    return state.issuer.matchHash(reqIssuer);
+  }
+
+  @Override
+  public X509Certificate getIssuerCert(RequestIssuer reqIssuer) {
+    IssuerEntry issuer = state.issuer;
+    return issuer.matchHash(reqIssuer) ? issuer.getCert() : null;
+  }
+
+  @Override
+  public boolean isHealthy() {
+    return state != null;
+  }
+
+  @Override
+  public void close() {
+    if (scheduledThreadPoolExecutor != null) {
+      scheduledThreadPoolExecutor.shutdown();
+      scheduledThreadPoolExecutor = null;
+    }
+  }
+
+}
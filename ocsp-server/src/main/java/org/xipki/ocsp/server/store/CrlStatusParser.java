@@ -0,0 +1,460 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1UTCTime;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.xipki.security.CrlReason;
+
+/**
+ * Parser of a DER-encoded CRL into a {@link CrlStatusTable}. The revoked certificates are
+ * read directly from the encoded bytes without creating objects per entry, so that CRLs
+ * with millions of entries can be loaded fast and with little garbage.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+final class CrlStatusParser {
+
+  static final class ParsedCrl {
+
+    private final BigInteger crlNumber;
+
+    private final BigInteger baseCrlNumber;
+
+    private final Date thisUpdate;
+
+    private final Date nextUpdate;
+
+    private final CrlStatusTable table;
+
+    private ParsedCrl(BigInteger crlNumber, BigInteger baseCrlNumber, Date thisUpdate,
+        Date nextUpdate, CrlStatusTable table) {
+      this.crlNumber = crlNumber;
+      this.baseCrlNumber = baseCrlNumber;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.table = table;
+    }
+
+    BigInteger getCrlNumber() {
+      return crlNumber;
+    }
+
+    /**
+     * Returns the CRL number of the base CRL if this is a delta CRL.
+     * @return the base CRL number, {@code null} for full CRL.
+     */
+    BigInteger getBaseCrlNumber() {
+      return baseCrlNumber;
+    }
+
+    Date getThisUpdate() {
+      return thisUpdate;
+    }
+
+    Date getNextUpdate() {
+      return nextUpdate;
+    }
+
+    CrlStatusTable getTable() {
+      return table;
+    }
+
+  } // class ParsedCrl
+
+  private static final int TAG_INTEGER = 0x02;
+
+  private static final int TAG_BIT_STRING = 0x03;
+
+  private static final int TAG_OCTET_STRING = 0x04;
+
+  private static final int TAG_OID = 0x06;
+
+  private static final int TAG_ENUMERATED = 0x0A;
+
+  private static final int TAG_SEQUENCE = 0x30;
+
+  private static final int TAG_UTC_TIME = 0x17;
+
+  private static final int TAG_GENERALIZED_TIME = 0x18;
+
+  private static final int TAG_EXTENSIONS = 0xA0;
+
+  // content of the OIDs id-ce-cRLReasons, id-ce-invalidityDate and id-ce-certificateIssuer
+  private static final byte[] OID_REASON = {0x55, 0x1D, 0x15};
+
+  private static final byte[] OID_INVALIDITY_DATE = {0x55, 0x1D, 0x18};
+
+  private static final byte[] OID_CERTIFICATE_ISSUER = {0x55, 0x1D, 0x1D};
+
+  private final byte[] buf;
+
+  private CrlStatusParser(byte[] buf) {
+    this.buf = buf;
+  }
+
+  /**
+   * Parses the CRL and verifies its signature.
+   * @param encodedCrl DER-encoded CRL.
+   * @param caCert certificate of the CA which issued the CRL directly.
+   * @return the parsed CRL.
+   * @throws IOException if the CRL is invalid, not issued by the CA or not supported.
+   */
+  static ParsedCrl parse(byte[] encodedCrl, X509Certificate caCert) throws IOException {
+    try {
+      return new CrlStatusParser(encodedCrl).parse(caCert);
+    } catch (IndexOutOfBoundsException | IllegalArgumentException ex) {
+      throw new IOException("invalid CRL: " + ex.getMessage(), ex);
+    }
+  }
+
+  private ParsedCrl parse(X509Certificate caCert) throws IOException {
+    // CertificateList
+    expectTag(0, TAG_SEQUENCE);
+    if (end(0) != buf.length) {
+      throw new IOException("invalid length of CRL");
+    }
+
+    int tbsOff = contentOffset(0);
+    int tbsEnd = end(tbsOff);
+    int sigAlgOff = tbsEnd;
+    int sigOff = end(sigAlgOff);
+    expectTag(sigOff, TAG_BIT_STRING);
+    verifySignature(caCert, tbsOff, tbsEnd, sigAlgOff, sigOff);
+
+    // TBSCertList
+    expectTag(tbsOff, TAG_SEQUENCE);
+    int off = contentOffset(tbsOff);
+    if (tag(off) == TAG_INTEGER) {
+      // version
+      off = end(off);
+    }
+
+    // signature
+    off = end(off);
+
+    // issuer
+    expectTag(off, TAG_SEQUENCE);
+    X500Principal issuer = new X500Principal(Arrays.copyOfRange(buf, off, end(off)));
+    if (!caCert.getSubjectX500Principal().equals(issuer)) {
+      throw new IOException("CRL is not issued by the CA, indirect CRL is not supported");
+    }
+    off = end(off);
+
+    Date thisUpdate = new Date(parseTime(off) * 1000);
+    off = end(off);
+
+    Date nextUpdate = null;
+    if (off < tbsEnd && (tag(off) == TAG_UTC_TIME || tag(off) == TAG_GENERALIZED_TIME)) {
+      nextUpdate = new Date(parseTime(off) * 1000);
+      off = end(off);
+    }
+
+    int revokedOff = -1;
+    if (off < tbsEnd && tag(off) == TAG_SEQUENCE) {
+      revokedOff = off;
+      off = end(off);
+    }
+
+    Extensions extensions = null;
+    if (off < tbsEnd && tag(off) == TAG_EXTENSIONS) {
+      int extnsOff = contentOffset(off);
+      extensions = Extensions.getInstance(
+          ASN1Primitive.fromByteArray(Arrays.copyOfRange(buf, extnsOff, end(extnsOff))));
+    }
+
+    if (nextUpdate == null) {
+      throw new IOException("CRL without nextUpdate is not supported");
+    }
+
+    if (extensions == null || extensions.getExtension(Extension.cRLNumber) == null) {
+      throw new IOException("CRL without CRLNumber is not supported");
+    }
+
+    BigInteger crlNumber = ASN1Integer.getInstance(
+        extensions.getExtension(Extension.cRLNumber).getParsedValue()).getPositiveValue();
+
+    BigInteger baseCrlNumber = null;
+    Extension extn = extensions.getExtension(Extension.deltaCRLIndicator);
+    if (extn != null) {
+      baseCrlNumber = ASN1Integer.getInstance(extn.getParsedValue()).getPositiveValue();
+    }
+
+    extn = extensions.getExtension(Extension.issuingDistributionPoint);
+    if (extn != null && IssuingDistributionPoint.getInstance(extn.getParsedValue())
+        .isIndirectCRL()) {
+      throw new IOException("indirect CRL is not supported");
+    }
+
+    CrlStatusTable table = (revokedOff == -1) ? CrlStatusTable.EMPTY
+        : parseRevokedCertificates(revokedOff);
+    return new ParsedCrl(crlNumber, baseCrlNumber, thisUpdate, nextUpdate, table);
+  }
+
+  private void verifySignature(X509Certificate caCert, int tbsOff, int tbsEnd, int sigAlgOff,
+      int sigOff) throws IOException {
+    AlgorithmIdentifier sigAlgId = AlgorithmIdentifier.getInstance(
+        ASN1Primitive.fromByteArray(Arrays.copyOfRange(buf, sigAlgOff, sigOff)));
+    // skip the unused bits
+    byte[] signature = Arrays.copyOfRange(buf, contentOffset(sigOff) + 1, end(sigOff));
+
+    boolean valid;
+    try {
+      ContentVerifier verifier = new JcaContentVerifierProviderBuilder().build(caCert)
+          .get(sigAlgId);
+      try (OutputStream out = verifier.getOutputStream()) {
+        out.write(buf, tbsOff, tbsEnd - tbsOff);
+      }
+      valid = verifier.verify(signature);
+    } catch (OperatorCreationException ex) {
+      throw new IOException("could not verify signature of CRL: " + ex.getMessage(), ex);
+    }
+
+    if (!valid) {
+      throw new IOException("invalid signature of CRL");
+    }
+  }
+
+  private CrlStatusTable parseRevokedCertificates(int revokedOff) throws IOException {
+    int start = contentOffset(revokedOff);
+    int end = end(revokedOff);
+
+    // first pass: number of entries and maximal length of the serial numbers
+    int count = 0;
+    int maxSerialLen = 1;
+    for (int off = start; off < end; off = end(off)) {
+      int serialOff = contentOffset(off);
+      expectTag(serialOff, TAG_INTEGER);
+      int len = contentLength(serialOff);
+      if (len > 1 && buf[contentOffset(serialOff)] == 0) {
+        len--;
+      }
+      maxSerialLen = Math.max(maxSerialLen, len);
+      count++;
+    }
+
+    if (maxSerialLen > CrlStatusTable.MAX_SERIAL_LEN) {
+      throw new IOException("serial number is too long");
+    }
+
+    // second pass: fill the table
+    CrlStatusTable.Builder builder = new CrlStatusTable.Builder(count, maxSerialLen);
+    for (int off = start; off < end; off = end(off)) {
+      int entryEnd = end(off);
+
+      int serialOff = contentOffset(off);
+      int serialContentOff = contentOffset(serialOff);
+      int serialLen = contentLength(serialOff);
+      if (serialLen == 0 || (buf[serialContentOff] & 0x80) != 0) {
+        // negative serial numbers will never be requested
+        continue;
+      }
+
+      if (serialLen > 1 && buf[serialContentOff] == 0) {
+        serialContentOff++;
+        serialLen--;
+      }
+
+      int timeOff = end(serialOff);
+      long revocationTime = parseTime(timeOff);
+      long invalidityTime = 0;
+      int reason = CrlReason.UNSPECIFIED.getCode();
+
+      int extnsOff = end(timeOff);
+      if (extnsOff < entryEnd) {
+        expectTag(extnsOff, TAG_SEQUENCE);
+        int extnsEnd = end(extnsOff);
+        for (int extnOff = contentOffset(extnsOff); extnOff < extnsEnd;
+            extnOff = end(extnOff)) {
+          int oidOff = contentOffset(extnOff);
+          expectTag(oidOff, TAG_OID);
+          int valueOff = end(oidOff);
+          if (tag(valueOff) != TAG_OCTET_STRING) {
+            // critical
+            valueOff = end(valueOff);
+          }
+          expectTag(valueOff, TAG_OCTET_STRING);
+          int innerOff = contentOffset(valueOff);
+
+          if (oidEquals(oidOff, OID_REASON)) {
+            expectTag(innerOff, TAG_ENUMERATED);
+            if (contentLength(innerOff) != 1) {
+              throw new IOException("invalid reasonCode");
+            }
+            reason = buf[contentOffset(innerOff)];
+          } else if (oidEquals(oidOff, OID_INVALIDITY_DATE)) {
+            invalidityTime = parseTime(innerOff);
+          } else if (oidEquals(oidOff, OID_CERTIFICATE_ISSUER)) {
+            throw new IOException("CRL entry with certificateIssuer is not supported");
+          }
+        }
+      }
+
+      builder.add(buf, serialContentOff, serialLen, revocationTime,
+          (invalidityTime == revocationTime) ? 0 : invalidityTime, reason);
+    }
+
+    return builder.build();
+  }
+
+  private boolean oidEquals(int oidOff, byte[] oid) {
+    int len = contentLength(oidOff);
+    if (len != oid.length) {
+      return false;
+    }
+
+    int off = contentOffset(oidOff);
+    for (int i = 0; i < len; i++) {
+      if (buf[off + i] != oid[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses the UTCTime or GeneralizedTime.
+   * @return seconds since the epoch.
+   */
+  private long parseTime(int off) throws IOException {
+    int tag = tag(off);
+    int len = contentLength(off);
+    int coff = contentOffset(off);
+
+    // DER encoded forms YYMMDDHHMMSSZ and YYYYMMDDHHMMSSZ
+    if (tag == TAG_UTC_TIME && len == 13 && buf[coff + 12] == 'Z') {
+      int year = digits(coff, 2);
+      year += (year < 50) ? 2000 : 1900;
+      return toEpochSecond(year, coff + 2);
+    } else if (tag == TAG_GENERALIZED_TIME && len == 15 && buf[coff + 14] == 'Z') {
+      return toEpochSecond(digits(coff, 4), coff + 4);
+    }
+
+    byte[] encoded = Arrays.copyOfRange(buf, off, end(off));
+    try {
+      if (tag == TAG_UTC_TIME) {
+        return ASN1UTCTime.getInstance(encoded).getAdjustedDate().getTime() / 1000;
+      } else if (tag == TAG_GENERALIZED_TIME) {
+        return ASN1GeneralizedTime.getInstance(encoded).getDate().getTime() / 1000;
+      }
+    } catch (ParseException ex) {
+      throw new IOException("invalid time: " + ex.getMessage(), ex);
+    }
+    throw new IOException("invalid tag of time " + tag);
+  }
+
+  // MMDDHHMMSS at off
+  private long toEpochSecond(int year, int off) {
+    int month = digits(off, 2);
+    int day = digits(off + 2, 2);
+    int hour = digits(off + 4, 2);
+    int minute = digits(off + 6, 2);
+    int second = digits(off + 8, 2);
+
+    // days from civil, proleptic Gregorian calendar
+    int y = (month <= 2) ? year - 1 : year;
+    int era = (y >= 0 ? y : y - 399) / 400;
+    int yoe = y - era * 400;
+    int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    long days = era * 146097L + doe - 719468;
+
+    return days * 86400 + hour * 3600 + minute * 60 + second;
+  }
+
+  private int digits(int off, int num) {
+    int value = 0;
+    for (int i = 0; i < num; i++) {
+      int ch = buf[off + i] - '0';
+      if (ch < 0 || ch > 9) {
+        throw new IllegalArgumentException("invalid digit in time");
+      }
+      value = value * 10 + ch;
+    }
+    return value;
+  }
+
+  private int tag(int off) {
+    return buf[off] & 0xFF;
+  }
+
+  private void expectTag(int off, int expectedTag) throws IOException {
+    if (tag(off) != expectedTag) {
+      throw new IOException("invalid tag " + tag(off) + " at offset " + off
+          + ", expected " + expectedTag);
+    }
+  }
+
+  private int contentLength(int off) {
+    int b = buf[off + 1] & 0xFF;
+    if (b < 0x80) {
+      return b;
+    }
+
+    int num = b & 0x7F;
+    if (num == 0 || num > 4) {
+      throw new IllegalArgumentException("unsupported length encoding at offset " + off);
+    }
+
+    int len = 0;
+    for (int i = 0; i < num; i++) {
+      len = (len << 8) | (buf[off + 2 + i] & 0xFF);
+    }
+
+    if (len < 0) {
+      throw new IllegalArgumentException("invalid length at offset " + off);
+    }
+    return len;
+  }
+
+  private int contentOffset(int off) {
+    int b = buf[off + 1] & 0xFF;
+    return off + 2 + ((b < 0x80) ? 0 : (b & 0x7F));
+  }
+
+  private int end(int off) {
+    int end = contentOffset(off) + contentLength(off);
+    if (end > buf.length || end < 0) {
+      throw new IllegalArgumentException("length exceeds the CRL at offset " + off);
+    }
+    return end;
+  }
+
+}
@@ -0,0 +1,335 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.xipki.security.CrlReason;
+
+/**
+ * Immutable table of the revoked certificates of a CRL, held in sorted primitive arrays.
+ * The serial numbers are stored unsigned and left-padded with zeros to a fixed length,
+ * the times in seconds since the epoch as unsigned int.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+final class CrlStatusTable {
+
+  static final class Builder {
+
+    private final int serialLen;
+
+    private final byte[] serials;
+
+    private final int[] revocationTimes;
+
+    private int[] invalidityTimes;
+
+    private final byte[] reasons;
+
+    private int size;
+
+    Builder(int capacity, int serialLen) {
+      if (serialLen < 1 || serialLen > MAX_SERIAL_LEN) {
+        throw new IllegalArgumentException("invalid serialLen " + serialLen);
+      }
+      this.serialLen = serialLen;
+      this.serials = new byte[capacity * serialLen];
+      this.revocationTimes = new int[capacity];
+      this.reasons = new byte[capacity];
+    }
+
+    /**
+     * Adds an entry.
+     * @param buf buffer containing the serial number.
+     * @param off offset of the unsigned serial number.
+     * @param len length of the unsigned serial number without leading zeros.
+     * @param revocationTime revocation time in seconds.
+     * @param invalidityTime invalidity time in seconds, 0 if not present.
+     * @param reason revocation reason.
+     */
+    void add(byte[] buf, int off, int len, long revocationTime, long invalidityTime,
+        int reason) {
+      if (len > serialLen) {
+        throw new IllegalArgumentException("serial number is too long");
+      }
+
+      System.arraycopy(buf, off, serials, size * serialLen + serialLen - len, len);
+      revocationTimes[size] = (int) revocationTime;
+      if (invalidityTime != 0) {
+        if (invalidityTimes == null) {
+          invalidityTimes = new int[revocationTimes.length];
+        }
+        invalidityTimes[size] = (int) invalidityTime;
+      }
+      reasons[size] = (byte) reason;
+      size++;
+    }
+
+    /**
+     * Sorts the entries and builds the table.
+     * @return the table.
+     * @throws IllegalArgumentException if there are duplicated serial numbers.
+     */
+    CrlStatusTable build() {
+      boolean sorted = true;
+      for (int i = 1; i < size; i++) {
+        if (compare(i - 1, i) >= 0) {
+          sorted = false;
+          break;
+        }
+      }
+
+      if (!sorted) {
+        sort(0, size - 1, new byte[serialLen]);
+        for (int i = 1; i < size; i++) {
+          if (compare(i - 1, i) == 0) {
+            throw new IllegalArgumentException("duplicated serial number "
+                + new BigInteger(1, Arrays.copyOfRange(serials, i * serialLen,
+                    (i + 1) * serialLen)).toString(16));
+          }
+        }
+      }
+
+      return new CrlStatusTable(serialLen, size, trim(serials, size * serialLen),
+          trim(revocationTimes, size), trim(invalidityTimes, size), trim(reasons, size));
+    }
+
+    private int compare(int i, int j) {
+      return compareSerials(serials, i * serialLen, serialLen, serials, j * serialLen,
+          serialLen);
+    }
+
+    private void swap(int i, int j, byte[] tmp) {
+      System.arraycopy(serials, i * serialLen, tmp, 0, serialLen);
+      System.arraycopy(serials, j * serialLen, serials, i * serialLen, serialLen);
+      System.arraycopy(tmp, 0, serials, j * serialLen, serialLen);
+
+      int ti = revocationTimes[i];
+      revocationTimes[i] = revocationTimes[j];
+      revocationTimes[j] = ti;
+
+      if (invalidityTimes != null) {
+        ti = invalidityTimes[i];
+        invalidityTimes[i] = invalidityTimes[j];
+        invalidityTimes[j] = ti;
+      }
+
+      byte tb = reasons[i];
+      reasons[i] = reasons[j];
+      reasons[j] = tb;
+    }
+
+    private void sort(int from, int to, byte[] tmp) {
+      // quicksort, recursion only for the smaller partition
+      while (to - from > 16) {
+        int mid = (from + to) >>> 1;
+        // median of three as pivot, moved to from
+        if (compare(mid, from) < 0) {
+          swap(mid, from, tmp);
+        }
+        if (compare(to, from) < 0) {
+          swap(to, from, tmp);
+        }
+        if (compare(to, mid) < 0) {
+          swap(to, mid, tmp);
+        }
+        swap(from, mid, tmp);
+
+        int i = from;
+        int j = to + 1;
+        while (true) {
+          while (compare(++i, from) < 0 && i < to) {
+            // skip
+          }
+          while (compare(--j, from) > 0) {
+            // skip
+          }
+          if (i >= j) {
+            break;
+          }
+          swap(i, j, tmp);
+        }
+        swap(from, j, tmp);
+
+        if (j - from < to - j) {
+          sort(from, j - 1, tmp);
+          from = j + 1;
+        } else {
+          sort(j + 1, to, tmp);
+          to = j - 1;
+        }
+      }
+
+      // insertion sort for the small ranges
+      for (int i = from + 1; i <= to; i++) {
+        for (int j = i; j > from && compare(j, j - 1) < 0; j--) {
+          swap(j, j - 1, tmp);
+        }
+      }
+    }
+
+  } // class Builder
+
+  static final int MAX_SERIAL_LEN = 32;
+
+  static final CrlStatusTable EMPTY =
+      new CrlStatusTable(1, 0, new byte[0], new int[0], null, new byte[0]);
+
+  private final int serialLen;
+
+  private final int size;
+
+  private final byte[] serials;
+
+  private final int[] revocationTimes;
+
+  private final int[] invalidityTimes;
+
+  private final byte[] reasons;
+
+  private CrlStatusTable(int serialLen, int size, byte[] serials, int[] revocationTimes,
+      int[] invalidityTimes, byte[] reasons) {
+    this.serialLen = serialLen;
+    this.size = size;
+    this.serials = serials;
+    this.revocationTimes = revocationTimes;
+    this.invalidityTimes = invalidityTimes;
+    this.reasons = reasons;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Binary search of the serial number.
+   * @param serial positive serial number.
+   * @return the index of the entry, or -1 if not found.
+   */
+  int find(BigInteger serial) {
+    byte[] bytes = serial.toByteArray();
+    // skip the sign byte
+    int from = (bytes[0] == 0 && bytes.length > 1) ? 1 : 0;
+    int len = bytes.length - from;
+    if (len > serialLen) {
+      return -1;
+    }
+
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compareSerials(serials, mid * serialLen, serialLen, bytes, from, len);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  long getRevocationTime(int index) {
+    return revocationTimes[index] & 0xFFFFFFFFL;
+  }
+
+  long getInvalidityTime(int index) {
+    return (invalidityTimes == null) ? 0 : invalidityTimes[index] & 0xFFFFFFFFL;
+  }
+
+  int getReason(int index) {
+    return reasons[index];
+  }
+
+  /**
+   * Applies the entries of a delta CRL to this table. Entries with the reason removeFromCRL
+   * are removed, the other ones are added or replace the existing ones.
+   * @param delta entries of the delta CRL.
+   * @return the new table.
+   */
+  CrlStatusTable applyDelta(CrlStatusTable delta) {
+    int newSerialLen = Math.max(serialLen, delta.serialLen);
+    Builder builder = new Builder(size + delta.size, newSerialLen);
+
+    int removeCode = CrlReason.REMOVE_FROM_CRL.getCode();
+    int i = 0;
+    int j = 0;
+    while (i < size || j < delta.size) {
+      int cmp;
+      if (i == size) {
+        cmp = 1;
+      } else if (j == delta.size) {
+        cmp = -1;
+      } else {
+        cmp = compareSerials(serials, i * serialLen, serialLen,
+            delta.serials, j * delta.serialLen, delta.serialLen);
+      }
+
+      if (cmp < 0) {
+        builder.add(serials, i * serialLen, serialLen, getRevocationTime(i),
+            getInvalidityTime(i), reasons[i]);
+        i++;
+      } else {
+        if (delta.reasons[j] != removeCode) {
+          builder.add(delta.serials, j * delta.serialLen, delta.serialLen,
+              delta.getRevocationTime(j), delta.getInvalidityTime(j), delta.reasons[j]);
+        }
+        if (cmp == 0) {
+          i++;
+        }
+        j++;
+      }
+    }
+
+    // already sorted
+    return builder.build();
+  }
+
+  /**
+   * Compares two unsigned big-endian numbers of possibly different lengths.
+   */
+  static int compareSerials(byte[] a, int aoff, int alen, byte[] b, int boff, int blen) {
+    int len = Math.max(alen, blen);
+    int apad = len - alen;
+    int bpad = len - blen;
+    for (int k = 0; k < len; k++) {
+      int va = (k < apad) ? 0 : a[aoff + k - apad] & 0xFF;
+      int vb = (k < bpad) ? 0 : b[boff + k - bpad] & 0xFF;
+      if (va != vb) {
+        return va - vb;
+      }
+    }
+    return 0;
+  }
+
+  private static byte[] trim(byte[] array, int len) {
+    return (array.length == len) ? array : Arrays.copyOf(array, len);
+  }
+
+  private static int[] trim(int[] array, int len) {
+    return (array == null || array.length == len) ? array : Arrays.copyOf(array, len);
+  }
+
+}
@@ -42,16 +42,16 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
-import org.xipki.ocsp.api.CertStatus;
 import org.xipki.ocsp.api.CertStatusInfo;
 import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.server.OcspServerConf;
 import org.xipki.security.CertRevocationInfo;
-import org.xipki.security.CrlReason;
+import org.xipki.security.FpIdCalculator;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
@@ -117,6 +117,13 @@ public class DbCertStatusStore extends OcspStore {
 
   private String sqlCsWithCertHash;
 
+  // whether the table CERT is keyed by the hash value of the serial number (column SNH),
+  // set by the migration only after all rows have SNH
+  private boolean serialKeyHashed;
+
+  // column ISSUER.CERT, binary or Base64 encoded
+  private BinaryColumn issuerCertColumn;
+
   private IssuerFilter issuerFilter;
 
   private IssuerStore issuerStore;
@@ -148,7 +155,7 @@ public class DbCertStatusStore extends OcspStore {
         try {
           Map<Integer, SimpleIssuerEntry> newIssuers = new HashMap<>();
 
-          rs = ps.executeQuery();
+          rs = datasource.executeQuery(ps, sql);
           while (rs.next()) {
             String sha1Fp = rs.getString("S1C");
             if (!issuerFilter.includeIssuerWithSha1Fp(sha1Fp)) {
@@ -197,7 +204,7 @@ public class DbCertStatusStore extends OcspStore {
 
       ResultSet rs = null;
       try {
-        rs = ps.executeQuery();
+        rs = datasource.executeQuery(ps, sql);
         List<IssuerEntry> caInfos = new LinkedList<>();
         while (rs.next()) {
           String sha1Fp = rs.getString("S1C");
@@ -205,7 +212,7 @@ public class DbCertStatusStore extends OcspStore {
             continue;
           }
 
-          X509Certificate cert = X509Util.parseCert(rs.getString("CERT").getBytes());
+          X509Certificate cert = X509Util.parseCert(issuerCertColumn.get(rs));
 
           IssuerEntry caInfoEntry = new IssuerEntry(rs.getInt("ID"), cert);
           String crlInfoStr = rs.getString("CRL_INFO");
@@ -278,19 +285,9 @@ public class DbCertStatusStore extends OcspStore {
 
       CrlInfo crlInfo = issuer.getCrlInfo();
 
-      Date thisUpdate;
-      Date nextUpdate = null;
-
-      if (crlInfo != null && crlInfo.isUseCrlUpdates()) {
-        thisUpdate = crlInfo.getThisUpdate();
-
-        // this.nextUpdate is still in the future (10 seconds buffer)
-        if (crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
-          nextUpdate = crlInfo.getNextUpdate();
-        }
-      } else {
-        thisUpdate = new Date();
-      }
+      Date[] updateTimes = CertStatusStoreUtil.getUpdateTimes(crlInfo);
+      Date thisUpdate = updateTimes[0];
+      Date nextUpdate = updateTimes[1];
 
       ResultSet rs = null;
       CertStatusInfo certStatusInfo = null;
@@ -304,12 +301,16 @@ public class DbCertStatusStore extends OcspStore {
       long revTime = 0;
       long invalTime = 0;
 
-      PreparedStatement ps = datasource.prepareStatement(sql);
+      PreparedStatement ps = datasource.prepareReadOnlyStatement(sql);
 
       try {
-        ps.setInt(1, issuer.getId());
-        ps.setString(2, serialNumber.toString(16));
-        rs = ps.executeQuery();
+        int idx = 1;
+        ps.setInt(idx++, issuer.getId());
+        if (serialKeyHashed) {
+          ps.setLong(idx++, FpIdCalculator.hash(serialNumber));
+        }
+        ps.setString(idx++, serialNumber.toString(16));
+        rs = datasource.executeQuery(ps, sql);
 
         if (rs.next()) {
           unknown = false;
@@ -376,57 +377,8 @@ public class DbCertStatusStore extends OcspStore {
         }
       }
 
-      if (includeCrlId && crlInfo != null) {
-        certStatusInfo.setCrlId(crlInfo.getCrlId());
-      }
-
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
-
-          certStatusInfo.setArchiveCutOff(date);
-        }
-      }
-
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
-      }
-
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD || certStatus == CertStatus.UNKNOWN) {
-        replaced = true;
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
-        }
-      }
-
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
-        } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
-        }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
-      }
-      return certStatusInfo;
+      return CertStatusStoreUtil.complete(certStatusInfo, issuer, retentionInterval,
+          includeArchiveCutoff, includeCrlId, inheritCaRevocation);
     } catch (DataAccessException ex) {
       throw new OcspStoreException(ex.getMessage(), ex);
     }
@@ -458,7 +410,7 @@ public class DbCertStatusStore extends OcspStore {
       PreparedStatement ps = preparedStatement(sql);
       ResultSet rs = null;
       try {
-        rs = ps.executeQuery();
+        rs = datasource.executeQuery(ps, sql);
         return true;
       } finally {
         releaseDbResources(ps, rs);
@@ -473,6 +425,12 @@ public class DbCertStatusStore extends OcspStore {
     datasource.releaseResources(ps, rs);
   }
 
+  private String buildCertStatusSql(String columns) {
+    // the index (IID, SNH) narrows the candidates, SN resolves hash collisions
+    return datasource.buildSelectFirstSql(1, columns + " FROM CERT WHERE IID=? AND "
+        + (serialKeyHashed ? "SNH=? AND SN=?" : "SN=?"));
+  }
+
   @Override
   public void init(SourceConf conf, DataSourceWrapper datasource)
       throws OcspStoreException {
@@ -490,15 +448,22 @@ public class DbCertStatusStore extends OcspStore {
 
     this.datasource = Args.notNull(datasource, "datasource");
 
-    sqlCs = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT,RIT FROM CERT WHERE IID=? AND SN=?");
-    sqlCsNoRit = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT FROM CERT WHERE IID=? AND SN=?");
+    try {
+      this.serialKeyHashed = datasource.tableHasColumn(null, "CERT", "SNH")
+          && "hash".equals(datasource.getFirstValue(
+              null, "DBSCHEMA", "VALUE2", "NAME='SERIAL_KEY'", String.class));
+      this.issuerCertColumn = BinaryColumn.detect(datasource, null, "ISSUER", "CERT");
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException("could not detect the layout of the tables CERT and ISSUER",
+          ex);
+    }
+    LOG.info("table CERT is keyed by {}", serialKeyHashed ? "SNH" : "SN");
+
+    sqlCs = buildCertStatusSql("NBEFORE,NAFTER,REV,RR,RT,RIT");
+    sqlCsNoRit = buildCertStatusSql("NBEFORE,NAFTER,REV,RR,RT");
 
-    sqlCsWithCertHash = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT,RIT,HASH FROM CERT WHERE IID=? AND SN=?");
-    sqlCsNoRitWithCertHash = datasource.buildSelectFirstSql(1,
-        "NBEFORE,NAFTER,REV,RR,RT,HASH FROM CERT WHERE IID=? AND SN=?");
+    sqlCsWithCertHash = buildCertStatusSql("NBEFORE,NAFTER,REV,RR,RT,RIT,HASH");
+    sqlCsNoRitWithCertHash = buildCertStatusSql("NBEFORE,NAFTER,REV,RR,RT,HASH");
 
     try {
       this.certHashAlgo = getCertHashAlgo(datasource);
@@ -66,14 +66,15 @@ import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.TBSCertificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.datasource.BinaryColumn;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
+import org.xipki.security.FpIdCalculator;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.ObjectIdentifiers;
 import org.xipki.security.util.X509Util;
-import org.xipki.util.Base64;
 import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.Args;
@@ -92,22 +93,27 @@ public class ImportCrl {
   private static final String SQL_UPDATE_CERT_REV
       = "UPDATE CERT SET REV=?,RR=?,RT=?,RIT=?,LUPDATE=? WHERE ID=?";
 
-  private static final String SQL_INSERT_CERT_REV
-      = "INSERT INTO CERT (ID,IID,SN,REV,RR,RT,RIT,LUPDATE) VALUES(?,?,?,?,?,?,?,?)";
-
-  private static final String SQL_DELETE_CERT = "DELETE FROM CERT WHERE IID=? AND SN=?";
-
   private static final String SQL_UPDATE_CERT
       = "UPDATE CERT SET LUPDATE=?,NBEFORE=?,NAFTER=?,HASH=? WHERE ID=?";
 
-  private static final String SQL_INSERT_CERT
-      = "INSERT INTO CERT (ID,IID,SN,REV,RR,RT,RIT,LUPDATE,NBEFORE,NAFTER,HASH) "
-        + "VALUES(?,?,?,?,?,?,?,?,?,?,?)";
+  private final String sqlInsertCertRev;
+
+  private final String sqlDeleteCert;
 
-  private static final String CORE_SQL_SELECT_ID_CERT = "ID FROM CERT WHERE IID=? AND SN=?";
+  private final String sqlInsertCert;
 
   private final String sqlSelectIdCert;
 
+  // whether the table CERT is keyed by the hash value of the serial number (column SNH),
+  // set by the migration only after all rows have SNH
+  private final boolean serialKeyHashed;
+
+  // whether the table CERT has the column SNH, also during the migration
+  private final boolean snhColumn;
+
+  // column ISSUER.CERT, binary or Base64 encoded
+  private final BinaryColumn issuerCertColumn;
+
   private final X509CRL crl;
 
   private final X509Certificate caCert;
@@ -215,7 +221,21 @@ public class ImportCrl {
     vec.add(new DERTaggedObject(true, 2, new DERGeneralizedTime(crl.getThisUpdate())));
     this.crlId = CrlID.getInstance(new DERSequence(vec));
 
-    this.sqlSelectIdCert = datasource.buildSelectFirstSql(1, CORE_SQL_SELECT_ID_CERT);
+    this.snhColumn = datasource.tableHasColumn(null, "CERT", "SNH");
+    this.serialKeyHashed = snhColumn && "hash".equals(datasource.getFirstValue(
+        null, "DBSCHEMA", "VALUE2", "NAME='SERIAL_KEY'", String.class));
+    this.issuerCertColumn = BinaryColumn.detect(datasource, null, "ISSUER", "CERT");
+    String snColumns = snhColumn ? "SN,SNH" : "SN";
+    String snParams = snhColumn ? "?,?" : "?";
+    String snCriteria = serialKeyHashed ? "IID=? AND SNH=? AND SN=?" : "IID=? AND SN=?";
+
+    this.sqlInsertCertRev = StringUtil.concat("INSERT INTO CERT (ID,IID,", snColumns,
+        ",REV,RR,RT,RIT,LUPDATE) VALUES(?,?,", snParams, ",?,?,?,?,?)");
+    this.sqlDeleteCert = "DELETE FROM CERT WHERE " + snCriteria;
+    this.sqlInsertCert = StringUtil.concat("INSERT INTO CERT (ID,IID,", snColumns,
+        ",REV,RR,RT,RIT,LUPDATE,NBEFORE,NAFTER,HASH) VALUES(?,?,", snParams,
+        ",?,?,?,?,?,?,?,?)");
+    this.sqlSelectIdCert = datasource.buildSelectFirstSql(1, "ID FROM CERT WHERE " + snCriteria);
   }
 
   public boolean importCrlToOcspDb() {
@@ -228,9 +248,9 @@ public class ImportCrl {
       // CHECKSTYLE:SKIP
       int caId = importCa(conn);
 
-      psDeleteCert = datasource.prepareStatement(conn, SQL_DELETE_CERT);
-      psInsertCert = datasource.prepareStatement(conn, SQL_INSERT_CERT);
-      psInsertCertRev = datasource.prepareStatement(conn, SQL_INSERT_CERT_REV);
+      psDeleteCert = datasource.prepareStatement(conn, sqlDeleteCert);
+      psInsertCert = datasource.prepareStatement(conn, sqlInsertCert);
+      psInsertCertRev = datasource.prepareStatement(conn, sqlInsertCertRev);
       psSelectIdCert = datasource.prepareStatement(conn, sqlSelectIdCert);
       psUpdateCert = datasource.prepareStatement(conn, SQL_UPDATE_CERT);
       psUpdateCertRev = datasource.prepareStatement(conn, SQL_UPDATE_CERT_REV);
@@ -275,7 +295,7 @@ public class ImportCrl {
       sql = "SELECT ID,CRL_INFO FROM ISSUER WHERE S1C=?";
       ps = datasource.prepareStatement(conn, sql);
       ps.setString(1, fpCaCert);
-      rs = ps.executeQuery();
+      rs = datasource.executeQuery(ps, sql);
       if (rs.next()) {
         issuerId = rs.getInt("ID");
         String str = rs.getString("CRL_INFO");
@@ -345,7 +365,7 @@ public class ImportCrl {
         ps.setLong(offset++, caCert.getNotBefore().getTime() / 1000);
         ps.setLong(offset++, caCert.getNotAfter().getTime() / 1000);
         ps.setString(offset++, fpCaCert);
-        ps.setString(offset++, Base64.encodeToString(encodedCaCert));
+        issuerCertColumn.set(ps, offset++, encodedCaCert);
       } else {
         sql = "UPDATE ISSUER SET REV_INFO=?,CRL_INFO=? WHERE ID=?";
         ps = datasource.prepareStatement(conn, sql);
@@ -364,7 +384,7 @@ public class ImportCrl {
         ps.setInt(offset++, issuerId.intValue());
       }
 
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
       return issuerId.intValue();
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
@@ -417,10 +437,9 @@ public class ImportCrl {
             }
 
             // delete the entry
-            sql = SQL_DELETE_CERT;
-            psDeleteCert.setInt(1, caId);
-            psDeleteCert.setString(2, serial.toString(16));
-            psDeleteCert.executeUpdate();
+            sql = sqlDeleteCert;
+            setSerial(psDeleteCert, 1, caId, serial, serialKeyHashed);
+            datasource.executeUpdate(psDeleteCert, sql);
             continue;
           }
 
@@ -429,12 +448,11 @@ public class ImportCrl {
           int offset = 1;
 
           if (id == null) {
-            sql = SQL_INSERT_CERT_REV;
+            sql = sqlInsertCertRev;
             id = maxId.incrementAndGet();
             ps = psInsertCertRev;
             ps.setLong(offset++, id);
-            ps.setInt(offset++, caId);
-            ps.setString(offset++, serial.toString(16));
+            offset = setSerial(ps, offset, caId, serial, snhColumn);
           } else {
             sql = SQL_UPDATE_CERT_REV;
             ps = psUpdateCertRev;
@@ -454,7 +472,7 @@ public class ImportCrl {
             ps.setLong(offset++, id);
           }
 
-          ps.executeUpdate();
+          datasource.executeUpdate(ps, sql);
         } catch (SQLException ex) {
           throw datasource.translate(sql, ex);
         }
@@ -569,9 +587,8 @@ public class ImportCrl {
   private Long getId(int caId, BigInteger serialNumber) throws DataAccessException {
     ResultSet rs = null;
     try {
-      psSelectIdCert.setInt(1, caId);
-      psSelectIdCert.setString(2, serialNumber.toString(16));
-      rs = psSelectIdCert.executeQuery();
+      setSerial(psSelectIdCert, 1, caId, serialNumber, serialKeyHashed);
+      rs = datasource.executeQuery(psSelectIdCert, sqlSelectIdCert);
       if (!rs.next()) {
         return null;
       }
@@ -583,6 +600,22 @@ public class ImportCrl {
     }
   }
 
+  /**
+   * Sets the issuer id and the serial number key (SN, or SNH and SN).
+   * @param withSnh whether SNH is set, in the criteria or in the inserted columns.
+   * @return the index of the next parameter.
+   */
+  private int setSerial(PreparedStatement ps, int offset, int caId, BigInteger serialNumber,
+      boolean withSnh) throws SQLException {
+    int idx = offset;
+    ps.setInt(idx++, caId);
+    if (withSnh) {
+      ps.setLong(idx++, FpIdCalculator.hash(serialNumber));
+    }
+    ps.setString(idx++, serialNumber.toString(16));
+    return idx;
+  }
+
   private void addCertificate(AtomicLong maxId, int caId, Certificate cert, String profileName,
       String certLogId) throws DataAccessException, ImportCrlException {
     // not issued by the given issuer
@@ -627,19 +660,18 @@ public class ImportCrl {
       sql = SQL_UPDATE_CERT;
       ps = psUpdateCert;
     } else {
-      sql = SQL_INSERT_CERT;
+      sql = sqlInsertCert;
       ps = psInsertCert;
       id = maxId.incrementAndGet();
     }
 
     try {
       int offset = 1;
-      if (sql == SQL_INSERT_CERT) {
+      if (!tblCertIdExists) {
         ps.setLong(offset++, id);
-        // ISSUER ID IID
-        ps.setInt(offset++, caId);
-        // serial number SN
-        ps.setString(offset++, cert.getSerialNumber().getPositiveValue().toString(16));
+        // ISSUER ID IID, serial number SN
+        offset = setSerial(ps, offset, caId, cert.getSerialNumber().getPositiveValue(),
+            snhColumn);
         // whether revoked REV
         ps.setInt(offset++, 0);
         // revocation reason RR
@@ -663,7 +695,7 @@ public class ImportCrl {
         ps.setLong(offset++, id);
       }
 
-      ps.executeUpdate();
+      datasource.executeUpdate(ps, sql);
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     }
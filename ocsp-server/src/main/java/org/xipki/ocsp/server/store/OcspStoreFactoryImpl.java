@@ -32,9 +32,14 @@ public class OcspStoreFactoryImpl implements OcspStoreFactory {
 
   private static final String TYPE_CRL = "crl";
 
+  private static final String TYPE_CRL_MEMORY = "crl-memory";
+
+  private static final String TYPE_SNAPSHOT = "snapshot";
+
   @Override
   public boolean canCreateOcspStore(String type) {
-    return TYPE_XIPKI_DB.equalsIgnoreCase(type) || TYPE_CRL.equalsIgnoreCase(type);
+    return TYPE_XIPKI_DB.equalsIgnoreCase(type) || TYPE_CRL.equalsIgnoreCase(type)
+        || TYPE_CRL_MEMORY.equalsIgnoreCase(type) || TYPE_SNAPSHOT.equalsIgnoreCase(type);
   }
 
   @Override
@@ -43,6 +48,10 @@ public class OcspStoreFactoryImpl implements OcspStoreFactory {
       return new DbCertStatusStore();
     } else if (TYPE_CRL.equalsIgnoreCase(type)) {
       return new CrlDbCertStatusStore();
+    } else if (TYPE_CRL_MEMORY.equalsIgnoreCase(type)) {
+      return new CrlMemoryCertStatusStore();
+    } else if (TYPE_SNAPSHOT.equalsIgnoreCase(type)) {
+      return new SnapshotCertStatusStore();
     } else {
       throw new ObjectCreationException("unknown type OCSP store type " + type);
     }
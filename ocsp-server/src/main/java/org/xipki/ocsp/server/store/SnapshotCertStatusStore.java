@@ -0,0 +1,240 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.OcspStoreException;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.OcspServerConf;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+import org.xipki.util.LogUtil;
+
+/**
+ * OcspStore without database, the certificate status is read from a memory-mapped
+ * snapshot file generated by {@link CertStatusSnapshotGenerator}. A replaced snapshot
+ * file is detected periodically and swapped in atomically.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class SnapshotCertStatusStore extends OcspStore {
+
+  private class SnapshotUpdateService implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        updateSnapshot();
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error while updating the snapshot of store " + name);
+      }
+    }
+
+  } // class SnapshotUpdateService
+
+  private static final Logger LOG = LoggerFactory.getLogger(SnapshotCertStatusStore.class);
+
+  private File snapshotFile;
+
+  private volatile CertStatusSnapshot snapshot;
+
+  // lastModified of the snapshot file which could not be loaded
+  private long failedLastModified;
+
+  private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+
+  @Override
+  public void init(SourceConf conf, DataSourceWrapper datasource) throws OcspStoreException {
+    Args.notNull(conf, "conf");
+    if (!(conf instanceof OcspServerConf.SourceConfImpl)) {
+      throw new OcspStoreException("unknown conf " + conf.getClass().getName());
+    }
+
+    OcspServerConf.SnapshotSourceConf conf0 =
+        ((OcspServerConf.SourceConfImpl) conf).getSnapshotSource();
+    if (conf0 == null) {
+      throw new OcspStoreException("conf.getSnapshotSource() may not be null");
+    }
+
+    this.snapshotFile = new File(IoUtil.expandFilepath(conf0.getSnapshotFile()));
+    try {
+      this.snapshot = CertStatusSnapshot.load(snapshotFile);
+    } catch (IOException ex) {
+      throw new OcspStoreException("could not load snapshot file " + snapshotFile.getPath()
+          + ": " + ex.getMessage(), ex);
+    }
+    LOG.info("loaded snapshot {} with {} entries", snapshotFile.getPath(), snapshot.size());
+
+    if (this.scheduledThreadPoolExecutor != null) {
+      this.scheduledThreadPoolExecutor.shutdownNow();
+    }
+    this.scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
+    this.scheduledThreadPoolExecutor.scheduleAtFixedRate(new SnapshotUpdateService(),
+        conf0.getCheckInterval(), conf0.getCheckInterval(), TimeUnit.SECONDS);
+  }
+
+  /**
+   * Loads the snapshot file if it has been replaced.
+   * @return whether a new snapshot has been loaded.
+   */
+  public synchronized boolean updateSnapshot() {
+    if (!snapshot.isOutdated() || !snapshotFile.exists()) {
+      return false;
+    }
+
+    long lastModified = snapshotFile.lastModified();
+    if (lastModified == failedLastModified) {
+      return false;
+    }
+
+    CertStatusSnapshot newSnapshot;
+    try {
+      newSnapshot = CertStatusSnapshot.load(snapshotFile);
+    } catch (IOException ex) {
+      failedLastModified = lastModified;
+      LogUtil.error(LOG, ex, "could not load snapshot file " + snapshotFile.getPath()
+          + ", keep the current one");
+      return false;
+    }
+
+    // the mapped memory of the old snapshot is released by the garbage collector
+    this.snapshot = newSnapshot;
+    LOG.info("swapped snapshot {}, created at {}, with {} entries", snapshotFile.getPath(),
+        newSnapshot.getCreationTime(), newSnapshot.size());
+    return true;
+  }
+
+  @Override
+  public CertStatusInfo getCertStatus(Date time, RequestIssuer reqIssuer, BigInteger serialNumber,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
+      throws OcspStoreException {
+    if (serialNumber.signum() != 1) { // non-positive serial number
+      return CertStatusInfo.getUnknownCertStatusInfo(new Date(), null);
+    }
+
+    // use the same snapshot for the whole lookup
+    CertStatusSnapshot snapshot = this.snapshot;
+    IssuerEntry issuer = snapshot.getIssuer(reqIssuer);
+    if (issuer == null) {
+      return null;
+    }
+
+    CrlInfo crlInfo = issuer.getCrlInfo();
+
+    Date[] updateTimes = CertStatusStoreUtil.getUpdateTimes(crlInfo);
+    Date thisUpdate = updateTimes[0];
+    Date nextUpdate = updateTimes[1];
+
+    CertStatusSnapshot.Entries entries = snapshot.getEntries(issuer);
+    long index = entries.find(serialNumber);
+
+    CertStatusInfo certStatusInfo;
+    if (index == -1) {
+      if (unknownSerialAsGood) {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(snapshot.getCertHashAlgo(), null,
+            thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+      }
+    } else {
+      boolean ignore = false;
+      long timeInSec = time.getTime() / 1000;
+      if (ignoreNotYetValidCert) {
+        long notBeforeInSec = entries.getNotBefore(index);
+        if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
+          ignore = true;
+        }
+      }
+
+      if (!ignore && ignoreExpiredCert) {
+        long notAfterInSec = entries.getNotAfter(index);
+        if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
+          ignore = true;
+        }
+      }
+
+      if (ignore) {
+        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+      } else {
+        int flags = entries.getFlags(index);
+        byte[] certHash = null;
+        if (includeCertHash && (flags & CertStatusSnapshot.FLAG_CERTHASH) != 0) {
+          certHash = entries.getCertHash(index, snapshot.getCertHashAlgo().getLength());
+        }
+
+        if ((flags & CertStatusSnapshot.FLAG_REVOKED) != 0) {
+          long revTime = entries.getRevocationTime(index);
+          long invalTime = includeRit ? entries.getInvalidityTime(index) : 0;
+          Date invTime = (invalTime == 0 || invalTime == revTime)
+              ? null : new Date(invalTime * 1000);
+          CertRevocationInfo revInfo = new CertRevocationInfo(entries.getReason(index),
+              new Date(revTime * 1000), invTime);
+          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+              snapshot.getCertHashAlgo(), certHash, thisUpdate, nextUpdate, null);
+        } else {
+          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(snapshot.getCertHashAlgo(),
+              certHash, thisUpdate, nextUpdate, null);
+        }
+      }
+    }
+
+    return CertStatusStoreUtil.complete(certStatusInfo, issuer, retentionInterval,
+        includeArchiveCutoff, includeCrlId, inheritCaRevocation);
+  } // method getCertStatus
+
+  @Override
+  public boolean knowsIssuer(RequestIssuer reqIssuer) {
+    return null != snapshot.getIssuer(reqIssuer);
+  }
+
+  @Override
+  public X509Certificate getIssuerCert(RequestIssuer reqIssuer) {
+    IssuerEntry issuer = snapshot.getIssuer(reqIssuer);
+    return (issuer == null) ? null : issuer.getCert();
+  }
+
+  @Override
+  public boolean isHealthy() {
+    return snapshot != null;
+  }
+
+  @Override
+  public void close() {
+    if (scheduledThreadPoolExecutor != null) {
+      scheduledThreadPoolExecutor.shutdown();
+      scheduledThreadPoolExecutor = null;
+    }
+  }
+
+}
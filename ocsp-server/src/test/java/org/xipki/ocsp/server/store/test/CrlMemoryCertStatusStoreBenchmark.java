@@ -0,0 +1,280 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store.test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.api.CertStatus;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.OcspServerConf;
+import org.xipki.ocsp.server.store.CrlMemoryCertStatusStore;
+import org.xipki.ocsp.server.store.IssuerEntry;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Load-time and lookup-rate benchmark of {@link CrlMemoryCertStatusStore} with a large CRL.
+ *
+ * <p>Parameters (system properties):
+ * <ul>
+ *   <li>{@code crl.entries}: number of revoked certificates, default {@code 10000000}</li>
+ *   <li>{@code crl.lookups}: number of lookups, half of them for revoked certificates,
+ *     default {@code 2000000}</li>
+ * </ul>
+ * The heap must hold the encoded CRL and the parsed table, e.g. {@code -Xmx3g} for
+ * 10 million entries.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CrlMemoryCertStatusStoreBenchmark {
+
+  // SEQUENCE {INTEGER (16 bytes), UTCTime, SEQUENCE {SEQUENCE {OID reasonCode,
+  // OCTET STRING {ENUMERATED}}}}
+  private static final int SERIAL_LEN = 16;
+
+  private static final int ENTRY_LEN = 2 + (2 + SERIAL_LEN) + 15 + 14;
+
+  private static final byte[] SHA256_WITH_RSA = {0x30, 0x0D, 0x06, 0x09, 0x2A, (byte) 0x86,
+    0x48, (byte) 0x86, (byte) 0xF7, 0x0D, 0x01, 0x01, 0x0B, 0x05, 0x00};
+
+  private static final X500Name CA_SUBJECT = new X500Name("CN=benchmark-ca");
+
+  private static KeyPair caKeyPair;
+
+  private static X509Certificate caCert;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(2048);
+    caKeyPair = kpGen.generateKeyPair();
+
+    Date notBefore = new Date(System.currentTimeMillis() - 3600_000L);
+    Date notAfter = new Date(System.currentTimeMillis() + 365 * 86400_000L);
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(CA_SUBJECT,
+        BigInteger.ONE, notBefore, notAfter, CA_SUBJECT, caKeyPair.getPublic());
+    caCert = new JcaX509CertificateConverter().getCertificate(builder.build(
+        new JcaContentSignerBuilder("SHA256withRSA").build(caKeyPair.getPrivate())));
+  }
+
+  @Test
+  public void benchmark() throws Exception {
+    int numEntries = Integer.getInteger("crl.entries", 10000000);
+    int numLookups = Integer.getInteger("crl.lookups", 2000000);
+    // encoded CRL, parsed table and some headroom
+    Assume.assumeTrue(Runtime.getRuntime().maxMemory() > 110L * numEntries);
+
+    File dir = Files.createTempDirectory("ocsp-crl-benchmark").toFile();
+    File crlFile = new File(dir, "ca.crl");
+    File caCertFile = new File(dir, "ca.der");
+    Files.write(caCertFile.toPath(), caCert.getEncoded());
+
+    try {
+      long start = System.nanoTime();
+      Files.write(crlFile.toPath(), createCrl(numEntries, 1));
+      System.out.printf("generated CRL with %,d entries (%,d bytes) in %,d ms%n", numEntries,
+          crlFile.length(), (System.nanoTime() - start) / 1000000);
+
+      OcspServerConf.CrlSourceConf crlConf = new OcspServerConf.CrlSourceConf();
+      crlConf.setCrlFile(crlFile.getPath());
+      crlConf.setCaCertFile(caCertFile.getPath());
+      OcspServerConf.SourceConfImpl conf = new OcspServerConf.SourceConfImpl();
+      conf.setCrlSource(crlConf);
+
+      System.gc();
+      long usedBefore = usedMemory();
+      CrlMemoryCertStatusStore store = new CrlMemoryCertStatusStore();
+      store.setName("benchmark");
+      start = System.nanoTime();
+      store.init(conf, null);
+      long loadMs = (System.nanoTime() - start) / 1000000;
+      System.gc();
+      System.out.printf("loaded in %,d ms, retained heap %,d MB%n", loadMs,
+          (usedMemory() - usedBefore) >> 20);
+
+      try {
+        IssuerEntry issuer = new IssuerEntry(0, caCert);
+        RequestIssuer reqIssuer = new RequestIssuer(HashAlgo.SHA1,
+            issuer.getEncodedHash(HashAlgo.SHA1));
+
+        // same sequence of serial numbers as in the CRL
+        Random random = new Random(1);
+        // even length, every second lookup is for a revoked certificate
+        int poolSize = (int) Math.min(Math.min(numLookups, 2L * numEntries), 1 << 20);
+        BigInteger[] serials = new BigInteger[Math.max(2, poolSize & ~1)];
+        byte[] bytes = new byte[SERIAL_LEN];
+        for (int i = 0; i < serials.length; i++) {
+          if (i % 2 == 0) {
+            nextSerial(random, bytes);
+          } else {
+            // not revoked, most significant bit differs from the revoked ones
+            bytes[0] = (byte) 0x20;
+          }
+          serials[i] = new BigInteger(1, bytes);
+        }
+
+        Date now = new Date();
+        int revoked = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < numLookups; i++) {
+          CertStatus status = store.getCertStatus(now, reqIssuer, serials[i % serials.length],
+              false, false, false).getCertStatus();
+          if (status == CertStatus.REVOKED) {
+            revoked++;
+          }
+        }
+        long duration = System.nanoTime() - start;
+        Assert.assertEquals((numLookups + 1) / 2, revoked);
+        System.out.printf("%,d lookups in %,d ms: %,.0f lookups/s%n", numLookups,
+            duration / 1000000, numLookups * 1e9 / duration);
+      } finally {
+        store.close();
+      }
+    } finally {
+      for (File child : dir.listFiles()) {
+        child.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  private static long usedMemory() {
+    Runtime rt = Runtime.getRuntime();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  private static void nextSerial(Random random, byte[] bytes) {
+    random.nextBytes(bytes);
+    // positive, 16 bytes long and different from the not revoked ones
+    bytes[0] = (byte) (0x40 | (bytes[0] & 0x1F));
+  }
+
+  /**
+   * Builds the DER encoded CRL directly, the ASN.1 object model would not scale to
+   * millions of entries.
+   */
+  private static byte[] createCrl(int numEntries, int crlNumber) throws Exception {
+    byte[] name = CA_SUBJECT.getEncoded("DER");
+    long now = System.currentTimeMillis();
+    byte[] thisUpdate = utcTime(now);
+    byte[] nextUpdate = utcTime(now + 86400_000L);
+    // [0] {SEQUENCE {SEQUENCE {OID cRLNumber, OCTET STRING {INTEGER}}}}
+    byte[] extensions = {(byte) 0xA0, 0x0E, 0x30, 0x0C, 0x30, 0x0A, 0x06, 0x03, 0x55, 0x1D,
+      0x14, 0x04, 0x03, 0x02, 0x01, (byte) crlNumber};
+
+    long revokedLen = (long) numEntries * ENTRY_LEN;
+    long tbsContentLen = 3 + SHA256_WITH_RSA.length + name.length + thisUpdate.length
+        + nextUpdate.length + 6 + revokedLen + extensions.length;
+    long totalContentLen = 6 + tbsContentLen + SHA256_WITH_RSA.length + 5 + 256;
+    if (6 + totalContentLen > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("too many entries");
+    }
+
+    byte[] buf = new byte[(int) (6 + totalContentLen)];
+    int off = header(buf, 0, 0x30, totalContentLen);
+    int tbsOff = off;
+    off = header(buf, off, 0x30, tbsContentLen);
+    off = put(buf, off, new byte[]{0x02, 0x01, 0x01});
+    off = put(buf, off, SHA256_WITH_RSA);
+    off = put(buf, off, name);
+    off = put(buf, off, thisUpdate);
+    off = put(buf, off, nextUpdate);
+    off = header(buf, off, 0x30, revokedLen);
+
+    Random random = new Random(1);
+    byte[] serial = new byte[SERIAL_LEN];
+    byte[] revocationTime = utcTime(now - 3600_000L);
+    for (int i = 0; i < numEntries; i++) {
+      nextSerial(random, serial);
+      buf[off++] = 0x30;
+      buf[off++] = ENTRY_LEN - 2;
+      buf[off++] = 0x02;
+      buf[off++] = SERIAL_LEN;
+      off = put(buf, off, serial);
+      off = put(buf, off, revocationTime);
+      off = put(buf, off, new byte[]{0x30, 0x0C, 0x30, 0x0A, 0x06, 0x03, 0x55, 0x1D, 0x15,
+        0x04, 0x03, 0x0A, 0x01, (byte) (1 + i % 5)});
+    }
+
+    off = put(buf, off, extensions);
+    int tbsEnd = off;
+
+    Signature signer = Signature.getInstance("SHA256withRSA");
+    signer.initSign(caKeyPair.getPrivate());
+    signer.update(buf, tbsOff, tbsEnd - tbsOff);
+    byte[] signature = signer.sign();
+
+    off = put(buf, off, SHA256_WITH_RSA);
+    off = put(buf, off, new byte[]{0x03, (byte) 0x82, 0x01, 0x01, 0x00});
+    off = put(buf, off, signature);
+    Assert.assertEquals(buf.length, off);
+    return buf;
+  }
+
+  private static int header(byte[] buf, int off, int tag, long len) {
+    buf[off++] = (byte) tag;
+    buf[off++] = (byte) 0x84;
+    for (int i = 3; i >= 0; i--) {
+      buf[off++] = (byte) (len >>> (8 * i));
+    }
+    return off;
+  }
+
+  private static int put(byte[] buf, int off, byte[] value) {
+    System.arraycopy(value, 0, buf, off, value.length);
+    return off + value.length;
+  }
+
+  private static byte[] utcTime(long timeMs) {
+    SimpleDateFormat format = new SimpleDateFormat("yyMMddHHmmss'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    byte[] value = format.format(new Date(timeMs)).getBytes();
+    byte[] encoded = new byte[2 + value.length];
+    encoded[0] = 0x17;
+    encoded[1] = (byte) value.length;
+    System.arraycopy(value, 0, encoded, 2, value.length);
+    return encoded;
+  }
+
+}
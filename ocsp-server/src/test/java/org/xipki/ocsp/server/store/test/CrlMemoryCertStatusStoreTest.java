@@ -0,0 +1,295 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store.test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.api.CertStatus;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.OcspStoreException;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.OcspServerConf;
+import org.xipki.ocsp.server.store.CrlMemoryCertStatusStore;
+import org.xipki.ocsp.server.store.IssuerEntry;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.CrlReason;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.util.X509Util;
+
+/**
+ * Test of {@link CrlMemoryCertStatusStore}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CrlMemoryCertStatusStoreTest {
+
+  private static final X500Name CA_SUBJECT = new X500Name("CN=crl-ca");
+
+  private static X509Certificate caCert;
+
+  private static PrivateKey caKey;
+
+  private static RequestIssuer reqIssuer;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair kp = kpGen.generateKeyPair();
+    caKey = kp.getPrivate();
+
+    Date notBefore = new Date(System.currentTimeMillis() - 3600_000L);
+    Date notAfter = new Date(System.currentTimeMillis() + 365 * 86400_000L);
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(CA_SUBJECT,
+        BigInteger.ONE, notBefore, notAfter, CA_SUBJECT, kp.getPublic());
+    caCert = new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(caKey)));
+
+    IssuerEntry issuer = new IssuerEntry(0, caCert);
+    reqIssuer = new RequestIssuer(HashAlgo.SHA1, issuer.getEncodedHash(HashAlgo.SHA1));
+  }
+
+  @Test
+  public void testCrlAgainstJdk() throws Exception {
+    Random random = new Random(1);
+    Date now = new Date(System.currentTimeMillis() / 1000 * 1000);
+    X509v2CRLBuilder builder = newCrlBuilder(now, 1, null);
+    Set<BigInteger> serials = new HashSet<>();
+    for (int i = 0; i < 2000; i++) {
+      BigInteger serial = new BigInteger(1 + random.nextInt(160), random).add(BigInteger.ONE);
+      if (!serials.add(serial)) {
+        continue;
+      }
+
+      Date revTime = new Date(now.getTime() - random.nextInt(100000) * 1000L);
+      int reason = CrlReason.values()[random.nextInt(4)].getCode();
+      if (i % 5 == 0) {
+        // GeneralizedTime after 2049
+        revTime = new Date(2600000000000L + random.nextInt(100000) * 1000L);
+      }
+
+      if (i % 2 == 0) {
+        builder.addCRLEntry(serial, revTime, reason,
+            new Date(revTime.getTime() - 3600_000L));
+      } else {
+        builder.addCRLEntry(serial, revTime, reason);
+      }
+    }
+
+    byte[] encoded = builder.build(
+        new JcaContentSignerBuilder("SHA256withECDSA").build(caKey)).getEncoded();
+    X509CRL crl = X509Util.parseCrl(encoded);
+
+    File dir = Files.createTempDirectory("ocsp-crl").toFile();
+    File crlFile = new File(dir, "ca.crl");
+    try {
+      Files.write(crlFile.toPath(), encoded);
+      OcspServerConf.SourceConfImpl conf = newSourceConf(dir, crlFile);
+      conf.getCrlSource().setUseUpdateDatesFromCrl(true);
+
+      CrlMemoryCertStatusStore store = new CrlMemoryCertStatusStore();
+      store.setName("crl-memory");
+      store.init(conf, null);
+      try {
+        for (X509CRLEntry entry : crl.getRevokedCertificates()) {
+          CertStatusInfo info = store.getCertStatus(now, reqIssuer, entry.getSerialNumber(),
+              false, true, false);
+          Assert.assertEquals(CertStatus.REVOKED, info.getCertStatus());
+          Assert.assertEquals(crl.getThisUpdate(), info.getThisUpdate());
+          Assert.assertEquals(crl.getNextUpdate(), info.getNextUpdate());
+
+          CertRevocationInfo revInfo = info.getRevocationInfo();
+          Assert.assertEquals(entry.getRevocationDate(), revInfo.getRevocationTime());
+          CrlReason reason = (entry.getRevocationReason() == null) ? CrlReason.UNSPECIFIED
+              : CrlReason.fromReason(entry.getRevocationReason());
+          Assert.assertEquals(reason, revInfo.getReason());
+          Assert.assertEquals(entry.getExtensionValue(Extension.invalidityDate.getId()) != null,
+              revInfo.getInvalidityTime() != null);
+        }
+      } finally {
+        store.close();
+      }
+
+      // tampered signature
+      encoded[encoded.length - 5] ^= 0x01;
+      Files.write(crlFile.toPath(), encoded);
+      store = new CrlMemoryCertStatusStore();
+      store.setName("crl-memory");
+      try {
+        store.init(conf, null);
+        Assert.fail("tampered CRL accepted");
+      } catch (OcspStoreException ex) {
+        // expected
+      } finally {
+        store.close();
+      }
+    } finally {
+      for (File child : dir.listFiles()) {
+        child.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testDeltaCrlAndSwap() throws Exception {
+    File dir = Files.createTempDirectory("ocsp-crl").toFile();
+    File crlFile = new File(dir, "ca.crl");
+    File deltaCrlFile = new File(dir, "ca.deltacrl");
+
+    try {
+      Date now = new Date(System.currentTimeMillis() / 1000 * 1000);
+      Date revTime = new Date(now.getTime() - 3600_000L);
+
+      X509v2CRLBuilder builder = newCrlBuilder(now, 10, null);
+      builder.addCRLEntry(BigInteger.valueOf(100), revTime, CrlReason.KEY_COMPROMISE.getCode());
+      builder.addCRLEntry(BigInteger.valueOf(200), revTime, CrlReason.CERTIFICATE_HOLD.getCode(),
+          new Date(revTime.getTime() - 3600_000L));
+      writeCrl(builder, crlFile);
+
+      OcspServerConf.SourceConfImpl conf = newSourceConf(dir, crlFile);
+      conf.getCrlSource().setDeltaCrlFile(deltaCrlFile.getPath());
+
+      CrlMemoryCertStatusStore store = new CrlMemoryCertStatusStore();
+      store.setName("crl-memory");
+      store.setIncludeCrlId(true);
+      store.init(conf, null);
+      try {
+        Assert.assertTrue(store.knowsIssuer(reqIssuer));
+        CertStatusInfo info = store.getCertStatus(now, reqIssuer, BigInteger.valueOf(100),
+            false, true, false);
+        Assert.assertEquals(CertStatus.REVOKED, info.getCertStatus());
+        Assert.assertEquals(CrlReason.KEY_COMPROMISE, info.getRevocationInfo().getReason());
+        Assert.assertEquals(revTime, info.getRevocationInfo().getRevocationTime());
+        Assert.assertNull(info.getRevocationInfo().getInvalidityTime());
+        Assert.assertNotNull(info.getCrlId());
+
+        info = store.getCertStatus(now, reqIssuer, BigInteger.valueOf(200), false, true, false);
+        Assert.assertEquals(revTime.getTime() - 3600_000L,
+            info.getRevocationInfo().getInvalidityTime().getTime());
+
+        Assert.assertEquals(CertStatus.UNKNOWN, store.getCertStatus(now, reqIssuer,
+            BigInteger.valueOf(300), false, false, false).getCertStatus());
+
+        // delta CRL: releases 200, revokes 300
+        builder = newCrlBuilder(now, 11, BigInteger.valueOf(10));
+        builder.addCRLEntry(BigInteger.valueOf(200), revTime, CrlReason.REMOVE_FROM_CRL.getCode());
+        builder.addCRLEntry(BigInteger.valueOf(300), now, CrlReason.SUPERSEDED.getCode());
+        writeCrl(builder, deltaCrlFile);
+        Assert.assertTrue(store.updateCrl());
+        Assert.assertFalse(store.updateCrl());
+
+        Assert.assertEquals(CertStatus.REVOKED, store.getCertStatus(now, reqIssuer,
+            BigInteger.valueOf(100), false, false, false).getCertStatus());
+        Assert.assertEquals(CertStatus.UNKNOWN, store.getCertStatus(now, reqIssuer,
+            BigInteger.valueOf(200), false, false, false).getCertStatus());
+        Assert.assertEquals(CrlReason.SUPERSEDED, store.getCertStatus(now, reqIssuer,
+            BigInteger.valueOf(300), false, false, false).getRevocationInfo().getReason());
+
+        // new full CRL, the delta CRL does no more apply
+        builder = newCrlBuilder(now, 12, null);
+        builder.addCRLEntry(BigInteger.valueOf(400), revTime, CrlReason.UNSPECIFIED.getCode());
+        writeCrl(builder, crlFile);
+        crlFile.setLastModified(crlFile.lastModified() + 2000);
+        Assert.assertTrue(store.updateCrl());
+
+        Assert.assertEquals(CertStatus.UNKNOWN, store.getCertStatus(now, reqIssuer,
+            BigInteger.valueOf(300), false, false, false).getCertStatus());
+        Assert.assertEquals(CertStatus.REVOKED, store.getCertStatus(now, reqIssuer,
+            BigInteger.valueOf(400), false, false, false).getCertStatus());
+
+        // older CRL is ignored
+        builder = newCrlBuilder(now, 9, null);
+        writeCrl(builder, crlFile);
+        crlFile.setLastModified(crlFile.lastModified() + 4000);
+        Assert.assertFalse(store.updateCrl());
+        Assert.assertEquals(CertStatus.REVOKED, store.getCertStatus(now, reqIssuer,
+            BigInteger.valueOf(400), false, false, false).getCertStatus());
+      } finally {
+        store.close();
+      }
+    } finally {
+      for (File child : dir.listFiles()) {
+        child.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  private static X509v2CRLBuilder newCrlBuilder(Date thisUpdate, int crlNumber,
+      BigInteger baseCrlNumber) throws Exception {
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(CA_SUBJECT, thisUpdate);
+    builder.setNextUpdate(new Date(thisUpdate.getTime() + 86400_000L));
+    builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
+    if (baseCrlNumber != null) {
+      builder.addExtension(Extension.deltaCRLIndicator, true, new ASN1Integer(baseCrlNumber));
+    }
+    return builder;
+  }
+
+  private static void writeCrl(X509v2CRLBuilder builder, File file) throws Exception {
+    byte[] encoded = builder.build(
+        new JcaContentSignerBuilder("SHA256withECDSA").build(caKey)).getEncoded();
+    Files.write(file.toPath(), encoded);
+  }
+
+  private static OcspServerConf.SourceConfImpl newSourceConf(File dir, File crlFile)
+      throws Exception {
+    File caCertFile = new File(dir, "ca.der");
+    Files.write(caCertFile.toPath(), caCert.getEncoded());
+
+    OcspServerConf.CrlSourceConf crlConf = new OcspServerConf.CrlSourceConf();
+    crlConf.setCrlFile(crlFile.getPath());
+    crlConf.setCaCertFile(caCertFile.getPath());
+    OcspServerConf.SourceConfImpl conf = new OcspServerConf.SourceConfImpl();
+    conf.setCrlSource(crlConf);
+    return conf;
+  }
+
+}
@@ -0,0 +1,236 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store.test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.dbtool.InitDbMain;
+import org.xipki.dbtool.LiquibaseMain;
+import org.xipki.ocsp.api.CertStatus;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.DbCertStatusStore;
+import org.xipki.ocsp.server.store.IssuerEntry;
+import org.xipki.security.CrlReason;
+import org.xipki.security.FpIdCalculator;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Base64;
+
+/**
+ * Test of {@link DbCertStatusStore} with the table CERT keyed by the serial number and by its
+ * hash value.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class DbCertStatusStoreTest {
+
+  // the OCSP database schema is maintained in the module ca-server
+  private static final String SCHEMA_FILE = "../ca-server/src/main/resources/sql/ocsp-init.xml";
+
+  private static final AtomicInteger DB_INDEX = new AtomicInteger();
+
+  private static X509Certificate caCert;
+
+  private static RequestIssuer reqIssuer;
+
+  private DataSourceWrapper datasource;
+
+  private DbCertStatusStore store;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair kp = kpGen.generateKeyPair();
+
+    X500Name subject = new X500Name("CN=db-ca");
+    Date notBefore = new Date(System.currentTimeMillis() - 3600_000L);
+    Date notAfter = new Date(System.currentTimeMillis() + 365 * 86400_000L);
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(subject,
+        BigInteger.ONE, notBefore, notAfter, subject, kp.getPublic());
+    caCert = new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(kp.getPrivate())));
+
+    IssuerEntry issuer = new IssuerEntry(1, caCert);
+    reqIssuer = new RequestIssuer(HashAlgo.SHA1, issuer.getEncodedHash(HashAlgo.SHA1));
+  }
+
+  @After
+  public void tearDown() {
+    // closes also the datasource
+    if (store != null) {
+      store.close();
+    } else if (datasource != null) {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testHashedSerialKey() throws Exception {
+    createDatabase("hash");
+    BigInteger goodSerial = new BigInteger("0123456789abcdef0123456789abcdef", 16);
+    BigInteger revokedSerial = goodSerial.add(BigInteger.ONE);
+    addCert(1, goodSerial, true, false);
+    addCert(2, revokedSerial, true, true);
+
+    initStore();
+    assertStatus(goodSerial, CertStatus.GOOD);
+    assertStatus(revokedSerial, CertStatus.REVOKED);
+    assertStatus(goodSerial.add(BigInteger.TEN), CertStatus.UNKNOWN);
+
+    // a row without SNH is not found by the hash value
+    BigInteger noSnhSerial = BigInteger.valueOf(0x1234);
+    addCert(3, noSnhSerial, false, false);
+    assertStatus(noSnhSerial, CertStatus.UNKNOWN);
+  }
+
+  @Test
+  public void testSerialKey() throws Exception {
+    createDatabase(null);
+    BigInteger goodSerial = BigInteger.valueOf(0x1234);
+    BigInteger revokedSerial = BigInteger.valueOf(0x5678);
+    addCert(1, goodSerial, false, false);
+    addCert(2, revokedSerial, false, true);
+
+    initStore();
+    assertStatus(goodSerial, CertStatus.GOOD);
+    assertStatus(revokedSerial, CertStatus.REVOKED);
+    assertStatus(BigInteger.TEN, CertStatus.UNKNOWN);
+  }
+
+  @Test
+  public void testMigrationInProgress() throws Exception {
+    createDatabase(null);
+    BigInteger serial = BigInteger.valueOf(0x1234);
+    addCert(1, serial, false, true);
+
+    // the column SNH exists but is not filled yet, the rows are looked up by SN
+    execute("ALTER TABLE CERT ADD SNH BIGINT");
+    initStore();
+    assertStatus(serial, CertStatus.REVOKED);
+
+    // the migration is complete, the rows are looked up by SNH
+    execute("UPDATE CERT SET SNH=" + FpIdCalculator.hash(serial) + " WHERE ID=1");
+    execute("INSERT INTO DBSCHEMA (NAME,VALUE2) VALUES ('SERIAL_KEY','hash')");
+    initStore();
+    assertStatus(serial, CertStatus.REVOKED);
+  }
+
+  private void assertStatus(BigInteger serial, CertStatus expected) throws Exception {
+    Assert.assertEquals("status of " + serial.toString(16), expected,
+        store.getCertStatus(new Date(), reqIssuer, serial, false, false, false).getCertStatus());
+  }
+
+  private void initStore() throws Exception {
+    if (store == null) {
+      store = new DbCertStatusStore();
+      store.setName("db");
+    }
+    store.init(null, datasource);
+  }
+
+  private void addCert(long id, BigInteger serial, boolean withSnh, boolean revoked)
+      throws Exception {
+    long nowInSec = System.currentTimeMillis() / 1000;
+    String sql = "INSERT INTO CERT (ID,IID,SN,LUPDATE,NBEFORE,NAFTER,REV,RR,RT"
+        + (withSnh ? ",SNH" : "") + ") VALUES (?,1,?,?,?,?,?,?,?" + (withSnh ? ",?" : "") + ")";
+    Connection conn = datasource.getConnection();
+    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+      int idx = 1;
+      ps.setLong(idx++, id);
+      ps.setString(idx++, serial.toString(16));
+      ps.setLong(idx++, nowInSec);
+      ps.setLong(idx++, nowInSec - 100);
+      ps.setLong(idx++, nowInSec + 100);
+      ps.setInt(idx++, revoked ? 1 : 0);
+      ps.setInt(idx++, revoked ? CrlReason.KEY_COMPROMISE.getCode() : 0);
+      ps.setLong(idx++, revoked ? nowInSec - 10 : 0);
+      if (withSnh) {
+        ps.setLong(idx++, FpIdCalculator.hash(serial));
+      }
+      ps.executeUpdate();
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+  private void createDatabase(String serialKey) throws Exception {
+    String url = "jdbc:h2:mem:dbcertstatus-" + DB_INDEX.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+    InitDbMain.initDb(new LiquibaseMain.DatabaseConf("org.h2.Driver", "sa", "", url, null),
+        SCHEMA_FILE, serialKey);
+
+    Properties props = new Properties();
+    props.setProperty("driverClassName", "org.h2.Driver");
+    props.setProperty("jdbcUrl", url);
+    props.setProperty("username", "sa");
+    props.setProperty("password", "");
+    props.setProperty("maximumPoolSize", "2");
+    datasource = new DataSourceFactory().createDataSource("test", props, null);
+
+    byte[] encodedCaCert = caCert.getEncoded();
+    String sql = "INSERT INTO ISSUER (ID,SUBJECT,NBEFORE,NAFTER,S1C,CERT) VALUES (1,?,?,?,?,?)";
+    Connection conn = datasource.getConnection();
+    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+      ps.setString(1, caCert.getSubjectX500Principal().getName());
+      ps.setLong(2, caCert.getNotBefore().getTime() / 1000);
+      ps.setLong(3, caCert.getNotAfter().getTime() / 1000);
+      ps.setString(4, HashAlgo.SHA1.base64Hash(encodedCaCert));
+      ps.setString(5, Base64.encodeToString(encodedCaCert));
+      ps.executeUpdate();
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+  private void execute(String sql) throws Exception {
+    Connection conn = datasource.getConnection();
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute(sql);
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+}
@@ -0,0 +1,195 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store.test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.api.CertStatus;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.OcspServerConf;
+import org.xipki.ocsp.server.store.CertStatusSnapshotWriter;
+import org.xipki.ocsp.server.store.IssuerEntry;
+import org.xipki.ocsp.server.store.SnapshotCertStatusStore;
+import org.xipki.security.CrlReason;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Test of {@link SnapshotCertStatusStore}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class SnapshotCertStatusStoreTest {
+
+  private static X509Certificate caCert;
+
+  private static RequestIssuer reqIssuer;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair kp = kpGen.generateKeyPair();
+
+    X500Name subject = new X500Name("CN=snapshot-ca");
+    Date notBefore = new Date(System.currentTimeMillis() - 3600_000L);
+    Date notAfter = new Date(System.currentTimeMillis() + 365 * 86400_000L);
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(subject,
+        BigInteger.ONE, notBefore, notAfter, subject, kp.getPublic());
+    caCert = new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(kp.getPrivate())));
+
+    IssuerEntry issuer = new IssuerEntry(0, caCert);
+    reqIssuer = new RequestIssuer(HashAlgo.SHA1, issuer.getEncodedHash(HashAlgo.SHA1));
+  }
+
+  @Test
+  public void testLookupAndSwap() throws Exception {
+    File dir = Files.createTempDirectory("ocsp-snapshot").toFile();
+    File file = new File(dir, "status.snapshot");
+
+    try {
+      // random serial numbers of different lengths, every third one revoked
+      Random random = new Random(1);
+      Set<BigInteger> serialSet = new HashSet<>();
+      serialSet.add(BigInteger.ONE);
+      serialSet.add(BigInteger.ONE.shiftLeft(159));
+      while (serialSet.size() < 20000) {
+        serialSet.add(new BigInteger(8 + random.nextInt(152), random).add(BigInteger.TEN));
+      }
+      List<BigInteger> serials = new ArrayList<>(serialSet);
+      Collections.shuffle(serials, random);
+
+      long nowInSec = System.currentTimeMillis() / 1000;
+      CertStatusSnapshotWriter writer = new CertStatusSnapshotWriter(HashAlgo.SHA256);
+      int issuerIndex = writer.addIssuer(caCert, null, null);
+      for (int i = 0; i < serials.size(); i++) {
+        byte[] hash = HashAlgo.SHA256.hash(serials.get(i).toByteArray());
+        if (i % 3 == 0) {
+          writer.addEntry(issuerIndex, serials.get(i), nowInSec - 100, nowInSec + 100,
+              CrlReason.KEY_COMPROMISE, nowInSec - 10, nowInSec - 20, hash);
+        } else {
+          writer.addEntry(issuerIndex, serials.get(i), nowInSec - 100, nowInSec + 100,
+              null, 0, 0, hash);
+        }
+      }
+      writer.write(file);
+
+      OcspServerConf.SnapshotSourceConf snapshotConf = new OcspServerConf.SnapshotSourceConf();
+      snapshotConf.setSnapshotFile(file.getPath());
+      snapshotConf.setCheckInterval(3600);
+      OcspServerConf.SourceConfImpl conf = new OcspServerConf.SourceConfImpl();
+      conf.setSnapshotSource(snapshotConf);
+
+      SnapshotCertStatusStore store = new SnapshotCertStatusStore();
+      store.setName("snapshot");
+      store.init(conf, null);
+
+      try {
+        Assert.assertTrue(store.knowsIssuer(reqIssuer));
+        Date now = new Date();
+        for (int i = 0; i < serials.size(); i++) {
+          CertStatusInfo info = store.getCertStatus(now, reqIssuer, serials.get(i),
+              true, true, false);
+          if (i % 3 == 0) {
+            Assert.assertEquals(CertStatus.REVOKED, info.getCertStatus());
+            Assert.assertEquals(CrlReason.KEY_COMPROMISE, info.getRevocationInfo().getReason());
+            Assert.assertEquals((nowInSec - 10) * 1000,
+                info.getRevocationInfo().getRevocationTime().getTime());
+            Assert.assertEquals((nowInSec - 20) * 1000,
+                info.getRevocationInfo().getInvalidityTime().getTime());
+          } else {
+            Assert.assertEquals(CertStatus.GOOD, info.getCertStatus());
+          }
+          Assert.assertArrayEquals(HashAlgo.SHA256.hash(serials.get(i).toByteArray()),
+              info.getCertHash());
+        }
+
+        Assert.assertEquals(CertStatus.UNKNOWN, store.getCertStatus(now, reqIssuer,
+            BigInteger.ONE.shiftLeft(300), false, false, false).getCertStatus());
+        Assert.assertEquals(CertStatus.UNKNOWN, store.getCertStatus(now, reqIssuer,
+            BigInteger.valueOf(2), false, false, false).getCertStatus());
+
+        // expired certificates are ignored
+        store.setIgnoreExpiredCert(true);
+        Assert.assertEquals(CertStatus.IGNORE, store.getCertStatus(
+            new Date((nowInSec + 200) * 1000), reqIssuer, BigInteger.ONE, false, false,
+            false).getCertStatus());
+
+        // replace the snapshot, CA revoked and the first serial number no more revoked
+        writer = new CertStatusSnapshotWriter(null);
+        issuerIndex = writer.addIssuer(caCert, new Date((nowInSec - 5) * 1000), null);
+        writer.addEntry(issuerIndex, serials.get(0), 0, 0, null, 0, 0, null);
+        writer.write(file);
+        // make sure the modification is detected with coarse file timestamps
+        file.setLastModified(file.lastModified() + 2000);
+
+        Assert.assertTrue(store.updateSnapshot());
+        Assert.assertFalse(store.updateSnapshot());
+
+        CertStatusInfo info = store.getCertStatus(now, reqIssuer, serials.get(0),
+            true, false, false);
+        Assert.assertEquals(CertStatus.GOOD, info.getCertStatus());
+        Assert.assertNull(info.getCertHash());
+
+        info = store.getCertStatus(now, reqIssuer, serials.get(0), false, false, true);
+        Assert.assertEquals(CertStatus.REVOKED, info.getCertStatus());
+        Assert.assertEquals(CrlReason.CA_COMPROMISE, info.getRevocationInfo().getReason());
+
+        Assert.assertEquals(CertStatus.UNKNOWN, store.getCertStatus(now, reqIssuer,
+            serials.get(1), false, false, false).getCertStatus());
+      } finally {
+        store.close();
+      }
+    } finally {
+      for (File child : dir.listFiles()) {
+        child.delete();
+      }
+      dir.delete();
+    }
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.test;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.api.CertStatus;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.ClientRateLimiter;
+import org.xipki.ocsp.server.NegativeStatusCache;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Test of {@link NegativeStatusCache} and {@link ClientRateLimiter}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class NegativeStatusCacheTest {
+
+  @Test
+  public void testIssuersAndSerials() {
+    NegativeStatusCache cache = new NegativeStatusCache(60, 1000);
+    RequestIssuer issuer1 = issuer(1);
+    RequestIssuer issuer2 = issuer(2);
+
+    cache.addUnknownIssuer(issuer1);
+    cache.addUnknownSerial(issuer2, BigInteger.TEN, unknownStatus());
+
+    Assert.assertTrue(cache.isIssuerUnknown(issuer(1)));
+    Assert.assertFalse(cache.isIssuerUnknown(issuer2));
+    Assert.assertNotNull(cache.getUnknownSerial(issuer(2), BigInteger.TEN));
+    Assert.assertNull(cache.getUnknownSerial(issuer2, BigInteger.ONE));
+    Assert.assertNull(cache.getUnknownSerial(issuer1, BigInteger.TEN));
+    Assert.assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testStatusInfoOfStore() {
+    NegativeStatusCache cache = new NegativeStatusCache(60, 1000);
+    Date thisUpdate = new Date(System.currentTimeMillis() - 3600_000L);
+    Date nextUpdate = new Date(System.currentTimeMillis() + 3600_000L);
+    Date archiveCutOff = new Date(System.currentTimeMillis() - 86400_000L);
+    CertStatusInfo info = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    info.setArchiveCutOff(archiveCutOff);
+    cache.addUnknownSerial(issuer(1), BigInteger.TEN, info);
+
+    CertStatusInfo cached = cache.getUnknownSerial(issuer(1), BigInteger.TEN);
+    Assert.assertEquals(CertStatus.UNKNOWN, cached.getCertStatus());
+    Assert.assertEquals(thisUpdate, cached.getThisUpdate());
+    Assert.assertEquals(nextUpdate, cached.getNextUpdate());
+    Assert.assertEquals(archiveCutOff, cached.getArchiveCutOff());
+  }
+
+  @Test
+  public void testBoundedSize() {
+    NegativeStatusCache cache = new NegativeStatusCache(60, 1600);
+    RequestIssuer issuer = issuer(1);
+    for (int i = 0; i < 100000; i++) {
+      cache.addUnknownSerial(issuer, BigInteger.valueOf(i), unknownStatus());
+    }
+
+    Assert.assertTrue("too many entries: " + cache.size(), cache.size() <= 1600);
+    // the last one is always present
+    Assert.assertNotNull(cache.getUnknownSerial(issuer, BigInteger.valueOf(99999)));
+  }
+
+  @Test
+  public void testExpiration() throws Exception {
+    NegativeStatusCache cache = new NegativeStatusCache(1, 100);
+    cache.addUnknownIssuer(issuer(1));
+    Assert.assertTrue(cache.isIssuerUnknown(issuer(1)));
+    Thread.sleep(2100);
+    Assert.assertFalse(cache.isIssuerUnknown(issuer(1)));
+  }
+
+  @Test
+  public void testClientRateLimiter() {
+    // one token per hour, burst 3
+    ClientRateLimiter limiter = new ClientRateLimiter(1.0 / 3600, 3, 100);
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(limiter.tryAcquire("10.0.0.1"));
+    }
+    Assert.assertFalse(limiter.tryAcquire("10.0.0.1"));
+    Assert.assertTrue(limiter.tryAcquire("10.0.0.2"));
+    Assert.assertEquals(1, limiter.getRejectedCount());
+  }
+
+  @Test
+  public void testClientRateLimiterEviction() {
+    // one token per hour, burst 1, at most 2 clients
+    ClientRateLimiter limiter = new ClientRateLimiter(1.0 / 3600, 1, 2);
+    Assert.assertTrue(limiter.tryAcquire("10.0.0.1"));
+    Assert.assertTrue(limiter.tryAcquire("10.0.0.2"));
+    Assert.assertFalse(limiter.tryAcquire("10.0.0.1"));
+
+    // 10.0.0.2 is the least recently seen client and is evicted
+    Assert.assertTrue(limiter.tryAcquire("10.0.0.3"));
+    Assert.assertFalse(limiter.tryAcquire("10.0.0.1"));
+    Assert.assertFalse(limiter.tryAcquire("10.0.0.3"));
+    Assert.assertTrue(limiter.tryAcquire("10.0.0.2"));
+  }
+
+  private static CertStatusInfo unknownStatus() {
+    return CertStatusInfo.getUnknownCertStatusInfo(new Date(), null);
+  }
+
+  private static RequestIssuer issuer(int id) {
+    byte[] hashes = new byte[40];
+    hashes[0] = (byte) id;
+    return new RequestIssuer(HashAlgo.SHA1, hashes);
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.api.Responder;
+import org.xipki.ocsp.server.RequestCoalescer;
+import org.xipki.ocsp.server.type.CertID;
+import org.xipki.security.AlgorithmCode;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Test of {@link RequestCoalescer}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class RequestCoalescerTest {
+
+  private static final Responder RESPONDER = new Responder() {
+
+    @Override
+    public boolean supportsHttpGet() {
+      return true;
+    }
+
+    @Override
+    public int getMaxRequestSize() {
+      return 1000;
+    }
+
+    @Override
+    public Long getCacheMaxAge() {
+      return null;
+    }
+
+  };
+
+  @Test
+  public void testIdenticalRequestsShareOneComputation() throws Exception {
+    final int numRequests = 8;
+    final RequestCoalescer coalescer = new RequestCoalescer(10000);
+    final AtomicInteger computations = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final OcspRespWithCacheInfo response = new OcspRespWithCacheInfo(new byte[]{1}, null);
+
+    ExecutorService executor = Executors.newFixedThreadPool(numRequests);
+    try {
+      List<Future<OcspRespWithCacheInfo>> futures = new ArrayList<>(numRequests);
+      for (int i = 0; i < numRequests; i++) {
+        futures.add(executor.submit(() -> coalescer.execute(key(1, AlgorithmCode.SHA256WITHRSA),
+            () -> {
+              computations.incrementAndGet();
+              release.await();
+              return response;
+            })));
+      }
+
+      // wait until all other requests wait for the first one
+      long deadline = System.currentTimeMillis() + 10000;
+      while (coalescer.getCoalescedCount() < numRequests - 1
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      release.countDown();
+
+      for (Future<OcspRespWithCacheInfo> future : futures) {
+        Assert.assertSame(response, future.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Assert.assertEquals(1, computations.get());
+    Assert.assertEquals(numRequests - 1, coalescer.getCoalescedCount());
+    Assert.assertEquals(0, coalescer.getInflightCount());
+
+    // no computation in progress, computed again
+    coalescer.execute(key(1, AlgorithmCode.SHA256WITHRSA), () -> {
+      computations.incrementAndGet();
+      return response;
+    });
+    Assert.assertEquals(2, computations.get());
+  }
+
+  @Test
+  public void testKey() {
+    Assert.assertEquals(key(1, AlgorithmCode.SHA256WITHRSA), key(1, AlgorithmCode.SHA256WITHRSA));
+    Assert.assertEquals(key(1, AlgorithmCode.SHA256WITHRSA).hashCode(),
+        key(1, AlgorithmCode.SHA256WITHRSA).hashCode());
+    Assert.assertFalse(key(1, AlgorithmCode.SHA256WITHRSA).equals(
+        key(2, AlgorithmCode.SHA256WITHRSA)));
+    Assert.assertFalse(key(1, AlgorithmCode.SHA256WITHRSA).equals(
+        key(1, AlgorithmCode.SHA256WITHECDSA)));
+  }
+
+  @Test
+  public void testBoundedWaitAndFailure() throws Exception {
+    final RequestCoalescer coalescer = new RequestCoalescer(50);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<OcspRespWithCacheInfo> leader = executor.submit(() -> coalescer.execute(
+          key(1, AlgorithmCode.SHA256WITHRSA), () -> {
+            started.countDown();
+            release.await();
+            throw new IllegalStateException("computation failed");
+          }));
+      Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+      // waiting longer than maxWait
+      Assert.assertNull(coalescer.execute(key(1, AlgorithmCode.SHA256WITHRSA), () -> {
+        throw new AssertionError("must not be called");
+      }));
+      Assert.assertEquals(1, coalescer.getTimeoutCount());
+
+      release.countDown();
+      try {
+        leader.get(10, TimeUnit.SECONDS);
+        Assert.fail("exception expected");
+      } catch (ExecutionException ex) {
+        Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+      }
+      Assert.assertEquals(0, coalescer.getInflightCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static RequestCoalescer.Key key(long serial, AlgorithmCode sigAlgCode) {
+    RequestIssuer issuer = new RequestIssuer(HashAlgo.SHA1, new byte[40]);
+    return new RequestCoalescer.Key(RESPONDER,
+        new CertID(issuer, BigInteger.valueOf(serial)), sigAlgCode);
+  }
+
+}
@@ -0,0 +1,137 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.test;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.api.CertStatus;
+import org.xipki.ocsp.server.OcspResponseStatus;
+import org.xipki.ocsp.server.ResponderMetrics;
+import org.xipki.ocsp.server.ResponderMetrics.Stage;
+
+/**
+ * Test of {@link ResponderMetrics}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class ResponderMetricsTest {
+
+  @Test
+  public void testRecordStages() {
+    ResponderMetrics metrics = new ResponderMetrics();
+    long start = System.nanoTime();
+    long next = metrics.record(Stage.PARSE, start);
+    Assert.assertTrue("next start", next >= start);
+    metrics.record(Stage.SIGN, next);
+    metrics.record(Stage.SIGN, next);
+    metrics.record(Stage.TOTAL, start);
+
+    Assert.assertEquals(1, metrics.getHistogram(Stage.PARSE).getCount());
+    Assert.assertEquals(0, metrics.getHistogram(Stage.CACHE_LOOKUP).getCount());
+    Assert.assertEquals(0, metrics.getHistogram(Stage.STORE_QUERY).getCount());
+    Assert.assertEquals(2, metrics.getHistogram(Stage.SIGN).getCount());
+    Assert.assertEquals(1, metrics.getHistogram(Stage.TOTAL).getCount());
+
+    Map<String, Object> stages = getMap(metrics.getMetrics(), "stages");
+    Assert.assertEquals(Stage.values().length, stages.size());
+    Assert.assertEquals(2L, getMap(stages, "sign").get("count"));
+    Assert.assertEquals(0L, getMap(stages, "cacheLookup").get("count"));
+  }
+
+  @Test
+  public void testStatusCounts() {
+    ResponderMetrics metrics = new ResponderMetrics();
+    metrics.countResponseStatus(OcspResponseStatus.successful);
+    metrics.countResponseStatus(OcspResponseStatus.successful);
+    metrics.countResponseStatus(OcspResponseStatus.unauthorized);
+    metrics.countCertStatus(CertStatus.GOOD);
+    metrics.countCertStatus(CertStatus.REVOKED);
+    metrics.countCertStatus(CertStatus.REVOKED);
+    metrics.countCertStatus(CertStatus.REVOKED);
+    metrics.countNegativeCacheHit();
+    metrics.countCoalesced();
+    metrics.countCoalesced();
+    metrics.countRateLimited();
+
+    Map<String, Object> map = metrics.getMetrics();
+
+    Map<String, Object> respStatuses = getMap(map, "responseStatus");
+    Assert.assertEquals(OcspResponseStatus.values().length, respStatuses.size());
+    Assert.assertEquals(2L, respStatuses.get("successful"));
+    Assert.assertEquals(1L, respStatuses.get("unauthorized"));
+    Assert.assertEquals(0L, respStatuses.get("tryLater"));
+
+    Map<String, Object> certStatuses = getMap(map, "certStatus");
+    Assert.assertEquals(CertStatus.values().length, certStatuses.size());
+    Assert.assertEquals(1L, certStatuses.get("good"));
+    Assert.assertEquals(3L, certStatuses.get("revoked"));
+    Assert.assertEquals(0L, certStatuses.get("unknown"));
+
+    Assert.assertEquals(1L, map.get("negativeCacheHits"));
+    Assert.assertEquals(2L, map.get("coalesced"));
+    Assert.assertEquals(1L, map.get("rateLimited"));
+  }
+
+  @Test
+  public void testCacheHitRatio() {
+    ResponderMetrics metrics = new ResponderMetrics();
+    Map<String, Object> cache = getMap(metrics.getMetrics(), "responseCache");
+    Assert.assertEquals(0, ((Number) cache.get("hitRatio")).intValue());
+
+    metrics.countCacheHit();
+    metrics.countCacheHit();
+    metrics.countCacheHit();
+    metrics.countCacheMiss();
+
+    cache = getMap(metrics.getMetrics(), "responseCache");
+    Assert.assertEquals(3L, cache.get("hits"));
+    Assert.assertEquals(1L, cache.get("misses"));
+    Assert.assertEquals(0.75, ((Number) cache.get("hitRatio")).doubleValue(), 0.0001);
+  }
+
+  @Test
+  public void testReset() {
+    ResponderMetrics metrics = new ResponderMetrics();
+    metrics.record(Stage.TOTAL, System.nanoTime());
+    metrics.countResponseStatus(OcspResponseStatus.successful);
+    metrics.countCertStatus(CertStatus.GOOD);
+    metrics.countCacheHit();
+    metrics.countRateLimited();
+
+    metrics.reset();
+
+    Assert.assertEquals(0, metrics.getHistogram(Stage.TOTAL).getCount());
+    Map<String, Object> map = metrics.getMetrics();
+    Assert.assertEquals(0L, getMap(map, "responseStatus").get("successful"));
+    Assert.assertEquals(0L, getMap(map, "certStatus").get("good"));
+    Assert.assertEquals(0L, getMap(map, "responseCache").get("hits"));
+    Assert.assertEquals(0L, map.get("rateLimited"));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> getMap(Map<String, Object> map, String key) {
+    Object value = map.get(key);
+    Assert.assertTrue(key + " is not a map", value instanceof Map);
+    return (Map<String, Object>) value;
+  }
+
+}
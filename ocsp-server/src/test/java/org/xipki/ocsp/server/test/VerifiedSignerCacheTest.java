@@ -0,0 +1,336 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.server.OcspServerConf;
+import org.xipki.ocsp.server.RequestOption;
+import org.xipki.ocsp.server.VerifiedSignerCache;
+import org.xipki.security.CertpathValidationModel;
+import org.xipki.util.InvalidConfException;
+import org.xipki.util.TripleState;
+
+/**
+ * Test of {@link VerifiedSignerCache}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class VerifiedSignerCacheTest {
+
+  private static final long DAY = 24L * 60 * 60 * 1000;
+
+  private static final long NOW = System.currentTimeMillis();
+
+  private static KeyPair keypair;
+
+  private static X509Certificate caCert;
+
+  private static X509Certificate signerCert;
+
+  private static class CountingValidator implements VerifiedSignerCache.SignerValidator {
+
+    private final ContentVerifierProvider verifierProvider = new DummyVerifierProvider();
+
+    private final boolean signatureValid;
+
+    private final X509Certificate[] certpath;
+
+    private int verifierProviderCount;
+
+    private int signatureCount;
+
+    private int certpathCount;
+
+    CountingValidator(boolean signatureValid, X509Certificate... certpath) {
+      this.signatureValid = signatureValid;
+      this.certpath = certpath;
+    }
+
+    @Override
+    public ContentVerifierProvider getVerifierProvider() {
+      verifierProviderCount++;
+      return verifierProvider;
+    }
+
+    @Override
+    public boolean isSignatureValid(ContentVerifierProvider verifierProvider) {
+      signatureCount++;
+      return signatureValid;
+    }
+
+    @Override
+    public X509Certificate[] buildCertpath(Date referenceTime) {
+      certpathCount++;
+      return certpath;
+    }
+
+  }
+
+  private static class DummyVerifierProvider implements ContentVerifierProvider {
+
+    @Override
+    public boolean hasAssociatedCertificate() {
+      return false;
+    }
+
+    @Override
+    public X509CertificateHolder getAssociatedCertificate() {
+      return null;
+    }
+
+    @Override
+    public ContentVerifier get(AlgorithmIdentifier verifierAlgorithmIdentifier) {
+      throw new UnsupportedOperationException("get() unsupported");
+    }
+
+  }
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC", "BC");
+    kpGen.initialize(256);
+    keypair = kpGen.generateKeyPair();
+
+    caCert = generateCert("CN=CA", NOW - 10 * DAY, NOW + 10 * DAY);
+    signerCert = generateCert("CN=Signer", NOW - DAY, NOW + DAY);
+  }
+
+  @Test
+  public void testHitSkipsCertpathValidation() throws Exception {
+    VerifiedSignerCache cache = new VerifiedSignerCache(10, CertpathValidationModel.PKIX);
+    CountingValidator validator = new CountingValidator(true, signerCert, caCert);
+
+    Assert.assertTrue(cache.verify("signer1", NOW, validator));
+    Assert.assertTrue(cache.verify("signer1", NOW, validator));
+    Assert.assertTrue(cache.verify("signer1", NOW, validator));
+
+    Assert.assertEquals("certpath validations", 1, validator.certpathCount);
+    Assert.assertEquals("verifier providers", 1, validator.verifierProviderCount);
+    Assert.assertEquals("signature verifications", 3, validator.signatureCount);
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testHitWithInvalidSignature() throws Exception {
+    VerifiedSignerCache cache = new VerifiedSignerCache(10, CertpathValidationModel.PKIX);
+    Assert.assertTrue(cache.verify("signer1", NOW,
+        new CountingValidator(true, signerCert, caCert)));
+
+    CountingValidator validator = new CountingValidator(false, signerCert, caCert);
+    Assert.assertFalse(cache.verify("signer1", NOW, validator));
+    Assert.assertEquals("certpath validations", 0, validator.certpathCount);
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    VerifiedSignerCache cache = new VerifiedSignerCache(10, CertpathValidationModel.PKIX);
+    CountingValidator validator = new CountingValidator(true, signerCert, caCert);
+    Assert.assertTrue(cache.verify("signer1", NOW, validator));
+
+    // after notAfter of the signer certificate
+    long time = NOW + 2 * DAY;
+    CountingValidator expiredValidator = new CountingValidator(true, (X509Certificate[]) null);
+    Assert.assertFalse(cache.verify("signer1", time, expiredValidator));
+    Assert.assertEquals("certpath validations", 1, expiredValidator.certpathCount);
+    Assert.assertEquals(0, cache.size());
+
+    // before notBefore of the signer certificate
+    Assert.assertTrue(cache.verify("signer1", NOW, validator));
+    time = NOW - 2 * DAY;
+    expiredValidator = new CountingValidator(true, (X509Certificate[]) null);
+    Assert.assertFalse(cache.verify("signer1", time, expiredValidator));
+    Assert.assertEquals("certpath validations", 1, expiredValidator.certpathCount);
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testChainModelNeverExpires() throws Exception {
+    VerifiedSignerCache cache = new VerifiedSignerCache(10, CertpathValidationModel.CHAIN);
+    CountingValidator validator = new CountingValidator(true, signerCert, caCert);
+    Assert.assertTrue(cache.verify("signer1", NOW, validator));
+    Assert.assertTrue(cache.verify("signer1", NOW + 100 * DAY, validator));
+    Assert.assertEquals("certpath validations", 1, validator.certpathCount);
+  }
+
+  @Test
+  public void testInvalidSignatureNotCached() throws Exception {
+    VerifiedSignerCache cache = new VerifiedSignerCache(10, CertpathValidationModel.PKIX);
+    CountingValidator validator = new CountingValidator(false, signerCert, caCert);
+
+    Assert.assertFalse(cache.verify("signer1", NOW, validator));
+    Assert.assertFalse(cache.verify("signer1", NOW, validator));
+    Assert.assertEquals(0, cache.size());
+    Assert.assertEquals("verifier providers", 2, validator.verifierProviderCount);
+    Assert.assertEquals("certpath validations", 0, validator.certpathCount);
+  }
+
+  @Test
+  public void testInvalidCertpathNotCached() throws Exception {
+    VerifiedSignerCache cache = new VerifiedSignerCache(10, CertpathValidationModel.PKIX);
+    CountingValidator validator = new CountingValidator(true, (X509Certificate[]) null);
+
+    Assert.assertFalse(cache.verify("signer1", NOW, validator));
+    Assert.assertFalse(cache.verify("signer1", NOW, validator));
+    Assert.assertEquals(0, cache.size());
+    Assert.assertEquals("certpath validations", 2, validator.certpathCount);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    VerifiedSignerCache cache = new VerifiedSignerCache(2, CertpathValidationModel.PKIX);
+    CountingValidator validator = new CountingValidator(true, signerCert, caCert);
+    Assert.assertTrue(cache.verify("signer1", NOW, validator));
+    Assert.assertTrue(cache.verify("signer2", NOW, validator));
+    Assert.assertTrue(cache.verify("signer3", NOW, validator));
+    Assert.assertEquals(2, cache.size());
+
+    // signer1 has been evicted
+    Assert.assertTrue(cache.verify("signer1", NOW, validator));
+    Assert.assertEquals("certpath validations", 4, validator.certpathCount);
+  }
+
+  @Test
+  public void testCacheDisabled() throws Exception {
+    VerifiedSignerCache cache = new VerifiedSignerCache(0, CertpathValidationModel.PKIX);
+    CountingValidator validator = new CountingValidator(true, signerCert, caCert);
+    Assert.assertTrue(cache.verify("signer1", NOW, validator));
+    Assert.assertTrue(cache.verify("signer1", NOW, validator));
+    Assert.assertEquals("certpath validations", 2, validator.certpathCount);
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testReloadStartsEmpty() throws Exception {
+    File dir = Files.createTempDirectory("trustanchors").toFile();
+    try {
+      File caFile = new File(dir, "ca.der");
+      Files.write(caFile.toPath(), caCert.getEncoded());
+
+      OcspServerConf.RequestOption conf = createConf(dir, 5);
+      RequestOption option = new RequestOption(conf);
+      VerifiedSignerCache cache = option.getVerifiedSignerCache();
+      Assert.assertEquals(5, cache.getMaxSize());
+      Assert.assertTrue(cache.verify("signer1", NOW,
+          new CountingValidator(true, signerCert, caCert)));
+      Assert.assertEquals(1, cache.size());
+
+      // reload with new trust anchors
+      X509Certificate newCaCert = generateCert("CN=New CA", NOW - DAY, NOW + DAY);
+      Files.write(caFile.toPath(), newCaCert.getEncoded());
+      RequestOption newOption = new RequestOption(conf);
+      Assert.assertEquals(newCaCert,
+          newOption.getTrustAnchors().iterator().next().getCert());
+
+      VerifiedSignerCache newCache = newOption.getVerifiedSignerCache();
+      Assert.assertNotSame(cache, newCache);
+      Assert.assertEquals(0, newCache.size());
+
+      CountingValidator validator = new CountingValidator(true, (X509Certificate[]) null);
+      Assert.assertFalse(newCache.verify("signer1", NOW, validator));
+      Assert.assertEquals("certpath validations", 1, validator.certpathCount);
+    } finally {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testCacheSizeConf() throws Exception {
+    File dir = Files.createTempDirectory("trustanchors").toFile();
+    try {
+      Assert.assertEquals(100,
+          new RequestOption(createConf(dir, null)).getVerifiedSignerCache().getMaxSize());
+      Assert.assertEquals(0,
+          new RequestOption(createConf(dir, 0)).getVerifiedSignerCache().getMaxSize());
+
+      try {
+        new RequestOption(createConf(dir, -1));
+        Assert.fail("InvalidConfException expected");
+      } catch (InvalidConfException ex) {
+        // expected
+      }
+    } finally {
+      dir.delete();
+    }
+  }
+
+  private static OcspServerConf.RequestOption createConf(File trustAnchorsDir,
+      Integer verifiedSignerCacheSize) {
+    OcspServerConf.Nonce nonce = new OcspServerConf.Nonce();
+    nonce.setOccurrence(TripleState.optional);
+
+    OcspServerConf.CertCollection trustAnchors = new OcspServerConf.CertCollection();
+    trustAnchors.setDir(trustAnchorsDir.getPath());
+
+    OcspServerConf.CertpathValidation certpathConf = new OcspServerConf.CertpathValidation();
+    certpathConf.setValidationModel(CertpathValidationModel.PKIX);
+    certpathConf.setTrustAnchors(trustAnchors);
+
+    OcspServerConf.RequestOption conf = new OcspServerConf.RequestOption();
+    conf.setName("request1");
+    conf.setMaxRequestListCount(10);
+    conf.setMaxRequestSize(4096);
+    conf.setVersions(Arrays.asList("v1"));
+    conf.setNonce(nonce);
+    conf.setValidateSignature(true);
+    conf.setCertpathValidation(certpathConf);
+    conf.setVerifiedSignerCacheSize(verifiedSignerCacheSize);
+    return conf;
+  }
+
+  private static X509Certificate generateCert(String subject, long notBefore, long notAfter)
+      throws Exception {
+    X500Name name = new X500Name(subject);
+    JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name,
+        BigInteger.valueOf(notBefore), new Date(notBefore), new Date(notAfter), name,
+        keypair.getPublic());
+    return new JcaX509CertificateConverter().setProvider("BC").getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").setProvider("BC")
+            .build(keypair.getPrivate())));
+  }
+
+}
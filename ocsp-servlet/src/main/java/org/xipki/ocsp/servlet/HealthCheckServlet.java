@@ -19,6 +19,8 @@ package org.xipki.ocsp.servlet;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -37,7 +39,11 @@ import org.xipki.util.LogUtil;
 import com.alibaba.fastjson.JSON;
 
 /**
- * TODO.
+ * Health check of a responder. With the query parameter {@code format=text} the result,
+ * including the metrics, is returned in the Prometheus text exposition format: one gauge
+ * {@code xipki_ocsp_healthy} per check and one gauge {@code xipki_ocsp_status} per numeric
+ * status, labeled by the responder path, the check and the dotted name of the status.
+ *
  * @author Lijun Liao
  * @since 3.0.1
  */
@@ -50,6 +56,8 @@ public class HealthCheckServlet extends HttpServlet {
 
   private static final String CT_RESPONSE = "application/json";
 
+  private static final String CT_TEXT_RESPONSE = "text/plain; version=0.0.4; charset=utf-8";
+
   private OcspServer server;
 
   public void setServer(OcspServer server) {
@@ -75,9 +83,19 @@ public class HealthCheckServlet extends HttpServlet {
       int status = healthResult.isHealthy()
           ? HttpServletResponse.SC_OK : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
 
-      byte[] respBytes = JSON.toJSONBytes(healthResult);
+      byte[] respBytes;
+      String contentType;
+      if ("text".equalsIgnoreCase(req.getParameter("format"))) {
+        respBytes = toText(responderAndPath.getServletPath(), healthResult)
+            .getBytes(StandardCharsets.UTF_8);
+        contentType = CT_TEXT_RESPONSE;
+      } else {
+        respBytes = JSON.toJSONBytes(healthResult);
+        contentType = CT_RESPONSE;
+      }
+
       resp.setStatus(status);
-      resp.setContentType(HealthCheckServlet.CT_RESPONSE);
+      resp.setContentType(contentType);
       resp.setContentLength(respBytes.length);
       resp.getOutputStream().write(respBytes);
     } catch (Throwable th) {
@@ -93,4 +111,88 @@ public class HealthCheckServlet extends HttpServlet {
     }
   } // method doGet
 
+  /**
+   * Formats the health check result in the Prometheus text exposition format.
+   * @param responderPath
+   *          Servlet path of the responder, used as value of the label {@code responder}.
+   * @param result
+   *          Health check result.
+   * @return the text lines.
+   */
+  public static String toText(String responderPath, HealthCheckResult result) {
+    StringBuilder healthLines = new StringBuilder(256);
+    StringBuilder statusLines = new StringBuilder(4096);
+    healthLines.append("# TYPE xipki_ocsp_healthy gauge\n");
+    statusLines.append("# TYPE xipki_ocsp_status gauge\n");
+    String labels = "responder=\"" + escape(responderPath) + "\",check=\"";
+    appendCheck(healthLines, statusLines, labels, "", result);
+    return healthLines.append(statusLines).toString();
+  }
+
+  private static void appendCheck(StringBuilder healthLines, StringBuilder statusLines,
+      String labels, String parentName, HealthCheckResult result) {
+    String checkName = parentName + escape(result.getName());
+    String checkLabels = labels + checkName + "\"";
+    healthLines.append("xipki_ocsp_healthy{").append(checkLabels).append("} ")
+        .append(result.isHealthy() ? 1 : 0).append('\n');
+
+    if (result.getStatuses() != null) {
+      appendStatuses(statusLines, checkLabels, "", result.getStatuses());
+    }
+
+    if (result.getChildChecks() != null) {
+      for (HealthCheckResult child : result.getChildChecks()) {
+        appendCheck(healthLines, statusLines, labels, checkName + "/", child);
+      }
+    }
+  }
+
+  private static void appendStatuses(StringBuilder sb, String checkLabels, String prefix,
+      Map<?, ?> statuses) {
+    for (Map.Entry<?, ?> entry : statuses.entrySet()) {
+      String name = prefix + entry.getKey();
+      Object value = entry.getValue();
+      String text;
+      if (value instanceof Map) {
+        appendStatuses(sb, checkLabels, name + ".", (Map<?, ?>) value);
+        continue;
+      } else if (value instanceof Number) {
+        text = value.toString();
+      } else if (value instanceof Boolean) {
+        text = ((Boolean) value) ? "1" : "0";
+      } else {
+        // not numeric
+        continue;
+      }
+
+      sb.append("xipki_ocsp_status{").append(checkLabels).append(",name=\"")
+          .append(escape(name)).append("\"} ").append(text).append('\n');
+    }
+  }
+
+  private static String escape(String labelValue) {
+    if (labelValue == null) {
+      return "";
+    }
+
+    StringBuilder sb = null;
+    for (int i = 0; i < labelValue.length(); i++) {
+      char ch = labelValue.charAt(i);
+      String replacement = (ch == '\\') ? "\\\\" : (ch == '"') ? "\\\""
+          : (ch == '\n') ? "\\n" : null;
+      if (replacement != null && sb == null) {
+        sb = new StringBuilder(labelValue.length() + 8).append(labelValue, 0, i);
+      }
+
+      if (sb != null) {
+        if (replacement == null) {
+          sb.append(ch);
+        } else {
+          sb.append(replacement);
+        }
+      }
+    }
+    return (sb == null) ? labelValue : sb.toString();
+  }
+
 }
@@ -32,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ocsp.api.mgmt.MgmtMessage.MgmtAction;
 import org.xipki.ocsp.api.mgmt.MgmtRequest;
+import org.xipki.ocsp.api.mgmt.MgmtResponse;
 import org.xipki.ocsp.api.mgmt.OcspMgmtException;
 import org.xipki.ocsp.server.OcspServerImpl;
 import org.xipki.password.PasswordResolverException;
@@ -111,6 +112,7 @@ public class HttpMgmtServlet extends HttpServlet {
       }
 
       InputStream in = request.getInputStream();
+      MgmtResponse resp = null;
 
       switch (action) {
         case restartServer: {
@@ -133,6 +135,10 @@ public class HttpMgmtServlet extends HttpServlet {
           }
           break;
         }
+        case getDatasourceMetrics: {
+          resp = new MgmtResponse.GetDatasourceMetrics(ocspServer.getDatasourceMetrics());
+          break;
+        }
         default: {
           throw new MyException(HttpServletResponse.SC_NOT_FOUND,
               "unsupported action " + action);
@@ -141,7 +147,13 @@ public class HttpMgmtServlet extends HttpServlet {
 
       response.setContentType(CT_RESPONSE);
       response.setStatus(HttpServletResponse.SC_OK);
-      response.setContentLength(0);
+      if (resp == null) {
+        response.setContentLength(0);
+      } else {
+        byte[] respBytes = JSON.toJSONBytes(resp);
+        response.setContentLength(respBytes.length);
+        response.getOutputStream().write(respBytes);
+      }
     } catch (MyException ex) {
       response.setHeader(HttpConstants.HEADER_XIPKI_ERROR, ex.getMessage());
       response.sendError(ex.getStatus());
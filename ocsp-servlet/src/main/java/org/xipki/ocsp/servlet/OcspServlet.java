@@ -17,11 +17,27 @@
 
 package org.xipki.ocsp.servlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.URLDecoder;
-
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -41,13 +57,289 @@ import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 
 /**
- * TODO.
+ * OCSP servlet.
+ *
+ * <p>If an executor is configured via {@link #setAsyncExecutor(ExecutorService, long)}, the
+ * requests are processed asynchronously: the request body is read and the response is written
+ * with non-blocking I/O, and the OCSP response is computed in the executor, so that the
+ * container threads are not blocked by slow clients or by waiting for a signer.
+ *
  * @author Lijun Liao
  * @since 3.0.1
  */
 
 public class OcspServlet extends HttpServlet {
 
+  /**
+   * HTTP response which is built without touching the {@link HttpServletResponse}, and is
+   * written to it only by the party who may respond.
+   */
+  private static class PreparedResponse {
+
+    private final int status;
+
+    private final byte[] content;
+
+    private String contentType;
+
+    // values are either String or Long (date)
+    private final Map<String, Object> headers = new LinkedHashMap<>();
+
+    PreparedResponse(int status, byte[] content) {
+      this.status = status;
+      this.content = content;
+    }
+
+    static PreparedResponse error(int status) {
+      return new PreparedResponse(status, null);
+    }
+
+    void setContentType(String contentType) {
+      this.contentType = contentType;
+    }
+
+    void addHeader(String name, String value) {
+      headers.put(name, value);
+    }
+
+    void addDateHeader(String name, long date) {
+      headers.put(name, date);
+    }
+
+    byte[] getContent() {
+      return content;
+    }
+
+    /**
+     * Sets the status and headers of the response.
+     */
+    void applyTo(HttpServletResponse resp) {
+      resp.setStatus(status);
+      if (contentType != null) {
+        resp.setContentType(contentType);
+      }
+
+      for (Entry<String, Object> header : headers.entrySet()) {
+        Object value = header.getValue();
+        if (value instanceof Long) {
+          resp.addDateHeader(header.getKey(), (Long) value);
+        } else {
+          resp.addHeader(header.getKey(), (String) value);
+        }
+      }
+
+      resp.setContentLength(content == null ? 0 : content.length);
+    }
+
+  } // class PreparedResponse
+
+  /**
+   * Asynchronous processing of a single request.
+   *
+   * <p>The response is written by exactly one party: the task computing the OCSP response,
+   * or the listener handling timeout and errors, whoever claims it first.
+   */
+  private class AsyncExchange implements AsyncListener, ReadListener, WriteListener {
+
+    private final AsyncContext asyncContext;
+
+    private final HttpServletResponse resp;
+
+    // set if the response has been claimed by one party
+    private final AtomicBoolean responded = new AtomicBoolean(false);
+
+    // set if the asynchronous processing has been completed
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+
+    private volatile Future<?> future;
+
+    private Responder responder;
+
+    private ServletInputStream in;
+
+    private ByteArrayOutputStream reqContent;
+
+    private String remoteAddr;
+
+    private ServletOutputStream out;
+
+    private byte[] respContent;
+
+    private int respOffset;
+
+    AsyncExchange(HttpServletRequest req, HttpServletResponse resp) {
+      this.resp = resp;
+      this.asyncContext = req.startAsync(req, resp);
+      this.asyncContext.setTimeout(asyncTimeout);
+      this.asyncContext.addListener(this);
+    }
+
+    void readPost(HttpServletRequest req, Responder responder) throws IOException {
+      this.responder = responder;
+      this.remoteAddr = req.getRemoteAddr();
+      int contentLength = req.getContentLength();
+      this.reqContent = new ByteArrayOutputStream(contentLength > 0 ? contentLength : 512);
+      this.in = req.getInputStream();
+      in.setReadListener(this);
+    }
+
+    void execute(Callable<PreparedResponse> task) {
+      try {
+        future = asyncExecutor.submit(() -> {
+          if (responded.get()) {
+            // timed out or failed while waiting in the queue
+            return;
+          }
+
+          try {
+            respond(task.call());
+          } catch (Throwable th) {
+            onError(th);
+          }
+        });
+      } catch (RejectedExecutionException ex) {
+        LOG.warn("too many pending OCSP requests, reject the request");
+        finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        return;
+      }
+
+      if (responded.get()) {
+        // timed out before the future was set
+        future.cancel(true);
+      }
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+      byte[] buffer = new byte[4096];
+      while (in.isReady() && !in.isFinished()) {
+        int read = in.read(buffer);
+        if (read == -1) {
+          break;
+        }
+
+        reqContent.write(buffer, 0, read);
+        // request too long
+        if (reqContent.size() > responder.getMaxRequestSize()) {
+          finish(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+          return;
+        }
+      }
+    }
+
+    @Override
+    public void onAllDataRead() throws IOException {
+      if (responded.get()) {
+        return;
+      }
+
+      final byte[] request = reqContent.toByteArray();
+      reqContent = null;
+      execute(() -> processPost(responder, request, remoteAddr));
+    }
+
+    /**
+     * Writes the response if no other party has responded yet.
+     */
+    private synchronized void respond(PreparedResponse response) throws IOException {
+      if (!responded.compareAndSet(false, true)) {
+        return;
+      }
+
+      response.applyTo(resp);
+      byte[] content = response.getContent();
+      if (content == null || content.length == 0) {
+        complete();
+        return;
+      }
+
+      this.respContent = content;
+      this.respOffset = 0;
+      this.out = resp.getOutputStream();
+      out.setWriteListener(this);
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+      while (!completed.get() && out.isReady()) {
+        if (respOffset == respContent.length) {
+          complete();
+          return;
+        }
+
+        int len = Math.min(8192, respContent.length - respOffset);
+        out.write(respContent, respOffset, len);
+        respOffset += len;
+      }
+    }
+
+    void finish(int status) {
+      try {
+        respond(PreparedResponse.error(status));
+      } catch (IOException ex) {
+        // no content is written
+        LogUtil.warn(LOG, ex, "could not send error " + status);
+        complete();
+      }
+    }
+
+    private void complete() {
+      if (completed.compareAndSet(false, true)) {
+        asyncContext.complete();
+      }
+    }
+
+    private void cancel() {
+      Future<?> tmpFuture = future;
+      if (tmpFuture != null) {
+        tmpFuture.cancel(true);
+      }
+    }
+
+    @Override
+    public void onError(Throwable th) {
+      if (th instanceof EOFException) {
+        LogUtil.warn(LOG, th, "Connection reset by peer");
+      } else {
+        LOG.error("Throwable thrown, this should not happen!", th);
+      }
+
+      if (responded.get()) {
+        complete();
+      } else {
+        finish(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+      responded.set(true);
+      completed.set(true);
+      cancel();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+      LOG.warn("timeout while processing the OCSP request");
+      finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      cancel();
+      synchronized (this) {
+        // the response may be claimed but not written in time
+        complete();
+      }
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+      onError(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+    }
+
+  } // class AsyncExchange
+
   private static final Logger LOG = LoggerFactory.getLogger(OcspServlet.class);
 
   private static final long DFLT_CACHE_MAX_AGE = 60; // 1 minute
@@ -60,13 +352,29 @@ public class OcspServlet extends HttpServlet {
 
   private OcspServer server;
 
+  private transient ExecutorService asyncExecutor;
+
+  private long asyncTimeout;
+
   public void setServer(OcspServer server) {
     this.server = Args.notNull(server, "server");
   }
 
+  /**
+   * Enables the asynchronous processing.
+   * @param asyncExecutor executor to compute the OCSP responses. {@code null} to process the
+   *        requests synchronously in the container threads.
+   * @param asyncTimeout timeout of the asynchronous processing in milliseconds.
+   */
+  public void setAsyncExecutor(ExecutorService asyncExecutor, long asyncTimeout) {
+    this.asyncExecutor = asyncExecutor;
+    this.asyncTimeout = asyncTimeout;
+  }
+
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
+    boolean async = false;
     try {
       String path = (String) req.getAttribute(HttpConstants.ATTR_XIPKI_PATH);
       ResponderAndPath responderAndPath = server.getResponderForPath(path);
@@ -83,6 +391,18 @@ public class OcspServlet extends HttpServlet {
       }
 
       Responder responder = responderAndPath.getResponder();
+      if (isAsync(req)) {
+        // request too long
+        if (req.getContentLength() > responder.getMaxRequestSize()) {
+          sendError(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+          return;
+        }
+
+        async = true;
+        new AsyncExchange(req, resp).readPost(req, responder);
+        return;
+      }
+
       byte[] reqContent = IoUtil.read(req.getInputStream());
       // request too long
       if (reqContent.length > responder.getMaxRequestSize()) {
@@ -90,18 +410,7 @@ public class OcspServlet extends HttpServlet {
         return;
       }
 
-      OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, reqContent,
-          false);
-      if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
-        LOG.error("processRequest returned null, this should not happen");
-        sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-      }
-
-      byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-      resp.setStatus(HttpServletResponse.SC_OK);
-      resp.setContentType(CT_RESPONSE);
-      resp.setContentLength(encodedOcspResp.length);
-      resp.getOutputStream().write(encodedOcspResp);
+      send(resp, processPost(responder, reqContent, req.getRemoteAddr()));
     } catch (Throwable th) {
       if (th instanceof EOFException) {
         LogUtil.warn(LOG, th, "Connection reset by peer");
@@ -109,12 +418,31 @@ public class OcspServlet extends HttpServlet {
         LOG.error("Throwable thrown, this should not happen!", th);
       }
 
-      sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      if (!async) {
+        sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      }
     } finally {
-      resp.flushBuffer();
+      if (!async) {
+        resp.flushBuffer();
+      }
     }
   } // method servicePost
 
+  private PreparedResponse processPost(Responder responder, byte[] reqContent,
+      String remoteAddr) {
+    OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, reqContent,
+        false, remoteAddr);
+    if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
+      LOG.error("processRequest returned null, this should not happen");
+      return PreparedResponse.error(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+
+    PreparedResponse response = new PreparedResponse(HttpServletResponse.SC_OK,
+        ocspRespWithCacheInfo.getResponse());
+    response.setContentType(CT_RESPONSE);
+    return response;
+  } // method processPost
+
   @Override
   protected void doGet(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
@@ -147,6 +475,7 @@ public class OcspServlet extends HttpServlet {
       return;
     }
 
+    boolean async = false;
     try {
       // RFC2560 A.1.1 specifies that request longer than 255 bytes SHOULD be sent by
       // POST, we support GET for longer requests anyway.
@@ -163,58 +492,14 @@ public class OcspServlet extends HttpServlet {
         return;
       }
 
-      OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, ocspReq, true);
-      if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
-        sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      String remoteAddr = req.getRemoteAddr();
+      if (isAsync(req)) {
+        async = true;
+        new AsyncExchange(req, resp).execute(() -> processGet(responder, ocspReq, remoteAddr));
         return;
       }
 
-      byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-
-      OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo = ocspRespWithCacheInfo.getCacheInfo();
-      if (cacheInfo != null) {
-        encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-        long now = System.currentTimeMillis();
-
-        // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
-        // the HTTP response.
-        resp.addDateHeader("Date", now);
-        // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
-        // last modified the response.
-        resp.addDateHeader("Last-Modified", cacheInfo.getThisUpdate());
-        // RFC 5019 6.2: Expires: This date and time will be the same as the
-        // nextUpdate time-stamp in the OCSP
-        // response itself.
-        // This is overridden by max-age on HTTP/1.1 compatible components
-        if (cacheInfo.getNextUpdate() != null) {
-          resp.addDateHeader("Expires", cacheInfo.getNextUpdate());
-        }
-        // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
-        // HEX representation of the SHA1 hash of the OCSPResponse structure.
-        resp.addHeader("ETag",
-            StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encodedOcspResp), "\""));
-
-        // Max age must be in seconds in the cache-control header
-        long maxAge;
-        if (responder.getCacheMaxAge() != null) {
-          maxAge = responder.getCacheMaxAge().longValue();
-        } else {
-          maxAge = DFLT_CACHE_MAX_AGE;
-        }
-
-        if (cacheInfo.getNextUpdate() != null) {
-          maxAge = Math.min(maxAge,
-              (cacheInfo.getNextUpdate() - cacheInfo.getThisUpdate()) / 1000);
-        }
-
-        resp.addHeader("Cache-Control",
-            StringUtil.concat("max-age=", Long.toString(maxAge),
-              ",public,no-transform,must-revalidate"));
-      } // end if (ocspRespWithCacheInfo)
-
-      resp.setContentLength(encodedOcspResp.length);
-      resp.setContentType(CT_RESPONSE);
-      resp.getOutputStream().write(encodedOcspResp);
+      send(resp, processGet(responder, ocspReq, remoteAddr));
     } catch (Throwable th) {
       if (th instanceof EOFException) {
         LogUtil.warn(LOG, th, "Connection reset by peer");
@@ -222,12 +507,85 @@ public class OcspServlet extends HttpServlet {
         LOG.error("Throwable thrown, this should not happen!", th);
       }
 
-      sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      if (!async) {
+        sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      }
     } finally {
-      resp.flushBuffer();
+      if (!async) {
+        resp.flushBuffer();
+      }
     }
   } // method serviceGet
 
+  private PreparedResponse processGet(Responder responder, byte[] ocspReq,
+      String remoteAddr) {
+    OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, ocspReq, true,
+        remoteAddr);
+    if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
+      return PreparedResponse.error(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+
+    byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
+    PreparedResponse resp = new PreparedResponse(HttpServletResponse.SC_OK, encodedOcspResp);
+
+    OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo = ocspRespWithCacheInfo.getCacheInfo();
+    if (cacheInfo != null) {
+      encodedOcspResp = ocspRespWithCacheInfo.getResponse();
+      long now = System.currentTimeMillis();
+
+      // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
+      // the HTTP response.
+      resp.addDateHeader("Date", now);
+      // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
+      // last modified the response.
+      resp.addDateHeader("Last-Modified", cacheInfo.getThisUpdate());
+      // RFC 5019 6.2: Expires: This date and time will be the same as the
+      // nextUpdate time-stamp in the OCSP
+      // response itself.
+      // This is overridden by max-age on HTTP/1.1 compatible components
+      if (cacheInfo.getNextUpdate() != null) {
+        resp.addDateHeader("Expires", cacheInfo.getNextUpdate());
+      }
+      // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
+      // HEX representation of the SHA1 hash of the OCSPResponse structure.
+      resp.addHeader("ETag",
+          StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encodedOcspResp), "\""));
+
+      // Max age must be in seconds in the cache-control header
+      long maxAge;
+      if (responder.getCacheMaxAge() != null) {
+        maxAge = responder.getCacheMaxAge().longValue();
+      } else {
+        maxAge = DFLT_CACHE_MAX_AGE;
+      }
+
+      if (cacheInfo.getNextUpdate() != null) {
+        maxAge = Math.min(maxAge,
+            (cacheInfo.getNextUpdate() - cacheInfo.getThisUpdate()) / 1000);
+      }
+
+      resp.addHeader("Cache-Control",
+          StringUtil.concat("max-age=", Long.toString(maxAge),
+            ",public,no-transform,must-revalidate"));
+    } // end if (ocspRespWithCacheInfo)
+
+    resp.setContentType(CT_RESPONSE);
+    return resp;
+  } // method processGet
+
+  private boolean isAsync(HttpServletRequest req) {
+    return asyncExecutor != null && req.isAsyncSupported();
+  }
+
+  private static void send(HttpServletResponse resp, PreparedResponse response)
+      throws IOException {
+    response.applyTo(resp);
+    byte[] content = response.getContent();
+    if (content != null) {
+      resp.getOutputStream().write(content);
+    }
+  }
+
   private static void sendError(HttpServletResponse resp, int status) {
     resp.setStatus(status);
     resp.setContentLength(0);
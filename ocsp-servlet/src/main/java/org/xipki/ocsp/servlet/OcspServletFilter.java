@@ -27,6 +27,11 @@ import java.security.cert.X509Certificate;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -76,6 +81,8 @@ public class OcspServletFilter implements Filter {
 
   private HttpMgmtServlet mgmtServlet;
 
+  private ThreadPoolExecutor asyncExecutor;
+
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {
     securities = new Securities();
@@ -122,6 +129,31 @@ public class OcspServletFilter implements Filter {
     this.ocspServlet = new OcspServlet();
     this.ocspServlet.setServer(this.server);
 
+    boolean asyncEnabled = Boolean.parseBoolean(props.getProperty("async.enabled", "false"));
+    if (asyncEnabled) {
+      // more threads than signers would only wait for an idle signer
+      String str = props.getProperty("async.threads");
+      int threads = (str == null) ? ocspServer.getSignerPoolSize() : Integer.parseInt(str.trim());
+      int queueSize = Integer.parseInt(props.getProperty("async.queueSize", "1000").trim());
+      long timeout = Long.parseLong(props.getProperty("async.timeout", "30000").trim());
+
+      asyncExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+          new ArrayBlockingQueue<>(queueSize), new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "ocsp-async-" + index.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      asyncExecutor.allowCoreThreadTimeOut(true);
+      this.ocspServlet.setAsyncExecutor(asyncExecutor, timeout);
+      LOG.info("asynchronous processing is enabled with {} threads and queue size {}",
+          threads, queueSize);
+    }
+
     this.remoteMgmtEnabled =
         Boolean.parseBoolean(props.getProperty("remote.mgmt.enabled", "false"));
     LOG.info("remote management is {}", remoteMgmtEnabled ? "enabled" : "disabled");
@@ -157,6 +189,10 @@ public class OcspServletFilter implements Filter {
 
   @Override
   public void destroy() {
+    if (asyncExecutor != null) {
+      asyncExecutor.shutdown();
+    }
+
     if (securities != null) {
       securities.close();
     }
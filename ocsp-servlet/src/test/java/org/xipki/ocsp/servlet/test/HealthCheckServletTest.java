@@ -0,0 +1,149 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.servlet.test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.servlet.HealthCheckServlet;
+import org.xipki.util.HealthCheckResult;
+
+/**
+ * Test of the Prometheus text format of {@link HealthCheckServlet}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class HealthCheckServletTest {
+
+  @Test
+  public void testHealthLines() {
+    HealthCheckResult result = newResult("responder", true);
+    result.addChildCheck(newResult("signer", false));
+    HealthCheckResult store = newResult("store", true);
+    store.addChildCheck(newResult("db", true));
+    result.addChildCheck(store);
+
+    assertLines(HealthCheckServlet.toText("/ocsp", result),
+        "# TYPE xipki_ocsp_healthy gauge",
+        "xipki_ocsp_healthy{responder=\"/ocsp\",check=\"responder\"} 1",
+        "xipki_ocsp_healthy{responder=\"/ocsp\",check=\"responder/signer\"} 0",
+        "xipki_ocsp_healthy{responder=\"/ocsp\",check=\"responder/store\"} 1",
+        "xipki_ocsp_healthy{responder=\"/ocsp\",check=\"responder/store/db\"} 1",
+        "# TYPE xipki_ocsp_status gauge");
+  }
+
+  @Test
+  public void testStatusLines() {
+    Map<String, Object> sign = new LinkedHashMap<>();
+    sign.put("count", 3L);
+    sign.put("p99", 1.5);
+
+    Map<String, Object> stages = new LinkedHashMap<>();
+    stages.put("sign", sign);
+
+    Map<String, Object> statuses = new LinkedHashMap<>();
+    statuses.put("stages", stages);
+    statuses.put("coalesced", 7);
+    statuses.put("enabled", true);
+    statuses.put("disabled", false);
+    statuses.put("mode", "RFC6960");
+    statuses.put("since", null);
+
+    HealthCheckResult result = newResult("requests", true);
+    result.setStatuses(statuses);
+
+    String labels = "responder=\"/ocsp\",check=\"requests\"";
+    assertLines(HealthCheckServlet.toText("/ocsp", result),
+        "# TYPE xipki_ocsp_healthy gauge",
+        "xipki_ocsp_healthy{" + labels + "} 1",
+        "# TYPE xipki_ocsp_status gauge",
+        "xipki_ocsp_status{" + labels + ",name=\"stages.sign.count\"} 3",
+        "xipki_ocsp_status{" + labels + ",name=\"stages.sign.p99\"} 1.5",
+        "xipki_ocsp_status{" + labels + ",name=\"coalesced\"} 7",
+        "xipki_ocsp_status{" + labels + ",name=\"enabled\"} 1",
+        "xipki_ocsp_status{" + labels + ",name=\"disabled\"} 0");
+  }
+
+  @Test
+  public void testLabelEscaping() {
+    Map<String, Object> statuses = new LinkedHashMap<>();
+    statuses.put("a\"b", 1);
+
+    HealthCheckResult result = newResult("line1\nline2", true);
+    result.setStatuses(statuses);
+
+    String labels = "responder=\"/c:\\\\ocsp\\\"\",check=\"line1\\nline2\"";
+    assertLines(HealthCheckServlet.toText("/c:\\ocsp\"", result),
+        "# TYPE xipki_ocsp_healthy gauge",
+        "xipki_ocsp_healthy{" + labels + "} 1",
+        "# TYPE xipki_ocsp_status gauge",
+        "xipki_ocsp_status{" + labels + ",name=\"a\\\"b\"} 1");
+  }
+
+  @Test
+  public void testNullLabels() {
+    HealthCheckResult result = new HealthCheckResult();
+    result.setHealthy(true);
+    assertLines(HealthCheckServlet.toText(null, result),
+        "# TYPE xipki_ocsp_healthy gauge",
+        "xipki_ocsp_healthy{responder=\"\",check=\"\"} 1",
+        "# TYPE xipki_ocsp_status gauge");
+  }
+
+  @Test
+  public void testUniqueSeries() {
+    Map<String, Object> statuses = new LinkedHashMap<>();
+    statuses.put("count", 1);
+
+    HealthCheckResult result = newResult("responder", true);
+    result.setStatuses(statuses);
+    HealthCheckResult child = newResult("signer", true);
+    child.setStatuses(statuses);
+    result.addChildCheck(child);
+
+    String text = HealthCheckServlet.toText("/ocsp", result);
+    Set<String> series = new HashSet<>();
+    for (String line : text.split("\n")) {
+      if (!line.startsWith("#")) {
+        String name = line.substring(0, line.lastIndexOf(' '));
+        Assert.assertTrue("duplicated series " + name, series.add(name));
+      }
+    }
+    Assert.assertEquals(4, series.size());
+  }
+
+  private static HealthCheckResult newResult(String name, boolean healthy) {
+    HealthCheckResult result = new HealthCheckResult();
+    result.setName(name);
+    result.setHealthy(healthy);
+    return result;
+  }
+
+  private static void assertLines(String text, String... expectedLines) {
+    Assert.assertTrue("text does not end with a newline", text.endsWith("\n"));
+    Assert.assertEquals(Arrays.asList(expectedLines), Arrays.asList(text.split("\n")));
+  }
+
+}
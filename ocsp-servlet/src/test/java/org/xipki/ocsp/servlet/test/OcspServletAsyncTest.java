@@ -0,0 +1,330 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.servlet.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspServer;
+import org.xipki.ocsp.api.Responder;
+import org.xipki.ocsp.api.ResponderAndPath;
+import org.xipki.ocsp.servlet.OcspServlet;
+import org.xipki.util.Base64;
+import org.xipki.util.HealthCheckResult;
+import org.xipki.util.HttpConstants;
+
+/**
+ * Test of the asynchronous processing of {@link OcspServlet} with a stalled signer.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class OcspServletAsyncTest {
+
+  private static final byte[] OCSP_RESPONSE = new byte[]{0x30, 0x03, 0x0a, 0x01, 0x00};
+
+  private static final Responder RESPONDER = new Responder() {
+
+    @Override
+    public boolean supportsHttpGet() {
+      return true;
+    }
+
+    @Override
+    public int getMaxRequestSize() {
+      return 1000;
+    }
+
+    @Override
+    public Long getCacheMaxAge() {
+      return null;
+    }
+
+  };
+
+  /**
+   * OCSP server whose signer stalls until it is released.
+   */
+  private static class StalledOcspServer implements OcspServer {
+
+    private final CountDownLatch entered = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final AtomicBoolean interrupted = new AtomicBoolean(false);
+
+    private final CountDownLatch answered = new CountDownLatch(1);
+
+    @Override
+    public ResponderAndPath getResponderForPath(String path) {
+      return new ResponderAndPath("", RESPONDER);
+    }
+
+    @Override
+    public OcspRespWithCacheInfo answer(Responder responder, byte[] request, boolean viaGet) {
+      return answer(responder, request, viaGet, null);
+    }
+
+    @Override
+    public OcspRespWithCacheInfo answer(Responder responder, byte[] request, boolean viaGet,
+        String clientAddress) {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        interrupted.set(true);
+      }
+
+      answered.countDown();
+      // try to respond anyway
+      return new OcspRespWithCacheInfo(OCSP_RESPONSE, null);
+    }
+
+    @Override
+    public HealthCheckResult healthCheck(Responder responder) {
+      return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+  } // class StalledOcspServer
+
+  /**
+   * Records the interactions with the request, response and asynchronous context.
+   */
+  private static class Exchange {
+
+    private final Map<String, Object> headers = new ConcurrentHashMap<>();
+
+    private final AtomicInteger status = new AtomicInteger();
+
+    private final AtomicInteger numCompletes = new AtomicInteger();
+
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+    private volatile AsyncListener listener;
+
+    private volatile String contentType;
+
+    private volatile boolean writeListenerSet;
+
+    private final HttpServletRequest request;
+
+    private final HttpServletResponse response;
+
+    Exchange() {
+      final AsyncContext asyncContext = proxy(AsyncContext.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "addListener":
+            listener = (AsyncListener) args[0];
+            return null;
+          case "complete":
+            numCompletes.incrementAndGet();
+            return null;
+          default:
+            return null;
+        }
+      });
+
+      final String path = "/" + Base64.encodeToString(new byte[32]);
+      request = proxy(HttpServletRequest.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "getMethod":
+            return "GET";
+          case "getAttribute":
+            return HttpConstants.ATTR_XIPKI_PATH.equals(args[0]) ? path : null;
+          case "isAsyncSupported":
+            return true;
+          case "startAsync":
+            return asyncContext;
+          case "getRemoteAddr":
+            return "127.0.0.1";
+          case "getProtocol":
+            return "HTTP/1.1";
+          default:
+            return null;
+        }
+      });
+
+      final ServletOutputStream out = new ServletOutputStream() {
+
+        @Override
+        public void write(int b) throws IOException {
+          content.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+          writeListenerSet = true;
+          try {
+            writeListener.onWritePossible();
+          } catch (IOException ex) {
+            writeListener.onError(ex);
+          }
+        }
+
+      };
+
+      response = proxy(HttpServletResponse.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "setStatus":
+            status.set((Integer) args[0]);
+            return null;
+          case "setContentType":
+            contentType = (String) args[0];
+            return null;
+          case "addHeader":
+          case "addDateHeader":
+            headers.put((String) args[0], args[1]);
+            return null;
+          case "getOutputStream":
+            return out;
+          case "isCommitted":
+            return false;
+          default:
+            return null;
+        }
+      });
+    }
+
+  } // class Exchange
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    // one thread, no queue
+    executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    executor.shutdownNow();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testResponse() throws Exception {
+    StalledOcspServer server = new StalledOcspServer();
+    server.release.countDown();
+
+    Exchange exchange = new Exchange();
+    newServlet(server).service(exchange.request, exchange.response);
+    Assert.assertTrue("answered", server.answered.await(10, TimeUnit.SECONDS));
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+
+    Assert.assertEquals("status", 200, exchange.status.get());
+    Assert.assertEquals("content type", "application/ocsp-response", exchange.contentType);
+    Assert.assertArrayEquals("content", OCSP_RESPONSE, exchange.content.toByteArray());
+    Assert.assertEquals("complete", 1, exchange.numCompletes.get());
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    StalledOcspServer server = new StalledOcspServer();
+    Exchange exchange = new Exchange();
+    newServlet(server).service(exchange.request, exchange.response);
+    Assert.assertTrue("signer entered", server.entered.await(10, TimeUnit.SECONDS));
+
+    exchange.listener.onTimeout(null);
+    Assert.assertEquals("status", 503, exchange.status.get());
+    Assert.assertEquals("complete", 1, exchange.numCompletes.get());
+
+    // the stalled task is cancelled and must not touch the response any more
+    Assert.assertTrue("answered", server.answered.await(10, TimeUnit.SECONDS));
+    Assert.assertTrue("signer interrupted", server.interrupted.get());
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+
+    Assert.assertEquals("status", 503, exchange.status.get());
+    Assert.assertNull("content type", exchange.contentType);
+    Assert.assertTrue("headers", exchange.headers.isEmpty());
+    Assert.assertFalse("write listener", exchange.writeListenerSet);
+    Assert.assertEquals("content", 0, exchange.content.size());
+    Assert.assertEquals("complete", 1, exchange.numCompletes.get());
+  }
+
+  @Test
+  public void testReject() throws Exception {
+    StalledOcspServer server = new StalledOcspServer();
+    OcspServlet servlet = newServlet(server);
+
+    Exchange stalled = new Exchange();
+    servlet.service(stalled.request, stalled.response);
+    Assert.assertTrue("signer entered", server.entered.await(10, TimeUnit.SECONDS));
+
+    Exchange rejected = new Exchange();
+    servlet.service(rejected.request, rejected.response);
+    Assert.assertEquals("status", 503, rejected.status.get());
+    Assert.assertEquals("complete", 1, rejected.numCompletes.get());
+    Assert.assertFalse("write listener", rejected.writeListenerSet);
+
+    server.release.countDown();
+    Assert.assertTrue("answered", server.answered.await(10, TimeUnit.SECONDS));
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+    Assert.assertEquals("status", 200, stalled.status.get());
+    Assert.assertEquals("complete", 1, stalled.numCompletes.get());
+  }
+
+  private OcspServlet newServlet(OcspServer server) {
+    OcspServlet servlet = new OcspServlet();
+    servlet.setServer(server);
+    servlet.setAsyncExecutor(executor, 1000);
+    return servlet;
+  }
+
+  private static <T> T proxy(Class<T> clazz, InvocationHandler handler) {
+    return clazz.cast(Proxy.newProxyInstance(OcspServletAsyncTest.class.getClassLoader(),
+        new Class<?>[]{clazz}, handler));
+  }
+
+}
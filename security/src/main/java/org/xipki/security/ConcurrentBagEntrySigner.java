@@ -27,6 +27,11 @@ import org.xipki.util.concurrent.ConcurrentBagEntry;
 
 public class ConcurrentBagEntrySigner extends ConcurrentBagEntry<XiContentSigner> {
 
+  /**
+   * Time returned by {@link System#nanoTime()} when this signer was borrowed.
+   */
+  long borrowTime;
+
   public ConcurrentBagEntrySigner(XiContentSigner value) {
     super(value);
   }
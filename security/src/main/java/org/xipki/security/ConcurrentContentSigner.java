@@ -132,6 +132,16 @@ public interface ConcurrentContentSigner extends Closeable {
 
   void requiteSigner(ConcurrentBagEntrySigner signer);
 
+  /**
+   * Returns the borrowed signer and reports whether the signing was successful. The default
+   * implementation ignores the result.
+   * @param signer the borrowed signer
+   * @param successful whether the signing with the borrowed signer was successful.
+   */
+  default void requiteSigner(ConcurrentBagEntrySigner signer, boolean successful) {
+    requiteSigner(signer);
+  }
+
   boolean isHealthy();
 
 }
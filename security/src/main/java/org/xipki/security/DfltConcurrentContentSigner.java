@@ -17,6 +17,9 @@
 
 package org.xipki.security;
 
+import static org.xipki.util.concurrent.ConcurrentBag.IConcurrentBagEntry.STATE_IN_USE;
+import static org.xipki.util.concurrent.ConcurrentBag.IConcurrentBagEntry.STATE_NOT_IN_USE;
+
 import java.io.IOException;
 import java.io.OutputStream;
 import java.security.Key;
@@ -26,9 +29,14 @@ import java.security.SignatureException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.cert.X509CertificateHolder;
@@ -38,6 +46,7 @@ import org.xipki.password.PasswordResolver;
 import org.xipki.security.util.AlgorithmUtil;
 import org.xipki.util.Args;
 import org.xipki.util.CollectionUtil;
+import org.xipki.util.LatencyHistogram;
 import org.xipki.util.LogUtil;
 import org.xipki.util.concurrent.ConcurrentBag;
 
@@ -49,13 +58,58 @@ import org.xipki.util.concurrent.ConcurrentBag;
 
 public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
 
+  /**
+   * Executor shared by all signers with adaptive pool size, created on first use.
+   */
+  private static class Housekeeper {
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR;
+
+    static {
+      EXECUTOR = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "signer-housekeeper");
+        thread.setDaemon(true);
+        return thread;
+      });
+      EXECUTOR.setRemoveOnCancelPolicy(true);
+    }
+
+  } // class Housekeeper
+
   private static final Logger LOG = LoggerFactory.getLogger(DfltConcurrentContentSigner.class);
 
   private static final AtomicInteger NAME_INDEX = new AtomicInteger(1);
 
+  /**
+   * Interval in seconds to check whether the pool can be shrunk.
+   */
+  private static final int SHRINK_INTERVAL = 60;
+
   private static int defaultSignServiceTimeout = 10000; // 10 seconds
 
-  private final ConcurrentBag<ConcurrentBagEntrySigner> signers = new ConcurrentBag<>();
+  private final ConcurrentBag<ConcurrentBagEntrySigner> signers =
+      new ConcurrentBag<>(this::addBagItem);
+
+  private final LatencyHistogram borrowWaitTimes = new LatencyHistogram();
+
+  private final LatencyHistogram signLatencies = new LatencyHistogram();
+
+  private final LongAdder noIdleSignerCount = new LongAdder();
+
+  private final AtomicInteger pendingAdds = new AtomicInteger(0);
+
+  private volatile XiContentSignerFactory signerFactory;
+
+  private int minPoolSize;
+
+  private int maxPoolSize;
+
+  /**
+   * Time returned by {@link System#nanoTime()} when a thread had to wait for a signer.
+   */
+  private volatile long lastSaturatedTime;
+
+  private ScheduledFuture<?> shrinkTask;
 
   private final String name;
 
@@ -91,6 +145,10 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
     }
   }
 
+  public static int getDefaultSignServiceTimeout() {
+    return defaultSignServiceTimeout;
+  }
+
   public DfltConcurrentContentSigner(boolean mac, List<XiContentSigner> signers)
       throws NoSuchAlgorithmException {
     this(mac, signers, null);
@@ -143,6 +201,83 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
     return algorithmCode;
   }
 
+  /**
+   * Enables the adaptive pool size. The current number of signers is the lower bound. If threads
+   * have to wait for a signer, new signers are created up to {@code maxPoolSize}. If no thread
+   * waited for {@value #SHRINK_INTERVAL} seconds, one idle signer is removed, until the lower
+   * bound is reached.
+   * @param maxPoolSize
+   *          Maximal number of signers.
+   * @param signerFactory
+   *          Factory to create new signers. Must not be {@code null}.
+   */
+  public void setAdaptivePoolSize(int maxPoolSize, XiContentSignerFactory signerFactory) {
+    Args.notNull(signerFactory, "signerFactory");
+    this.minPoolSize = signers.size();
+    this.maxPoolSize = Args.min(maxPoolSize, "maxPoolSize", minPoolSize);
+    this.lastSaturatedTime = System.nanoTime();
+
+    if (shrinkTask != null) {
+      shrinkTask.cancel(false);
+    }
+
+    this.signerFactory = signerFactory;
+    this.shrinkTask = Housekeeper.EXECUTOR.scheduleAtFixedRate(this::shrinkPool,
+        SHRINK_INTERVAL, SHRINK_INTERVAL, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Called by the {@link ConcurrentBag} if a thread has to wait for a signer.
+   * @param waiting number of waiting threads.
+   */
+  private void addBagItem(int waiting) {
+    final XiContentSignerFactory factory = signerFactory;
+    if (factory == null) {
+      return;
+    }
+
+    lastSaturatedTime = System.nanoTime();
+
+    while (true) {
+      int pending = pendingAdds.get();
+      if (pending >= waiting || signers.size() + pending >= maxPoolSize) {
+        return;
+      }
+
+      if (!pendingAdds.compareAndSet(pending, pending + 1)) {
+        continue;
+      }
+
+      // The signer cannot be added in the current thread, since the bag hands the
+      // new signer over to a waiting thread, and the current thread is not yet waiting.
+      Housekeeper.EXECUTOR.execute(() -> {
+        try {
+          signers.add(new ConcurrentBagEntrySigner(factory.newSigner()));
+          LOG.info("added signer to {}, pool size: {}", name, signers.size());
+        } catch (Exception ex) {
+          LogUtil.warn(LOG, ex, "could not add signer to " + name);
+        } finally {
+          pendingAdds.decrementAndGet();
+        }
+      });
+    }
+  }
+
+  private void shrinkPool() {
+    if (System.nanoTime() - lastSaturatedTime < TimeUnit.SECONDS.toNanos(SHRINK_INTERVAL)
+        || signers.size() <= minPoolSize) {
+      return;
+    }
+
+    for (ConcurrentBagEntrySigner signer : signers.values(STATE_NOT_IN_USE)) {
+      if (signers.reserve(signer)) {
+        signers.remove(signer);
+        LOG.info("removed idle signer from {}, pool size: {}", name, signers.size());
+        return;
+      }
+    }
+  }
+
   @Override
   public ConcurrentBagEntrySigner borrowSigner() throws NoIdleSignerException {
     return borrowSigner(defaultSignServiceTimeout);
@@ -154,24 +289,82 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
    */
   @Override
   public ConcurrentBagEntrySigner borrowSigner(int soTimeout) throws NoIdleSignerException {
+    final long start = System.nanoTime();
     ConcurrentBagEntrySigner signer = null;
     try {
       signer = signers.borrow(soTimeout, TimeUnit.MILLISECONDS);
     } catch (InterruptedException ex) { // CHECKSTYLE:SKIP
     }
 
+    final long now = System.nanoTime();
+    borrowWaitTimes.record(now - start);
+
     if (signer == null) {
+      noIdleSignerCount.increment();
       throw new NoIdleSignerException("no idle signer available");
     }
 
+    signer.borrowTime = now;
     return signer;
   }
 
   @Override
   public void requiteSigner(ConcurrentBagEntrySigner signer) {
+    signLatencies.record(System.nanoTime() - signer.borrowTime);
     signers.requite(signer);
   }
 
+  /**
+   * Returns the histogram of the time waiting for an idle signer.
+   * @return the histogram
+   */
+  public LatencyHistogram getBorrowWaitTimes() {
+    return borrowWaitTimes;
+  }
+
+  /**
+   * Returns the histogram of the time between borrowing and requiting a signer.
+   * @return the histogram
+   */
+  public LatencyHistogram getSignLatencies() {
+    return signLatencies;
+  }
+
+  public long getNoIdleSignerCount() {
+    return noIdleSignerCount.sum();
+  }
+
+  public int getPoolSize() {
+    return signers.size();
+  }
+
+  public int getInUseCount() {
+    return signers.getCount(STATE_IN_USE);
+  }
+
+  public int getWaitingThreadCount() {
+    return signers.getWaitingThreadCount();
+  }
+
+  /**
+   * Returns the metrics of this signer, e.g. to be included in the health check result.
+   * @return the metrics
+   */
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("poolSize", getPoolSize());
+    if (signerFactory != null) {
+      metrics.put("minPoolSize", minPoolSize);
+      metrics.put("maxPoolSize", maxPoolSize);
+    }
+    metrics.put("inUse", getInUseCount());
+    metrics.put("waitingThreads", getWaitingThreadCount());
+    metrics.put("noIdleSigner", getNoIdleSignerCount());
+    metrics.put("borrowWaitTime", borrowWaitTimes.toStatusMap());
+    metrics.put("signLatency", signLatencies.toStatusMap());
+    return metrics;
+  }
+
   @Override
   public void initialize(String conf, PasswordResolver passwordResolver)
       throws XiSecurityException {
@@ -263,6 +456,11 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
 
   @Override
   public void close() {
+    signerFactory = null;
+    if (shrinkTask != null) {
+      shrinkTask.cancel(false);
+      shrinkTask = null;
+    }
   }
 
   @Override
@@ -18,14 +18,11 @@
 package org.xipki.security;
 
 import java.io.UnsupportedEncodingException;
-import java.util.concurrent.TimeUnit;
+import java.math.BigInteger;
 
 import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.digests.SHA1Digest;
-import org.bouncycastle.operator.RuntimeOperatorException;
 import org.xipki.util.Args;
-import org.xipki.util.concurrent.ConcurrentBag;
-import org.xipki.util.concurrent.ConcurrentBagEntry;
 
 /**
  * TODO.
@@ -35,22 +32,11 @@ import org.xipki.util.concurrent.ConcurrentBagEntry;
 
 public class FpIdCalculator {
 
-  private static final int PARALLELISM = 50;
-
-  private static final ConcurrentBag<ConcurrentBagEntry<Digest>> MDS = getMD5MessageDigests();
+  private static final ThreadLocal<Digest> MDS = ThreadLocal.withInitial(SHA1Digest::new);
 
   private FpIdCalculator() {
   }
 
-  private static ConcurrentBag<ConcurrentBagEntry<Digest>> getMD5MessageDigests() {
-    ConcurrentBag<ConcurrentBagEntry<Digest>> mds = new ConcurrentBag<>();
-    for (int i = 0; i < PARALLELISM; i++) {
-      Digest md = new SHA1Digest();
-      mds.add(new ConcurrentBagEntry<>(md));
-    }
-    return mds;
-  }
-
   /**
    * Hash the data.getBytes("UTF-8") and returns the first 8 bytes of the hash value.
    * @param data data over which the hash value is calculated.
@@ -67,6 +53,17 @@ public class FpIdCalculator {
     return hash(encoded);
   }
 
+  /**
+   * Hash the two's-complement encoding of the serial number and returns the first 8 bytes
+   * of the hash value. This is the value of the column SNH in the table CERT.
+   * @param serialNumber serial number over which the hash value is calculated.
+   * @return long represented of the first 8 bytes
+   */
+  public static long hash(BigInteger serialNumber) {
+    Args.notNull(serialNumber, "serialNumber");
+    return hash(serialNumber.toByteArray());
+  }
+
   /**
    * Hash the data and returns the first 8 bytes of the hash value.
    * @param data data over which the hash value is calculated.
@@ -74,31 +71,24 @@ public class FpIdCalculator {
    */
   public static long hash(byte[] data) {
     Args.notNull(data, "data");
+    return hash(data, 0, data.length);
+  }
 
-    ConcurrentBagEntry<Digest> md0 = null;
-    for (int i = 0; i < 3; i++) {
-      try {
-        md0 = MDS.borrow(10, TimeUnit.SECONDS);
-        break;
-      } catch (InterruptedException ex) { // CHECKSTYLE:SKIP
-      }
-    }
-
-    if (md0 == null) {
-      throw new RuntimeOperatorException("could not get idle MessageDigest");
-    }
-
-    try {
-      Digest md = md0.value();
-      md.reset();
-      md.update(data, 0, data.length);
-      byte[] bytes = new byte[md.getDigestSize()];
-      md.doFinal(bytes, 0);
-
-      return bytesToLong(bytes);
-    } finally {
-      MDS.requite(md0);
-    }
+  /**
+   * Hash the data and returns the first 8 bytes of the hash value.
+   * @param data data over which the hash value is calculated.
+   * @param offset offset of the data.
+   * @param len length of the data.
+   * @return long represented of the first 8 bytes
+   */
+  public static long hash(byte[] data, int offset, int len) {
+    Args.notNull(data, "data");
+    Digest md = MDS.get();
+    md.reset();
+    md.update(data, offset, len);
+    byte[] bytes = new byte[md.getDigestSize()];
+    md.doFinal(bytes, 0);
+    return bytesToLong(bytes);
   }
 
   private static long bytesToLong(byte[] bs) {
@@ -0,0 +1,450 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.password.PasswordResolver;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Composite {@link ConcurrentContentSigner} which distributes the signing requests over
+ * several signers holding the same key, e.g. the same CA key on different HSMs.
+ *
+ * <p>The signer with the least outstanding requests is chosen. Members that fail
+ * {@code maxFailures} times in sequence, or whose average latency exceeds
+ * {@code maxLatency}, are ejected and re-probed periodically.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class LoadBalancedConcurrentContentSigner implements ConcurrentContentSigner {
+
+  private static class Member {
+
+    private final ConcurrentContentSigner signer;
+
+    private final AtomicInteger outstanding = new AtomicInteger(0);
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+
+    /**
+     * Exponential moving average of the time between borrow and requite, in nanoseconds.
+     */
+    private volatile long avgLatency;
+
+    private volatile boolean active = true;
+
+    private Member(ConcurrentContentSigner signer) {
+      this.signer = signer;
+    }
+
+    private void updateLatency(long latency) {
+      long avg = avgLatency;
+      avgLatency = (avg == 0) ? latency : avg + (latency - avg) / 8;
+    }
+
+  } // class Member
+
+  private static class Lease {
+
+    private final Member member;
+
+    private final long startTime;
+
+    private Lease(Member member, long startTime) {
+      this.member = member;
+      this.startTime = startTime;
+    }
+
+  } // class Lease
+
+  private class Prober implements Runnable {
+
+    @Override
+    public void run() {
+      for (Member member : members) {
+        try {
+          probe(member);
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "could not probe signer " + member.signer.getName());
+        }
+      }
+    }
+
+    private void probe(Member member) {
+      long start = System.nanoTime();
+      boolean healthy = member.signer.isHealthy();
+      long latency = System.nanoTime() - start;
+
+      if (member.active) {
+        if (!healthy) {
+          eject(member, "health check failed");
+        } else if (maxLatency > 0 && member.avgLatency > maxLatency) {
+          eject(member, "average latency " + (member.avgLatency / 1000000) + " ms too high");
+        } else {
+          member.consecutiveFailures.set(0);
+        }
+      } else if (healthy && (maxLatency == 0 || latency <= maxLatency)) {
+        member.avgLatency = latency;
+        member.consecutiveFailures.set(0);
+        member.active = true;
+        LOG.info("re-admitted signer {} to {}", member.signer.getName(), name);
+      }
+    }
+
+  } // class Prober
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(LoadBalancedConcurrentContentSigner.class);
+
+  private static final AtomicInteger NAME_INDEX = new AtomicInteger(1);
+
+  private final String name;
+
+  private final Member[] members;
+
+  private final ConcurrentHashMap<ConcurrentBagEntrySigner, Lease> leases =
+      new ConcurrentHashMap<>();
+
+  private final AtomicInteger roundRobin = new AtomicInteger(0);
+
+  private final int maxFailures;
+
+  /**
+   * Maximal average latency in nanoseconds, 0 for no limit.
+   */
+  private final long maxLatency;
+
+  private final ScheduledThreadPoolExecutor prober;
+
+  /**
+   * Constructor.
+   * @param signers
+   *          Member signers. Must not be empty. All signers must use the same algorithm.
+   * @param probeInterval
+   *          Interval in seconds to probe the members.
+   * @param maxFailures
+   *          Number of consecutive failures after which a member is ejected.
+   * @param maxLatency
+   *          Maximal average latency in milliseconds, 0 for no limit.
+   */
+  public LoadBalancedConcurrentContentSigner(List<ConcurrentContentSigner> signers,
+      int probeInterval, int maxFailures, int maxLatency) {
+    Args.notEmpty(signers, "signers");
+    Args.positive(probeInterval, "probeInterval");
+    this.maxFailures = Args.positive(maxFailures, "maxFailures");
+    this.maxLatency = TimeUnit.MILLISECONDS.toNanos(Args.notNegative(maxLatency, "maxLatency"));
+
+    ConcurrentContentSigner first = signers.get(0);
+    this.members = new Member[signers.size()];
+    for (int i = 0; i < members.length; i++) {
+      ConcurrentContentSigner signer = signers.get(i);
+      if (signer.isMac() != first.isMac()
+          || signer.getAlgorithmCode() != first.getAlgorithmCode()) {
+        throw new IllegalArgumentException("signers[" + i + "] has algorithm "
+            + signer.getAlgorithmName() + ", but signers[0] has " + first.getAlgorithmName());
+      }
+
+      if (signer.getPublicKey() != null && first.getPublicKey() != null
+          && !signer.getPublicKey().equals(first.getPublicKey())) {
+        throw new IllegalArgumentException("signers[" + i + "] has different public key");
+      }
+
+      members[i] = new Member(signer);
+    }
+
+    this.name = "loadbalancedSigner-" + NAME_INDEX.getAndIncrement();
+
+    this.prober = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, name + "-prober");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.prober.scheduleAtFixedRate(new Prober(), probeInterval, probeInterval, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String getAlgorithmName() {
+    return members[0].signer.getAlgorithmName();
+  }
+
+  @Override
+  public AlgorithmCode getAlgorithmCode() {
+    return members[0].signer.getAlgorithmCode();
+  }
+
+  @Override
+  public boolean isMac() {
+    return members[0].signer.isMac();
+  }
+
+  @Override
+  public byte[] getSha1OfMacKey() {
+    return members[0].signer.getSha1OfMacKey();
+  }
+
+  @Override
+  public Key getSigningKey() {
+    return members[0].signer.getSigningKey();
+  }
+
+  @Override
+  public void setPublicKey(PublicKey publicKey) {
+    for (Member member : members) {
+      member.signer.setPublicKey(publicKey);
+    }
+  }
+
+  @Override
+  public PublicKey getPublicKey() {
+    return members[0].signer.getPublicKey();
+  }
+
+  @Override
+  public X509Certificate getCertificate() {
+    return members[0].signer.getCertificate();
+  }
+
+  @Override
+  public X509CertificateHolder getBcCertificate() {
+    return members[0].signer.getBcCertificate();
+  }
+
+  @Override
+  public void setCertificateChain(X509Certificate[] certchain) {
+    for (Member member : members) {
+      member.signer.setCertificateChain(certchain);
+    }
+  }
+
+  @Override
+  public X509Certificate[] getCertificateChain() {
+    return members[0].signer.getCertificateChain();
+  }
+
+  @Override
+  public X509CertificateHolder[] getBcCertificateChain() {
+    return members[0].signer.getBcCertificateChain();
+  }
+
+  @Override
+  public void initialize(String conf, PasswordResolver passwordResolver)
+      throws XiSecurityException {
+  }
+
+  @Override
+  public byte[] sign(byte[] data) throws NoIdleSignerException, SignatureException {
+    return sign(new byte[][]{data})[0];
+  }
+
+  @Override
+  public byte[][] sign(byte[][] data) throws NoIdleSignerException, SignatureException {
+    byte[][] signatures = new byte[data.length][];
+    ConcurrentBagEntrySigner signer = borrowSigner();
+
+    boolean successful = false;
+    try {
+      XiContentSigner xiSigner = signer.value();
+
+      for (int i = 0; i < data.length; i++) {
+        OutputStream signatureStream = xiSigner.getOutputStream();
+        try {
+          signatureStream.write(data[i]);
+        } catch (IOException ex) {
+          throw new SignatureException(
+              "could not write data to SignatureStream: " + ex.getMessage(), ex);
+        }
+        signatures[i] = xiSigner.getSignature();
+      }
+      successful = true;
+    } catch (RuntimeException ex) {
+      throw new SignatureException(ex.getMessage(), ex);
+    } finally {
+      requiteSigner(signer, successful);
+    }
+
+    return signatures;
+  }
+
+  @Override
+  public ConcurrentBagEntrySigner borrowSigner() throws NoIdleSignerException {
+    return borrowSigner(DfltConcurrentContentSigner.getDefaultSignServiceTimeout());
+  }
+
+  /**
+   * Borrows a signer from the member with the least outstanding requests. If this member has
+   * no idle signer within the given timeout, the next member is tried with the same timeout.
+   * @param soTimeout timeout in milliseconds, 0 for infinitely.
+   */
+  @Override
+  public ConcurrentBagEntrySigner borrowSigner(int soTimeout) throws NoIdleSignerException {
+    Member member = selectMember(null);
+    try {
+      return borrowSigner(member, soTimeout);
+    } catch (NoIdleSignerException ex) {
+      Member nextMember = selectMember(member);
+      if (nextMember == member) {
+        throw ex;
+      }
+      return borrowSigner(nextMember, soTimeout);
+    }
+  }
+
+  private ConcurrentBagEntrySigner borrowSigner(Member member, int soTimeout)
+      throws NoIdleSignerException {
+    member.outstanding.incrementAndGet();
+    ConcurrentBagEntrySigner signer;
+    try {
+      signer = member.signer.borrowSigner(soTimeout);
+    } catch (NoIdleSignerException | RuntimeException ex) {
+      member.outstanding.decrementAndGet();
+      throw ex;
+    }
+
+    leases.put(signer, new Lease(member, System.nanoTime()));
+    return signer;
+  }
+
+  @Override
+  public void requiteSigner(ConcurrentBagEntrySigner signer) {
+    returnSigner(signer);
+  }
+
+  /**
+   * Returns the borrowed signer to its member. Unsuccessful signings count toward the ejection
+   * of the member.
+   */
+  @Override
+  public void requiteSigner(ConcurrentBagEntrySigner signer, boolean successful) {
+    Member member = returnSigner(signer);
+    if (member == null) {
+      return;
+    }
+
+    if (successful) {
+      member.consecutiveFailures.set(0);
+    } else {
+      recordFailure(member);
+    }
+  }
+
+  private Member returnSigner(ConcurrentBagEntrySigner signer) {
+    Lease lease = leases.remove(signer);
+    if (lease == null) {
+      LOG.warn("signer {} was not borrowed from {}", signer, name);
+      return null;
+    }
+
+    Member member = lease.member;
+    member.updateLatency(System.nanoTime() - lease.startTime);
+    member.signer.requiteSigner(signer);
+    member.outstanding.decrementAndGet();
+    return member;
+  }
+
+  /**
+   * Selects the active member with the least outstanding requests. If no member is active,
+   * all members are considered.
+   * @param exclude member to be excluded, may be {@code null}.
+   * @return the selected member, or {@code exclude} if it is the only candidate.
+   */
+  private Member selectMember(Member exclude) {
+    Member selected = selectMember(exclude, true);
+    if (selected == null) {
+      selected = selectMember(exclude, false);
+    }
+    return (selected == null) ? exclude : selected;
+  }
+
+  private Member selectMember(Member exclude, boolean activeOnly) {
+    final int n = members.length;
+    // start with a rotating offset so that ties are distributed evenly
+    final int offset = (roundRobin.getAndIncrement() & Integer.MAX_VALUE) % n;
+
+    Member selected = null;
+    int minOutstanding = Integer.MAX_VALUE;
+    for (int i = 0; i < n; i++) {
+      Member member = members[(offset + i) % n];
+      if (member == exclude || (activeOnly && !member.active)) {
+        continue;
+      }
+
+      int outstanding = member.outstanding.get();
+      if (outstanding < minOutstanding) {
+        selected = member;
+        minOutstanding = outstanding;
+      }
+    }
+    return selected;
+  }
+
+  private void recordFailure(Member member) {
+    if (member.consecutiveFailures.incrementAndGet() >= maxFailures && member.active) {
+      eject(member, member.consecutiveFailures.get() + " consecutive failures");
+    }
+  }
+
+  private void eject(Member member, String reason) {
+    member.active = false;
+    LOG.warn("ejected signer {} from {}: {}", member.signer.getName(), name, reason);
+  }
+
+  @Override
+  public boolean isHealthy() {
+    for (Member member : members) {
+      if (member.active && member.signer.isHealthy()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void close() {
+    prober.shutdownNow();
+    for (Member member : members) {
+      try {
+        member.signer.close();
+      } catch (IOException ex) {
+        LogUtil.warn(LOG, ex, "could not close signer " + member.signer.getName());
+      }
+    }
+  }
+
+}
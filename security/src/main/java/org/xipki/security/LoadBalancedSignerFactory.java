@@ -0,0 +1,167 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.ConfPairs;
+import org.xipki.util.LogUtil;
+import org.xipki.util.ObjectCreationException;
+
+/**
+ * Factory to create {@link LoadBalancedConcurrentContentSigner}.
+ *
+ * <p>The configuration of a signer of type {@code loadbalanced} contains the following entries:
+ * <ul>
+ *   <li>{@code member.<n>.type}: type of the n-th member signer, n starts from 1.</li>
+ *   <li>{@code member.<n>.conf}: configuration of the n-th member signer. If the entry
+ *       {@code algo} is absent, the one of this signer is used.</li>
+ *   <li>{@code probe-interval}: interval in seconds to probe the members, default to 30.</li>
+ *   <li>{@code max-failures}: number of consecutive failures after which a member is ejected,
+ *       default to 3.</li>
+ *   <li>{@code max-latency}: maximal average latency in milliseconds, after which a member is
+ *       ejected, default to 0 (no limit).</li>
+ * </ul>
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class LoadBalancedSignerFactory implements SignerFactory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadBalancedSignerFactory.class);
+
+  private static final String TYPE = "loadbalanced";
+
+  private static final Set<String> types = Collections.singleton(TYPE);
+
+  private SecurityFactory securityFactory;
+
+  public void setSecurityFactory(SecurityFactory securityFactory) {
+    this.securityFactory = securityFactory;
+  }
+
+  @Override
+  public Set<String> getSupportedSignerTypes() {
+    return types;
+  }
+
+  @Override
+  public boolean canCreateSigner(String type) {
+    return types.contains(type.toLowerCase());
+  }
+
+  @Override
+  public ConcurrentContentSigner newSigner(String type, SignerConf conf,
+      X509Certificate[] certificateChain) throws ObjectCreationException {
+    if (!canCreateSigner(type)) {
+      throw new ObjectCreationException("unknown signer type " + type);
+    }
+
+    int probeInterval = getInt(conf, "probe-interval", 30, 1);
+    int maxFailures = getInt(conf, "max-failures", 3, 1);
+    int maxLatency = getInt(conf, "max-latency", 0, 0);
+
+    List<ConcurrentContentSigner> members = new LinkedList<>();
+    try {
+      for (int i = 1; ; i++) {
+        String memberType = conf.getConfValue("member." + i + ".type");
+        if (memberType == null) {
+          break;
+        }
+
+        if (canCreateSigner(memberType)) {
+          throw new ObjectCreationException("member." + i + ".type may not be " + TYPE);
+        }
+
+        String memberConfStr = conf.getConfValue("member." + i + ".conf");
+        if (memberConfStr == null) {
+          throw new ObjectCreationException("member." + i + ".conf is not specified");
+        }
+
+        SignerConf memberConf;
+        if (conf.getHashAlgo() == null) {
+          ConfPairs pairs = new ConfPairs(memberConfStr);
+          if (pairs.value("algo") == null) {
+            pairs.putPair("algo", conf.getConfValue("algo"));
+          }
+          memberConf = new SignerConf(pairs.getEncoded());
+        } else {
+          memberConf = new SignerConf(memberConfStr, conf.getHashAlgo(),
+              conf.getSignatureAlgoControl());
+        }
+
+        members.add(securityFactory.createSigner(memberType, memberConf, certificateChain));
+      }
+
+      if (members.isEmpty()) {
+        throw new ObjectCreationException("no member signer is specified");
+      }
+
+      return new LoadBalancedConcurrentContentSigner(members, probeInterval, maxFailures,
+          maxLatency);
+    } catch (ObjectCreationException | RuntimeException ex) {
+      for (ConcurrentContentSigner member : members) {
+        try {
+          member.close();
+        } catch (IOException ex2) {
+          LogUtil.warn(LOG, ex2, "could not close signer " + member.getName());
+        }
+      }
+
+      if (ex instanceof ObjectCreationException) {
+        throw (ObjectCreationException) ex;
+      } else {
+        throw new ObjectCreationException(ex.getMessage(), ex);
+      }
+    }
+  }
+
+  @Override
+  public void refreshToken(String type) throws XiSecurityException {
+    // Nothing to do, the tokens of the members are refreshed by their factories.
+  }
+
+  private static int getInt(SignerConf conf, String name, int dfltValue, int minValue)
+      throws ObjectCreationException {
+    String str = conf.getConfValue(name);
+    if (str == null) {
+      return dfltValue;
+    }
+
+    int value;
+    try {
+      value = Integer.parseInt(str);
+    } catch (NumberFormatException ex) {
+      throw new ObjectCreationException("invalid " + name + " " + str);
+    }
+
+    if (value < minValue) {
+      throw new ObjectCreationException("invalid " + name + " " + str);
+    }
+    return value;
+  }
+
+}
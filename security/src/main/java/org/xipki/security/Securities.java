@@ -159,6 +159,11 @@ public class Securities implements Closeable {
     String pkcs11ConfFile = getString(props, "pkcs11.confFile", "xipki/security/pkcs11.json");
     initSecurityPkcs11(pkcs11ConfFile, signerFactoryRegister);
 
+    // load-balanced signer over several tokens
+    LoadBalancedSignerFactory lbSignerFactory = new LoadBalancedSignerFactory();
+    lbSignerFactory.setSecurityFactory(securityFactory);
+    signerFactoryRegister.registFactory(lbSignerFactory);
+
     // register additional SignerFactories
     String list = getString(props, "additional.signerFactories", null);
     String[] classNames = list == null ? null : list.split(", ");
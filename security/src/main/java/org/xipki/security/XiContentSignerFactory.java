@@ -0,0 +1,32 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security;
+
+/**
+ * Creates new {@link XiContentSigner} for the same key, used to grow the pool of a
+ * {@link DfltConcurrentContentSigner}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public interface XiContentSignerFactory {
+
+  XiContentSigner newSigner() throws XiSecurityException;
+
+}
@@ -0,0 +1,103 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.bc;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.math.ec.AbstractECMultiplier;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECLookupTable;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointPreCompInfo;
+import org.bouncycastle.math.ec.FixedPointUtil;
+import org.bouncycastle.math.raw.Nat;
+import org.xipki.util.Args;
+
+/**
+ * Fixed-point comb multiplier for a given base point, e.g. the generator of a curve.
+ *
+ * <p>Unlike {@link FixedPointCombMultiplier}, which looks up the precomputed table of the
+ * point in a synchronized table for every multiplication and computes it lazily on first use,
+ * the table is computed once in the constructor and afterwards only read. Hence one instance
+ * can be shared by all signers of a key without any synchronization.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class XiFixedPointCombMultiplier extends AbstractECMultiplier {
+
+  private final ECPoint base;
+
+  private final int combSize;
+
+  private final int width;
+
+  private final ECLookupTable lookupTable;
+
+  private final ECPoint offset;
+
+  private final FixedPointCombMultiplier fallback = new FixedPointCombMultiplier();
+
+  public XiFixedPointCombMultiplier(ECPoint base) {
+    this.base = Args.notNull(base, "base");
+    this.combSize = FixedPointUtil.getCombSize(base.getCurve());
+
+    FixedPointPreCompInfo info = FixedPointUtil.precompute(base);
+    this.width = info.getWidth();
+    this.lookupTable = info.getLookupTable();
+    this.offset = info.getOffset();
+  }
+
+  public ECPoint getBase() {
+    return base;
+  }
+
+  @Override
+  protected ECPoint multiplyPositive(ECPoint point, BigInteger k) {
+    if (point != base) {
+      return fallback.multiply(point, k);
+    }
+
+    if (k.bitLength() > combSize) {
+      throw new IllegalStateException(
+          "fixed-point comb doesn't support scalars larger than the curve order");
+    }
+
+    ECCurve curve = point.getCurve();
+    int d = (combSize + width - 1) / width;
+    int fullComb = d * width;
+    int[] kbits = Nat.fromBigInteger(fullComb, k);
+
+    ECPoint result = curve.getInfinity();
+    int top = fullComb - 1;
+    for (int i = 0; i < d; ++i) {
+      int secretIndex = 0;
+      for (int j = top - i; j >= 0; j -= d) {
+        secretIndex <<= 1;
+        secretIndex |= Nat.getBit(kbits, j);
+      }
+
+      result = result.twicePlus(lookupTable.lookup(secretIndex));
+    }
+
+    return result.add(offset);
+  }
+
+}
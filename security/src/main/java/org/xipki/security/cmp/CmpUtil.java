@@ -81,10 +81,12 @@ public class CmpUtil {
 
     ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
     ProtectedPKIMessage signedMessage;
+    boolean signed = false;
     try {
       signedMessage = builder.build(signer0.value());
+      signed = true;
     } finally {
-      signer.requiteSigner(signer0);
+      signer.requiteSigner(signer0, signed);
     }
     return signedMessage.toASN1Structure();
   }
@@ -28,6 +28,7 @@ public enum ProtectionResult {
   SIGNATURE_VALID,
   SIGNATURE_INVALID,
   SIGNATURE_ALGO_FORBIDDEN,
+  SIGNATURE_REPLAYED,
   MAC_VALID,
   MAC_INVALID,
   MAC_ALGO_FORBIDDEN,
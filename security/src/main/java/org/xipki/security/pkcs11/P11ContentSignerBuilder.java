@@ -112,59 +112,69 @@ public class P11ContentSignerBuilder {
 
   public ConcurrentContentSigner createSigner(AlgorithmIdentifier signatureAlgId,
       int parallelism) throws XiSecurityException, P11TokenException {
+    return createSigner(signatureAlgId, parallelism, parallelism);
+  }
+
+  /**
+   * Creates a signer with adaptive pool size.
+   * @param signatureAlgId
+   *          Signature algorithm. Must not be {@code null}.
+   * @param parallelism
+   *          Initial (and minimal) number of the underlying signers.
+   * @param maxParallelism
+   *          Maximal number of the underlying signers. If it is greater than
+   *          {@code parallelism}, the pool grows and shrinks on demand.
+   * @return the signer
+   * @throws XiSecurityException
+   *           if signer could not be created.
+   * @throws P11TokenException
+   *           if PKCS#11 token error occurs.
+   */
+  public ConcurrentContentSigner createSigner(AlgorithmIdentifier signatureAlgId,
+      int parallelism, int maxParallelism) throws XiSecurityException, P11TokenException {
     Args.positive(parallelism, "parallelism");
+    Args.min(maxParallelism, "maxParallelism", parallelism);
 
-    List<XiContentSigner> signers = new ArrayList<>(parallelism);
+    final boolean isSm2p256v1;
+    if (publicKey instanceof RSAPublicKey) {
+      if (!AlgorithmUtil.isRSASigAlgId(signatureAlgId)) {
+        throw new XiSecurityException(
+            "the given algorithm is not a valid RSA signature algorithm '"
+            + signatureAlgId.getAlgorithm().getId() + "'");
+      }
+      isSm2p256v1 = false;
+    } else if (publicKey instanceof ECPublicKey) {
+      ECPublicKey ecKey = (ECPublicKey) publicKey;
 
-    Boolean isSm2p256v1 = null;
-    for (int i = 0; i < parallelism; i++) {
-      XiContentSigner signer;
-      if (publicKey instanceof RSAPublicKey) {
-        if (i == 0 && !AlgorithmUtil.isRSASigAlgId(signatureAlgId)) {
+      isSm2p256v1 = GMUtil.isSm2primev2Curve(ecKey.getParams().getCurve());
+      if (isSm2p256v1) {
+        if (!AlgorithmUtil.isSM2SigAlg(signatureAlgId)) {
           throw new XiSecurityException(
-              "the given algorithm is not a valid RSA signature algorithm '"
-              + signatureAlgId.getAlgorithm().getId() + "'");
-        }
-        signer = createRSAContentSigner(signatureAlgId);
-      } else if (publicKey instanceof ECPublicKey) {
-        ECPublicKey ecKey = (ECPublicKey) publicKey;
-
-        if (i == 0) {
-          isSm2p256v1 = GMUtil.isSm2primev2Curve(ecKey.getParams().getCurve());
-          if (isSm2p256v1) {
-            if (!AlgorithmUtil.isSM2SigAlg(signatureAlgId)) {
-              throw new XiSecurityException(
-                "the given algorithm is not a valid SM2 signature algorithm '"
-                + signatureAlgId.getAlgorithm().getId() + "'");
-            }
-          } else {
-            if (!AlgorithmUtil.isECSigAlg(signatureAlgId)) {
-              throw new XiSecurityException(
-                "the given algorithm is not a valid EC signature algorithm '"
-                + signatureAlgId.getAlgorithm().getId() + "'");
-            }
-          }
+            "the given algorithm is not a valid SM2 signature algorithm '"
+            + signatureAlgId.getAlgorithm().getId() + "'");
         }
-
-        if (isSm2p256v1) {
-          java.security.spec.ECPoint w = ecKey.getW();
-          signer = createSM2ContentSigner(signatureAlgId, GMObjectIdentifiers.sm2p256v1,
-              w.getAffineX(), w.getAffineY());
-        } else {
-          signer = createECContentSigner(signatureAlgId);
-        }
-      } else if (publicKey instanceof DSAPublicKey) {
-        if (i == 0 && !AlgorithmUtil.isDSASigAlg(signatureAlgId)) {
+      } else {
+        if (!AlgorithmUtil.isECSigAlg(signatureAlgId)) {
           throw new XiSecurityException(
-              "the given algorithm is not a valid DSA signature algorithm '"
-              + signatureAlgId.getAlgorithm().getId() + "'");
+            "the given algorithm is not a valid EC signature algorithm '"
+            + signatureAlgId.getAlgorithm().getId() + "'");
         }
-        signer = createDSAContentSigner(signatureAlgId);
-      } else {
-        throw new XiSecurityException("unsupported key " + publicKey.getClass().getName());
       }
-      signers.add(signer);
-    } // end for
+    } else if (publicKey instanceof DSAPublicKey) {
+      if (!AlgorithmUtil.isDSASigAlg(signatureAlgId)) {
+        throw new XiSecurityException(
+            "the given algorithm is not a valid DSA signature algorithm '"
+            + signatureAlgId.getAlgorithm().getId() + "'");
+      }
+      isSm2p256v1 = false;
+    } else {
+      throw new XiSecurityException("unsupported key " + publicKey.getClass().getName());
+    }
+
+    List<XiContentSigner> signers = new ArrayList<>(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      signers.add(createContentSigner(signatureAlgId, isSm2p256v1));
+    }
 
     final boolean mac = false;
     PrivateKey privateKey = new P11PrivateKey(cryptService, identityId);
@@ -175,6 +185,16 @@ public class P11ContentSignerBuilder {
       throw new XiSecurityException(ex.getMessage(), ex);
     }
 
+    if (maxParallelism > parallelism) {
+      concurrentSigner.setAdaptivePoolSize(maxParallelism, () -> {
+        try {
+          return createContentSigner(signatureAlgId, isSm2p256v1);
+        } catch (P11TokenException ex) {
+          throw new XiSecurityException(ex.getMessage(), ex);
+        }
+      });
+    }
+
     if (certificateChain != null) {
       concurrentSigner.setCertificateChain(certificateChain);
     } else {
@@ -184,6 +204,23 @@ public class P11ContentSignerBuilder {
     return concurrentSigner;
   } // method createSigner
 
+  private XiContentSigner createContentSigner(AlgorithmIdentifier signatureAlgId,
+      boolean isSm2p256v1) throws XiSecurityException, P11TokenException {
+    if (publicKey instanceof RSAPublicKey) {
+      return createRSAContentSigner(signatureAlgId);
+    } else if (publicKey instanceof ECPublicKey) {
+      if (isSm2p256v1) {
+        java.security.spec.ECPoint w = ((ECPublicKey) publicKey).getW();
+        return createSM2ContentSigner(signatureAlgId, GMObjectIdentifiers.sm2p256v1,
+            w.getAffineX(), w.getAffineY());
+      } else {
+        return createECContentSigner(signatureAlgId);
+      }
+    } else {
+      return createDSAContentSigner(signatureAlgId);
+    }
+  }
+
   // CHECKSTYLE:SKIP
   private XiContentSigner createRSAContentSigner(AlgorithmIdentifier signatureAlgId)
       throws XiSecurityException, P11TokenException {
@@ -105,6 +105,21 @@ public class P11SignerFactory implements SignerFactory {
       }
     }
 
+    // adaptive pool size if max-parallelism is greater than parallelism
+    str = conf.getConfValue("max-parallelism");
+    int maxParallelism = parallelism;
+    if (str != null) {
+      try {
+        maxParallelism = Integer.parseInt(str);
+      } catch (NumberFormatException ex) {
+        throw new ObjectCreationException("invalid max-parallelism " + str);
+      }
+
+      if (maxParallelism < parallelism) {
+        throw new ObjectCreationException("invalid max-parallelism " + str);
+      }
+    }
+
     String moduleName = conf.getConfValue("module");
     str = conf.getConfValue("slot");
     Integer slotIndex = (str == null) ? null : Integer.parseInt(str);
@@ -179,7 +194,7 @@ public class P11SignerFactory implements SignerFactory {
 
         P11ContentSignerBuilder signerBuilder = new P11ContentSignerBuilder(p11Service,
             securityFactory, identityId, certificateChain);
-        return signerBuilder.createSigner(signatureAlgId, parallelism);
+        return signerBuilder.createSigner(signatureAlgId, parallelism, maxParallelism);
       }
     } catch (P11TokenException | NoSuchAlgorithmException | XiSecurityException ex) {
       throw new ObjectCreationException(ex.getMessage(), ex);
@@ -72,23 +72,54 @@ import iaik.pkcs.pkcs11.constants.PKCS11Constants;
 
 public class EmulatorP11Identity extends P11Identity {
 
+  /**
+   * Loads the private key of an {@link EmulatorP11Identity} on its first use.
+   */
+  interface PrivateKeyLoader {
+
+    PrivateKey loadPrivateKey(EmulatorP11Identity identity) throws P11TokenException;
+
+  }
+
+  private static class SigningSessions {
+
+    private final PrivateKey privateKey;
+
+    private final ConcurrentBag<ConcurrentBagEntry<Cipher>> rsaCiphers = new ConcurrentBag<>();
+
+    private final ConcurrentBag<ConcurrentBagEntry<Signature>> dsaSignatures =
+        new ConcurrentBag<>();
+
+    private final ConcurrentBag<ConcurrentBagEntry<SM2Signer>> sm2Signers =
+        new ConcurrentBag<>();
+
+    private SigningSessions(PrivateKey privateKey) {
+      this.privateKey = privateKey;
+    }
+
+  }
+
   private static final Logger LOG = LoggerFactory.getLogger(EmulatorP11Identity.class);
 
+  // secret key, null for private keys
   private final Key signingKey;
 
-  private final ConcurrentBag<ConcurrentBagEntry<Cipher>> rsaCiphers = new ConcurrentBag<>();
-
-  private final ConcurrentBag<ConcurrentBagEntry<Signature>> dsaSignatures =
-      new ConcurrentBag<>();
+  private final PrivateKeyLoader privateKeyLoader;
 
-  private final ConcurrentBag<ConcurrentBagEntry<SM2Signer>> sm2Signers = new ConcurrentBag<>();
+  private final int maxSessions;
 
   private final SecureRandom random;
 
+  private volatile SigningSessions sessions;
+
+  private volatile long lastUsed;
+
   public EmulatorP11Identity(P11Slot slot, P11IdentityId identityId,
       SecretKey signingKey, int maxSessions, SecureRandom random) {
     super(slot, identityId, 0);
     this.signingKey = Args.notNull(signingKey, "signingKey");
+    this.privateKeyLoader = null;
+    this.maxSessions = maxSessions;
     this.random = Args.notNull(random, "random");
   } // constructor
 
@@ -96,10 +127,32 @@ public class EmulatorP11Identity extends P11Identity {
       PublicKey publicKey, X509Certificate[] certificateChain, int maxSessions,
       SecureRandom random)
       throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
+    this(slot, identityId, (PrivateKeyLoader) null, publicKey, certificateChain, maxSessions,
+        random);
+    this.sessions = createSessions(Args.notNull(privateKey, "privateKey"));
+  } // constructor
+
+  EmulatorP11Identity(P11Slot slot, P11IdentityId identityId, PrivateKeyLoader privateKeyLoader,
+      PublicKey publicKey, X509Certificate[] certificateChain, int maxSessions,
+      SecureRandom random) {
     super(slot, identityId, publicKey, certificateChain);
-    this.signingKey = Args.notNull(privateKey, "privateKey");
+    this.signingKey = null;
+    this.privateKeyLoader = privateKeyLoader;
+    this.maxSessions = maxSessions;
     this.random = Args.notNull(random, "random");
 
+    if (!(this.publicKey instanceof RSAPublicKey || this.publicKey instanceof ECPublicKey
+        || this.publicKey instanceof DSAPublicKey)) {
+      throw new IllegalArgumentException("Currently only RSA, DSA and EC public key are "
+          + "supported, but not " + this.publicKey.getAlgorithm()
+          + " (class: " + this.publicKey.getClass().getName() + ")");
+    }
+  } // constructor
+
+  private SigningSessions createSessions(PrivateKey privateKey)
+      throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
+    SigningSessions ret = new SigningSessions(privateKey);
+
     if (this.publicKey instanceof RSAPublicKey) {
       String providerName = "BC";
       LOG.info("use provider {}", providerName);
@@ -122,7 +175,7 @@ public class EmulatorP11Identity extends P11Identity {
           }
         }
         rsaCipher.init(Cipher.ENCRYPT_MODE, privateKey);
-        rsaCiphers.add(new ConcurrentBagEntry<>(rsaCipher));
+        ret.rsaCiphers.add(new ConcurrentBagEntry<>(rsaCipher));
       }
     } else {
       String algorithm;
@@ -130,28 +183,71 @@ public class EmulatorP11Identity extends P11Identity {
         boolean sm2curve = GMUtil.isSm2primev2Curve(
             ((ECPublicKey) this.publicKey).getParams().getCurve());
         algorithm = sm2curve ? null : "NONEwithECDSA";
-      } else if (this.publicKey instanceof DSAPublicKey) {
-        algorithm = "NONEwithDSA";
       } else {
-        throw new IllegalArgumentException("Currently only RSA, DSA and EC public key are "
-            + "supported, but not " + this.publicKey.getAlgorithm()
-            + " (class: " + this.publicKey.getClass().getName() + ")");
+        algorithm = "NONEwithDSA";
       }
 
       if (algorithm != null) {
         for (int i = 0; i < maxSessions; i++) {
           Signature dsaSignature = Signature.getInstance(algorithm, "BC");
           dsaSignature.initSign(privateKey, random);
-          dsaSignatures.add(new ConcurrentBagEntry<>(dsaSignature));
+          ret.dsaSignatures.add(new ConcurrentBagEntry<>(dsaSignature));
         }
       } else {
         for (int i = 0; i < maxSessions; i++) {
           SM2Signer sm2signer = new SM2Signer(ECUtil.generatePrivateKeyParameter(privateKey));
-          sm2Signers.add(new ConcurrentBagEntry<>(sm2signer));
+          ret.sm2Signers.add(new ConcurrentBagEntry<>(sm2signer));
         }
       }
     }
-  } // constructor
+
+    return ret;
+  } // method createSessions
+
+  private SigningSessions getSessions() throws P11TokenException {
+    SigningSessions ret = sessions;
+    if (ret == null) {
+      synchronized (this) {
+        ret = sessions;
+        if (ret == null) {
+          if (privateKeyLoader == null) {
+            throw new P11TokenException("private key of " + id + " is not available");
+          }
+
+          PrivateKey privateKey = privateKeyLoader.loadPrivateKey(this);
+          try {
+            ret = createSessions(privateKey);
+          } catch (NoSuchAlgorithmException | NoSuchProviderException
+              | InvalidKeyException ex) {
+            throw new P11TokenException("could not initialize the private key of " + id, ex);
+          }
+          sessions = ret;
+          LOG.info("loaded private key of {}", id);
+        }
+      }
+    }
+
+    lastUsed = System.currentTimeMillis();
+    return ret;
+  } // method getSessions
+
+  /**
+   * Releases the loaded private key so that it will be loaded again on next use. Has no
+   * effect if the private key was not loaded lazily.
+   */
+  void releasePrivateKey() {
+    if (privateKeyLoader != null) {
+      sessions = null;
+    }
+  }
+
+  boolean isPrivateKeyLoaded() {
+    return sessions != null;
+  }
+
+  long getLastUsed() {
+    return lastUsed;
+  }
 
   @Override
   protected byte[] digestSecretKey0(long mechanism) throws P11TokenException {
@@ -365,9 +461,10 @@ public class EmulatorP11Identity extends P11Identity {
   }
 
   private byte[] rsaX509Sign(byte[] dataToSign) throws P11TokenException {
+    SigningSessions ss = getSessions();
     ConcurrentBagEntry<Cipher> cipher;
     try {
-      cipher = rsaCiphers.borrow(5000, TimeUnit.MILLISECONDS);
+      cipher = ss.rsaCiphers.borrow(5000, TimeUnit.MILLISECONDS);
     } catch (InterruptedException ex) {
       throw new P11TokenException("could not take any idle signer");
     }
@@ -383,7 +480,7 @@ public class EmulatorP11Identity extends P11Identity {
     } catch (IllegalBlockSizeException ex) {
       throw new P11TokenException("IllegalBlockSizeException: " + ex.getMessage(), ex);
     } finally {
-      rsaCiphers.requite(cipher);
+      ss.rsaCiphers.requite(cipher);
     }
   }
 
@@ -391,9 +488,10 @@ public class EmulatorP11Identity extends P11Identity {
       throws P11TokenException {
     byte[] hash = (hashAlgo == null) ? dataToSign : hashAlgo.hash(dataToSign);
 
+    SigningSessions ss = getSessions();
     ConcurrentBagEntry<Signature> sig0;
     try {
-      sig0 = dsaSignatures.borrow(5000, TimeUnit.MILLISECONDS);
+      sig0 = ss.dsaSignatures.borrow(5000, TimeUnit.MILLISECONDS);
     } catch (InterruptedException ex) {
       throw new P11TokenException("InterruptedException occurs while retrieving idle signature");
     }
@@ -412,14 +510,15 @@ public class EmulatorP11Identity extends P11Identity {
     } catch (XiSecurityException ex) {
       throw new P11TokenException("XiSecurityException: " + ex.getMessage(), ex);
     } finally {
-      dsaSignatures.requite(sig0);
+      ss.dsaSignatures.requite(sig0);
     }
   }
 
   private byte[] sm2SignHash(byte[] hash) throws P11TokenException {
+    SigningSessions ss = getSessions();
     ConcurrentBagEntry<SM2Signer> sig0;
     try {
-      sig0 = sm2Signers.borrow(5000, TimeUnit.MILLISECONDS);
+      sig0 = ss.sm2Signers.borrow(5000, TimeUnit.MILLISECONDS);
     } catch (InterruptedException ex) {
       throw new P11TokenException("InterruptedException occurs while retrieving idle signature");
     }
@@ -437,7 +536,7 @@ public class EmulatorP11Identity extends P11Identity {
     } catch (XiSecurityException ex) {
       throw new P11TokenException("XiSecurityException: " + ex.getMessage(), ex);
     } finally {
-      sm2Signers.requite(sig0);
+      ss.sm2Signers.requite(sig0);
     }
   }
 
@@ -454,9 +553,10 @@ public class EmulatorP11Identity extends P11Identity {
       throw new P11TokenException("params must be instanceof P11ByteArrayParams");
     }
 
+    SigningSessions ss = getSessions();
     ConcurrentBagEntry<SM2Signer> sig0;
     try {
-      sig0 = sm2Signers.borrow(5000, TimeUnit.MILLISECONDS);
+      sig0 = ss.sm2Signers.borrow(5000, TimeUnit.MILLISECONDS);
     } catch (InterruptedException ex) {
       throw new P11TokenException("InterruptedException occurs while retrieving idle signature");
     }
@@ -475,12 +575,12 @@ public class EmulatorP11Identity extends P11Identity {
     } catch (XiSecurityException ex) {
       throw new P11TokenException("XiSecurityException: " + ex.getMessage(), ex);
     } finally {
-      sm2Signers.requite(sig0);
+      ss.sm2Signers.requite(sig0);
     }
   }
 
-  Key getSigningKey() {
-    return signingKey;
+  Key getSigningKey() throws P11TokenException {
+    return (signingKey != null) ? signingKey : getSessions().privateKey;
   }
 
   private static HashAlgo getHashAlgoForPkcs11HashMech(long hashMech) {
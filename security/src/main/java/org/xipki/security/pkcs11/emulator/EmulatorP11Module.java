@@ -58,6 +58,9 @@ public class EmulatorP11Module extends P11Module {
   public static final String DFLT_BASEDIR =
       System.getProperty("java.io.tmpdir") + File.separator + "pkcs11-emulator";
 
+  // maximal number of private keys kept decrypted in memory per slot, 0 for no limit
+  private static final int DFLT_MAX_LOADED_KEYS = 256;
+
   private static final Logger LOG = LoggerFactory.getLogger(EmulatorP11Module.class);
 
   private final String description;
@@ -66,6 +69,7 @@ public class EmulatorP11Module extends P11Module {
     super(moduleConf);
 
     Vendor vendor = null;
+    int maxLoadedKeys = DFLT_MAX_LOADED_KEYS;
     File baseDir;
     String modulePath = moduleConf.getNativeLibrary().trim();
     String parametersStr = "";
@@ -85,6 +89,8 @@ public class EmulatorP11Module extends P11Module {
 
           if (strs.get(0).equalsIgnoreCase("vendor")) {
             vendor = Vendor.valueOf(strs.get(1).toUpperCase());
+          } else if (strs.get(0).equalsIgnoreCase("maxLoadedKeys")) {
+            maxLoadedKeys = Integer.parseInt(strs.get(1));
           }
         }
       }
@@ -196,7 +202,7 @@ public class EmulatorP11Module extends P11Module {
       int maxSessions = 20;
       P11Slot slot = new EmulatorP11Slot(moduleConf.getName(), slotDir, slotId,
           moduleConf.isReadOnly(), firstPwd, privateKeyCryptor, moduleConf.getP11MechanismFilter(),
-          moduleConf.getP11NewObjectConf(), maxSessions, vendor);
+          moduleConf.getP11NewObjectConf(), maxSessions, maxLoadedKeys, vendor);
       slots.add(slot);
     }
 
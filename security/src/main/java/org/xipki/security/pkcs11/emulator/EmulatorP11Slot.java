@@ -20,7 +20,6 @@ package org.xipki.security.pkcs11.emulator;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
@@ -110,21 +109,14 @@ import iaik.pkcs.pkcs11.constants.PKCS11Constants;
 
 class EmulatorP11Slot extends P11Slot {
 
-  private static class InfoFilenameFilter implements FilenameFilter {
-
-    @Override
-    public boolean accept(File dir, String name) {
-      return name.endsWith(INFO_FILE_SUFFIX);
-    }
-
-  }
-
   private static final Logger LOG = LoggerFactory.getLogger(EmulatorP11Slot.class);
 
   // slotinfo
   private static final String FILE_SLOTINFO = "slot.info";
   private static final String PROP_NAMED_CURVE_SUPPORTED = "namedCurveSupported";
 
+  private static final String FILE_INDEX = "slot.index";
+
   private static final String DIR_PRIV_KEY = "privkey";
   private static final String DIR_PUB_KEY = "pubkey";
   private static final String DIR_SEC_KEY = "seckey";
@@ -232,8 +224,6 @@ class EmulatorP11Slot extends P11Slot {
     PKCS11Constants.CKM_VENDOR_SM2_SM3,
     PKCS11Constants.CKM_VENDOR_SM2};
 
-  private static final FilenameFilter INFO_FILENAME_FILTER = new InfoFilenameFilter();
-
   private final boolean namedCurveSupported;
 
   private final File slotDir;
@@ -258,9 +248,17 @@ class EmulatorP11Slot extends P11Slot {
 
   private final P11NewObjectConf newObjectConf;
 
+  private final EmulatorSlotIndex index;
+
+  // maximal number of private keys kept decrypted in memory, 0 for no limit
+  private final int maxLoadedKeys;
+
+  private final List<EmulatorP11Identity> loadedIdentities = new LinkedList<>();
+
   EmulatorP11Slot(String moduleName, File slotDir, P11SlotIdentifier slotId, boolean readOnly,
       char[] password, PrivateKeyCryptor privateKeyCryptor, P11MechanismFilter mechanismFilter,
-      P11NewObjectConf newObjectConf, int maxSessions, Vendor vendor) throws P11TokenException {
+      P11NewObjectConf newObjectConf, int maxSessions, int maxLoadedKeys, Vendor vendor)
+      throws P11TokenException {
     super(moduleName, slotId, readOnly, mechanismFilter);
 
     this.newObjectConf = Args.notNull(newObjectConf, "newObjectConf");
@@ -268,6 +266,7 @@ class EmulatorP11Slot extends P11Slot {
     this.password = Args.notNull(password, "password");
     this.privateKeyCryptor = Args.notNull(privateKeyCryptor, "privateKeyCryptor");
     this.maxSessions = Args.positive(maxSessions, "maxSessions");
+    this.maxLoadedKeys = Args.notNegative(maxLoadedKeys, "maxLoadedKeys");
     this.vendor = (vendor == null) ? Vendor.GENERAL : vendor;
 
     this.privKeyDir = new File(slotDir, DIR_PRIV_KEY);
@@ -299,116 +298,101 @@ class EmulatorP11Slot extends P11Slot {
       this.namedCurveSupported = true;
     }
 
+    this.index = new EmulatorSlotIndex(new File(slotDir, FILE_INDEX),
+        privKeyDir, pubKeyDir, secKeyDir, certDir);
+
     refresh();
   }
 
   @Override
   protected P11SlotRefreshResult refresh0() throws P11TokenException {
+    // objects may have been added or removed by another process
+    index.reloadIfModified();
+
     P11SlotRefreshResult ret = new P11SlotRefreshResult();
     for (long mech : supportedMechs) {
       ret.addMechanism(mech);
     }
 
+    // the identities will be re-created
+    releaseLoadedKeys();
+
     // Secret Keys
-    File[] secKeyInfoFiles = secKeyDir.listFiles(INFO_FILENAME_FILTER);
-
-    if (secKeyInfoFiles != null && secKeyInfoFiles.length != 0) {
-      for (File secKeyInfoFile : secKeyInfoFiles) {
-        byte[] id = getKeyIdFromInfoFilename(secKeyInfoFile.getName());
-        String hexId = hex(id);
-
-        try {
-          Properties props = loadProperties(secKeyInfoFile);
-          String label = props.getProperty(PROP_LABEL);
-
-          P11ObjectIdentifier p11ObjId = new P11ObjectIdentifier(id, label);
-          byte[] encodedValue = IoUtil.read(new File(secKeyDir, hexId + VALUE_FILE_SUFFIX));
-
-          KeyStore ks = KeyStore.getInstance("JCEKS");
-          ks.load(new ByteArrayInputStream(encodedValue), password);
-          SecretKey key = null;
-          Enumeration<String> aliases = ks.aliases();
-          while (aliases.hasMoreElements()) {
-            String alias = aliases.nextElement();
-            if (ks.isKeyEntry(alias)) {
-              key = (SecretKey) ks.getKey(alias, password);
-              break;
-            }
-          }
+    for (String hexId : index.getIds(secKeyDir)) {
+      byte[] id = decodeHex(hexId);
 
-          EmulatorP11Identity identity = new EmulatorP11Identity(this,
-              new P11IdentityId(slotId, p11ObjId, null, null), key, maxSessions, random);
-          LOG.info("added PKCS#11 secret key {}", p11ObjId);
-          ret.addIdentity(identity);
-        } catch (ClassCastException ex) {
-          LogUtil.warn(LOG, ex,"InvalidKeyException while initializing key with key-id " + hexId);
-          continue;
-        } catch (Throwable th) {
-          LOG.error("unexpected exception while initializing key with key-id " + hexId, th);
-          continue;
+      try {
+        String label = index.getLabel(secKeyDir, hexId);
+
+        P11ObjectIdentifier p11ObjId = new P11ObjectIdentifier(id, label);
+        byte[] encodedValue = IoUtil.read(new File(secKeyDir, hexId + VALUE_FILE_SUFFIX));
+
+        KeyStore ks = KeyStore.getInstance("JCEKS");
+        ks.load(new ByteArrayInputStream(encodedValue), password);
+        SecretKey key = null;
+        Enumeration<String> aliases = ks.aliases();
+        while (aliases.hasMoreElements()) {
+          String alias = aliases.nextElement();
+          if (ks.isKeyEntry(alias)) {
+            key = (SecretKey) ks.getKey(alias, password);
+            break;
+          }
         }
+
+        EmulatorP11Identity identity = new EmulatorP11Identity(this,
+            new P11IdentityId(slotId, p11ObjId, null, null), key, maxSessions, random);
+        LOG.info("added PKCS#11 secret key {}", p11ObjId);
+        ret.addIdentity(identity);
+      } catch (ClassCastException ex) {
+        LogUtil.warn(LOG, ex,"InvalidKeyException while initializing key with key-id " + hexId);
+        continue;
+      } catch (Throwable th) {
+        LOG.error("unexpected exception while initializing key with key-id " + hexId, th);
+        continue;
       }
     }
 
     // Certificates
-    File[] certInfoFiles = certDir.listFiles(INFO_FILENAME_FILTER);
-    if (certInfoFiles != null) {
-      for (File infoFile : certInfoFiles) {
-        byte[] id = getKeyIdFromInfoFilename(infoFile.getName());
-        Properties props = loadProperties(infoFile);
-        String label = props.getProperty(PROP_LABEL);
-        P11ObjectIdentifier objId = new P11ObjectIdentifier(id, label);
-        try {
-          X509Cert cert = readCertificate(id);
-          ret.addCertificate(objId, cert);
-        } catch (CertificateException | IOException ex) {
-          LOG.warn("could not parse certificate " + objId);
-        }
+    for (String hexId : index.getIds(certDir)) {
+      byte[] id = decodeHex(hexId);
+      String label = index.getLabel(certDir, hexId);
+      P11ObjectIdentifier objId = new P11ObjectIdentifier(id, label);
+      try {
+        X509Cert cert = readCertificate(id);
+        ret.addCertificate(objId, cert);
+      } catch (CertificateException | IOException ex) {
+        LOG.warn("could not parse certificate " + objId);
       }
     }
 
-    // Private / Public keys
-    File[] privKeyInfoFiles = privKeyDir.listFiles(INFO_FILENAME_FILTER);
-
-    if (privKeyInfoFiles != null && privKeyInfoFiles.length != 0) {
-      for (File privKeyInfoFile : privKeyInfoFiles) {
-        byte[] id = getKeyIdFromInfoFilename(privKeyInfoFile.getName());
-        String hexId = hex(id);
-
-        try {
-          Properties props = loadProperties(privKeyInfoFile);
-          String label = props.getProperty(PROP_LABEL);
-
-          P11ObjectIdentifier p11ObjId = new P11ObjectIdentifier(id, label);
-          X509Cert cert = ret.getCertForId(id);
-          java.security.PublicKey publicKey = (cert == null) ? readPublicKey(id)
-              : cert.getCert().getPublicKey();
-
-          if (publicKey == null) {
-            LOG.warn("Neither public key nor certificate is associated with private key {}",
-                p11ObjId);
-            continue;
-          }
-
-          byte[] encodedValue = IoUtil.read(new File(privKeyDir, hexId + VALUE_FILE_SUFFIX));
+    // Private / Public keys, the private keys are decrypted on first use
+    for (String hexId : index.getIds(privKeyDir)) {
+      byte[] id = decodeHex(hexId);
 
-          PKCS8EncryptedPrivateKeyInfo epki = new PKCS8EncryptedPrivateKeyInfo(encodedValue);
-          PrivateKey privateKey = privateKeyCryptor.decrypt(epki);
+      try {
+        String label = index.getLabel(privKeyDir, hexId);
 
-          X509Certificate[] certs = (cert == null) ? null : new X509Certificate[]{cert.getCert()};
+        P11ObjectIdentifier p11ObjId = new P11ObjectIdentifier(id, label);
+        X509Cert cert = ret.getCertForId(id);
+        java.security.PublicKey publicKey = (cert == null) ? readPublicKey(id)
+            : cert.getCert().getPublicKey();
 
-          EmulatorP11Identity identity = new EmulatorP11Identity(this,
-              new P11IdentityId(slotId, p11ObjId, label, label), privateKey, publicKey, certs,
-                  maxSessions, random);
-          LOG.info("added PKCS#11 key {}", p11ObjId);
-          ret.addIdentity(identity);
-        } catch (InvalidKeyException ex) {
-          LogUtil.warn(LOG, ex,"InvalidKeyException while initializing key with key-id " + hexId);
-          continue;
-        } catch (Throwable th) {
-          LOG.error("unexpected exception while initializing key with key-id " + hexId, th);
+        if (publicKey == null) {
+          LOG.warn("Neither public key nor certificate is associated with private key {}",
+              p11ObjId);
           continue;
         }
+
+        X509Certificate[] certs = (cert == null) ? null : new X509Certificate[]{cert.getCert()};
+
+        EmulatorP11Identity identity = new EmulatorP11Identity(this,
+            new P11IdentityId(slotId, p11ObjId, label, label),
+            ident -> loadPrivateKey(ident, hexId), publicKey, certs, maxSessions, random);
+        LOG.info("added PKCS#11 key {}", p11ObjId);
+        ret.addIdentity(identity);
+      } catch (Throwable th) {
+        LOG.error("unexpected exception while initializing key with key-id " + hexId, th);
+        continue;
       }
     }
 
@@ -419,6 +403,60 @@ class EmulatorP11Slot extends P11Slot {
     return slotDir;
   }
 
+  private PrivateKey loadPrivateKey(EmulatorP11Identity identity, String hexId)
+      throws P11TokenException {
+    byte[] encodedValue;
+    try {
+      encodedValue = IoUtil.read(new File(privKeyDir, hexId + VALUE_FILE_SUFFIX));
+    } catch (IOException ex) {
+      throw new P11TokenException("could not read private key with key-id " + hexId, ex);
+    }
+
+    PKCS8EncryptedPrivateKeyInfo epki;
+    try {
+      epki = new PKCS8EncryptedPrivateKeyInfo(encodedValue);
+    } catch (IOException ex) {
+      throw new P11TokenException("could not parse private key with key-id " + hexId, ex);
+    }
+
+    PrivateKey privateKey = privateKeyCryptor.decrypt(epki);
+
+    synchronized (loadedIdentities) {
+      loadedIdentities.remove(identity);
+      loadedIdentities.add(identity);
+
+      while (maxLoadedKeys > 0 && loadedIdentities.size() > maxLoadedKeys) {
+        // release the least recently used private key which is not being loaded
+        EmulatorP11Identity lru = null;
+        for (EmulatorP11Identity m : loadedIdentities) {
+          if (m != identity && m.isPrivateKeyLoaded()
+              && (lru == null || m.getLastUsed() < lru.getLastUsed())) {
+            lru = m;
+          }
+        }
+
+        if (lru == null) {
+          break;
+        }
+
+        loadedIdentities.remove(lru);
+        lru.releasePrivateKey();
+        LOG.debug("released private key of {}", lru.getId());
+      }
+    }
+
+    return privateKey;
+  } // method loadPrivateKey
+
+  private void releaseLoadedKeys() {
+    synchronized (loadedIdentities) {
+      for (EmulatorP11Identity m : loadedIdentities) {
+        m.releasePrivateKey();
+      }
+      loadedIdentities.clear();
+    }
+  }
+
   private PublicKey readPublicKey(byte[] keyId) throws P11TokenException {
     String hexKeyId = hex(keyId);
     File pubKeyFile = new File(pubKeyDir, hexKeyId + INFO_FILE_SUFFIX);
@@ -479,12 +517,9 @@ class EmulatorP11Slot extends P11Slot {
     }
   }
 
-  private static byte[] getKeyIdFromInfoFilename(String fileName) {
-    return decodeHex(fileName.substring(0, fileName.length() - INFO_FILE_SUFFIX.length()));
-  }
-
   @Override
   public void close() {
+    releaseLoadedKeys();
     LOG.info("close slot " + slotId);
   }
 
@@ -498,42 +533,29 @@ class EmulatorP11Slot extends P11Slot {
     String label = objectId.getLabel();
     if (id != null) {
       String hextId = hex(id);
-      File infoFile = new File(dir, hextId + INFO_FILE_SUFFIX);
-      if (!infoFile.exists()) {
+      if (!index.contains(dir, hextId)) {
         return false;
       }
 
       if (StringUtil.isBlank(label)) {
         return deletePkcs11Entry(dir, id);
       } else {
-        Properties props = loadProperties(infoFile);
-
-        return label.equals(props.getProperty("label")) ? deletePkcs11Entry(dir, id) : false;
+        return label.equals(index.getLabel(dir, hextId)) ? deletePkcs11Entry(dir, id) : false;
       }
     }
 
     // id is null, delete all entries with the specified label
     boolean deleted = false;
-    File[] infoFiles = dir.listFiles(INFO_FILENAME_FILTER);
-    if (infoFiles != null) {
-      for (File infoFile : infoFiles) {
-        if (!infoFile.isFile()) {
-          continue;
-        }
-
-        Properties props = loadProperties(infoFile);
-        if (label.equals(props.getProperty("label"))) {
-          if (deletePkcs11Entry(dir, getKeyIdFromInfoFilename(infoFile.getName()))) {
-            deleted = true;
-          }
-        }
+    for (String hexId : index.getIdsForLabel(dir, label)) {
+      if (deletePkcs11Entry(dir, decodeHex(hexId))) {
+        deleted = true;
       }
     }
 
     return deleted;
   }
 
-  private static boolean deletePkcs11Entry(File dir, byte[] objectId) {
+  private boolean deletePkcs11Entry(File dir, byte[] objectId) throws P11TokenException {
     String hextId = hex(objectId);
     File infoFile = new File(dir, hextId + INFO_FILE_SUFFIX);
     boolean b1 = true;
@@ -547,6 +569,7 @@ class EmulatorP11Slot extends P11Slot {
       b2 = valueFile.delete();
     }
 
+    index.remove(dir, hextId);
     return b1 || b2;
   }
 
@@ -557,39 +580,20 @@ class EmulatorP11Slot extends P11Slot {
 
     if (id != null && id.length > 0) {
       String hextId = hex(id);
-      File infoFile = new File(dir, hextId + INFO_FILE_SUFFIX);
-      if (!infoFile.exists()) {
+      if (!index.contains(dir, hextId)) {
         return 0;
       }
 
-      Properties props = loadProperties(infoFile);
-      if (!label.equals(props.get(PROP_LABEL))) {
+      if (!label.equals(index.getLabel(dir, hextId))) {
         return 0;
       }
 
       return deletePkcs11Entry(dir, id) ? 1 : 0;
     }
 
-    File[] infoFiles = dir.listFiles(INFO_FILENAME_FILTER);
-    if (infoFiles == null || infoFiles.length == 0) {
-      return 0;
-    }
-
-    List<byte[]> ids = new LinkedList<>();
-
-    for (File infoFile : infoFiles) {
-      Properties props = loadProperties(infoFile);
-      if (label.equals(props.getProperty(PROP_LABEL))) {
-        ids.add(getKeyIdFromInfoFilename(infoFile.getName()));
-      }
-    }
-
-    if (ids.isEmpty()) {
-      return 0;
-    }
-
-    for (byte[] m : ids) {
-      deletePkcs11Entry(dir, m);
+    List<String> ids = index.getIdsForLabel(dir, label);
+    for (String m : ids) {
+      deletePkcs11Entry(dir, decodeHex(m));
     }
     return ids.size();
   }
@@ -728,6 +732,7 @@ class EmulatorP11Slot extends P11Slot {
     } catch (IOException ex) {
       throw new P11TokenException(ex.getMessage(), ex);
     }
+    index.put(pubKeyDir, hexId, label);
 
     return label;
   }
@@ -771,6 +776,7 @@ class EmulatorP11Slot extends P11Slot {
     } catch (IOException ex) {
       throw new P11TokenException("could not save certificate");
     }
+    index.put(dir, hexId, label);
   }
 
   @Override
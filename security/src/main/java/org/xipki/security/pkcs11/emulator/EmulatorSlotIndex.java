@@ -0,0 +1,354 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.pkcs11.emulator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.security.pkcs11.P11TokenException;
+
+/**
+ * Append-only index of the objects stored in an emulator slot directory.
+ *
+ * <p>Each line of the index file is either an addition
+ * {@code +<TAB>type<TAB>hex-id<TAB>label} or a removal {@code -<TAB>type<TAB>hex-id},
+ * where type is the name of the sub-directory containing the object. The index is
+ * rebuilt from the {@code .info} files if it does not exist or if one of the object
+ * directories has been modified after the index file, and is compacted once the
+ * removals outnumber the live entries. As the slot directory may be shared by several
+ * processes, the index is reloaded on refresh if it has been modified by another process.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+class EmulatorSlotIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EmulatorSlotIndex.class);
+
+  private static final String INFO_FILE_SUFFIX = ".info";
+
+  private static final String PROP_LABEL = "label";
+
+  private static final FilenameFilter INFO_FILENAME_FILTER =
+      (dir, name) -> name.endsWith(INFO_FILE_SUFFIX);
+
+  private final File indexFile;
+
+  private final File[] dirs;
+
+  private final Map<String, Map<String, String>> entries = new HashMap<>();
+
+  private int removedCount;
+
+  // length and modification time of the index file as read or written by this process
+  private long knownLength = -1;
+
+  private long knownModified;
+
+  EmulatorSlotIndex(File indexFile, File... dirs) throws P11TokenException {
+    this.indexFile = indexFile;
+    this.dirs = dirs;
+    for (File dir : dirs) {
+      entries.put(dir.getName(), new LinkedHashMap<>());
+    }
+
+    load();
+  }
+
+  /**
+   * Reloads the index if it has been modified by another process, or rebuilds it if
+   * objects have been added or removed without updating the index.
+   * @throws P11TokenException if the index could not be rebuilt.
+   */
+  synchronized void reloadIfModified() throws P11TokenException {
+    if (isStale() || indexFile.length() != knownLength
+        || indexFile.lastModified() != knownModified) {
+      load();
+    }
+  }
+
+  private boolean isStale() {
+    if (!indexFile.exists()) {
+      return true;
+    }
+
+    long indexModified = indexFile.lastModified();
+    for (File dir : dirs) {
+      if (dir.lastModified() > indexModified) {
+        LOG.info("directory {} is newer than the index, rebuild it", dir.getPath());
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void load() throws P11TokenException {
+    boolean rebuild = isStale();
+    if (!rebuild) {
+      try {
+        replay();
+      } catch (IOException | RuntimeException ex) {
+        LOG.warn("could not read the index file {}, rebuild it: {}",
+            indexFile.getPath(), ex.getMessage());
+        rebuild = true;
+      }
+    }
+
+    if (rebuild) {
+      rebuild();
+    }
+  }
+
+  private void markKnown() {
+    knownLength = indexFile.length();
+    knownModified = indexFile.lastModified();
+  }
+
+  synchronized List<String> getIds(File dir) {
+    return new ArrayList<>(entries(dir).keySet());
+  }
+
+  synchronized boolean contains(File dir, String hexId) {
+    return entries(dir).containsKey(hexId);
+  }
+
+  synchronized String getLabel(File dir, String hexId) {
+    return entries(dir).get(hexId);
+  }
+
+  synchronized List<String> getIdsForLabel(File dir, String label) {
+    List<String> ret = new ArrayList<>(1);
+    for (Map.Entry<String, String> m : entries(dir).entrySet()) {
+      if (label.equals(m.getValue())) {
+        ret.add(m.getKey());
+      }
+    }
+    return ret.isEmpty() ? Collections.emptyList() : ret;
+  }
+
+  synchronized void put(File dir, String hexId, String label) throws P11TokenException {
+    entries(dir).put(hexId, label);
+    append("+\t" + dir.getName() + "\t" + hexId + "\t" + escape(label) + "\n");
+  }
+
+  synchronized void remove(File dir, String hexId) throws P11TokenException {
+    if (entries(dir).remove(hexId) == null) {
+      return;
+    }
+
+    removedCount++;
+    int liveCount = 0;
+    for (Map<String, String> m : entries.values()) {
+      liveCount += m.size();
+    }
+
+    if (removedCount > liveCount) {
+      save();
+    } else {
+      append("-\t" + dir.getName() + "\t" + hexId + "\n");
+    }
+  }
+
+  private Map<String, String> entries(File dir) {
+    Map<String, String> map = entries.get(dir.getName());
+    if (map == null) {
+      throw new IllegalArgumentException("unknown directory " + dir.getName());
+    }
+    return map;
+  }
+
+  private void replay() throws IOException {
+    removedCount = 0;
+    for (Map<String, String> map : entries.values()) {
+      map.clear();
+    }
+
+    long length = indexFile.length();
+    long modified = indexFile.lastModified();
+    try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(),
+        StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+
+        String[] tokens = line.split("\t", 4);
+        Map<String, String> map = entries.get(tokens[1]);
+        if (map == null) {
+          throw new IOException("unknown object type " + tokens[1]);
+        }
+
+        if ("+".equals(tokens[0])) {
+          map.put(tokens[2], unescape(tokens[3]));
+        } else if ("-".equals(tokens[0])) {
+          map.remove(tokens[2]);
+          removedCount++;
+        } else {
+          throw new IOException("invalid line " + line);
+        }
+      }
+    }
+    knownLength = length;
+    knownModified = modified;
+  }
+
+  private void rebuild() throws P11TokenException {
+    removedCount = 0;
+    for (File dir : dirs) {
+      Map<String, String> map = entries.get(dir.getName());
+      map.clear();
+
+      File[] infoFiles = dir.listFiles(INFO_FILENAME_FILTER);
+      if (infoFiles == null) {
+        continue;
+      }
+
+      for (File infoFile : infoFiles) {
+        String fileName = infoFile.getName();
+        Properties props = new Properties();
+        try (InputStream stream = Files.newInputStream(infoFile.toPath())) {
+          props.load(stream);
+        } catch (IOException ex) {
+          throw new P11TokenException(
+              "could not load properties from the file " + infoFile.getPath(), ex);
+        }
+
+        String hexId = fileName.substring(0, fileName.length() - INFO_FILE_SUFFIX.length());
+        map.put(hexId, props.getProperty(PROP_LABEL));
+      }
+    }
+
+    try {
+      save();
+    } catch (P11TokenException ex) {
+      // e.g. read-only slot directory, use the in-memory index
+      LOG.warn("could not save the rebuilt index: {}", ex.getMessage());
+    }
+  }
+
+  private void save() throws P11TokenException {
+    File tmpFile = new File(indexFile.getPath() + ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8)) {
+        for (File dir : dirs) {
+          for (Map.Entry<String, String> m : entries.get(dir.getName()).entrySet()) {
+            writer.write("+\t" + dir.getName() + "\t" + m.getKey() + "\t"
+                + escape(m.getValue()) + "\n");
+          }
+        }
+      }
+      Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      markKnown();
+    } catch (IOException ex) {
+      throw new P11TokenException("could not save the index file " + indexFile.getPath(), ex);
+    }
+    removedCount = 0;
+  }
+
+  /**
+   * Appends a line to the index file. The file is locked, since the slot directory may be
+   * shared by several processes.
+   */
+  private void append(String line) throws P11TokenException {
+    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+    try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        FileLock lock = channel.lock()) {
+      long oldSize = channel.size();
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+
+      // lines appended by another process are read in the next reload
+      if (oldSize == knownLength) {
+        markKnown();
+      }
+    } catch (IOException ex) {
+      throw new P11TokenException("could not update the index file " + indexFile.getPath(), ex);
+    }
+  }
+
+  private static String escape(String label) {
+    if (label == null) {
+      return "";
+    }
+
+    StringBuilder sb = new StringBuilder(label.length());
+    for (int i = 0; i < label.length(); i++) {
+      char ch = label.charAt(i);
+      if (ch == '\\') {
+        sb.append("\\\\");
+      } else if (ch == '\t') {
+        sb.append("\\t");
+      } else if (ch == '\n') {
+        sb.append("\\n");
+      } else if (ch == '\r') {
+        sb.append("\\r");
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String unescape(String str) {
+    if (str.isEmpty()) {
+      return null;
+    } else if (str.indexOf('\\') == -1) {
+      return str;
+    }
+
+    StringBuilder sb = new StringBuilder(str.length());
+    for (int i = 0; i < str.length(); i++) {
+      char ch = str.charAt(i);
+      if (ch == '\\' && i + 1 < str.length()) {
+        char next = str.charAt(++i);
+        sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb.toString();
+  }
+
+}
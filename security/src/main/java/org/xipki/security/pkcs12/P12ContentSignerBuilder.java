@@ -23,6 +23,7 @@ import java.security.InvalidKeyException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
@@ -50,6 +51,7 @@ import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.Signer;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
 import org.bouncycastle.crypto.signers.DSADigestSigner;
 import org.bouncycastle.crypto.signers.DSASigner;
 import org.bouncycastle.crypto.signers.ECDSASigner;
@@ -57,6 +59,7 @@ import org.bouncycastle.crypto.signers.RSADigestSigner;
 import org.bouncycastle.crypto.signers.SM2Signer;
 import org.bouncycastle.jcajce.provider.asymmetric.dsa.DSAUtil;
 import org.bouncycastle.jcajce.provider.asymmetric.util.ECUtil;
+import org.bouncycastle.math.ec.ECMultiplier;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.bc.BcContentSignerBuilder;
@@ -65,8 +68,10 @@ import org.xipki.security.DSAPlainDigestSigner;
 import org.xipki.security.DfltConcurrentContentSigner;
 import org.xipki.security.SignatureSigner;
 import org.xipki.security.XiContentSigner;
+import org.xipki.security.XiContentSignerFactory;
 import org.xipki.security.XiSecurityException;
 import org.xipki.security.XiWrappedContentSigner;
+import org.xipki.security.bc.XiFixedPointCombMultiplier;
 import org.xipki.security.util.AlgorithmUtil;
 import org.xipki.security.util.GMUtil;
 import org.xipki.security.util.KeyUtil;
@@ -148,10 +153,13 @@ public class P12ContentSignerBuilder {
 
     private final boolean plain;
 
-    private ECDSAContentSignerBuilder(AlgorithmIdentifier signatureAlgId, boolean plain)
-        throws NoSuchAlgorithmException {
+    private final ECMultiplier basePointMultiplier;
+
+    private ECDSAContentSignerBuilder(AlgorithmIdentifier signatureAlgId, boolean plain,
+        ECMultiplier basePointMultiplier) throws NoSuchAlgorithmException {
       super(signatureAlgId, AlgorithmUtil.extractDigesetAlgFromSigAlg(signatureAlgId));
       this.plain = plain;
+      this.basePointMultiplier = basePointMultiplier;
     }
 
     protected Signer createSigner(AlgorithmIdentifier sigAlgId, AlgorithmIdentifier digAlgId)
@@ -162,7 +170,12 @@ public class P12ContentSignerBuilder {
       }
 
       Digest dig = digestProvider.get(digAlgId);
-      ECDSASigner dsaSigner = new ECDSASigner();
+      ECDSASigner dsaSigner = new ECDSASigner() {
+        @Override
+        protected ECMultiplier createBasePointMultiplier() {
+          return basePointMultiplier;
+        }
+      };
 
       return plain ? new DSAPlainDigestSigner(dsaSigner, dig) : new DSADigestSigner(dsaSigner, dig);
     }
@@ -171,8 +184,12 @@ public class P12ContentSignerBuilder {
 
   private static class SM2ContentSignerBuilder extends BcContentSignerBuilder {
 
-    private SM2ContentSignerBuilder() throws NoSuchAlgorithmException {
+    private final ECMultiplier basePointMultiplier;
+
+    private SM2ContentSignerBuilder(ECMultiplier basePointMultiplier)
+        throws NoSuchAlgorithmException {
       super(ALGID_SM2_SM3, ALGID_SM3);
+      this.basePointMultiplier = basePointMultiplier;
     }
 
     protected Signer createSigner(AlgorithmIdentifier sigAlgId, AlgorithmIdentifier digAlgId)
@@ -182,7 +199,12 @@ public class P12ContentSignerBuilder {
             + "algorithm '" + sigAlgId.getAlgorithm().getId() + "'");
       }
 
-      return new SM2Signer();
+      return new SM2Signer() {
+        @Override
+        protected ECMultiplier createBasePointMultiplier() {
+          return basePointMultiplier;
+        }
+      };
     }
 
   } // class SM2ContentSignerBuilder
@@ -270,10 +292,34 @@ public class P12ContentSignerBuilder {
 
   public ConcurrentContentSigner createSigner(AlgorithmIdentifier signatureAlgId, int parallelism,
       SecureRandom random) throws XiSecurityException, NoSuchPaddingException {
+    return createSigner(signatureAlgId, parallelism, parallelism, random);
+  }
+
+  /**
+   * Creates a signer with adaptive pool size.
+   * @param signatureAlgId
+   *          Signature algorithm. Must not be {@code null}.
+   * @param parallelism
+   *          Initial (and minimal) number of the underlying signers.
+   * @param maxParallelism
+   *          Maximal number of the underlying signers. If it is greater than
+   *          {@code parallelism}, the pool grows and shrinks on demand.
+   * @param random
+   *          Random. Could be {@code null}.
+   * @return the signer
+   * @throws XiSecurityException
+   *           if signer could not be created.
+   * @throws NoSuchPaddingException
+   *           if the padding is not supported.
+   */
+  public ConcurrentContentSigner createSigner(AlgorithmIdentifier signatureAlgId, int parallelism,
+      int maxParallelism, SecureRandom random) throws XiSecurityException, NoSuchPaddingException {
     Args.notNull(signatureAlgId, "signatureAlgId");
     Args.positive(parallelism, "parallelism");
+    Args.min(maxParallelism, "maxParallelism", parallelism);
 
     List<XiContentSigner> signers = new ArrayList<>(parallelism);
+    XiContentSignerFactory signerFactory = null;
 
     String provName = null;
     if (AlgorithmUtil.isRSASigAlgId(signatureAlgId)) {
@@ -293,19 +339,29 @@ public class P12ContentSignerBuilder {
         throw new XiSecurityException(ex.getMessage());
       }
 
+      final String jceProvName = provName;
+      signerFactory = () -> {
+        try {
+          Signature signature = Signature.getInstance(algoName, jceProvName);
+          signature.initSign(key);
+          return new SignatureSigner(signatureAlgId, signature, key);
+        } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidKeyException ex) {
+          throw new XiSecurityException(ex.getMessage(), ex);
+        }
+      };
+
       try {
         for (int i = 0; i < parallelism; i++) {
-          Signature signature = Signature.getInstance(algoName, provName);
-          signature.initSign(key);
+          XiContentSigner signer = signerFactory.newSigner();
           if (i == 0) {
-            signature.update(new byte[]{1, 2, 3, 4});
-            signature.sign();
+            signer.getOutputStream().write(new byte[]{1, 2, 3, 4});
+            signer.getSignature();
           }
-          XiContentSigner signer = new SignatureSigner(signatureAlgId, signature, key);
           signers.add(signer);
         }
       } catch (Exception ex) {
         signers.clear();
+        signerFactory = null;
       }
     }
 
@@ -322,12 +378,15 @@ public class P12ContentSignerBuilder {
               AlgorithmUtil.isDSAPlainSigAlg(signatureAlgId));
         } else if (key instanceof ECPrivateKey) {
           keyparam = ECUtil.generatePrivateKeyParameter(key);
+          // the precomputed table of the generator is shared by all signers of this key
+          ECMultiplier multiplier = new XiFixedPointCombMultiplier(
+              ((ECPrivateKeyParameters) keyparam).getParameters().getG());
           EllipticCurve curve = ((ECPrivateKey) key).getParams().getCurve();
           if (GMUtil.isSm2primev2Curve(curve)) {
-            signerBuilder = new SM2ContentSignerBuilder();
+            signerBuilder = new SM2ContentSignerBuilder(multiplier);
           } else {
             signerBuilder = new ECDSAContentSignerBuilder(signatureAlgId,
-                AlgorithmUtil.isDSAPlainSigAlg(signatureAlgId));
+                AlgorithmUtil.isDSAPlainSigAlg(signatureAlgId), multiplier);
           }
         } else {
           throw new XiSecurityException("unsupported key " + key.getClass().getName());
@@ -338,29 +397,35 @@ public class P12ContentSignerBuilder {
         throw new XiSecurityException("no such algorithm", ex);
       }
 
-      for (int i = 0; i < parallelism; i++) {
-        if (random != null) {
-          signerBuilder.setSecureRandom(random);
-        }
+      if (random != null) {
+        signerBuilder.setSecureRandom(random);
+      }
 
-        ContentSigner signer;
+      signerFactory = () -> {
         try {
-          signer = signerBuilder.build(keyparam);
+          return new XiWrappedContentSigner(signerBuilder.build(keyparam), true);
         } catch (OperatorCreationException ex) {
           throw new XiSecurityException("operator creation error", ex);
         }
-        signers.add(new XiWrappedContentSigner(signer, true));
+      };
+
+      for (int i = 0; i < parallelism; i++) {
+        signers.add(signerFactory.newSigner());
       }
     }
 
     final boolean mac = false;
-    ConcurrentContentSigner concurrentSigner;
+    DfltConcurrentContentSigner concurrentSigner;
     try {
       concurrentSigner = new DfltConcurrentContentSigner(mac, signers, key);
     } catch (NoSuchAlgorithmException ex) {
       throw new XiSecurityException(ex.getMessage(), ex);
     }
 
+    if (maxParallelism > parallelism) {
+      concurrentSigner.setAdaptivePoolSize(maxParallelism, signerFactory);
+    }
+
     if (certificateChain != null) {
       concurrentSigner.setCertificateChain(certificateChain);
     } else {
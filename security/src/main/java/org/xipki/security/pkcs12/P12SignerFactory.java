@@ -99,6 +99,21 @@ public class P12SignerFactory implements SignerFactory {
       }
     }
 
+    // adaptive pool size if max-parallelism is greater than parallelism
+    str = conf.getConfValue("max-parallelism");
+    int maxParallelism = parallelism;
+    if (str != null) {
+      try {
+        maxParallelism = Integer.parseInt(str);
+      } catch (NumberFormatException ex) {
+        throw new ObjectCreationException("invalid max-parallelism " + str);
+      }
+
+      if (maxParallelism < parallelism) {
+        throw new ObjectCreationException("invalid max-parallelism " + str);
+      }
+    }
+
     String passwordHint = conf.getConfValue("password");
     char[] password;
     if (passwordHint == null) {
@@ -163,7 +178,7 @@ public class P12SignerFactory implements SignerFactory {
           signatureAlgId = AlgorithmUtil.getSigAlgId(pubKey, conf);
         }
 
-        return signerBuilder.createSigner(signatureAlgId, parallelism,
+        return signerBuilder.createSigner(signatureAlgId, parallelism, maxParallelism,
             securityFactory.getRandom4Sign());
       }
     } catch (NoSuchAlgorithmException | NoSuchPaddingException | XiSecurityException ex) {
@@ -0,0 +1,550 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.security.util;
+
+import java.util.Locale;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1String;
+import org.bouncycastle.asn1.DERBMPString;
+import org.bouncycastle.asn1.DERUniversalString;
+import org.bouncycastle.asn1.x500.AttributeTypeAndValue;
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.X500Name;
+
+/**
+ * Computes the canonicalized form of an X.500 Name directly from its DER encoding, without
+ * building the ASN.1 object graph and intermediate Strings, or from an {@link X500Name}
+ * without encoding it. The result is identical
+ * to the one of {@link X509Util#canonicalizName(org.bouncycastle.asn1.x500.X500Name)}:
+ * attribute types are sorted by their dotted OID, values are escaped as by
+ * {@code IETFUtils.valueToString()} and converted to lower case.
+ *
+ * <p>Only the common case is handled: DER with definite lengths, non-empty RDNs, and
+ * attribute values of the types UTF8String, PrintableString, IA5String, TeletexString,
+ * VisibleString and NumericString containing only ASCII characters. For all other names
+ * the {@code canonicalize} methods return {@code false}, and the caller must use the generic
+ * implementation.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+final class DerNameCanonicalizer {
+
+  private static final ThreadLocal<DerNameCanonicalizer> INSTANCES =
+      ThreadLocal.withInitial(DerNameCanonicalizer::new);
+
+  private static final int TAG_SEQUENCE = 0x30;
+
+  private static final int TAG_SET = 0x31;
+
+  private static final int TAG_OID = 0x06;
+
+  private byte[] der;
+
+  // position after the last parsed length
+  private int pos;
+
+  // the last parsed length
+  private int lastLength;
+
+  private int count;
+
+  // dotted OIDs of the attribute types
+  private byte[] types = new byte[128];
+
+  private int typesLen;
+
+  private int[] typeOffs = new int[16];
+
+  private int[] typeLens = new int[16];
+
+  // values of the attributes
+  private byte[] values = new byte[256];
+
+  private int valuesLen;
+
+  private int[] valueOffs = new int[16];
+
+  private int[] valueLens = new int[16];
+
+  // indexes of the attributes sorted by type
+  private int[] order = new int[16];
+
+  private byte[] value = new byte[64];
+
+  private int valueLen;
+
+  private byte[] out = new byte[256];
+
+  private int outLen;
+
+  private DerNameCanonicalizer() {
+  }
+
+  static DerNameCanonicalizer getInstance() {
+    return INSTANCES.get();
+  }
+
+  /**
+   * Returns the canonicalized name computed by the last successful canonicalization. Only the first {@link #getLength()} bytes are valid.
+   * @return the ASCII-encoded canonicalized name.
+   */
+  byte[] getBuffer() {
+    return out;
+  }
+
+  int getLength() {
+    return outLen;
+  }
+
+  /**
+   * Canonicalizes the given name.
+   * @param encodedName DER encoded Name.
+   * @return whether the name has been canonicalized. If {@code false}, the generic
+   *     implementation must be used.
+   */
+  boolean canonicalize(byte[] encodedName) {
+    if (!isLocaleSupported()) {
+      return false;
+    }
+
+    reset();
+    this.der = encodedName;
+    try {
+      return parseName() && write();
+    } finally {
+      this.der = null;
+    }
+  }
+
+  /**
+   * Canonicalizes the given name without encoding it.
+   * @param name the name.
+   * @return whether the name has been canonicalized. If {@code false}, the generic
+   *     implementation must be used.
+   */
+  boolean canonicalize(X500Name name) {
+    if (!isLocaleSupported()) {
+      return false;
+    }
+
+    reset();
+    for (RDN rdn : name.getRDNs()) {
+      AttributeTypeAndValue[] atvs = rdn.getTypesAndValues();
+      if (atvs.length == 0) {
+        return false;
+      }
+
+      for (AttributeTypeAndValue atv : atvs) {
+        ASN1Encodable value = atv.getValue();
+        if (!(value instanceof ASN1String) || value instanceof DERBMPString
+            || value instanceof DERUniversalString) {
+          return false;
+        }
+
+        ensureAttributeCapacity();
+        typeOffs[count] = typesLen;
+        String type = atv.getType().getId();
+        for (int i = 0; i < type.length(); i++) {
+          appendType((byte) type.charAt(i));
+        }
+        typeLens[count] = type.length();
+
+        valueOffs[count] = valuesLen;
+        String str = ((ASN1String) value).getString();
+        for (int i = 0; i < str.length(); i++) {
+          char ch = str.charAt(i);
+          if (ch >= 0x80) {
+            return false;
+          }
+          appendValues((byte) ch);
+        }
+        valueLens[count] = str.length();
+        count++;
+      }
+    }
+
+    return write();
+  }
+
+  private void reset() {
+    count = 0;
+    typesLen = 0;
+    valuesLen = 0;
+    outLen = 0;
+  }
+
+  private static boolean isLocaleSupported() {
+    String lang = Locale.getDefault().getLanguage();
+    // String.toLowerCase() does not map 'I' to 'i' in these locales
+    return !("tr".equals(lang) || "az".equals(lang));
+  }
+
+  private boolean parseName() {
+    pos = 0;
+    if (!readHeader(TAG_SEQUENCE)) {
+      return false;
+    }
+
+    int nameEnd = pos + lastLength;
+    if (nameEnd != der.length) {
+      return false;
+    }
+
+    while (pos < nameEnd) {
+      if (!readHeader(TAG_SET) || lastLength == 0) {
+        return false;
+      }
+
+      int rdnEnd = pos + lastLength;
+      if (rdnEnd > nameEnd) {
+        return false;
+      }
+
+      int rdnStart = count;
+      while (pos < rdnEnd) {
+        if (!parseAttribute(rdnEnd)) {
+          return false;
+        }
+      }
+
+      if (pos != rdnEnd) {
+        return false;
+      }
+
+      // X500Name may keep the attributes of multi-valued RDNs in a different order than
+      // the encoding, which matters only if the RDN contains a type more than once.
+      for (int i = rdnStart + 1; i < count; i++) {
+        for (int j = rdnStart; j < i; j++) {
+          if (compareTypes(i, j) == 0) {
+            return false;
+          }
+        }
+      }
+    }
+
+    return pos == nameEnd;
+  }
+
+  private boolean parseAttribute(int rdnEnd) {
+    if (!readHeader(TAG_SEQUENCE)) {
+      return false;
+    }
+
+    int atvEnd = pos + lastLength;
+    if (atvEnd > rdnEnd) {
+      return false;
+    }
+
+    if (!readHeader(TAG_OID) || lastLength == 0 || pos + lastLength > atvEnd) {
+      return false;
+    }
+
+    ensureAttributeCapacity();
+    int typeOff = typesLen;
+    if (!appendOid(pos, lastLength)) {
+      return false;
+    }
+    pos += lastLength;
+
+    if (pos >= atvEnd) {
+      return false;
+    }
+
+    int tag = der[pos++] & 0xff;
+    switch (tag) {
+      case 0x0c: // UTF8String
+      case 0x12: // NumericString
+      case 0x13: // PrintableString
+      case 0x14: // TeletexString
+      case 0x16: // IA5String
+      case 0x1a: // VisibleString
+        break;
+      default:
+        return false;
+    }
+
+    if (!readLength() || pos + lastLength != atvEnd) {
+      return false;
+    }
+
+    typeOffs[count] = typeOff;
+    typeLens[count] = typesLen - typeOff;
+    valueOffs[count] = valuesLen;
+    valueLens[count] = lastLength;
+    for (int i = pos; i < atvEnd; i++) {
+      if (der[i] < 0) {
+        // not ASCII
+        return false;
+      }
+      appendValues(der[i]);
+    }
+
+    count++;
+    pos = atvEnd;
+    return true;
+  }
+
+  private boolean readHeader(int expectedTag) {
+    if (pos >= der.length || (der[pos] & 0xff) != expectedTag) {
+      return false;
+    }
+    pos++;
+    return readLength();
+  }
+
+  private boolean readLength() {
+    if (pos >= der.length) {
+      return false;
+    }
+
+    int b = der[pos++] & 0xff;
+    if (b < 0x80) {
+      lastLength = b;
+    } else {
+      int num = b & 0x7f;
+      // indefinite length or length too large
+      if (num == 0 || num > 3 || pos + num > der.length) {
+        return false;
+      }
+
+      int len = 0;
+      for (int i = 0; i < num; i++) {
+        len = (len << 8) | (der[pos++] & 0xff);
+      }
+      lastLength = len;
+    }
+
+    return pos + lastLength <= der.length;
+  }
+
+  private boolean appendOid(int off, int len) {
+    int end = off + len;
+    boolean first = true;
+    long subId = 0;
+    for (int i = off; i < end; i++) {
+      int b = der[i] & 0xff;
+      if (subId > (Long.MAX_VALUE >> 7)) {
+        return false;
+      }
+
+      subId = (subId << 7) | (b & 0x7f);
+      if ((b & 0x80) != 0) {
+        continue;
+      }
+
+      if (first) {
+        first = false;
+        int arc1 = (subId < 40) ? 0 : (subId < 80) ? 1 : 2;
+        appendType((byte) ('0' + arc1));
+        subId -= 40 * arc1;
+      }
+      appendType((byte) '.');
+      appendTypeNumber(subId);
+      subId = 0;
+    }
+
+    // last sub-identifier must be terminated
+    return (der[end - 1] & 0x80) == 0;
+  }
+
+  private void appendTypeNumber(long num) {
+    if (num >= 10) {
+      appendTypeNumber(num / 10);
+    }
+    appendType((byte) ('0' + (num % 10)));
+  }
+
+  private void appendType(byte ch) {
+    if (typesLen == types.length) {
+      types = copyOf(types, typesLen * 2);
+    }
+    types[typesLen++] = ch;
+  }
+
+  private void appendValues(byte ch) {
+    if (valuesLen == values.length) {
+      values = copyOf(values, valuesLen * 2);
+    }
+    values[valuesLen++] = ch;
+  }
+
+  private void ensureAttributeCapacity() {
+    if (count < typeOffs.length) {
+      return;
+    }
+
+    int newSize = count * 2;
+    typeOffs = copyOf(typeOffs, newSize);
+    typeLens = copyOf(typeLens, newSize);
+    valueOffs = copyOf(valueOffs, newSize);
+    valueLens = copyOf(valueLens, newSize);
+    order = new int[newSize];
+  }
+
+  private int compareTypes(int i, int j) {
+    int offI = typeOffs[i];
+    int lenI = typeLens[i];
+    int offJ = typeOffs[j];
+    int lenJ = typeLens[j];
+    int len = Math.min(lenI, lenJ);
+    for (int k = 0; k < len; k++) {
+      int diff = types[offI + k] - types[offJ + k];
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return lenI - lenJ;
+  }
+
+  private boolean write() {
+    // insertion sort, stable as Collections.sort()
+    for (int i = 0; i < count; i++) {
+      int idx = i;
+      int j = i - 1;
+      while (j >= 0 && compareTypes(order[j], idx) > 0) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = idx;
+    }
+
+    for (int i = 0; i < count; i++) {
+      int typeIdx = order[i];
+      if (i > 0) {
+        appendOut((byte) ',');
+      }
+
+      appendOut(types, typeOffs[typeIdx], typeLens[typeIdx]);
+      appendOut((byte) '=');
+
+      boolean firstValue = true;
+      for (int j = 0; j < count; j++) {
+        if (compareTypes(j, typeIdx) != 0) {
+          continue;
+        }
+
+        if (!firstValue) {
+          appendOut((byte) ';');
+        }
+        firstValue = false;
+        appendValue(valueOffs[j], valueLens[j]);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Appends the value escaped as by {@code IETFUtils.valueToString()} and converted to
+   * lower case.
+   */
+  private void appendValue(int off, int len) {
+    valueLen = 0;
+    if (len > 0 && values[off] == '#') {
+      appendValue((byte) '\\');
+    }
+    for (int i = 0; i < len; i++) {
+      appendValue(values[off + i]);
+    }
+
+    int end = valueLen;
+    int index = 0;
+    if (valueLen >= 2 && value[0] == '\\' && value[1] == '#') {
+      index += 2;
+    }
+
+    while (index != end) {
+      byte ch = value[index];
+      if (ch == ',' || ch == '"' || ch == '\\' || ch == '+' || ch == '='
+          || ch == '<' || ch == '>' || ch == ';') {
+        insertValue(index, (byte) '\\');
+        index++;
+        end++;
+      }
+      index++;
+    }
+
+    int start = 0;
+    while (valueLen > start && value[start] == ' ') {
+      insertValue(start, (byte) '\\');
+      start += 2;
+    }
+
+    int endBuf = valueLen - 1;
+    while (endBuf >= 0 && value[endBuf] == ' ') {
+      insertValue(endBuf, (byte) '\\');
+      endBuf--;
+    }
+
+    for (int i = 0; i < valueLen; i++) {
+      byte ch = value[i];
+      if (ch >= 'A' && ch <= 'Z') {
+        value[i] = (byte) (ch + ('a' - 'A'));
+      }
+    }
+
+    appendOut(value, 0, valueLen);
+  }
+
+  private void appendValue(byte ch) {
+    if (valueLen == value.length) {
+      value = copyOf(value, valueLen * 2);
+    }
+    value[valueLen++] = ch;
+  }
+
+  private void insertValue(int index, byte ch) {
+    if (valueLen == value.length) {
+      value = copyOf(value, valueLen * 2);
+    }
+    System.arraycopy(value, index, value, index + 1, valueLen - index);
+    value[index] = ch;
+    valueLen++;
+  }
+
+  private void appendOut(byte ch) {
+    if (outLen == out.length) {
+      out = copyOf(out, outLen * 2);
+    }
+    out[outLen++] = ch;
+  }
+
+  private void appendOut(byte[] bytes, int off, int len) {
+    if (outLen + len > out.length) {
+      out = copyOf(out, Math.max(outLen + len, out.length * 2));
+    }
+    System.arraycopy(bytes, off, out, outLen, len);
+    outLen += len;
+  }
+
+  private static byte[] copyOf(byte[] bytes, int newLength) {
+    byte[] ret = new byte[newLength];
+    System.arraycopy(bytes, 0, ret, 0, Math.min(bytes.length, newLength));
+    return ret;
+  }
+
+  private static int[] copyOf(int[] ints, int newLength) {
+    int[] ret = new int[newLength];
+    System.arraycopy(ints, 0, ret, 0, Math.min(ints.length, newLength));
+    return ret;
+  }
+
+}
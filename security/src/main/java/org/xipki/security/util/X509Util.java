@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.security.NoSuchProviderException;
 import java.security.cert.CRLException;
@@ -347,13 +348,36 @@ public class X509Util {
    */
   public static long fpCanonicalizedName(X500Principal prin) {
     Args.notNull(prin, "prin");
-    X500Name x500Name = X500Name.getInstance(prin.getEncoded());
-    return fpCanonicalizedName(x500Name);
+    return fpCanonicalizedName(prin.getEncoded());
+  }
+
+  /**
+   * Computes the fingerprint of the canonicalized name.
+   * @param encodedName DER encoded name. Must not be {@code null}.
+   * @return the fingerprint of the canonicalized name.
+   */
+  public static long fpCanonicalizedName(byte[] encodedName) {
+    Args.notNull(encodedName, "encodedName");
+    DerNameCanonicalizer canonicalizer = DerNameCanonicalizer.getInstance();
+    if (canonicalizer.canonicalize(encodedName)) {
+      return FpIdCalculator.hash(canonicalizer.getBuffer(), 0, canonicalizer.getLength());
+    }
+
+    return fpCanonicalizedName0(X500Name.getInstance(encodedName));
   }
 
   public static long fpCanonicalizedName(X500Name name) {
     Args.notNull(name, "name");
-    String canonicalizedName = canonicalizName(name);
+    DerNameCanonicalizer canonicalizer = DerNameCanonicalizer.getInstance();
+    if (canonicalizer.canonicalize(name)) {
+      return FpIdCalculator.hash(canonicalizer.getBuffer(), 0, canonicalizer.getLength());
+    }
+
+    return fpCanonicalizedName0(name);
+  }
+
+  private static long fpCanonicalizedName0(X500Name name) {
+    String canonicalizedName = canonicalizName0(name);
     byte[] encoded;
     try {
       encoded = canonicalizedName.getBytes("UTF-8");
@@ -365,6 +389,16 @@ public class X509Util {
 
   public static String canonicalizName(X500Name name) {
     Args.notNull(name, "name");
+    DerNameCanonicalizer canonicalizer = DerNameCanonicalizer.getInstance();
+    if (canonicalizer.canonicalize(name)) {
+      return new String(canonicalizer.getBuffer(), 0, canonicalizer.getLength(),
+          StandardCharsets.US_ASCII);
+    }
+
+    return canonicalizName0(name);
+  }
+
+  private static String canonicalizName0(X500Name name) {
     ASN1ObjectIdentifier[] tmpTypes = name.getAttributeTypes();
     int len = tmpTypes.length;
     List<String> types = new ArrayList<>(len);
@@ -411,7 +445,7 @@ public class X509Util {
     } // end for(i)
 
     return sb.toString();
-  } // method canonicalizName
+  } // method canonicalizName0
 
   public static byte[] extractSki(X509Certificate cert) throws CertificateEncodingException {
     byte[] extValue = getCoreExtValue(cert, Extension.subjectKeyIdentifier);
@@ -0,0 +1,70 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.bc.test;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import org.bouncycastle.asn1.x9.ECNamedCurveTable;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.ReferenceMultiplier;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.security.bc.XiFixedPointCombMultiplier;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class XiFixedPointCombMultiplierTest {
+
+  @Test
+  public void testSecp256r1() {
+    testCurve("secp256r1");
+  }
+
+  @Test
+  public void testSecp384r1() {
+    testCurve("secp384r1");
+  }
+
+  @Test
+  public void testSm2p256v1() {
+    testCurve("sm2p256v1");
+  }
+
+  private static void testCurve(String curveName) {
+    X9ECParameters params = ECNamedCurveTable.getByName(curveName);
+    ECPoint generator = params.getG();
+    XiFixedPointCombMultiplier multiplier = new XiFixedPointCombMultiplier(generator);
+    ReferenceMultiplier reference = new ReferenceMultiplier();
+
+    SecureRandom random = new SecureRandom();
+    BigInteger order = params.getN();
+    for (int i = 0; i < 20; i++) {
+      BigInteger k = new BigInteger(order.bitLength(), random).mod(order);
+      ECPoint expected = reference.multiply(generator, k).normalize();
+      ECPoint actual = multiplier.multiply(generator, k).normalize();
+      Assert.assertEquals(curveName + ": k=" + k.toString(16), expected, actual);
+    }
+  }
+
+}
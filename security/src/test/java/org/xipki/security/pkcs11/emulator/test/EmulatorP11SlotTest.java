@@ -0,0 +1,178 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.pkcs11.emulator.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.Security;
+import java.security.Signature;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.security.pkcs11.P11IdentityId;
+import org.xipki.security.pkcs11.P11Module;
+import org.xipki.security.pkcs11.P11ModuleConf;
+import org.xipki.security.pkcs11.P11Slot;
+import org.xipki.security.pkcs11.P11Slot.P11NewKeyControl;
+import org.xipki.security.pkcs11.Pkcs11conf;
+import org.xipki.security.pkcs11.emulator.EmulatorP11Module;
+import org.xipki.security.util.SignerUtil;
+
+import com.alibaba.fastjson.JSON;
+
+import iaik.pkcs.pkcs11.constants.PKCS11Constants;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class EmulatorP11SlotTest {
+
+  @BeforeClass
+  public static void init() {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+  }
+
+  @Test
+  public void testIndexAndLazyLoadedKeys() throws Exception {
+    File baseDir = Files.createTempDirectory("pkcs11-emulator").toFile();
+    deleteDir(baseDir); // will be created by the emulator
+
+    try {
+      P11ModuleConf moduleConf = createModuleConf(baseDir);
+
+      P11Module module = EmulatorP11Module.getInstance(moduleConf);
+      P11Slot slot = module.getSlot(module.getSlotIdForIndex(0));
+      P11IdentityId id1 =
+          slot.generateECKeypair("secp256r1", new P11NewKeyControl(null, "key-1"));
+      P11IdentityId id2 =
+          slot.generateECKeypair("secp256r1", new P11NewKeyControl(null, "key-2"));
+      P11IdentityId id3 =
+          slot.generateECKeypair("secp256r1", new P11NewKeyControl(null, "key-3"));
+      slot.removeIdentity(id3);
+      module.close();
+
+      // reload the slot from the index
+      module = EmulatorP11Module.getInstance(moduleConf);
+      slot = module.getSlot(module.getSlotIdForIndex(0));
+      Assert.assertTrue(slot.hasIdentity(id1.getKeyId()));
+      Assert.assertTrue(slot.hasIdentity(id2.getKeyId()));
+      Assert.assertFalse(slot.hasIdentity(id3.getKeyId()));
+
+      // sign alternately, each key is decrypted again after having been released
+      for (int i = 0; i < 3; i++) {
+        for (P11IdentityId id : new P11IdentityId[]{id1, id2}) {
+          byte[] content = ("content-" + i).getBytes();
+          byte[] sigValue = slot.getIdentity(id.getKeyId()).sign(
+              PKCS11Constants.CKM_ECDSA_SHA256, null, content);
+
+          Signature verifier = Signature.getInstance("SHA256withECDSA", "BC");
+          verifier.initVerify(slot.getIdentity(id.getKeyId()).getPublicKey());
+          verifier.update(content);
+          Assert.assertTrue("signature invalid",
+              verifier.verify(SignerUtil.dsaSigPlainToX962(sigValue)));
+        }
+      }
+      module.close();
+    } finally {
+      deleteDir(baseDir);
+    }
+  }
+
+  @Test
+  public void testObjectsOfOtherProcess() throws Exception {
+    File baseDir = Files.createTempDirectory("pkcs11-emulator").toFile();
+    deleteDir(baseDir); // will be created by the emulator
+
+    try {
+      P11ModuleConf moduleConf = createModuleConf(baseDir);
+      // two modules on the same directory, as in two processes
+      P11Module module1 = EmulatorP11Module.getInstance(moduleConf);
+      P11Module module2 = EmulatorP11Module.getInstance(moduleConf);
+      try {
+        P11Slot slot1 = module1.getSlot(module1.getSlotIdForIndex(0));
+        P11Slot slot2 = module2.getSlot(module2.getSlotIdForIndex(0));
+
+        P11IdentityId id1 =
+            slot1.generateECKeypair("secp256r1", new P11NewKeyControl(null, "key-1"));
+        Assert.assertFalse(slot2.hasIdentity(id1.getKeyId()));
+        slot2.refresh();
+        Assert.assertTrue("key of other process not visible", slot2.hasIdentity(id1.getKeyId()));
+
+        P11IdentityId id2 =
+            slot2.generateECKeypair("secp256r1", new P11NewKeyControl(null, "key-2"));
+        slot1.refresh();
+        Assert.assertTrue(slot1.hasIdentity(id2.getKeyId()));
+
+        slot1.removeIdentity(id1);
+        slot2.refresh();
+        Assert.assertFalse("removed key still visible", slot2.hasIdentity(id1.getKeyId()));
+        Assert.assertTrue(slot2.hasIdentity(id2.getKeyId()));
+      } finally {
+        module1.close();
+        module2.close();
+      }
+
+      // both processes appended to the same index
+      P11Module module = EmulatorP11Module.getInstance(moduleConf);
+      try {
+        P11Slot slot = module.getSlot(module.getSlotIdForIndex(0));
+        Assert.assertEquals(1, slot.getIdentityKeyIds().size());
+      } finally {
+        module.close();
+      }
+    } finally {
+      deleteDir(baseDir);
+    }
+  }
+
+  private static P11ModuleConf createModuleConf(File baseDir) throws Exception {
+    // at most one private key is decrypted at the same time
+    String confText = "{\"modules\":[{\"name\":\"default\",\"type\":\"emulator\","
+        + "\"user\":\"CKU_USER\",\"maxMessageSize\":16384,"
+        + "\"nativeLibraries\":[{\"path\":\""
+        + baseDir.getAbsolutePath().replace('\\', '/') + "?maxLoadedKeys=1\"}],"
+        + "\"mechanismFilters\":[{\"mechanismSet\":\"all\"}],"
+        + "\"passwordSets\":[{\"passwords\":[\"1234\"]}]}],"
+        + "\"mechanismSets\":[{\"name\":\"all\",\"mechanisms\":[\"ALL\"]}]}";
+    Pkcs11conf conf = JSON.parseObject(confText, Pkcs11conf.class);
+    conf.validate();
+    return new P11ModuleConf(conf.getModules().get(0), conf.getMechanismSets(), null);
+  }
+
+  private static void deleteDir(File dir) {
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          deleteDir(child);
+        } else {
+          child.delete();
+        }
+      }
+    }
+    dir.delete();
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.security.ConcurrentBagEntrySigner;
+import org.xipki.security.DfltConcurrentContentSigner;
+import org.xipki.security.NoIdleSignerException;
+import org.xipki.security.pkcs12.P12ContentSignerBuilder;
+import org.xipki.security.util.X509Util;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class AdaptiveSignerPoolTest {
+
+  public AdaptiveSignerPoolTest() {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+  }
+
+  @Test
+  public void testGrowPool() throws Exception {
+    X509Certificate cert = X509Util.parseCert(new File("src/test/resources/test1.der"));
+    char[] password = "1234".toCharArray();
+
+    DfltConcurrentContentSigner signer;
+    try (InputStream ks = Files.newInputStream(Paths.get("src/test/resources/test1.p12"))) {
+      P12ContentSignerBuilder builder = new P12ContentSignerBuilder("PKCS12", ks,
+          password, null, password, new X509Certificate[]{cert});
+      signer = (DfltConcurrentContentSigner) builder.createSigner(
+          new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption,
+              DERNull.INSTANCE), 1, 2, new SecureRandom());
+    }
+
+    try {
+      ConcurrentBagEntrySigner signer1 = signer.borrowSigner(100);
+      // the pool grows from 1 to 2 signers
+      ConcurrentBagEntrySigner signer2 = signer.borrowSigner(5000);
+      Assert.assertEquals("pool size", 2, signer.getPoolSize());
+      Assert.assertEquals("in-use count", 2, signer.getInUseCount());
+
+      // the pool does not grow beyond 2 signers
+      try {
+        signer.borrowSigner(100);
+        Assert.fail("NoIdleSignerException expected");
+      } catch (NoIdleSignerException ex) {
+        Assert.assertEquals("NoIdleSignerException count", 1, signer.getNoIdleSignerCount());
+      }
+
+      signer.requiteSigner(signer1);
+      signer.requiteSigner(signer2);
+      Assert.assertEquals("sign latency count", 2, signer.getSignLatencies().getCount());
+    } finally {
+      signer.close();
+    }
+  }
+
+}
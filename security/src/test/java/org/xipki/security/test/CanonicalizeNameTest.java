@@ -0,0 +1,201 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.security.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERBMPString;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.DERPrintableString;
+import org.bouncycastle.asn1.DERT61String;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.asn1.DERVisibleString;
+import org.bouncycastle.asn1.x500.AttributeTypeAndValue;
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.security.FpIdCalculator;
+import org.xipki.security.util.X509Util;
+
+/**
+ * Checks that the canonicalization of names via the DER encoding is identical to the
+ * canonicalization via {@link X500Name}.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class CanonicalizeNameTest {
+
+  private static final ASN1ObjectIdentifier[] TYPES = {BCStyle.C, BCStyle.O, BCStyle.OU,
+      BCStyle.CN, BCStyle.SERIALNUMBER, BCStyle.EmailAddress, BCStyle.DC, BCStyle.UID,
+      new ASN1ObjectIdentifier("2.999.1"), new ASN1ObjectIdentifier("1.3.6.1.4.1.12345.123456789"),
+      new ASN1ObjectIdentifier("0.9.2342.19200300.100.1.25")};
+
+  private static final String CHARS = "aAzZ09 ,\"\\+=<>;#-._*";
+
+  @Test
+  public void testSpecialNames() throws Exception {
+    check(new X500Name(new RDN[0]));
+    check(new X500Name("CN=Hello World,O=Example,C=DE"));
+    check(new X500Name("CN=A,OU=x,OU=Y,OU=x,O=Example,C=DE"));
+    check(new X500Name("CN=a+SERIALNUMBER=1+CN=b,O=Example"));
+    check(new X500Name("CN=a+SERIALNUMBER=1,CN=c,O=Example"));
+
+    for (String value : new String[]{"", " ", "  ", " a ", "  a  ", "#abc", "\\#abc", "a,b",
+        "a\\b", "a\"b", "a+b=c", "<a>", "a;b", "# leading", "trailing #", "MiXeD CaSe"}) {
+      X500NameBuilder builder = new X500NameBuilder();
+      builder.addRDN(BCStyle.CN, new DERUTF8String(value));
+      builder.addRDN(BCStyle.O, new DERPrintableString(value.replaceAll("[^A-Za-z0-9 ]", "")));
+      builder.addRDN(BCStyle.EmailAddress, new DERIA5String(value));
+      builder.addRDN(BCStyle.OU, new DERT61String(value));
+      builder.addRDN(BCStyle.L, new DERVisibleString(value));
+      check(builder.build());
+    }
+
+    // handled by the generic implementation
+    X500NameBuilder builder = new X500NameBuilder();
+    builder.addRDN(BCStyle.CN, new DERUTF8String("Ärger Über Öl"));
+    builder.addRDN(BCStyle.O, new DERBMPString("Bmp String"));
+    builder.addRDN(BCStyle.SERIALNUMBER, new ASN1Integer(12345));
+    check(builder.build());
+  }
+
+  @Test
+  public void testRandomNames() throws Exception {
+    Random random = new Random(12345);
+    for (int i = 0; i < 5000; i++) {
+      X500NameBuilder builder = new X500NameBuilder();
+      int numRdns = random.nextInt(6);
+      for (int j = 0; j < numRdns; j++) {
+        int numAtvs = random.nextInt(4) == 0 ? 2 + random.nextInt(2) : 1;
+        AttributeTypeAndValue[] atvs = new AttributeTypeAndValue[numAtvs];
+        for (int k = 0; k < numAtvs; k++) {
+          atvs[k] = new AttributeTypeAndValue(TYPES[random.nextInt(TYPES.length)],
+              randomValue(random));
+        }
+
+        if (numAtvs == 1) {
+          builder.addRDN(atvs[0]);
+        } else {
+          builder.addMultiValuedRDN(atvs);
+        }
+      }
+      check(builder.build());
+    }
+  }
+
+  @Test
+  public void testTurkishLocale() throws Exception {
+    Locale locale = Locale.getDefault();
+    try {
+      Locale.setDefault(new Locale("tr", "TR"));
+      check(new X500Name("CN=TITLE,O=Istanbul,C=TR"));
+    } finally {
+      Locale.setDefault(locale);
+    }
+  }
+
+  private static ASN1Encodable randomValue(Random random) {
+    int len = random.nextInt(12);
+    char[] chars = new char[len];
+    for (int i = 0; i < len; i++) {
+      chars[i] = CHARS.charAt(random.nextInt(CHARS.length()));
+    }
+    String str = new String(chars);
+    return random.nextBoolean() ? new DERUTF8String(str) : new DERIA5String(str);
+  }
+
+  private static void check(X500Name name) throws Exception {
+    String expected = canonicalizName(name);
+    Assert.assertEquals(name.toString(), expected, X509Util.canonicalizName(name));
+
+    long expectedFp = FpIdCalculator.hash(expected);
+    Assert.assertEquals(name.toString(), expectedFp, X509Util.fpCanonicalizedName(name));
+
+    byte[] encoded = name.getEncoded();
+    Assert.assertEquals(name.toString(), expectedFp, X509Util.fpCanonicalizedName(encoded));
+    Assert.assertEquals(name.toString(), expectedFp,
+        X509Util.fpCanonicalizedName(new X500Principal(encoded)));
+  }
+
+  // the implementation of X509Util.canonicalizName() before the canonicalization via DER
+  private static String canonicalizName(X500Name name) {
+    ASN1ObjectIdentifier[] tmpTypes = name.getAttributeTypes();
+    int len = tmpTypes.length;
+    List<String> types = new ArrayList<>(len);
+    for (ASN1ObjectIdentifier type : tmpTypes) {
+      types.add(type.getId());
+    }
+
+    Collections.sort(types);
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < len; i++) {
+      String type = types.get(i);
+      if (i > 0) {
+        sb.append(",");
+      }
+      sb.append(type).append("=");
+      RDN[] rdns = name.getRDNs(new ASN1ObjectIdentifier(type));
+
+      List<String> values = new ArrayList<>(1);
+      for (int j = 0; j < rdns.length; j++) {
+        RDN rdn = rdns[j];
+        if (rdn.isMultiValued()) {
+          AttributeTypeAndValue[] atvs = rdn.getTypesAndValues();
+          for (AttributeTypeAndValue atv : atvs) {
+            if (type.equals(atv.getType().getId())) {
+              String textValue = IETFUtils.valueToString(atv.getValue()).toLowerCase();
+              values.add(textValue);
+            }
+          }
+        } else {
+          String textValue = IETFUtils.valueToString(rdn.getFirst().getValue()).toLowerCase();
+          values.add(textValue);
+        }
+      }
+
+      sb.append(values.get(0));
+
+      final int n2 = values.size();
+      if (n2 > 1) {
+        for (int j = 1; j < n2; j++) {
+          sb.append(";").append(values.get(j));
+        }
+      }
+    }
+
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.security.ConcurrentBagEntrySigner;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.LoadBalancedConcurrentContentSigner;
+import org.xipki.security.NoIdleSignerException;
+import org.xipki.security.pkcs12.P12ContentSignerBuilder;
+import org.xipki.security.util.X509Util;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class LoadBalancedSignerTest {
+
+  private static final AlgorithmIdentifier SIG_ALGID =
+      new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption, DERNull.INSTANCE);
+
+  public LoadBalancedSignerTest() {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+  }
+
+  private static ConcurrentContentSigner createMember(X509Certificate cert) throws Exception {
+    char[] password = "1234".toCharArray();
+    try (InputStream ks = Files.newInputStream(Paths.get("src/test/resources/test1.p12"))) {
+      P12ContentSignerBuilder builder = new P12ContentSignerBuilder("PKCS12", ks,
+          password, null, password, new X509Certificate[]{cert});
+      return builder.createSigner(SIG_ALGID, 2, new SecureRandom());
+    }
+  }
+
+  @Test
+  public void testSignAndDistribute() throws Exception {
+    X509Certificate cert = X509Util.parseCert(new File("src/test/resources/test1.der"));
+
+    try (ConcurrentContentSigner signer = new LoadBalancedConcurrentContentSigner(
+        Arrays.asList(createMember(cert), createMember(cert)), 30, 3, 0)) {
+      byte[] data = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
+      byte[] signatureValue = signer.sign(data);
+
+      Signature verifier = Signature.getInstance(SIG_ALGID.getAlgorithm().getId());
+      verifier.initVerify(cert.getPublicKey());
+      verifier.update(data);
+      Assert.assertTrue("Signature invalid", verifier.verify(signatureValue));
+
+      // two members with parallelism 2 each: 4 signers are available
+      List<ConcurrentBagEntrySigner> borrowed = new LinkedList<>();
+      for (int i = 0; i < 4; i++) {
+        borrowed.add(signer.borrowSigner(100));
+      }
+
+      try {
+        signer.borrowSigner(100);
+        Assert.fail("NoIdleSignerException expected");
+      } catch (NoIdleSignerException ex) {
+        // expected
+      }
+
+      for (ConcurrentBagEntrySigner m : borrowed) {
+        signer.requiteSigner(m);
+      }
+
+      Assert.assertTrue("signer is not healthy", signer.isHealthy());
+    }
+  }
+
+  @Test
+  public void testEjectAfterReportedFailures() throws Exception {
+    X509Certificate cert = X509Util.parseCert(new File("src/test/resources/test1.der"));
+
+    try (ConcurrentContentSigner signer = new LoadBalancedConcurrentContentSigner(
+        Arrays.asList(createMember(cert)), 30, 3, 0)) {
+      // failures reported by the caller which used the borrowed signer
+      for (int i = 0; i < 2; i++) {
+        signer.requiteSigner(signer.borrowSigner(100), false);
+      }
+      signer.requiteSigner(signer.borrowSigner(100));
+      Assert.assertTrue("signer is not healthy", signer.isHealthy());
+
+      signer.requiteSigner(signer.borrowSigner(100), false);
+      Assert.assertFalse("signer is healthy", signer.isHealthy());
+    }
+  }
+
+}
@@ -251,6 +251,26 @@ public class DbActions {
 
   }
 
+  @Command(scope = "ca", name = "migrate-serial-key",
+      description = "migrate CA or OCSP database to the hashed serial number key")
+  @Service
+  public static class MigrateSerialKey extends DbPortAction {
+
+    @Option(name = "--db-conf", required = true, description = "database configuration file")
+    @Completion(FileCompleter.class)
+    private String dbconfFile;
+
+    @Option(name = "-k", description = "number of certificates per commit")
+    private Integer numCertsPerCommit = 1000;
+
+    @Override
+    protected DbPortWorker getDbPortWorker() throws Exception {
+      return new DbPortWorker.MigrateSerialKey(datasourceFactory, passwordResolver, dbconfFile,
+          numCertsPerCommit.intValue());
+    }
+
+  }
+
   @Command(scope = "ca", name = "import-ocspfromca",
       description = "import OCSP database from CA data")
   @Service
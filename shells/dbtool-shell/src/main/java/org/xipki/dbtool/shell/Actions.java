@@ -31,10 +31,12 @@ import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 import org.apache.karaf.shell.support.completers.FileCompleter;
+import org.apache.karaf.shell.support.completers.StringsCompleter;
 import org.xipki.dbtool.InitDbMain;
 import org.xipki.dbtool.LiquibaseMain;
 import org.xipki.password.PasswordResolver;
 import org.xipki.password.PasswordResolverException;
+import org.xipki.shell.IllegalCmdParamException;
 import org.xipki.shell.XiAction;
 import org.xipki.util.IoUtil;
 import org.xipki.util.StringUtil;
@@ -49,6 +51,15 @@ public class Actions {
   @Service
   public static class Initdb extends LiquibaseAction {
 
+    @Option(name = "--serial-key", description = "key of the serial number in the table CERT")
+    @Completion(value = StringsCompleter.class, values = {"hex", "hash"})
+    private String serialKey = "hex";
+
+    @Option(name = "--binary-encoding",
+        description = "encoding of the certificates and OCSP responses")
+    @Completion(value = StringsCompleter.class, values = {"base64", "binary"})
+    private String binaryEncoding = "base64";
+
     @Override
     protected Object execute0() throws Exception {
       LiquibaseMain.DatabaseConf dbConf = getDatabaseConf();
@@ -61,7 +72,15 @@ public class Actions {
         }
       }
 
-      InitDbMain.initDb(dbConf, dbSchemaFile);
+      if (!("hex".equals(serialKey) || "hash".equals(serialKey))) {
+        throw new IllegalCmdParamException("invalid serial-key " + serialKey);
+      }
+
+      if (!("base64".equals(binaryEncoding) || "binary".equals(binaryEncoding))) {
+        throw new IllegalCmdParamException("invalid binary-encoding " + binaryEncoding);
+      }
+
+      InitDbMain.initDb(dbConf, dbSchemaFile, serialKey, binaryEncoding);
 
       return null;
     }
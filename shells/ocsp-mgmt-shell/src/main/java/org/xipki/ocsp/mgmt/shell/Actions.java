@@ -17,15 +17,27 @@
 
 package org.xipki.ocsp.mgmt.shell;
 
+import java.io.File;
+
 import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.Completion;
 import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.completers.FileCompleter;
+import org.apache.karaf.shell.support.completers.StringsCompleter;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.mgmt.OcspManager;
 import org.xipki.ocsp.api.mgmt.OcspMgmtException;
+import org.xipki.ocsp.server.store.CertStatusSnapshotGenerator;
+import org.xipki.ocsp.server.store.CertStatusSnapshotWriter;
+import org.xipki.password.PasswordResolver;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.util.X509Util;
 import org.xipki.shell.CmdFailure;
 import org.xipki.shell.Completers;
+import org.xipki.shell.IllegalCmdParamException;
 import org.xipki.shell.XiAction;
 
 /**
@@ -78,4 +90,78 @@ public class Actions {
 
   }
 
+  @Command(scope = "ocsp", name = "snapshot",
+      description = "generate the certificate status snapshot of the OCSP server")
+  @Service
+  public static class SnapshotAction extends XiAction {
+
+    @Reference
+    private PasswordResolver passwordResolver;
+
+    @Option(name = "--source", required = true, description = "source of the status")
+    @Completion(value = StringsCompleter.class, values = {"ocspdb", "cadb", "crl"})
+    private String source;
+
+    @Option(name = "--out", required = true, description = "where to save the snapshot")
+    @Completion(FileCompleter.class)
+    private String outFile;
+
+    @Option(name = "--db-conf", description = "configuration of the OCSP or CA database")
+    @Completion(FileCompleter.class)
+    private String dbConfFile;
+
+    @Option(name = "--certhash-algo", description = "certhash algorithm, only for cadb")
+    @Completion(Completers.HashAlgCompleter.class)
+    private String certHashAlgo;
+
+    @Option(name = "--crl", description = "full CRL issued directly by the CA")
+    @Completion(FileCompleter.class)
+    private String crlFile;
+
+    @Option(name = "--ca-cert", description = "certificate of the CA, only for crl")
+    @Completion(FileCompleter.class)
+    private String caCertFile;
+
+    @Option(name = "--crl-url", description = "URL of the CRL used in CrlID, only for crl")
+    private String crlUrl;
+
+    @Option(name = "--no-crl-updates",
+        description = "do not use the thisUpdate and nextUpdate of the CRL")
+    private Boolean noCrlUpdates = Boolean.FALSE;
+
+    @Override
+    protected Object execute0() throws Exception {
+      CertStatusSnapshotWriter writer;
+      if ("crl".equalsIgnoreCase(source)) {
+        if (crlFile == null || caCertFile == null) {
+          throw new IllegalCmdParamException(
+              "crl and ca-cert must be specified for the source crl");
+        }
+
+        writer = CertStatusSnapshotGenerator.fromCrl(X509Util.parseCrl(new File(crlFile)),
+            X509Util.parseCert(new File(caCertFile)), crlUrl, !noCrlUpdates, null);
+      } else if ("ocspdb".equalsIgnoreCase(source) || "cadb".equalsIgnoreCase(source)) {
+        if (dbConfFile == null) {
+          throw new IllegalCmdParamException("db-conf must be specified for the source "
+              + source);
+        }
+
+        try (DataSourceWrapper datasource = new DataSourceFactory().createDataSourceForFile(
+            "snapshot", dbConfFile, passwordResolver)) {
+          writer = "ocspdb".equalsIgnoreCase(source)
+              ? CertStatusSnapshotGenerator.fromOcspDb(datasource)
+              : CertStatusSnapshotGenerator.fromCaDb(datasource,
+                  (certHashAlgo == null) ? null : HashAlgo.getNonNullInstance(certHashAlgo));
+        }
+      } else {
+        throw new IllegalCmdParamException("invalid source " + source);
+      }
+
+      writer.write(new File(outFile));
+      println("wrote snapshot to " + outFile);
+      return null;
+    } // method execute0
+
+  }
+
 }
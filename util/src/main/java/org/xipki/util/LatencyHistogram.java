@@ -0,0 +1,190 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed buckets. Recording a value costs a short scan over
+ * the bucket bounds and two {@link LongAdder} increments, so it may stay enabled in production.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class LatencyHistogram {
+
+  /**
+   * Upper bounds of the buckets in microseconds. The last bucket has no upper bound.
+   */
+  private static final long[] BOUNDS = {100, 250, 500, 1000, 2500, 5000, 10000, 25000,
+      50000, 100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000};
+
+  private final LongAdder[] buckets;
+
+  private final LongAdder sum = new LongAdder();
+
+  private final AtomicLong max = new AtomicLong(0);
+
+  public LatencyHistogram() {
+    buckets = new LongAdder[BOUNDS.length + 1];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records a latency.
+   * @param nanos latency in nanoseconds.
+   */
+  public void record(long nanos) {
+    long micros = nanos / 1000;
+    int idx = 0;
+    while (idx < BOUNDS.length && micros > BOUNDS[idx]) {
+      idx++;
+    }
+
+    buckets[idx].increment();
+    sum.add(nanos);
+
+    long currentMax = max.get();
+    while (nanos > currentMax) {
+      if (max.compareAndSet(currentMax, nanos)) {
+        break;
+      }
+      currentMax = max.get();
+    }
+  }
+
+  /**
+   * Records the time elapsed since {@code startNanos}.
+   * @param startNanos start time returned by {@link System#nanoTime()}.
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the sum of all recorded latencies.
+   * @return the sum in nanoseconds.
+   */
+  public long getSum() {
+    return sum.sum();
+  }
+
+  /**
+   * Returns the maximal recorded latency.
+   * @return the maximal latency in nanoseconds.
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the upper bounds of the buckets.
+   * @return the upper bounds in microseconds. The bucket after the last bound is unbounded.
+   */
+  public static long[] getBucketBounds() {
+    return BOUNDS.clone();
+  }
+
+  /**
+   * Returns the number of values in each bucket (not cumulative).
+   * @return counts of the buckets, the last element is for the unbounded bucket.
+   */
+  public long[] getBucketCounts() {
+    long[] counts = new long[buckets.length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = buckets[i].sum();
+    }
+    return counts;
+  }
+
+  /**
+   * Returns the approximated percentile, namely the upper bound of the bucket containing it.
+   * @param percentile percentile between 0 and 100.
+   * @return the upper bound in nanoseconds, or the maximum for the unbounded bucket.
+   */
+  public long getPercentile(double percentile) {
+    long[] counts = getBucketCounts();
+    long total = 0;
+    for (long c : counts) {
+      total += c;
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    long threshold = (long) Math.ceil(total * percentile / 100);
+    long accumulated = 0;
+    for (int i = 0; i < BOUNDS.length; i++) {
+      accumulated += counts[i];
+      if (accumulated >= threshold) {
+        return Math.min(TimeUnit.MICROSECONDS.toNanos(BOUNDS[i]), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  public void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    sum.reset();
+    max.set(0);
+  }
+
+  /**
+   * Returns the summary of this histogram.
+   * @return map of count, mean, p50, p90, p99 and max. Durations are in milliseconds.
+   */
+  public Map<String, Object> toStatusMap() {
+    long count = getCount();
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("count", count);
+    map.put("mean", count == 0 ? 0 : toMillis(getSum() / count));
+    map.put("p50", toMillis(getPercentile(50)));
+    map.put("p90", toMillis(getPercentile(90)));
+    map.put("p99", toMillis(getPercentile(99)));
+    map.put("max", toMillis(getMax()));
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return toStatusMap().toString();
+  }
+
+  private static double toMillis(long nanos) {
+    return Math.round(nanos / 1000.0) / 1000.0;
+  }
+
+}
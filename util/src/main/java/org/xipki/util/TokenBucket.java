@@ -0,0 +1,101 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generic cell rate algorithm (GCRA), a lock-free equivalent of the token bucket.
+ *
+ * @author Lijun Liao
+ * @since 5.0.1
+ */
+
+public class TokenBucket {
+
+  // nanoseconds per token
+  private final long interval;
+
+  private final long tolerance;
+
+  private final int burst;
+
+  // theoretical arrival time
+  private final AtomicLong tat = new AtomicLong(System.nanoTime());
+
+  /**
+   * Constructor.
+   * @param rate Tokens per second.
+   * @param burst Maximal number of tokens which can be taken at once.
+   */
+  public TokenBucket(double rate, int burst) {
+    if (!(rate > 0)) {
+      throw new IllegalArgumentException("rate must be positive: " + rate);
+    }
+    this.burst = Args.positive(burst, "burst");
+    this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    this.tolerance = interval * burst;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  /**
+   * Takes one token if available without delay.
+   * @return whether the token has been taken.
+   */
+  public boolean tryTake() {
+    return take(1, 0) >= 0;
+  }
+
+  /**
+   * Takes the given number of tokens.
+   * @param tokens number of tokens, not greater than the burst.
+   * @param maxDelay maximal delay in nanoseconds the caller accepts.
+   * @return the delay in nanoseconds the caller has to wait for the tokens if not greater
+   *     than {@code maxDelay}, otherwise the negative delay, in which case no token is taken.
+   */
+  public long take(int tokens, long maxDelay) {
+    Args.range(tokens, "tokens", 1, burst);
+    while (true) {
+      long now = System.nanoTime();
+      long oldTat = tat.get();
+      long newTat = Math.max(oldTat, now) + interval * tokens;
+      long delay = newTat - tolerance - now;
+      if (delay > maxDelay) {
+        return -delay;
+      }
+
+      if (tat.compareAndSet(oldTat, newTat)) {
+        return Math.max(0, delay);
+      }
+    }
+  }
+
+  /**
+   * Gives back the tokens taken by {@link #take(int, long)}.
+   * @param tokens number of tokens.
+   */
+  public void giveBack(int tokens) {
+    tat.addAndGet(-interval * tokens);
+  }
+
+}